@@ -0,0 +1,96 @@
+package org.bouncycastle.bench.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Argon2id latency as the number of lanes grows, with the lanes filled sequentially and on a
+ * thread pool with one thread per lane.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Argon2Benchmark
+{
+    @Param({ "1", "2", "4", "8" })
+    public int lanes;
+
+    @Param({ "65536" })
+    public int memoryKB;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    private ExecutorService executor;
+    private Argon2BytesGenerator generator;
+    private byte[] password;
+    private byte[] output;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        byte[] salt = new byte[16];
+        random.nextBytes(salt);
+
+        password = new byte[16];
+        random.nextBytes(password);
+
+        if (parallel)
+        {
+            executor = Executors.newFixedThreadPool(lanes);
+            generator = new Argon2BytesGenerator(executor);
+        }
+        else
+        {
+            generator = new Argon2BytesGenerator();
+        }
+
+        generator.init(new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+            .withIterations(3)
+            .withMemoryAsKB(memoryKB)
+            .withParallelism(lanes)
+            .withSalt(salt)
+            .build());
+
+        output = new byte[32];
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if (executor != null)
+        {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    @Benchmark
+    public byte[] generate()
+    {
+        generator.generateBytes(password, output);
+        return output;
+    }
+}
@@ -0,0 +1,190 @@
+package org.bouncycastle.bench.crypto;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.Ed25519PrivateKeyParameters;
+import org.bouncycastle.crypto.params.Ed25519PublicKeyParameters;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.signers.ECDSABatchVerifier;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.Ed25519BatchVerifier;
+import org.bouncycastle.crypto.signers.Ed25519Signer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Verification of a batch of signatures by a few keys, one at a time ("verifyEach") against the
+ * batch verifiers ("verifyBatch"). As for a verifier receiving encoded keys, each ECDSA signature
+ * comes with its own decoded copy of the public key. Results are in signatures per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchVerifyBenchmark
+{
+    private static final int BATCH = 64;
+
+    @Param({ "Ed25519", "ECDSA" })
+    public String algorithm;
+
+    @Param({ "1", "16" })
+    public int keys;
+
+    private final byte[][] messages = new byte[BATCH][];
+
+    private final Ed25519PublicKeyParameters[] edKeys = new Ed25519PublicKeyParameters[BATCH];
+    private final byte[][] edSignatures = new byte[BATCH][];
+    private Ed25519BatchVerifier edBatch;
+
+    private final ECPublicKeyParameters[] ecKeys = new ECPublicKeyParameters[BATCH];
+    private final BigInteger[][] ecSignatures = new BigInteger[BATCH][];
+    private ECDSABatchVerifier ecBatch;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        for (int i = 0; i < BATCH; ++i)
+        {
+            messages[i] = new byte[32];
+            random.nextBytes(messages[i]);
+        }
+
+        if ("Ed25519".equals(algorithm))
+        {
+            Ed25519PrivateKeyParameters[] privs = new Ed25519PrivateKeyParameters[keys];
+            for (int j = 0; j < keys; ++j)
+            {
+                privs[j] = new Ed25519PrivateKeyParameters(random);
+            }
+
+            Ed25519Signer signer = new Ed25519Signer();
+            for (int i = 0; i < BATCH; ++i)
+            {
+                Ed25519PrivateKeyParameters priv = privs[i % keys];
+                signer.init(true, priv);
+                signer.update(messages[i], 0, messages[i].length);
+                edSignatures[i] = signer.generateSignature();
+                edKeys[i] = priv.generatePublicKey();
+            }
+
+            edBatch = new Ed25519BatchVerifier(random);
+        }
+        else
+        {
+            X9ECParameters x9 = CustomNamedCurves.getByName("secp256r1");
+            ECDomainParameters domain = new ECDomainParameters(x9.getCurve(), x9.getG(), x9.getN(), x9.getH());
+
+            ECKeyPairGenerator kpg = new ECKeyPairGenerator();
+            kpg.init(new ECKeyGenerationParameters(domain, random));
+
+            AsymmetricCipherKeyPair[] pairs = new AsymmetricCipherKeyPair[keys];
+            for (int j = 0; j < keys; ++j)
+            {
+                pairs[j] = kpg.generateKeyPair();
+            }
+
+            ECDSASigner signer = new ECDSASigner();
+            for (int i = 0; i < BATCH; ++i)
+            {
+                AsymmetricCipherKeyPair pair = pairs[i % keys];
+                signer.init(true, new ParametersWithRandom(pair.getPrivate(), random));
+                ecSignatures[i] = signer.generateSignature(messages[i]);
+
+                byte[] encoded = ((ECPublicKeyParameters)pair.getPublic()).getQ().getEncoded(false);
+                ecKeys[i] = new ECPublicKeyParameters(domain.getCurve().decodePoint(encoded), domain);
+            }
+
+            ecBatch = new ECDSABatchVerifier();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int verifyEach()
+    {
+        int valid = 0;
+        if (ecBatch == null)
+        {
+            Ed25519Signer verifier = new Ed25519Signer();
+            for (int i = 0; i < BATCH; ++i)
+            {
+                verifier.init(false, edKeys[i]);
+                verifier.update(messages[i], 0, messages[i].length);
+                if (verifier.verifySignature(edSignatures[i]))
+                {
+                    ++valid;
+                }
+            }
+        }
+        else
+        {
+            ECDSASigner verifier = new ECDSASigner();
+            for (int i = 0; i < BATCH; ++i)
+            {
+                verifier.init(false, ecKeys[i]);
+                if (verifier.verifySignature(messages[i], ecSignatures[i][0], ecSignatures[i][1]))
+                {
+                    ++valid;
+                }
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int verifyBatch()
+    {
+        boolean[] results;
+        if (ecBatch == null)
+        {
+            for (int i = 0; i < BATCH; ++i)
+            {
+                edBatch.add(edKeys[i], messages[i], edSignatures[i]);
+            }
+            results = edBatch.verify();
+        }
+        else
+        {
+            for (int i = 0; i < BATCH; ++i)
+            {
+                ecBatch.add(ecKeys[i], messages[i], ecSignatures[i][0], ecSignatures[i][1]);
+            }
+            results = ecBatch.verify();
+        }
+
+        int valid = 0;
+        for (int i = 0; i < BATCH; ++i)
+        {
+            if (results[i])
+            {
+                ++valid;
+            }
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,89 @@
+package org.bouncycastle.bench.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.engines.AESFastEngine;
+import org.bouncycastle.crypto.engines.AESLightEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Raw ECB throughput of the AES engines over a range of buffer sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockCipherBenchmark
+{
+    @Param({ "AES", "AESFast", "AESLight" })
+    public String engine;
+
+    @Param({ "128", "256" })
+    public int keySize;
+
+    @Param({ "16", "256", "1024", "8192", "65536" })
+    public int size;
+
+    private BlockCipher cipher;
+    private byte[] input;
+    private byte[] output;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        byte[] key = new byte[keySize / 8];
+        random.nextBytes(key);
+
+        cipher = createEngine(engine);
+        cipher.init(true, new KeyParameter(key));
+
+        input = new byte[size];
+        output = new byte[size];
+        random.nextBytes(input);
+    }
+
+    @Benchmark
+    public byte[] encrypt()
+    {
+        for (int off = 0; off < size; off += 16)
+        {
+            cipher.processBlock(input, off, output, off);
+        }
+        return output;
+    }
+
+    static BlockCipher createEngine(String name)
+    {
+        if ("AES".equals(name))
+        {
+            return new AESEngine();
+        }
+        if ("AESFast".equals(name))
+        {
+            return new AESFastEngine();
+        }
+        if ("AESLight".equals(name))
+        {
+            return new AESLightEngine();
+        }
+        throw new IllegalArgumentException("unknown engine: " + name);
+    }
+}
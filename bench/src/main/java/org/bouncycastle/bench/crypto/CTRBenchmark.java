@@ -0,0 +1,66 @@
+package org.bouncycastle.bench.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.modes.SICBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AES-CTR (SICBlockCipher) throughput over a range of buffer sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CTRBenchmark
+{
+    @Param({ "AES", "AESFast", "AESLight" })
+    public String engine;
+
+    @Param({ "16", "256", "1024", "8192", "65536" })
+    public int size;
+
+    private SICBlockCipher ctr;
+    private byte[] input;
+    private byte[] output;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        byte[] iv = new byte[16];
+        random.nextBytes(iv);
+
+        ctr = new SICBlockCipher(BlockCipherBenchmark.createEngine(engine));
+        ctr.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+
+        input = new byte[size];
+        output = new byte[size];
+        random.nextBytes(input);
+    }
+
+    @Benchmark
+    public byte[] encrypt()
+    {
+        ctr.processBytes(input, 0, size, output, 0);
+        return output;
+    }
+}
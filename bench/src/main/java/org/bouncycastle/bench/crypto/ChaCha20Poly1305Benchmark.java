@@ -0,0 +1,96 @@
+package org.bouncycastle.bench.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.engines.ChaCha7539Engine;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.util.Pack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The ChaCha20-Poly1305 AEAD construction of RFC 7539, built from ChaCha7539Engine and Poly1305 in
+ * the same way the TLS record layer does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChaCha20Poly1305Benchmark
+{
+    private static final byte[] ZEROES = new byte[15];
+
+    @Param({ "16", "256", "1024", "8192", "65536" })
+    public int size;
+
+    private ChaCha7539Engine cipher;
+    private Poly1305 mac;
+    private KeyParameter key;
+    private byte[] nonce;
+    private long counter;
+    private byte[] firstBlock;
+    private byte[] input;
+    private byte[] output;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        byte[] k = new byte[32];
+        random.nextBytes(k);
+        key = new KeyParameter(k);
+
+        nonce = new byte[12];
+        random.nextBytes(nonce);
+
+        cipher = new ChaCha7539Engine();
+        mac = new Poly1305();
+        firstBlock = new byte[64];
+
+        input = new byte[size];
+        output = new byte[size + 16];
+        random.nextBytes(input);
+    }
+
+    @Benchmark
+    public byte[] encrypt()
+    {
+        Pack.longToBigEndian(++counter, nonce, 4);
+
+        cipher.init(true, new ParametersWithIV(key, nonce));
+
+        // The first keystream block provides the one-time Poly1305 key
+        cipher.processBytes(firstBlock, 0, firstBlock.length, firstBlock, 0);
+        mac.init(new KeyParameter(firstBlock, 0, 32));
+
+        cipher.processBytes(input, 0, size, output, 0);
+
+        mac.update(output, 0, size);
+        int partial = size % 16;
+        if (partial != 0)
+        {
+            mac.update(ZEROES, 0, 16 - partial);
+        }
+
+        byte[] lengths = Pack.longToLittleEndian(new long[]{ 0L, (long)size });
+        mac.update(lengths, 0, lengths.length);
+        mac.doFinal(output, size);
+
+        return output;
+    }
+}
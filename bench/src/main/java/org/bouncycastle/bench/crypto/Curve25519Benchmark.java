@@ -0,0 +1,98 @@
+package org.bouncycastle.bench.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.CryptoException;
+import org.bouncycastle.crypto.agreement.X25519Agreement;
+import org.bouncycastle.crypto.params.Ed25519PrivateKeyParameters;
+import org.bouncycastle.crypto.params.Ed25519PublicKeyParameters;
+import org.bouncycastle.crypto.params.X25519PrivateKeyParameters;
+import org.bouncycastle.crypto.params.X25519PublicKeyParameters;
+import org.bouncycastle.crypto.signers.Ed25519Signer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ed25519 signing/verification and X25519 key generation/agreement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Curve25519Benchmark
+{
+    private SecureRandom random;
+    private Ed25519Signer signer;
+    private Ed25519Signer verifier;
+    private byte[] message;
+    private byte[] signature;
+    private X25519Agreement agreement;
+    private X25519PublicKeyParameters peerKey;
+    private byte[] secret;
+
+    @Setup
+    public void setup()
+        throws CryptoException
+    {
+        random = new SecureRandom();
+
+        Ed25519PrivateKeyParameters edPriv = new Ed25519PrivateKeyParameters(random);
+        Ed25519PublicKeyParameters edPub = edPriv.generatePublicKey();
+
+        message = new byte[64];
+        random.nextBytes(message);
+
+        signer = new Ed25519Signer();
+        signer.init(true, edPriv);
+
+        verifier = new Ed25519Signer();
+        verifier.init(false, edPub);
+
+        signer.update(message, 0, message.length);
+        signature = signer.generateSignature();
+
+        agreement = new X25519Agreement();
+        agreement.init(new X25519PrivateKeyParameters(random));
+        peerKey = new X25519PrivateKeyParameters(random).generatePublicKey();
+        secret = new byte[agreement.getAgreementSize()];
+    }
+
+    @Benchmark
+    public byte[] ed25519Sign()
+        throws CryptoException
+    {
+        signer.update(message, 0, message.length);
+        return signer.generateSignature();
+    }
+
+    @Benchmark
+    public boolean ed25519Verify()
+    {
+        verifier.update(message, 0, message.length);
+        return verifier.verifySignature(signature);
+    }
+
+    @Benchmark
+    public X25519PublicKeyParameters x25519KeyGen()
+    {
+        return new X25519PrivateKeyParameters(random).generatePublicKey();
+    }
+
+    @Benchmark
+    public byte[] x25519Agreement()
+    {
+        agreement.calculateAgreement(peerKey, secret, 0);
+        return secret;
+    }
+}
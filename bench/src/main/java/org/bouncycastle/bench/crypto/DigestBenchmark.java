@@ -0,0 +1,82 @@
+package org.bouncycastle.bench.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.digests.SHA3Digest;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Digest throughput for complete messages (update plus doFinal).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigestBenchmark
+{
+    @Param({ "SHA-256", "SHA-512", "SHA3-256", "BLAKE2b-512" })
+    public String digest;
+
+    @Param({ "16", "256", "1024", "8192", "65536" })
+    public int size;
+
+    private Digest md;
+    private byte[] input;
+    private byte[] output;
+
+    @Setup
+    public void setup()
+    {
+        md = createDigest(digest);
+
+        input = new byte[size];
+        output = new byte[md.getDigestSize()];
+        new SecureRandom().nextBytes(input);
+    }
+
+    @Benchmark
+    public byte[] hash()
+    {
+        md.update(input, 0, size);
+        md.doFinal(output, 0);
+        return output;
+    }
+
+    static Digest createDigest(String name)
+    {
+        if ("SHA-256".equals(name))
+        {
+            return new SHA256Digest();
+        }
+        if ("SHA-512".equals(name))
+        {
+            return new SHA512Digest();
+        }
+        if ("SHA3-256".equals(name))
+        {
+            return new SHA3Digest(256);
+        }
+        if ("BLAKE2b-512".equals(name))
+        {
+            return new Blake2bDigest(512);
+        }
+        throw new IllegalArgumentException("unknown digest: " + name);
+    }
+}
@@ -0,0 +1,82 @@
+package org.bouncycastle.bench.crypto;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ECDSA signature generation and verification over the custom curve implementations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ECDSABenchmark
+{
+    @Param({ "secp256r1", "secp384r1", "secp256k1" })
+    public String curve;
+
+    private ECDSASigner signer;
+    private ECDSASigner verifier;
+    private byte[] hash;
+    private BigInteger[] signature;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        X9ECParameters x9 = CustomNamedCurves.getByName(curve);
+        ECDomainParameters domain = new ECDomainParameters(x9.getCurve(), x9.getG(), x9.getN(), x9.getH(), x9.getSeed());
+
+        ECKeyPairGenerator kpg = new ECKeyPairGenerator();
+        kpg.init(new ECKeyGenerationParameters(domain, random));
+        AsymmetricCipherKeyPair kp = kpg.generateKeyPair();
+
+        signer = new ECDSASigner();
+        signer.init(true, new ParametersWithRandom((ECPrivateKeyParameters)kp.getPrivate(), random));
+
+        verifier = new ECDSASigner();
+        verifier.init(false, (ECPublicKeyParameters)kp.getPublic());
+
+        hash = new byte[32];
+        random.nextBytes(hash);
+        signature = signer.generateSignature(hash);
+    }
+
+    @Benchmark
+    public BigInteger[] sign()
+    {
+        return signer.generateSignature(hash);
+    }
+
+    @Benchmark
+    public boolean verify()
+    {
+        return verifier.verifySignature(hash, signature[0], signature[1]);
+    }
+}
@@ -0,0 +1,74 @@
+package org.bouncycastle.bench.crypto;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EC key pair generation and ECDH agreement over the custom curve implementations. The secp256r1 runs
+ * use the constant time SecP256R1Engine if the org.bouncycastle.ec.constant_time_p256 property is set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ECKeyAgreementBenchmark
+{
+    @Param({ "secp256r1", "secp384r1" })
+    public String curve;
+
+    private ECKeyPairGenerator kpg;
+    private ECDHBasicAgreement agreement;
+    private ECPublicKeyParameters peerKey;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        X9ECParameters x9 = CustomNamedCurves.getByName(curve);
+        ECDomainParameters domain = new ECDomainParameters(x9.getCurve(), x9.getG(), x9.getN(), x9.getH(), x9.getSeed());
+
+        kpg = new ECKeyPairGenerator();
+        kpg.init(new ECKeyGenerationParameters(domain, random));
+
+        agreement = new ECDHBasicAgreement();
+        agreement.init(kpg.generateKeyPair().getPrivate());
+
+        peerKey = (ECPublicKeyParameters)kpg.generateKeyPair().getPublic();
+    }
+
+    @Benchmark
+    public AsymmetricCipherKeyPair generateKeyPair()
+    {
+        return kpg.generateKeyPair();
+    }
+
+    @Benchmark
+    public BigInteger agree()
+    {
+        return agreement.calculateAgreement(peerKey);
+    }
+}
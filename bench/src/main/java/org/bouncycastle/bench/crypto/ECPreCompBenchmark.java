@@ -0,0 +1,91 @@
+package org.bouncycastle.bench.crypto;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointPreCompInfo;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.bouncycastle.math.ec.WNafL2RMultiplier;
+import org.bouncycastle.math.ec.WNafPreCompInfo;
+import org.bouncycastle.math.ec.WNafUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scalar multiplications, and the precomputation lookups they start with, on points shared by all
+ * benchmark threads, as the generator of a standard curve is. Run with several values of the
+ * jmh.threads property to see how they scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ECPreCompBenchmark
+{
+    @Param({ "secp256r1" })
+    public String curve;
+
+    private ECPoint G;
+    private ECPoint Q;
+    private BigInteger k;
+
+    private final ECMultiplier fixedPointMultiplier = new FixedPointCombMultiplier();
+    private final ECMultiplier wnafMultiplier = new WNafL2RMultiplier();
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        X9ECParameters x9 = CustomNamedCurves.getByName(curve);
+
+        G = x9.getG();
+        k = new BigInteger(x9.getN().bitLength() - 1, random);
+        Q = G.multiply(k).normalize();
+
+        // fill in the precomputations, so only lookups are measured
+        fixedPointMultiplier.multiply(G, k);
+        wnafMultiplier.multiply(Q, k);
+    }
+
+    @Benchmark
+    public FixedPointPreCompInfo fixedPointLookup()
+    {
+        return FixedPointUtil.precompute(G);
+    }
+
+    @Benchmark
+    public WNafPreCompInfo wnafLookup()
+    {
+        return WNafUtil.precompute(Q, WNafUtil.getWindowSize(k.bitLength()), true);
+    }
+
+    @Benchmark
+    public ECPoint fixedPointMultiply()
+    {
+        return fixedPointMultiplier.multiply(G, k);
+    }
+
+    @Benchmark
+    public ECPoint wnafMultiply()
+    {
+        return wnafMultiplier.multiply(Q, k);
+    }
+}
@@ -0,0 +1,120 @@
+package org.bouncycastle.bench.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.modes.gcm.BasicGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.GCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.Tables4kGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.Tables4kMultiBlockGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.Tables64kGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.Tables8kGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.Tables8kLongGCMMultiplier;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.Pack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AES-GCM encryption (including tag generation) with each of the GCMMultiplier implementations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GCMBenchmark
+{
+    @Param({ "Basic", "Tables4k", "Tables8k", "Tables64k", "Tables8kLong", "Tables4kMultiBlock4", "Tables4kMultiBlock8" })
+    public String multiplier;
+
+    @Param({ "16", "256", "1024", "8192", "65536" })
+    public int size;
+
+    private GCMBlockCipher gcm;
+    private KeyParameter key;
+    private byte[] nonce;
+    private long counter;
+    private byte[] input;
+    private byte[] output;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        byte[] k = new byte[16];
+        random.nextBytes(k);
+        key = new KeyParameter(k);
+
+        nonce = new byte[12];
+        random.nextBytes(nonce);
+
+        gcm = new GCMBlockCipher(new AESEngine(), createMultiplier(multiplier));
+
+        input = new byte[size];
+        output = new byte[size + 16];
+        random.nextBytes(input);
+    }
+
+    @Benchmark
+    public byte[] encrypt()
+        throws InvalidCipherTextException
+    {
+        // GCM refuses nonce reuse, so step the nonce for every message as a TLS record layer would
+        Pack.longToBigEndian(++counter, nonce, 4);
+
+        gcm.init(true, new AEADParameters(key, 128, nonce));
+
+        int len = gcm.processBytes(input, 0, size, output, 0);
+        gcm.doFinal(output, len);
+        return output;
+    }
+
+    static GCMMultiplier createMultiplier(String name)
+    {
+        if ("Basic".equals(name))
+        {
+            return new BasicGCMMultiplier();
+        }
+        if ("Tables4k".equals(name))
+        {
+            return new Tables4kGCMMultiplier();
+        }
+        if ("Tables8k".equals(name))
+        {
+            return new Tables8kGCMMultiplier();
+        }
+        if ("Tables8kLong".equals(name))
+        {
+            return new Tables8kLongGCMMultiplier();
+        }
+        if ("Tables64k".equals(name))
+        {
+            return new Tables64kGCMMultiplier();
+        }
+        if ("Tables4kMultiBlock4".equals(name))
+        {
+            return new Tables4kMultiBlockGCMMultiplier(4);
+        }
+        if ("Tables4kMultiBlock8".equals(name))
+        {
+            return new Tables4kMultiBlockGCMMultiplier(8);
+        }
+        throw new IllegalArgumentException("unknown multiplier: " + name);
+    }
+}
@@ -0,0 +1,75 @@
+package org.bouncycastle.bench.crypto;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HMac over the SHA-2 digests, with and without the cost of re-keying for every message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HMacBenchmark
+{
+    @Param({ "SHA-256", "SHA-512" })
+    public String digest;
+
+    @Param({ "16", "256", "1024", "8192", "65536" })
+    public int size;
+
+    private HMac hmac;
+    private KeyParameter key;
+    private byte[] input;
+    private byte[] output;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        hmac = new HMac(DigestBenchmark.createDigest(digest));
+
+        byte[] k = new byte[32];
+        random.nextBytes(k);
+        key = new KeyParameter(k);
+        hmac.init(key);
+
+        input = new byte[size];
+        output = new byte[hmac.getMacSize()];
+        random.nextBytes(input);
+    }
+
+    @Benchmark
+    public byte[] mac()
+    {
+        hmac.update(input, 0, size);
+        hmac.doFinal(output, 0);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] initAndMac()
+    {
+        hmac.init(key);
+        hmac.update(input, 0, size);
+        hmac.doFinal(output, 0);
+        return output;
+    }
+}
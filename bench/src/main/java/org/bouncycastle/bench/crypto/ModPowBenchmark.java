@@ -0,0 +1,64 @@
+package org.bouncycastle.bench.crypto;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.math.raw.MontContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Modular exponentiation with a full size exponent, using {@link MontContext} and BigInteger. The moduli
+ * are half the key size, as for the CRT exponentiations in an RSA private key operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModPowBenchmark
+{
+    @Param({ "2048", "3072", "4096" })
+    public int keySize;
+
+    private BigInteger modulus;
+    private BigInteger base;
+    private BigInteger exponent;
+    private MontContext context;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        int bits = keySize / 2;
+
+        modulus = BigInteger.probablePrime(bits, random);
+        base = new BigInteger(bits - 1, random);
+        exponent = new BigInteger(bits, random);
+        context = new MontContext(modulus);
+    }
+
+    @Benchmark
+    public BigInteger bigInteger()
+    {
+        return base.modPow(exponent, modulus);
+    }
+
+    @Benchmark
+    public BigInteger montContext()
+    {
+        return context.modPow(base, exponent, modulus.bitLength());
+    }
+}
@@ -0,0 +1,74 @@
+package org.bouncycastle.bench.crypto;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.engines.RSABlindedEngine;
+import org.bouncycastle.crypto.generators.RSAKeyPairGenerator;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.params.RSAKeyGenerationParameters;
+import org.bouncycastle.util.BigIntegers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Raw RSA public and (blinded, CRT) private key operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RSABenchmark
+{
+    @Param({ "2048", "3072", "4096" })
+    public int keySize;
+
+    private RSABlindedEngine privateEngine;
+    private RSABlindedEngine publicEngine;
+    private byte[] input;
+
+    @Setup
+    public void setup()
+    {
+        SecureRandom random = new SecureRandom();
+
+        RSAKeyPairGenerator kpg = new RSAKeyPairGenerator();
+        kpg.init(new RSAKeyGenerationParameters(BigInteger.valueOf(0x10001), random, keySize, 100));
+        AsymmetricCipherKeyPair kp = kpg.generateKeyPair();
+
+        privateEngine = new RSABlindedEngine();
+        privateEngine.init(false, new ParametersWithRandom(kp.getPrivate(), random));
+
+        publicEngine = new RSABlindedEngine();
+        publicEngine.init(true, kp.getPublic());
+
+        // any value less than the modulus will do
+        input = BigIntegers.asUnsignedByteArray(keySize / 8,
+            BigIntegers.createRandomInRange(BigInteger.ONE, BigInteger.ONE.shiftLeft(keySize - 1), random));
+    }
+
+    @Benchmark
+    public byte[] privateOperation()
+    {
+        return privateEngine.processBlock(input, 0, input.length);
+    }
+
+    @Benchmark
+    public byte[] publicOperation()
+    {
+        return publicEngine.processBlock(input, 0, input.length);
+    }
+}
@@ -0,0 +1,231 @@
+package org.bouncycastle.bench.tls;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.tls.BasicTlsPSKIdentity;
+import org.bouncycastle.tls.DTLSClientProtocol;
+import org.bouncycastle.tls.DTLSServerProtocol;
+import org.bouncycastle.tls.DTLSTransport;
+import org.bouncycastle.tls.DatagramChannelTransport;
+import org.bouncycastle.tls.DatagramTransport;
+import org.bouncycastle.tls.PSKTlsClient;
+import org.bouncycastle.tls.PSKTlsServer;
+import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.TlsPSKIdentityManager;
+import org.bouncycastle.tls.UDPTransport;
+import org.bouncycastle.tls.crypto.impl.bc.BcTlsCrypto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DTLS 1.2 application data throughput over loopback UDP, one record per datagram.
+ * <p>
+ * "UDPTransport" sends and receives each record with its own call, as the existing DTLS tests do;
+ * "DatagramChannelTransport" moves batches of records with DTLSTransport.sendMultiple and
+ * DTLSTransport.receiveMultiple. Results are in records per second.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DTLSTransportBenchmark
+{
+    private static final int BATCH = 16;
+    private static final int MTU = 1500;
+    private static final int WAIT_MILLIS = 1000;
+
+    private static final byte[] PSK_IDENTITY = "bench".getBytes();
+    private static final byte[] PSK = new byte[32];
+
+    @Param({ "UDPTransport", "DatagramChannelTransport" })
+    public String transport;
+
+    @Param({ "64", "512" })
+    public int size;
+
+    private DTLSTransport client;
+    private DTLSTransport server;
+    private byte[] sendBuf;
+    private int[] sendLengths;
+    private byte[] receiveBuf;
+    private int[] receiveLengths;
+    private boolean batched;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        batched = "DatagramChannelTransport".equals(transport);
+
+        DatagramTransport[] pair = batched ? createChannelPair() : createSocketPair();
+
+        final DatagramTransport serverTransport = pair[1];
+        final DTLSTransport[] accepted = new DTLSTransport[1];
+        final Exception[] failure = new Exception[1];
+
+        Thread acceptor = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    accepted[0] = new DTLSServerProtocol().accept(new BenchServer(), serverTransport);
+                }
+                catch (Exception e)
+                {
+                    failure[0] = e;
+                }
+            }
+        };
+        acceptor.start();
+
+        client = new DTLSClientProtocol().connect(new BenchClient(), pair[0]);
+
+        acceptor.join();
+        if (failure[0] != null)
+        {
+            throw failure[0];
+        }
+        server = accepted[0];
+
+        sendBuf = new byte[BATCH * size];
+        new SecureRandom().nextBytes(sendBuf);
+        sendLengths = new int[BATCH];
+        for (int i = 0; i < BATCH; ++i)
+        {
+            sendLengths[i] = size;
+        }
+
+        receiveBuf = new byte[BATCH * server.getReceiveLimit()];
+        receiveLengths = new int[BATCH];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int transfer() throws IOException
+    {
+        if (batched)
+        {
+            client.sendMultiple(sendBuf, 0, sendLengths, BATCH);
+
+            int received = 0;
+            while (received < BATCH)
+            {
+                int count = server.receiveMultiple(receiveBuf, 0, receiveBuf.length, receiveLengths, WAIT_MILLIS);
+                if (count < 0)
+                {
+                    throw new IOException("datagram lost");
+                }
+                received += count;
+            }
+            return received;
+        }
+
+        for (int i = 0; i < BATCH; ++i)
+        {
+            client.send(sendBuf, i * size, size);
+        }
+
+        int received = 0;
+        while (received < BATCH)
+        {
+            if (server.receive(receiveBuf, 0, receiveBuf.length, WAIT_MILLIS) < 0)
+            {
+                throw new IOException("datagram lost");
+            }
+            ++received;
+        }
+        return received;
+    }
+
+    private static DatagramTransport[] createSocketPair() throws IOException
+    {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+
+        DatagramSocket a = new DatagramSocket(0, localhost);
+        DatagramSocket b = new DatagramSocket(0, localhost);
+        a.connect(localhost, b.getLocalPort());
+        b.connect(localhost, a.getLocalPort());
+
+        return new DatagramTransport[]{ new UDPTransport(a, MTU), new UDPTransport(b, MTU) };
+    }
+
+    private static DatagramTransport[] createChannelPair() throws IOException
+    {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+
+        DatagramChannel a = DatagramChannel.open();
+        DatagramChannel b = DatagramChannel.open();
+        a.socket().bind(new InetSocketAddress(localhost, 0));
+        b.socket().bind(new InetSocketAddress(localhost, 0));
+        a.connect(b.socket().getLocalSocketAddress());
+        b.connect(a.socket().getLocalSocketAddress());
+
+        return new DatagramTransport[]{ new DatagramChannelTransport(a, MTU), new DatagramChannelTransport(b, MTU) };
+    }
+
+    private static class BenchClient
+        extends PSKTlsClient
+    {
+        BenchClient()
+        {
+            super(new BcTlsCrypto(new SecureRandom()), PSK_IDENTITY, PSK);
+        }
+
+        public ProtocolVersion[] getSupportedVersions()
+        {
+            return ProtocolVersion.DTLSv12.only();
+        }
+    }
+
+    private static class BenchServer
+        extends PSKTlsServer
+    {
+        BenchServer()
+        {
+            super(new BcTlsCrypto(new SecureRandom()), new TlsPSKIdentityManager()
+            {
+                public byte[] getHint()
+                {
+                    return null;
+                }
+
+                public byte[] getPSK(byte[] identity)
+                {
+                    return PSK;
+                }
+            });
+        }
+
+        public ProtocolVersion[] getSupportedVersions()
+        {
+            return ProtocolVersion.DTLSv12.only();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package org.bouncycastle.bench.tls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.tls.PSKTlsClient;
+import org.bouncycastle.tls.PSKTlsServer;
+import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.TlsChannelConnection;
+import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsPSKIdentityManager;
+import org.bouncycastle.tls.TlsProtocol;
+import org.bouncycastle.tls.TlsSelectorDriver;
+import org.bouncycastle.tls.TlsServerProtocol;
+import org.bouncycastle.tls.crypto.impl.bc.BcTlsCrypto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TLS 1.2 echo throughput over loopback TCP, with many concurrent connections.
+ * <p>
+ * Each invocation sends one message on every connection and waits for all of them to be echoed
+ * back. The client side always runs on a single TlsSelectorDriver; the server either runs a
+ * blocking TlsServerProtocol on a thread per connection ("ThreadPerConnection"), or spreads the
+ * connections over two TlsSelectorDriver threads ("SelectorDriver"). Results are in round trips
+ * per second, for all connections together.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TlsSelectorDriverBenchmark
+{
+    private static final int SERVER_DRIVERS = 2;
+
+    private static final byte[] PSK_IDENTITY = "bench".getBytes();
+    private static final byte[] PSK = new byte[32];
+
+    @Param({ "ThreadPerConnection", "SelectorDriver" })
+    public String server;
+
+    @Param({ "16", "256" })
+    public int connections;
+
+    @Param({ "64", "4096" })
+    public int size;
+
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private final List<TlsSelectorDriver> drivers = new ArrayList<TlsSelectorDriver>();
+    private final List<TlsChannelConnection> clients = new ArrayList<TlsChannelConnection>();
+    private final Semaphore completed = new Semaphore(0);
+
+    private ServerSocket serverSocket;
+    private TlsSelectorDriver clientDriver;
+    private byte[] message;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+
+        InetSocketAddress address;
+        if ("SelectorDriver".equals(server))
+        {
+            address = startSelectorServer(localhost);
+        }
+        else
+        {
+            address = startThreadPerConnectionServer(localhost);
+        }
+
+        message = new byte[size];
+        new SecureRandom().nextBytes(message);
+
+        clientDriver = new TlsSelectorDriver(new ClientHandler());
+        start(clientDriver, "client");
+
+        TlsSelectorDriver.ProtocolFactory clientFactory = new TlsSelectorDriver.ProtocolFactory()
+        {
+            public TlsProtocol createProtocol(SocketChannel channel) throws IOException
+            {
+                TlsClientProtocol protocol = new TlsClientProtocol();
+                protocol.connect(new BenchClient());
+                return protocol;
+            }
+        };
+
+        for (int i = 0; i < connections; ++i)
+        {
+            SocketChannel channel = SocketChannel.open();
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            channel.connect(address);
+            clientDriver.register(channel, clientFactory, new int[1]);
+        }
+
+        // The client handler releases a permit as each handshake completes
+        if (!completed.tryAcquire(connections, 60, TimeUnit.SECONDS))
+        {
+            throw new IOException("handshakes did not complete");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        clientDriver.shutdown();
+        for (TlsSelectorDriver driver : drivers)
+        {
+            driver.shutdown();
+        }
+        if (null != serverSocket)
+        {
+            serverSocket.close();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(10000);
+        }
+    }
+
+    @Benchmark
+    public int echo() throws Exception
+    {
+        clientDriver.invokeLater(new Runnable()
+        {
+            public void run()
+            {
+                for (TlsChannelConnection connection : clients)
+                {
+                    try
+                    {
+                        connection.write(message, 0, message.length);
+                    }
+                    catch (IOException e)
+                    {
+                        connection.close();
+                    }
+                }
+            }
+        });
+
+        if (!completed.tryAcquire(connections, 60, TimeUnit.SECONDS))
+        {
+            throw new IOException("echo did not complete");
+        }
+        return connections;
+    }
+
+    private InetSocketAddress startSelectorServer(InetAddress localhost) throws IOException
+    {
+        TlsSelectorDriver[] workers = new TlsSelectorDriver[SERVER_DRIVERS];
+        for (int i = 0; i < SERVER_DRIVERS; ++i)
+        {
+            workers[i] = new TlsSelectorDriver(new EchoHandler());
+            drivers.add(workers[i]);
+            start(workers[i], "server-" + i);
+        }
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(localhost, 0), connections);
+
+        workers[0].listen(serverChannel, new TlsSelectorDriver.ProtocolFactory()
+        {
+            public TlsProtocol createProtocol(SocketChannel channel) throws IOException
+            {
+                channel.socket().setTcpNoDelay(true);
+
+                TlsServerProtocol protocol = new TlsServerProtocol();
+                protocol.accept(new BenchServer());
+                return protocol;
+            }
+        }, workers);
+
+        return (InetSocketAddress)serverChannel.socket().getLocalSocketAddress();
+    }
+
+    private InetSocketAddress startThreadPerConnectionServer(InetAddress localhost) throws IOException
+    {
+        serverSocket = new ServerSocket(0, connections, localhost);
+
+        Thread acceptor = new Thread("acceptor")
+        {
+            public void run()
+            {
+                try
+                {
+                    for (;;)
+                    {
+                        final Socket socket = serverSocket.accept();
+                        socket.setTcpNoDelay(true);
+
+                        Thread worker = new Thread("server")
+                        {
+                            public void run()
+                            {
+                                echoBlocking(socket);
+                            }
+                        };
+                        worker.setDaemon(true);
+                        worker.start();
+                    }
+                }
+                catch (IOException e)
+                {
+                    // The server socket has been closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+        threads.add(acceptor);
+
+        return (InetSocketAddress)serverSocket.getLocalSocketAddress();
+    }
+
+    private void start(TlsSelectorDriver driver, String name)
+    {
+        Thread thread = new Thread(driver, name);
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+    }
+
+    private static void echoBlocking(Socket socket)
+    {
+        try
+        {
+            TlsServerProtocol protocol = new TlsServerProtocol(socket.getInputStream(), socket.getOutputStream());
+            protocol.accept(new BenchServer());
+
+            InputStream input = protocol.getInputStream();
+            OutputStream output = protocol.getOutputStream();
+
+            byte[] buf = new byte[16384];
+            int count;
+            while ((count = input.read(buf)) > 0)
+            {
+                output.write(buf, 0, count);
+            }
+            protocol.close();
+        }
+        catch (IOException e)
+        {
+            // The client has gone away
+        }
+        finally
+        {
+            try
+            {
+                socket.close();
+            }
+            catch (IOException e)
+            {
+                // Ignore
+            }
+        }
+    }
+
+    private static class EchoHandler
+        implements TlsSelectorDriver.Handler
+    {
+        private final byte[] buf = new byte[16384];
+
+        public void handshakeCompleted(TlsChannelConnection connection)
+        {
+        }
+
+        public void dataAvailable(TlsChannelConnection connection) throws IOException
+        {
+            // Stop echoing while the client isn't keeping up; resume from outputDrained
+            int count;
+            while (connection.isWritable() && (count = connection.read(buf, 0, buf.length)) > 0)
+            {
+                connection.write(buf, 0, count);
+            }
+        }
+
+        public void outputDrained(TlsChannelConnection connection) throws IOException
+        {
+            dataAvailable(connection);
+        }
+
+        public void connectionClosed(TlsChannelConnection connection, Exception cause)
+        {
+        }
+    }
+
+    private class ClientHandler
+        implements TlsSelectorDriver.Handler
+    {
+        private final byte[] buf = new byte[16384];
+
+        public void handshakeCompleted(TlsChannelConnection connection)
+        {
+            clients.add(connection);
+            completed.release();
+        }
+
+        public void dataAvailable(TlsChannelConnection connection)
+        {
+            int[] received = (int[])connection.getAttachment();
+
+            int count;
+            while ((count = connection.read(buf, 0, buf.length)) > 0)
+            {
+                received[0] += count;
+            }
+
+            while (received[0] >= size)
+            {
+                received[0] -= size;
+                completed.release();
+            }
+        }
+
+        public void outputDrained(TlsChannelConnection connection)
+        {
+        }
+
+        public void connectionClosed(TlsChannelConnection connection, Exception cause)
+        {
+        }
+    }
+
+    private static class BenchClient
+        extends PSKTlsClient
+    {
+        BenchClient()
+        {
+            super(new BcTlsCrypto(new SecureRandom()), PSK_IDENTITY, PSK);
+        }
+
+        public ProtocolVersion[] getSupportedVersions()
+        {
+            return ProtocolVersion.TLSv12.only();
+        }
+    }
+
+    private static class BenchServer
+        extends PSKTlsServer
+    {
+        BenchServer()
+        {
+            super(new BcTlsCrypto(new SecureRandom()), new TlsPSKIdentityManager()
+            {
+                public byte[] getHint()
+                {
+                    return null;
+                }
+
+                public byte[] getPSK(byte[] identity)
+                {
+                    return PSK;
+                }
+            });
+        }
+
+        public ProtocolVersion[] getSupportedVersions()
+        {
+            return ProtocolVersion.TLSv12.only();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.bouncycastle.crypto;
+
+/**
+ * Block ciphers that can process several consecutive blocks in a single call implement this.
+ * <p>
+ * Modes such as CTR and GCM use this to amortise the per-call checks and the packing of the
+ * cipher state across a whole buffer, rather than paying them for each block.
+ * </p>
+ */
+public interface MultiBlockCipher
+    extends BlockCipher
+{
+    /**
+     * Return the number of bytes the cipher would prefer to be given in each call to processBlocks
+     * (always a multiple of the block size).
+     *
+     * @return the preferred number of bytes per call.
+     */
+    int getMultiBlockSize();
+
+    /**
+     * Process blockCount blocks of input from the array in and write them to the out array.
+     *
+     * @param in the array containing the input data.
+     * @param inOff offset into the in array the data starts at.
+     * @param blockCount the number of blocks to process.
+     * @param out the array the output data will be copied into.
+     * @param outOff the offset into the out array the output will start at.
+     * @exception DataLengthException if there isn't enough data in in, or
+     * space in out.
+     * @exception IllegalStateException if the cipher isn't initialised.
+     * @return the number of bytes processed and produced.
+     */
+    int processBlocks(byte[] in, int inOff, int blockCount, byte[] out, int outOff)
+        throws DataLengthException, IllegalStateException;
+}
@@ -9,6 +9,8 @@
 import org.bouncycastle.crypto.params.DHPrivateKeyParameters;
 import org.bouncycastle.crypto.params.DHPublicKeyParameters;
 import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.math.raw.MontContext;
+import org.bouncycastle.util.Properties;
 
 /**
  * a Diffie-Hellman key agreement class.
@@ -24,6 +26,7 @@
 
     private DHPrivateKeyParameters  key;
     private DHParameters            dhParams;
+    private MontContext             pContext;
 
     public void init(
         CipherParameters    param)
@@ -47,6 +50,15 @@ public void init(
 
         this.key = (DHPrivateKeyParameters)kParam;
         this.dhParams = key.getParameters();
+
+        if (Properties.isOverrideSet("org.bouncycastle.constant_time_modpow") && dhParams.getP().testBit(0))
+        {
+            this.pContext = new MontContext(dhParams.getP());
+        }
+        else
+        {
+            this.pContext = null;
+        }
     }
 
     public int getFieldSize()
@@ -76,7 +88,7 @@ public BigInteger calculateAgreement(
             throw new IllegalArgumentException("Diffie-Hellman public key is weak");
         }
 
-        BigInteger result = peerY.modPow(key.getX(), p);
+        BigInteger result = modPow(peerY, key.getX(), p);
         if (result.equals(ONE))
         {
             throw new IllegalStateException("Shared key can't be 1");
@@ -84,4 +96,21 @@ public BigInteger calculateAgreement(
 
         return result;
     }
+
+    private BigInteger modPow(BigInteger b, BigInteger x, BigInteger p)
+    {
+        if (pContext != null)
+        {
+            // the work done depends only on the bound, which is public: the size of q if known, otherwise of p
+            BigInteger q = dhParams.getQ();
+            int bound = (q != null) ? q.bitLength() : p.bitLength();
+
+            if (x.bitLength() <= bound)
+            {
+                return pContext.modPow(b, x, bound);
+            }
+        }
+
+        return b.modPow(x, p);
+    }
 }
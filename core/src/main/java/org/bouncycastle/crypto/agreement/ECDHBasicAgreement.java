@@ -10,6 +10,9 @@
 import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECConstants;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.custom.sec.SecP256R1Engine;
+import org.bouncycastle.math.raw.Nat256;
+import org.bouncycastle.util.Properties;
 
 /**
  * P1363 7.2.1 ECSVDP-DH
@@ -29,11 +32,16 @@
     implements BasicAgreement
 {
     private ECPrivateKeyParameters key;
+    private boolean useP256Engine;
 
     public void init(
         CipherParameters key)
     {
         this.key = (ECPrivateKeyParameters)key;
+
+        ECDomainParameters params = this.key.getParameters();
+        this.useP256Engine = Properties.isOverrideSet("org.bouncycastle.ec.constant_time_p256")
+            && SecP256R1Engine.isSupported(params.getCurve(), params.getG(), params.getN());
     }
 
     public int getFieldSize()
@@ -67,6 +75,20 @@ public BigInteger calculateAgreement(
             Q = ECAlgorithms.referenceMultiply(Q, h);
         }
 
+        if (useP256Engine)
+        {
+            // constant time in the private key
+            Q = Q.normalize();
+            int[] x = Nat256.create(), y = Nat256.create();
+            if (!SecP256R1Engine.scalarMult(Nat256.fromBigInteger(d),
+                Nat256.fromBigInteger(Q.getAffineXCoord().toBigInteger()),
+                Nat256.fromBigInteger(Q.getAffineYCoord().toBigInteger()), x, y))
+            {
+                throw new IllegalStateException("Infinity is not a valid agreement value for ECDH");
+            }
+            return Nat256.toBigInteger(x);
+        }
+
         ECPoint P = Q.multiply(d).normalize();
         if (P.isInfinity())
         {
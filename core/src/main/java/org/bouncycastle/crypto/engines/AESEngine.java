@@ -1,8 +1,8 @@
 package org.bouncycastle.crypto.engines;
 
-import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.MultiBlockCipher;
 import org.bouncycastle.crypto.OutputLengthException;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.util.Arrays;
@@ -32,7 +32,7 @@
  *
  */
 public class AESEngine
-    implements BlockCipher
+    implements MultiBlockCipher
 {
     // The S box
     private static final byte[] S = {
@@ -419,6 +419,7 @@ private int[][] generateWorkingKey(byte[] key, boolean forEncryption)
     private byte[]      s;
 
     private static final int BLOCK_SIZE = 16;
+    private static final int MULTI_BLOCK_SIZE = 16 * BLOCK_SIZE;
 
     /**
      * default constructor - 128 bit block size.
@@ -504,6 +505,64 @@ public int processBlock(
         return BLOCK_SIZE;
     }
 
+    public int getMultiBlockSize()
+    {
+        return MULTI_BLOCK_SIZE;
+    }
+
+    public int processBlocks(
+        byte[] in,
+        int inOff,
+        int blockCount,
+        byte[] out,
+        int outOff)
+    {
+        if (WorkingKey == null)
+        {
+            throw new IllegalStateException("AES engine not initialised");
+        }
+
+        int len = blockCount * BLOCK_SIZE;
+
+        if (blockCount < 0 || (inOff + len) > in.length)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if ((outOff + len) > out.length)
+        {
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        // checks and key schedule lookup are done once for the whole run of blocks
+        int[][] KW = WorkingKey;
+
+        if (forEncryption)
+        {
+            for (int i = 0; i < blockCount; ++i)
+            {
+                unpackBlock(in, inOff);
+                encryptBlock(KW);
+                packBlock(out, outOff);
+                inOff += BLOCK_SIZE;
+                outOff += BLOCK_SIZE;
+            }
+        }
+        else
+        {
+            for (int i = 0; i < blockCount; ++i)
+            {
+                unpackBlock(in, inOff);
+                decryptBlock(KW);
+                packBlock(out, outOff);
+                inOff += BLOCK_SIZE;
+                outOff += BLOCK_SIZE;
+            }
+        }
+
+        return len;
+    }
+
     public void reset()
     {
     }
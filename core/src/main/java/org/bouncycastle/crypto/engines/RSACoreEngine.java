@@ -7,7 +7,9 @@
 import org.bouncycastle.crypto.params.ParametersWithRandom;
 import org.bouncycastle.crypto.params.RSAKeyParameters;
 import org.bouncycastle.crypto.params.RSAPrivateCrtKeyParameters;
+import org.bouncycastle.math.raw.MontContext;
 import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Properties;
 
 /**
  * this does your basic RSA algorithm.
@@ -16,6 +18,9 @@
 {
     private RSAKeyParameters key;
     private boolean          forEncryption;
+    private MontContext      pContext;
+    private MontContext      qContext;
+    private MontContext      modContext;
 
     /**
      * initialise the RSA engine.
@@ -39,6 +44,27 @@ public void init(
         }
 
         this.forEncryption = forEncryption;
+
+        this.pContext = null;
+        this.qContext = null;
+        this.modContext = null;
+
+        // private key operations can use constant time exponentiation, with the Montgomery
+        // contexts for the key set up once here and reused by each operation.
+        if (key.isPrivate() && Properties.isOverrideSet("org.bouncycastle.constant_time_modpow"))
+        {
+            if (key instanceof RSAPrivateCrtKeyParameters)
+            {
+                RSAPrivateCrtKeyParameters crtKey = (RSAPrivateCrtKeyParameters)key;
+
+                this.pContext = new MontContext(crtKey.getP());
+                this.qContext = new MontContext(crtKey.getQ());
+            }
+            else if (key.getModulus().testBit(0))
+            {
+                this.modContext = new MontContext(key.getModulus());
+            }
+        }
     }
 
     /**
@@ -188,10 +214,10 @@ public BigInteger processBlock(BigInteger input)
             BigInteger mP, mQ, h, m;
 
             // mP = ((input mod p) ^ dP)) mod p
-            mP = (input.remainder(p)).modPow(dP, p);
+            mP = modPow(pContext, input.remainder(p), dP, p);
 
             // mQ = ((input mod q) ^ dQ)) mod q
-            mQ = (input.remainder(q)).modPow(dQ, q);
+            mQ = modPow(qContext, input.remainder(q), dQ, q);
 
             // h = qInv * (mP - mQ) mod p
             h = mP.subtract(mQ);
@@ -206,8 +232,17 @@ public BigInteger processBlock(BigInteger input)
         }
         else
         {
-            return input.modPow(
-                        key.getExponent(), key.getModulus());
+            return modPow(modContext, input, key.getExponent(), key.getModulus());
         }
     }
+
+    private static BigInteger modPow(MontContext context, BigInteger b, BigInteger e, BigInteger m)
+    {
+        if (context != null && e.bitLength() <= m.bitLength())
+        {
+            return context.modPow(b, e, m.bitLength());
+        }
+
+        return b.modPow(e, m);
+    }
 }
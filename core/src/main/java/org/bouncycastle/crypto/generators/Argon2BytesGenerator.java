@@ -1,5 +1,8 @@
 package org.bouncycastle.crypto.generators;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
 import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.digests.Blake2bDigest;
 import org.bouncycastle.crypto.params.Argon2Parameters;
@@ -10,6 +13,12 @@
 
 /**
  * Argon2 PBKDF - Based on the results of https://password-hashing.net/ and https://www.ietf.org/archive/id/draft-irtf-cfrg-argon2-03.txt
+ * <p>
+ * By default all lanes are filled sequentially on the calling thread. If an {@link Executor} is passed
+ * to the constructor the segments of each slice are filled concurrently, one task per lane, with the
+ * calling thread waiting for every lane to finish before moving on to the next slice. The output is
+ * identical in both cases.
+ * </p>
  */
 public class Argon2BytesGenerator
 {
@@ -45,9 +54,21 @@
 
     private byte[] result;
 
+    private final Executor executor;
+
     public Argon2BytesGenerator()
     {
+        this(null);
+    }
 
+    /**
+     * Create a generator which fills the lanes of each slice in parallel.
+     *
+     * @param executor the executor to run the lane tasks on, null to fill the lanes sequentially.
+     */
+    public Argon2BytesGenerator(Executor executor)
+    {
+        this.executor = executor;
     }
 
     /**
@@ -210,19 +231,93 @@ private void fillBlock(Block X, Block Y, Block currentBlock, boolean withXor)
 
     private void fillMemoryBlocks()
     {
+        int lanes = parameters.getLanes();
+
         for (int i = 0; i < parameters.getIterations(); i++)
         {
             for (int j = 0; j < ARGON2_SYNC_POINTS; j++)
             {
-                for (int k = 0; k < parameters.getLanes(); k++)
+                if (executor != null && lanes > 1)
+                {
+                    fillSlice(i, j);
+                }
+                else
                 {
-                    Position position = new Position(i, k, j, 0);
-                    fillSegment(position);
+                    for (int k = 0; k < lanes; k++)
+                    {
+                        Position position = new Position(i, k, j, 0);
+                        fillSegment(position);
+                    }
                 }
             }
         }
     }
 
+    /*
+     * Segments in the same slice only reference blocks from completed slices, or from their own
+     * lane, so they can be filled concurrently. The slice is a synchronisation point: we do not
+     * return until every lane has finished.
+     */
+    private void fillSlice(int pass, int slice)
+    {
+        int lanes = parameters.getLanes();
+        CountDownLatch done = new CountDownLatch(lanes - 1);
+        SegmentTask[] tasks = new SegmentTask[lanes - 1];
+
+        for (int k = 1; k < lanes; k++)
+        {
+            tasks[k - 1] = new SegmentTask(new Position(pass, k, slice, 0), done);
+            executor.execute(tasks[k - 1]);
+        }
+
+        // the calling thread takes care of lane 0
+        RuntimeException failure = null;
+        try
+        {
+            fillSegment(new Position(pass, 0, slice, 0));
+        }
+        catch (RuntimeException e)
+        {
+            failure = e;
+        }
+
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                done.await();
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                // memory is still in use by the lane tasks, so we must wait regardless
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int k = 0; failure == null && k < tasks.length; k++)
+        {
+            Throwable t = tasks[k].failure;
+            if (t instanceof Error)
+            {
+                throw (Error)t;
+            }
+            if (t != null)
+            {
+                failure = (t instanceof RuntimeException) ? (RuntimeException)t : new IllegalStateException("lane failed: " + t.getMessage());
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
     private void fillSegment(Position position)
     {
 
@@ -704,6 +799,37 @@ public void clear()
         }
     }
 
+    private class SegmentTask
+        implements Runnable
+    {
+        private final Position position;
+        private final CountDownLatch done;
+
+        private volatile Throwable failure;
+
+        SegmentTask(Position position, CountDownLatch done)
+        {
+            this.position = position;
+            this.done = done;
+        }
+
+        public void run()
+        {
+            try
+            {
+                fillSegment(position);
+            }
+            catch (Throwable t)
+            {
+                failure = t;
+            }
+            finally
+            {
+                done.countDown();
+            }
+        }
+    }
+
     private static class Position
     {
         int pass;
@@ -16,7 +16,10 @@
 import org.bouncycastle.math.ec.ECPoint;
 import org.bouncycastle.math.ec.FixedPointCombMultiplier;
 import org.bouncycastle.math.ec.WNafUtil;
+import org.bouncycastle.math.ec.custom.sec.SecP256R1Engine;
+import org.bouncycastle.math.raw.Nat256;
 import org.bouncycastle.util.BigIntegers;
+import org.bouncycastle.util.Properties;
 
 public class ECKeyPairGenerator
     implements AsymmetricCipherKeyPairGenerator, ECConstants
@@ -24,6 +27,8 @@
     ECDomainParameters  params;
     SecureRandom        random;
 
+    private boolean     useP256Engine;
+
     public void init(
         KeyGenerationParameters param)
     {
@@ -36,6 +41,9 @@ public void init(
         {
             this.random = CryptoServicesRegistrar.getSecureRandom();
         }
+
+        this.useP256Engine = Properties.isOverrideSet("org.bouncycastle.ec.constant_time_p256")
+            && SecP256R1Engine.isSupported(params.getCurve(), params.getG(), params.getN());
     }
 
     /**
@@ -66,7 +74,17 @@ public AsymmetricCipherKeyPair generateKeyPair()
             break;
         }
 
-        ECPoint Q = createBasePointMultiplier().multiply(params.getG(), d);
+        ECPoint Q;
+        if (useP256Engine)
+        {
+            int[] x = Nat256.create(), y = Nat256.create();
+            SecP256R1Engine.scalarMultBase(Nat256.fromBigInteger(d), x, y);
+            Q = params.getCurve().createPoint(Nat256.toBigInteger(x), Nat256.toBigInteger(y));
+        }
+        else
+        {
+            Q = createBasePointMultiplier().multiply(params.getG(), d);
+        }
 
         return new AsymmetricCipherKeyPair(
             new ECPublicKeyParameters(Q, params),
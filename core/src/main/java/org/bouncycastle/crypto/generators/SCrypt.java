@@ -1,5 +1,8 @@
 package org.bouncycastle.crypto.generators;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
 import org.bouncycastle.crypto.PBEParametersGenerator;
 import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.crypto.engines.Salsa20Engine;
@@ -12,6 +15,9 @@
  * <p>
  * Scrypt was created by Colin Percival and is specified in <a
  * href="https://tools.ietf.org/html/rfc7914">RFC 7914 - The scrypt Password-Based Key Derivation Function</a>
+ * <p>
+ * The p SMix invocations are independent of each other, so they can optionally be run concurrently
+ * on an {@link Executor}, and their scratch memory can be drawn from a shared {@link SCryptMemoryPool}.
  */
 public class SCrypt
 {
@@ -34,6 +40,27 @@ private SCrypt()
      * @return the generated key.
      */
     public static byte[] generate(byte[] P, byte[] S, int N, int r, int p, int dkLen)
+    {
+        return generate(P, S, N, r, p, dkLen, null, null);
+    }
+
+    /**
+     * Generate a key using the scrypt key derivation function, optionally running the SMix
+     * invocations in parallel and using pooled scratch memory.
+     *
+     * @param P     the bytes of the pass phrase.
+     * @param S     the salt to use for this invocation.
+     * @param N     CPU/Memory cost parameter. Must be larger than 1, a power of 2 and less than
+     *              <code>2^(128 * r / 8)</code>.
+     * @param r     the block size, must be &gt;= 1.
+     * @param p     Parallelization parameter. Must be a positive integer less than or equal to
+     *              <code>Integer.MAX_VALUE / (128 * r * 8)</code>.
+     * @param dkLen the length of the key to generate.
+     * @param executor executor to run the p SMix invocations on, null to run them on the calling thread.
+     * @param memoryPool pool to take the <code>N * r * 128</code> byte scratch arrays from, null to allocate them.
+     * @return the generated key.
+     */
+    public static byte[] generate(byte[] P, byte[] S, int N, int r, int p, int dkLen, Executor executor, SCryptMemoryPool memoryPool)
     {
         if (P == null)
         {
@@ -66,10 +93,14 @@ public static byte[] generate(byte[] P, byte[] S, int N, int r, int p, int dkLen
         {
             throw new IllegalArgumentException("Generated key length dkLen must be >= 1.");
         }
-        return MFcrypt(P, S, N, r, p, dkLen);
+        if ((long)N * r * 32 > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Cost parameter N and block size r too large: N * r * 128 must be < 2^33");
+        }
+        return MFcrypt(P, S, N, r, p, dkLen, executor, memoryPool);
     }
 
-    private static byte[] MFcrypt(byte[] P, byte[] S, int N, int r, int p, int dkLen)
+    private static byte[] MFcrypt(byte[] P, byte[] S, int N, int r, int p, int dkLen, Executor executor, SCryptMemoryPool memoryPool)
     {
         int MFLenBytes = r * 128;
         byte[] bytes = SingleIterationPBKDF2(P, S, p * MFLenBytes);
@@ -84,10 +115,16 @@ private static byte[] MFcrypt(byte[] P, byte[] S, int N, int r, int p, int dkLen
             Pack.littleEndianToInt(bytes, 0, B);
 
             int MFLenWords = MFLenBytes >>> 2;
-            for (int BOff = 0; BOff < BLen; BOff += MFLenWords)
+            if (executor != null && p > 1)
             {
-                // TODO These can be done in parallel threads
-                SMix(B, BOff, N, r);
+                parallelSMix(B, MFLenWords, N, r, p, executor, memoryPool);
+            }
+            else
+            {
+                for (int BOff = 0; BOff < BLen; BOff += MFLenWords)
+                {
+                    SMix(B, BOff, N, r, memoryPool);
+                }
             }
 
             Pack.intToLittleEndian(B, bytes, 0);
@@ -109,7 +146,69 @@ private static byte[] SingleIterationPBKDF2(byte[] P, byte[] S, int dkLen)
         return key.getKey();
     }
 
-    private static void SMix(int[] B, int BOff, int N, int r)
+    /*
+     * Each SMix works on its own r * 128 byte chunk of B, so the p invocations can run concurrently.
+     * The calling thread runs the last one itself and then waits for the others.
+     */
+    private static void parallelSMix(int[] B, int MFLenWords, int N, int r, int p, Executor executor, SCryptMemoryPool memoryPool)
+    {
+        CountDownLatch done = new CountDownLatch(p - 1);
+        SMixTask[] tasks = new SMixTask[p - 1];
+
+        for (int i = 0; i < p - 1; ++i)
+        {
+            tasks[i] = new SMixTask(B, i * MFLenWords, N, r, memoryPool, done);
+            executor.execute(tasks[i]);
+        }
+
+        RuntimeException failure = null;
+        try
+        {
+            SMix(B, (p - 1) * MFLenWords, N, r, memoryPool);
+        }
+        catch (RuntimeException e)
+        {
+            failure = e;
+        }
+
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                done.await();
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                // B is still in use by the other tasks, so we must wait regardless
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int i = 0; failure == null && i < tasks.length; ++i)
+        {
+            Throwable t = tasks[i].failure;
+            if (t instanceof Error)
+            {
+                throw (Error)t;
+            }
+            if (t != null)
+            {
+                failure = (t instanceof RuntimeException) ? (RuntimeException)t : new IllegalStateException("SMix failed: " + t.getMessage());
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    private static void SMix(int[] B, int BOff, int N, int r, SCryptMemoryPool memoryPool)
     {
         int BCount = r * 32;
 
@@ -118,15 +217,15 @@ private static void SMix(int[] B, int BOff, int N, int r)
         int[] blockY = new int[BCount];
 
         int[] X = new int[BCount];
-        int[][] V = new int[N][];
+        int[] V = (memoryPool != null) ? memoryPool.acquire(N * BCount) : new int[N * BCount];
 
         try
         {
             System.arraycopy(B, BOff, X, 0, BCount);
 
-            for (int i = 0; i < N; ++i)
+            for (int i = 0, VOff = 0; i < N; ++i, VOff += BCount)
             {
-                V[i] = Arrays.clone(X);
+                System.arraycopy(X, 0, V, VOff, BCount);
                 BlockMix(X, blockX1, blockX2, blockY, r);
             }
 
@@ -134,7 +233,7 @@ private static void SMix(int[] B, int BOff, int N, int r)
             for (int i = 0; i < N; ++i)
             {
                 int j = X[BCount - 16] & mask;
-                Xor(X, V[j], 0, X);
+                Xor(X, V, j * BCount, X);
                 BlockMix(X, blockX1, blockX2, blockY, r);
             }
 
@@ -142,7 +241,14 @@ private static void SMix(int[] B, int BOff, int N, int r)
         }
         finally
         {
-            ClearAll(V);
+            if (memoryPool != null)
+            {
+                memoryPool.release(V);
+            }
+            else
+            {
+                Clear(V);
+            }
             ClearAll(new int[][]{X, blockX1, blockX2, blockY});
         }
     }
@@ -199,6 +305,45 @@ private static void ClearAll(int[][] arrays)
         }
     }
 
+    private static class SMixTask
+        implements Runnable
+    {
+        private final int[] B;
+        private final int BOff;
+        private final int N;
+        private final int r;
+        private final SCryptMemoryPool memoryPool;
+        private final CountDownLatch done;
+
+        private volatile Throwable failure;
+
+        SMixTask(int[] B, int BOff, int N, int r, SCryptMemoryPool memoryPool, CountDownLatch done)
+        {
+            this.B = B;
+            this.BOff = BOff;
+            this.N = N;
+            this.r = r;
+            this.memoryPool = memoryPool;
+            this.done = done;
+        }
+
+        public void run()
+        {
+            try
+            {
+                SMix(B, BOff, N, r, memoryPool);
+            }
+            catch (Throwable t)
+            {
+                failure = t;
+            }
+            finally
+            {
+                done.countDown();
+            }
+        }
+    }
+
     // note: we know X is non-zero
     private static boolean isPowerOf2(int x)
     {
@@ -0,0 +1,148 @@
+package org.bouncycastle.crypto.generators;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.bouncycastle.util.Arrays;
+
+/**
+ * A bounded pool of scratch memory for {@link SCrypt}.
+ * <p>
+ * Each SMix invocation needs a working array of <code>N * r * 128</code> bytes. Passing a pool to
+ * {@link SCrypt#generate(byte[], byte[], int, int, int, int, java.util.concurrent.Executor, SCryptMemoryPool)}
+ * means these arrays are recycled between calls rather than allocated afresh each time, and that the total
+ * scratch memory held by all callers sharing the pool never exceeds the limit given at construction. If the
+ * limit has been reached, a caller waits until another caller returns its array.
+ * </p>
+ * <p>
+ * Arrays are zeroed before being returned to the pool.
+ * </p>
+ */
+public class SCryptMemoryPool
+{
+    private final long maxBytes;
+    private final LinkedList<int[]> free = new LinkedList<int[]>();
+
+    private long allocatedBytes;
+
+    /**
+     * Base constructor.
+     *
+     * @param maxBytes the maximum number of bytes of scratch memory the pool may hold, in use or idle.
+     */
+    public SCryptMemoryPool(long maxBytes)
+    {
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("maxBytes must be greater than zero");
+        }
+
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Return the limit on the scratch memory held by this pool.
+     *
+     * @return the limit in bytes.
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Return the amount of scratch memory currently held by this pool, both in use and idle.
+     *
+     * @return the number of bytes allocated.
+     */
+    public synchronized long getAllocatedBytes()
+    {
+        return allocatedBytes;
+    }
+
+    /**
+     * Release any idle arrays held by the pool.
+     */
+    public synchronized void clear()
+    {
+        while (!free.isEmpty())
+        {
+            allocatedBytes -= 4L * free.removeFirst().length;
+        }
+        notifyAll();
+    }
+
+    int[] acquire(int words)
+    {
+        long needed = 4L * words;
+
+        if (needed > maxBytes)
+        {
+            throw new IllegalArgumentException("scrypt requires " + needed + " bytes of memory, pool limit is " + maxBytes);
+        }
+
+        synchronized (this)
+        {
+            for (;;)
+            {
+                for (Iterator<int[]> it = free.iterator(); it.hasNext();)
+                {
+                    int[] block = it.next();
+                    if (block.length == words)
+                    {
+                        it.remove();
+                        return block;
+                    }
+                }
+
+                if (allocatedBytes + needed <= maxBytes)
+                {
+                    allocatedBytes += needed;
+                    break;
+                }
+
+                if (!free.isEmpty())
+                {
+                    // idle arrays of the wrong size, drop the oldest to make room
+                    allocatedBytes -= 4L * free.removeFirst().length;
+                    continue;
+                }
+
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted waiting for scrypt memory");
+                }
+            }
+        }
+
+        try
+        {
+            return new int[words];
+        }
+        catch (OutOfMemoryError e)
+        {
+            synchronized (this)
+            {
+                allocatedBytes -= needed;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    void release(int[] block)
+    {
+        Arrays.fill(block, 0);
+
+        synchronized (this)
+        {
+            free.addLast(block);
+            notifyAll();
+        }
+    }
+}
@@ -260,7 +260,7 @@ public int processPacket(byte[] in, int inOff, int inLen, byte[] output, int out
         iv[0] = (byte)((q - 1) & 0x7);
         System.arraycopy(nonce, 0, iv, 1, nonce.length);
 
-        BlockCipher ctrCipher = new SICBlockCipher(cipher);
+        SICBlockCipher ctrCipher = new SICBlockCipher(cipher);
         ctrCipher.init(forEncryption, new ParametersWithIV(keyParam, iv));
 
         int outputLen;
@@ -281,12 +281,11 @@ public int processPacket(byte[] in, int inOff, int inLen, byte[] output, int out
 
             ctrCipher.processBlock(macBlock, 0, encMac, 0);   // S0
 
-            while (inIndex < (inOff + inLen - blockSize))                 // S1...
-            {
-                ctrCipher.processBlock(in, inIndex, output, outIndex);
-                outIndex += blockSize;
-                inIndex += blockSize;
-            }
+            // S1... up to, but not including, the final (possibly partial) block
+            int bulkLen = ((inLen - 1) / blockSize) * blockSize;
+            ctrCipher.processBytes(in, inIndex, bulkLen, output, outIndex);
+            outIndex += bulkLen;
+            inIndex += bulkLen;
 
             byte[] block = new byte[blockSize];
 
@@ -319,12 +318,10 @@ public int processPacket(byte[] in, int inOff, int inLen, byte[] output, int out
                 macBlock[i] = 0;
             }
 
-            while (inIndex < (inOff + outputLen - blockSize))
-            {
-                ctrCipher.processBlock(in, inIndex, output, outIndex);
-                outIndex += blockSize;
-                inIndex += blockSize;
-            }
+            int bulkLen = ((outputLen - 1) / blockSize) * blockSize;
+            ctrCipher.processBytes(in, inIndex, bulkLen, output, outIndex);
+            outIndex += bulkLen;
+            inIndex += bulkLen;
 
             byte[] block = new byte[blockSize];
 
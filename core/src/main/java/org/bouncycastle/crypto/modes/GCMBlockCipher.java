@@ -4,12 +4,15 @@
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.DataLengthException;
 import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.MultiBlockCipher;
 import org.bouncycastle.crypto.OutputLengthException;
 import org.bouncycastle.crypto.modes.gcm.BasicGCMExponentiator;
 import org.bouncycastle.crypto.modes.gcm.GCMExponentiator;
+import org.bouncycastle.crypto.modes.gcm.GCMLongMultiplier;
+import org.bouncycastle.crypto.modes.gcm.GCMMultiBlockMultiplier;
 import org.bouncycastle.crypto.modes.gcm.GCMMultiplier;
 import org.bouncycastle.crypto.modes.gcm.GCMUtil;
-import org.bouncycastle.crypto.modes.gcm.Tables4kGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.Tables8kLongGCMMultiplier;
 import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
@@ -19,6 +22,15 @@
 /**
  * Implements the Galois/Counter mode (GCM) detailed in
  * NIST Special Publication 800-38D.
+ * <p>
+ * Bulk data is processed several blocks at a time: the counter blocks for a whole group are
+ * generated together (with a single call if the cipher is a {@link MultiBlockCipher}) and, if the
+ * multiplier is a {@link GCMMultiBlockMultiplier}, the group is folded into the hash with a single
+ * call to the multiplier.
+ * </p>
+ * <p>
+ * The default multiplier is a {@link Tables8kLongGCMMultiplier}.
+ * </p>
  */
 public class GCMBlockCipher
     implements AEADBlockCipher
@@ -27,7 +39,11 @@
 
     // not final due to a compiler bug
     private BlockCipher   cipher;
+    private MultiBlockCipher multiBlockCipher;
     private GCMMultiplier multiplier;
+    private GCMLongMultiplier longMultiplier;
+    private GCMMultiBlockMultiplier multiBlockMultiplier;
+    private int multiBlockCount;
     private GCMExponentiator exp;
 
     // These fields are set by init and not modified by processing
@@ -45,6 +61,7 @@
     private byte[]      macBlock;
     private byte[]      S, S_at, S_atPre;
     private byte[]      counter;
+    private byte[]      ctrBlocks;
     private int         blocksRemaining;
     private int         bufOff;
     private long        totalLength;
@@ -68,11 +85,37 @@ public GCMBlockCipher(BlockCipher c, GCMMultiplier m)
 
         if (m == null)
         {
-            m = new Tables4kGCMMultiplier();
+            m = new Tables8kLongGCMMultiplier();
         }
 
         this.cipher = c;
         this.multiplier = m;
+
+        if (m instanceof GCMLongMultiplier)
+        {
+            this.longMultiplier = (GCMLongMultiplier)m;
+        }
+
+        if (c instanceof MultiBlockCipher)
+        {
+            this.multiBlockCipher = (MultiBlockCipher)c;
+        }
+
+        if (m instanceof GCMMultiBlockMultiplier)
+        {
+            this.multiBlockMultiplier = (GCMMultiBlockMultiplier)m;
+            this.multiBlockCount = multiBlockMultiplier.getMaxBlocks();
+        }
+        else if (multiBlockCipher != null)
+        {
+            this.multiBlockCount = Math.max(1, multiBlockCipher.getMultiBlockSize() / BLOCK_SIZE);
+        }
+        else
+        {
+            this.multiBlockCount = 1;
+        }
+
+        this.ctrBlocks = new byte[BLOCK_SIZE * multiBlockCount];
     }
 
     public BlockCipher getUnderlyingCipher()
@@ -264,17 +307,35 @@ public void processAADBytes(byte[] in, int inOff, int len)
     {
         checkStatus();
 
-        for (int i = 0; i < len; ++i)
+        if (atBlockPos > 0)
         {
-            atBlock[atBlockPos] = in[inOff + i];
-            if (++atBlockPos == BLOCK_SIZE)
+            int available = BLOCK_SIZE - atBlockPos;
+            if (len < available)
             {
-                // Hash each block as it fills
-                gHASHBlock(S_at, atBlock);
-                atBlockPos = 0;
-                atLength += BLOCK_SIZE;
+                System.arraycopy(in, inOff, atBlock, atBlockPos, len);
+                atBlockPos += len;
+                return;
             }
+
+            System.arraycopy(in, inOff, atBlock, atBlockPos, available);
+            gHASHBlock(S_at, atBlock);
+            atLength += BLOCK_SIZE;
+            inOff += available;
+            len -= available;
+            atBlockPos = 0;
         }
+
+        // Hash whole blocks directly from the input
+        while (len >= BLOCK_SIZE)
+        {
+            gHASHBlock(S_at, in, inOff);
+            atLength += BLOCK_SIZE;
+            inOff += BLOCK_SIZE;
+            len -= BLOCK_SIZE;
+        }
+
+        System.arraycopy(in, inOff, atBlock, 0, len);
+        atBlockPos = len;
     }
 
     private void initCipher()
@@ -351,6 +412,18 @@ public int processBytes(byte[] in, int inOff, int len, byte[] out, int outOff)
                 }
             }
 
+            if (multiBlockCount > 1)
+            {
+                int bulkLen = BLOCK_SIZE * multiBlockCount;
+                while (len >= bulkLen)
+                {
+                    processBlocks(in, inOff, multiBlockCount, out, outOff + resultLen);
+                    inOff += bulkLen;
+                    len -= bulkLen;
+                    resultLen += bulkLen;
+                }
+            }
+
             while (len >= BLOCK_SIZE)
             {
                 processBlock(in, inOff, out, outOff + resultLen);
@@ -367,17 +440,53 @@ public int processBytes(byte[] in, int inOff, int len, byte[] out, int outOff)
         }
         else
         {
-            for (int i = 0; i < len; ++i)
+            // the last macSize bytes seen may be the tag, so are always held back in bufBlock
+            int available = bufOff + len - macSize;
+
+            // first deal with any blocks that start in the buffered data
+            while (bufOff > 0 && available >= BLOCK_SIZE)
             {
-                bufBlock[bufOff] = in[inOff + i];
-                if (++bufOff == bufBlock.length)
+                if (bufOff < BLOCK_SIZE)
                 {
-                    processBlock(bufBlock, 0, out, outOff + resultLen);
-                    System.arraycopy(bufBlock, BLOCK_SIZE, bufBlock, 0, macSize);
-                    bufOff = macSize;
-                    resultLen += BLOCK_SIZE;
+                    int fill = BLOCK_SIZE - bufOff;
+                    System.arraycopy(in, inOff, bufBlock, bufOff, fill);
+                    inOff += fill;
+                    len -= fill;
+                    bufOff = BLOCK_SIZE;
                 }
+
+                processBlock(bufBlock, 0, out, outOff + resultLen);
+                bufOff -= BLOCK_SIZE;
+                System.arraycopy(bufBlock, BLOCK_SIZE, bufBlock, 0, bufOff);
+                available -= BLOCK_SIZE;
+                resultLen += BLOCK_SIZE;
+            }
+
+            // the remaining whole blocks can then be processed straight from the input
+            if (multiBlockCount > 1)
+            {
+                int bulkLen = BLOCK_SIZE * multiBlockCount;
+                while (available >= bulkLen)
+                {
+                    processBlocks(in, inOff, multiBlockCount, out, outOff + resultLen);
+                    inOff += bulkLen;
+                    len -= bulkLen;
+                    available -= bulkLen;
+                    resultLen += bulkLen;
+                }
+            }
+
+            while (available >= BLOCK_SIZE)
+            {
+                processBlock(in, inOff, out, outOff + resultLen);
+                inOff += BLOCK_SIZE;
+                len -= BLOCK_SIZE;
+                available -= BLOCK_SIZE;
+                resultLen += BLOCK_SIZE;
             }
+
+            System.arraycopy(in, inOff, bufBlock, bufOff, len);
+            bufOff += len;
         }
 
         return resultLen;
@@ -532,6 +641,8 @@ private void reset(
             Arrays.fill(bufBlock, (byte)0);
         }
 
+        Arrays.fill(ctrBlocks, (byte)0);
+
         if (clearMac)
         {
             macBlock = null;
@@ -561,38 +672,85 @@ private void processBlock(byte[] buf, int bufOff, byte[] out, int outOff)
             initCipher();
         }
 
-        byte[] ctrBlock = new byte[BLOCK_SIZE];
-        getNextCTRBlock(ctrBlock);
+        getNextCTRBlock(ctrBlocks, 0);
 
         if (forEncryption)
         {
-            GCMUtil.xor(ctrBlock, buf, bufOff);
-            gHASHBlock(S, ctrBlock);
-            System.arraycopy(ctrBlock, 0, out, outOff, BLOCK_SIZE);
+            GCMUtil.xor(ctrBlocks, 0, buf, bufOff, out, outOff);
+            gHASHBlock(S, out, outOff);
         }
         else
         {
             gHASHBlock(S, buf, bufOff);
-            GCMUtil.xor(ctrBlock, 0, buf, bufOff, out, outOff);
+            GCMUtil.xor(ctrBlocks, 0, buf, bufOff, out, outOff);
         }
 
         totalLength += BLOCK_SIZE;
     }
 
+    private void processBlocks(byte[] buf, int bufOff, int blockCount, byte[] out, int outOff)
+    {
+        int len = blockCount * BLOCK_SIZE;
+        if ((out.length - outOff) < len)
+        {
+            throw new OutputLengthException("Output buffer too short");
+        }
+        if (totalLength == 0)
+        {
+            initCipher();
+        }
+
+        for (int pos = 0; pos < len; pos += BLOCK_SIZE)
+        {
+            incrementCounter();
+            System.arraycopy(counter, 0, ctrBlocks, pos, BLOCK_SIZE);
+        }
+
+        if (multiBlockCipher != null)
+        {
+            multiBlockCipher.processBlocks(ctrBlocks, 0, blockCount, ctrBlocks, 0);
+        }
+        else
+        {
+            for (int pos = 0; pos < len; pos += BLOCK_SIZE)
+            {
+                cipher.processBlock(ctrBlocks, pos, ctrBlocks, pos);
+            }
+        }
+
+        if (forEncryption)
+        {
+            for (int pos = 0; pos < len; pos += BLOCK_SIZE)
+            {
+                GCMUtil.xor(ctrBlocks, pos, buf, bufOff + pos, out, outOff + pos);
+            }
+            gHASHBlocks(S, out, outOff, blockCount);
+        }
+        else
+        {
+            gHASHBlocks(S, buf, bufOff, blockCount);
+            for (int pos = 0; pos < len; pos += BLOCK_SIZE)
+            {
+                GCMUtil.xor(ctrBlocks, pos, buf, bufOff + pos, out, outOff + pos);
+            }
+        }
+
+        totalLength += len;
+    }
+
     private void processPartial(byte[] buf, int off, int len, byte[] out, int outOff)
     {
-        byte[] ctrBlock = new byte[BLOCK_SIZE];
-        getNextCTRBlock(ctrBlock);
+        getNextCTRBlock(ctrBlocks, 0);
 
         if (forEncryption)
         {
-            GCMUtil.xor(buf, off, ctrBlock, 0, len);
+            GCMUtil.xor(buf, off, ctrBlocks, 0, len);
             gHASHPartial(S, buf, off, len);
         }
         else
         {
             gHASHPartial(S, buf, off, len);
-            GCMUtil.xor(buf, off, ctrBlock, 0, len);
+            GCMUtil.xor(buf, off, ctrBlocks, 0, len);
         }
 
         System.arraycopy(buf, off, out, outOff, len);
@@ -610,14 +768,35 @@ private void gHASH(byte[] Y, byte[] b, int len)
 
     private void gHASHBlock(byte[] Y, byte[] b)
     {
-        GCMUtil.xor(Y, b);
-        multiplier.multiplyH(Y);
+        gHASHBlock(Y, b, 0);
     }
 
     private void gHASHBlock(byte[] Y, byte[] b, int off)
     {
-        GCMUtil.xor(Y, b, off);
-        multiplier.multiplyH(Y);
+        if (longMultiplier != null)
+        {
+            longMultiplier.xorMultiplyH(Y, b, off);
+        }
+        else
+        {
+            GCMUtil.xor(Y, b, off);
+            multiplier.multiplyH(Y);
+        }
+    }
+
+    private void gHASHBlocks(byte[] Y, byte[] b, int off, int blockCount)
+    {
+        if (multiBlockMultiplier != null)
+        {
+            multiBlockMultiplier.multiplyBlocksH(Y, b, off, blockCount);
+        }
+        else
+        {
+            for (int i = 0; i < blockCount; ++i)
+            {
+                gHASHBlock(Y, b, off + i * BLOCK_SIZE);
+            }
+        }
     }
 
     private void gHASHPartial(byte[] Y, byte[] b, int off, int len)
@@ -626,7 +805,14 @@ private void gHASHPartial(byte[] Y, byte[] b, int off, int len)
         multiplier.multiplyH(Y);
     }
 
-    private void getNextCTRBlock(byte[] block)
+    private void getNextCTRBlock(byte[] block, int blockOff)
+    {
+        incrementCounter();
+
+        cipher.processBlock(counter, 0, block, blockOff);
+    }
+
+    private void incrementCounter()
     {
         if (blocksRemaining == 0)
         {
@@ -639,8 +825,6 @@ private void getNextCTRBlock(byte[] block)
         c += counter[14] & 0xFF; counter[14] = (byte)c; c >>>= 8;
         c += counter[13] & 0xFF; counter[13] = (byte)c; c >>>= 8;
         c += counter[12] & 0xFF; counter[12] = (byte)c;
-
-        cipher.processBlock(counter, 0, block, 0);
     }
 
     private void checkStatus()
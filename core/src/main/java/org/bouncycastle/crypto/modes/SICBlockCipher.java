@@ -3,6 +3,8 @@
 import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.MultiBlockCipher;
+import org.bouncycastle.crypto.OutputLengthException;
 import org.bouncycastle.crypto.SkippingStreamCipher;
 import org.bouncycastle.crypto.StreamBlockCipher;
 import org.bouncycastle.crypto.params.ParametersWithIV;
@@ -12,13 +14,22 @@
 /**
  * Implements the Segmented Integer Counter (SIC) mode on top of a simple
  * block cipher. This mode is also known as CTR mode.
+ * <p>
+ * Whole blocks passed to processBytes are handled in runs: the counter blocks for a run are laid
+ * out together and encrypted with a single call if the underlying cipher is a
+ * {@link MultiBlockCipher}.
+ * </p>
  */
 public class SICBlockCipher
     extends StreamBlockCipher
     implements SkippingStreamCipher
 {
+    private static final int DEFAULT_BULK_BLOCKS = 16;
+
     private final BlockCipher     cipher;
+    private final MultiBlockCipher multiBlockCipher;
     private final int             blockSize;
+    private final int             bulkBlocks;
 
     private byte[]          IV;
     private byte[]          counter;
@@ -38,8 +49,21 @@ public SICBlockCipher(BlockCipher c)
         this.blockSize = cipher.getBlockSize();
         this.IV = new byte[blockSize];
         this.counter = new byte[blockSize];
-        this.counterOut = new byte[blockSize];
         this.byteCount = 0;
+
+        if (c instanceof MultiBlockCipher)
+        {
+            this.multiBlockCipher = (MultiBlockCipher)c;
+            this.bulkBlocks = Math.max(1, multiBlockCipher.getMultiBlockSize() / blockSize);
+        }
+        else
+        {
+            this.multiBlockCipher = null;
+            this.bulkBlocks = DEFAULT_BULK_BLOCKS;
+        }
+
+        // counterOut holds the key stream for a whole run of blocks; the first block doubles as the byte-wise buffer
+        this.counterOut = new byte[blockSize * bulkBlocks];
     }
 
     public void init(
@@ -96,6 +120,70 @@ public int processBlock(byte[] in, int inOff, byte[] out, int outOff)
         return blockSize;
     }
 
+    public int processBytes(byte[] in, int inOff, int len, byte[] out, int outOff)
+        throws DataLengthException
+    {
+        if (inOff + len > in.length)
+        {
+            throw new DataLengthException("input buffer too small");
+        }
+        if (outOff + len > out.length)
+        {
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        int inEnd = inOff + len;
+
+        // finish any partially used block of key stream
+        while (byteCount != 0 && inOff < inEnd)
+        {
+            out[outOff++] = calculateByte(in[inOff++]);
+        }
+
+        int blocks = (inEnd - inOff) / blockSize;
+        while (blocks > 0)
+        {
+            int count = Math.min(blocks, bulkBlocks);
+            int runLen = count * blockSize;
+
+            // lay out the counter blocks for the run, advancing the counter as calculateByte would
+            for (int pos = 0; pos < runLen; pos += blockSize)
+            {
+                System.arraycopy(counter, 0, counterOut, pos, blockSize);
+                incrementCounterAt(0);
+                checkCounter();
+            }
+
+            if (multiBlockCipher != null)
+            {
+                multiBlockCipher.processBlocks(counterOut, 0, count, counterOut, 0);
+            }
+            else
+            {
+                for (int pos = 0; pos < runLen; pos += blockSize)
+                {
+                    cipher.processBlock(counterOut, pos, counterOut, pos);
+                }
+            }
+
+            for (int i = 0; i < runLen; ++i)
+            {
+                out[outOff + i] = (byte)(in[inOff + i] ^ counterOut[i]);
+            }
+
+            inOff += runLen;
+            outOff += runLen;
+            blocks -= count;
+        }
+
+        while (inOff < inEnd)
+        {
+            out[outOff++] = calculateByte(in[inOff++]);
+        }
+
+        return len;
+    }
+
     protected byte calculateByte(byte in)
           throws DataLengthException, IllegalStateException
     {
@@ -0,0 +1,28 @@
+package org.bouncycastle.crypto.modes.gcm;
+
+/**
+ * A GCMMultiplier that works on 64-bit words internally and can operate directly on the caller's
+ * buffers, without allocation.
+ * <p>
+ * The long[] form of a field element is the one used by {@link GCMUtil#asLongs(byte[])}, i.e. two
+ * big-endian 64-bit words.
+ * </p>
+ */
+public interface GCMLongMultiplier
+    extends GCMMultiplier
+{
+    /**
+     * Multiply the 16 bytes at xOff in x by H, in place.
+     */
+    void multiplyH(byte[] x, int xOff);
+
+    /**
+     * Multiply the field element x, held as a pair of longs, by H, in place.
+     */
+    void multiplyH(long[] x);
+
+    /**
+     * Perform a single GHASH step, setting x to (x + Y).H, where Y is the 16 bytes at yOff in y.
+     */
+    void xorMultiplyH(byte[] x, byte[] y, int yOff);
+}
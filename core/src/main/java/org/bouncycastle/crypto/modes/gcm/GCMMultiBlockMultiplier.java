@@ -0,0 +1,26 @@
+package org.bouncycastle.crypto.modes.gcm;
+
+/**
+ * A GCMMultiplier that can also fold several consecutive blocks into the GHASH state in a single
+ * call, using precomputed powers of H so that only one reduction chain is needed per group of
+ * blocks ("aggregated reduction").
+ */
+public interface GCMMultiBlockMultiplier
+    extends GCMMultiplier
+{
+    /**
+     * Return the largest number of blocks that can be passed to a single call of multiplyBlocksH.
+     */
+    int getMaxBlocks();
+
+    /**
+     * Fold blockCount 16-byte blocks from buf, starting at off, into the GHASH state x. The result
+     * is identical to calling xor(x, block) followed by multiplyH(x) for each block in turn.
+     *
+     * @param x the GHASH state (16 bytes), updated in place.
+     * @param buf buffer holding the blocks.
+     * @param off offset of the first block in buf.
+     * @param blockCount number of blocks, from 1 to getMaxBlocks() inclusive.
+     */
+    void multiplyBlocksH(byte[] x, byte[] buf, int off, int blockCount);
+}
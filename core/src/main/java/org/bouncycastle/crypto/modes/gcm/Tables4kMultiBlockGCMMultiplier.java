@@ -0,0 +1,148 @@
+package org.bouncycastle.crypto.modes.gcm;
+
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Pack;
+
+/**
+ * A 4k-table multiplier (as in {@link Tables4kGCMMultiplier}) extended with tables for the
+ * powers H^1..H^n, allowing n blocks to be hashed together with a single reduction chain.
+ */
+public class Tables4kMultiBlockGCMMultiplier
+    implements GCMMultiBlockMultiplier
+{
+    public static final int DEFAULT_BLOCKS = 4;
+
+    private final int maxBlocks;
+
+    private byte[] H;
+    private long[][][] T;
+
+    public Tables4kMultiBlockGCMMultiplier()
+    {
+        this(DEFAULT_BLOCKS);
+    }
+
+    /**
+     * Base constructor.
+     *
+     * @param maxBlocks the number of powers of H to precompute (each costs 4k of tables), from 1 to 16.
+     */
+    public Tables4kMultiBlockGCMMultiplier(int maxBlocks)
+    {
+        if (maxBlocks < 1 || maxBlocks > 16)
+        {
+            throw new IllegalArgumentException("'maxBlocks' must be from 1 to 16");
+        }
+
+        this.maxBlocks = maxBlocks;
+    }
+
+    public int getMaxBlocks()
+    {
+        return maxBlocks;
+    }
+
+    public void init(byte[] H)
+    {
+        if (T == null)
+        {
+            T = new long[maxBlocks][256][2];
+        }
+        else if (Arrays.areEqual(this.H, H))
+        {
+            return;
+        }
+
+        this.H = Arrays.clone(H);
+
+        long[] h = GCMUtil.asLongs(this.H);
+        long[] hPow = GCMUtil.asLongs(this.H);
+
+        for (int k = 0; k < maxBlocks; ++k)
+        {
+            long[][] t = T[k];
+
+            if (k > 0)
+            {
+                // hPow = H^(k + 1)
+                GCMUtil.multiply(hPow, h);
+            }
+
+            // t[0] = 0
+
+            // t[1] = H^(k + 1).p^7
+            GCMUtil.multiplyP7(hPow, t[1]);
+
+            for (int n = 2; n < 256; n += 2)
+            {
+                // t[2.n] = t[n].p^-1
+                GCMUtil.divideP(t[n >> 1], t[n]);
+
+                // t[2.n + 1] = t[2.n] + t[1]
+                GCMUtil.xor(t[n], t[1], t[n + 1]);
+            }
+        }
+    }
+
+    public void multiplyH(byte[] x)
+    {
+        long[][] T0 = T[0];
+
+        long[] t = T0[x[15] & 0xFF];
+        long z0 = t[0], z1 = t[1];
+
+        for (int i = 14; i >= 0; --i)
+        {
+            t = T0[x[i] & 0xFF];
+
+            long c = z1 << 56;
+            z1 = t[1] ^ ((z1 >>> 8) | (z0 << 56));
+            z0 = t[0] ^ (z0 >>> 8) ^ c ^ (c >>> 1) ^ (c >>> 2) ^ (c >>> 7);
+        }
+
+        Pack.longToBigEndian(z0, x, 0);
+        Pack.longToBigEndian(z1, x, 8);
+    }
+
+    public void multiplyBlocksH(byte[] x, byte[] buf, int off, int blockCount)
+    {
+        if (blockCount < 1 || blockCount > maxBlocks)
+        {
+            throw new IllegalArgumentException("'blockCount' out of range");
+        }
+
+        /*
+         * x' = (x + B[0]).H^n + B[1].H^(n-1) + ... + B[n-1].H
+         *
+         * Each product is evaluated byte-wise (Horner's rule, from the last byte), and since the
+         * shift/reduction step is linear, the table lookups for every block can be summed at each
+         * byte position before a single shared shift/reduction.
+         */
+        long z0 = 0, z1 = 0;
+
+        for (int i = 15; i >= 0; --i)
+        {
+            long s0 = 0, s1 = 0;
+
+            int pos = off + i;
+            long[] t = T[blockCount - 1][(x[i] ^ buf[pos]) & 0xFF];
+            s0 ^= t[0];
+            s1 ^= t[1];
+
+            for (int j = 1; j < blockCount; ++j)
+            {
+                pos += 16;
+                t = T[blockCount - 1 - j][buf[pos] & 0xFF];
+                s0 ^= t[0];
+                s1 ^= t[1];
+            }
+
+            long c = z1 << 56;
+            z1 = s1 ^ ((z1 >>> 8) | (z0 << 56));
+            z0 = s0 ^ (z0 >>> 8) ^ c ^ (c >>> 1) ^ (c >>> 2) ^ (c >>> 7);
+        }
+
+        Pack.longToBigEndian(z0, x, 0);
+        Pack.longToBigEndian(z1, x, 8);
+    }
+}
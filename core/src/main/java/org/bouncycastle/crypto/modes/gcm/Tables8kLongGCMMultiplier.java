@@ -0,0 +1,138 @@
+package org.bouncycastle.crypto.modes.gcm;
+
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Pack;
+
+/**
+ * A table-driven multiplier that keeps two 4k tables of 64-bit word pairs: T0 for H and T1 for
+ * H.x^64. The first and second halves of the input are then multiplied in two independent
+ * byte-wise passes, each only 8 steps long, which are added at the end. Inputs can be taken from
+ * (and the GHASH step fused with) the caller's buffers without any allocation.
+ */
+public class Tables8kLongGCMMultiplier
+    implements GCMLongMultiplier
+{
+    private byte[] H;
+    private long[][] T0, T1;
+
+    public void init(byte[] H)
+    {
+        if (T0 == null)
+        {
+            T0 = new long[256][2];
+            T1 = new long[256][2];
+        }
+        else if (Arrays.areEqual(this.H, H))
+        {
+            return;
+        }
+
+        this.H = Arrays.clone(H);
+
+        // T0[1] = H.p^7
+        GCMUtil.asLongs(this.H, T0[1]);
+        GCMUtil.multiplyP7(T0[1], T0[1]);
+        fillTable(T0);
+
+        // T1[1] = H.p^7.p^64
+        GCMUtil.multiplyP8(T0[1], T1[1]);
+        for (int i = 1; i < 8; ++i)
+        {
+            GCMUtil.multiplyP8(T1[1]);
+        }
+        fillTable(T1);
+    }
+
+    public void multiplyH(byte[] x)
+    {
+        multiplyH(x, 0);
+    }
+
+    public void multiplyH(byte[] x, int xOff)
+    {
+        long[] t = T0[x[xOff + 7] & 0xFF], u = T1[x[xOff + 15] & 0xFF];
+        long a0 = t[0], a1 = t[1], b0 = u[0], b1 = u[1];
+
+        for (int i = 6; i >= 0; --i)
+        {
+            t = T0[x[xOff + i] & 0xFF];
+            u = T1[x[xOff + i + 8] & 0xFF];
+
+            long c = a1 << 56;
+            a1 = t[1] ^ ((a1 >>> 8) | (a0 << 56));
+            a0 = t[0] ^ (a0 >>> 8) ^ c ^ (c >>> 1) ^ (c >>> 2) ^ (c >>> 7);
+
+            long d = b1 << 56;
+            b1 = u[1] ^ ((b1 >>> 8) | (b0 << 56));
+            b0 = u[0] ^ (b0 >>> 8) ^ d ^ (d >>> 1) ^ (d >>> 2) ^ (d >>> 7);
+        }
+
+        Pack.longToBigEndian(a0 ^ b0, x, xOff);
+        Pack.longToBigEndian(a1 ^ b1, x, xOff + 8);
+    }
+
+    public void multiplyH(long[] x)
+    {
+        long x0 = x[0], x1 = x[1];
+
+        long[] t = T0[(int)x0 & 0xFF], u = T1[(int)x1 & 0xFF];
+        long a0 = t[0], a1 = t[1], b0 = u[0], b1 = u[1];
+
+        for (int i = 1; i < 8; ++i)
+        {
+            x0 >>>= 8;
+            x1 >>>= 8;
+
+            t = T0[(int)x0 & 0xFF];
+            u = T1[(int)x1 & 0xFF];
+
+            long c = a1 << 56;
+            a1 = t[1] ^ ((a1 >>> 8) | (a0 << 56));
+            a0 = t[0] ^ (a0 >>> 8) ^ c ^ (c >>> 1) ^ (c >>> 2) ^ (c >>> 7);
+
+            long d = b1 << 56;
+            b1 = u[1] ^ ((b1 >>> 8) | (b0 << 56));
+            b0 = u[0] ^ (b0 >>> 8) ^ d ^ (d >>> 1) ^ (d >>> 2) ^ (d >>> 7);
+        }
+
+        x[0] = a0 ^ b0;
+        x[1] = a1 ^ b1;
+    }
+
+    public void xorMultiplyH(byte[] x, byte[] y, int yOff)
+    {
+        long[] t = T0[(x[7] ^ y[yOff + 7]) & 0xFF], u = T1[(x[15] ^ y[yOff + 15]) & 0xFF];
+        long a0 = t[0], a1 = t[1], b0 = u[0], b1 = u[1];
+
+        for (int i = 6; i >= 0; --i)
+        {
+            t = T0[(x[i] ^ y[yOff + i]) & 0xFF];
+            u = T1[(x[i + 8] ^ y[yOff + i + 8]) & 0xFF];
+
+            long c = a1 << 56;
+            a1 = t[1] ^ ((a1 >>> 8) | (a0 << 56));
+            a0 = t[0] ^ (a0 >>> 8) ^ c ^ (c >>> 1) ^ (c >>> 2) ^ (c >>> 7);
+
+            long d = b1 << 56;
+            b1 = u[1] ^ ((b1 >>> 8) | (b0 << 56));
+            b0 = u[0] ^ (b0 >>> 8) ^ d ^ (d >>> 1) ^ (d >>> 2) ^ (d >>> 7);
+        }
+
+        Pack.longToBigEndian(a0 ^ b0, x, 0);
+        Pack.longToBigEndian(a1 ^ b1, x, 8);
+    }
+
+    private static void fillTable(long[][] T)
+    {
+        // T[0] = 0
+
+        for (int n = 2; n < 256; n += 2)
+        {
+            // T[2.n] = T[n].p^-1
+            GCMUtil.divideP(T[n >> 1], T[n]);
+
+            // T[2.n + 1] = T[2.n] + T[1]
+            GCMUtil.xor(T[n], T[1], T[n + 1]);
+        }
+    }
+}
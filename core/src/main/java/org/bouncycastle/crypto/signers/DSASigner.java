@@ -11,7 +11,9 @@
 import org.bouncycastle.crypto.params.DSAPrivateKeyParameters;
 import org.bouncycastle.crypto.params.DSAPublicKeyParameters;
 import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.math.raw.MontContext;
 import org.bouncycastle.util.BigIntegers;
+import org.bouncycastle.util.Properties;
 
 /**
  * The Digital Signature Algorithm - as described in "Handbook of Applied
@@ -24,6 +26,7 @@
 
     private DSAKeyParameters key;
     private SecureRandom    random;
+    private MontContext     pContext;
 
     /**
      * Default configuration, random K values.
@@ -69,6 +72,16 @@ public void init(
         }
 
         this.random = initSecureRandom(forSigning && !kCalculator.isDeterministic(), providedRandom);
+
+        BigInteger p = key.getParameters().getP();
+        if (forSigning && Properties.isOverrideSet("org.bouncycastle.constant_time_modpow") && p.testBit(0))
+        {
+            this.pContext = new MontContext(p);
+        }
+        else
+        {
+            this.pContext = null;
+        }
     }
 
     public BigInteger getOrder()
@@ -103,7 +116,7 @@ public BigInteger[] generateSignature(
         BigInteger  k = kCalculator.nextK();
 
         // the randomizer is to conceal timing information related to k and x.
-        BigInteger  r = params.getG().modPow(k.add(getRandomizer(q, random)), params.getP()).mod(q);
+        BigInteger  r = modPow(params.getG(), k.add(getRandomizer(q, random)), params.getP(), q).mod(q);
 
         k = k.modInverse(q).multiply(m.add(x.multiply(r)));
 
@@ -151,6 +164,19 @@ public boolean verifySignature(
         return v.equals(r);
     }
 
+    private BigInteger modPow(BigInteger g, BigInteger k, BigInteger p, BigInteger q)
+    {
+        // k is less than 2^8.q, so q determines the work done if the exponentiation is constant time
+        int bound = q.bitLength() + 8;
+
+        if (pContext != null && bound <= p.bitLength() && k.bitLength() <= bound && g.compareTo(p) < 0)
+        {
+            return pContext.modPow(g, k, bound);
+        }
+
+        return g.modPow(k, p);
+    }
+
     private BigInteger calculateE(BigInteger n, byte[] message)
     {
         if (n.bitLength() >= message.length * 8)
@@ -0,0 +1,183 @@
+package org.bouncycastle.crypto.signers;
+
+import java.math.BigInteger;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.math.ec.ECConstants;
+import org.bouncycastle.math.ec.ECPoint;
+
+/**
+ * Verifies a batch of EC-DSA signatures together, giving the same result for each signature as
+ * {@link ECDSASigner#verifySignature(byte[], BigInteger, BigInteger)}.
+ * <p>
+ * Work is shared across the batch: the inverses of s are computed with a single modular inversion
+ * per group order, and all signatures by an equal public key (or domain parameters) are verified
+ * against one point instance, so the precomputation done for the first of them is reused by the
+ * rest. This pays off most when a few keys have signed many messages.
+ * </p>
+ */
+public class ECDSABatchVerifier
+    implements ECConstants
+{
+    private final ECDSASigner signer = new ECDSASigner();
+    private final Vector items = new Vector();
+
+    public ECDSABatchVerifier()
+    {
+    }
+
+    /**
+     * Add a signature to the batch.
+     *
+     * @param publicKey the public key to verify the signature with.
+     * @param message the message (for standard EC-DSA, the hash of the message of interest).
+     * @param r the r value of the signature.
+     * @param s the s value of the signature.
+     */
+    public void add(ECPublicKeyParameters publicKey, byte[] message, BigInteger r, BigInteger s)
+    {
+        items.addElement(new Item(publicKey, message, r, s));
+    }
+
+    /**
+     * @return the number of signatures in the batch.
+     */
+    public int size()
+    {
+        return items.size();
+    }
+
+    /**
+     * Verify all the signatures in the batch, then empty it.
+     *
+     * @return the result for each signature, in the order they were added.
+     */
+    public boolean[] verify()
+    {
+        int count = items.size();
+        boolean[] results = new boolean[count];
+
+        Hashtable points = new Hashtable();
+        Hashtable groups = new Hashtable();
+
+        for (int i = 0; i < count; ++i)
+        {
+            Item item = (Item)items.elementAt(i);
+            ECDomainParameters ec = item.publicKey.getParameters();
+            BigInteger n = ec.getN();
+
+            // r and s in the range [1,n-1]
+            if (item.r.compareTo(ONE) < 0 || item.r.compareTo(n) >= 0
+                || item.s.compareTo(ONE) < 0 || item.s.compareTo(n) >= 0)
+            {
+                continue;
+            }
+
+            item.index = i;
+            item.e = signer.calculateE(n, item.message);
+            item.G = getSharedPoint(points, ec.getG(), ec.getG());
+            item.Q = getSharedPoint(points, item.G, item.publicKey.getQ());
+
+            Vector group = (Vector)groups.get(n);
+            if (group == null)
+            {
+                group = new Vector();
+                groups.put(n, group);
+            }
+            group.addElement(item);
+        }
+
+        for (Enumeration en = groups.keys(); en.hasMoreElements();)
+        {
+            BigInteger n = (BigInteger)en.nextElement();
+            Vector group = (Vector)groups.get(n);
+
+            BigInteger[] c = invertAll(n, group);
+
+            for (int i = 0; i < c.length; ++i)
+            {
+                Item item = (Item)group.elementAt(i);
+                results[item.index] = signer.verifySignature(n, item.G, item.Q, item.e, item.r, c[i]);
+            }
+        }
+
+        items.removeAllElements();
+
+        return results;
+    }
+
+    /**
+     * Empty the batch without verifying it.
+     */
+    public void reset()
+    {
+        items.removeAllElements();
+    }
+
+    /**
+     * @return the point instance shared by all signatures using a point equal to p, imported to the
+     *         curve of G.
+     */
+    private static ECPoint getSharedPoint(Hashtable points, ECPoint G, ECPoint p)
+    {
+        ECPoint shared = (ECPoint)points.get(p);
+        if (shared == null)
+        {
+            shared = G.getCurve().importPoint(p);
+            points.put(p, shared);
+        }
+        return shared;
+    }
+
+    /**
+     * Invert the s values of a group of signatures modulo n, with a single modular inversion
+     * (Montgomery's trick).
+     */
+    private static BigInteger[] invertAll(BigInteger n, Vector group)
+    {
+        int count = group.size();
+
+        BigInteger[] c = new BigInteger[count];
+        c[0] = ((Item)group.elementAt(0)).s;
+        for (int i = 1; i < count; ++i)
+        {
+            c[i] = c[i - 1].multiply(((Item)group.elementAt(i)).s).mod(n);
+        }
+
+        BigInteger u = c[count - 1].modInverse(n);
+        for (int i = count - 1; i > 0; --i)
+        {
+            BigInteger s = ((Item)group.elementAt(i)).s;
+            c[i] = c[i - 1].multiply(u).mod(n);
+            u = u.multiply(s).mod(n);
+        }
+        c[0] = u;
+
+        return c;
+    }
+
+    private static class Item
+    {
+        final ECPublicKeyParameters publicKey;
+        final byte[] message;
+        final BigInteger r;
+        final BigInteger s;
+
+        int index;
+        BigInteger e;
+        ECPoint G;
+        ECPoint Q;
+
+        Item(ECPublicKeyParameters publicKey, byte[] message, BigInteger r, BigInteger s)
+        {
+            this.publicKey = publicKey;
+            this.message = message;
+            this.r = r;
+            this.s = s;
+        }
+    }
+}
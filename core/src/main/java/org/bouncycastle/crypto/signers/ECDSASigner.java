@@ -18,6 +18,9 @@
 import org.bouncycastle.math.ec.ECMultiplier;
 import org.bouncycastle.math.ec.ECPoint;
 import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.custom.sec.SecP256R1Engine;
+import org.bouncycastle.math.raw.Nat256;
+import org.bouncycastle.util.Properties;
 
 /**
  * EC-DSA as described in X9.62
@@ -29,6 +32,7 @@
 
     private ECKeyParameters key;
     private SecureRandom    random;
+    private boolean         useP256Engine;
 
     /**
      * Default configuration, random K values.
@@ -74,6 +78,10 @@ public void init(
         }
 
         this.random = initSecureRandom(forSigning && !kCalculator.isDeterministic(), providedRandom);
+
+        ECDomainParameters ec = key.getParameters();
+        this.useP256Engine = forSigning && Properties.isOverrideSet("org.bouncycastle.ec.constant_time_p256")
+            && SecP256R1Engine.isSupported(ec.getCurve(), ec.getG(), ec.getN());
     }
 
     public BigInteger getOrder()
@@ -106,6 +114,22 @@ public BigInteger[] generateSignature(
             kCalculator.init(n, random);
         }
 
+        if (useP256Engine)
+        {
+            // constant time, with the scalar arithmetic done on fixed size values rather than BigInteger
+            int[] dd = Nat256.fromBigInteger(d), ee = Nat256.fromBigInteger(e);
+            int[] rr = Nat256.create(), ss = Nat256.create();
+
+            int[] kk;
+            do
+            {
+                kk = Nat256.fromBigInteger(kCalculator.nextK());
+            }
+            while (!SecP256R1Engine.sign(dd, kk, ee, rr, ss));
+
+            return new BigInteger[]{ Nat256.toBigInteger(rr), Nat256.toBigInteger(ss) };
+        }
+
         BigInteger r, s;
 
         ECMultiplier basePointMultiplier = createBasePointMultiplier();
@@ -161,12 +185,17 @@ public boolean verifySignature(
 
         BigInteger c = s.modInverse(n);
 
+        return verifySignature(n, ec.getG(), ((ECPublicKeyParameters)key).getQ(), e, r, c);
+    }
+
+    /**
+     * Verification from the point where the inverse of s is known (r and s having been range-checked).
+     */
+    boolean verifySignature(BigInteger n, ECPoint G, ECPoint Q, BigInteger e, BigInteger r, BigInteger c)
+    {
         BigInteger u1 = e.multiply(c).mod(n);
         BigInteger u2 = r.multiply(c).mod(n);
 
-        ECPoint G = ec.getG();
-        ECPoint Q = ((ECPublicKeyParameters)key).getQ();
-
         ECPoint point = ECAlgorithms.sumOfTwoMultiplies(G, u1, Q, u2);
 
         // components must be bogus.
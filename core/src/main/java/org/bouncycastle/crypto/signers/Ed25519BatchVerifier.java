@@ -0,0 +1,101 @@
+package org.bouncycastle.crypto.signers;
+
+import java.security.SecureRandom;
+import java.util.Vector;
+
+import org.bouncycastle.crypto.CryptoServicesRegistrar;
+import org.bouncycastle.crypto.params.Ed25519PublicKeyParameters;
+import org.bouncycastle.math.ec.rfc8032.Ed25519;
+
+/**
+ * Verifies a batch of Ed25519 signatures together, which is much faster than verifying them one at a
+ * time with {@link Ed25519Signer}; see
+ * {@link Ed25519#verifyBatch(byte[][], byte[][], byte[][], SecureRandom, boolean[])} for details.
+ */
+public class Ed25519BatchVerifier
+{
+    private final SecureRandom random;
+    private final Vector items = new Vector();
+
+    public Ed25519BatchVerifier()
+    {
+        this(null);
+    }
+
+    /**
+     * @param random the source of the random coefficients used to combine the signatures.
+     */
+    public Ed25519BatchVerifier(SecureRandom random)
+    {
+        this.random = (random != null) ? random : CryptoServicesRegistrar.getSecureRandom();
+    }
+
+    /**
+     * Add a signature to the batch.
+     *
+     * @param publicKey the public key to verify the signature with.
+     * @param message the signed message.
+     * @param signature the signature.
+     */
+    public void add(Ed25519PublicKeyParameters publicKey, byte[] message, byte[] signature)
+    {
+        items.addElement(new Item(publicKey.getEncoded(), message, signature));
+    }
+
+    /**
+     * @return the number of signatures in the batch.
+     */
+    public int size()
+    {
+        return items.size();
+    }
+
+    /**
+     * Verify all the signatures in the batch, then empty it.
+     *
+     * @return the result for each signature, in the order they were added.
+     */
+    public boolean[] verify()
+    {
+        int count = items.size();
+
+        byte[][] pk = new byte[count][];
+        byte[][] m = new byte[count][];
+        byte[][] sig = new byte[count][];
+        for (int i = 0; i < count; ++i)
+        {
+            Item item = (Item)items.elementAt(i);
+            pk[i] = item.publicKey;
+            m[i] = item.message;
+            sig[i] = item.signature;
+        }
+
+        items.removeAllElements();
+
+        boolean[] results = new boolean[count];
+        Ed25519.verifyBatch(sig, pk, m, random, results);
+        return results;
+    }
+
+    /**
+     * Empty the batch without verifying it.
+     */
+    public void reset()
+    {
+        items.removeAllElements();
+    }
+
+    private static class Item
+    {
+        final byte[] publicKey;
+        final byte[] message;
+        final byte[] signature;
+
+        Item(byte[] publicKey, byte[] message, byte[] signature)
+        {
+            this.publicKey = publicKey;
+            this.message = message;
+            this.signature = signature;
+        }
+    }
+}
@@ -40,7 +40,6 @@
 import org.bouncycastle.asn1.x9.ValidationParams;
 import org.bouncycastle.asn1.x9.X962Parameters;
 import org.bouncycastle.asn1.x9.X9ECParameters;
-import org.bouncycastle.asn1.x9.X9ECPoint;
 import org.bouncycastle.asn1.x9.X9IntegerConverter;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.crypto.ec.CustomNamedCurves;
@@ -62,6 +61,8 @@
 import org.bouncycastle.crypto.params.X25519PublicKeyParameters;
 import org.bouncycastle.crypto.params.X448PublicKeyParameters;
 import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.ECPointCache;
 
 /**
  * Factory to create asymmetric public key parameters for asymmetric ciphers from range of
@@ -319,9 +320,10 @@ else if (params.isImplicitlyCA())
                 }
             }
 
-            X9ECPoint derQ = new X9ECPoint(dParams.getCurve(), key);
+            // share the point, and any precomputation for it, with earlier decodings of the same key
+            ECPoint q = ECPointCache.getDefault().decodePoint(dParams.getCurve(), key.getOctets());
 
-            return new ECPublicKeyParameters(derQ.getPoint(), dParams);
+            return new ECPublicKeyParameters(q, dParams);
         }
     }
 
@@ -1,6 +1,9 @@
 package org.bouncycastle.crypto.util;
 
+import java.util.concurrent.Executor;
+
 import org.bouncycastle.asn1.misc.MiscObjectIdentifiers;
+import org.bouncycastle.crypto.generators.SCryptMemoryPool;
 
 /**
  * Configuration class for a PBKDF based around scrypt.
@@ -15,6 +18,8 @@
         private final int parallelizationParameter;
 
         private int saltLength = 16;
+        private Executor executor;
+        private SCryptMemoryPool memoryPool;
 
         /**
          * Base constructor.
@@ -48,6 +53,32 @@ public Builder withSaltLength(int saltLength)
             return this;
         }
 
+        /**
+         * Set an executor to run the parallel SMix invocations on when deriving keys.
+         *
+         * @param executor the executor to use, null to run on the calling thread.
+         * @return the current builder.
+         */
+        public Builder withExecutor(Executor executor)
+        {
+            this.executor = executor;
+
+            return this;
+        }
+
+        /**
+         * Set a pool to draw scrypt scratch memory from when deriving keys.
+         *
+         * @param memoryPool the pool to use, null to allocate scratch memory on each derivation.
+         * @return the current builder.
+         */
+        public Builder withMemoryPool(SCryptMemoryPool memoryPool)
+        {
+            this.memoryPool = memoryPool;
+
+            return this;
+        }
+
         public ScryptConfig build()
         {
             return new ScryptConfig(this);
@@ -64,6 +95,8 @@ private static boolean isPowerOf2(int x)
     private final int blockSize;
     private final int parallelizationParameter;
     private final int saltLength;
+    private final Executor executor;
+    private final SCryptMemoryPool memoryPool;
 
     private ScryptConfig(Builder builder)
     {
@@ -73,6 +106,8 @@ private ScryptConfig(Builder builder)
         this.blockSize = builder.blockSize;
         this.parallelizationParameter = builder.parallelizationParameter;
         this.saltLength = builder.saltLength;
+        this.executor = builder.executor;
+        this.memoryPool = builder.memoryPool;
     }
 
     public int getCostParameter()
@@ -94,4 +129,14 @@ public int getSaltLength()
     {
         return saltLength;
     }
+
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
+    public SCryptMemoryPool getMemoryPool()
+    {
+        return memoryPool;
+    }
 }
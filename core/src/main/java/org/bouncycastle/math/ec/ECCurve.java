@@ -1,7 +1,6 @@
 package org.bouncycastle.math.ec;
 
 import java.math.BigInteger;
-import java.util.Hashtable;
 import java.util.Random;
 
 import org.bouncycastle.math.ec.endo.ECEndomorphism;
@@ -94,7 +93,7 @@ public ECCurve create()
 
     protected int coord = COORD_AFFINE;
     protected ECEndomorphism endomorphism = null;
-    protected ECMultiplier multiplier = null;
+    protected volatile ECMultiplier multiplier = null;
 
     protected ECCurve(FiniteField field)
     {
@@ -175,28 +174,21 @@ public PreCompInfo getPreCompInfo(ECPoint point, String name)
     {
         checkPoint(point);
 
-        Hashtable table;
-        synchronized (point)
-        {
-            table = point.preCompTable;
-        }
+        PreCompTable table = point.preCompTable;
 
-        if (null == table)
-        {
-            return null;
-        }
-
-        synchronized (table)
-        {
-            return (PreCompInfo)table.get(name);
-        }
+        return null == table ? null : table.get(name);
     }
 
     /**
      * Compute a <code>PreCompInfo</code> for a point on this curve, under a given name. Used by
      * <code>ECMultiplier</code>s to save the precomputation for this <code>ECPoint</code> for use
      * by subsequent multiplication.
-     * 
+     * <p>
+     * Calls for the same point are serialized, so a precomputation is only calculated once, however
+     * many threads ask for it at the same time. As this involves a lock, callers that can tell whether
+     * an existing precomputation is sufficient should first check it using
+     * {@link #getPreCompInfo(ECPoint, String)}, which does not lock.
+     * </p>
      * @param point
      *            The <code>ECPoint</code> to store precomputations for.
      * @param name
@@ -208,24 +200,17 @@ public PreCompInfo precompute(ECPoint point, String name, PreCompCallback callba
     {
         checkPoint(point);
 
-        Hashtable table;
         synchronized (point)
         {
-            table = point.preCompTable;
-            if (null == table)
-            {
-                point.preCompTable = table = new Hashtable(4);
-            }
-        }
-
-        synchronized (table)
-        {
-            PreCompInfo existing = (PreCompInfo)table.get(name);
+            PreCompTable table = point.preCompTable;
+            PreCompInfo existing = null == table ? null : table.get(name);
             PreCompInfo result = callback.precompute(existing);
 
             if (result != existing)
             {
-                table.put(name, result);
+                // the callback may itself have added precomputations for this point
+                table = point.preCompTable;
+                point.preCompTable = null == table ? new PreCompTable(name, result) : table.with(name, result);
             }
 
             return result;
@@ -371,13 +356,21 @@ public ECEndomorphism getEndomorphism()
     /**
      * Sets the default <code>ECMultiplier</code>, unless already set. 
      */
-    public synchronized ECMultiplier getMultiplier()
+    public ECMultiplier getMultiplier()
     {
-        if (this.multiplier == null)
+        ECMultiplier m = this.multiplier;
+        if (m == null)
         {
-            this.multiplier = createDefaultMultiplier();
+            synchronized (this)
+            {
+                m = this.multiplier;
+                if (m == null)
+                {
+                    this.multiplier = m = createDefaultMultiplier();
+                }
+            }
         }
-        return this.multiplier;
+        return m;
     }
 
     /**
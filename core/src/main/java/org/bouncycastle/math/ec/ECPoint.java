@@ -48,8 +48,8 @@ protected static ECFieldElement[] getInitialZCoords(ECCurve curve)
 
     protected boolean withCompression;
 
-    // Hashtable is (String -> PreCompInfo)
-    protected Hashtable preCompTable = null;
+    // never modified once published, see ECCurve.precompute()
+    volatile PreCompTable preCompTable = null;
 
     protected ECPoint(ECCurve curve, ECFieldElement x, ECFieldElement y)
     {
@@ -92,6 +92,19 @@ public ECCurve getCurve()
 
     protected abstract ECPoint detach();
 
+    /**
+     * Return a copy of the precomputations held for this point, as a Hashtable (String -> PreCompInfo), or
+     * null if there are none. The point itself no longer holds a Hashtable, so changes to the returned one
+     * have no effect; use {@link ECCurve#precompute(ECPoint, String, PreCompCallback)} to add or replace
+     * a precomputation.
+     */
+    protected Hashtable getPreCompTable()
+    {
+        PreCompTable table = this.preCompTable;
+
+        return null == table ? null : table.toHashtable();
+    }
+
     protected int getCurveCoordinateSystem()
     {
         // Cope with null curve, most commonly used by implicitlyCa
@@ -293,6 +306,20 @@ boolean implIsValid(final boolean decompressed, final boolean checkOrder)
             return true;
         }
 
+        PreCompInfo current = getCurve().getPreCompInfo(this, ValidityPrecompInfo.PRECOMP_NAME);
+        if (current instanceof ValidityPrecompInfo)
+        {
+            ValidityPrecompInfo info = (ValidityPrecompInfo)current;
+            if (info.hasFailed())
+            {
+                return false;
+            }
+            if (info.hasCurveEquationPassed() && (!checkOrder || info.hasOrderPassed()))
+            {
+                return true;
+            }
+        }
+
         ValidityPrecompInfo validity = (ValidityPrecompInfo)getCurve().precompute(this, ValidityPrecompInfo.PRECOMP_NAME, new PreCompCallback()
         {
             public PreCompInfo precompute(PreCompInfo existing)
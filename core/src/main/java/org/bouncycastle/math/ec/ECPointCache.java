@@ -0,0 +1,211 @@
+package org.bouncycastle.math.ec;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Properties;
+
+/**
+ * A bounded, thread safe, cache of points (typically public keys) keyed by their encoding and curve.
+ * <p>
+ * Multipliers attach their precomputations (see {@link ECCurve#precompute(ECPoint, String, PreCompCallback)})
+ * to the point instance they are given, so a public key decoded afresh for each verification has its
+ * precomputation rebuilt every time. Looking the point up here instead returns the same instance for the
+ * same encoding, so the precomputation done by the first verification with a key is reused by the ones that
+ * follow, and on a hit the cost of decoding and validating the point is saved as well.
+ * </p><p>
+ * Points are only shared between users of the same curve instance, as a point imported into a different
+ * instance of an equal curve does not carry its precomputation across. Entries are discarded on a least
+ * recently used basis once the cache is full.
+ * </p>
+ */
+public class ECPointCache
+{
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static final ECPointCache DEFAULT = new ECPointCache(getDefaultMaxEntries());
+
+    /**
+     * Return the cache shared by the library's verifiers. Its size can be set using the
+     * "org.bouncycastle.ec.point_cache_size" system property, with a size of 0 disabling it.
+     *
+     * @return the default point cache.
+     */
+    public static ECPointCache getDefault()
+    {
+        return DEFAULT;
+    }
+
+    private final int maxEntries;
+    private final Map entries;
+
+    /**
+     * Base constructor.
+     *
+     * @param maxEntries the maximum number of points to hold, 0 if points should not be cached at all.
+     */
+    public ECPointCache(final int maxEntries)
+    {
+        if (maxEntries < 0)
+        {
+            throw new IllegalArgumentException("maxEntries cannot be negative");
+        }
+
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Return the number of points currently held.
+     *
+     * @return the number of entries in the cache.
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Discard all cached points.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Decode a point on the passed in curve, returning the cached instance if the same encoding has been
+     * decoded on this curve before.
+     *
+     * @param curve the curve the point is on.
+     * @param encoded the encoding of the point.
+     * @return the decoded point.
+     * @throws IllegalArgumentException if the encoding is not of a valid point on curve.
+     */
+    public ECPoint decodePoint(ECCurve curve, byte[] encoded)
+    {
+        if (maxEntries == 0)
+        {
+            return curve.decodePoint(encoded);
+        }
+
+        Key key = new Key(curve, Arrays.clone(encoded));
+
+        ECPoint p = get(key);
+        if (p == null)
+        {
+            p = curve.decodePoint(encoded);
+            if (p.isInfinity())
+            {
+                return p;
+            }
+            p = putIfAbsent(key, p);
+        }
+        return p;
+    }
+
+    /**
+     * Return the cached instance of a point equal to the passed in one, caching the point itself if there
+     * is none.
+     *
+     * @param point the point of interest, assumed to be valid.
+     * @return the cached instance of the point, or a normalized copy of it.
+     */
+    public ECPoint intern(ECPoint point)
+    {
+        if (maxEntries == 0 || point.isInfinity())
+        {
+            return point;
+        }
+
+        point = point.normalize();
+
+        Key key = new Key(point.getCurve(), point.getEncoded(false));
+
+        ECPoint p = get(key);
+        if (p == null)
+        {
+            p = putIfAbsent(key, point);
+        }
+        return p;
+    }
+
+    private synchronized ECPoint get(Key key)
+    {
+        return (ECPoint)entries.get(key);
+    }
+
+    private synchronized ECPoint putIfAbsent(Key key, ECPoint p)
+    {
+        ECPoint existing = (ECPoint)entries.get(key);
+        if (existing != null)
+        {
+            return existing;
+        }
+
+        entries.put(key, p);
+        return p;
+    }
+
+    private static int getDefaultMaxEntries()
+    {
+        try
+        {
+            BigInteger size = Properties.asBigInteger("org.bouncycastle.ec.point_cache_size");
+            if (size != null)
+            {
+                return Math.max(0, size.intValue());
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // fall through to the default
+        }
+
+        return DEFAULT_MAX_ENTRIES;
+    }
+
+    private static class Key
+    {
+        private final ECCurve curve;
+        private final byte[] encoding;
+        private final int hashCode;
+
+        Key(ECCurve curve, byte[] encoding)
+        {
+            this.curve = curve;
+            this.encoding = encoding;
+            this.hashCode = System.identityHashCode(curve) * 31 + Arrays.hashCode(encoding);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key)o;
+
+            return curve == other.curve && Arrays.areEqual(encoding, other.encoding);
+        }
+    }
+}
@@ -20,6 +20,15 @@ public static FixedPointPreCompInfo getFixedPointPreCompInfo(PreCompInfo preComp
     public static FixedPointPreCompInfo precompute(final ECPoint p)
     {
         final ECCurve c = p.getCurve();
+        final int bits = getCombSize(c);
+        final int minWidth = bits > 250 ? 6 : 5;
+        final int n = 1 << minWidth;
+
+        FixedPointPreCompInfo current = getFixedPointPreCompInfo(c.getPreCompInfo(p, PRECOMP_NAME));
+        if (checkExisting(current, n))
+        {
+            return current;
+        }
 
         return (FixedPointPreCompInfo)c.precompute(p, PRECOMP_NAME, new PreCompCallback()
         {
@@ -27,10 +36,6 @@ public PreCompInfo precompute(PreCompInfo existing)
             {
                 FixedPointPreCompInfo existingFP = (existing instanceof FixedPointPreCompInfo) ? (FixedPointPreCompInfo)existing : null;
 
-                int bits = getCombSize(c);
-                int minWidth = bits > 250 ? 6 : 5;
-                int n = 1 << minWidth;
-
                 if (checkExisting(existingFP, n))
                 {
                     return existingFP;
@@ -72,16 +77,16 @@ public PreCompInfo precompute(PreCompInfo existing)
                 result.setWidth(minWidth);
                 return result;
             }
+        });
+    }
 
-            private boolean checkExisting(FixedPointPreCompInfo existingFP, int n)
-            {
-                return existingFP != null && checkTable(existingFP.getLookupTable(), n);
-            }
+    private static boolean checkExisting(FixedPointPreCompInfo existingFP, int n)
+    {
+        return existingFP != null && checkTable(existingFP.getLookupTable(), n);
+    }
 
-            private boolean checkTable(ECLookupTable table, int n)
-            {
-                return table != null && table.getSize() >= n;
-            }
-        });
+    private static boolean checkTable(ECLookupTable table, int n)
+    {
+        return table != null && table.getSize() >= n;
     }
 }
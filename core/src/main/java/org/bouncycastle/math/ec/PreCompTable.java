@@ -0,0 +1,72 @@
+package org.bouncycastle.math.ec;
+
+import java.util.Hashtable;
+
+/**
+ * An immutable table of the precomputations for a point, keyed by name. Adding or replacing an entry
+ * creates a new table, which is then published by a single write to the point, so readers never need
+ * to lock.
+ */
+final class PreCompTable
+{
+    private final String[] names;
+    private final PreCompInfo[] infos;
+
+    PreCompTable(String name, PreCompInfo info)
+    {
+        this(new String[]{ name }, new PreCompInfo[]{ info });
+    }
+
+    private PreCompTable(String[] names, PreCompInfo[] infos)
+    {
+        this.names = names;
+        this.infos = infos;
+    }
+
+    PreCompInfo get(String name)
+    {
+        for (int i = 0; i < names.length; ++i)
+        {
+            if (names[i].equals(name))
+            {
+                return infos[i];
+            }
+        }
+        return null;
+    }
+
+    Hashtable toHashtable()
+    {
+        Hashtable result = new Hashtable(names.length);
+        for (int i = 0; i < names.length; ++i)
+        {
+            result.put(names[i], infos[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Return a table with the same entries as this one, except that name maps to info.
+     */
+    PreCompTable with(String name, PreCompInfo info)
+    {
+        int count = names.length;
+        for (int i = 0; i < count; ++i)
+        {
+            if (names[i].equals(name))
+            {
+                PreCompInfo[] newInfos = (PreCompInfo[])infos.clone();
+                newInfos[i] = info;
+                return new PreCompTable(names, newInfos);
+            }
+        }
+
+        String[] newNames = new String[count + 1];
+        PreCompInfo[] newInfos = new PreCompInfo[count + 1];
+        System.arraycopy(names, 0, newNames, 0, count);
+        System.arraycopy(infos, 0, newInfos, 0, count);
+        newNames[count] = name;
+        newInfos[count] = info;
+        return new PreCompTable(newNames, newInfos);
+    }
+}
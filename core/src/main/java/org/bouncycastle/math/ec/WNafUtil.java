@@ -386,6 +386,13 @@ public PreCompInfo precompute(PreCompInfo existing)
     public static WNafPreCompInfo precompute(final ECPoint p, final int width, final boolean includeNegated)
     {
         final ECCurve c = p.getCurve();
+        final int reqPreCompLen = 1 << Math.max(0, width - 2);
+
+        WNafPreCompInfo current = getWNafPreCompInfo(c.getPreCompInfo(p, PRECOMP_NAME));
+        if (checkExisting(current, reqPreCompLen, includeNegated))
+        {
+            return current;
+        }
 
         return (WNafPreCompInfo)c.precompute(p, PRECOMP_NAME, new PreCompCallback()
         {
@@ -393,8 +400,6 @@ public PreCompInfo precompute(PreCompInfo existing)
             {
                 WNafPreCompInfo existingWNaf = (existing instanceof WNafPreCompInfo) ? (WNafPreCompInfo)existing : null;
 
-                int reqPreCompLen = 1 << Math.max(0, width - 2);
-
                 if (checkExisting(existingWNaf, reqPreCompLen, includeNegated))
                 {
                     return existingWNaf;
@@ -533,19 +538,19 @@ public PreCompInfo precompute(PreCompInfo existing)
                 result.setTwice(twiceP);
                 return result;
             }
+        });
+    }
 
-            private boolean checkExisting(WNafPreCompInfo existingWNaf, int reqPreCompLen, boolean includeNegated)
-            {
-                return existingWNaf != null
-                    && checkTable(existingWNaf.getPreComp(), reqPreCompLen)
-                    && (!includeNegated || checkTable(existingWNaf.getPreCompNeg(), reqPreCompLen));
-            }
+    private static boolean checkExisting(WNafPreCompInfo existingWNaf, int reqPreCompLen, boolean includeNegated)
+    {
+        return existingWNaf != null
+            && checkTable(existingWNaf.getPreComp(), reqPreCompLen)
+            && (!includeNegated || checkTable(existingWNaf.getPreCompNeg(), reqPreCompLen));
+    }
 
-            private boolean checkTable(ECPoint[] table, int reqLen)
-            {
-                return table != null && table.length >= reqLen;
-            }
-        });
+    private static boolean checkTable(ECPoint[] table, int reqLen)
+    {
+        return table != null && table.length >= reqLen;
     }
 
     private static byte[] trim(byte[] a, int length)
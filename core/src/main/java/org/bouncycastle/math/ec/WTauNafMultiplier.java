@@ -75,20 +75,25 @@ private static ECPoint.AbstractF2m multiplyFromWTnaf(final ECPoint.AbstractF2m p
         ECCurve.AbstractF2m curve = (ECCurve.AbstractF2m)p.getCurve();
         final byte a = curve.getA().toBigInteger().byteValue();
 
-        WTauNafPreCompInfo preCompInfo = (WTauNafPreCompInfo)curve.precompute(p, PRECOMP_NAME, new PreCompCallback()
+        PreCompInfo current = curve.getPreCompInfo(p, PRECOMP_NAME);
+        WTauNafPreCompInfo preCompInfo = (current instanceof WTauNafPreCompInfo) ? (WTauNafPreCompInfo)current : null;
+        if (preCompInfo == null)
         {
-            public PreCompInfo precompute(PreCompInfo existing)
+            preCompInfo = (WTauNafPreCompInfo)curve.precompute(p, PRECOMP_NAME, new PreCompCallback()
             {
-                if (existing instanceof WTauNafPreCompInfo)
+                public PreCompInfo precompute(PreCompInfo existing)
                 {
-                    return existing;
+                    if (existing instanceof WTauNafPreCompInfo)
+                    {
+                        return existing;
+                    }
+
+                    WTauNafPreCompInfo result = new WTauNafPreCompInfo();
+                    result.setPreComp(Tnaf.getPreComp(p, a));
+                    return result;
                 }
-
-                WTauNafPreCompInfo result = new WTauNafPreCompInfo();
-                result.setPreComp(Tnaf.getPreComp(p, a));
-                return result;
-            }
-        });
+            });
+        }
 
         ECPoint.AbstractF2m[] pu = preCompInfo.getPreComp();
 
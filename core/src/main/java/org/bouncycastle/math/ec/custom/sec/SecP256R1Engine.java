@@ -0,0 +1,823 @@
+package org.bouncycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.raw.Interleave;
+import org.bouncycastle.math.raw.Mont256;
+import org.bouncycastle.math.raw.Nat;
+import org.bouncycastle.math.raw.Nat256;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Constant time scalar multiplication, and ECDSA signing, on the NIST P-256 (secp256r1) curve, for use where
+ * the scalar is secret.
+ * <p>
+ * Field elements are held as int[8], always fully reduced modulo p, and points in homogeneous projective
+ * coordinates. Points are added with the complete formulas for a = -3 of Renes, Costello and Batina ("Complete
+ * addition formulas for prime order elliptic curves", 2016), which are correct for all inputs, including the
+ * point at infinity and P + P, so there are no exceptional cases to branch on. Doubling uses the cheaper
+ * "dbl-2007-bl" formulas, with a masked fix-up that keeps the point at infinity valid. Scalars may be any
+ * 256 bit value, and are reduced modulo n first. Multiplication of
+ * the generator uses a signed-digit comb over a table of 64 precomputed points, and multiplication of any other
+ * point a fixed window of 5 signed digits. Table entries are always selected by scanning the whole table. The
+ * ECDSA scalar arithmetic modulo n is done in Montgomery form using {@link Mont256}.
+ * </p><p>
+ * This is slower than the variable time multipliers used by default, so ECDSA signing, EC key pair generation
+ * and ECDH agreement only use it for P-256 when the "org.bouncycastle.ec.constant_time_p256" system property is
+ * set to true.
+ * </p>
+ */
+public abstract class SecP256R1Engine
+{
+    private static final long M = 0xFFFFFFFFL;
+
+    private static final BigInteger N_BIG = new BigInteger(1,
+        Hex.decode("FFFFFFFF00000000FFFFFFFFFFFFFFFFBCE6FAADA7179E84F3B9CAC2FC632551"));
+    private static final BigInteger GX_BIG = new BigInteger(1,
+        Hex.decode("6B17D1F2E12C4247F8BCE6E563A440F277037D812DEB33A0F4A13945D898C296"));
+    private static final BigInteger GY_BIG = new BigInteger(1,
+        Hex.decode("4FE342E2FE1A7F9B8EE7EB4A7C0F9E162BCE33576B315ECECBB6406837BF51F5"));
+
+    private static final ECCurve CURVE = new SecP256R1Curve();
+
+    private static final int[] B = Nat256.fromBigInteger(new BigInteger(1,
+        Hex.decode("5AC635D8AA3A93E7B3EBBD55769886BC651D06B0CC53B0F63BCE3C3E27D2604B")));
+
+    private static final int[] N = Nat256.fromBigInteger(N_BIG);
+    private static final int N_INV32 = -Mont256.inverse32(N[0]);
+    private static final int[] N_R2 = Nat256.fromBigInteger(BigInteger.ONE.shiftLeft(512).mod(N_BIG));
+
+    private static final int PRECOMP_BLOCKS = 8;
+    private static final int PRECOMP_TEETH = 4;
+    private static final int PRECOMP_SPACING = 8;
+    private static final int PRECOMP_POINTS = 1 << (PRECOMP_TEETH - 1);
+    private static final int PRECOMP_MASK = PRECOMP_POINTS - 1;
+
+    private static final int WINDOW_WIDTH = 5;
+    private static final int WINDOW_POINTS = 1 << (WINDOW_WIDTH - 1);
+    private static final int WINDOW_MASK = WINDOW_POINTS - 1;
+
+    private static Object precompLock = new Object();
+    private static int[] precompBase = null;
+
+    private static class PointProj
+    {
+        int[] x = Nat256.create();
+        int[] y = Nat256.create();
+        int[] z = Nat256.create();
+    }
+
+    private static class PointTemp
+    {
+        int[] t0 = Nat256.create();
+        int[] t1 = Nat256.create();
+        int[] t2 = Nat256.create();
+        int[] t3 = Nat256.create();
+        int[] t4 = Nat256.create();
+        int[] t5 = Nat256.create();
+        int[] t6 = Nat256.create();
+        int[] t7 = Nat256.create();
+        int[] tt = Nat256.createExt();
+    }
+
+    /**
+     * Return whether the passed in domain parameters are those of P-256, so that this class can be used
+     * in place of the general purpose arithmetic.
+     *
+     * @param curve the curve.
+     * @param G the base point.
+     * @param n the order of the base point.
+     * @return true if the parameters are P-256, false otherwise.
+     */
+    public static boolean isSupported(ECCurve curve, ECPoint G, BigInteger n)
+    {
+        if (curve == null || G == null || !N_BIG.equals(n))
+        {
+            return false;
+        }
+        if (!(curve instanceof SecP256R1Curve) && !CURVE.equals(curve))
+        {
+            return false;
+        }
+
+        G = G.normalize();
+        return !G.isInfinity()
+            && GX_BIG.equals(G.getAffineXCoord().toBigInteger())
+            && GY_BIG.equals(G.getAffineYCoord().toBigInteger());
+    }
+
+    /**
+     * Build the table used for multiplication of the generator, if it has not already been built.
+     */
+    public static void precompute()
+    {
+        synchronized (precompLock)
+        {
+            if (precompBase != null)
+            {
+                return;
+            }
+
+            ECPoint p = CURVE.createPoint(GX_BIG, GY_BIG);
+
+            ECPoint[] points = new ECPoint[PRECOMP_BLOCKS * PRECOMP_POINTS];
+
+            int k = 0;
+            for (int b = 0; b < PRECOMP_BLOCKS; ++b)
+            {
+                // ds[t] = 2^(32.b + 8.t).G
+                ECPoint[] ds = new ECPoint[PRECOMP_TEETH];
+                for (int t = 0; t < PRECOMP_TEETH; ++t)
+                {
+                    ds[t] = p;
+                    p = p.timesPow2(PRECOMP_SPACING);
+                }
+
+                // points[j] = ds[3] + sum over t < 3 of (bit t of j ? ds[t] : -ds[t])
+                for (int j = 0; j < PRECOMP_POINTS; ++j)
+                {
+                    ECPoint sum = ds[PRECOMP_TEETH - 1];
+                    for (int t = 0; t < PRECOMP_TEETH - 1; ++t)
+                    {
+                        sum = ((j >>> t) & 1) != 0 ? sum.add(ds[t]) : sum.subtract(ds[t]);
+                    }
+                    points[k++] = sum;
+                }
+            }
+
+            CURVE.normalizeAll(points);
+
+            int[] table = new int[points.length * 16];
+            int off = 0;
+            for (int i = 0; i < points.length; ++i)
+            {
+                Nat256.copy(((SecP256R1FieldElement)points[i].getAffineXCoord()).x, 0, table, off);
+                off += 8;
+                Nat256.copy(((SecP256R1FieldElement)points[i].getAffineYCoord()).x, 0, table, off);
+                off += 8;
+            }
+
+            precompBase = table;
+        }
+    }
+
+    /**
+     * Constant time multiplication of the generator: (x, y) = k.G.
+     *
+     * @param k the scalar, least significant word first.
+     * @param x the affine x coordinate of the result.
+     * @param y the affine y coordinate of the result.
+     * @return false if the result is the point at infinity (k is a multiple of n, and x and y are zero), true
+     * otherwise.
+     */
+    public static boolean scalarMultBase(int[] k, int[] x, int[] y)
+    {
+        precompute();
+
+        int[] m = Nat256.create();
+        int negate = recodeScalar(k, m);
+
+        // 256 signed digits, then group the comb bits of each block, so that the teeth for each offset are adjacent
+        m[7] |= 0x80000000;
+        for (int i = 0; i < 8; ++i)
+        {
+            m[i] = Interleave.shuffle2(m[i]);
+        }
+
+        PointProj r = new PointProj(), p = new PointProj();
+        PointTemp tmp = new PointTemp();
+        pointSetInfinity(r);
+
+        int cOff = (PRECOMP_SPACING - 1) * PRECOMP_TEETH;
+        for (;;)
+        {
+            for (int b = 0; b < PRECOMP_BLOCKS; ++b)
+            {
+                int w = m[b] >>> cOff;
+                int sign = ((w >>> (PRECOMP_TEETH - 1)) & 1) ^ 1;
+                int abs = (w ^ -sign) & PRECOMP_MASK;
+
+                pointLookupBase(b, abs, p);
+
+                fieldCNegate(sign, p.y, tmp.t0);
+
+                pointAddAffine(p, r, tmp);
+            }
+
+            if ((cOff -= PRECOMP_TEETH) < 0)
+            {
+                break;
+            }
+
+            pointDouble(r, tmp);
+        }
+
+        fieldCNegate(negate, r.y, tmp.t0);
+
+        return pointToAffine(r, x, y, tmp);
+    }
+
+    /**
+     * Constant time multiplication of an arbitrary point: (x, y) = k.(px, py).
+     *
+     * @param k the scalar, least significant word first.
+     * @param px the affine x coordinate of a point on the curve.
+     * @param py the affine y coordinate of a point on the curve.
+     * @param x the affine x coordinate of the result.
+     * @param y the affine y coordinate of the result.
+     * @return false if the result is the point at infinity (k is a multiple of n, and x and y are zero), true
+     * otherwise.
+     */
+    public static boolean scalarMult(int[] k, int[] px, int[] py, int[] x, int[] y)
+    {
+        PointProj r = new PointProj(), p = new PointProj();
+        PointTemp tmp = new PointTemp();
+
+        // table[i] = (2.i + 1).P
+        int[] table = new int[WINDOW_POINTS * 24];
+        {
+            PointProj d = r;
+            Nat256.copy(px, p.x);
+            Nat256.copy(py, p.y);
+            p.z[0] = 1;
+
+            Nat256.copy(px, d.x);
+            Nat256.copy(py, d.y);
+            d.z[0] = 1;
+            pointDouble(d, tmp);
+
+            for (int i = 0;;)
+            {
+                pointStore(p, table, i * 24);
+                if (++i == WINDOW_POINTS)
+                {
+                    break;
+                }
+                pointAdd(d, p, tmp);
+            }
+        }
+
+        // 260 signed digits, which gives each window an odd (so non-zero) value
+        int[] m = Nat.create(9);
+        int negate = recodeScalar(k, m);
+        m[8] = 1 << (259 & 31);
+
+        pointSetInfinity(r);
+
+        for (int bit = 260 - WINDOW_WIDTH;; bit -= WINDOW_WIDTH)
+        {
+            int word = bit >>> 5, shift = bit & 31;
+            int w = m[word] >>> shift;
+            if (shift > 32 - WINDOW_WIDTH)
+            {
+                w |= m[word + 1] << (32 - shift);
+            }
+
+            int sign = ((w >>> (WINDOW_WIDTH - 1)) & 1) ^ 1;
+            int abs = (w ^ -sign) & WINDOW_MASK;
+
+            pointLookup(table, WINDOW_POINTS, abs, p);
+
+            fieldCNegate(sign, p.y, tmp.t0);
+
+            pointAdd(p, r, tmp);
+
+            if (bit == 0)
+            {
+                break;
+            }
+
+            for (int j = 0; j < WINDOW_WIDTH; ++j)
+            {
+                pointDouble(r, tmp);
+            }
+        }
+
+        fieldCNegate(negate, r.y, tmp.t0);
+
+        return pointToAffine(r, x, y, tmp);
+    }
+
+    /**
+     * Constant time ECDSA signature generation.
+     *
+     * @param d the private key, in the range [1, n - 1].
+     * @param k the per-signature secret, in the range [1, n - 1].
+     * @param e the integer representative of the message.
+     * @param r the r value of the signature.
+     * @param s the s value of the signature.
+     * @return false if either of r or s is 0, in which case a new k must be used, true otherwise.
+     */
+    public static boolean sign(int[] d, int[] k, int[] e, int[] r, int[] s)
+    {
+        int[] x = Nat256.create(), y = Nat256.create();
+        scalarMultBase(k, x, y);
+
+        // r = x mod n, where x < p < 2n
+        Nat256.copy(x, r);
+        Nat.csub(8, gte(r, N), r, N, r);
+
+        int[] t = Nat256.create(), u = Nat256.create();
+
+        // t = d.r + e mod n
+        Mont256.multiply(d, N_R2, t, N, N_INV32);
+        Mont256.multiply(t, r, t, N, N_INV32);
+        Nat256.copy(e, u);
+        Nat.csub(8, gte(u, N), u, N, u);
+        Mont256.add(t, u, t, N);
+
+        // s = k^-1.t mod n
+        Mont256.multiply(k, N_R2, u, N, N_INV32);
+        Mont256.inverse(u, u, N, N_INV32);
+        Mont256.multiply(u, t, s, N, N_INV32);
+
+        return !Nat256.isZero(r) && !Nat256.isZero(s);
+    }
+
+    private static int recodeScalar(int[] k, int[] m)
+    {
+        // m = k mod n, where k < 2^256 < 2.n
+        Nat256.copy(k, m);
+        Nat.csub(8, gte(m, N), m, N, m);
+
+        // Use m if it is odd, otherwise n - m (and the result is to be negated), so that m is odd
+        int negate = ~m[0] & 1;
+        int[] t = Nat256.create();
+        Nat256.sub(N, m, t);
+        Nat.cmov(8, negate, t, 0, m, 0);
+
+        // An odd m < 2^256 can be recoded into signed binary digits, for any length l >= 256: with
+        // b = (m - 1)/2 + 2^(l - 1), m = sum of (2.b_i - 1).2^i for i < l. The caller sets bit l - 1.
+        Nat.shiftDownBit(8, m, 0);
+
+        return negate;
+    }
+
+    private static void fieldAdd(int[] x, int[] y, int[] z)
+    {
+        int c = Nat256.add(x, y, z);
+        fieldReduceFinal(c, z);
+    }
+
+    private static void fieldCNegate(int negate, int[] z, int[] t)
+    {
+        Nat256.zero(t);
+        fieldSubtract(t, z, t);
+        Nat.cmov(8, negate, t, 0, z, 0);
+    }
+
+    private static void fieldInvert(int[] x, int[] z, PointTemp tmp)
+    {
+        // z = x^(p - 2), with p - 2 = 2^256 - 2^224 + 2^192 + 2^96 - 3
+        int[] tt = tmp.tt;
+        int[] x2 = tmp.t0;
+        fieldSquare(x, x2, tt);
+        fieldMultiply(x2, x, x2, tt);
+        int[] x3 = tmp.t1;
+        fieldSquare(x2, x3, tt);
+        fieldMultiply(x3, x, x3, tt);
+        int[] x6 = tmp.t2;
+        fieldSquareN(x3, 3, x6, tt);
+        fieldMultiply(x6, x3, x6, tt);
+        int[] x12 = tmp.t3;
+        fieldSquareN(x6, 6, x12, tt);
+        fieldMultiply(x12, x6, x12, tt);
+        int[] x15 = x12;
+        fieldSquareN(x12, 3, x15, tt);
+        fieldMultiply(x15, x3, x15, tt);
+        int[] x30 = tmp.t4;
+        fieldSquareN(x15, 15, x30, tt);
+        fieldMultiply(x30, x15, x30, tt);
+        int[] x32 = x6;
+        fieldSquareN(x30, 2, x32, tt);
+        fieldMultiply(x32, x2, x32, tt);
+
+        int[] t = x2;
+        fieldSquareN(x32, 32, t, tt);
+        fieldMultiply(t, x, t, tt);
+        fieldSquareN(t, 128, t, tt);
+        fieldMultiply(t, x32, t, tt);
+        fieldSquareN(t, 32, t, tt);
+        fieldMultiply(t, x32, t, tt);
+        fieldSquareN(t, 30, t, tt);
+        fieldMultiply(t, x30, t, tt);
+        fieldSquareN(t, 2, t, tt);
+        fieldMultiply(t, x, z, tt);
+    }
+
+    private static int fieldIsZero(int[] x)
+    {
+        // 1 if x is 0, 0 otherwise, without branching
+        int d = 0;
+        for (int i = 0; i < 8; ++i)
+        {
+            d |= x[i];
+        }
+        return ((d | -d) >>> 31) ^ 1;
+    }
+
+    private static void fieldMultiply(int[] x, int[] y, int[] z, int[] tt)
+    {
+        Nat256.mul(x, y, tt);
+        fieldReduce(tt, z);
+    }
+
+    private static void fieldReduce(int[] xx, int[] z)
+    {
+        long xx08 = xx[8] & M, xx09 = xx[9] & M, xx10 = xx[10] & M, xx11 = xx[11] & M;
+        long xx12 = xx[12] & M, xx13 = xx[13] & M, xx14 = xx[14] & M, xx15 = xx[15] & M;
+
+        final long n = 6;
+
+        xx08 -= n;
+
+        long t0 = xx08 + xx09;
+        long t1 = xx09 + xx10;
+        long t2 = xx10 + xx11 - xx15;
+        long t3 = xx11 + xx12;
+        long t4 = xx12 + xx13;
+        long t5 = xx13 + xx14;
+        long t6 = xx14 + xx15;
+        long t7 = t5 - t0;
+
+        long cc = 0;
+        cc += (xx[0] & M) - t3 - t7;
+        z[0] = (int)cc;
+        cc >>= 32;
+        cc += (xx[1] & M) + t1 - t4 - t6;
+        z[1] = (int)cc;
+        cc >>= 32;
+        cc += (xx[2] & M) + t2 - t5;
+        z[2] = (int)cc;
+        cc >>= 32;
+        cc += (xx[3] & M) + (t3 << 1) + t7 - t6;
+        z[3] = (int)cc;
+        cc >>= 32;
+        cc += (xx[4] & M) + (t4 << 1) + xx14 - t1;
+        z[4] = (int)cc;
+        cc >>= 32;
+        cc += (xx[5] & M) + (t5 << 1) - t2;
+        z[5] = (int)cc;
+        cc >>= 32;
+        cc += (xx[6] & M) + (t6 << 1) + t7;
+        z[6] = (int)cc;
+        cc >>= 32;
+        cc += (xx[7] & M) + (xx15 << 1) + xx08 - t2 - t4;
+        z[7] = (int)cc;
+        cc >>= 32;
+        cc += n;
+
+        // assert cc >= 0;
+
+        fieldReduce32((int)cc, z);
+    }
+
+    private static void fieldReduce32(int x, int[] z)
+    {
+        // As SecP256R1Field.reduce32, but always doing the whole carry chain and final subtraction
+        long xx08 = x & M;
+        long cc = 0;
+
+        cc += (z[0] & M) + xx08;
+        z[0] = (int)cc;
+        cc >>= 32;
+        cc += (z[1] & M);
+        z[1] = (int)cc;
+        cc >>= 32;
+        cc += (z[2] & M);
+        z[2] = (int)cc;
+        cc >>= 32;
+        cc += (z[3] & M) - xx08;
+        z[3] = (int)cc;
+        cc >>= 32;
+        cc += (z[4] & M);
+        z[4] = (int)cc;
+        cc >>= 32;
+        cc += (z[5] & M);
+        z[5] = (int)cc;
+        cc >>= 32;
+        cc += (z[6] & M) - xx08;
+        z[6] = (int)cc;
+        cc >>= 32;
+        cc += (z[7] & M) + xx08;
+        z[7] = (int)cc;
+        cc >>= 32;
+
+        // assert cc == 0 || cc == 1;
+
+        fieldReduceFinal((int)cc, z);
+    }
+
+    private static void fieldReduceFinal(int c, int[] z)
+    {
+        // z + c.2^256 is less than 2p; subtract p (by adding 2^256 - p) if c is set or z >= p, without branching
+
+        long cc = (z[0] & M) + 1;
+        cc >>>= 32;
+        cc += (z[1] & M);
+        cc >>>= 32;
+        cc += (z[2] & M);
+        cc >>>= 32;
+        cc += (z[3] & M) + M;
+        cc >>>= 32;
+        cc += (z[4] & M) + M;
+        cc >>>= 32;
+        cc += (z[5] & M) + M;
+        cc >>>= 32;
+        cc += (z[6] & M) + M - 1;
+        cc >>>= 32;
+        cc += (z[7] & M);
+        cc >>>= 32;
+
+        long m1 = (cc | c) & 1, mm = -m1 & M;
+
+        cc = (z[0] & M) + m1;
+        z[0] = (int)cc;
+        cc >>>= 32;
+        cc += (z[1] & M);
+        z[1] = (int)cc;
+        cc >>>= 32;
+        cc += (z[2] & M);
+        z[2] = (int)cc;
+        cc >>>= 32;
+        cc += (z[3] & M) + mm;
+        z[3] = (int)cc;
+        cc >>>= 32;
+        cc += (z[4] & M) + mm;
+        z[4] = (int)cc;
+        cc >>>= 32;
+        cc += (z[5] & M) + mm;
+        z[5] = (int)cc;
+        cc >>>= 32;
+        cc += (z[6] & M) + mm - m1;
+        z[6] = (int)cc;
+        cc >>>= 32;
+        cc += (z[7] & M);
+        z[7] = (int)cc;
+    }
+
+    private static void fieldSquare(int[] x, int[] z, int[] tt)
+    {
+        Nat256.square(x, tt);
+        fieldReduce(tt, z);
+    }
+
+    private static void fieldSquareN(int[] x, int n, int[] z, int[] tt)
+    {
+        // assert n > 0;
+
+        Nat256.square(x, tt);
+        fieldReduce(tt, z);
+
+        while (--n > 0)
+        {
+            Nat256.square(z, tt);
+            fieldReduce(tt, z);
+        }
+    }
+
+    private static void fieldSubtract(int[] x, int[] y, int[] z)
+    {
+        int c = Nat256.sub(x, y, z);
+
+        // add p back if the subtraction borrowed, without branching
+        long m1 = c & 1, mm = -m1 & M;
+
+        long cc = (z[0] & M) + mm;
+        z[0] = (int)cc;
+        cc >>>= 32;
+        cc += (z[1] & M) + mm;
+        z[1] = (int)cc;
+        cc >>>= 32;
+        cc += (z[2] & M) + mm;
+        z[2] = (int)cc;
+        cc >>>= 32;
+        cc += (z[3] & M);
+        z[3] = (int)cc;
+        cc >>>= 32;
+        cc += (z[4] & M);
+        z[4] = (int)cc;
+        cc >>>= 32;
+        cc += (z[5] & M);
+        z[5] = (int)cc;
+        cc >>>= 32;
+        cc += (z[6] & M) + m1;
+        z[6] = (int)cc;
+        cc >>>= 32;
+        cc += (z[7] & M) + mm;
+        z[7] = (int)cc;
+    }
+
+    private static int gte(int[] x, int[] y)
+    {
+        // 1 if x >= y, 0 otherwise, without branching
+        long c = 0;
+        for (int i = 0; i < 8; ++i)
+        {
+            c += (x[i] & M) - (y[i] & M);
+            c >>= 32;
+        }
+        return (int)c + 1;
+    }
+
+    private static void pointAdd(PointProj p, PointProj r, PointTemp tmp)
+    {
+        // r = p + r, using algorithm 4 of Renes, Costello and Batina
+        int[] X1 = p.x, Y1 = p.y, Z1 = p.z, X2 = r.x, Y2 = r.y, Z2 = r.z;
+        int[] t0 = tmp.t0, t1 = tmp.t1, t2 = tmp.t2, t3 = tmp.t3, t4 = tmp.t4;
+        int[] X3 = tmp.t5, Y3 = tmp.t6, Z3 = tmp.t7, tt = tmp.tt;
+
+        fieldMultiply(X1, X2, t0, tt);
+        fieldMultiply(Y1, Y2, t1, tt);
+        fieldMultiply(Z1, Z2, t2, tt);
+        fieldAdd(X1, Y1, t3);
+        fieldAdd(X2, Y2, t4);
+        fieldMultiply(t3, t4, t3, tt);
+        fieldAdd(t0, t1, t4);
+        fieldSubtract(t3, t4, t3);
+        fieldAdd(Y1, Z1, t4);
+        fieldAdd(Y2, Z2, X3);
+        fieldMultiply(t4, X3, t4, tt);
+        fieldAdd(t1, t2, X3);
+        fieldSubtract(t4, X3, t4);
+        fieldAdd(X1, Z1, X3);
+        fieldAdd(X2, Z2, Y3);
+        fieldMultiply(X3, Y3, X3, tt);
+        fieldAdd(t0, t2, Y3);
+        fieldSubtract(X3, Y3, Y3);
+        fieldMultiply(B, t2, Z3, tt);
+        fieldSubtract(Y3, Z3, X3);
+        fieldAdd(X3, X3, Z3);
+        fieldAdd(X3, Z3, X3);
+        fieldSubtract(t1, X3, Z3);
+        fieldAdd(t1, X3, X3);
+        fieldMultiply(B, Y3, Y3, tt);
+        fieldAdd(t2, t2, t1);
+        fieldAdd(t1, t2, t2);
+        fieldSubtract(Y3, t2, Y3);
+        fieldSubtract(Y3, t0, Y3);
+        fieldAdd(Y3, Y3, t1);
+        fieldAdd(t1, Y3, Y3);
+        fieldAdd(t0, t0, t1);
+        fieldAdd(t1, t0, t0);
+        fieldSubtract(t0, t2, t0);
+        fieldMultiply(t4, Y3, t1, tt);
+        fieldMultiply(t0, Y3, t2, tt);
+        fieldMultiply(X3, Z3, Y3, tt);
+        fieldAdd(Y3, t2, Y3);
+        fieldMultiply(t3, X3, X3, tt);
+        fieldSubtract(X3, t1, X3);
+        fieldMultiply(t4, Z3, Z3, tt);
+        fieldMultiply(t3, t0, t1, tt);
+        fieldAdd(Z3, t1, Z3);
+
+        Nat256.copy(X3, r.x);
+        Nat256.copy(Y3, r.y);
+        Nat256.copy(Z3, r.z);
+    }
+
+    private static void pointAddAffine(PointProj p, PointProj r, PointTemp tmp)
+    {
+        // r = p + r, where p has z = 1 (so is not the point at infinity), using algorithm 5 of Renes, Costello
+        // and Batina
+        int[] X2 = p.x, Y2 = p.y, X1 = r.x, Y1 = r.y, Z1 = r.z;
+        int[] t0 = tmp.t0, t1 = tmp.t1, t2 = tmp.t2, t3 = tmp.t3, t4 = tmp.t4;
+        int[] X3 = tmp.t5, Y3 = tmp.t6, Z3 = tmp.t7, tt = tmp.tt;
+
+        fieldMultiply(X1, X2, t0, tt);
+        fieldMultiply(Y1, Y2, t1, tt);
+        fieldAdd(X2, Y2, t3);
+        fieldAdd(X1, Y1, t4);
+        fieldMultiply(t3, t4, t3, tt);
+        fieldAdd(t0, t1, t4);
+        fieldSubtract(t3, t4, t3);
+        fieldMultiply(Y2, Z1, t4, tt);
+        fieldAdd(t4, Y1, t4);
+        fieldMultiply(X2, Z1, Y3, tt);
+        fieldAdd(Y3, X1, Y3);
+        fieldMultiply(B, Z1, Z3, tt);
+        fieldSubtract(Y3, Z3, X3);
+        fieldAdd(X3, X3, Z3);
+        fieldAdd(X3, Z3, X3);
+        fieldSubtract(t1, X3, Z3);
+        fieldAdd(t1, X3, X3);
+        fieldMultiply(B, Y3, Y3, tt);
+        fieldAdd(Z1, Z1, t1);
+        fieldAdd(t1, Z1, t2);
+        fieldSubtract(Y3, t2, Y3);
+        fieldSubtract(Y3, t0, Y3);
+        fieldAdd(Y3, Y3, t1);
+        fieldAdd(t1, Y3, Y3);
+        fieldAdd(t0, t0, t1);
+        fieldAdd(t1, t0, t0);
+        fieldSubtract(t0, t2, t0);
+        fieldMultiply(t4, Y3, t1, tt);
+        fieldMultiply(t0, Y3, t2, tt);
+        fieldMultiply(X3, Z3, Y3, tt);
+        fieldAdd(Y3, t2, Y3);
+        fieldMultiply(t3, X3, X3, tt);
+        fieldSubtract(X3, t1, X3);
+        fieldMultiply(t4, Z3, Z3, tt);
+        fieldMultiply(t3, t0, t1, tt);
+        fieldAdd(Z3, t1, Z3);
+
+        Nat256.copy(X3, r.x);
+        Nat256.copy(Y3, r.y);
+        Nat256.copy(Z3, r.z);
+    }
+
+    private static void pointDouble(PointProj r, PointTemp tmp)
+    {
+        // r = 2.r, using the "dbl-2007-bl" formulas (with a = -3). The curve has prime order, so there is no
+        // point of order 2 (with y = 0) for which they fail, but the point at infinity comes out as (0:0:0), so
+        // y is then set (without branching) to give (0:1:0).
+        int[] X1 = r.x, Y1 = r.y, Z1 = r.z;
+        int[] w = tmp.t0, s = tmp.t1, R = tmp.t2, B = tmp.t3, t = tmp.t4, tt = tmp.tt;
+
+        int isInfinity = fieldIsZero(Z1);
+
+        fieldSubtract(X1, Z1, w);
+        fieldAdd(X1, Z1, t);
+        fieldMultiply(w, t, w, tt);
+        fieldAdd(w, w, t);
+        fieldAdd(w, t, w);
+        fieldMultiply(Y1, Z1, s, tt);
+        fieldAdd(s, s, s);
+        fieldMultiply(Y1, s, R, tt);
+        fieldMultiply(X1, R, B, tt);
+        fieldAdd(B, B, B);
+        fieldSquare(R, R, tt);
+
+        // Z3 = s^3
+        fieldSquare(s, t, tt);
+        fieldMultiply(s, t, Z1, tt);
+
+        // X3 = h.s, where h = w^2 - 2.B
+        fieldSquare(w, t, tt);
+        fieldSubtract(t, B, t);
+        fieldSubtract(t, B, t);
+        fieldMultiply(t, s, X1, tt);
+
+        // Y3 = w.(B - h) - 2.R^2
+        fieldSubtract(B, t, B);
+        fieldMultiply(w, B, Y1, tt);
+        fieldSubtract(Y1, R, Y1);
+        fieldSubtract(Y1, R, Y1);
+
+        Y1[0] |= isInfinity;
+    }
+
+    private static void pointLookup(int[] table, int size, int index, PointProj p)
+    {
+        for (int i = 0, off = 0; i < size; ++i, off += 24)
+        {
+            int mask = ((i ^ index) - 1) >> 31;
+            Nat.cmov(8, mask, table, off, p.x, 0);
+            Nat.cmov(8, mask, table, off + 8, p.y, 0);
+            Nat.cmov(8, mask, table, off + 16, p.z, 0);
+        }
+    }
+
+    private static void pointLookupBase(int block, int index, PointProj p)
+    {
+        // assert 0 <= block && block < PRECOMP_BLOCKS;
+        // assert 0 <= index && index < PRECOMP_POINTS;
+
+        int off = block * PRECOMP_POINTS * 16;
+
+        for (int i = 0; i < PRECOMP_POINTS; ++i, off += 16)
+        {
+            int mask = ((i ^ index) - 1) >> 31;
+            Nat.cmov(8, mask, precompBase, off, p.x, 0);
+            Nat.cmov(8, mask, precompBase, off + 8, p.y, 0);
+        }
+    }
+
+    private static void pointSetInfinity(PointProj p)
+    {
+        Nat256.zero(p.x);
+        Nat256.zero(p.y);
+        p.y[0] = 1;
+        Nat256.zero(p.z);
+    }
+
+    private static void pointStore(PointProj p, int[] table, int off)
+    {
+        Nat256.copy(p.x, 0, table, off);
+        Nat256.copy(p.y, 0, table, off + 8);
+        Nat256.copy(p.z, 0, table, off + 16);
+    }
+
+    private static boolean pointToAffine(PointProj p, int[] x, int[] y, PointTemp tmp)
+    {
+        // the inverse of 0 is 0, so the point at infinity comes out as (0, 0)
+        int[] zInv = tmp.t5, tt = tmp.tt;
+        fieldInvert(p.z, zInv, tmp);
+        fieldMultiply(p.x, zInv, x, tt);
+        fieldMultiply(p.y, zInv, y, tt);
+
+        return !Nat256.isZero(p.z);
+    }
+}
@@ -1,6 +1,8 @@
 package org.bouncycastle.math.ec.rfc8032;
 
 import java.security.SecureRandom;
+import java.util.Hashtable;
+import java.util.Vector;
 
 import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.digests.SHA512Digest;
@@ -11,6 +13,7 @@
 import org.bouncycastle.math.raw.Nat256;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Strings;
+import org.bouncycastle.util.encoders.Hex;
 
 public abstract class Ed25519
 {
@@ -56,6 +59,9 @@
         0x03407977, 0x019CE331, 0x01C56DFF, 0x00901B67 };
 
     private static final int WNAF_WIDTH_BASE = 7;
+    private static final int WNAF_WIDTH_BATCH = 4;
+
+    private static final int BATCH_Z_BYTES = 16;
 
     private static final int PRECOMP_BLOCKS = 8;
     private static final int PRECOMP_TEETH = 4;
@@ -92,6 +98,24 @@
         int[] xyd = X25519Field.create();
     }
 
+    private static class BatchKey
+    {
+        PointExt pA = new PointExt();
+        PointExt[] table = null;
+        int[] sum = null;
+    }
+
+    private static class BatchItem
+    {
+        int index;
+        byte[] R;
+        PointExt pR = new PointExt();
+        int[] s = new int[SCALAR_INTS];
+        int[] k = new int[SCALAR_INTS];
+        int[] z = new int[SCALAR_INTS];
+        BatchKey key;
+    }
+
     private static byte[] calculateS(byte[] r, byte[] k, byte[] s)
     {
         int[] t = new int[SCALAR_INTS * 2];     decodeScalar(r, 0, t);
@@ -108,6 +132,94 @@ private static byte[] calculateS(byte[] r, byte[] k, byte[] s)
         return reduceScalar(result);
     }
 
+    /**
+     * Check the random linear combination of the verification equations of a range of batch items,
+     * multiplied by the cofactor: [8]([sum(z.S)]B + sum([sum(z.k)](-A)) + sum([z](-R))) == O.
+     */
+    private static boolean checkBatchVar(BatchItem[] items, int off, int len)
+    {
+        int[] sumS = new int[SCALAR_INTS * 2];
+        Vector keys = new Vector();
+
+        for (int i = off; i < off + len; ++i)
+        {
+            BatchItem item = items[i];
+            BatchKey key = item.key;
+
+            Nat256.mulAddTo(item.s, item.z, sumS);
+
+            if (key.sum == null)
+            {
+                key.sum = new int[SCALAR_INTS * 2];
+                keys.addElement(key);
+            }
+            Nat256.mulAddTo(item.k, item.z, key.sum);
+        }
+
+        byte[] ws_b = getWNAF(reduceScalarVar(sumS), WNAF_WIDTH_BASE);
+
+        int keyCount = keys.size();
+        byte[][] ws_a = new byte[keyCount][];
+        PointExt[][] tables_a = new PointExt[keyCount][];
+        for (int j = 0; j < keyCount; ++j)
+        {
+            BatchKey key = (BatchKey)keys.elementAt(j);
+            if (key.table == null)
+            {
+                key.table = pointPrecompVar(key.pA, 1 << (WNAF_WIDTH_BATCH - 2));
+            }
+
+            ws_a[j] = getWNAF(reduceScalarVar(key.sum), WNAF_WIDTH_BATCH);
+            tables_a[j] = key.table;
+            key.sum = null;
+        }
+
+        byte[][] ws_r = new byte[len][];
+        PointExt[][] tables_r = new PointExt[len][];
+        for (int i = 0; i < len; ++i)
+        {
+            BatchItem item = items[off + i];
+            ws_r[i] = getWNAF(item.z, WNAF_WIDTH_BATCH);
+            tables_r[i] = pointPrecompVar(item.pR, 1 << (WNAF_WIDTH_BATCH - 2));
+        }
+
+        PointAccum r = new PointAccum();
+        pointSetNeutral(r);
+
+        for (int bit = 255;;)
+        {
+            pointAddDigitVar(ws_b[bit], precompBaseTable, r);
+
+            for (int j = 0; j < keyCount; ++j)
+            {
+                pointAddDigitVar(ws_a[j][bit], tables_a[j], r);
+            }
+
+            // The z values are only 128 bits (their wNAF may carry one bit further)
+            if (bit <= BATCH_Z_BYTES * 8)
+            {
+                for (int i = 0; i < len; ++i)
+                {
+                    pointAddDigitVar(ws_r[i][bit], tables_r[i], r);
+                }
+            }
+
+            if (--bit < 0)
+            {
+                break;
+            }
+
+            pointDouble(r);
+        }
+
+        // Clear the cofactor
+        pointDouble(r);
+        pointDouble(r);
+        pointDouble(r);
+
+        return isNeutralVar(r);
+    }
+
     private static boolean checkContextVar(byte[] ctx , byte phflag)
     {
         return ctx == null && phflag == 0x00 
@@ -449,6 +561,119 @@ private static boolean implVerify(byte[] sig, int sigOff, byte[] pk, int pkOff,
         return Arrays.areEqual(check, R);
     }
 
+    private static boolean implVerifyBatch(byte[][] sig, byte[][] pk, byte[] ctx, byte phflag, byte[][] m,
+        SecureRandom random, boolean[] results)
+    {
+        if (!checkContextVar(ctx, phflag))
+        {
+            throw new IllegalArgumentException("ctx");
+        }
+
+        int count = sig.length;
+        if (pk.length != count || m.length != count || results.length < count)
+        {
+            throw new IllegalArgumentException("batch arrays must have the same length");
+        }
+
+        precompute();
+
+        Hashtable keys = new Hashtable();
+        BatchItem[] items = new BatchItem[count];
+        int itemCount = 0;
+
+        Digest d = createDigest();
+        byte[] h = new byte[d.getDigestSize()];
+        byte[] z = new byte[BATCH_Z_BYTES];
+
+        for (int i = 0; i < count; ++i)
+        {
+            results[i] = false;
+
+            byte[] sig_i = sig[i], pk_i = pk[i];
+            if (sig_i == null || sig_i.length < SIGNATURE_SIZE || pk_i == null || pk_i.length < PUBLIC_KEY_SIZE)
+            {
+                continue;
+            }
+
+            BatchItem item = new BatchItem();
+            item.index = i;
+            item.R = Arrays.copyOfRange(sig_i, 0, POINT_BYTES);
+
+            byte[] S = Arrays.copyOfRange(sig_i, POINT_BYTES, SIGNATURE_SIZE);
+            if (!checkScalarVar(S) || !decodePointVar(item.R, 0, true, item.pR))
+            {
+                continue;
+            }
+
+            // Each distinct public key is only decoded once; an invalid one is recorded as null
+            String keyId = Hex.toHexString(pk_i, 0, PUBLIC_KEY_SIZE);
+            Object key = keys.get(keyId);
+            if (key == null)
+            {
+                BatchKey batchKey = new BatchKey();
+                if (decodePointVar(pk_i, 0, true, batchKey.pA))
+                {
+                    key = batchKey;
+                }
+                else
+                {
+                    key = Boolean.FALSE;
+                }
+                keys.put(keyId, key);
+            }
+            if (!(key instanceof BatchKey))
+            {
+                continue;
+            }
+            item.key = (BatchKey)key;
+
+            dom2(d, phflag, ctx);
+            d.update(item.R, 0, POINT_BYTES);
+            d.update(pk_i, 0, POINT_BYTES);
+            d.update(m[i], 0, m[i].length);
+            d.doFinal(h, 0);
+
+            decodeScalar(S, 0, item.s);
+            decodeScalar(reduceScalar(h), 0, item.k);
+
+            random.nextBytes(z);
+            decode32(z, 0, item.z, 0, BATCH_Z_BYTES / 4);
+
+            items[itemCount++] = item;
+        }
+
+        verifyBatchVar(items, 0, itemCount, results);
+
+        for (int i = 0; i < count; ++i)
+        {
+            if (!results[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNeutralVar(PointAccum p)
+    {
+        X25519Field.normalize(p.x);
+        X25519Field.normalize(p.y);
+        X25519Field.normalize(p.z);
+
+        return X25519Field.isZeroVar(p.x) && Arrays.areEqual(p.y, p.z);
+    }
+
+    private static void pointAddDigitVar(int w, PointExt[] table, PointAccum r)
+    {
+        if (w != 0)
+        {
+            int sign = w >> 31;
+            int index = (w ^ sign) >>> 1;
+
+            pointAddVar((sign != 0), table[index], r);
+        }
+    }
+
     private static void pointAddVar(boolean negate, PointExt p, PointAccum r)
     {
         int[] A = X25519Field.create();
@@ -898,6 +1123,19 @@ private static byte[] reduceScalar(byte[] n)
         return r;
     }
 
+    private static int[] reduceScalarVar(int[] nn)
+    {
+        byte[] bs = new byte[SCALAR_BYTES * 2];
+        for (int i = 0; i < nn.length; ++i)
+        {
+            encode32(nn[i], bs, i * 4);
+        }
+
+        int[] n = new int[SCALAR_INTS];
+        decodeScalar(reduceScalar(bs), 0, n);
+        return n;
+    }
+
     private static void scalarMultBase(byte[] k, PointAccum r)
     {
         precompute();
@@ -1129,4 +1367,80 @@ public static boolean verifyPrehash(byte[] sig, int sigOff, byte[] pk, int pkOff
 
         return implVerify(sig, sigOff, pk, pkOff, ctx, phflag, m, 0, m.length);
     }
+
+    /**
+     * Verify a batch of Ed25519 signatures, which is much faster than verifying them one at a time,
+     * especially when many of them are by the same key.
+     * <p>
+     * The signatures are checked together using a random linear combination of their verification
+     * equations; if that fails, the batch is split to find the invalid signatures. The combined check
+     * is cofactored, so a signature that {@link #verify(byte[], int, byte[], int, byte[], int, int)}
+     * rejects only because of a small-order component in R or A (which no honest signer produces) may
+     * be accepted; every signature accepted by verify() is accepted here.
+     * </p>
+     *
+     * @param sig the signatures, each at offset 0.
+     * @param pk the public keys, each at offset 0.
+     * @param m the messages.
+     * @param random the source of the random coefficients.
+     * @param results receives the result for each signature.
+     * @return true if all the signatures are valid.
+     */
+    public static boolean verifyBatch(byte[][] sig, byte[][] pk, byte[][] m, SecureRandom random, boolean[] results)
+    {
+        byte[] ctx = null;
+        byte phflag = 0x00;
+
+        return implVerifyBatch(sig, pk, ctx, phflag, m, random, results);
+    }
+
+    /**
+     * Verify a batch of Ed25519ctx signatures; see
+     * {@link #verifyBatch(byte[][], byte[][], byte[][], SecureRandom, boolean[])}.
+     */
+    public static boolean verifyBatch(byte[][] sig, byte[][] pk, byte[] ctx, byte[][] m, SecureRandom random,
+        boolean[] results)
+    {
+        byte phflag = 0x00;
+
+        return implVerifyBatch(sig, pk, ctx, phflag, m, random, results);
+    }
+
+    private static void verifyBatchVar(BatchItem[] items, int off, int len, boolean[] results)
+    {
+        if (len < 1)
+        {
+            return;
+        }
+
+        if (len == 1)
+        {
+            results[items[off].index] = verifyItemVar(items[off]);
+            return;
+        }
+
+        if (checkBatchVar(items, off, len))
+        {
+            for (int i = off; i < off + len; ++i)
+            {
+                results[items[i].index] = true;
+            }
+            return;
+        }
+
+        int half = len >>> 1;
+        verifyBatchVar(items, off, half, results);
+        verifyBatchVar(items, off + half, len - half, results);
+    }
+
+    private static boolean verifyItemVar(BatchItem item)
+    {
+        PointAccum pR = new PointAccum();
+        scalarMultStraussVar(item.s, item.k, item.key.pA, pR);
+
+        byte[] check = new byte[POINT_BYTES];
+        encodePoint(pR, check, 0);
+
+        return Arrays.areEqual(check, item.R);
+    }
 }
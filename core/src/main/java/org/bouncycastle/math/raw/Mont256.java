@@ -16,6 +16,95 @@ public static int inverse32(int x)
         return z;
     }
 
+    /**
+     * Constant time modular addition, for x and y less than m. z may be the same array as x or y.
+     */
+    public static void add(int[] x, int[] y, int[] z, int[] m)
+    {
+        int c = Nat256.add(x, y, z);
+        Nat.csub(8, c | gte(z, m), z, m, z);
+    }
+
+    /**
+     * Constant time modular inversion of a value in Montgomery form, by exponentiation to m - 2, so m must
+     * be prime. z = x^-1 (in Montgomery form), or 0 if x is 0, and may be the same array as x.
+     */
+    public static void inverse(int[] x, int[] z, int[] m, int mInv32)
+    {
+        int[] e = Nat256.create();
+        Nat256.copy(m, e);
+        Nat.subWordFrom(8, 2, e);
+
+        int bit = 255;
+        while (Nat256.getBit(e, bit) == 0)
+        {
+            --bit;
+        }
+
+        // the exponent is public, so it is fine to branch on its bits
+        int[] t = Nat256.create();
+        Nat256.copy(x, t);
+        while (--bit >= 0)
+        {
+            multiply(t, t, t, m, mInv32);
+            if (Nat256.getBit(e, bit) != 0)
+            {
+                multiply(t, x, t, m, mInv32);
+            }
+        }
+
+        Nat256.copy(t, z);
+    }
+
+    /**
+     * Constant time Montgomery multiplication: z = x.y.2^-256 mod m, for x and y less than m. z may be the same
+     * array as x or y.
+     */
+    public static void multiply(int[] x, int[] y, int[] z, int[] m, int mInv32)
+    {
+        int[] t = Nat256.create();
+        int t_8 = 0;
+        long m_0 = m[0] & M, y_0 = y[0] & M;
+
+        for (int i = 0; i < 8; ++i)
+        {
+            long x_i = x[i] & M;
+
+            long prod1 = x_i * y_0 + (t[0] & M);
+            long u = ((int)prod1 * mInv32) & M;
+            long prod2 = u * m_0 + (prod1 & M);
+            // assert (int)prod2 == 0;
+
+            long c1 = prod1 >>> 32, c2 = prod2 >>> 32;
+
+            for (int j = 1; j < 8; ++j)
+            {
+                prod1 = x_i * (y[j] & M) + (t[j] & M) + c1;
+                prod2 = u * (m[j] & M) + (prod1 & M) + c2;
+                t[j - 1] = (int)prod2;
+                c1 = prod1 >>> 32;
+                c2 = prod2 >>> 32;
+            }
+
+            c1 += (t_8 & M) + c2;
+            t[7] = (int)c1;
+            t_8 = (int)(c1 >>> 32);
+        }
+
+        // t < 2m; subtract m unless that borrows (and t has no carry word), without branching
+        int borrow = Nat256.sub(t, m, z);
+        Nat.cmov(8, borrow & (t_8 - 1), t, 0, z, 0);
+    }
+
+    /**
+     * Constant time modular subtraction, for x and y less than m. z may be the same array as x or y.
+     */
+    public static void subtract(int[] x, int[] y, int[] z, int[] m)
+    {
+        int c = Nat256.sub(x, y, z);
+        Nat.cadd(8, c, z, m, z);
+    }
+
     public static void multAdd(int[] x, int[] y, int[] z, int[] m, int mInv32)
     {
         int z_8 = 0;
@@ -149,4 +238,16 @@ public static void reduceXF(int[] z, int[] m)
             Nat256.sub(z, m, z);
         }
     }
+
+    private static int gte(int[] x, int[] y)
+    {
+        // 1 if x >= y, 0 otherwise, without branching
+        long c = 0;
+        for (int i = 0; i < 8; ++i)
+        {
+            c += (x[i] & M) - (y[i] & M);
+            c >>= 32;
+        }
+        return (int)c + 1;
+    }
 }
@@ -0,0 +1,275 @@
+package org.bouncycastle.math.raw;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.util.Pack;
+
+/**
+ * Montgomery arithmetic modulo an odd modulus of any size, with values held least significant word first in
+ * int[] arrays of {@link #getSize()} words, as for {@link Nat}.
+ * <p>
+ * A context holds the values precomputed for its modulus, along with the working storage for its operations,
+ * so once created it does not allocate. For the same reason a context must not be used by more than one thread
+ * at a time. The multiplication and exponentiation routines do not branch on, or index memory by, the values
+ * they are working with, so their timing only depends on the size of the modulus and the exponent bound.
+ * </p><p>
+ * The RSA private key operations, Diffie-Hellman agreement and DSA signing use this in place of
+ * {@link BigInteger#modPow(BigInteger, BigInteger)} when the "org.bouncycastle.constant_time_modpow" system
+ * property is set to true.
+ * </p>
+ */
+public class MontContext
+{
+    private static final long M = 0xFFFFFFFFL;
+
+    private static final int MAX_WINDOW = 5;
+
+    private final BigInteger modulus;
+    private final int len;
+    private final int[] m;
+    private final int mInv32;
+    private final int[] r2;
+    private final int[] one;
+
+    private final int[] t;
+    private final int[] acc;
+    private final int[] window;
+    private final int[] table;
+    private final int[] exp;
+
+    /**
+     * Base constructor.
+     *
+     * @param modulus an odd modulus, greater than 1.
+     */
+    public MontContext(BigInteger modulus)
+    {
+        if (modulus.signum() <= 0 || !modulus.testBit(0) || modulus.bitLength() < 2)
+        {
+            throw new IllegalArgumentException("modulus must be odd and greater than 1");
+        }
+
+        this.modulus = modulus;
+        this.len = (modulus.bitLength() + 31) >>> 5;
+        this.m = Nat.fromBigInteger(len << 5, modulus);
+        this.mInv32 = -Mont256.inverse32(m[0]);
+
+        BigInteger r = BigInteger.ONE.shiftLeft(len << 5);
+        this.one = Nat.fromBigInteger(len << 5, r.mod(modulus));
+        this.r2 = Nat.fromBigInteger(len << 5, r.multiply(r).mod(modulus));
+
+        this.t = Nat.create(len + 1);
+        this.acc = Nat.create(len);
+        this.window = Nat.create(len);
+        this.table = Nat.create(len << MAX_WINDOW);
+        this.exp = Nat.create(len + 1);
+    }
+
+    public BigInteger getModulus()
+    {
+        return modulus;
+    }
+
+    /**
+     * Return the number of 32 bit words used to hold a value modulo the modulus.
+     *
+     * @return the size of a value, in words.
+     */
+    public int getSize()
+    {
+        return len;
+    }
+
+    /**
+     * Convert x, which must be less than the modulus, into Montgomery form.
+     */
+    public void toMont(int[] x, int[] z)
+    {
+        multiply(x, r2, z);
+    }
+
+    /**
+     * Convert x from Montgomery form.
+     */
+    public void fromMont(int[] x, int[] z)
+    {
+        Nat.zero(len, window);
+        window[0] = 1;
+        multiply(x, window, z);
+    }
+
+    /**
+     * Montgomery multiplication: z = x.y.R^-1 mod m, where R = 2^(32 * size). Both x and y must be less than
+     * the modulus, and z may be the same array as either of them.
+     */
+    public void multiply(int[] x, int[] y, int[] z)
+    {
+        int[] t = this.t;
+        Nat.zero(len + 1, t);
+
+        long m_0 = m[0] & M, y_0 = y[0] & M;
+
+        for (int i = 0; i < len; ++i)
+        {
+            long x_i = x[i] & M;
+
+            long prod1 = x_i * y_0 + (t[0] & M);
+            long u = ((int)prod1 * mInv32) & M;
+            long prod2 = u * m_0 + (prod1 & M);
+            // assert (int)prod2 == 0;
+
+            long c1 = prod1 >>> 32, c2 = prod2 >>> 32;
+
+            for (int j = 1; j < len; ++j)
+            {
+                prod1 = x_i * (y[j] & M) + (t[j] & M) + c1;
+                prod2 = u * (m[j] & M) + (prod1 & M) + c2;
+                t[j - 1] = (int)prod2;
+                c1 = prod1 >>> 32;
+                c2 = prod2 >>> 32;
+            }
+
+            c1 += (t[len] & M) + c2;
+            t[len - 1] = (int)c1;
+            t[len] = (int)(c1 >>> 32);
+        }
+
+        // t < 2m; subtract m unless that borrows (and t has no carry word), without branching
+        int borrow = Nat.sub(len, t, m, z);
+        Nat.cmov(len, borrow & (t[len] - 1), t, 0, z, 0);
+    }
+
+    /**
+     * Constant time modular exponentiation: z = x^e mod m, with x (which must be less than the modulus)
+     * and z in Montgomery form.
+     *
+     * @param x the base, in Montgomery form.
+     * @param e the exponent, least significant word first.
+     * @param eBits a public bound on the bit length of the exponent, which determines the work done.
+     * @param z the result, in Montgomery form. May be the same array as x.
+     */
+    public void modPow(int[] x, int[] e, int eBits, int[] z)
+    {
+        int w = getWindowSize(eBits);
+        int size = 1 << w;
+        int[] table = this.table, acc = this.acc, window = this.window;
+
+        // table[i] = x^i, in Montgomery form
+        System.arraycopy(one, 0, table, 0, len);
+        System.arraycopy(x, 0, table, len, len);
+        for (int i = 2; i < size; ++i)
+        {
+            Nat.copy(len, table, (i - 1) * len, window, 0);
+            multiply(window, x, window);
+            Nat.copy(len, window, 0, table, i * len);
+        }
+
+        int windows = (eBits + w - 1) / w;
+
+        System.arraycopy(one, 0, acc, 0, len);
+        for (int i = windows - 1; i >= 0; --i)
+        {
+            for (int j = 0; j < w; ++j)
+            {
+                multiply(acc, acc, acc);
+            }
+
+            int digit = getBits(e, i * w, w);
+            for (int k = 0; k < size; ++k)
+            {
+                // mask is -1 for the entry matching digit, 0 otherwise
+                int mask = ((k ^ digit) - 1) >> 31;
+                Nat.cmov(len, mask, table, k * len, window, 0);
+            }
+            multiply(acc, window, acc);
+        }
+
+        System.arraycopy(acc, 0, z, 0, len);
+    }
+
+    /**
+     * Constant time modular exponentiation: base^exponent mod m.
+     *
+     * @param base the base, which must be less than the modulus.
+     * @param exponent a non-negative exponent.
+     * @param expBits a public bound on the bit length of the exponent, which determines the work done.
+     * @return base^exponent mod m.
+     */
+    public BigInteger modPow(BigInteger base, BigInteger exponent, int expBits)
+    {
+        if (base.signum() < 0 || base.compareTo(modulus) >= 0)
+        {
+            throw new IllegalArgumentException("base must be in the range [0, modulus)");
+        }
+        if (exponent.signum() < 0 || exponent.bitLength() > expBits)
+        {
+            throw new IllegalArgumentException("exponent out of range");
+        }
+        if (expBits > len << 5)
+        {
+            throw new IllegalArgumentException("exponent bound too large for modulus");
+        }
+
+        int[] x = acc;
+        fromBigInteger(base, x, len);
+        toMont(x, x);
+
+        int[] e = exp;
+        fromBigInteger(exponent, e, len + 1);
+
+        modPow(x, e, expBits, x);
+        fromMont(x, x);
+
+        BigInteger result = toBigInteger(x);
+
+        Nat.zero(len + 1, e);
+        Nat.zero(len, x);
+        Nat.zero(len, window);
+        Nat.zero(len << MAX_WINDOW, table);
+
+        return result;
+    }
+
+    private int getBits(int[] e, int bit, int w)
+    {
+        int word = bit >>> 5, shift = bit & 31;
+        int bits = e[word] >>> shift;
+        if (shift + w > 32)
+        {
+            bits |= e[word + 1] << (32 - shift);
+        }
+        return bits & ((1 << w) - 1);
+    }
+
+    private static int getWindowSize(int eBits)
+    {
+        return eBits > 512 ? MAX_WINDOW : eBits > 64 ? 4 : 2;
+    }
+
+    private static void fromBigInteger(BigInteger x, int[] z, int zLen)
+    {
+        byte[] bs = x.toByteArray();
+        Nat.zero(zLen, z);
+
+        int pos = bs.length, i = 0;
+        while (pos >= 4 && i < zLen)
+        {
+            pos -= 4;
+            z[i++] = Pack.bigEndianToInt(bs, pos);
+        }
+        if (pos > 0 && i < zLen)
+        {
+            int z_i = 0;
+            for (int j = 0; j < pos; ++j)
+            {
+                z_i = (z_i << 8) | (bs[j] & 0xFF);
+            }
+            z[i] = z_i;
+        }
+    }
+
+    private BigInteger toBigInteger(int[] x)
+    {
+        return Nat.toBigInteger(len, x);
+    }
+}
@@ -1,6 +1,7 @@
 package org.bouncycastle.crypto.test;
 
 import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.MultiBlockCipher;
 import org.bouncycastle.crypto.engines.AESLightEngine;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
@@ -140,6 +141,24 @@ public void performTest()
         {
             // expected 
         }
+
+        multiBlockTest();
+    }
+
+    private void multiBlockTest()
+    {
+        MultiBlockCipher engine = new AESLightEngine();
+
+        // FIPS-197 Appendix C
+        multiBlockVectorCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f")),
+            "00112233445566778899aabbccddeeff", "69c4e0d86a7b0430d8cdb78070b4c55a");
+        multiBlockVectorCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f1011121314151617")),
+            "00112233445566778899aabbccddeeff", "dda97ca4864cdfe06eaf70a0ec0d7191");
+        multiBlockVectorCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f")),
+            "00112233445566778899aabbccddeeff", "8ea2b7ca516745bfeafc49904b496089");
+
+        multiBlockCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f1011121314151617")));
+        multiBlockCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f")));
     }
 
     public static void main(
@@ -6,6 +6,7 @@
 import org.bouncycastle.crypto.BufferedBlockCipher;
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.MultiBlockCipher;
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.modes.CBCBlockCipher;
 import org.bouncycastle.crypto.modes.CFBBlockCipher;
@@ -468,6 +469,23 @@ public void performTest()
 
         skipTest();
         ctrCounterTest();
+        multiBlockTest();
+    }
+
+    private void multiBlockTest()
+    {
+        MultiBlockCipher engine = new AESEngine();
+
+        // FIPS-197 Appendix C
+        multiBlockVectorCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f")),
+            "00112233445566778899aabbccddeeff", "69c4e0d86a7b0430d8cdb78070b4c55a");
+        multiBlockVectorCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f1011121314151617")),
+            "00112233445566778899aabbccddeeff", "dda97ca4864cdfe06eaf70a0ec0d7191");
+        multiBlockVectorCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f")),
+            "00112233445566778899aabbccddeeff", "8ea2b7ca516745bfeafc49904b496089");
+
+        multiBlockCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f1011121314151617")));
+        multiBlockCheck(engine, new KeyParameter(Hex.decode("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f")));
     }
 
     public static void main(
@@ -1,5 +1,7 @@
 package org.bouncycastle.crypto.test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
 import org.bouncycastle.crypto.params.Argon2Parameters;
@@ -95,6 +97,57 @@ public void performTest()
         hashTest(version, 2, 16, 1, "password", "diffsalt",
             "b0357cccfbef91f3860b0dba447b2348cbefecadaf990abfe9cc40726c521271", DEFAULT_OUTPUTLEN);
 
+        testParallelLanes();
+    }
+
+    /**
+     * Filling the lanes on an executor must give the same output as the sequential path.
+     */
+    private void testParallelLanes()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try
+        {
+            int[] types = { Argon2Parameters.ARGON2_d, Argon2Parameters.ARGON2_i, Argon2Parameters.ARGON2_id };
+
+            for (int t = 0; t != types.length; t++)
+            {
+                for (int lanes = 1; lanes <= 8; lanes *= 2)
+                {
+                    Argon2Parameters params = new Argon2Parameters.Builder(types[t])
+                        .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+                        .withIterations(2)
+                        .withMemoryAsKB(256)
+                        .withParallelism(lanes)
+                        .withSalt(Strings.toByteArray("somesalt"))
+                        .build();
+
+                    Argon2BytesGenerator seqGen = new Argon2BytesGenerator();
+                    Argon2BytesGenerator parGen = new Argon2BytesGenerator(executor);
+
+                    seqGen.init(params);
+                    parGen.init(params);
+
+                    byte[] expected = new byte[DEFAULT_OUTPUTLEN];
+                    byte[] result = new byte[DEFAULT_OUTPUTLEN];
+
+                    seqGen.generateBytes("password".toCharArray(), expected);
+                    parGen.generateBytes("password".toCharArray(), result);
+
+                    isTrue("parallel lanes failed: type " + types[t] + " lanes " + lanes, areEqual(expected, result));
+
+                    // generator must be reusable after a parallel run
+                    parGen.generateBytes("password".toCharArray(), result);
+
+                    isTrue("parallel lanes reuse failed: type " + types[t] + " lanes " + lanes, areEqual(expected, result));
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
     }
 
 
@@ -1,8 +1,13 @@
 package org.bouncycastle.crypto.test;
 
+import java.security.SecureRandom;
+
 import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.MultiBlockCipher;
 import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.encoders.Hex;
 import org.bouncycastle.util.test.SimpleTest;
 
 public abstract class CipherTest
@@ -55,8 +60,191 @@ public void performTest()
             {
                 // expected 
             }
+
+            if (_engine instanceof MultiBlockCipher)
+            {
+                try
+                {
+                    ((MultiBlockCipher)_engine).processBlocks(buf, 0, 2, buf, 0);
+
+                    fail("failed multi-block initialisation check");
+                }
+                catch (IllegalStateException e)
+                {
+                    // expected
+                }
+            }
             
             bufferSizeCheck((_engine));
+
+            if (_engine instanceof MultiBlockCipher)
+            {
+                multiBlockCheck((MultiBlockCipher)_engine, _validKey);
+            }
+        }
+    }
+
+    /**
+     * Check processBlocks against processBlock, in both directions, over a range of block counts and
+     * unaligned input and output offsets, as well as in place.
+     */
+    protected void multiBlockCheck(
+        MultiBlockCipher engine,
+        KeyParameter key)
+    {
+        int[] blockCounts = { 0, 1, 2, 3, 4, 7, 8, 15, 16, 17, 33 };
+        int[] inOffs = { 0, 1, 7, 16 };
+        int[] outOffs = { 0, 3, 13 };
+
+        int blockSize = engine.getBlockSize();
+        if (engine.getMultiBlockSize() < blockSize || engine.getMultiBlockSize() % blockSize != 0)
+        {
+            fail("invalid multi-block size: " + engine.getMultiBlockSize());
+        }
+
+        SecureRandom random = new SecureRandom();
+        byte[] input = new byte[inOffs[inOffs.length - 1] + blockCounts[blockCounts.length - 1] * blockSize];
+        random.nextBytes(input);
+
+        for (int dir = 0; dir < 2; ++dir)
+        {
+            boolean forEncryption = (dir == 0);
+
+            for (int c = 0; c != blockCounts.length; c++)
+            {
+                int blockCount = blockCounts[c];
+                int len = blockCount * blockSize;
+
+                for (int i = 0; i != inOffs.length; i++)
+                {
+                    int inOff = inOffs[i];
+
+                    engine.init(forEncryption, key);
+
+                    byte[] expected = new byte[len];
+                    for (int b = 0; b < blockCount; ++b)
+                    {
+                        engine.processBlock(input, inOff + b * blockSize, expected, b * blockSize);
+                    }
+
+                    for (int o = 0; o != outOffs.length; o++)
+                    {
+                        int outOff = outOffs[o];
+
+                        byte[] output = new byte[outOff + len + 5];
+                        Arrays.fill(output, (byte)0x5A);
+
+                        engine.init(forEncryption, key);
+                        if (engine.processBlocks(input, inOff, blockCount, output, outOff) != len)
+                        {
+                            fail("processBlocks returned wrong length for " + blockCount + " blocks");
+                        }
+
+                        if (!areEqual(expected, Arrays.copyOfRange(output, outOff, outOff + len)))
+                        {
+                            fail("processBlocks mismatch for " + blockCount + " blocks, inOff " + inOff
+                                + ", outOff " + outOff + (forEncryption ? " (encrypt)" : " (decrypt)"));
+                        }
+
+                        for (int m = 0; m < output.length; ++m)
+                        {
+                            if ((m < outOff || m >= outOff + len) && output[m] != (byte)0x5A)
+                            {
+                                fail("processBlocks wrote outside the output region");
+                            }
+                        }
+                    }
+
+                    byte[] inPlace = Arrays.clone(input);
+                    engine.processBlocks(inPlace, inOff, blockCount, inPlace, inOff);
+
+                    if (!areEqual(expected, Arrays.copyOfRange(inPlace, inOff, inOff + len)))
+                    {
+                        fail("in-place processBlocks mismatch for " + blockCount + " blocks, inOff " + inOff);
+                    }
+                }
+            }
+        }
+
+        byte[] buf = new byte[4 * blockSize];
+
+        engine.init(true, key);
+
+        try
+        {
+            engine.processBlocks(buf, 1, 4, buf, 0);
+
+            fail("failed short input check");
+        }
+        catch (DataLengthException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            engine.processBlocks(buf, 0, 4, buf, 1);
+
+            fail("failed short output check");
+        }
+        catch (DataLengthException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            engine.processBlocks(buf, 0, -1, buf, 0);
+
+            fail("failed negative block count check");
+        }
+        catch (DataLengthException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Check a single-block known answer through processBlocks, with the block repeated at an
+     * unaligned offset, in both directions.
+     */
+    protected void multiBlockVectorCheck(
+        MultiBlockCipher engine,
+        KeyParameter key,
+        String input,
+        String output)
+    {
+        byte[] in = Hex.decode(input);
+        byte[] out = Hex.decode(output);
+        int blockSize = in.length;
+        int blockCount = 5;
+
+        byte[] plainText = new byte[3 + blockCount * blockSize];
+        byte[] cipherText = new byte[7 + blockCount * blockSize];
+        for (int b = 0; b < blockCount; ++b)
+        {
+            System.arraycopy(in, 0, plainText, 3 + b * blockSize, blockSize);
+        }
+
+        engine.init(true, key);
+        engine.processBlocks(plainText, 3, blockCount, cipherText, 7);
+
+        for (int b = 0; b < blockCount; ++b)
+        {
+            if (!areEqual(out, Arrays.copyOfRange(cipherText, 7 + b * blockSize, 7 + (b + 1) * blockSize)))
+            {
+                fail("processBlocks failed known answer encryption of block " + b);
+            }
+        }
+
+        byte[] decrypted = new byte[1 + blockCount * blockSize];
+
+        engine.init(false, key);
+        engine.processBlocks(cipherText, 7, blockCount, decrypted, 1);
+
+        if (!areEqual(Arrays.copyOfRange(plainText, 3, plainText.length), Arrays.copyOfRange(decrypted, 1, decrypted.length)))
+        {
+            fail("processBlocks failed known answer decryption");
         }
     }
     
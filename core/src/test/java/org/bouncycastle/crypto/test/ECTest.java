@@ -28,6 +28,7 @@
 import org.bouncycastle.crypto.params.MQVPublicParameters;
 import org.bouncycastle.crypto.params.ParametersWithRandom;
 import org.bouncycastle.crypto.signers.DSADigestSigner;
+import org.bouncycastle.crypto.signers.ECDSABatchVerifier;
 import org.bouncycastle.crypto.signers.ECDSASigner;
 import org.bouncycastle.math.ec.ECConstants;
 import org.bouncycastle.math.ec.ECCurve;
@@ -732,6 +733,78 @@ private void testECDSAKeyGenTest()
         }
     }
 
+    private void testECDSABatch()
+    {
+        SecureRandom random = new SecureRandom();
+
+        X9ECParameters x9 = CustomNamedCurves.getByName("secp256r1");
+        ECDomainParameters params = new ECDomainParameters(x9.getCurve(), x9.getG(), x9.getN(), x9.getH());
+
+        ECKeyPairGenerator pGen = new ECKeyPairGenerator();
+        pGen.init(new ECKeyGenerationParameters(params, random));
+
+        AsymmetricCipherKeyPair[] pairs = new AsymmetricCipherKeyPair[3];
+        for (int i = 0; i < pairs.length; ++i)
+        {
+            pairs[i] = pGen.generateKeyPair();
+        }
+
+        ECDSASigner ecdsa = new ECDSASigner();
+        ECDSABatchVerifier batch = new ECDSABatchVerifier();
+
+        int count = 20;
+        for (int i = 0; i < count; ++i)
+        {
+            AsymmetricCipherKeyPair pair = pairs[i % pairs.length];
+
+            byte[] message = new byte[32];
+            random.nextBytes(message);
+
+            ecdsa.init(true, new ParametersWithRandom(pair.getPrivate(), random));
+            BigInteger[] sig = ecdsa.generateSignature(message);
+
+            // Re-decode the public key, as a verifier receiving it would
+            ECPublicKeyParameters pub = (ECPublicKeyParameters)pair.getPublic();
+            pub = new ECPublicKeyParameters(params.getCurve().decodePoint(pub.getQ().getEncoded(true)), params);
+
+            switch (i % 7)
+            {
+            case 3:
+                message[0] ^= 1;
+                break;
+            case 5:
+                sig[1] = params.getN().subtract(sig[1]).add(ECConstants.ONE);
+                break;
+            case 6:
+                sig[0] = ECConstants.ZERO;
+                break;
+            }
+
+            batch.add(pub, message, sig[0], sig[1]);
+        }
+
+        if (batch.size() != count)
+        {
+            fail("batch size wrong");
+        }
+
+        boolean[] results = batch.verify();
+        for (int i = 0; i < count; ++i)
+        {
+            int mod = i % 7;
+            boolean expected = (mod != 3 && mod != 5 && mod != 6);
+            if (results[i] != expected)
+            {
+                fail("batch result wrong for signature " + i);
+            }
+        }
+
+        if (batch.size() != 0)
+        {
+            fail("batch not emptied");
+        }
+    }
+
     /**
      * Basic Key Agreement Test
      */
@@ -1104,6 +1177,7 @@ public void performTest()
         testECDSA191bitBinary();
         testECDSA239bitBinary();
         testECDSAKeyGenTest();
+        testECDSABatch();
         testECDHBasicAgreement();
         testECDHBasicAgreementCofactor();
 
@@ -8,12 +8,17 @@
 import org.bouncycastle.crypto.engines.DESEngine;
 import org.bouncycastle.crypto.modes.GCMBlockCipher;
 import org.bouncycastle.crypto.modes.gcm.BasicGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.GCMLongMultiplier;
 import org.bouncycastle.crypto.modes.gcm.GCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.GCMUtil;
 import org.bouncycastle.crypto.modes.gcm.Tables4kGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.Tables4kMultiBlockGCMMultiplier;
 import org.bouncycastle.crypto.modes.gcm.Tables64kGCMMultiplier;
 import org.bouncycastle.crypto.modes.gcm.Tables8kGCMMultiplier;
+import org.bouncycastle.crypto.modes.gcm.Tables8kLongGCMMultiplier;
 import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Strings;
 import org.bouncycastle.util.Times;
 import org.bouncycastle.util.encoders.Hex;
@@ -305,6 +310,8 @@ public void performTest() throws Exception
         }
 
         randomTests();
+        splitTests();
+        longMultiplierTests();
         outputSizeTests();
         testExceptions();
     }
@@ -405,7 +412,10 @@ private void runTestCase(String[] testVector, int macLength)
         runTestCase(new BasicGCMMultiplier(), new BasicGCMMultiplier(), testName, K, IV, A, P, C, T);
         runTestCase(new Tables4kGCMMultiplier(), new Tables4kGCMMultiplier(), testName, K, IV, A, P, C, T);
         runTestCase(new Tables8kGCMMultiplier(), new Tables8kGCMMultiplier(), testName, K, IV, A, P, C, T);
+        runTestCase(new Tables8kLongGCMMultiplier(), new Tables8kLongGCMMultiplier(), testName, K, IV, A, P, C, T);
         runTestCase(new Tables64kGCMMultiplier(), new Tables64kGCMMultiplier(), testName, K, IV, A, P, C, T);
+        runTestCase(new Tables4kMultiBlockGCMMultiplier(), new Tables4kMultiBlockGCMMultiplier(), testName, K, IV, A, P, C, T);
+        runTestCase(new Tables4kMultiBlockGCMMultiplier(8), new Tables4kGCMMultiplier(), testName, K, IV, A, P, C, T);
     }
 
     private void runTestCase(
@@ -544,7 +554,10 @@ private void randomTests()
         randomTests(srng, new BasicGCMMultiplier());
         randomTests(srng, new Tables4kGCMMultiplier());
         randomTests(srng, new Tables8kGCMMultiplier());
+        randomTests(srng, new Tables8kLongGCMMultiplier());
         randomTests(srng, new Tables64kGCMMultiplier());
+        randomTests(srng, new Tables4kMultiBlockGCMMultiplier());
+        randomTests(srng, new Tables4kMultiBlockGCMMultiplier(8));
     }
 
     private void randomTests(SecureRandom srng, GCMMultiplier m)
@@ -662,6 +675,136 @@ private void randomTest(SecureRandom srng, GCMMultiplier m)
         }
     }
 
+    private void longMultiplierTests()
+    {
+        SecureRandom srng = new SecureRandom();
+        srng.setSeed(Times.nanoTime());
+
+        byte[] H = new byte[16];
+        srng.nextBytes(H);
+
+        GCMMultiplier basic = new BasicGCMMultiplier();
+        basic.init(H);
+
+        GCMLongMultiplier m = new Tables8kLongGCMMultiplier();
+        m.init(H);
+
+        for (int i = 0; i < 100; ++i)
+        {
+            byte[] x = new byte[16];
+            srng.nextBytes(x);
+            byte[] y = new byte[16];
+            srng.nextBytes(y);
+
+            byte[] expected = Arrays.clone(x);
+            basic.multiplyH(expected);
+
+            int off = nextInt(srng, 16);
+            byte[] buf = new byte[off + 16];
+            System.arraycopy(x, 0, buf, off, 16);
+            m.multiplyH(buf, off);
+            if (!areEqual(expected, Arrays.copyOfRange(buf, off, off + 16)))
+            {
+                fail("multiplyH(byte[], int) failed");
+            }
+
+            long[] z = GCMUtil.asLongs(x);
+            m.multiplyH(z);
+            if (!areEqual(expected, GCMUtil.asBytes(z)))
+            {
+                fail("multiplyH(long[]) failed");
+            }
+
+            expected = Arrays.clone(x);
+            GCMUtil.xor(expected, y);
+            basic.multiplyH(expected);
+
+            System.arraycopy(y, 0, buf, off, 16);
+            m.xorMultiplyH(x, buf, off);
+            if (!areEqual(expected, x))
+            {
+                fail("xorMultiplyH failed");
+            }
+        }
+    }
+
+    private void splitTests()
+        throws InvalidCipherTextException
+    {
+        SecureRandom srng = new SecureRandom();
+        srng.setSeed(Times.nanoTime());
+
+        for (int i = 0; i < 10; ++i)
+        {
+            splitTest(srng, new Tables4kMultiBlockGCMMultiplier());
+            splitTest(srng, new Tables4kMultiBlockGCMMultiplier(8));
+            splitTest(srng, new Tables8kLongGCMMultiplier());
+        }
+    }
+
+    /*
+     * Check that feeding the data in arbitrary pieces gives the same result as a single call, so the
+     * bulk path is exercised with every alignment of the buffered data.
+     */
+    private void splitTest(SecureRandom srng, GCMMultiplier m)
+        throws InvalidCipherTextException
+    {
+        byte[] K = new byte[16];
+        srng.nextBytes(K);
+
+        byte[] P = new byte[srng.nextInt() >>> 20];
+        srng.nextBytes(P);
+
+        byte[] IV = new byte[12];
+        srng.nextBytes(IV);
+
+        int macSize = 12 + nextInt(srng, 5);
+        AEADParameters parameters = new AEADParameters(new KeyParameter(K), macSize * 8, IV);
+
+        GCMBlockCipher cipher = initCipher(null, true, parameters);
+        byte[] C = new byte[cipher.getOutputSize(P.length)];
+        int len = cipher.processBytes(P, 0, P.length, C, 0);
+        cipher.doFinal(C, len);
+
+        cipher = initCipher(m, true, parameters);
+        byte[] splitC = new byte[cipher.getOutputSize(P.length)];
+        len = splitProcess(srng, cipher, P, splitC);
+        cipher.doFinal(splitC, len);
+
+        if (!areEqual(C, splitC))
+        {
+            fail("split encryption differs from single call");
+        }
+
+        cipher = initCipher(m, false, parameters);
+        byte[] decP = new byte[cipher.getOutputSize(C.length)];
+        len = splitProcess(srng, cipher, C, decP);
+        len += cipher.doFinal(decP, len);
+
+        if (len != P.length || !areEqual(P, decP))
+        {
+            fail("incorrect decrypt in split test");
+        }
+    }
+
+    private int splitProcess(SecureRandom srng, GCMBlockCipher cipher, byte[] in, byte[] out)
+    {
+        int inOff = 0, outOff = 0;
+        while (inOff < in.length)
+        {
+            int chunk = Math.min(in.length - inOff, 1 + nextInt(srng, 200));
+            int predicted = cipher.getUpdateOutputSize(chunk);
+            int len = cipher.processBytes(in, inOff, chunk, out, outOff);
+            if (predicted != len)
+            {
+                fail("incorrect update length in split test");
+            }
+            inOff += chunk;
+            outOff += len;
+        }
+        return outOff;
+    }
+
     private void outputSizeTests()
     {
         byte[] K = new byte[16];
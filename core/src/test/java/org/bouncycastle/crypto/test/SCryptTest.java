@@ -2,8 +2,11 @@
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.bouncycastle.crypto.generators.SCrypt;
+import org.bouncycastle.crypto.generators.SCryptMemoryPool;
 import org.bouncycastle.util.Strings;
 import org.bouncycastle.util.encoders.Hex;
 import org.bouncycastle.util.test.SimpleTest;
@@ -25,6 +28,7 @@ public void performTest()
     {
         testParameters();
         testVectors();
+        testParallelAndPooled();
     }
 
     public void testParameters()
@@ -122,6 +126,56 @@ public void testVectors()
         br.close();
     }
 
+    public void testParallelAndPooled()
+    {
+        byte[] P = Strings.toByteArray("pleaseletmein");
+        byte[] S = Strings.toByteArray("SodiumChloride");
+        byte[] expected = SCrypt.generate(P, S, 1024, 8, 16, 64);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            byte[] result = SCrypt.generate(P, S, 1024, 8, 16, 64, executor, null);
+            isTrue("parallel result does not match", areEqual(expected, result));
+
+            // room for two SMix arrays only, so the parallel invocations have to wait for each other
+            SCryptMemoryPool pool = new SCryptMemoryPool(2 * 1024 * 8 * 128);
+
+            for (int i = 0; i != 3; i++)
+            {
+                result = SCrypt.generate(P, S, 1024, 8, 16, 64, executor, pool);
+                isTrue("pooled parallel result does not match", areEqual(expected, result));
+
+                result = SCrypt.generate(P, S, 1024, 8, 16, 64, null, pool);
+                isTrue("pooled result does not match", areEqual(expected, result));
+            }
+
+            isTrue("pool exceeded limit", pool.getAllocatedBytes() <= pool.getMaxBytes());
+
+            // a different N needs differently sized arrays, idle ones should be dropped to make room
+            byte[] other = SCrypt.generate(P, S, 2048, 8, 2, 64);
+            result = SCrypt.generate(P, S, 2048, 8, 2, 64, executor, pool);
+            isTrue("pooled resize result does not match", areEqual(other, result));
+
+            pool.clear();
+            isTrue("pool not cleared", pool.getAllocatedBytes() == 0);
+
+            try
+            {
+                SCrypt.generate(P, S, 4096, 8, 1, 64, null, pool);
+                fail("pool limit not enforced");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
     private static boolean isEndData(String line)
     {
         return line == null || line.startsWith("scrypt");
@@ -0,0 +1,201 @@
+package org.bouncycastle.math.ec.custom.sec.test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.bouncycastle.asn1.sec.SECNamedCurves;
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.custom.sec.SecP256R1Engine;
+import org.bouncycastle.math.raw.Nat256;
+
+import junit.framework.TestCase;
+
+public class SecP256R1EngineTest extends TestCase
+{
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final X9ECParameters DP = CustomNamedCurves
+        .getByOID(SECObjectIdentifiers.secp256r1);
+    private static final BigInteger N = DP.getN();
+
+    public void testIsSupported()
+    {
+        assertTrue(SecP256R1Engine.isSupported(DP.getCurve(), DP.getG(), N));
+
+        X9ECParameters generic = SECNamedCurves.getByOID(SECObjectIdentifiers.secp256r1);
+        assertTrue(SecP256R1Engine.isSupported(generic.getCurve(), generic.getG(), generic.getN()));
+
+        ECPoint otherG = DP.getG().twice();
+        assertFalse(SecP256R1Engine.isSupported(DP.getCurve(), otherG, N));
+
+        X9ECParameters k1 = CustomNamedCurves.getByOID(SECObjectIdentifiers.secp256k1);
+        assertFalse(SecP256R1Engine.isSupported(k1.getCurve(), k1.getG(), k1.getN()));
+    }
+
+    public void testScalarMultBase()
+    {
+        int COUNT = 100;
+
+        for (int i = 0; i < COUNT; ++i)
+        {
+            checkScalarMultBase(new BigInteger(256, RANDOM));
+        }
+
+        checkScalarMultBase(BigInteger.ONE);
+        checkScalarMultBase(BigInteger.valueOf(2));
+        checkScalarMultBase(N.subtract(BigInteger.ONE));
+        checkScalarMultBase(N.subtract(BigInteger.valueOf(2)));
+        checkScalarMultBase(N.add(BigInteger.ONE));
+        checkScalarMultBase(BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE));
+    }
+
+    public void testScalarMult()
+    {
+        int COUNT = 50;
+
+        for (int i = 0; i < COUNT; ++i)
+        {
+            ECPoint p = randomPoint();
+
+            checkScalarMult(p, new BigInteger(256, RANDOM));
+        }
+
+        ECPoint p = randomPoint();
+        checkScalarMult(p, BigInteger.ONE);
+        checkScalarMult(p, BigInteger.valueOf(2));
+        checkScalarMult(p, BigInteger.valueOf(3));
+        checkScalarMult(p, N.subtract(BigInteger.ONE));
+        checkScalarMult(p, N.subtract(BigInteger.valueOf(2)));
+        checkScalarMult(p, N.add(BigInteger.ONE));
+        checkScalarMult(p, BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE));
+    }
+
+    public void testInfinity()
+    {
+        int[] x = Nat256.create(), y = Nat256.create();
+
+        assertFalse(SecP256R1Engine.scalarMultBase(Nat256.create(), x, y));
+        assertFalse(SecP256R1Engine.scalarMultBase(Nat256.fromBigInteger(N), x, y));
+
+        ECPoint p = randomPoint();
+        int[] px = Nat256.fromBigInteger(p.getAffineXCoord().toBigInteger());
+        int[] py = Nat256.fromBigInteger(p.getAffineYCoord().toBigInteger());
+
+        assertFalse(SecP256R1Engine.scalarMult(Nat256.create(), px, py, x, y));
+        assertFalse(SecP256R1Engine.scalarMult(Nat256.fromBigInteger(N), px, py, x, y));
+    }
+
+    public void testSign()
+    {
+        int COUNT = 50;
+
+        for (int i = 0; i < COUNT; ++i)
+        {
+            BigInteger d = randomScalar(), k = randomScalar(), e = new BigInteger(256, RANDOM);
+
+            int[] r = Nat256.create(), s = Nat256.create();
+            assertTrue(SecP256R1Engine.sign(Nat256.fromBigInteger(d), Nat256.fromBigInteger(k),
+                Nat256.fromBigInteger(e), r, s));
+
+            BigInteger R = DP.getG().multiply(k).normalize().getAffineXCoord().toBigInteger().mod(N);
+            BigInteger S = k.modInverse(N).multiply(e.add(d.multiply(R))).mod(N);
+
+            assertEquals(R, Nat256.toBigInteger(r));
+            assertEquals(S, Nat256.toBigInteger(s));
+        }
+    }
+
+    public void testConstantTimeProperty()
+    {
+        ECDomainParameters domain = new ECDomainParameters(DP.getCurve(), DP.getG(), N, DP.getH(), DP.getSeed());
+
+        System.setProperty("org.bouncycastle.ec.constant_time_p256", "true");
+        try
+        {
+            ECKeyPairGenerator kpg = new ECKeyPairGenerator();
+            kpg.init(new ECKeyGenerationParameters(domain, RANDOM));
+            AsymmetricCipherKeyPair kp1 = kpg.generateKeyPair(), kp2 = kpg.generateKeyPair();
+
+            ECPrivateKeyParameters priv1 = (ECPrivateKeyParameters)kp1.getPrivate();
+            ECPublicKeyParameters pub1 = (ECPublicKeyParameters)kp1.getPublic();
+            assertTrue(DP.getG().multiply(priv1.getD()).equals(pub1.getQ()));
+
+            ECDSASigner signer = new ECDSASigner();
+            signer.init(true, new ParametersWithRandom(priv1, RANDOM));
+            byte[] hash = new byte[32];
+            RANDOM.nextBytes(hash);
+            BigInteger[] sig = signer.generateSignature(hash);
+
+            ECDSASigner verifier = new ECDSASigner();
+            verifier.init(false, pub1);
+            assertTrue(verifier.verifySignature(hash, sig[0], sig[1]));
+
+            ECDHBasicAgreement a1 = new ECDHBasicAgreement(), a2 = new ECDHBasicAgreement();
+            a1.init(kp1.getPrivate());
+            a2.init(kp2.getPrivate());
+            BigInteger z = a1.calculateAgreement(kp2.getPublic());
+            assertEquals(z, a2.calculateAgreement(kp1.getPublic()));
+            assertEquals(((ECPublicKeyParameters)kp2.getPublic()).getQ().multiply(priv1.getD()).normalize()
+                .getAffineXCoord().toBigInteger(), z);
+        }
+        finally
+        {
+            System.clearProperty("org.bouncycastle.ec.constant_time_p256");
+        }
+    }
+
+    private void checkScalarMultBase(BigInteger k)
+    {
+        int[] x = Nat256.create(), y = Nat256.create();
+        assertTrue(SecP256R1Engine.scalarMultBase(Nat256.fromBigInteger(k), x, y));
+
+        checkPoint(DP.getG().multiply(k.mod(N)), x, y);
+    }
+
+    private void checkScalarMult(ECPoint p, BigInteger k)
+    {
+        int[] px = Nat256.fromBigInteger(p.getAffineXCoord().toBigInteger());
+        int[] py = Nat256.fromBigInteger(p.getAffineYCoord().toBigInteger());
+
+        int[] x = Nat256.create(), y = Nat256.create();
+        assertTrue(SecP256R1Engine.scalarMult(Nat256.fromBigInteger(k), px, py, x, y));
+
+        checkPoint(p.multiply(k.mod(N)), x, y);
+    }
+
+    private void checkPoint(ECPoint expected, int[] x, int[] y)
+    {
+        expected = expected.normalize();
+
+        assertEquals(expected.getAffineXCoord().toBigInteger(), Nat256.toBigInteger(x));
+        assertEquals(expected.getAffineYCoord().toBigInteger(), Nat256.toBigInteger(y));
+    }
+
+    private ECPoint randomPoint()
+    {
+        return DP.getG().multiply(randomScalar()).normalize();
+    }
+
+    private BigInteger randomScalar()
+    {
+        BigInteger k;
+        do
+        {
+            k = new BigInteger(256, RANDOM);
+        }
+        while (k.signum() == 0 || k.compareTo(N) >= 0);
+        return k;
+    }
+}
@@ -131,6 +131,56 @@ public void testEd25519phConsistency()
         }
     }
 
+//    @Test
+    public void testEd25519BatchConsistency()
+    {
+        int count = 40, keys = 3;
+
+        byte[][] sks = new byte[keys][Ed25519.SECRET_KEY_SIZE];
+        byte[][] pks = new byte[keys][Ed25519.PUBLIC_KEY_SIZE];
+        for (int j = 0; j < keys; ++j)
+        {
+            RANDOM.nextBytes(sks[j]);
+            Ed25519.generatePublicKey(sks[j], 0, pks[j], 0);
+        }
+
+        byte[][] sig = new byte[count][Ed25519.SIGNATURE_SIZE];
+        byte[][] pk = new byte[count][];
+        byte[][] m = new byte[count][];
+
+        for (int i = 0; i < count; ++i)
+        {
+            int j = i % keys;
+            pk[i] = pks[j];
+            m[i] = new byte[RANDOM.nextInt() & 255];
+            RANDOM.nextBytes(m[i]);
+
+            Ed25519.sign(sks[j], 0, m[i], 0, m[i].length, sig[i], 0);
+        }
+
+        boolean[] results = new boolean[count];
+
+        assertTrue("Ed25519 batch all valid", Ed25519.verifyBatch(sig, pk, m, RANDOM, results));
+        for (int i = 0; i < count; ++i)
+        {
+            assertTrue("Ed25519 batch result #" + i, results[i]);
+        }
+
+        sig[5][Ed25519.PUBLIC_KEY_SIZE - 1] ^= 0x80;
+        sig[17][Ed25519.PUBLIC_KEY_SIZE + 3] ^= 0x01;
+        m[30] = new byte[]{ 0x01 };
+        pk[33] = pks[(33 + 1) % keys];
+
+        assertFalse("Ed25519 batch some invalid", Ed25519.verifyBatch(sig, pk, m, RANDOM, results));
+        for (int i = 0; i < count; ++i)
+        {
+            boolean expected = Ed25519.verify(sig[i], 0, pk[i], 0, m[i], 0, m[i].length);
+
+            assertEquals("Ed25519 batch consistent result #" + i, expected, results[i]);
+        }
+        assertFalse(results[5] || results[17] || results[30] || results[33]);
+    }
+
 //    @Test
     public void testEd25519Vector1()
     {
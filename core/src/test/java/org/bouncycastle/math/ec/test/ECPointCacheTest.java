@@ -0,0 +1,107 @@
+package org.bouncycastle.math.ec.test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.ECPointCache;
+
+import junit.framework.TestCase;
+
+public class ECPointCacheTest
+    extends TestCase
+{
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final X9ECParameters x9 = CustomNamedCurves.getByName("secp256r1");
+
+    public void testDecodeShared()
+    {
+        ECPointCache cache = new ECPointCache(4);
+        ECCurve curve = x9.getCurve();
+
+        ECPoint p = randomPoint();
+        byte[] uncompressed = p.getEncoded(false);
+        byte[] compressed = p.getEncoded(true);
+
+        ECPoint a = cache.decodePoint(curve, uncompressed);
+        assertTrue(a.equals(p));
+        assertSame(a, cache.decodePoint(curve, uncompressed));
+
+        ECPoint b = cache.decodePoint(curve, compressed);
+        assertTrue(b.equals(p));
+        assertSame(b, cache.decodePoint(curve, compressed));
+
+        // changes to the passed in encoding must not affect the cache
+        uncompressed[uncompressed.length - 1] ^= 1;
+        try
+        {
+            cache.decodePoint(curve, uncompressed);
+            fail("invalid point decoded");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+        uncompressed[uncompressed.length - 1] ^= 1;
+        assertSame(a, cache.decodePoint(curve, uncompressed));
+
+        // points are only shared by users of the same curve instance
+        ECCurve other = CustomNamedCurves.getByName("secp256r1").getCurve().configure().create();
+        ECPoint c = cache.decodePoint(other, uncompressed);
+        assertSame(other, c.getCurve());
+        assertTrue(c.equals(other.importPoint(p)));
+    }
+
+    public void testIntern()
+    {
+        ECPointCache cache = new ECPointCache(4);
+
+        ECPoint p = randomPoint().normalize();
+        assertSame(p, cache.intern(p));
+
+        ECPoint q = x9.getCurve().decodePoint(p.getEncoded(false));
+        assertNotSame(p, q);
+        assertSame(p, cache.intern(q));
+        assertSame(p, cache.decodePoint(x9.getCurve(), p.getEncoded(false)));
+
+        ECPoint r = p.twice().twice();
+        ECPoint s = cache.intern(r);
+        assertTrue(s.isNormalized());
+        assertTrue(s.equals(r));
+        assertSame(s, cache.intern(r));
+    }
+
+    public void testBounded()
+    {
+        ECPointCache cache = new ECPointCache(3);
+
+        ECPoint first = cache.intern(randomPoint());
+        for (int i = 0; i < 3; ++i)
+        {
+            cache.intern(randomPoint());
+        }
+        assertEquals(3, cache.size());
+
+        ECPoint copy = x9.getCurve().decodePoint(first.getEncoded(false));
+        assertSame(copy, cache.intern(copy));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+
+        ECPointCache disabled = new ECPointCache(0);
+        ECPoint p = randomPoint().normalize();
+        assertSame(p, disabled.intern(p));
+        assertNotSame(disabled.decodePoint(x9.getCurve(), p.getEncoded(false)),
+            disabled.decodePoint(x9.getCurve(), p.getEncoded(false)));
+        assertEquals(0, disabled.size());
+    }
+
+    private ECPoint randomPoint()
+    {
+        return x9.getG().multiply(new BigInteger(x9.getN().bitLength() - 1, RANDOM).add(BigInteger.ONE));
+    }
+}
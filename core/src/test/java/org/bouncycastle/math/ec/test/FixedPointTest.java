@@ -15,6 +15,8 @@
 import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECPoint;
 import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointPreCompInfo;
+import org.bouncycastle.math.ec.FixedPointUtil;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -64,6 +66,47 @@ public void testFixedPointMultiplier()
         }
     }
 
+    public void testConcurrentPrecompute()
+        throws InterruptedException
+    {
+        X9ECParameters x9 = CustomNamedCurves.getByName("secp256r1");
+        final ECPoint p = x9.getCurve().decodePoint(x9.getG().getEncoded(false));
+        final FixedPointPreCompInfo[] infos = new FixedPointPreCompInfo[8];
+
+        Thread[] threads = new Thread[infos.length];
+        for (int i = 0; i < threads.length; ++i)
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    infos[index] = FixedPointUtil.precompute(p);
+                }
+            };
+        }
+        for (int i = 0; i < threads.length; ++i)
+        {
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; ++i)
+        {
+            threads[i].join();
+        }
+
+        // every thread must see the single precomputation made for the point
+        assertNotNull(infos[0]);
+        for (int i = 1; i < infos.length; ++i)
+        {
+            assertSame(infos[0], infos[i]);
+        }
+        assertSame(infos[0], FixedPointUtil.getFixedPointPreCompInfo(p.getCurve().getPreCompInfo(p, FixedPointUtil.PRECOMP_NAME)));
+
+        BigInteger k = new BigInteger(x9.getN().bitLength(), RANDOM);
+        assertPointsEqual("Concurrent precomputation failure", ECAlgorithms.referenceMultiply(p, k),
+            new FixedPointCombMultiplier().multiply(p, k));
+    }
+
     private List enumToList(Enumeration en)
     {
         List rv = new ArrayList();
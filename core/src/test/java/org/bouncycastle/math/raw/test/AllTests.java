@@ -20,6 +20,7 @@ public static Test suite()
         TestSuite suite = new TestSuite("Raw math tests");
 
         suite.addTest(InterleaveTest.suite());
+        suite.addTest(MontContextTest.suite());
 
         return new BCTestSetup(suite);
     }
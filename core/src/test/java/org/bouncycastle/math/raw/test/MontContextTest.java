@@ -0,0 +1,115 @@
+package org.bouncycastle.math.raw.test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.bouncycastle.math.raw.MontContext;
+import org.bouncycastle.math.raw.Nat;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class MontContextTest extends TestCase
+{
+    private static final int ITERATIONS = 20;
+
+    private static final SecureRandom R = new SecureRandom();
+
+    private static final int[] SIZES = { 2, 31, 32, 33, 64, 255, 521, 1024, 2048 };
+
+    public void testMultiply()
+    {
+        for (int i = 0; i < SIZES.length; ++i)
+        {
+            BigInteger m = randomModulus(SIZES[i]);
+            MontContext context = new MontContext(m);
+            int len = context.getSize();
+            BigInteger rInv = BigInteger.ONE.shiftLeft(len << 5).modInverse(m);
+
+            for (int iteration = 0; iteration < ITERATIONS; ++iteration)
+            {
+                BigInteger x = randomBelow(m), y = randomBelow(m);
+                int[] z = Nat.create(len);
+
+                context.multiply(Nat.fromBigInteger(len << 5, x), Nat.fromBigInteger(len << 5, y), z);
+                assertEquals(x.multiply(y).multiply(rInv).mod(m), Nat.toBigInteger(len, z));
+
+                int[] xm = Nat.fromBigInteger(len << 5, x);
+                context.toMont(xm, xm);
+                context.fromMont(xm, xm);
+                assertEquals(x, Nat.toBigInteger(len, xm));
+            }
+        }
+    }
+
+    public void testModPow()
+    {
+        for (int i = 0; i < SIZES.length; ++i)
+        {
+            BigInteger m = randomModulus(SIZES[i]);
+            MontContext context = new MontContext(m);
+
+            for (int iteration = 0; iteration < ITERATIONS; ++iteration)
+            {
+                BigInteger b = randomBelow(m);
+                int expBits = 1 + R.nextInt(m.bitLength());
+                BigInteger e = new BigInteger(expBits, R);
+
+                assertEquals(b.modPow(e, m), context.modPow(b, e, expBits));
+            }
+
+            assertEquals(BigInteger.ONE.mod(m), context.modPow(BigInteger.ONE, BigInteger.ZERO, 1));
+            assertEquals(BigInteger.ZERO, context.modPow(BigInteger.ZERO, BigInteger.ONE, 1));
+            assertEquals(BigInteger.ONE.mod(m), context.modPow(BigInteger.ZERO, BigInteger.ZERO, 1));
+        }
+    }
+
+    public void testInvalid()
+    {
+        try
+        {
+            new MontContext(BigInteger.valueOf(1000));
+            fail("even modulus accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+
+        MontContext context = new MontContext(BigInteger.valueOf(1009));
+        try
+        {
+            context.modPow(BigInteger.valueOf(1009), BigInteger.ONE, 1);
+            fail("base out of range accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+        try
+        {
+            context.modPow(BigInteger.valueOf(2), BigInteger.valueOf(4), 2);
+            fail("exponent over bound accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    private static BigInteger randomModulus(int bits)
+    {
+        return new BigInteger(bits, R).setBit(bits - 1).setBit(0).max(BigInteger.valueOf(3));
+    }
+
+    private static BigInteger randomBelow(BigInteger m)
+    {
+        return new BigInteger(m.bitLength() + 32, R).mod(m);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(MontContextTest.class);
+    }
+}
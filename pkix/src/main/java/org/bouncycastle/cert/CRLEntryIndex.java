@@ -0,0 +1,129 @@
+package org.bouncycastle.cert;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.bouncycastle.asn1.x509.CertificateList;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
+
+/**
+ * Immutable index of the revoked certificate entries of a CRL, sorted by serial number so
+ * lookups can be done with a binary search rather than a walk of the whole list.
+ * <p>
+ * For indirect CRLs the certificate issuer set by the entries preceding each entry is recorded
+ * as the index is built. Entries with the same serial number are kept in CRL order.
+ */
+class CRLEntryIndex
+{
+    private static final Comparator SLOT_ORDER = new Comparator()
+    {
+        public int compare(Object o1, Object o2)
+        {
+            return ((Slot)o1).serial.compareTo(((Slot)o2).serial);
+        }
+    };
+
+    private final BigInteger[] serials;
+    private final TBSCertList.CRLEntry[] entries;
+    private final GeneralNames[] previousCAs;
+    private final GeneralNames issuerName;
+
+    CRLEntryIndex(CertificateList x509CRL, boolean isIndirect, GeneralNames issuerName)
+    {
+        List slots = new ArrayList();
+        GeneralNames currentCA = issuerName;
+
+        for (Enumeration en = x509CRL.getRevokedCertificateEnumeration(); en.hasMoreElements();)
+        {
+            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)en.nextElement();
+
+            slots.add(new Slot(entry.getUserCertificate().getValue(), entry, currentCA));
+
+            if (isIndirect && entry.hasExtensions())
+            {
+                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+
+                if (currentCaName != null)
+                {
+                    currentCA = GeneralNames.getInstance(currentCaName.getParsedValue());
+                }
+            }
+        }
+
+        Slot[] sorted = (Slot[])slots.toArray(new Slot[slots.size()]);
+
+        // stable, so entries with the same serial number keep their CRL order
+        Arrays.sort(sorted, SLOT_ORDER);
+
+        this.serials = new BigInteger[sorted.length];
+        this.entries = new TBSCertList.CRLEntry[sorted.length];
+        this.previousCAs = isIndirect ? new GeneralNames[sorted.length] : null;
+        this.issuerName = issuerName;
+
+        for (int i = 0; i < sorted.length; i++)
+        {
+            serials[i] = sorted[i].serial;
+            entries[i] = sorted[i].entry;
+            if (isIndirect)
+            {
+                previousCAs[i] = sorted[i].previousCA;
+            }
+        }
+    }
+
+    /**
+     * Find the first entry for a serial number.
+     *
+     * @param serialNumber the serial number of interest.
+     * @return the position of the entry in the index, -1 if the serial number is not present.
+     */
+    int find(BigInteger serialNumber)
+    {
+        int pos = Arrays.binarySearch(serials, serialNumber);
+
+        if (pos < 0)
+        {
+            return -1;
+        }
+
+        while (pos > 0 && serials[pos - 1].equals(serialNumber))
+        {
+            pos--;
+        }
+
+        return pos;
+    }
+
+    TBSCertList.CRLEntry getEntry(int pos)
+    {
+        return entries[pos];
+    }
+
+    /**
+     * Return the CA in effect before the entry at pos is processed.
+     */
+    GeneralNames getPreviousCA(int pos)
+    {
+        return (previousCAs != null) ? previousCAs[pos] : issuerName;
+    }
+
+    private static class Slot
+    {
+        final BigInteger serial;
+        final TBSCertList.CRLEntry entry;
+        final GeneralNames previousCA;
+
+        Slot(BigInteger serial, TBSCertList.CRLEntry entry, GeneralNames previousCA)
+        {
+            this.serial = serial;
+            this.entry = entry;
+            this.previousCA = previousCA;
+        }
+    }
+}
@@ -42,6 +42,7 @@
     private transient boolean isIndirect;
     private transient Extensions extensions;
     private transient GeneralNames issuerName;
+    private transient volatile CRLEntryIndex entryIndex;
 
     private static CertificateList parseStream(InputStream stream)
         throws IOException
@@ -117,6 +118,7 @@ private void init(CertificateList x509CRL)
         this.extensions = x509CRL.getTBSCertList().getExtensions();
         this.isIndirect = isIndirectCRL(extensions);
         this.issuerName = new GeneralNames(new GeneralName(x509CRL.getIssuer()));
+        this.entryIndex = null;
     }
 
     /**
@@ -141,30 +143,32 @@ public X500Name getIssuer()
         return X500Name.getInstance(x509CRL.getIssuer());
     }
 
+    /**
+     * Return the CRL entry for the passed in serial number. The first lookup builds an index
+     * of the entries, so further lookups do not have to search the whole CRL.
+     *
+     * @param serialNumber the serial number of the certificate of interest.
+     * @return the CRL entry, null if the serial number is not present.
+     */
     public X509CRLEntryHolder getRevokedCertificate(BigInteger serialNumber)
     {
-        GeneralNames currentCA = issuerName;
-        for (Enumeration en = x509CRL.getRevokedCertificateEnumeration(); en.hasMoreElements();)
-        {
-            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)en.nextElement();
+        CRLEntryIndex index = entryIndex;
 
-            if (entry.getUserCertificate().getValue().equals(serialNumber))
-            {
-                return new X509CRLEntryHolder(entry, isIndirect, currentCA);
-            }
+        if (index == null)
+        {
+            // a race just means the index may be built more than once
+            index = new CRLEntryIndex(x509CRL, isIndirect, issuerName);
+            entryIndex = index;
+        }
 
-            if (isIndirect && entry.hasExtensions())
-            {
-                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+        int pos = index.find(serialNumber);
 
-                if (currentCaName != null)
-                {
-                    currentCA = GeneralNames.getInstance(currentCaName.getParsedValue());
-                }
-            }
+        if (pos < 0)
+        {
+            return null;
         }
 
-        return null;
+        return new X509CRLEntryHolder(index.getEntry(pos), isIndirect, index.getPreviousCA(pos));
     }
 
     /**
@@ -0,0 +1,338 @@
+package org.bouncycastle.cert;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+
+/**
+ * A compact, immutable, index of the certificates revoked by a CRL.
+ * <p>
+ * Only the serial number, revocation date, reason code and certificate issuer of each entry are
+ * kept, in arrays sorted by serial number, so lookups are a binary search and the index takes a
+ * fraction of the memory of the CRL's ASN.1 structure. Instances are created by
+ * {@link X509CRLStreamReader#readRevocationIndex()}.
+ * </p>
+ */
+public class X509CRLRevocationIndex
+{
+    private final BigInteger[] serials;
+    private final long[] revocationDates;
+    private final byte[] reasons;
+    private final int[] issuerIndexes;
+    private final GeneralNames[] issuers;
+
+    private X509CRLRevocationIndex(BigInteger[] serials, long[] revocationDates, byte[] reasons, int[] issuerIndexes, GeneralNames[] issuers)
+    {
+        this.serials = serials;
+        this.revocationDates = revocationDates;
+        this.reasons = reasons;
+        this.issuerIndexes = issuerIndexes;
+        this.issuers = issuers;
+    }
+
+    /**
+     * Return the number of entries in the index.
+     *
+     * @return the number of revoked certificates.
+     */
+    public int size()
+    {
+        return serials.length;
+    }
+
+    /**
+     * Return whether a certificate with the passed in serial number is revoked, regardless of issuer.
+     *
+     * @param serialNumber the serial number of interest.
+     * @return true if the serial number appears on the CRL, false otherwise.
+     */
+    public boolean isRevoked(BigInteger serialNumber)
+    {
+        return Arrays.binarySearch(serials, serialNumber) >= 0;
+    }
+
+    /**
+     * Return whether the certificate with the passed in issuer and serial number is revoked.
+     *
+     * @param certificateIssuer the issuer of the certificate of interest.
+     * @param serialNumber the serial number of the certificate of interest.
+     * @return true if the certificate is revoked, false otherwise.
+     */
+    public boolean isRevoked(X500Name certificateIssuer, BigInteger serialNumber)
+    {
+        return find(certificateIssuer, serialNumber) >= 0;
+    }
+
+    /**
+     * Return the revocation date for the passed in certificate.
+     *
+     * @param certificateIssuer the issuer of the certificate of interest.
+     * @param serialNumber the serial number of the certificate of interest.
+     * @return the revocation date, null if the certificate is not revoked.
+     */
+    public Date getRevocationDate(X500Name certificateIssuer, BigInteger serialNumber)
+    {
+        int pos = find(certificateIssuer, serialNumber);
+
+        return (pos >= 0) ? new Date(revocationDates[pos]) : null;
+    }
+
+    /**
+     * Return the revocation reason for the passed in certificate.
+     *
+     * @param certificateIssuer the issuer of the certificate of interest.
+     * @param serialNumber the serial number of the certificate of interest.
+     * @return the CRLReason value, -1 if the certificate is not revoked or the entry has no reason code.
+     */
+    public int getRevocationReason(X500Name certificateIssuer, BigInteger serialNumber)
+    {
+        int pos = find(certificateIssuer, serialNumber);
+
+        return (pos >= 0) ? reasons[pos] : -1;
+    }
+
+    private int find(X500Name certificateIssuer, BigInteger serialNumber)
+    {
+        int pos = Arrays.binarySearch(serials, serialNumber);
+
+        if (pos < 0)
+        {
+            return -1;
+        }
+
+        while (pos > 0 && serials[pos - 1].equals(serialNumber))
+        {
+            pos--;
+        }
+
+        for (; pos < serials.length && serials[pos].equals(serialNumber); pos++)
+        {
+            if (isIssuer(issuers[issuerIndexes[pos]], certificateIssuer))
+            {
+                return pos;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isIssuer(GeneralNames names, X500Name certificateIssuer)
+    {
+        GeneralName[] gns = names.getNames();
+
+        for (int i = 0; i != gns.length; i++)
+        {
+            GeneralName gn = gns[i];
+
+            if (gn.getTagNo() == GeneralName.directoryName && certificateIssuer.equals(X500Name.getInstance(gn.getName())))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static class Builder
+    {
+        private BigInteger[] serials = new BigInteger[64];
+        private long[] revocationDates = new long[64];
+        private byte[] reasons = new byte[64];
+        private int[] issuerIndexes = new int[64];
+        private GeneralNames[] issuers = new GeneralNames[4];
+        private int count;
+        private int issuerCount;
+
+        Builder(GeneralNames issuerName)
+        {
+            this.issuers[issuerCount++] = issuerName;
+        }
+
+        /**
+         * Add an entry.
+         *
+         * @param entry the CRL entry.
+         * @param entryCA the certificate issuer for the entry if the CRL is indirect.
+         */
+        void add(TBSCertList.CRLEntry entry, GeneralNames entryCA)
+        {
+            if (count == serials.length)
+            {
+                int newLength = count * 2;
+
+                BigInteger[] newSerials = new BigInteger[newLength];
+                long[] newDates = new long[newLength];
+                byte[] newReasons = new byte[newLength];
+                int[] newIssuerIndexes = new int[newLength];
+
+                System.arraycopy(serials, 0, newSerials, 0, count);
+                System.arraycopy(revocationDates, 0, newDates, 0, count);
+                System.arraycopy(reasons, 0, newReasons, 0, count);
+                System.arraycopy(issuerIndexes, 0, newIssuerIndexes, 0, count);
+
+                serials = newSerials;
+                revocationDates = newDates;
+                reasons = newReasons;
+                issuerIndexes = newIssuerIndexes;
+            }
+
+            if (!issuers[issuerCount - 1].equals(entryCA))
+            {
+                if (issuerCount == issuers.length)
+                {
+                    GeneralNames[] newIssuers = new GeneralNames[issuerCount * 2];
+
+                    System.arraycopy(issuers, 0, newIssuers, 0, issuerCount);
+
+                    issuers = newIssuers;
+                }
+                issuers[issuerCount++] = entryCA;
+            }
+
+            int reason = -1;
+            if (entry.hasExtensions())
+            {
+                Extension reasonCode = entry.getExtensions().getExtension(Extension.reasonCode);
+
+                if (reasonCode != null)
+                {
+                    reason = CRLReason.getInstance(reasonCode.getParsedValue()).getValue().intValue();
+                }
+            }
+
+            serials[count] = entry.getUserCertificate().getValue();
+            revocationDates[count] = getTime(entry.getRevocationDate());
+            reasons[count] = (byte)reason;
+            issuerIndexes[count] = issuerCount - 1;
+            count++;
+        }
+
+        /*
+         * Parsing the date via SimpleDateFormat dominates building the index, so handle the DER
+         * forms RFC 5280 requires (YYMMDDHHMMSSZ and YYYYMMDDHHMMSSZ) directly.
+         */
+        private static long getTime(Time time)
+        {
+            try
+            {
+                byte[] enc = time.toASN1Primitive().getEncoded();
+                int yearLen = enc.length - 13;
+
+                if ((yearLen == 2 && enc[0] == BERTags.UTC_TIME) || (yearLen == 4 && enc[0] == BERTags.GENERALIZED_TIME))
+                {
+                    if (enc[1] == enc.length - 2 && enc[enc.length - 1] == 'Z')
+                    {
+                        int year = digits(enc, 2, yearLen);
+                        if (yearLen == 2)
+                        {
+                            year += (year < 50) ? 2000 : 1900;
+                        }
+
+                        int off = 2 + yearLen;
+                        int month = digits(enc, off, 2);
+                        int day = digits(enc, off + 2, 2);
+                        int hour = digits(enc, off + 4, 2);
+                        int minute = digits(enc, off + 6, 2);
+                        int second = digits(enc, off + 8, 2);
+
+                        if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31
+                            && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60)
+                        {
+                            return ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+                        }
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // fall through to the general case
+            }
+
+            return time.getDate().getTime();
+        }
+
+        private static int digits(byte[] buf, int off, int len)
+        {
+            int value = 0;
+
+            for (int i = 0; i != len; i++)
+            {
+                int d = buf[off + i] - '0';
+                if (d < 0 || d > 9)
+                {
+                    return -1;
+                }
+                value = value * 10 + d;
+            }
+
+            return value;
+        }
+
+        // days since 1970-01-01 in the proleptic Gregorian calendar
+        private static long daysFromCivil(int year, int month, int day)
+        {
+            if (month <= 2)
+            {
+                year--;
+            }
+
+            int era = year / 400;
+            int yoe = year - era * 400;
+            int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+            return era * 146097L + doe - 719468;
+        }
+
+        X509CRLRevocationIndex build(boolean isIndirect)
+        {
+            // sort a permutation rather than the arrays themselves, stable so repeated serial numbers keep their CRL order
+            Integer[] order = new Integer[count];
+            for (int i = 0; i != count; i++)
+            {
+                order[i] = Integer.valueOf(i);
+            }
+
+            final BigInteger[] unsorted = serials;
+            Arrays.sort(order, new Comparator()
+            {
+                public int compare(Object o1, Object o2)
+                {
+                    return unsorted[((Integer)o1).intValue()].compareTo(unsorted[((Integer)o2).intValue()]);
+                }
+            });
+
+            BigInteger[] sSerials = new BigInteger[count];
+            long[] sDates = new long[count];
+            byte[] sReasons = new byte[count];
+            int[] sIssuerIndexes = new int[count];
+
+            for (int i = 0; i != count; i++)
+            {
+                int j = order[i].intValue();
+
+                sSerials[i] = serials[j];
+                sDates[i] = revocationDates[j];
+                sReasons[i] = reasons[j];
+                // certificateIssuer extensions only count on an indirect CRL
+                sIssuerIndexes[i] = isIndirect ? issuerIndexes[j] : 0;
+            }
+
+            GeneralNames[] sIssuers = new GeneralNames[isIndirect ? issuerCount : 1];
+            System.arraycopy(issuers, 0, sIssuers, 0, sIssuers.length);
+
+            return new X509CRLRevocationIndex(sSerials, sDates, sReasons, sIssuerIndexes, sIssuers);
+        }
+    }
+}
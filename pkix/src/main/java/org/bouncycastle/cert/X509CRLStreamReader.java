@@ -0,0 +1,503 @@
+package org.bouncycastle.cert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.ASN1TaggedObjectParser;
+import org.bouncycastle.asn1.ASN1UTCTime;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.InMemoryRepresentable;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+
+/**
+ * Streaming reader for X.509 CRLs.
+ * <p>
+ * Unlike {@link X509CRLHolder}, which needs the whole CRL in memory as ASN.1 objects, this
+ * reader parses the CRL as it arrives and hands back the revoked certificate entries one at a
+ * time, so memory use does not grow with the size of the CRL. If a {@link ContentVerifierProvider}
+ * is given the signature is calculated over the TBSCertList as it streams past and can be
+ * checked once the last entry has been read.
+ * </p>
+ * <p>
+ * Typical use is:
+ * <pre>
+ *     X509CRLStreamReader reader = new X509CRLStreamReader(in, verifierProvider);
+ *     X509CRLEntryHolder entry;
+ *
+ *     while ((entry = reader.readEntry()) != null)
+ *     {
+ *         ...
+ *     }
+ *
+ *     if (!reader.isSignatureValid())
+ *     {
+ *         ...
+ *     }
+ * </pre>
+ * or, to build a compact lookup table of the revoked serial numbers,
+ * {@link #readRevocationIndex()}.
+ * </p>
+ * <p>
+ * Note: as the CRL extensions follow the revoked certificate list, whether the CRL is indirect is
+ * only known once all the entries have been read. The certificate issuer reported for entries
+ * returned by {@link #readEntry()} assumes any certificateIssuer extensions present apply, which
+ * is only correct if {@link #isIndirectCRL()} is true. The revocation index takes this into account.
+ * </p>
+ */
+public class X509CRLStreamReader
+{
+    private final TeeInputStream tee;
+    private final ASN1SequenceParser crlSeq;
+    private final ASN1SequenceParser tbsSeq;
+
+    private final int version;
+    private final AlgorithmIdentifier signature;
+    private final X500Name issuer;
+    private final Time thisUpdate;
+    private final Time nextUpdate;
+    private final GeneralNames issuerName;
+
+    private ContentVerifier verifier;
+    private ASN1SequenceParser revokedSeq;
+    private ASN1Encodable pending;
+    private GeneralNames currentCA;
+
+    private boolean finished;
+    private Extensions extensions;
+    private boolean isIndirect;
+    private boolean signatureValid;
+
+    /**
+     * Create a reader for a CRL which will not have its signature checked.
+     *
+     * @param crlStream DER encoded InputStream of the CRL.
+     * @throws IOException if the CRL header cannot be read.
+     */
+    public X509CRLStreamReader(InputStream crlStream)
+        throws IOException
+    {
+        this(crlStream, null);
+    }
+
+    /**
+     * Create a reader for a CRL, calculating the signature as the CRL is read.
+     *
+     * @param crlStream DER encoded InputStream of the CRL.
+     * @param verifierProvider provider for the verifier to check the signature with, null to skip the check.
+     * @throws IOException if the CRL header cannot be read, or a verifier cannot be created.
+     */
+    public X509CRLStreamReader(InputStream crlStream, ContentVerifierProvider verifierProvider)
+        throws IOException
+    {
+        this.tee = new TeeInputStream(crlStream);
+
+        try
+        {
+            this.crlSeq = (ASN1SequenceParser)new ASN1StreamParser(tee).readObject();
+            if (crlSeq == null)
+            {
+                throw new IOException("no content found");
+            }
+
+            // from here until the end of the TBSCertList everything read is fed to the verifier
+            tee.startRecording();
+
+            this.tbsSeq = (ASN1SequenceParser)crlSeq.readObject();
+
+            ASN1Encodable obj = tbsSeq.readObject();
+            if (obj instanceof ASN1Integer)
+            {
+                this.version = ((ASN1Integer)obj).getValue().intValue() + 1;
+                obj = tbsSeq.readObject();
+            }
+            else
+            {
+                this.version = 1;
+            }
+
+            this.signature = AlgorithmIdentifier.getInstance(load(obj));
+
+            if (verifierProvider != null)
+            {
+                try
+                {
+                    this.verifier = verifierProvider.get(signature);
+                }
+                catch (Exception e)
+                {
+                    throw new CertIOException("unable to create verifier: " + e.getMessage(), e);
+                }
+
+                tee.setOutputStream(verifier.getOutputStream());
+            }
+            else
+            {
+                tee.setOutputStream(null);
+            }
+
+            this.issuer = X500Name.getInstance(load(tbsSeq.readObject()));
+            this.thisUpdate = Time.getInstance(load(tbsSeq.readObject()));
+
+            obj = tbsSeq.readObject();
+            if (obj instanceof ASN1UTCTime || obj instanceof ASN1GeneralizedTime)
+            {
+                this.nextUpdate = Time.getInstance(obj);
+                obj = tbsSeq.readObject();
+            }
+            else
+            {
+                this.nextUpdate = null;
+            }
+
+            if (obj instanceof ASN1SequenceParser)
+            {
+                this.revokedSeq = (ASN1SequenceParser)obj;
+            }
+            else
+            {
+                this.pending = obj;
+            }
+        }
+        catch (ClassCastException e)
+        {
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+
+        this.issuerName = new GeneralNames(new GeneralName(issuer));
+        this.currentCA = issuerName;
+    }
+
+    /**
+     * Return the version number of the CRL.
+     *
+     * @return the CRL version.
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Return the signature algorithm given in the TBSCertList.
+     *
+     * @return the signature algorithm identifier.
+     */
+    public AlgorithmIdentifier getSignatureAlgorithm()
+    {
+        return signature;
+    }
+
+    /**
+     * Return the issuer of the CRL.
+     *
+     * @return the CRL issuer.
+     */
+    public X500Name getIssuer()
+    {
+        return issuer;
+    }
+
+    public Date getThisUpdate()
+    {
+        return thisUpdate.getDate();
+    }
+
+    public Date getNextUpdate()
+    {
+        return (nextUpdate != null) ? nextUpdate.getDate() : null;
+    }
+
+    /**
+     * Read the next revoked certificate entry.
+     *
+     * @return the next entry, or null if there are no more entries.
+     * @throws IOException if the entry cannot be parsed.
+     */
+    public X509CRLEntryHolder readEntry()
+        throws IOException
+    {
+        GeneralNames previousCA = currentCA;
+        TBSCertList.CRLEntry entry = readCRLEntry();
+
+        if (entry == null)
+        {
+            return null;
+        }
+
+        return new X509CRLEntryHolder(entry, true, previousCA);
+    }
+
+    /**
+     * Read all the remaining entries and return them as a compact, sorted, index of the revoked
+     * serial numbers.
+     *
+     * @return an index of the entries that have not already been read from this reader.
+     * @throws IOException if the CRL cannot be parsed.
+     */
+    public X509CRLRevocationIndex readRevocationIndex()
+        throws IOException
+    {
+        X509CRLRevocationIndex.Builder builder = new X509CRLRevocationIndex.Builder(issuerName);
+
+        TBSCertList.CRLEntry entry;
+        while ((entry = readCRLEntry()) != null)
+        {
+            builder.add(entry, currentCA);
+        }
+
+        return builder.build(isIndirect);
+    }
+
+    /**
+     * Return the CRL extensions.
+     *
+     * @return the extensions block, null if there is none.
+     * @throws IllegalStateException if there are still entries to be read.
+     */
+    public Extensions getExtensions()
+    {
+        checkFinished();
+
+        return extensions;
+    }
+
+    /**
+     * Return whether the CRL is an indirect CRL.
+     *
+     * @return true if the CRL's IssuingDistributionPoint marks it as indirect.
+     * @throws IllegalStateException if there are still entries to be read.
+     */
+    public boolean isIndirectCRL()
+    {
+        checkFinished();
+
+        return isIndirect;
+    }
+
+    /**
+     * Return whether the signature on the CRL is valid.
+     *
+     * @return true if the signature is valid, false otherwise.
+     * @throws IllegalStateException if there are still entries to be read, or no verifier was given.
+     */
+    public boolean isSignatureValid()
+    {
+        checkFinished();
+
+        if (verifier == null)
+        {
+            throw new IllegalStateException("no verifier provider given");
+        }
+
+        return signatureValid;
+    }
+
+    private void checkFinished()
+    {
+        if (!finished)
+        {
+            throw new IllegalStateException("CRL entries not completely read");
+        }
+    }
+
+    private TBSCertList.CRLEntry readCRLEntry()
+        throws IOException
+    {
+        if (finished)
+        {
+            return null;
+        }
+
+        ASN1Encodable obj = (revokedSeq != null) ? revokedSeq.readObject() : null;
+
+        if (obj == null)
+        {
+            finish();
+            return null;
+        }
+
+        TBSCertList.CRLEntry entry;
+        try
+        {
+            entry = TBSCertList.CRLEntry.getInstance(load(obj));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new CertIOException("malformed CRL entry: " + e.getMessage(), e);
+        }
+
+        if (entry.hasExtensions())
+        {
+            Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+
+            if (currentCaName != null)
+            {
+                currentCA = GeneralNames.getInstance(currentCaName.getParsedValue());
+            }
+        }
+
+        return entry;
+    }
+
+    private void finish()
+        throws IOException
+    {
+        finished = true;
+
+        try
+        {
+            ASN1Encodable obj = (revokedSeq != null) ? tbsSeq.readObject() : pending;
+
+            if (obj instanceof ASN1TaggedObjectParser)
+            {
+                ASN1TaggedObject exts = (ASN1TaggedObject)load(obj);
+
+                if (exts.getTagNo() != 0)
+                {
+                    throw new CertIOException("unknown tag in TBSCertList: " + exts.getTagNo());
+                }
+
+                this.extensions = Extensions.getInstance(exts, true);
+
+                obj = tbsSeq.readObject();
+            }
+
+            if (obj != null)
+            {
+                throw new CertIOException("unexpected object in TBSCertList");
+            }
+
+            tee.setOutputStream(null);
+
+            if (extensions != null)
+            {
+                Extension idp = extensions.getExtension(Extension.issuingDistributionPoint);
+
+                this.isIndirect = idp != null && IssuingDistributionPoint.getInstance(idp.getParsedValue()).isIndirectCRL();
+            }
+
+            AlgorithmIdentifier sigAlg = AlgorithmIdentifier.getInstance(load(crlSeq.readObject()));
+            DERBitString sig = DERBitString.getInstance(load(crlSeq.readObject()));
+
+            if (verifier != null)
+            {
+                verifier.getOutputStream().close();
+
+                this.signatureValid = CertUtils.isAlgIdEqual(signature, sigAlg)
+                    && verifier.verify(sig.getOctets());
+            }
+        }
+        catch (ClassCastException e)
+        {
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new CertIOException("malformed data: " + e.getMessage(), e);
+        }
+    }
+
+    private static ASN1Primitive load(ASN1Encodable obj)
+        throws IOException
+    {
+        if (obj == null)
+        {
+            throw new CertIOException("CRL truncated");
+        }
+
+        if (obj instanceof InMemoryRepresentable)
+        {
+            return ((InMemoryRepresentable)obj).getLoadedObject();
+        }
+
+        return obj.toASN1Primitive();
+    }
+
+    /**
+     * Passes through everything read from the underlying stream, optionally copying it to an
+     * output stream. Until an output stream is set, copied data is buffered.
+     */
+    private static class TeeInputStream
+        extends InputStream
+    {
+        private final InputStream in;
+
+        private ByteArrayOutputStream buffer;
+        private OutputStream out;
+
+        TeeInputStream(InputStream in)
+        {
+            this.in = in;
+        }
+
+        void startRecording()
+        {
+            this.buffer = new ByteArrayOutputStream();
+            this.out = buffer;
+        }
+
+        void setOutputStream(OutputStream out)
+            throws IOException
+        {
+            if (buffer != null)
+            {
+                if (out != null)
+                {
+                    buffer.writeTo(out);
+                }
+                buffer = null;
+            }
+            this.out = out;
+        }
+
+        public int read()
+            throws IOException
+        {
+            int b = in.read();
+
+            if (b >= 0 && out != null)
+            {
+                out.write(b);
+            }
+
+            return b;
+        }
+
+        public int read(byte[] buf, int off, int len)
+            throws IOException
+        {
+            int count = in.read(buf, off, len);
+
+            if (count > 0 && out != null)
+            {
+                out.write(buf, off, count);
+            }
+
+            return count;
+        }
+    }
+}
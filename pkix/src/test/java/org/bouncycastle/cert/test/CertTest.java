@@ -75,6 +75,8 @@
 import org.bouncycastle.cert.X509AttributeCertificateHolder;
 import org.bouncycastle.cert.X509CRLEntryHolder;
 import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509CRLRevocationIndex;
+import org.bouncycastle.cert.X509CRLStreamReader;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.X509v1CertificateBuilder;
 import org.bouncycastle.cert.X509v2CRLBuilder;
@@ -3860,6 +3862,247 @@ private void testIndirect2()
         }
     }
 
+    // lookups on a large indirect CRL, with entries out of order and a serial number repeated for a second issuer
+    private void testLargeIndirect()
+        throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12", "BC");
+
+        ByteArrayInputStream input = new ByteArrayInputStream(testCAp12);
+
+        keyStore.load(input, "test".toCharArray());
+
+        X509Certificate certificate = (X509Certificate)keyStore.getCertificate("ca");
+        PrivateKey privateKey = (PrivateKey)keyStore.getKey("ca", null);
+
+        X500Name crlIssuer = X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded());
+        X500Name caName = X500Name.getInstance(certificate.getIssuerX500Principal().getEncoded());
+
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(crlIssuer, new Date());
+
+        builder.addExtension(Extension.issuingDistributionPoint, true, new IssuingDistributionPoint(null, true, false));
+
+        // the certificate's serial number first appears for the CRL issuer
+        builder.addCRLEntry(certificate.getSerialNumber(), new Date(), CRLReason.keyCompromise);
+
+        int count = 2000;
+        for (int i = 0; i < count; i++)
+        {
+            // odd serial numbers, in no particular order
+            builder.addCRLEntry(BigInteger.valueOf(((i * 7919L) % count) * 2 + 1001), new Date(), CRLReason.cACompromise);
+        }
+
+        ExtensionsGenerator extGen = new ExtensionsGenerator();
+
+        extGen.addExtension(Extension.reasonCode, false, CRLReason.lookup(CRLReason.cACompromise));
+        extGen.addExtension(Extension.certificateIssuer, true, new GeneralNames(new GeneralName(caName)));
+
+        builder.addCRLEntry(BigInteger.valueOf(10), new Date(), extGen.generate());
+        builder.addCRLEntry(BigInteger.valueOf(20), new Date(), CRLReason.cACompromise);
+        builder.addCRLEntry(certificate.getSerialNumber(), new Date(), CRLReason.cACompromise);
+
+        JcaContentSignerBuilder contentSignerBuilder = new JcaContentSignerBuilder("SHA256WithRSAEncryption");
+
+        contentSignerBuilder.setProvider("BC");
+
+        X509CRLHolder cRLHolder = builder.build(contentSignerBuilder.build(privateKey));
+
+        GeneralNames crlIssuerNames = new GeneralNames(new GeneralName(crlIssuer));
+        GeneralNames caNames = new GeneralNames(new GeneralName(caName));
+
+        JcaX509CRLConverter converter = new JcaX509CRLConverter();
+
+        converter.setProvider("BC");
+
+        X509CRL crl = converter.getCRL(cRLHolder);
+
+        for (int i = 0; i < count; i++)
+        {
+            BigInteger serial = BigInteger.valueOf(i * 2 + 1001);
+
+            X509CRLEntryHolder cRLEntryHolder = cRLHolder.getRevokedCertificate(serial);
+            if (cRLEntryHolder == null || !serial.equals(cRLEntryHolder.getSerialNumber())
+                || !crlIssuerNames.equals(cRLEntryHolder.getCertificateIssuer()))
+            {
+                fail("large CRL entry " + serial + " incorrect");
+            }
+
+            X509CRLEntry crlEntry = crl.getRevokedCertificate(serial);
+            if (crlEntry == null || !serial.equals(crlEntry.getSerialNumber()) || crlEntry.getCertificateIssuer() != null)
+            {
+                fail("JCA large CRL entry " + serial + " incorrect");
+            }
+
+            if (cRLHolder.getRevokedCertificate(serial.add(BigInteger.ONE)) != null
+                || crl.getRevokedCertificate(serial.add(BigInteger.ONE)) != null)
+            {
+                fail("large CRL entry " + serial.add(BigInteger.ONE) + " found");
+            }
+        }
+
+        if (!caNames.equals(cRLHolder.getRevokedCertificate(BigInteger.valueOf(20)).getCertificateIssuer()))
+        {
+            fail("large CRL certificate issuer incorrect");
+        }
+
+        if (!(new X500Principal(caName.getEncoded())).equals(crl.getRevokedCertificate(BigInteger.valueOf(20)).getCertificateIssuer()))
+        {
+            fail("JCA large CRL certificate issuer incorrect");
+        }
+
+        // the first entry for a repeated serial number is the one returned
+        if (!crlIssuerNames.equals(cRLHolder.getRevokedCertificate(certificate.getSerialNumber()).getCertificateIssuer()))
+        {
+            fail("large CRL repeated entry incorrect");
+        }
+
+        // but revocation is checked against all of them
+        if (!crl.isRevoked(certificate))
+        {
+            fail("certificate should be revoked by second entry");
+        }
+    }
+
+    private void testCRLStreamReader()
+        throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12", "BC");
+
+        ByteArrayInputStream input = new ByteArrayInputStream(testCAp12);
+
+        keyStore.load(input, "test".toCharArray());
+
+        X509Certificate certificate = (X509Certificate)keyStore.getCertificate("ca");
+        PrivateKey privateKey = (PrivateKey)keyStore.getKey("ca", null);
+
+        X500Name crlIssuer = X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded());
+        X500Name caName = X500Name.getInstance(certificate.getIssuerX500Principal().getEncoded());
+
+        Date now = new Date((System.currentTimeMillis() / 1000) * 1000);
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(crlIssuer, now);
+
+        builder.setNextUpdate(new Date(now.getTime() + 100000));
+        builder.addExtension(Extension.issuingDistributionPoint, true, new IssuingDistributionPoint(null, true, false));
+
+        for (int i = 0; i < 500; i++)
+        {
+            builder.addCRLEntry(BigInteger.valueOf(1000 - i), now, CRLReason.keyCompromise);
+        }
+
+        ExtensionsGenerator extGen = new ExtensionsGenerator();
+
+        extGen.addExtension(Extension.reasonCode, false, CRLReason.lookup(CRLReason.cACompromise));
+        extGen.addExtension(Extension.certificateIssuer, true, new GeneralNames(new GeneralName(caName)));
+
+        builder.addCRLEntry(BigInteger.valueOf(600), new Date(now.getTime() + 1000), extGen.generate());
+        builder.addCRLEntry(BigInteger.valueOf(2000), now, CRLReason.superseded);
+
+        X509CRLHolder crl = builder.build(new JcaContentSignerBuilder("SHA256WithRSAEncryption").setProvider("BC").build(privateKey));
+        byte[] encoding = crl.getEncoded();
+
+        X509CRLStreamReader reader = new X509CRLStreamReader(new ByteArrayInputStream(encoding),
+            new JcaContentVerifierProviderBuilder().setProvider("BC").build(certificate));
+
+        if (reader.getVersion() != 2 || !crlIssuer.equals(reader.getIssuer())
+            || !now.equals(reader.getThisUpdate()) || !crl.toASN1Structure().getNextUpdate().getDate().equals(reader.getNextUpdate()))
+        {
+            fail("stream reader header incorrect");
+        }
+
+        Iterator it = crl.getRevokedCertificates().iterator();
+        X509CRLEntryHolder entry;
+        while ((entry = reader.readEntry()) != null)
+        {
+            X509CRLEntryHolder expected = (X509CRLEntryHolder)it.next();
+
+            if (!expected.getSerialNumber().equals(entry.getSerialNumber())
+                || !expected.getCertificateIssuer().equals(entry.getCertificateIssuer())
+                || !expected.getRevocationDate().equals(entry.getRevocationDate()))
+            {
+                fail("stream reader entry " + expected.getSerialNumber() + " incorrect");
+            }
+        }
+
+        if (it.hasNext())
+        {
+            fail("stream reader missing entries");
+        }
+
+        if (!reader.isSignatureValid() || !reader.isIndirectCRL() || !crl.getExtensions().equals(reader.getExtensions()))
+        {
+            fail("stream reader trailer incorrect");
+        }
+
+        reader = new X509CRLStreamReader(new ByteArrayInputStream(encoding),
+            new JcaContentVerifierProviderBuilder().setProvider("BC").build(certificate));
+
+        X509CRLRevocationIndex index = reader.readRevocationIndex();
+
+        if (index.size() != 502 || !reader.isSignatureValid())
+        {
+            fail("stream reader index incorrect");
+        }
+
+        if (!index.isRevoked(crlIssuer, BigInteger.valueOf(501)) || index.isRevoked(crlIssuer, BigInteger.valueOf(500))
+            || index.getRevocationReason(crlIssuer, BigInteger.valueOf(501)) != CRLReason.keyCompromise
+            || !now.equals(index.getRevocationDate(crlIssuer, BigInteger.valueOf(1000))))
+        {
+            fail("stream reader index lookup incorrect");
+        }
+
+        // 600 appears for both issuers
+        if (!index.isRevoked(caName, BigInteger.valueOf(600))
+            || index.getRevocationReason(caName, BigInteger.valueOf(600)) != CRLReason.cACompromise
+            || index.getRevocationReason(crlIssuer, BigInteger.valueOf(600)) != CRLReason.keyCompromise
+            || !index.isRevoked(caName, BigInteger.valueOf(2000)) || index.isRevoked(crlIssuer, BigInteger.valueOf(2000)))
+        {
+            fail("stream reader index indirect lookup incorrect");
+        }
+
+        // damage the last serial number, turning 2000 into 2001
+        byte[] damaged = (byte[])encoding.clone();
+        for (int i = 0; i < damaged.length - 3; i++)
+        {
+            if (damaged[i] == 0x02 && damaged[i + 1] == 0x02 && damaged[i + 2] == 0x07 && damaged[i + 3] == (byte)0xd0)
+            {
+                damaged[i + 3] ^= 1;
+                break;
+            }
+        }
+
+        reader = new X509CRLStreamReader(new ByteArrayInputStream(damaged),
+            new JcaContentVerifierProviderBuilder().setProvider("BC").build(certificate));
+
+        index = reader.readRevocationIndex();
+
+        if (reader.isSignatureValid() || index.isRevoked(BigInteger.valueOf(2000)))
+        {
+            fail("stream reader accepted damaged CRL");
+        }
+
+        // no entries, no signature check
+        builder = new X509v2CRLBuilder(crlIssuer, now);
+
+        crl = builder.build(new JcaContentSignerBuilder("SHA256WithRSAEncryption").setProvider("BC").build(privateKey));
+
+        reader = new X509CRLStreamReader(new ByteArrayInputStream(crl.getEncoded()));
+
+        if (reader.readEntry() != null || reader.getNextUpdate() != null || reader.getExtensions() != null)
+        {
+            fail("stream reader empty CRL incorrect");
+        }
+
+        try
+        {
+            reader.isSignatureValid();
+            fail("no exception");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
     // issuing distribution point must be set for an indirect CRL to be recognised
     private void testMalformedIndirect()
         throws Exception
@@ -3993,6 +4236,8 @@ public void performTest()
         testDirect();
         testIndirect();
         testIndirect2();
+        testLargeIndirect();
+        testCRLStreamReader();
         testMalformedIndirect();
 
         checkCertificate(1, cert1);
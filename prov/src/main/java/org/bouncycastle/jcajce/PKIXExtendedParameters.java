@@ -63,6 +63,7 @@
         private int validityModel = PKIX_VALIDITY_MODEL;
         private boolean useDeltas = false;
         private Set<TrustAnchor> trustAnchors;
+        private PKIXValidationCache validationCache;
 
         public Builder(PKIXParameters baseParameters)
         {
@@ -91,6 +92,7 @@ public Builder(PKIXExtendedParameters baseParameters)
             this.validityModel = baseParameters.validityModel;
             this.revocationEnabled = baseParameters.isRevocationEnabled();
             this.trustAnchors = baseParameters.getTrustAnchors();
+            this.validationCache = baseParameters.validationCache;
         }
 
         public Builder addCertificateStore(PKIXCertStore store)
@@ -188,6 +190,19 @@ public void setRevocationEnabled(boolean revocationEnabled)
             this.revocationEnabled = revocationEnabled;
         }
 
+        /**
+         * Set a cache of validation results to be consulted, and updated, when these parameters are used.
+         *
+         * @param validationCache the cache to use, null if results are not to be cached.
+         * @return the current builder.
+         */
+        public Builder setValidationCache(PKIXValidationCache validationCache)
+        {
+            this.validationCache = validationCache;
+
+            return this;
+        }
+
         public PKIXExtendedParameters build()
         {
             return new PKIXExtendedParameters(this);
@@ -205,6 +220,7 @@ public PKIXExtendedParameters build()
     private final boolean useDeltas;
     private final int validityModel;
     private final Set<TrustAnchor> trustAnchors;
+    private final PKIXValidationCache validationCache;
 
     private PKIXExtendedParameters(Builder builder)
     {
@@ -219,6 +235,7 @@ private PKIXExtendedParameters(Builder builder)
         this.useDeltas = builder.useDeltas;
         this.validityModel = builder.validityModel;
         this.trustAnchors = Collections.unmodifiableSet(builder.trustAnchors);
+        this.validationCache = builder.validationCache;
     }
 
     public List<PKIXCertStore> getCertificateStores()
@@ -337,4 +354,14 @@ public boolean isRevocationEnabled()
         return revocationEnabled;
     }
 
+    /**
+     * Return the cache of validation results to use with these parameters.
+     *
+     * @return the validation cache, null if none is set.
+     */
+    public PKIXValidationCache getValidationCache()
+    {
+        return validationCache;
+    }
+
 }
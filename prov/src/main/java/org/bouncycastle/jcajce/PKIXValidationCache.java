@@ -0,0 +1,413 @@
+package org.bouncycastle.jcajce;
+
+import java.security.PublicKey;
+import java.security.cert.CertPath;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.PKIXCertPathValidatorResult;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Strings;
+
+/**
+ * A bounded, thread safe, cache of certificate path validation results which can be shared between
+ * validations by passing it to {@link PKIXExtendedParameters.Builder#setValidationCache(PKIXValidationCache)}.
+ * <p>
+ * Two kinds of result are remembered:
+ * <ul>
+ * <li>successful signature verifications, keyed on the issuer public key and the encoding of the certificate. These
+ * do not depend on the validation date, trust anchors or revocation status, so they are used for any path
+ * containing the same issuer/certificate pair, which covers the shared intermediate part of most chains.</li>
+ * <li>successful validations of a complete path. These are keyed on the encodings of the certificates in the path and
+ * the policy related parameters, and are only used if the trust anchor that validated the path is still one of
+ * the trust anchors passed in and the validation date falls inside the validity periods of every certificate in the path.
+ * As the revocation status of a certificate can change at any time, paths are only cached when revocation checking is
+ * disabled, no PKIXCertPathCheckers or target constraints are set, and the PKIX validity model is in use.</li>
+ * </ul>
+ * Failed validations are never cached. Entries are discarded on a least recently used basis once the cache is full,
+ * and after the time to live given at construction has passed.
+ * </p>
+ */
+public class PKIXValidationCache
+{
+    private static final byte SIGNATURE_ENTRY = 1;
+    private static final byte PATH_ENTRY = 2;
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final Map<Key, CacheEntry> entries;
+
+    /**
+     * Base constructor.
+     *
+     * @param maxEntries the maximum number of results to hold.
+     * @param timeToLive the time, in milliseconds, a result can be held for.
+     */
+    public PKIXValidationCache(final int maxEntries, long timeToLive)
+    {
+        if (maxEntries <= 0)
+        {
+            throw new IllegalArgumentException("maxEntries must be greater than zero");
+        }
+        if (timeToLive <= 0)
+        {
+            throw new IllegalArgumentException("timeToLive must be greater than zero");
+        }
+
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    /**
+     * Return the number of results currently held, including any which have expired but not yet been discarded.
+     *
+     * @return the number of entries in the cache.
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Discard all cached results, for example after a change to the trust configuration.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Return true if the signature on cert has already been verified using issuerKey.
+     *
+     * @param issuerKey the public key of the issuer.
+     * @param cert the certificate the signature is on.
+     * @param sigProvider the provider the signature was verified with, may be null.
+     * @return true if a successful verification is cached, false otherwise.
+     */
+    public boolean isSignatureVerified(PublicKey issuerKey, X509Certificate cert, String sigProvider)
+    {
+        Key key = signatureKey(issuerKey, cert, sigProvider);
+
+        return key != null && get(key) != null;
+    }
+
+    /**
+     * Record the successful verification of the signature on cert using issuerKey.
+     *
+     * @param issuerKey the public key of the issuer.
+     * @param cert the certificate the signature is on.
+     * @param sigProvider the provider the signature was verified with, may be null.
+     */
+    public void addVerifiedSignature(PublicKey issuerKey, X509Certificate cert, String sigProvider)
+    {
+        Key key = signatureKey(issuerKey, cert, sigProvider);
+
+        if (key != null)
+        {
+            put(key, new CacheEntry(getExpiry()));
+        }
+    }
+
+    /**
+     * Return the cached result of validating certPath with the passed in parameters, if there is one.
+     *
+     * @param certPath the path to be validated.
+     * @param parameters the parameters the path is to be validated with.
+     * @return the result of an earlier successful validation, null if there is none or it cannot be used.
+     */
+    public PKIXCertPathValidatorResult getValidatedPath(CertPath certPath, PKIXExtendedParameters parameters)
+    {
+        if (!isCacheable(parameters))
+        {
+            return null;
+        }
+
+        Key key = pathKey(certPath, parameters);
+        if (key == null)
+        {
+            return null;
+        }
+
+        PathEntry entry = (PathEntry)get(key);
+        if (entry == null)
+        {
+            return null;
+        }
+
+        long date = parameters.getDate().getTime();
+        if (date < entry.notBefore || date > entry.notAfter)
+        {
+            return null;
+        }
+
+        if (!containsAnchor(parameters.getTrustAnchors(), entry.result.getTrustAnchor()))
+        {
+            return null;
+        }
+
+        return entry.result;
+    }
+
+    /**
+     * Record the result of successfully validating certPath with the passed in parameters.
+     *
+     * @param certPath the path that was validated.
+     * @param parameters the parameters the path was validated with.
+     * @param result the result of the validation.
+     */
+    public void addValidatedPath(CertPath certPath, PKIXExtendedParameters parameters, PKIXCertPathValidatorResult result)
+    {
+        if (!isCacheable(parameters))
+        {
+            return;
+        }
+
+        Key key = pathKey(certPath, parameters);
+        if (key == null)
+        {
+            return;
+        }
+
+        long notBefore = Long.MIN_VALUE;
+        long notAfter = Long.MAX_VALUE;
+        for (Iterator it = certPath.getCertificates().iterator(); it.hasNext();)
+        {
+            X509Certificate cert = (X509Certificate)it.next();
+
+            notBefore = Math.max(notBefore, cert.getNotBefore().getTime());
+            notAfter = Math.min(notAfter, cert.getNotAfter().getTime());
+        }
+
+        put(key, new PathEntry(getExpiry(), notBefore, notAfter, result));
+    }
+
+    private long getExpiry()
+    {
+        long now = System.currentTimeMillis();
+
+        return (timeToLive > Long.MAX_VALUE - now) ? Long.MAX_VALUE : now + timeToLive;
+    }
+
+    private static boolean isCacheable(PKIXExtendedParameters parameters)
+    {
+        return !parameters.isRevocationEnabled()
+            && parameters.getCertPathCheckers().isEmpty()
+            && parameters.getTargetConstraints() == null
+            && parameters.getValidityModel() == PKIXExtendedParameters.PKIX_VALIDITY_MODEL;
+    }
+
+    private static boolean containsAnchor(Set trustAnchors, TrustAnchor anchor)
+    {
+        if (trustAnchors.contains(anchor))
+        {
+            return true;
+        }
+
+        // TrustAnchor does not implement equals(), so the caller may be using a different instance for the same anchor
+        for (Iterator it = trustAnchors.iterator(); it.hasNext();)
+        {
+            TrustAnchor candidate = (TrustAnchor)it.next();
+
+            if (anchor.getTrustedCert() != null)
+            {
+                if (anchor.getTrustedCert().equals(candidate.getTrustedCert()))
+                {
+                    return true;
+                }
+            }
+            else if (candidate.getTrustedCert() == null
+                && anchor.getCA().equals(candidate.getCA())
+                && Arrays.areEqual(anchor.getCAPublicKey().getEncoded(), candidate.getCAPublicKey().getEncoded()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private synchronized CacheEntry get(Key key)
+    {
+        CacheEntry entry = entries.get(key);
+
+        if (entry != null && entry.expiry < System.currentTimeMillis())
+        {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry;
+    }
+
+    private synchronized void put(Key key, CacheEntry entry)
+    {
+        entries.put(key, entry);
+    }
+
+    private static Key signatureKey(PublicKey issuerKey, X509Certificate cert, String sigProvider)
+    {
+        byte[] keyEnc = issuerKey.getEncoded();
+        if (keyEnc == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            Digest digest = new SHA256Digest();
+
+            digest.update(SIGNATURE_ENTRY);
+            update(digest, keyEnc);
+            update(digest, cert.getEncoded());
+            update(digest, sigProvider);
+
+            return new Key(digest);
+        }
+        catch (CertificateEncodingException e)
+        {
+            return null;
+        }
+    }
+
+    private static Key pathKey(CertPath certPath, PKIXExtendedParameters parameters)
+    {
+        try
+        {
+            Digest digest = new SHA256Digest();
+
+            digest.update(PATH_ENTRY);
+
+            List certs = certPath.getCertificates();
+            for (int i = 0; i != certs.size(); i++)
+            {
+                update(digest, ((X509Certificate)certs.get(i)).getEncoded());
+            }
+
+            update(digest, parameters.getSigProvider());
+            digest.update((byte)(parameters.isExplicitPolicyRequired() ? 1 : 0));
+            digest.update((byte)(parameters.isAnyPolicyInhibited() ? 1 : 0));
+            digest.update((byte)(parameters.isPolicyMappingInhibited() ? 1 : 0));
+
+            Set initialPolicies = parameters.getInitialPolicies();
+            if (initialPolicies != null)
+            {
+                for (Iterator it = new TreeSet(initialPolicies).iterator(); it.hasNext();)
+                {
+                    update(digest, (String)it.next());
+                }
+            }
+
+            return new Key(digest);
+        }
+        catch (CertificateEncodingException e)
+        {
+            return null;
+        }
+        catch (ClassCastException e)
+        {
+            return null;
+        }
+    }
+
+    private static void update(Digest digest, byte[] data)
+    {
+        int len = data.length;
+
+        digest.update((byte)(len >>> 24));
+        digest.update((byte)(len >>> 16));
+        digest.update((byte)(len >>> 8));
+        digest.update((byte)len);
+        digest.update(data, 0, len);
+    }
+
+    private static void update(Digest digest, String value)
+    {
+        if (value == null)
+        {
+            digest.update((byte)0);
+        }
+        else
+        {
+            digest.update((byte)1);
+            update(digest, Strings.toUTF8ByteArray(value));
+        }
+    }
+
+    private static class Key
+    {
+        private final byte[] hash;
+        private final int hashCode;
+
+        Key(Digest digest)
+        {
+            this.hash = new byte[digest.getDigestSize()];
+
+            digest.doFinal(hash, 0);
+
+            this.hashCode = Arrays.hashCode(hash);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        public boolean equals(Object o)
+        {
+            return o instanceof Key && Arrays.constantTimeAreEqual(hash, ((Key)o).hash);
+        }
+    }
+
+    private static class CacheEntry
+    {
+        final long expiry;
+
+        CacheEntry(long expiry)
+        {
+            this.expiry = expiry;
+        }
+    }
+
+    private static class PathEntry
+        extends CacheEntry
+    {
+        final long notBefore;
+        final long notAfter;
+        final PKIXCertPathValidatorResult result;
+
+        PathEntry(long expiry, long notBefore, long notAfter, PKIXCertPathValidatorResult result)
+        {
+            super(expiry);
+
+            this.notBefore = notBefore;
+            this.notAfter = notAfter;
+            this.result = result;
+        }
+    }
+}
@@ -29,6 +29,7 @@
 import org.bouncycastle.jce.interfaces.ECPointEncoder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPointCache;
 
 public class BCECPublicKey
     implements ECPublicKey, org.bouncycastle.jce.interfaces.ECPublicKey, ECPointEncoder
@@ -217,9 +218,10 @@ private void populateFromPubKeyInfo(SubjectPublicKeyInfo info)
             }
         }
 
-        X9ECPoint derQ = new X9ECPoint(curve, key);
+        // share the point, and any precomputation for it, with earlier decodings of the same key
+        org.bouncycastle.math.ec.ECPoint q = ECPointCache.getDefault().decodePoint(curve, key.getOctets());
 
-        this.ecPublicKey = new ECPublicKeyParameters(derQ.getPoint(), ECUtil.getDomainParameters(configuration, params));
+        this.ecPublicKey = new ECPublicKeyParameters(q, ECUtil.getDomainParameters(configuration, params));
     }
 
     public String getAlgorithm()
@@ -25,8 +25,10 @@
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
 import org.bouncycastle.jce.spec.ECParameterSpec;
+import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECCurve;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.ECPointCache;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Fingerprint;
 import org.bouncycastle.util.Strings;
@@ -177,17 +179,13 @@ public static AsymmetricKeyParameter generatePublicKeyParameter(
             ECPublicKey    k = (ECPublicKey)key;
             ECParameterSpec s = k.getParameters();
 
-            return new ECPublicKeyParameters(
-                            k.getQ(),
-                            new ECDomainParameters(s.getCurve(), s.getG(), s.getN(), s.getH(), s.getSeed()));
+            return createPublicKeyParameters(k.getQ(), s);
         }
         else if (key instanceof java.security.interfaces.ECPublicKey)
         {
             java.security.interfaces.ECPublicKey pubKey = (java.security.interfaces.ECPublicKey)key;
             ECParameterSpec s = EC5Util.convertSpec(pubKey.getParams(), false);
-            return new ECPublicKeyParameters(
-                EC5Util.convertPoint(pubKey.getParams(), pubKey.getW(), false),
-                            new ECDomainParameters(s.getCurve(), s.getG(), s.getN(), s.getH(), s.getSeed()));
+            return createPublicKeyParameters(EC5Util.convertPoint(pubKey.getParams(), pubKey.getW(), false), s);
         }
         else
         {
@@ -217,6 +215,18 @@ else if (key instanceof java.security.interfaces.ECPublicKey)
         throw new InvalidKeyException("cannot identify EC public key.");
     }
 
+    private static ECPublicKeyParameters createPublicKeyParameters(ECPoint q, ECParameterSpec s)
+    {
+        ECCurve curve = s.getCurve();
+        ECPointCache cache = ECPointCache.getDefault();
+
+        // use the shared instances of G and Q, so precomputations for them are reused across keys
+        ECPoint g = cache.intern(ECAlgorithms.importPoint(curve, s.getG()));
+        q = cache.intern(ECAlgorithms.importPoint(curve, q));
+
+        return new ECPublicKeyParameters(q, new ECDomainParameters(curve, g, s.getN(), s.getH(), s.getSeed()));
+    }
+
     public static AsymmetricKeyParameter generatePrivateKeyParameter(
         PrivateKey    key)
         throws InvalidKeyException
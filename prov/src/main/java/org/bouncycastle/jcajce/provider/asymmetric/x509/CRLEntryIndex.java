@@ -0,0 +1,163 @@
+package org.bouncycastle.jcajce.provider.asymmetric.x509;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CertificateList;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
+
+/**
+ * Immutable index of the revoked certificate entries of a CRL, sorted by serial number so
+ * lookups can be done with a binary search rather than a walk of the whole list.
+ * <p>
+ * For indirect CRLs the certificate issuer in effect for each entry is recorded as the index
+ * is built, as it depends on the certificateIssuer extensions of the entries before it.
+ * Entries with the same serial number are kept in the order they appear in the CRL.
+ */
+class CRLEntryIndex
+{
+    private static final Comparator SLOT_ORDER = new Comparator()
+    {
+        public int compare(Object o1, Object o2)
+        {
+            return ((Slot)o1).serial.compareTo(((Slot)o2).serial);
+        }
+    };
+
+    private final BigInteger[] serials;
+    private final TBSCertList.CRLEntry[] entries;
+    private final X500Name[] previousIssuers;
+    private final X500Name[] issuers;
+
+    CRLEntryIndex(CertificateList c, boolean isIndirect)
+    {
+        List slots = new ArrayList();
+        Enumeration certs = c.getRevokedCertificateEnumeration();
+
+        X500Name previousCertificateIssuer = null; // the issuer
+        while (certs.hasMoreElements())
+        {
+            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)certs.nextElement();
+            X500Name certificateIssuer = previousCertificateIssuer;
+
+            if (isIndirect && entry.hasExtensions())
+            {
+                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+
+                if (currentCaName != null)
+                {
+                    certificateIssuer = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
+                }
+            }
+
+            slots.add(new Slot(entry.getUserCertificate().getValue(), entry, previousCertificateIssuer, certificateIssuer));
+
+            previousCertificateIssuer = certificateIssuer;
+        }
+
+        Slot[] sorted = (Slot[])slots.toArray(new Slot[slots.size()]);
+
+        // stable, so entries with the same serial number keep their CRL order
+        Arrays.sort(sorted, SLOT_ORDER);
+
+        int count = sorted.length;
+
+        this.serials = new BigInteger[count];
+        this.entries = new TBSCertList.CRLEntry[count];
+        this.previousIssuers = isIndirect ? new X500Name[count] : null;
+        this.issuers = isIndirect ? new X500Name[count] : null;
+
+        for (int i = 0; i < count; i++)
+        {
+            serials[i] = sorted[i].serial;
+            entries[i] = sorted[i].entry;
+            if (isIndirect)
+            {
+                previousIssuers[i] = sorted[i].previousIssuer;
+                issuers[i] = sorted[i].issuer;
+            }
+        }
+    }
+
+    /**
+     * Find the first entry for a serial number.
+     *
+     * @param serialNumber the serial number of interest.
+     * @return the position of the entry in the index, -1 if the serial number is not present.
+     */
+    int find(BigInteger serialNumber)
+    {
+        int pos = Arrays.binarySearch(serials, serialNumber);
+
+        if (pos < 0)
+        {
+            return -1;
+        }
+
+        while (pos > 0 && serials[pos - 1].equals(serialNumber))
+        {
+            pos--;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Return the position of the next entry with the same serial number as the one at pos.
+     *
+     * @return the position of the next entry, -1 if there are no more.
+     */
+    int next(int pos)
+    {
+        if (pos + 1 < serials.length && serials[pos + 1].equals(serials[pos]))
+        {
+            return pos + 1;
+        }
+
+        return -1;
+    }
+
+    TBSCertList.CRLEntry getEntry(int pos)
+    {
+        return entries[pos];
+    }
+
+    /**
+     * Return the certificate issuer set by the entries preceding this one, null if there is none.
+     */
+    X500Name getPreviousIssuer(int pos)
+    {
+        return (previousIssuers != null) ? previousIssuers[pos] : null;
+    }
+
+    /**
+     * Return the certificate issuer in effect for this entry, null if it is the CRL issuer.
+     */
+    X500Name getIssuer(int pos)
+    {
+        return (issuers != null) ? issuers[pos] : null;
+    }
+
+    private static class Slot
+    {
+        final BigInteger serial;
+        final TBSCertList.CRLEntry entry;
+        final X500Name previousIssuer;
+        final X500Name issuer;
+
+        Slot(BigInteger serial, TBSCertList.CRLEntry entry, X500Name previousIssuer, X500Name issuer)
+        {
+            this.serial = serial;
+            this.entry = entry;
+            this.previousIssuer = previousIssuer;
+            this.issuer = issuer;
+        }
+    }
+}
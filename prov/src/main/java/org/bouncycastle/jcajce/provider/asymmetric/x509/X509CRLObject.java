@@ -66,6 +66,7 @@
     private boolean isIndirect;
     private boolean isHashCodeSet = false;
     private int     hashCodeValue;
+    private volatile CRLEntryIndex entryIndex;
 
     static boolean isIndirectCRL(X509CRL crl)
         throws CRLException
@@ -356,30 +357,31 @@ private Set loadCRLEntries()
 
     public X509CRLEntry getRevokedCertificate(BigInteger serialNumber)
     {
-        Enumeration certs = c.getRevokedCertificateEnumeration();
+        CRLEntryIndex index = getEntryIndex();
+        int pos = index.find(serialNumber);
 
-        X500Name previousCertificateIssuer = null; // the issuer
-        while (certs.hasMoreElements())
+        if (pos < 0)
         {
-            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)certs.nextElement();
+            return null;
+        }
 
-            if (serialNumber.equals(entry.getUserCertificate().getValue()))
-            {
-                return new X509CRLEntryObject(entry, isIndirect, previousCertificateIssuer);
-            }
+        return new X509CRLEntryObject(index.getEntry(pos), isIndirect, index.getPreviousIssuer(pos));
+    }
 
-            if (isIndirect && entry.hasExtensions())
-            {
-                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+    /*
+     * The index is built on first use - a race just means it may be built more than once.
+     */
+    private CRLEntryIndex getEntryIndex()
+    {
+        CRLEntryIndex index = entryIndex;
 
-                if (currentCaName != null)
-                {
-                    previousCertificateIssuer = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
-                }
-            }
+        if (index == null)
+        {
+            index = new CRLEntryIndex(c, isIndirect);
+            entryIndex = index;
         }
 
-        return null;
+        return index;
     }
 
     public Set getRevokedCertificates()
@@ -578,55 +580,45 @@ public boolean isRevoked(Certificate cert)
             throw new IllegalArgumentException("X.509 CRL used with non X.509 Cert");
         }
 
-        Enumeration certs = c.getRevokedCertificateEnumeration();
-
-        X500Name caName = c.getIssuer();
+        CRLEntryIndex index = getEntryIndex();
+        int pos = index.find(((X509Certificate)cert).getSerialNumber());
 
-        if (certs.hasMoreElements())
+        if (pos < 0)
         {
-            BigInteger serial = ((X509Certificate)cert).getSerialNumber();
-
-            while (certs.hasMoreElements())
-            {
-                TBSCertList.CRLEntry entry = TBSCertList.CRLEntry.getInstance(certs.nextElement());
-
-                if (isIndirect && entry.hasExtensions())
-                {
-                    Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+            return false;
+        }
 
-                    if (currentCaName != null)
-                    {
-                        caName = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
-                    }
-                }
+        X500Name issuer;
 
-                if (entry.getUserCertificate().getValue().equals(serial))
-                {
-                    X500Name issuer;
+        if (cert instanceof  X509Certificate)
+        {
+            issuer = X500Name.getInstance(((X509Certificate)cert).getIssuerX500Principal().getEncoded());
+        }
+        else
+        {
+            try
+            {
+                issuer = org.bouncycastle.asn1.x509.Certificate.getInstance(cert.getEncoded()).getIssuer();
+            }
+            catch (CertificateEncodingException e)
+            {
+                throw new IllegalArgumentException("Cannot process certificate: " + e.getMessage());
+            }
+        }
 
-                    if (cert instanceof  X509Certificate)
-                    {
-                        issuer = X500Name.getInstance(((X509Certificate)cert).getIssuerX500Principal().getEncoded());
-                    }
-                    else
-                    {
-                        try
-                        {
-                            issuer = org.bouncycastle.asn1.x509.Certificate.getInstance(cert.getEncoded()).getIssuer();
-                        }
-                        catch (CertificateEncodingException e)
-                        {
-                            throw new IllegalArgumentException("Cannot process certificate: " + e.getMessage());
-                        }
-                    }
+        // on an indirect CRL the same serial number may appear for more than one issuer
+        for (; pos >= 0; pos = index.next(pos))
+        {
+            X500Name caName = index.getIssuer(pos);
 
-                    if (!caName.equals(issuer))
-                    {
-                        return false;
-                    }
+            if (caName == null)
+            {
+                caName = c.getIssuer();
+            }
 
-                    return true;
-                }
+            if (caName.equals(issuer))
+            {
+                return true;
             }
         }
 
@@ -164,6 +164,7 @@ private static String getPublicKeyAlg(ASN1ObjectIdentifier oid)
 
     private AlgorithmIdentifier hmacAlgorithm;
     private KeyDerivationFunc hmacPkbdAlgorithm;
+    private ScryptConfig scryptConfig;
     private AlgorithmIdentifier signatureAlgorithm;
     private Date creationDate;
     private Date lastModifiedDate;
@@ -742,7 +743,9 @@ else if (keySizeInBytes == -1)
             }
             return SCrypt.generate(Arrays.concatenate(encPassword, differentiator), params.getSalt(),
                 params.getCostParameter().intValue(), params.getBlockSize().intValue(),
-                params.getBlockSize().intValue(), keySizeInBytes);
+                params.getBlockSize().intValue(), keySizeInBytes,
+                (scryptConfig != null) ? scryptConfig.getExecutor() : null,
+                (scryptConfig != null) ? scryptConfig.getMemoryPool() : null);
         }
         else if (pbkdAlgorithm.getAlgorithm().equals(PKCSObjectIdentifiers.id_PBKDF2))
         {
@@ -1449,6 +1452,9 @@ private KeyDerivationFunc generatePkbdAlgorithmIdentifier(PBKDFConfig pbkdfConfi
         {
             ScryptConfig scryptConfig = (ScryptConfig)pbkdfConfig;
 
+            // remember the config so key derivation can use its executor and memory pool
+            this.scryptConfig = scryptConfig;
+
             byte[] pbkdSalt = new byte[scryptConfig.getSaltLength()];
             getDefaultSecureRandom().nextBytes(pbkdSalt);
 
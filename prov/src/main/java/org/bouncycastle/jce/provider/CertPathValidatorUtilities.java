@@ -69,6 +69,7 @@
 import org.bouncycastle.jcajce.PKIXCertStore;
 import org.bouncycastle.jcajce.PKIXCertStoreSelector;
 import org.bouncycastle.jcajce.PKIXExtendedParameters;
+import org.bouncycastle.jcajce.PKIXValidationCache;
 import org.bouncycastle.jcajce.util.JcaJceHelper;
 import org.bouncycastle.jce.exception.ExtCertPathValidatorException;
 import org.bouncycastle.util.Selector;
@@ -157,6 +158,16 @@ protected static TrustAnchor findTrustAnchor(
         Set trustAnchors,
         String sigProvider)
         throws AnnotatedException
+    {
+        return findTrustAnchor(cert, trustAnchors, sigProvider, null);
+    }
+
+    static TrustAnchor findTrustAnchor(
+        X509Certificate cert,
+        Set trustAnchors,
+        String sigProvider,
+        PKIXValidationCache validationCache)
+        throws AnnotatedException
     {
         TrustAnchor trust = null;
         PublicKey trustPublicKey = null;
@@ -218,7 +229,7 @@ else if (trust.getCAName() != null
             {
                 try
                 {
-                    verifyX509Certificate(cert, trustPublicKey, sigProvider);
+                    verifyX509Certificate(cert, trustPublicKey, sigProvider, validationCache);
                 }
                 catch (Exception ex)
                 {
@@ -1351,6 +1362,22 @@ protected static void verifyX509Certificate(X509Certificate cert, PublicKey publ
         }
     }
 
+    static void verifyX509Certificate(X509Certificate cert, PublicKey publicKey,
+                                      String sigProvider, PKIXValidationCache validationCache)
+        throws GeneralSecurityException
+    {
+        if (validationCache == null)
+        {
+            verifyX509Certificate(cert, publicKey, sigProvider);
+        }
+        else if (!validationCache.isSignatureVerified(publicKey, cert, sigProvider))
+        {
+            verifyX509Certificate(cert, publicKey, sigProvider);
+
+            validationCache.addVerifiedSignature(publicKey, cert, sigProvider);
+        }
+    }
+
     static void checkCRLsNotEmpty(Set crls, Object cert)
         throws AnnotatedException
     {
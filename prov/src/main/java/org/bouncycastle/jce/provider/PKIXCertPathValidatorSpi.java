@@ -28,6 +28,7 @@
 import org.bouncycastle.asn1.x509.TBSCertificate;
 import org.bouncycastle.jcajce.PKIXExtendedBuilderParameters;
 import org.bouncycastle.jcajce.PKIXExtendedParameters;
+import org.bouncycastle.jcajce.PKIXValidationCache;
 import org.bouncycastle.jcajce.util.BCJcaJceHelper;
 import org.bouncycastle.jcajce.util.JcaJceHelper;
 import org.bouncycastle.jce.exception.ExtCertPathValidatorException;
@@ -101,6 +102,16 @@ else if (params instanceof PKIXExtendedParameters)
             throw new CertPathValidatorException("Certification path is empty.", null, certPath, -1);
         }
 
+        PKIXValidationCache validationCache = paramsPKIX.getValidationCache();
+        if (validationCache != null)
+        {
+            PKIXCertPathValidatorResult result = validationCache.getValidatedPath(certPath, paramsPKIX);
+            if (result != null)
+            {
+                return result;
+            }
+        }
+
         //
         // (b)
         //
@@ -118,7 +129,7 @@ else if (params instanceof PKIXExtendedParameters)
         try
         {
             trust = CertPathValidatorUtilities.findTrustAnchor((X509Certificate) certs.get(certs.size() - 1),
-                    paramsPKIX.getTrustAnchors(), paramsPKIX.getSigProvider());
+                    paramsPKIX.getTrustAnchors(), paramsPKIX.getSigProvider(), validationCache);
 
             if (trust == null)
             {
@@ -466,7 +477,14 @@ else if (params instanceof PKIXExtendedParameters)
 
         if ((explicitPolicy > 0) || (intersection != null))
         {
-            return new PKIXCertPathValidatorResult(trust, intersection, cert.getPublicKey());
+            PKIXCertPathValidatorResult result = new PKIXCertPathValidatorResult(trust, intersection, cert.getPublicKey());
+
+            if (validationCache != null)
+            {
+                validationCache.addValidatedPath(certPath, paramsPKIX, result);
+            }
+
+            return result;
         }
 
         throw new CertPathValidatorException("Path processing failed on policy.", null, certPath, index);
@@ -1498,7 +1498,7 @@ protected static void processCertA(
                 // (a) (1)
                 //
                 CertPathValidatorUtilities.verifyX509Certificate(cert, workingPublicKey,
-                    paramsPKIX.getSigProvider());
+                    paramsPKIX.getSigProvider(), paramsPKIX.getValidationCache());
             }
             catch (GeneralSecurityException e)
             {
@@ -76,6 +76,8 @@
 import org.bouncycastle.asn1.x509.X509CertificateStructure;
 import org.bouncycastle.asn1.x509.X509Extension;
 import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.jcajce.PKIXExtendedParameters;
+import org.bouncycastle.jcajce.PKIXValidationCache;
 import org.bouncycastle.jce.X509Principal;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.Arrays;
@@ -484,6 +486,7 @@ public void performTest()
         checkCircProcessing();
         checkPolicyProcessingAtDomainMatch();
         validateWithExtendedKeyUsage();
+        checkValidationCache();
         testEmptyPath();
         checkInvalidCertPath();
     }
@@ -527,6 +530,88 @@ private void validateWithExtendedKeyUsage()
         PKIXCertPathValidatorResult result = (PKIXCertPathValidatorResult)cpv.validate(cp, param);
     }
 
+    private void checkValidationCache()
+        throws Exception
+    {
+        CertificateFactory cf = CertificateFactory.getInstance("X.509", "BC");
+
+        X509Certificate rootCert = (X509Certificate)cf.generateCertificate(new ByteArrayInputStream(extTrust));
+        X509Certificate interCert = (X509Certificate)cf.generateCertificate(new ByteArrayInputStream(extCA));
+        X509Certificate finalCert = (X509Certificate)cf.generateCertificate(new ByteArrayInputStream(extEE));
+
+        List certchain = new ArrayList();
+        certchain.add(finalCert);
+        certchain.add(interCert);
+        CertPath cp = cf.generateCertPath(certchain);
+        Set trust = new HashSet();
+        trust.add(new TrustAnchor(rootCert, null));
+
+        PKIXValidationCache cache = new PKIXValidationCache(100, 60 * 1000);
+        CertPathValidator cpv = CertPathValidator.getInstance("PKIX", "BC");
+        PKIXParameters param = new PKIXParameters(trust);
+        param.setDate(new Date(rootCert.getNotBefore().getTime() + 60 * 60 * 1000));
+        param.setRevocationEnabled(false);
+
+        PKIXExtendedParameters extParam = new PKIXExtendedParameters.Builder(param).setValidationCache(cache).build();
+
+        PKIXCertPathValidatorResult result = (PKIXCertPathValidatorResult)cpv.validate(cp, extParam);
+
+        // two signatures and the path
+        isEquals(3, cache.size());
+        isTrue(result == cpv.validate(cp, extParam));
+
+        // a trust anchor for the same certificate, but a different object, still matches
+        trust = new HashSet();
+        trust.add(new TrustAnchor((X509Certificate)cf.generateCertificate(new ByteArrayInputStream(extTrust)), null));
+        param.setTrustAnchors(trust);
+        isTrue(result == cpv.validate(cp, new PKIXExtendedParameters.Builder(param).setValidationCache(cache).build()));
+
+        // expired certificates must not be accepted
+        param.setDate(new Date(finalCert.getNotAfter().getTime() + 1000));
+        try
+        {
+            cpv.validate(cp, new PKIXExtendedParameters.Builder(param).setValidationCache(cache).build());
+            fail("expired path validated from cache");
+        }
+        catch (CertPathValidatorException e)
+        {
+            isTrue(e.getMessage().startsWith("Could not validate certificate: certificate expired"));
+        }
+
+        // nor must paths to an anchor that is no longer trusted
+        trust = new HashSet();
+        trust.add(new TrustAnchor((X509Certificate)cf.generateCertificate(new ByteArrayInputStream(CertPathTest.rootCertBin)), null));
+        param.setTrustAnchors(trust);
+        param.setDate(new Date(rootCert.getNotBefore().getTime() + 60 * 60 * 1000));
+        try
+        {
+            cpv.validate(cp, new PKIXExtendedParameters.Builder(param).setValidationCache(cache).build());
+            fail("path validated from cache with wrong trust anchor");
+        }
+        catch (CertPathValidatorException e)
+        {
+            isTrue(e.getMessage().startsWith("Trust anchor for certification path not found."));
+        }
+
+        // with checkers present the path is validated again, but the signature results are reused
+        cache.clear();
+        trust = new HashSet();
+        trust.add(new TrustAnchor(rootCert, null));
+        param.setTrustAnchors(trust);
+
+        cpv.validate(cp, new PKIXExtendedParameters.Builder(param).setValidationCache(cache).build());
+        isEquals(3, cache.size());
+
+        MyChecker checker = new MyChecker();
+        int count = checker.getCount();
+        param.addCertPathChecker(checker);
+        PKIXCertPathValidatorResult checkedResult = (PKIXCertPathValidatorResult)cpv.validate(cp, new PKIXExtendedParameters.Builder(param).setValidationCache(cache).build());
+
+        isTrue(checkedResult != result);
+        isEquals(count + 2, checker.getCount());
+        isEquals(3, cache.size());
+    }
+
     // invalid EE certificate
     static byte[] extInvEE = Base64.decode("MIICJjCCAY+gAwIBAAIGAV3Y0TnDMA0GCSqGSIb3DQEBCwUAMBExDzANBgNVBAMMBktQMSBDQTAeFw0xNzA4MTIyMzM5MzJaFw0xNzA4MTMwMDA5MzdaMBExDzANBgNVBAMMBktQMSBFRTCBnzANBgkqhkiG9w0BAQEFAAOBjQAwgYkCgYEAuOcqkp2+HBCuwRDwfR7kkUYXMdhScDG8m6A3Af6hpG86nAimNoVIQe3REaQ6IO0XSdd13rjjRwIXsUFLsrQhQJczF5JeyWXcaYqZyNNbUwFuLeSqOsLS63ltjOJYqOJRxY03Cr//baGWvxGXcRvHoZkg1nEXPcMZhgsy/9JxVoUCAwEAAaOBiDCBhTBABgNVHSMEOTA3gBSPMqzNmTdyjQmr9W1TSDW1h0ZzFaEXpBUwEzERMA8GA1UEAwwIS1AxIFJPT1SCBgFd2NE5wjAdBgNVHQ4EFgQUC1rtYrQdQkA3CLTeV1kbVIdysKQwEgYDVR0TAQH/BAgwBgEB/wIBADAOBgNVHQ8BAf8EBAMCAYYwDQYJKoZIhvcNAQELBQADgYEAGr841G7E84Ow9+fFGW1zzXeTRfxsafdT/bHXCS75bjF2YPitKLcRLkm92VPxANRXIpmt++3iU/oduWqkLsfXnfTGmCwtjj/XrCvkCBQ4GONwmegltJEThMud0XOEB1UN6tfTINfLYpbyfOdE/wLy4Rte0t43aOTTOBo+/SapYOE=");
     static byte[] extInvCA = Base64.decode("MIICKDCCAZGgAwIBAgIGAV3Y0TnCMA0GCSqGSIb3DQEBCwUAMBMxETAPBgNVBAMMCEtQMSBST09UMB4XDTE3MDgxMjIzMzkzMloXDTE3MDgxMzAwMDkzN1owETEPMA0GA1UEAwwGS1AxIENBMIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQC7Qd/cTP5S0GoPcomcZU5QlJcb1uWydvmQx3U6p4/KOZBhk6JXQeSzT8QZ/gd+9vfosA62SEX+dq7MvxxzeERxdIsVU0zZ1TrYNxlQjnYXiYRVXBczowsxseQ9oSGD94Y4buhrMAltmIHijdzGRVMY41FZmWqNXqsEwQXj6ULX+QIDAQABo4GIMIGFMEAGA1UdIwQ5MDeAFAbfd2S3aiwFww3/0ocLa6ULQjJMoRekFTATMREwDwYDVQQDDAhLUDEgUk9PVIIGAV3Y0TnBMB0GA1UdDgQWBBSPMqzNmTdyjQmr9W1TSDW1h0ZzFTASBgNVHRMBAf8ECDAGAQH/AgEAMA4GA1UdDwEB/wQEAwIBhjANBgkqhkiG9w0BAQsFAAOBgQCnmxQYy6LnvRSMxkTsGIQa4LB51O8skbWc4KYVDfcvTYQuvn6rE/ZoYf82jKXJzXksffanfjn/b38l4l8hwAcBQ8we9yjCkjO8OVDUlYiSGYUhH2ZJrl2+K2Z6wpakZ9Lz3pZ/PSS1FIsVd4I1jkexAdAm1+uMlfWXVt/uTZx98w==");
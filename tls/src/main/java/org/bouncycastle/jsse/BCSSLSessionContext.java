@@ -0,0 +1,42 @@
+package org.bouncycastle.jsse;
+
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * A BCJSSE-specific extension of {@link SSLSessionContext}, providing access to statistics for the
+ * session cache. The session contexts returned by the BCJSSE provider's SSLContext implement this
+ * interface.
+ */
+public interface BCSSLSessionContext
+    extends SSLSessionContext
+{
+    /**
+     * Returns the number of session lookups that found a valid session.
+     *
+     * @return The number of cache hits.
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of session lookups that did not find a valid session.
+     *
+     * @return The number of cache misses.
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of sessions removed from the cache because the cache was full, the
+     * session had timed out or been invalidated, or the session had been garbage collected.
+     *
+     * @return The number of cache evictions.
+     */
+    long getEvictionCount();
+
+    /**
+     * Returns the number of sessions currently held in the cache. This may include sessions that
+     * have timed out but have not yet been removed.
+     *
+     * @return The number of cached sessions.
+     */
+    int getSessionCount();
+}
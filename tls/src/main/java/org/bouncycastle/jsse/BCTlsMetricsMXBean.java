@@ -0,0 +1,89 @@
+package org.bouncycastle.jsse;
+
+import java.util.Map;
+
+/**
+ * Management interface for the TLS metrics collected by the BCJSSE provider, for all connections in
+ * the JVM. Collection is enabled by setting the system property "org.bouncycastle.jsse.metrics" to
+ * "true", in which case the metrics are registered with the platform MBean server under the name
+ * "org.bouncycastle.jsse:type=TlsMetrics".
+ * <p>
+ * Histograms are arrays of counts, where bucket 0 counts values of 0 and bucket i (for i &gt; 0)
+ * counts values from 2<sup>i-1</sup> up to (but not including) 2<sup>i</sup>; the last bucket also
+ * counts any larger values. Times are in microseconds, sizes in bytes.
+ * </p>
+ */
+public interface BCTlsMetricsMXBean
+{
+    /**
+     * @return the number of completed handshakes that established a new session.
+     */
+    long getFullHandshakes();
+
+    /**
+     * @return the number of completed handshakes that resumed an existing session.
+     */
+    long getResumedHandshakes();
+
+    /**
+     * @return the number of completed handshakes, by negotiated cipher suite.
+     */
+    Map<String, Long> getHandshakesByCipherSuite();
+
+    /**
+     * @return a histogram of the time taken by completed handshakes, in microseconds.
+     */
+    long[] getHandshakeTimeHistogram();
+
+    /**
+     * @return the number of received handshake messages processed, by handshake message type.
+     */
+    Map<String, Long> getHandshakeMessageCounts();
+
+    /**
+     * @return the total time spent processing received handshake messages, in microseconds, by
+     *         handshake message type.
+     */
+    Map<String, Long> getHandshakeMessageTimes();
+
+    /**
+     * @return histograms of the time spent processing received handshake messages, in
+     *         microseconds, by handshake message type.
+     */
+    Map<String, long[]> getHandshakeMessageTimeHistograms();
+
+    /**
+     * @return the number of alerts sent, by alert level and description.
+     */
+    Map<String, Long> getAlertsRaised();
+
+    /**
+     * @return the number of alerts received, by alert level and description.
+     */
+    Map<String, Long> getAlertsReceived();
+
+    /**
+     * @return the number of application data bytes encrypted, by cipher suite.
+     */
+    Map<String, Long> getApplicationBytesSent();
+
+    /**
+     * @return the number of application data bytes decrypted, by cipher suite.
+     */
+    Map<String, Long> getApplicationBytesReceived();
+
+    /**
+     * @return a histogram of the plaintext length of records sent.
+     */
+    long[] getRecordSizeHistogramSent();
+
+    /**
+     * @return a histogram of the plaintext length of records received.
+     */
+    long[] getRecordSizeHistogramReceived();
+
+    /**
+     * Reset all counters and histograms to zero.
+     */
+    void reset();
+}
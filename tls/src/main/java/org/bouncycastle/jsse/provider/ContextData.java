@@ -1,8 +1,14 @@
 package org.bouncycastle.jsse.provider;
 
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.net.ssl.X509ExtendedKeyManager;
 
 import org.bouncycastle.jsse.BCX509ExtendedTrustManager;
+import org.bouncycastle.tls.Certificate;
 import org.bouncycastle.tls.crypto.TlsCrypto;
 
 final class ContextData
@@ -13,6 +19,21 @@
     private final ProvSSLSessionContext clientSessionContext;
     private final ProvSSLSessionContext serverSessionContext;
 
+    /*
+     * The Certificate messages for recently used local chains. A Certificate caches its own
+     * encoding, so reusing it saves converting and re-encoding the chain for every handshake.
+     */
+    private static final int MAX_CACHED_CHAINS = 16;
+
+    private final Map<X509Certificate, CachedChain> certificateMessages = new LinkedHashMap<X509Certificate, CachedChain>(
+        MAX_CACHED_CHAINS, 0.75f, true)
+    {
+        protected boolean removeEldestEntry(Map.Entry<X509Certificate, CachedChain> eldest)
+        {
+            return size() > MAX_CACHED_CHAINS;
+        }
+    };
+
     ContextData(TlsCrypto crypto, X509ExtendedKeyManager x509KeyManager, BCX509ExtendedTrustManager x509TrustManager,
         ProvSSLSessionContext clientSessionContext, ProvSSLSessionContext serverSessionContext)
     {
@@ -23,6 +44,32 @@
         this.serverSessionContext = serverSessionContext;
     }
     
+    Certificate getCertificateMessage(X509Certificate[] chain) throws IOException
+    {
+        if (null == chain || chain.length < 1)
+        {
+            return Certificate.EMPTY_CHAIN;
+        }
+
+        synchronized (certificateMessages)
+        {
+            CachedChain cached = certificateMessages.get(chain[0]);
+            if (null != cached && cached.matches(chain))
+            {
+                return cached.certificate;
+            }
+        }
+
+        Certificate certificate = JsseUtils.getCertificateMessage(crypto, chain);
+
+        synchronized (certificateMessages)
+        {
+            certificateMessages.put(chain[0], new CachedChain(chain.clone(), certificate));
+        }
+
+        return certificate;
+    }
+
     TlsCrypto getCrypto()
     {
         return crypto;
@@ -47,4 +94,32 @@ BCX509ExtendedTrustManager getX509TrustManager()
     {
         return x509TrustManager;
     }
+
+    private static final class CachedChain
+    {
+        final X509Certificate[] chain;
+        final Certificate certificate;
+
+        CachedChain(X509Certificate[] chain, Certificate certificate)
+        {
+            this.chain = chain;
+            this.certificate = certificate;
+        }
+
+        boolean matches(X509Certificate[] other)
+        {
+            if (other.length != chain.length)
+            {
+                return false;
+            }
+            for (int i = 0; i < chain.length; ++i)
+            {
+                if (other[i] != chain[i] && !other[i].equals(chain[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,152 @@
+package org.bouncycastle.jsse.provider;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.SignatureAndHashAlgorithm;
+import org.bouncycastle.tls.TlsCredentialedAsyncDecryptor;
+import org.bouncycastle.tls.TlsCredentialedAsyncSigner;
+import org.bouncycastle.tls.TlsCredentialedDecryptor;
+import org.bouncycastle.tls.TlsCredentialedSigner;
+import org.bouncycastle.tls.TlsCredentials;
+import org.bouncycastle.tls.TlsFatalAlert;
+import org.bouncycastle.tls.TlsFuture;
+import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.TlsStreamSigner;
+
+/**
+ * Turns private-key operations into SSLEngine delegated tasks, so they run on whichever thread the
+ * application chooses instead of inside wrap/unwrap.
+ */
+class ProvDelegatedTasks
+{
+    private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+    synchronized Runnable poll()
+    {
+        return tasks.isEmpty() ? null : tasks.removeFirst();
+    }
+
+    TlsCredentials delegate(TlsCredentials credentials)
+    {
+        if (credentials instanceof TlsCredentialedSigner)
+        {
+            return new DelegatedSigner((TlsCredentialedSigner)credentials);
+        }
+        if (credentials instanceof TlsCredentialedDecryptor)
+        {
+            return new DelegatedDecryptor((TlsCredentialedDecryptor)credentials);
+        }
+        return credentials;
+    }
+
+    private synchronized void add(Runnable task)
+    {
+        tasks.addLast(task);
+    }
+
+    private static abstract class Operation
+        implements Runnable
+    {
+        final TlsFuture future = new TlsFuture();
+
+        public void run()
+        {
+            try
+            {
+                future.complete(perform());
+            }
+            catch (IOException e)
+            {
+                future.fail(e);
+            }
+            catch (RuntimeException e)
+            {
+                future.fail(new TlsFatalAlert(AlertDescription.internal_error, e));
+            }
+        }
+
+        abstract Object perform() throws IOException;
+    }
+
+    private class DelegatedSigner
+        implements TlsCredentialedAsyncSigner
+    {
+        private final TlsCredentialedSigner signer;
+
+        DelegatedSigner(TlsCredentialedSigner signer)
+        {
+            this.signer = signer;
+        }
+
+        public TlsFuture generateRawSignatureAsync(final byte[] hash)
+        {
+            Operation operation = new Operation()
+            {
+                Object perform() throws IOException
+                {
+                    return signer.generateRawSignature(hash);
+                }
+            };
+            add(operation);
+            return operation.future;
+        }
+
+        public byte[] generateRawSignature(byte[] hash) throws IOException
+        {
+            return signer.generateRawSignature(hash);
+        }
+
+        public Certificate getCertificate()
+        {
+            return signer.getCertificate();
+        }
+
+        public SignatureAndHashAlgorithm getSignatureAndHashAlgorithm()
+        {
+            return signer.getSignatureAndHashAlgorithm();
+        }
+
+        public TlsStreamSigner getStreamSigner() throws IOException
+        {
+            return signer.getStreamSigner();
+        }
+    }
+
+    private class DelegatedDecryptor
+        implements TlsCredentialedAsyncDecryptor
+    {
+        private final TlsCredentialedDecryptor decryptor;
+
+        DelegatedDecryptor(TlsCredentialedDecryptor decryptor)
+        {
+            this.decryptor = decryptor;
+        }
+
+        public TlsFuture decryptAsync(final TlsCryptoParameters cryptoParams, final byte[] ciphertext)
+        {
+            Operation operation = new Operation()
+            {
+                Object perform() throws IOException
+                {
+                    return decryptor.decrypt(cryptoParams, ciphertext);
+                }
+            };
+            add(operation);
+            return operation.future;
+        }
+
+        public TlsSecret decrypt(TlsCryptoParameters cryptoParams, byte[] ciphertext) throws IOException
+        {
+            return decryptor.decrypt(cryptoParams, ciphertext);
+        }
+
+        public Certificate getCertificate()
+        {
+            return decryptor.getCertificate();
+        }
+    }
+}
@@ -8,6 +8,7 @@
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -58,12 +59,20 @@
     private static final List<String> DEFAULT_CIPHERSUITE_LIST = createDefaultCipherSuiteList(SUPPORTED_CIPHERSUITE_MAP.keySet());
     private static final List<String> DEFAULT_CIPHERSUITE_LIST_FIPS = createDefaultCipherSuiteListFips(DEFAULT_CIPHERSUITE_LIST);
 
-    private static final String[] DEFAULT_PROTOCOLS = new String[]{ "TLSv1.2" };
+    // NOTE: BCJSSE servers stay at TLS 1.2 (see ProvTlsServer), so they don't enable TLS 1.3 by default
+    private static final List<String> DEFAULT_CIPHERSUITE_LIST_SERVER = createCipherSuiteListServer(DEFAULT_CIPHERSUITE_LIST);
+    private static final List<String> DEFAULT_CIPHERSUITE_LIST_SERVER_FIPS = createCipherSuiteListServer(DEFAULT_CIPHERSUITE_LIST_FIPS);
+
+    private static final String[] DEFAULT_PROTOCOLS_CLIENT = new String[]{ "TLSv1.3", "TLSv1.2" };
+    private static final String[] DEFAULT_PROTOCOLS_SERVER = new String[]{ "TLSv1.2" };
 
     private static List<String> createDefaultCipherSuiteList(Set<String> supportedCipherSuiteSet)
     {
         ArrayList<String> cs = new ArrayList<String>();
 
+        cs.add("TLS_CHACHA20_POLY1305_SHA256");
+        cs.add("TLS_AES_256_GCM_SHA384");
+        cs.add("TLS_AES_128_GCM_SHA256");
         cs.add("TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256");
         cs.add("TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384");
         cs.add("TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256");
@@ -90,6 +99,14 @@ private static List<String> createDefaultCipherSuiteList(Set<String> supportedCi
         return Collections.unmodifiableList(cs);
     }
 
+    private static List<String> createCipherSuiteListServer(Collection<String> cipherSuites)
+    {
+        ArrayList<String> cs = new ArrayList<String>(cipherSuites);
+        removeTLSv13CipherSuites(cs);
+        cs.trimToSize();
+        return Collections.unmodifiableList(cs);
+    }
+
     private static List<String> createDefaultCipherSuiteListFips(List<String> defaultCipherSuiteList)
     {
         ArrayList<String> cs = new ArrayList<String>(defaultCipherSuiteList);
@@ -113,6 +130,12 @@ public Integer put(String key, Integer value)
             }
         };
 
+        cs.put("TLS_AES_128_CCM_8_SHA256", CipherSuite.TLS_AES_128_CCM_8_SHA256);
+        cs.put("TLS_AES_128_CCM_SHA256", CipherSuite.TLS_AES_128_CCM_SHA256);
+        cs.put("TLS_AES_128_GCM_SHA256", CipherSuite.TLS_AES_128_GCM_SHA256);
+        cs.put("TLS_AES_256_GCM_SHA384", CipherSuite.TLS_AES_256_GCM_SHA384);
+        cs.put("TLS_CHACHA20_POLY1305_SHA256", CipherSuite.TLS_CHACHA20_POLY1305_SHA256);
+
         cs.put("TLS_DHE_DSS_WITH_3DES_EDE_CBC_SHA", CipherSuite.TLS_DHE_DSS_WITH_3DES_EDE_CBC_SHA);
         cs.put("TLS_DHE_DSS_WITH_AES_128_CBC_SHA", CipherSuite.TLS_DHE_DSS_WITH_AES_128_CBC_SHA);
         cs.put("TLS_DHE_DSS_WITH_AES_128_CBC_SHA256", CipherSuite.TLS_DHE_DSS_WITH_AES_128_CBC_SHA256);
@@ -181,16 +204,30 @@ private static Map<String, Integer> createSupportedCipherSuiteMapFips(Map<String
         return Collections.unmodifiableMap(cs);
     }
 
+    private static void removeTLSv13CipherSuites(Collection<String> cipherSuites)
+    {
+        Iterator<String> it = cipherSuites.iterator();
+        while (it.hasNext())
+        {
+            if (TlsUtils.isTLSv13(TlsUtils.getMinimumVersion(SUPPORTED_CIPHERSUITE_MAP.get(it.next()))))
+            {
+                it.remove();
+            }
+        }
+    }
+
     private static Map<String, ProtocolVersion> createSupportedProtocols()
     {
         Map<String, ProtocolVersion> ps = new HashMap<String, ProtocolVersion>();
         ps.put("TLSv1", ProtocolVersion.TLSv10);
         ps.put("TLSv1.1", ProtocolVersion.TLSv11);
         ps.put("TLSv1.2", ProtocolVersion.TLSv12);
+        ps.put("TLSv1.3", ProtocolVersion.TLSv13);
         return Collections.unmodifiableMap(ps);
     }
 
-    private static String[] getDefaultProtocols(String[] specifiedProtocols, String propertyName)
+    private static String[] getDefaultProtocols(String[] specifiedProtocols, String propertyName,
+        String[] defaultProtocols)
     {
         if (specifiedProtocols != null)
         {
@@ -203,17 +240,17 @@ private static String[] getDefaultProtocols(String[] specifiedProtocols, String
             return propertyProtocols;
         }
 
-        return DEFAULT_PROTOCOLS;
+        return defaultProtocols;
     }
 
     private static String[] getDefaultProtocolsClient(String[] specifiedProtocols)
     {
-        return getDefaultProtocols(specifiedProtocols, PROPERTY_CLIENT_PROTOCOLS);
+        return getDefaultProtocols(specifiedProtocols, PROPERTY_CLIENT_PROTOCOLS, DEFAULT_PROTOCOLS_CLIENT);
     }
 
     private static String[] getDefaultProtocolsServer(String[] specifiedProtocols)
     {
-        return getDefaultProtocols(specifiedProtocols, PROPERTY_SERVER_PROTOCOLS);
+        return getDefaultProtocols(specifiedProtocols, PROPERTY_SERVER_PROTOCOLS, DEFAULT_PROTOCOLS_SERVER);
     }
 
     private static String[] getJdkTlsProtocols(String propertyName)
@@ -286,7 +323,9 @@ static TrustManager[] getDefaultTrustManagers() throws Exception
     protected final String[] defaultProtocolsServer;
 
     protected final Map<String, Integer> supportedCipherSuites;
-    protected final String[] defaultCipherSuites;
+    protected final String[] supportedCipherSuitesServer;
+    protected final String[] defaultCipherSuitesClient;
+    protected final String[] defaultCipherSuitesServer;
 
     protected boolean initialized = false;
 
@@ -305,8 +344,10 @@ static TrustManager[] getDefaultTrustManagers() throws Exception
 
         this.supportedCipherSuites = isInFipsMode ? SUPPORTED_CIPHERSUITE_MAP_FIPS : SUPPORTED_CIPHERSUITE_MAP;
 
-        List<String> defaultCipherSuiteList = isInFipsMode ? DEFAULT_CIPHERSUITE_LIST_FIPS : DEFAULT_CIPHERSUITE_LIST;
-        this.defaultCipherSuites = getArray(defaultCipherSuiteList);
+        this.supportedCipherSuitesServer = getArray(createCipherSuiteListServer(supportedCipherSuites.keySet()));
+
+        this.defaultCipherSuitesClient = getArray(isInFipsMode ? DEFAULT_CIPHERSUITE_LIST_FIPS : DEFAULT_CIPHERSUITE_LIST);
+        this.defaultCipherSuitesServer = getArray(isInFipsMode ? DEFAULT_CIPHERSUITE_LIST_SERVER_FIPS : DEFAULT_CIPHERSUITE_LIST_SERVER);
     }
 
     int[] convertCipherSuites(String[] suites)
@@ -345,14 +386,31 @@ String getCipherSuiteString(int suite)
         return null;
     }
 
-    String[] getDefaultCipherSuites()
+    static String getCipherSuiteName(int suite)
     {
-        return defaultCipherSuites.clone();
+        for (Map.Entry<String, Integer> entry : SUPPORTED_CIPHERSUITE_MAP.entrySet())
+        {
+            if (entry.getValue().intValue() == suite)
+            {
+                return entry.getKey();
+            }
+        }
+        return "0x" + Integer.toHexString(0x10000 | suite).substring(1).toUpperCase();
+    }
+
+    String[] getDefaultCipherSuites(boolean isServer)
+    {
+        return getDefaultCipherSuitesArray(isServer).clone();
+    }
+
+    String[] getDefaultCipherSuitesArray(boolean isServer)
+    {
+        return isServer ? defaultCipherSuitesServer : defaultCipherSuitesClient;
     }
 
     ProvSSLParameters getDefaultParameters(boolean isServer)
     {
-        return new ProvSSLParameters(this, defaultCipherSuites, getDefaultProtocols(isServer));
+        return new ProvSSLParameters(this, getDefaultCipherSuitesArray(isServer), getDefaultProtocols(isServer));
     }
 
     String[] getDefaultProtocols(boolean isServer)
@@ -414,6 +472,12 @@ public int compare(ProtocolVersion o1, ProtocolVersion o2)
         return versions.toArray(new ProtocolVersion[versions.size()]);
     }
 
+    boolean isDefaultCipherSuites(String[] cipherSuites)
+    {
+        return cipherSuites == defaultCipherSuitesClient
+            || cipherSuites == defaultCipherSuitesServer;
+    }
+
     boolean isDefaultProtocols(String[] protocols)
     {
         return protocols == getDefaultProtocolsClient()
@@ -422,7 +486,13 @@ boolean isDefaultProtocols(String[] protocols)
 
     String[] getSupportedCipherSuites()
     {
-        return getKeysArray(supportedCipherSuites);
+        // NOTE: The cipher suites supported whichever mode a socket or engine ends up in
+        return getSupportedCipherSuites(true);
+    }
+
+    String[] getSupportedCipherSuites(boolean isServer)
+    {
+        return isServer ? supportedCipherSuitesServer.clone() : getKeysArray(supportedCipherSuites);
     }
 
     String[] getSupportedProtocols()
@@ -467,8 +537,12 @@ boolean isSupportedProtocols(String[] protocols)
         return true;
     }
 
-    void updateDefaultProtocols(ProvSSLParameters sslParameters, boolean isServer)
+    void updateDefaultParameters(ProvSSLParameters sslParameters, boolean isServer)
     {
+        if (isDefaultCipherSuites(sslParameters.getCipherSuitesArray()))
+        {
+            sslParameters.setCipherSuitesArray(getDefaultCipherSuitesArray(isServer));
+        }
         if (isDefaultProtocols(sslParameters.getProtocolsArray()))
         {
             sslParameters.setProtocolsArray(getDefaultProtocols(isServer));
@@ -27,9 +27,9 @@
 
 /*
  * TODO[jsse] Known limitations (relative to SSLEngine javadoc): 1. The wrap() and unwrap() methods
- * are synchronized, so will not execute concurrently with each other. 2. Never delegates tasks i.e.
- * getDelegatedTasks() will always return null; CPU-intensive parts of the handshake will execute
- * during wrap/unwrap calls.
+ * only execute concurrently with each other once the initial handshake is complete. 2. Only the
+ * server's private-key operation is delegated (see getDelegatedTask()); other CPU-intensive parts
+ * of the handshake will execute during wrap/unwrap calls.
  */
 class ProvSSLEngine
     extends SSLEngine
@@ -43,14 +43,30 @@
     protected boolean useClientMode = false;
 
     protected boolean initialHandshakeBegun = false;
-    protected HandshakeStatus handshakeStatus = HandshakeStatus.NOT_HANDSHAKING; 
+    protected volatile HandshakeStatus handshakeStatus = HandshakeStatus.NOT_HANDSHAKING; 
     protected TlsProtocol protocol = null;
     protected ProvTlsPeer protocolPeer = null;
-    protected ProvSSLConnection connection = null;
+    protected volatile ProvSSLConnection connection = null;
     protected ProvSSLSessionBase handshakeSession = null;
 
     protected SSLException deferredException = null;
 
+    /*
+     * Once the initial handshake is complete, wrap() only touches the write side of the protocol,
+     * so wrap() and unwrap() can proceed concurrently under separate locks. unwrap() can still
+     * write records (alerts, or under TLS 1.3 a KeyUpdate sent in reply), but RecordStream
+     * serializes record writes and writes a KeyUpdate and updates the write key as one step.
+     * Until then both locks are held. When both are needed, unwrapLock is always taken first.
+     */
+    private final Object unwrapLock = new Object();
+    private final Object wrapLock = new Object();
+
+    // Staging buffers for non-array ByteBuffers, guarded by unwrapLock and wrapLock respectively
+    private byte[] unwrapBuffer = null;
+    private byte[] wrapBuffer = null;
+
+    private final ProvDelegatedTasks delegatedTasks = new ProvDelegatedTasks();
+
     protected ProvSSLEngine(ProvSSLContextSpi context, ContextData contextData)
     {
         super();
@@ -80,7 +96,22 @@ public ContextData getContextData()
     }
 
     @Override
-    public synchronized void beginHandshake()
+    public void beginHandshake()
+        throws SSLException
+    {
+        synchronized (unwrapLock)
+        {
+            synchronized (wrapLock)
+            {
+                synchronized (this)
+                {
+                    beginHandshakeLocked();
+                }
+            }
+        }
+    }
+
+    private void beginHandshakeLocked()
         throws SSLException
     {
         if (initialHandshakeBegun)
@@ -95,6 +126,7 @@ public synchronized void beginHandshake()
             if (this.useClientMode)
             {
                 TlsClientProtocol clientProtocol = new TlsClientProtocol();
+                ProvTlsMetrics.install(clientProtocol);
                 this.protocol = clientProtocol;
 
                 ProvTlsClient client = new ProvTlsClient(this, sslParameters.copy());
@@ -106,9 +138,10 @@ public synchronized void beginHandshake()
             else
             {
                 TlsServerProtocol serverProtocol = new TlsServerProtocol();
+                ProvTlsMetrics.install(serverProtocol);
                 this.protocol = serverProtocol;
 
-                ProvTlsServer server = new ProvTlsServer(this, sslParameters.copy());
+                ProvTlsServer server = new ProvTlsServer(this, sslParameters.copy(), delegatedTasks);
                 this.protocolPeer = server;
 
                 serverProtocol.accept(server);
@@ -164,31 +197,43 @@ public String chooseServerAlias(String keyType, Principal[] issuers)
     }
 
     @Override
-    public synchronized void closeInbound()
+    public void closeInbound()
         throws SSLException
     {
-        // TODO How to behave when protocol is still null?
-        try
+        synchronized (unwrapLock)
         {
-            protocol.closeInput();
-        }
-        catch (IOException e)
-        {
-            throw new SSLException(e);
+            synchronized (wrapLock)
+            {
+                // TODO How to behave when protocol is still null?
+                try
+                {
+                    protocol.closeInput();
+                }
+                catch (IOException e)
+                {
+                    throw new SSLException(e);
+                }
+            }
         }
     }
 
     @Override
-    public synchronized void closeOutbound()
+    public void closeOutbound()
     {
-        // TODO How to behave when protocol is still null?
-        try
-        {
-            protocol.close();
-        }
-        catch (IOException e)
+        synchronized (unwrapLock)
         {
-           // TODO[logging] 
+            synchronized (wrapLock)
+            {
+                // TODO How to behave when protocol is still null?
+                try
+                {
+                    protocol.close();
+                }
+                catch (IOException e)
+                {
+                   // TODO[logging] 
+                }
+            }
         }
     }
 
@@ -205,10 +250,29 @@ public synchronized BCSSLConnection getConnection()
         return connection;
     }
 
+    /**
+     * While the handshake is suspended for a private-key operation, the handshake status is
+     * NEED_TASK and this returns a task that performs the operation and then resumes the
+     * handshake.
+     */
     @Override
     public synchronized Runnable getDelegatedTask()
     {
-        return null;
+        final Runnable task = delegatedTasks.poll();
+        if (null == task)
+        {
+            return null;
+        }
+
+        return new Runnable()
+        {
+            public void run()
+            {
+                task.run();
+
+                resumeSuspendedHandshake();
+            }
+        };
     }
 
     @Override
@@ -269,7 +333,7 @@ public synchronized SSLParameters getSSLParameters()
     @Override
     public synchronized String[] getSupportedCipherSuites()
     {
-        return context.getSupportedCipherSuites();
+        return context.getSupportedCipherSuites(!useClientMode);
     }
 
     @Override
@@ -347,7 +411,7 @@ public synchronized void setUseClientMode(boolean useClientMode)
 
         if (this.useClientMode != useClientMode)
         {
-            context.updateDefaultProtocols(sslParameters, !useClientMode);
+            context.updateDefaultParameters(sslParameters, !useClientMode);
 
             this.useClientMode = useClientMode;
         }
@@ -360,7 +424,24 @@ public synchronized void setWantClientAuth(boolean want)
     }
 
     @Override
-    public synchronized SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length)
+    public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length)
+        throws SSLException
+    {
+        synchronized (unwrapLock)
+        {
+            if (isInitialHandshakeComplete())
+            {
+                return unwrapLocked(src, dsts, offset, length);
+            }
+
+            synchronized (wrapLock)
+            {
+                return unwrapLocked(src, dsts, offset, length);
+            }
+        }
+    }
+
+    private SSLEngineResult unwrapLocked(ByteBuffer src, ByteBuffer[] dsts, int offset, int length)
         throws SSLException
     {
         // TODO[jsse] Argument checks - see javadoc
@@ -392,11 +473,32 @@ else if (hasInsufficientSpace(dsts, offset, length, preview.getApplicationDataLi
                 }
                 else
                 {
-                    byte[] record = new byte[preview.getRecordSize()];
-                    src.get(record);
+                    int recordSize = preview.getRecordSize();
+                    int position = src.position();
+
+                    /*
+                     * The record is decrypted in place, so if the source has an accessible array we
+                     * can hand it straight to the protocol, otherwise stage it in a reused array.
+                     */
+                    if (src.hasArray())
+                    {
+                        src.position(position + recordSize);
+                        bytesConsumed += recordSize;
+
+                        protocol.offerInput(src.array(), src.arrayOffset() + position, recordSize);
+                    }
+                    else
+                    {
+                        if (unwrapBuffer == null || unwrapBuffer.length < recordSize)
+                        {
+                            unwrapBuffer = new byte[recordSize];
+                        }
 
-                    protocol.offerInput(record);
-                    bytesConsumed += record.length;
+                        src.get(unwrapBuffer, 0, recordSize);
+                        bytesConsumed += recordSize;
+
+                        protocol.offerInput(unwrapBuffer, 0, recordSize);
+                    }
 
                     int appDataAvailable = protocol.getAvailableInputBytes();
                     for (int dstIndex = 0; dstIndex < length && appDataAvailable > 0; ++dstIndex)
@@ -405,12 +507,9 @@ else if (hasInsufficientSpace(dsts, offset, length, preview.getApplicationDataLi
                         int count = Math.min(dst.remaining(), appDataAvailable);
                         if (count > 0)
                         {
-                            byte[] appData = new byte[count];
-                            int numRead = protocol.readInput(appData, 0, count);
+                            int numRead = protocol.readInput(dst, count);
                             assert numRead == count;
-                
-                            dst.put(appData);
-                
+
                             bytesProduced += count;
                             appDataAvailable -= count;
                         }
@@ -459,7 +558,12 @@ else if (hasInsufficientSpace(dsts, offset, length, preview.getApplicationDataLi
         HandshakeStatus resultHandshakeStatus = handshakeStatus;
         if (handshakeStatus == HandshakeStatus.NEED_UNWRAP)
         {
-            if (protocol.getAvailableOutputBytes() > 0)
+            if (protocol.isHandshakeSuspended())
+            {
+                handshakeStatus = HandshakeStatus.NEED_TASK;
+                resultHandshakeStatus = HandshakeStatus.NEED_TASK;
+            }
+            else if (protocol.getAvailableOutputBytes() > 0)
             {
                 handshakeStatus = HandshakeStatus.NEED_WRAP;
                 resultHandshakeStatus = HandshakeStatus.NEED_WRAP;
@@ -484,7 +588,27 @@ else if (protocol.isClosed())
     }
 
     @Override
-    public synchronized SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst)
+    public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst)
+        throws SSLException
+    {
+        if (isInitialHandshakeComplete())
+        {
+            synchronized (wrapLock)
+            {
+                return wrapLocked(srcs, offset, length, dst);
+            }
+        }
+
+        synchronized (unwrapLock)
+        {
+            synchronized (wrapLock)
+            {
+                return wrapLocked(srcs, offset, length, dst);
+            }
+        }
+    }
+
+    private SSLEngineResult wrapLocked(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst)
         throws SSLException
     {
         if (deferredException != null)
@@ -546,11 +670,26 @@ else if (protocol.getAvailableOutputBytes() > 0)
                                 int count = Math.min(src.remaining(), srcLimit);
                                 if (count > 0)
                                 {
-                                    byte[] input = new byte[count];
-                                    src.get(input);
-    
-                                    protocol.writeApplicationData(input, 0, count);
-    
+                                    if (src.hasArray())
+                                    {
+                                        int position = src.position();
+
+                                        protocol.writeApplicationData(src.array(), src.arrayOffset() + position, count);
+
+                                        src.position(position + count);
+                                    }
+                                    else
+                                    {
+                                        if (wrapBuffer == null || wrapBuffer.length < count)
+                                        {
+                                            wrapBuffer = new byte[count];
+                                        }
+
+                                        src.get(wrapBuffer, 0, count);
+
+                                        protocol.writeApplicationData(wrapBuffer, 0, count);
+                                    }
+
                                     bytesConsumed += count;
                                     srcLimit -= count;
                                 }
@@ -575,12 +714,9 @@ else if (protocol.getAvailableOutputBytes() > 0)
             int count = Math.min(dst.remaining(), outputAvailable);
             if (count > 0)
             {
-                byte[] output = new byte[count];
-                int numRead = protocol.readOutput(output, 0, count);
+                int numRead = protocol.readOutput(dst, count);
                 assert numRead == count;
-    
-                dst.put(output);
-    
+
                 bytesProduced += count;
                 outputAvailable -= count;
             }
@@ -642,6 +778,54 @@ public synchronized void notifyHandshakeSession(ProvSSLSessionBase handshakeSess
         this.handshakeSession = handshakeSession;
     }
 
+    private void resumeSuspendedHandshake()
+    {
+        synchronized (unwrapLock)
+        {
+            synchronized (wrapLock)
+            {
+                synchronized (this)
+                {
+                    if (null == protocol || protocol.isClosed() || !protocol.isHandshakeSuspended())
+                    {
+                        return;
+                    }
+
+                    try
+                    {
+                        protocol.resumeSuspendedHandshake();
+                    }
+                    catch (IOException e)
+                    {
+                        // The failure is reported by the next wrap() call, once any alert is flushed
+                        if (this.deferredException == null)
+                        {
+                            this.deferredException = new SSLException(e);
+                        }
+                    }
+
+                    if (protocol.isHandshakeSuspended())
+                    {
+                        // Still NEED_TASK
+                    }
+                    else if (deferredException != null || protocol.getAvailableOutputBytes() > 0)
+                    {
+                        handshakeStatus = HandshakeStatus.NEED_WRAP;
+                    }
+                    else
+                    {
+                        handshakeStatus = HandshakeStatus.NEED_UNWRAP;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isInitialHandshakeComplete()
+    {
+        return connection != null && handshakeStatus == HandshakeStatus.NOT_HANDSHAKING;
+    }
+
     private RecordPreview getRecordPreview(ByteBuffer src)
         throws IOException
     {
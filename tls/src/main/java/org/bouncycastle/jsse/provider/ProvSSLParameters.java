@@ -64,6 +64,12 @@ public String[] getCipherSuites()
         return cipherSuites.clone();
     }
 
+    String[] getCipherSuitesArray()
+    {
+        // NOTE: The mechanism of ProvSSLContextSpi.updateDefaultParameters depends on this not making a copy
+        return cipherSuites;
+    }
+
     public void setCipherSuites(String[] cipherSuites)
     {
         if (!context.isSupportedCipherSuites(cipherSuites))
@@ -74,6 +80,12 @@ public void setCipherSuites(String[] cipherSuites)
         this.cipherSuites = cipherSuites.clone();
     }
 
+    void setCipherSuitesArray(String[] cipherSuites)
+    {
+        // NOTE: The mechanism of ProvSSLContextSpi.updateDefaultParameters depends on this not making a copy
+        this.cipherSuites = cipherSuites;
+    }
+
     public String[] getProtocols()
     {
         return protocols.clone();
@@ -81,7 +93,7 @@ public String[] getProtocols()
 
     String[] getProtocolsArray()
     {
-        // NOTE: The mechanism of ProvSSLContextSpi.updateDefaultProtocols depends on this not making a copy
+        // NOTE: The mechanism of ProvSSLContextSpi.updateDefaultParameters depends on this not making a copy
         return protocols;
     }
 
@@ -97,7 +109,7 @@ public void setProtocols(String[] protocols)
 
     void setProtocolsArray(String[] protocols)
     {
-        // NOTE: The mechanism of ProvSSLContextSpi.updateDefaultProtocols depends on this not making a copy
+        // NOTE: The mechanism of ProvSSLContextSpi.updateDefaultParameters depends on this not making a copy
         this.protocols = protocols;
     }
 
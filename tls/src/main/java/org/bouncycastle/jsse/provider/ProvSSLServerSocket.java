@@ -108,7 +108,7 @@ public synchronized SSLParameters getSSLParameters()
     @Override
     public synchronized String[] getSupportedCipherSuites()
     {
-        return context.getSupportedCipherSuites();
+        return context.getSupportedCipherSuites(!useClientMode);
     }
 
     @Override
@@ -164,7 +164,7 @@ public synchronized void setUseClientMode(boolean useClientMode)
     {
         if (this.useClientMode != useClientMode)
         {
-            context.updateDefaultProtocols(sslParameters, !useClientMode);
+            context.updateDefaultParameters(sslParameters, !useClientMode);
 
             this.useClientMode = useClientMode;
         }
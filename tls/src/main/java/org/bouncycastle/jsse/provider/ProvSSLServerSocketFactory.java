@@ -45,12 +45,12 @@ public ServerSocket createServerSocket(int port, int backlog, InetAddress ifAddr
     @Override
     public String[] getDefaultCipherSuites()
     {
-        return context.getDefaultCipherSuites();
+        return context.getDefaultCipherSuites(true);
     }
 
     @Override
     public String[] getSupportedCipherSuites()
     {
-        return context.getSupportedCipherSuites();
+        return context.getSupportedCipherSuites(true);
     }
 }
@@ -4,6 +4,7 @@
 
 import org.bouncycastle.jsse.BCSNIServerName;
 import org.bouncycastle.tls.CipherSuite;
+import org.bouncycastle.tls.NewSessionTicket;
 import org.bouncycastle.tls.ProtocolVersion;
 import org.bouncycastle.tls.SessionParameters;
 import org.bouncycastle.tls.TlsSession;
@@ -17,6 +18,10 @@
     protected final TlsSession tlsSession;
     protected final SessionParameters sessionParameters;
 
+    // NOTE: The RFC 5077 session ticket (if any) to present when resuming this session (client only)
+    protected byte[] sessionTicket = null;
+    protected long sessionTicketExpiry = Long.MAX_VALUE;
+
     ProvSSLSession(ProvSSLSessionContext sslSessionContext, String peerHost, int peerPort, TlsSession tlsSession)
     {
         super(sslSessionContext, peerHost, peerPort);
@@ -25,6 +30,33 @@
         this.sessionParameters = tlsSession == null ? null : tlsSession.exportSessionParameters();
     }
 
+    synchronized byte[] getSessionTicket()
+    {
+        if (null != sessionTicket && System.currentTimeMillis() >= sessionTicketExpiry)
+        {
+            this.sessionTicket = null;
+        }
+        return sessionTicket;
+    }
+
+    synchronized void setSessionTicket(NewSessionTicket newSessionTicket)
+    {
+        byte[] ticket = newSessionTicket.getTicket();
+        long lifetimeHint = newSessionTicket.getTicketLifetimeHint();
+
+        /*
+         * RFC 5077 3.3. A zero-length ticket means the server is not issuing a (new) ticket. A
+         * lifetime hint of zero means the lifetime is unspecified.
+         */
+        if (ticket == null || ticket.length < 1)
+        {
+            return;
+        }
+
+        this.sessionTicket = ticket;
+        this.sessionTicketExpiry = lifetimeHint < 1 ? Long.MAX_VALUE : System.currentTimeMillis() + 1000L * lifetimeHint;
+    }
+
     @Override
     protected int getCipherSuiteTLS()
     {
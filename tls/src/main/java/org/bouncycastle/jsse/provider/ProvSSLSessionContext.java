@@ -5,55 +5,58 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import javax.net.ssl.SSLSession;
-import javax.net.ssl.SSLSessionContext;
 
+import org.bouncycastle.jsse.BCSSLSessionContext;
 import org.bouncycastle.tls.SessionID;
 import org.bouncycastle.tls.TlsSession;
 import org.bouncycastle.tls.crypto.TlsCrypto;
 
 class ProvSSLSessionContext
-    implements SSLSessionContext
+    implements BCSSLSessionContext
 {
     private static Logger LOG = Logger.getLogger(ProvSSLSessionContext.class.getName());
 
     private static final int provSessionCacheSize = PropertyUtils
         .getIntegerSystemProperty("javax.net.ssl.sessionCacheSize", 20480, 0, Integer.MAX_VALUE);
 
-    // NOTE: This is configured as a simple LRU cache using the "access order" constructor
-    @SuppressWarnings("serial")
-    protected final Map<SessionID, SessionEntry> sessionsByID = new LinkedHashMap<SessionID, SessionEntry>(16, 0.75f, true)
-    {
-        protected boolean removeEldestEntry(Map.Entry<SessionID, SessionEntry> eldest)
-        {
-            boolean shouldRemove = sessionCacheSize > 0 && size() > sessionCacheSize;
-            if (shouldRemove)
-            {
-                removeSessionByPeer(eldest.getValue());
-            }
-            return shouldRemove;
-        }
-    };
-    protected final Map<String, SessionEntry> sessionsByPeer = new HashMap<String, SessionEntry>();
+    /*
+     * The sessions by ID are split across a number of shards (selected by session ID hash), each
+     * guarded by its own lock, so that concurrent handshakes don't all contend for a single
+     * monitor. Each shard is an LRU cache holding its share of the overall size limit; shards are
+     * kept large enough that the per-shard LRU order is a close approximation of the global one.
+     */
+    private static final int MAX_SHARDS = 16;
+    private static final int MIN_SHARD_SIZE = 256;
+
+    protected volatile Shard[] sessionsByID;
+    protected final ConcurrentMap<String, SessionEntry> sessionsByPeer = new ConcurrentHashMap<String, SessionEntry>();
     protected final ReferenceQueue<ProvSSLSession> sessionsQueue = new ReferenceQueue<ProvSSLSession>();
 
     protected final ProvSSLContextSpi sslContext;
     protected final TlsCrypto crypto;
 
-    protected int sessionCacheSize = provSessionCacheSize;
-    protected int sessionTimeoutSeconds = 86400; // 24hrs (in seconds)
+    protected final AtomicLong hitCount = new AtomicLong();
+    protected final AtomicLong missCount = new AtomicLong();
+    protected final AtomicLong evictionCount = new AtomicLong();
+
+    protected volatile int sessionCacheSize = provSessionCacheSize;
+    protected volatile int sessionTimeoutSeconds = 86400; // 24hrs (in seconds)
 
     ProvSSLSessionContext(ProvSSLContextSpi sslContext, TlsCrypto crypto)
     {
         this.sslContext = sslContext;
         this.crypto = crypto;
+        this.sessionsByID = createShards(sessionCacheSize);
     }
 
     ProvSSLContextSpi getSSLContext()
@@ -66,55 +69,86 @@ TlsCrypto getCrypto()
         return crypto;
     }
 
-    synchronized ProvSSLSession getSessionImpl(byte[] sessionID)
+    ProvSSLSession getSessionImpl(byte[] sessionID)
     {
         processQueue();
 
-        return accessSession(mapGet(sessionsByID, makeSessionID(sessionID)));
+        SessionID id = makeSessionID(sessionID);
+
+        return accessSession(id == null ? null : getSessionEntry(id));
     }
 
-    synchronized ProvSSLSession getSessionImpl(String hostName, int port)
+    ProvSSLSession getSessionImpl(String hostName, int port)
     {
         processQueue();
 
-        SessionEntry sessionEntry = mapGet(sessionsByPeer, makePeerKey(hostName, port));
+        String peerKey = makePeerKey(hostName, port);
+        SessionEntry sessionEntry = peerKey == null ? null : sessionsByPeer.get(peerKey);
         ProvSSLSession session = accessSession(sessionEntry);
         if (session != null)
         {
-            // NOTE: For the current simple cache implementation, need to 'access' the sessionByIDs entry
-            sessionsByID.get(sessionEntry.getSessionID());
+            // NOTE: Need to 'access' the sessionsByID entry to maintain the LRU order
+            getSessionEntry(sessionEntry.getSessionID());
         }
         return session;
     }
 
-    synchronized ProvSSLSession reportSession(TlsSession tlsSession, String peerHost, int peerPort)
+    ProvSSLSession reportSession(TlsSession tlsSession, String peerHost, int peerPort)
     {
         processQueue();
 
         SessionID sessionID = new SessionID(tlsSession.getSessionID());
-        SessionEntry sessionEntry = sessionsByID.get(sessionID);
-        ProvSSLSession session = sessionEntry == null ? null : sessionEntry.get();
+        SessionEntry sessionEntry;
+        ProvSSLSession session;
 
-        if (session == null || session.getTlsSession() != tlsSession)
+        for (;;)
         {
-            session = new ProvSSLSession(this, peerHost, peerPort, tlsSession);
-            sessionEntry = new SessionEntry(sessionID, session, sessionsQueue);
-            sessionsByID.put(sessionID, sessionEntry);
+            Shard shard = getShard(sessionID);
+            synchronized (shard)
+            {
+                if (shard.retired)
+                {
+                    continue;
+                }
+
+                sessionEntry = shard.sessions.get(sessionID);
+                session = sessionEntry == null ? null : sessionEntry.get();
+
+                if (session == null || session.getTlsSession() != tlsSession)
+                {
+                    session = new ProvSSLSession(this, peerHost, peerPort, tlsSession);
+                    sessionEntry = new SessionEntry(sessionID, session, sessionsQueue);
+                    shard.sessions.put(sessionID, sessionEntry);
+                }
+                break;
+            }
         }
 
-        mapAdd(sessionsByPeer, sessionEntry.getPeerKey(), sessionEntry);
+        String peerKey = sessionEntry.getPeerKey();
+        if (peerKey != null)
+        {
+            sessionsByPeer.put(peerKey, sessionEntry);
+        }
 
         return session;
     }
 
-    public synchronized Enumeration<byte[]> getIds()
+    public Enumeration<byte[]> getIds()
     {
         removeAllExpiredSessions();
 
-        ArrayList<byte[]> ids = new ArrayList<byte[]>(sessionsByID.size());
-        for (SessionID sessionID : sessionsByID.keySet())
+        ArrayList<byte[]> ids = new ArrayList<byte[]>();
+        Shard[] shards = sessionsByID;
+        for (int i = 0; i < shards.length; ++i)
         {
-            ids.add(sessionID.getBytes());
+            Shard shard = shards[i];
+            synchronized (shard)
+            {
+                for (SessionID sessionID : shard.sessions.keySet())
+                {
+                    ids.add(sessionID.getBytes());
+                }
+            }
         }
         return Collections.enumeration(ids);
     }
@@ -129,12 +163,12 @@ public SSLSession getSession(byte[] sessionID)
         return getSessionImpl(sessionID);
     }
 
-    public synchronized int getSessionCacheSize()
+    public int getSessionCacheSize()
     {
         return sessionCacheSize;
     }
 
-    public synchronized int getSessionTimeout()
+    public int getSessionTimeout()
     {
         return sessionTimeoutSeconds;
     }
@@ -156,21 +190,27 @@ public synchronized void setSessionCacheSize(int size) throws IllegalArgumentExc
         removeAllExpiredSessions();
 
         // Immediately remove LRU sessions in excess of the new limit
-        if (sessionCacheSize > 0)
+        Shard[] shards = sessionsByID;
+        if (shards.length == getShardCount(size))
         {
-            int currentSize = sessionsByID.size();
-            if (currentSize > sessionCacheSize)
+            for (int i = 0; i < shards.length; ++i)
             {
-                Iterator<SessionEntry> iter = sessionsByID.values().iterator();
-                while (iter.hasNext() && currentSize > sessionCacheSize)
+                synchronized (shards[i])
                 {
-                    SessionEntry sessionEntry = iter.next();
-                    iter.remove();
-                    removeSessionByPeer(sessionEntry);
-                    --currentSize;
+                    shards[i].setCapacity(getShardCapacity(size, shards.length, i));
                 }
             }
         }
+        else
+        {
+            Shard[] newShards = createShards(size);
+            this.sessionsByID = newShards;
+
+            for (int i = 0; i < shards.length; ++i)
+            {
+                shards[i].moveTo(newShards);
+            }
+        }
     }
 
     public synchronized void setSessionTimeout(int seconds) throws IllegalArgumentException
@@ -190,6 +230,35 @@ public synchronized void setSessionTimeout(int seconds) throws IllegalArgumentEx
         removeAllExpiredSessions();
     }
 
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    public int getSessionCount()
+    {
+        int count = 0;
+        Shard[] shards = sessionsByID;
+        for (int i = 0; i < shards.length; ++i)
+        {
+            synchronized (shards[i])
+            {
+                count += shards[i].sessions.size();
+            }
+        }
+        return count;
+    }
+
     private ProvSSLSession accessSession(SessionEntry sessionEntry)
     {
         if (sessionEntry != null)
@@ -201,18 +270,21 @@ private ProvSSLSession accessSession(SessionEntry sessionEntry)
                 if (!invalidateIfCreatedBefore(sessionEntry, getCreationTimeLimit(currentTimeMillis)))
                 {
                     session.accessedAt(currentTimeMillis);
+                    hitCount.incrementAndGet();
                     return session;
                 }
             }
 
             removeSession(sessionEntry);
         }
+        missCount.incrementAndGet();
         return null;
     }
 
     private long getCreationTimeLimit(long expiryTimeMillis)
     {
-        return sessionTimeoutSeconds < 1 ? Long.MIN_VALUE : (expiryTimeMillis - 1000L * sessionTimeoutSeconds);
+        int timeoutSeconds = sessionTimeoutSeconds;
+        return timeoutSeconds < 1 ? Long.MIN_VALUE : (expiryTimeMillis - 1000L * timeoutSeconds);
     }
 
     private boolean invalidateIfCreatedBefore(SessionEntry sessionEntry, long creationTimeLimit)
@@ -252,64 +324,132 @@ private void removeAllExpiredSessions()
 
         long creationTimeLimit = getCreationTimeLimit(System.currentTimeMillis());
 
-        Iterator<SessionEntry> iter = sessionsByID.values().iterator();
-        while (iter.hasNext())
+        Shard[] shards = sessionsByID;
+        for (int i = 0; i < shards.length; ++i)
         {
-            SessionEntry sessionEntry = iter.next();
-            if (invalidateIfCreatedBefore(sessionEntry, creationTimeLimit))
+            Shard shard = shards[i];
+            synchronized (shard)
             {
-                iter.remove();
-                removeSessionByPeer(sessionEntry);
+                Iterator<SessionEntry> iter = shard.sessions.values().iterator();
+                while (iter.hasNext())
+                {
+                    SessionEntry sessionEntry = iter.next();
+                    if (invalidateIfCreatedBefore(sessionEntry, creationTimeLimit))
+                    {
+                        iter.remove();
+                        removeSessionByPeer(sessionEntry);
+                        evictionCount.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private SessionEntry getSessionEntry(SessionID sessionID)
+    {
+        for (;;)
+        {
+            Shard shard = getShard(sessionID);
+            synchronized (shard)
+            {
+                if (!shard.retired)
+                {
+                    return shard.sessions.get(sessionID);
+                }
             }
         }
     }
 
     private void removeSession(SessionEntry sessionEntry)
     {
-        mapRemove(sessionsByID, sessionEntry.getSessionID(), sessionEntry);
+        SessionID sessionID = sessionEntry.getSessionID();
+
+        for (;;)
+        {
+            Shard shard = getShard(sessionID);
+            synchronized (shard)
+            {
+                if (shard.retired)
+                {
+                    continue;
+                }
+
+                if (mapRemove(shard.sessions, sessionID, sessionEntry))
+                {
+                    evictionCount.incrementAndGet();
+                }
+                break;
+            }
+        }
 
         removeSessionByPeer(sessionEntry);
     }
 
     private boolean removeSessionByPeer(SessionEntry sessionEntry)
     {
-        return mapRemove(sessionsByPeer, sessionEntry.getPeerKey(), sessionEntry);
-    }
+        String peerKey = sessionEntry.getPeerKey();
 
-    private static String makePeerKey(ProvSSLSession session)
-    {
-        return session == null ? null : makePeerKey(session.getPeerHost(), session.getPeerPort());
+        return peerKey != null && sessionsByPeer.remove(peerKey, sessionEntry);
     }
 
-    private static String makePeerKey(String hostName, int port)
+    private Shard getShard(SessionID sessionID)
     {
-        return (hostName == null || port < 0) ? null : (hostName + ':' + Integer.toString(port)).toLowerCase(Locale.ENGLISH);
+        Shard[] shards = sessionsByID;
+        return shards[getShardIndex(sessionID, shards.length)];
     }
 
-    private static SessionID makeSessionID(byte[] sessionID)
+    private Shard[] createShards(int size)
     {
-        return (sessionID == null || sessionID.length < 1) ? null : new SessionID(sessionID);
+        int shardCount = getShardCount(size);
+        Shard[] shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; ++i)
+        {
+            shards[i] = new Shard(getShardCapacity(size, shardCount, i));
+        }
+        return shards;
     }
 
-    private static <K, V> void mapAdd(Map<K, V> map, K key, V value)
+    private static int getShardCount(int size)
     {
-        if (map == null || value == null)
+        if (size == 0)
         {
-            throw new NullPointerException();
+            return MAX_SHARDS;
         }
-        if (key != null)
+
+        int shardCount = 1;
+        while (shardCount < MAX_SHARDS && size / (shardCount * 2) >= MIN_SHARD_SIZE)
         {
-            map.put(key, value);
+            shardCount *= 2;
         }
+        return shardCount;
     }
 
-    private static <K, V> V mapGet(Map<K, V> map, K key)
+    private static int getShardCapacity(int size, int shardCount, int shardIndex)
     {
-        if (map == null)
-        {
-            throw new NullPointerException();
-        }
-        return key == null ? null : map.get(key);
+        // NOTE: Any remainder is spread over the first shards, so the capacities add up to the size exactly
+        return size / shardCount + (shardIndex < size % shardCount ? 1 : 0);
+    }
+
+    private static int getShardIndex(SessionID sessionID, int shardCount)
+    {
+        int hash = sessionID.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & (shardCount - 1);
+    }
+
+    private static String makePeerKey(ProvSSLSession session)
+    {
+        return session == null ? null : makePeerKey(session.getPeerHost(), session.getPeerPort());
+    }
+
+    private static String makePeerKey(String hostName, int port)
+    {
+        return (hostName == null || port < 0) ? null : (hostName + ':' + Integer.toString(port)).toLowerCase(Locale.ENGLISH);
+    }
+
+    private static SessionID makeSessionID(byte[] sessionID)
+    {
+        return (sessionID == null || sessionID.length < 1) ? null : new SessionID(sessionID);
     }
 
     private static <K, V> boolean mapRemove(Map<K, V> map, K key, V value)
@@ -320,7 +460,7 @@ private static <K, V> boolean mapRemove(Map<K, V> map, K key, V value)
         }
         if (key != null)
         {
-            // TODO[jsse] From 1.8 there is a 2-argument remove method to accomplish this 
+            // TODO[jsse] From 1.8 there is a 2-argument remove method to accomplish this
             V removed = map.remove(key);
             if (removed == value)
             {
@@ -334,6 +474,77 @@ private static <K, V> boolean mapRemove(Map<K, V> map, K key, V value)
         return false;
     }
 
+    protected final class Shard
+    {
+        // NOTE: This is configured as a simple LRU cache using the "access order" constructor
+        @SuppressWarnings("serial")
+        final Map<SessionID, SessionEntry> sessions = new LinkedHashMap<SessionID, SessionEntry>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<SessionID, SessionEntry> eldest)
+            {
+                boolean shouldRemove = capacity > 0 && size() > capacity;
+                if (shouldRemove)
+                {
+                    removeSessionByPeer(eldest.getValue());
+                    evictionCount.incrementAndGet();
+                }
+                return shouldRemove;
+            }
+        };
+
+        // NOTE: All fields are guarded by the Shard's monitor
+        int capacity;
+        boolean retired = false;
+
+        Shard(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        void setCapacity(int capacity)
+        {
+            this.capacity = capacity;
+
+            if (capacity > 0)
+            {
+                int currentSize = sessions.size();
+                Iterator<SessionEntry> iter = sessions.values().iterator();
+                while (iter.hasNext() && currentSize > capacity)
+                {
+                    SessionEntry sessionEntry = iter.next();
+                    iter.remove();
+                    removeSessionByPeer(sessionEntry);
+                    evictionCount.incrementAndGet();
+                    --currentSize;
+                }
+            }
+        }
+
+        synchronized void moveTo(Shard[] shards)
+        {
+            this.retired = true;
+
+            // NOTE: Iteration is in LRU order, so the most recently used sessions survive if the new shards are smaller
+            Iterator<SessionEntry> iter = sessions.values().iterator();
+            while (iter.hasNext())
+            {
+                SessionEntry sessionEntry = iter.next();
+                SessionID sessionID = sessionEntry.getSessionID();
+                Shard shard = shards[getShardIndex(sessionID, shards.length)];
+
+                synchronized (shard)
+                {
+                    if (!shard.sessions.containsKey(sessionID))
+                    {
+                        shard.sessions.put(sessionID, sessionEntry);
+                    }
+                }
+            }
+
+            sessions.clear();
+        }
+    }
+
     private static final class SessionEntry
         extends SoftReference<ProvSSLSession>
     {
@@ -244,7 +244,7 @@ public synchronized SSLParameters getSSLParameters()
     @Override
     public synchronized String[] getSupportedCipherSuites()
     {
-        return context.getSupportedCipherSuites();
+        return context.getSupportedCipherSuites(!useClientMode);
     }
 
     @Override
@@ -310,7 +310,7 @@ public synchronized void setUseClientMode(boolean useClientMode)
 
         if (this.useClientMode != useClientMode)
         {
-            context.updateDefaultProtocols(sslParameters, !useClientMode);
+            context.updateDefaultParameters(sslParameters, !useClientMode);
 
             this.useClientMode = useClientMode;
         }
@@ -339,6 +339,7 @@ protected void startHandshake(boolean resumable) throws IOException
             {
                 TlsClientProtocol clientProtocol = new ProvTlsClientProtocol(input, output, socketCloser);
                 clientProtocol.setResumableHandshake(resumable);
+                ProvTlsMetrics.install(clientProtocol);
                 this.protocol = clientProtocol;
 
                 ProvTlsClient client = new ProvTlsClient(this, sslParameters.copy());
@@ -350,6 +351,7 @@ protected void startHandshake(boolean resumable) throws IOException
             {
                 TlsServerProtocol serverProtocol = new ProvTlsServerProtocol(input, output, socketCloser);
                 serverProtocol.setResumableHandshake(resumable);
+                ProvTlsMetrics.install(serverProtocol);
                 this.protocol = serverProtocol;
 
                 ProvTlsServer server = new ProvTlsServer(this, sslParameters.copy());
@@ -76,12 +76,12 @@ public Socket createSocket(Socket s, String host, int port, boolean autoClose) t
     @Override
     public String[] getDefaultCipherSuites()
     {
-        return context.getDefaultCipherSuites();
+        return context.getDefaultCipherSuites(false);
     }
 
     @Override
     public String[] getSupportedCipherSuites()
     {
-        return context.getSupportedCipherSuites();
+        return context.getSupportedCipherSuites(false);
     }
 }
@@ -5,6 +5,7 @@
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
@@ -24,12 +25,14 @@
 import org.bouncycastle.tls.CertificateStatusRequest;
 import org.bouncycastle.tls.DefaultTlsClient;
 import org.bouncycastle.tls.KeyExchangeAlgorithm;
+import org.bouncycastle.tls.NewSessionTicket;
 import org.bouncycastle.tls.ProtocolVersion;
 import org.bouncycastle.tls.ServerName;
 import org.bouncycastle.tls.SignatureAndHashAlgorithm;
 import org.bouncycastle.tls.TlsAuthentication;
 import org.bouncycastle.tls.TlsCredentials;
 import org.bouncycastle.tls.TlsDHGroupVerifier;
+import org.bouncycastle.tls.TlsExtensionsUtils;
 import org.bouncycastle.tls.TlsFatalAlert;
 import org.bouncycastle.tls.TlsServerCertificate;
 import org.bouncycastle.tls.TlsSession;
@@ -49,11 +52,14 @@
     private static Logger LOG = Logger.getLogger(ProvTlsClient.class.getName());
 
     private static final boolean provEnableSNIExtension = PropertyUtils.getBooleanSystemProperty("jsse.enableSNIExtension", true);
+    private static final boolean provEnableSessionTicketExtension = PropertyUtils
+        .getBooleanSystemProperty("jdk.tls.client.enableSessionTicketExtension", true);
 
     protected final ProvTlsManager manager;
     protected final ProvSSLParameters sslParameters;
 
     protected ProvSSLSession sslSession = null;
+    protected NewSessionTicket newSessionTicket = null;
     protected boolean handshakeComplete = false;
 
     ProvTlsClient(ProvTlsManager manager, ProvSSLParameters sslParameters)
@@ -118,6 +124,27 @@ protected Vector getSNIServerNames()
         return null;
     }
 
+    @Override
+    public Hashtable getClientExtensions() throws IOException
+    {
+        Hashtable clientExtensions = super.getClientExtensions();
+
+        if (provEnableSessionTicketExtension)
+        {
+            clientExtensions = TlsExtensionsUtils.ensureExtensionsInitialised(clientExtensions);
+
+            /*
+             * RFC 5077 3.2. Present the ticket for the session being resumed, if we have one, otherwise
+             * send an empty extension to indicate support for tickets.
+             */
+            byte[] ticket = null == sslSession ? null : sslSession.getSessionTicket();
+
+            TlsExtensionsUtils.addSessionTicketExtension(clientExtensions, null == ticket ? TlsUtils.EMPTY_BYTES : ticket);
+        }
+
+        return clientExtensions;
+    }
+
     @Override
     protected int[] getSupportedCipherSuites()
     {
@@ -128,7 +155,22 @@ protected int[] getSupportedCipherSuites()
     @Override
     protected Vector getSupportedSignatureAlgorithms()
     {
-        return JsseUtils.getSupportedSignatureAlgorithms(getCrypto());
+        Vector supportedSignatureAlgorithms = JsseUtils.getSupportedSignatureAlgorithms(getCrypto());
+
+        /*
+         * RFC 8446 4.2.3. TLS 1.3 servers with RSA certificates can only sign using RSASSA-PSS.
+         */
+        if (ProtocolVersion.contains(getSupportedVersions(), ProtocolVersion.TLSv13))
+        {
+            Vector result = new Vector();
+            TlsUtils.addIfSupported(result, getCrypto(), SignatureAndHashAlgorithm.rsa_pss_rsae_sha256);
+            TlsUtils.addIfSupported(result, getCrypto(), SignatureAndHashAlgorithm.rsa_pss_rsae_sha384);
+            TlsUtils.addIfSupported(result, getCrypto(), SignatureAndHashAlgorithm.rsa_pss_rsae_sha512);
+            result.addAll(supportedSignatureAlgorithms);
+            supportedSignatureAlgorithms = result;
+        }
+
+        return supportedSignatureAlgorithms;
     }
 
     public synchronized boolean isHandshakeComplete()
@@ -150,6 +192,9 @@ public TlsCredentials getClientCredentials(CertificateRequest certificateRequest
             {
                 // TODO[jsse] What criteria determines whether we are willing to send client authentication?
 
+                // NOTE: TLS 1.3 cipher suites don't determine the key exchange (or authentication)
+                boolean isTLSv13 = TlsUtils.isTLSv13(context);
+
                 int selectedCipherSuite = context.getSecurityParametersHandshake().getCipherSuite();
                 int keyExchangeAlgorithm = TlsUtils.getKeyExchangeAlgorithm(selectedCipherSuite);
                 switch (keyExchangeAlgorithm)
@@ -161,6 +206,13 @@ public TlsCredentials getClientCredentials(CertificateRequest certificateRequest
                 case KeyExchangeAlgorithm.RSA:
                     break;
 
+                case KeyExchangeAlgorithm.NULL:
+                    if (isTLSv13)
+                    {
+                        break;
+                    }
+                    // Fall through
+
                 default:
                     /* Note: internal error here; selected a key exchange we don't implement! */
                     throw new TlsFatalAlert(AlertDescription.internal_error);
@@ -219,6 +271,25 @@ public TlsCredentials getClientCredentials(CertificateRequest certificateRequest
                  * extension?
                  */
 
+                if (isTLSv13)
+                {
+                    /*
+                     * RFC 8446 4.3.2. The signature algorithms are those of the server's
+                     * CertificateRequest (and RSA keys sign using RSASSA-PSS).
+                     */
+                    short signatureAlgorithm = certificate.getCertificateAt(0).getLegacySignatureAlgorithm();
+                    SignatureAndHashAlgorithm sigAlg = TlsUtils.chooseSignatureAndHashAlgorithm13(
+                        certificateRequest.getSupportedSignatureAlgorithms(), signatureAlgorithm);
+                    if (sigAlg == null)
+                    {
+                        return null;
+                    }
+
+                    // TODO[jsse] Need to have TlsCrypto construct the credentials from the certs/key
+                    return new JcaDefaultTlsCredentialedSigner(new TlsCryptoParameters(context), (JcaTlsCrypto)crypto,
+                        privateKey, certificate, sigAlg);
+                }
+
                 switch (keyExchangeAlgorithm)
                 {
                 case KeyExchangeAlgorithm.DHE_DSS:
@@ -252,7 +323,11 @@ public void notifyServerCertificate(TlsServerCertificate serverCertificate) thro
 
                 X509Certificate[] chain = JsseUtils.getX509CertificateChain(manager.getContextData().getCrypto(), serverCertificate.getCertificate());
                 int selectedCipherSuite = context.getSecurityParametersHandshake().getCipherSuite();
-                String authType = JsseUtils.getAuthTypeServer(TlsUtils.getKeyExchangeAlgorithm(selectedCipherSuite));
+
+                // NOTE: TLS 1.3 cipher suites don't determine the authentication type (as for SunJSSE)
+                String authType = TlsUtils.isTLSv13(context)
+                    ?   "UNKNOWN"
+                    :   JsseUtils.getAuthTypeServer(TlsUtils.getKeyExchangeAlgorithm(selectedCipherSuite));
 
                 manager.checkServerTrusted(chain, authType);
             }
@@ -337,13 +412,56 @@ public synchronized void notifyHandshakeComplete() throws IOException
 
         if (null == sslSession || sslSession.getTlsSession() != connectionSession)
         {
+            if (null != newSessionTicket && newSessionTicket.getTicket().length > 0)
+            {
+                /*
+                 * RFC 5077 3.4. The client discards any Session ID sent in the ServerHello, and may
+                 * generate its own to present with the ticket.
+                 */
+                byte[] sessionID = new byte[32];
+                getCrypto().getSecureRandom().nextBytes(sessionID);
+
+                connectionSession = TlsUtils.importSession(sessionID, connectionSession.exportSessionParameters());
+            }
+
             ProvSSLSessionContext sslSessionContext = manager.getContextData().getClientSessionContext();
             this.sslSession = sslSessionContext.reportSession(connectionSession, manager.getPeerHost(), manager.getPeerPort());
         }
 
+        if (null != newSessionTicket)
+        {
+            sslSession.setSessionTicket(newSessionTicket);
+            this.newSessionTicket = null;
+        }
+
         manager.notifyHandshakeComplete(new ProvSSLConnection(context, sslSession));
     }
 
+    @Override
+    public void notifyNewSessionTicket(NewSessionTicket newSessionTicket) throws IOException
+    {
+        super.notifyNewSessionTicket(newSessionTicket);
+
+        LOG.fine("Client received session ticket, lifetime hint: " + newSessionTicket.getTicketLifetimeHint());
+
+        if (isHandshakeComplete())
+        {
+            /*
+             * RFC 8446 4.6.1. TLS 1.3 tickets arrive after the handshake, each one establishing a
+             * new resumable session.
+             */
+            TlsSession resumableSession = context.getResumableSession();
+            if (null != resumableSession)
+            {
+                ProvSSLSessionContext sslSessionContext = manager.getContextData().getClientSessionContext();
+                sslSessionContext.reportSession(resumableSession, manager.getPeerHost(), manager.getPeerPort());
+            }
+            return;
+        }
+
+        this.newSessionTicket = newSessionTicket;
+    }
+
     @Override
     public void notifySecureRenegotiation(boolean secureRenegotiation) throws IOException
     {
@@ -0,0 +1,329 @@
+package org.bouncycastle.jsse.provider;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import org.bouncycastle.jsse.BCTlsMetricsMXBean;
+import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.AlertLevel;
+import org.bouncycastle.tls.ContentType;
+import org.bouncycastle.tls.HandshakeType;
+import org.bouncycastle.tls.SecurityParameters;
+import org.bouncycastle.tls.TlsContext;
+import org.bouncycastle.tls.TlsMetricsListener;
+import org.bouncycastle.tls.TlsProtocol;
+
+/**
+ * JVM-wide {@link TlsMetricsListener} that aggregates the metrics of every connection created by the
+ * provider and exposes them through JMX.
+ */
+class ProvTlsMetrics
+    implements TlsMetricsListener, BCTlsMetricsMXBean
+{
+    private static Logger LOG = Logger.getLogger(ProvTlsMetrics.class.getName());
+
+    static final String PROPERTY_NAME = "org.bouncycastle.jsse.metrics";
+    static final String OBJECT_NAME = "org.bouncycastle.jsse:type=TlsMetrics";
+
+    private static final int TIME_BUCKETS = 32;
+    private static final int SIZE_BUCKETS = 17;
+
+    private static final ProvTlsMetrics INSTANCE = createInstance();
+
+    private static ProvTlsMetrics createInstance()
+    {
+        if (!PropertyUtils.getBooleanSystemProperty(PROPERTY_NAME, false))
+        {
+            return null;
+        }
+
+        ProvTlsMetrics metrics = new ProvTlsMetrics();
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        }
+        catch (Exception e)
+        {
+            LOG.log(Level.WARNING, "Unable to register TLS metrics with the platform MBean server", e);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the JVM-wide instance, or null if metrics collection is not enabled.
+     */
+    static ProvTlsMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    static void install(TlsProtocol protocol)
+    {
+        if (null != INSTANCE)
+        {
+            protocol.setMetricsListener(INSTANCE);
+        }
+    }
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final ConcurrentMap<Integer, AtomicLong> handshakesByCipherSuite = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final AtomicLongArray handshakeTimes = new AtomicLongArray(TIME_BUCKETS);
+
+    private final AtomicLongArray messageCounts = new AtomicLongArray(256);
+    private final AtomicLongArray messageNanos = new AtomicLongArray(256);
+    private final AtomicLongArray messageTimes = new AtomicLongArray(256 * TIME_BUCKETS);
+
+    private final AtomicLongArray alertsRaised = new AtomicLongArray(3 * 256);
+    private final AtomicLongArray alertsReceived = new AtomicLongArray(3 * 256);
+
+    private final ConcurrentMap<Integer, AtomicLong> bytesSent = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final ConcurrentMap<Integer, AtomicLong> bytesReceived = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final AtomicLongArray recordSizesSent = new AtomicLongArray(SIZE_BUCKETS);
+    private final AtomicLongArray recordSizesReceived = new AtomicLongArray(SIZE_BUCKETS);
+
+    ProvTlsMetrics()
+    {
+    }
+
+    public void handshakeMessageProcessed(TlsContext context, short handshakeType, long elapsedNanos)
+    {
+        int type = handshakeType & 0xFF;
+        messageCounts.incrementAndGet(type);
+        messageNanos.addAndGet(type, elapsedNanos);
+        messageTimes.incrementAndGet(type * TIME_BUCKETS + bucket(elapsedNanos / 1000L, TIME_BUCKETS));
+    }
+
+    public void handshakeCompleted(TlsContext context, int cipherSuite, boolean resumedSession, long elapsedNanos)
+    {
+        (resumedSession ? resumedHandshakes : fullHandshakes).incrementAndGet();
+        getCounter(handshakesByCipherSuite, cipherSuite).incrementAndGet();
+        handshakeTimes.incrementAndGet(bucket(elapsedNanos / 1000L, TIME_BUCKETS));
+    }
+
+    public void alertRaised(TlsContext context, short alertLevel, short alertDescription)
+    {
+        alertsRaised.incrementAndGet(alertIndex(alertLevel, alertDescription));
+    }
+
+    public void alertReceived(TlsContext context, short alertLevel, short alertDescription)
+    {
+        alertsReceived.incrementAndGet(alertIndex(alertLevel, alertDescription));
+    }
+
+    public void recordRead(TlsContext context, short contentType, int plaintextLength, int recordLength)
+    {
+        recordSizesReceived.incrementAndGet(bucket(plaintextLength, SIZE_BUCKETS));
+
+        if (ContentType.application_data == contentType)
+        {
+            addApplicationBytes(bytesReceived, context, plaintextLength);
+        }
+    }
+
+    public void recordWritten(TlsContext context, short contentType, int plaintextLength, int recordLength)
+    {
+        recordSizesSent.incrementAndGet(bucket(plaintextLength, SIZE_BUCKETS));
+
+        if (ContentType.application_data == contentType)
+        {
+            addApplicationBytes(bytesSent, context, plaintextLength);
+        }
+    }
+
+    public long getFullHandshakes()
+    {
+        return fullHandshakes.get();
+    }
+
+    public long getResumedHandshakes()
+    {
+        return resumedHandshakes.get();
+    }
+
+    public Map<String, Long> getHandshakesByCipherSuite()
+    {
+        return getCipherSuiteCounters(handshakesByCipherSuite);
+    }
+
+    public long[] getHandshakeTimeHistogram()
+    {
+        return getHistogram(handshakeTimes, 0, TIME_BUCKETS);
+    }
+
+    public Map<String, Long> getHandshakeMessageCounts()
+    {
+        return getHandshakeTypeCounters(messageCounts, 1L);
+    }
+
+    public Map<String, Long> getHandshakeMessageTimes()
+    {
+        return getHandshakeTypeCounters(messageNanos, 1000L);
+    }
+
+    public Map<String, long[]> getHandshakeMessageTimeHistograms()
+    {
+        Map<String, long[]> result = new TreeMap<String, long[]>();
+        for (int type = 0; type < 256; ++type)
+        {
+            if (messageCounts.get(type) > 0L)
+            {
+                result.put(HandshakeType.getText((short)type), getHistogram(messageTimes, type * TIME_BUCKETS, TIME_BUCKETS));
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Long> getAlertsRaised()
+    {
+        return getAlertCounters(alertsRaised);
+    }
+
+    public Map<String, Long> getAlertsReceived()
+    {
+        return getAlertCounters(alertsReceived);
+    }
+
+    public Map<String, Long> getApplicationBytesSent()
+    {
+        return getCipherSuiteCounters(bytesSent);
+    }
+
+    public Map<String, Long> getApplicationBytesReceived()
+    {
+        return getCipherSuiteCounters(bytesReceived);
+    }
+
+    public long[] getRecordSizeHistogramSent()
+    {
+        return getHistogram(recordSizesSent, 0, SIZE_BUCKETS);
+    }
+
+    public long[] getRecordSizeHistogramReceived()
+    {
+        return getHistogram(recordSizesReceived, 0, SIZE_BUCKETS);
+    }
+
+    public void reset()
+    {
+        fullHandshakes.set(0L);
+        resumedHandshakes.set(0L);
+        handshakesByCipherSuite.clear();
+        clear(handshakeTimes);
+        clear(messageCounts);
+        clear(messageNanos);
+        clear(messageTimes);
+        clear(alertsRaised);
+        clear(alertsReceived);
+        bytesSent.clear();
+        bytesReceived.clear();
+        clear(recordSizesSent);
+        clear(recordSizesReceived);
+    }
+
+    private static void addApplicationBytes(ConcurrentMap<Integer, AtomicLong> counters, TlsContext context, int length)
+    {
+        SecurityParameters securityParameters = context.getSecurityParameters();
+        if (null != securityParameters)
+        {
+            getCounter(counters, securityParameters.getCipherSuite()).addAndGet(length);
+        }
+    }
+
+    private static int alertIndex(short alertLevel, short alertDescription)
+    {
+        return (alertLevel == AlertLevel.warning || alertLevel == AlertLevel.fatal ? alertLevel : 0) * 256
+            + (alertDescription & 0xFF);
+    }
+
+    /**
+     * @return the histogram bucket for a (non-negative) value; see {@link BCTlsMetricsMXBean}.
+     */
+    static int bucket(long value, int buckets)
+    {
+        int bucket = value <= 0L ? 0 : 64 - Long.numberOfLeadingZeros(value);
+        return Math.min(bucket, buckets - 1);
+    }
+
+    private static void clear(AtomicLongArray array)
+    {
+        for (int i = 0; i < array.length(); ++i)
+        {
+            array.set(i, 0L);
+        }
+    }
+
+    private static Map<String, Long> getAlertCounters(AtomicLongArray counters)
+    {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (int i = 0; i < counters.length(); ++i)
+        {
+            long count = counters.get(i);
+            if (count > 0L)
+            {
+                short alertLevel = (short)(i >>> 8), alertDescription = (short)(i & 0xFF);
+                result.put(AlertLevel.getText(alertLevel) + " " + AlertDescription.getText(alertDescription),
+                    Long.valueOf(count));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Long> getCipherSuiteCounters(ConcurrentMap<Integer, AtomicLong> counters)
+    {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<Integer, AtomicLong> entry : counters.entrySet())
+        {
+            result.put(ProvSSLContextSpi.getCipherSuiteName(entry.getKey().intValue()),
+                Long.valueOf(entry.getValue().get()));
+        }
+        return result;
+    }
+
+    private static AtomicLong getCounter(ConcurrentMap<Integer, AtomicLong> counters, int key)
+    {
+        Integer k = Integer.valueOf(key);
+        AtomicLong counter = counters.get(k);
+        if (null == counter)
+        {
+            AtomicLong existing = counters.putIfAbsent(k, counter = new AtomicLong());
+            if (null != existing)
+            {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    private static long[] getHistogram(AtomicLongArray counts, int off, int len)
+    {
+        long[] result = new long[len];
+        for (int i = 0; i < len; ++i)
+        {
+            result[i] = counts.get(off + i);
+        }
+        return result;
+    }
+
+    private static Map<String, Long> getHandshakeTypeCounters(AtomicLongArray counters, long divisor)
+    {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (int type = 0; type < 256; ++type)
+        {
+            if (counters.get(type) != 0L)
+            {
+                result.put(HandshakeType.getText((short)type), Long.valueOf(counters.get(type) / divisor));
+            }
+        }
+        return result;
+    }
+}
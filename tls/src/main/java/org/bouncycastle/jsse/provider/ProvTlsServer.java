@@ -50,6 +50,7 @@
 
     protected final ProvTlsManager manager;
     protected final ProvSSLParameters sslParameters;
+    protected final ProvDelegatedTasks delegatedTasks;
 
     protected ProvSSLSession sslSession = null;
     protected BCSNIServerName matchedSNIServerName = null;
@@ -58,11 +59,22 @@
     protected boolean handshakeComplete = false;
 
     ProvTlsServer(ProvTlsManager manager, ProvSSLParameters sslParameters) throws SSLException
+    {
+        this(manager, sslParameters, null);
+    }
+
+    /**
+     * @param delegatedTasks if not null, private-key operations are queued here instead of being
+     *        performed by the protocol.
+     */
+    ProvTlsServer(ProvTlsManager manager, ProvSSLParameters sslParameters, ProvDelegatedTasks delegatedTasks)
+        throws SSLException
     {
         super(manager.getContextData().getCrypto());
 
         this.manager = manager;
         this.sslParameters = sslParameters;
+        this.delegatedTasks = delegatedTasks;
 
         if (!manager.getEnableSessionCreation())
         {
@@ -94,7 +106,17 @@ protected int getMaximumNegotiableFiniteFieldBits()
     @Override
     public ProtocolVersion[] getSupportedVersions()
     {
-        return manager.getContext().getSupportedVersions(sslParameters.getProtocols());
+        ProtocolVersion[] versions = manager.getContext().getSupportedVersions(sslParameters.getProtocols());
+
+        // NOTE: No TLS 1.3 signer credentials or session tickets here yet, so negotiate at most TLS 1.2
+        if (null != versions && versions.length > 0 && TlsUtils.isTLSv13(versions[0]))
+        {
+            ProtocolVersion[] tmp = new ProtocolVersion[versions.length - 1];
+            System.arraycopy(versions, 1, tmp, 0, tmp.length);
+            versions = tmp;
+        }
+
+        return versions;
     }
 
     @Override
@@ -180,7 +202,7 @@ public synchronized boolean isHandshakeComplete()
     public TlsCredentials getCredentials()
         throws IOException
     {
-        return credentials;
+        return null == delegatedTasks ? credentials : delegatedTasks.delegate(credentials);
     }
 
     @Override
@@ -460,9 +482,10 @@ protected boolean selectCredentials(int cipherSuite) throws IOException
             throw new UnsupportedOperationException();
         }
 
-        X509ExtendedKeyManager x509KeyManager = manager.getContextData().getX509KeyManager();
+        ContextData contextData = manager.getContextData();
+        X509ExtendedKeyManager x509KeyManager = contextData.getX509KeyManager();
         PrivateKey privateKey = x509KeyManager.getPrivateKey(alias);
-        Certificate certificate = JsseUtils.getCertificateMessage(crypto, x509KeyManager.getCertificateChain(alias));
+        Certificate certificate = contextData.getCertificateMessage(x509KeyManager.getCertificateChain(alias));
 
         if (privateKey == null
             || !JsseUtils.isUsableKeyForServer(keyExchangeAlgorithm, privateKey)
@@ -247,6 +247,28 @@ public Hashtable getClientExtensions()
         return clientExtensions;
     }
 
+    public Vector getEarlyKeyShareGroups()
+    {
+        /*
+         * RFC 8446 4.2.7. Clients [..] MAY send a key share for only the most preferred group, so by
+         * default we only send the first of x25519 or secp256r1 that is supported.
+         */
+        if (null == supportedGroups || supportedGroups.isEmpty())
+        {
+            return null;
+        }
+
+        if (supportedGroups.contains(Integers.valueOf(NamedGroup.x25519)))
+        {
+            return TlsUtils.vectorOfOne(Integers.valueOf(NamedGroup.x25519));
+        }
+        if (supportedGroups.contains(Integers.valueOf(NamedGroup.secp256r1)))
+        {
+            return TlsUtils.vectorOfOne(Integers.valueOf(NamedGroup.secp256r1));
+        }
+        return null;
+    }
+
     public void notifyServerVersion(ProtocolVersion serverVersion)
         throws IOException
     {
@@ -3,7 +3,10 @@
 import java.io.IOException;
 
 import org.bouncycastle.tls.crypto.TlsCrypto;
+import org.bouncycastle.tls.crypto.TlsCryptoUtils;
+import org.bouncycastle.tls.crypto.TlsHash;
 import org.bouncycastle.tls.crypto.TlsNonceGenerator;
+import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Pack;
 import org.bouncycastle.util.Times;
@@ -148,6 +151,11 @@ public TlsSession getSession()
         return session;
     }
 
+    synchronized void setSession(TlsSession session)
+    {
+        this.session = session;
+    }
+
     public Object getUserObject()
     {
         return userObject;
@@ -198,6 +206,10 @@ public byte[] exportKeyingMaterial(String asciiLabel, byte[] context_value, int
         {
             throw new IllegalStateException("Export of key material unavailable before handshake completion");
         }
+        if (TlsUtils.isTLSv13(sp.getNegotiatedVersion()))
+        {
+            return exportKeyingMaterial13(sp, asciiLabel, context_value, length);
+        }
         if (!sp.isExtendedMasterSecret())
         {
             /*
@@ -239,4 +251,48 @@ public byte[] exportKeyingMaterial(String asciiLabel, byte[] context_value, int
 
         return TlsUtils.PRF(this, sp.getMasterSecret(), asciiLabel, seed, length).extract();
     }
+
+    private byte[] exportKeyingMaterial13(SecurityParameters sp, String asciiLabel, byte[] context_value,
+        int length)
+    {
+        TlsSecret exporterMasterSecret = sp.exporterMasterSecret;
+        if (null == exporterMasterSecret)
+        {
+            throw new IllegalStateException("Export of key material unavailable after connection closure");
+        }
+
+        /*
+         * RFC 8446 7.5. TLS-Exporter(label, context_value, key_length) =
+         *     HKDF-Expand-Label(Derive-Secret(Secret, label, ""), "exporter", Hash(context_value), key_length)
+         *
+         * NOTE: No context is treated the same as an empty context.
+         */
+        short hashAlgorithm = TlsUtils.getHashAlgorithm13(sp);
+
+        try
+        {
+            TlsHash emptyHash = crypto.createHash(hashAlgorithm);
+            TlsSecret exporterSecret = TlsUtils.derive13Secret(exporterMasterSecret, hashAlgorithm, asciiLabel,
+                emptyHash.calculateHash());
+            try
+            {
+                TlsHash contextHash = crypto.createHash(hashAlgorithm);
+                if (null != context_value)
+                {
+                    contextHash.update(context_value, 0, context_value.length);
+                }
+
+                return TlsCryptoUtils.hkdfExpandLabel(exporterSecret, hashAlgorithm, "exporter",
+                    contextHash.calculateHash(), length).extract();
+            }
+            finally
+            {
+                exporterSecret.destroy();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("error in export of key material: " + e.getMessage());
+        }
+    }
 }
@@ -7,6 +7,7 @@
 import org.bouncycastle.tls.crypto.TlsCrypto;
 import org.bouncycastle.tls.crypto.TlsDHConfig;
 import org.bouncycastle.tls.crypto.TlsECConfig;
+import org.bouncycastle.util.Arrays;
 
 /**
  * Base class for a TLS client.
@@ -114,6 +115,29 @@ protected boolean isSelectableCipherSuite(int cipherSuite, int availCurveBits, i
             && TlsUtils.isValidCipherSuiteForSignatureAlgorithms(cipherSuite, sigAlgs);
     }
 
+    /**
+     * @return whether the group can be used for a TLS 1.3 key share (RFC 8446 4.2.7).
+     */
+    protected boolean isSelectableKeyShareGroup(int namedGroup)
+    {
+        switch (namedGroup)
+        {
+        case NamedGroup.secp256r1:
+        case NamedGroup.secp384r1:
+        case NamedGroup.secp521r1:
+        case NamedGroup.x25519:
+        case NamedGroup.x448:
+        case NamedGroup.ffdhe2048:
+        case NamedGroup.ffdhe3072:
+        case NamedGroup.ffdhe4096:
+        case NamedGroup.ffdhe6144:
+        case NamedGroup.ffdhe8192:
+            return getCrypto().hasNamedGroup(namedGroup);
+        default:
+            return false;
+        }
+    }
+
     protected boolean preferLocalCipherSuites()
     {
         return false;
@@ -421,6 +445,37 @@ public Hashtable getServerExtensions()
         return serverExtensions;
     }
 
+    public int getSelectedKeyShareGroup(int[] clientShareGroups)
+        throws IOException
+    {
+        int[] clientSupportedGroups = context.getSecurityParametersHandshake().getClientSupportedGroups();
+        if (null == clientSupportedGroups)
+        {
+            return -1;
+        }
+
+        // Prefer a group the client has already sent a key share for, avoiding a HelloRetryRequest
+        for (int i = 0; i < clientShareGroups.length; ++i)
+        {
+            int namedGroup = clientShareGroups[i];
+            if (Arrays.contains(clientSupportedGroups, namedGroup) && isSelectableKeyShareGroup(namedGroup))
+            {
+                return namedGroup;
+            }
+        }
+
+        for (int i = 0; i < clientSupportedGroups.length; ++i)
+        {
+            int namedGroup = clientSupportedGroups[i];
+            if (isSelectableKeyShareGroup(namedGroup))
+            {
+                return namedGroup;
+            }
+        }
+
+        return -1;
+    }
+
     public Vector getServerSupplementalData()
         throws IOException
     {
@@ -500,4 +555,16 @@ public NewSessionTicket getNewSessionTicket()
          */
         return new NewSessionTicket(0L, TlsUtils.EMPTY_BYTES);
     }
+
+    public long getSessionTicketLifetime()
+        throws IOException
+    {
+        // Sessions can't be resumed unless getSessionToResume is also overridden
+        return 0L;
+    }
+
+    public void notifyResumableSession(TlsSession session)
+        throws IOException
+    {
+    }
 }
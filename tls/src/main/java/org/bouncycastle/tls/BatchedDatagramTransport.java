@@ -0,0 +1,41 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+
+/**
+ * A {@link DatagramTransport} that can receive or send several datagrams per call.
+ * <p>
+ * In both directions the datagrams are stored one after the other in a single buffer, with the
+ * length of each one held in a separate array.
+ * </p>
+ */
+public interface BatchedDatagramTransport
+    extends DatagramTransport
+{
+    /**
+     * Receive one or more datagrams. Only the first is waited for; any further datagrams are
+     * received only if they are available immediately and there is room for them.
+     *
+     * @param buf the buffer to receive the datagrams into.
+     * @param off the offset in buf at which to store the first datagram.
+     * @param len the space available in buf.
+     * @param lengths array to receive the length of each datagram; its size limits the number received.
+     * @param waitMillis the maximum time to wait for the first datagram.
+     * @return the number of datagrams received, or a negative value if none arrived in time.
+     * @throws IOException if an I/O error occurs.
+     */
+    int receiveMultiple(byte[] buf, int off, int len, int[] lengths, int waitMillis)
+        throws IOException;
+
+    /**
+     * Send several datagrams.
+     *
+     * @param buf the buffer holding the datagrams.
+     * @param off the offset in buf of the first datagram.
+     * @param lengths the length of each datagram.
+     * @param count the number of datagrams to send.
+     * @throws IOException if an I/O error occurs.
+     */
+    void sendMultiple(byte[] buf, int off, int[] lengths, int count)
+        throws IOException;
+}
@@ -3,9 +3,17 @@
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.bouncycastle.util.Arrays;
 
 /**
- * A queue for bytes. This file could be more optimized.
+ * A queue for bytes.
+ * <p>
+ * The data is held in fixed-size segments taken from a pool shared by all queues. A queue only
+ * holds the segments its current data needs, and returns them to the pool as soon as they are
+ * drained, so an idle queue holds no buffer memory and growing a queue never copies existing data.
+ * </p>
  */
 public class ByteQueue
 {
@@ -27,12 +35,66 @@ public static int nextTwoPow(int i)
     }
 
     /**
-     * The buffer where we store our data.
+     * The size, in bytes, of the segments queues are built from.
+     */
+    public static final int SEGMENT_SIZE = 4096;
+
+    private static final int DEFAULT_MAX_POOLED_SEGMENTS = 1024;
+
+    private static final byte[][] EMPTY_SEGMENTS = new byte[0][];
+
+    private static final SegmentPool pool = new SegmentPool(DEFAULT_MAX_POOLED_SEGMENTS);
+
+    /**
+     * Set the maximum number of free segments kept in the shared pool. Segments released when the
+     * pool is full are left to the garbage collector.
+     *
+     * @param maxPooledSegments the maximum number of segments to keep, 0 to disable pooling.
+     */
+    public static void setMaxPooledSegments(int maxPooledSegments)
+    {
+        if (maxPooledSegments < 0)
+        {
+            throw new IllegalArgumentException("'maxPooledSegments' cannot be negative");
+        }
+
+        pool.setMaxSegments(maxPooledSegments);
+    }
+
+    /**
+     * Return the maximum number of free segments kept in the shared pool.
+     *
+     * @return the maximum number of pooled segments.
+     */
+    public static int getMaxPooledSegments()
+    {
+        return pool.getMaxSegments();
+    }
+
+    /**
+     * Return the number of free segments currently held in the shared pool.
+     *
+     * @return the number of pooled segments.
+     */
+    public static int getPooledSegmentCount()
+    {
+        return pool.getFreeCount();
+    }
+
+    /**
+     * A caller supplied array, for queues created by {@link #ByteQueue(byte[], int, int)}.
      */
-    private byte[] databuf;
+    private final byte[] readOnlyBuf;
 
     /**
-     * How many bytes at the beginning of the buffer are skipped.
+     * The segments holding our data, in order, starting at firstSegment.
+     */
+    private byte[][] segments = EMPTY_SEGMENTS;
+    private int firstSegment = 0;
+    private int segmentCount = 0;
+
+    /**
+     * How many bytes at the beginning of the first segment (or readOnlyBuf) are skipped.
      */
     private int skipped = 0;
 
@@ -41,24 +103,27 @@ public static int nextTwoPow(int i)
      */
     private int available = 0;
 
-    private boolean readOnlyBuf = false;
-
     public ByteQueue()
     {
         this(0);
     }
 
+    /**
+     * @param capacity ignored, as space is allocated a segment at a time as needed.
+     */
     public ByteQueue(int capacity)
     {
-        databuf = capacity == 0 ? TlsUtils.EMPTY_BYTES : new byte[capacity];
+        this.readOnlyBuf = null;
     }
 
+    /**
+     * Create a read-only queue over the passed in data, which is used directly rather than copied.
+     */
     public ByteQueue(byte[] buf, int off, int len)
     {
-        this.databuf = buf;
+        this.readOnlyBuf = buf;
         this.skipped = off;
         this.available = len;
-        this.readOnlyBuf = true;
     }
 
     /**
@@ -70,29 +135,26 @@ public ByteQueue(byte[] buf, int off, int len)
      */
     public void addData(byte[] buf, int off, int len)
     {
-        if (readOnlyBuf)
+        if (readOnlyBuf != null)
         {
             throw new IllegalStateException("Cannot add data to read-only buffer");
         }
 
-        if ((skipped + available + len) > databuf.length)
+        while (len > 0)
         {
-            int desiredSize = ByteQueue.nextTwoPow(available + len);
-            if (desiredSize > databuf.length)
+            int end = skipped + available;
+            int index = end / SEGMENT_SIZE, segOff = end % SEGMENT_SIZE;
+            if (index == segmentCount)
             {
-                byte[] tmp = new byte[desiredSize];
-                System.arraycopy(databuf, skipped, tmp, 0, available);
-                databuf = tmp;
+                appendSegment();
             }
-            else
-            {
-                System.arraycopy(databuf, skipped, databuf, 0, available);
-            }
-            skipped = 0;
-        }
 
-        System.arraycopy(buf, off, databuf, skipped + available, len);
-        available += len;
+            int count = Math.min(len, SEGMENT_SIZE - segOff);
+            System.arraycopy(buf, off, segments[firstSegment + index], segOff, count);
+            off += count;
+            len -= count;
+            available += count;
+        }
     }
 
     /**
@@ -116,7 +178,21 @@ public void copyTo(OutputStream output, int length) throws IOException
             throw new IllegalStateException("Cannot copy " + length + " bytes, only got " + available);
         }
 
-        output.write(databuf, skipped, length);
+        if (readOnlyBuf != null)
+        {
+            output.write(readOnlyBuf, skipped, length);
+            return;
+        }
+
+        int pos = skipped;
+        while (length > 0)
+        {
+            int segOff = pos % SEGMENT_SIZE;
+            int count = Math.min(length, SEGMENT_SIZE - segOff);
+            output.write(segments[firstSegment + pos / SEGMENT_SIZE], segOff, count);
+            pos += count;
+            length -= count;
+        }
     }
 
     /**
@@ -138,7 +214,60 @@ public void read(byte[] buf, int offset, int len, int skip)
         {
             throw new IllegalStateException("Not enough data to read");
         }
-        System.arraycopy(databuf, skipped + skip, buf, offset, len);
+
+        if (readOnlyBuf != null)
+        {
+            System.arraycopy(readOnlyBuf, skipped + skip, buf, offset, len);
+            return;
+        }
+
+        int pos = skipped + skip;
+        while (len > 0)
+        {
+            int segOff = pos % SEGMENT_SIZE;
+            int count = Math.min(len, SEGMENT_SIZE - segOff);
+            System.arraycopy(segments[firstSegment + pos / SEGMENT_SIZE], segOff, buf, offset, count);
+            pos += count;
+            offset += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Read data from the buffer.
+     *
+     * @param buf    The {@link ByteBuffer} where the read data will be copied to, starting at its position.
+     * @param len    How many bytes to read at all.
+     * @param skip   How many bytes from our data to skip.
+     */
+    public void read(ByteBuffer buf, int len, int skip)
+    {
+        int remaining = buf.remaining();
+        if (remaining < len)
+        {
+            throw new IllegalArgumentException("Buffer size of " + remaining
+                + " is too small for a read of " + len + " bytes");
+        }
+        if ((available - skip) < len)
+        {
+            throw new IllegalStateException("Not enough data to read");
+        }
+
+        if (readOnlyBuf != null)
+        {
+            buf.put(readOnlyBuf, skipped + skip, len);
+            return;
+        }
+
+        int pos = skipped + skip;
+        while (len > 0)
+        {
+            int segOff = pos % SEGMENT_SIZE;
+            int count = Math.min(len, SEGMENT_SIZE - segOff);
+            buf.put(segments[firstSegment + pos / SEGMENT_SIZE], segOff, count);
+            pos += count;
+            len -= count;
+        }
     }
 
     /**
@@ -153,12 +282,18 @@ public ByteArrayInputStream readFrom(int length)
             throw new IllegalStateException("Cannot read " + length + " bytes, only got " + available);
         }
 
-        int position = skipped;
+        if (readOnlyBuf != null)
+        {
+            int position = skipped;
 
-        available -= length;
-        skipped += length;
+            available -= length;
+            skipped += length;
 
-        return new ByteArrayInputStream(databuf, position, length);
+            return new ByteArrayInputStream(readOnlyBuf, position, length);
+        }
+
+        // Segments go back to the pool once drained, so the stream needs its own copy
+        return new ByteArrayInputStream(removeData(length, 0));
     }
 
     /**
@@ -178,6 +313,21 @@ public void removeData(int i)
          */
         available -= i;
         skipped += i;
+
+        if (readOnlyBuf == null)
+        {
+            if (available == 0)
+            {
+                releaseSegments(segmentCount);
+                skipped = 0;
+            }
+            else if (skipped >= SEGMENT_SIZE)
+            {
+                int drained = skipped / SEGMENT_SIZE;
+                releaseSegments(drained);
+                skipped -= drained * SEGMENT_SIZE;
+            }
+        }
     }
 
     /**
@@ -194,6 +344,19 @@ public void removeData(byte[] buf, int off, int len, int skip)
         removeData(skip + len);
     }
 
+    /**
+     * Remove data from the buffer.
+     *
+     * @param buf The {@link ByteBuffer} where the removed data will be copied to, starting at its position.
+     * @param len How many bytes to read at all.
+     * @param skip How many bytes from our data to skip.
+     */
+    public void removeData(ByteBuffer buf, int len, int skip)
+    {
+        read(buf, len, skip);
+        removeData(skip + len);
+    }
+
     public byte[] removeData(int len, int skip)
     {
         byte[] buf = new byte[len];
@@ -203,20 +366,116 @@ public byte[] removeData(int len, int skip)
 
     public void shrink()
     {
-        if (available == 0)
+        // Drained segments are returned as soon as they are empty, so only the index can shrink
+        if (segmentCount == 0)
         {
-            databuf = TlsUtils.EMPTY_BYTES;
-            skipped = 0;
+            segments = EMPTY_SEGMENTS;
+            firstSegment = 0;
         }
-        else
+    }
+
+    private void appendSegment()
+    {
+        if (firstSegment + segmentCount == segments.length)
         {
-            int desiredSize = ByteQueue.nextTwoPow(available);
-            if (desiredSize < databuf.length)
+            if (segmentCount < segments.length / 2)
             {
-                byte[] tmp = new byte[desiredSize];
-                System.arraycopy(databuf, skipped, tmp, 0, available);
-                databuf = tmp;
-                skipped = 0;
+                System.arraycopy(segments, firstSegment, segments, 0, segmentCount);
+                for (int i = segmentCount; i < segments.length; ++i)
+                {
+                    segments[i] = null;
+                }
+            }
+            else
+            {
+                byte[][] tmp = new byte[Math.max(4, segments.length * 2)][];
+                System.arraycopy(segments, firstSegment, tmp, 0, segmentCount);
+                segments = tmp;
+            }
+            firstSegment = 0;
+        }
+
+        segments[firstSegment + segmentCount++] = pool.take();
+    }
+
+    private void releaseSegments(int count)
+    {
+        for (int i = 0; i < count; ++i)
+        {
+            pool.release(segments[firstSegment]);
+            segments[firstSegment++] = null;
+            --segmentCount;
+        }
+
+        if (segmentCount == 0)
+        {
+            firstSegment = 0;
+        }
+    }
+
+    private static class SegmentPool
+    {
+        private byte[][] free = new byte[16][];
+        private int freeCount = 0;
+        private int maxSegments;
+
+        SegmentPool(int maxSegments)
+        {
+            this.maxSegments = maxSegments;
+        }
+
+        synchronized int getMaxSegments()
+        {
+            return maxSegments;
+        }
+
+        synchronized int getFreeCount()
+        {
+            return freeCount;
+        }
+
+        synchronized void setMaxSegments(int maxSegments)
+        {
+            this.maxSegments = maxSegments;
+
+            while (freeCount > maxSegments)
+            {
+                free[--freeCount] = null;
+            }
+        }
+
+        byte[] take()
+        {
+            synchronized (this)
+            {
+                if (freeCount > 0)
+                {
+                    byte[] segment = free[--freeCount];
+                    free[freeCount] = null;
+                    return segment;
+                }
+            }
+
+            return new byte[SEGMENT_SIZE];
+        }
+
+        void release(byte[] segment)
+        {
+            // Segments can hold plaintext, so don't hand the old contents on to another queue
+            Arrays.fill(segment, (byte)0);
+
+            synchronized (this)
+            {
+                if (freeCount < maxSegments)
+                {
+                    if (freeCount == free.length)
+                    {
+                        byte[][] tmp = new byte[Math.min(maxSegments, free.length * 2)][];
+                        System.arraycopy(free, 0, tmp, 0, freeCount);
+                        free = tmp;
+                    }
+                    free[freeCount++] = segment;
+                }
             }
         }
     }
@@ -4,7 +4,8 @@
 import java.io.OutputStream;
 
 /**
- * OutputStream based on a ByteQueue implementation.
+ * OutputStream based on a ByteQueue implementation. Writes synchronize on the stream, so callers
+ * reading the buffer concurrently with writers should do the same.
  */
 public class ByteQueueOutputStream
     extends OutputStream
@@ -21,12 +22,12 @@ public ByteQueue getBuffer()
         return buffer;
     }
 
-    public void write(int b) throws IOException
+    public synchronized void write(int b) throws IOException
     {
         buffer.addData(new byte[]{ (byte)b }, 0, 1);
     }
 
-    public void write(byte[] b, int off, int len) throws IOException
+    public synchronized void write(byte[] b, int off, int len) throws IOException
     {
         buffer.addData(b, off, len);
     }
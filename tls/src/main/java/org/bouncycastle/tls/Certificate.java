@@ -1,12 +1,14 @@
 package org.bouncycastle.tls;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Vector;
 
 import org.bouncycastle.tls.crypto.TlsCertificate;
+import org.bouncycastle.util.Arrays;
 
 /**
  * Parsing and encoding of a <i>Certificate</i> struct from RFC 4346.
@@ -17,6 +19,14 @@
  *     ASN.1Cert certificate_list&lt;0..2^24-1&gt;;
  * } Certificate;
  * </pre>
+ * In TLS 1.3 (RFC 8446 4.4.2) the message also carries a certificate_request_context, and each
+ * certificate is followed by a list of extensions. Per-certificate extensions are not currently
+ * retained when parsing, and none are sent.
+ * <p>
+ * An instance is treated as immutable once it has been sent: the encoded handshake message is
+ * computed the first time and reused by every later handshake that sends the same instance, so a
+ * server should keep the {@link Certificate} of each of its credentials rather than recreate it.
+ * </p>
  *
  * @see org.bouncycastle.asn1.x509.Certificate
  */
@@ -24,18 +34,46 @@
 {
     public static final Certificate EMPTY_CHAIN = new Certificate(new TlsCertificate[0]);
 
+    protected byte[] certificateRequestContext;
     protected TlsCertificate[] certificateList;
 
+    private volatile byte[] encodedMessage = null, encodedMessage13 = null;
+    private volatile byte[] endPointHash = null;
+
     public Certificate(TlsCertificate[] certificateList)
+    {
+        this(null, certificateList);
+    }
+
+    /**
+     * @param certificateRequestContext the TLS 1.3 certificate_request_context, or null (for
+     *            earlier versions).
+     * @param certificateList the certificate chain.
+     */
+    public Certificate(byte[] certificateRequestContext, TlsCertificate[] certificateList)
     {
         if (certificateList == null)
         {
             throw new IllegalArgumentException("'certificateList' cannot be null");
         }
+        if (certificateRequestContext != null && !TlsUtils.isValidUint8(certificateRequestContext.length))
+        {
+            throw new IllegalArgumentException("'certificateRequestContext' cannot be longer than 255");
+        }
 
+        this.certificateRequestContext = Arrays.clone(certificateRequestContext);
         this.certificateList = certificateList;
     }
 
+    /**
+     * @return the TLS 1.3 certificate_request_context, or null if this is not a TLS 1.3
+     *         certificate message.
+     */
+    public byte[] getCertificateRequestContext()
+    {
+        return Arrays.clone(certificateRequestContext);
+    }
+
     /**
      * @return an array of {@link org.bouncycastle.asn1.x509.Certificate} representing a certificate
      *         chain.
@@ -88,6 +126,13 @@ public void encode(OutputStream output)
     public void encode(TlsContext context, OutputStream messageOutput, OutputStream endPointHashOutput)
         throws IOException
     {
+        boolean isTLSv13 = isTLSv13(context);
+        if (isTLSv13)
+        {
+            TlsUtils.writeOpaque8(certificateRequestContext == null ? TlsUtils.EMPTY_BYTES : certificateRequestContext,
+                messageOutput);
+        }
+
         Vector derEncodings = new Vector(this.certificateList.length);
 
         int totalLength = 0;
@@ -103,6 +148,11 @@ public void encode(TlsContext context, OutputStream messageOutput, OutputStream
 
             derEncodings.addElement(derEncoding);
             totalLength += derEncoding.length + 3;
+            if (isTLSv13)
+            {
+                // Empty extensions
+                totalLength += 2;
+            }
         }
 
         TlsUtils.checkUint24(totalLength);
@@ -112,6 +162,10 @@ public void encode(TlsContext context, OutputStream messageOutput, OutputStream
         {
             byte[] derEncoding = (byte[])derEncodings.elementAt(i);
             TlsUtils.writeOpaque24(derEncoding, messageOutput);
+            if (isTLSv13)
+            {
+                TlsUtils.writeUint16(0, messageOutput);
+            }
         }
     }
 
@@ -146,10 +200,18 @@ public static Certificate parse(TlsContext context, InputStream input)
     public static Certificate parse(TlsContext context, InputStream messageInput, OutputStream endPointHashOutput)
         throws IOException
     {
+        boolean isTLSv13 = isTLSv13(context);
+
+        byte[] certificateRequestContext = null;
+        if (isTLSv13)
+        {
+            certificateRequestContext = TlsUtils.readOpaque8(messageInput);
+        }
+
         int totalLength = TlsUtils.readUint24(messageInput);
         if (totalLength == 0)
         {
-            return EMPTY_CHAIN;
+            return isTLSv13 ? new Certificate(certificateRequestContext, new TlsCertificate[0]) : EMPTY_CHAIN;
         }
 
         byte[] certListData = TlsUtils.readFully(totalLength, messageInput);
@@ -168,6 +230,12 @@ public static Certificate parse(TlsContext context, InputStream messageInput, Ou
             }
 
             certificate_list.addElement(cert);
+
+            if (isTLSv13)
+            {
+                // TODO[tls13] Process the per-certificate extensions (status_request, signed_certificate_timestamp)
+                TlsUtils.readOpaque16(buf);
+            }
         }
 
         TlsCertificate[] certificateList = new TlsCertificate[certificate_list.size()];
@@ -175,7 +243,7 @@ public static Certificate parse(TlsContext context, InputStream messageInput, Ou
         {
             certificateList[i] = (TlsCertificate)certificate_list.elementAt(i);
         }
-        return new Certificate(certificateList);
+        return new Certificate(certificateRequestContext, certificateList);
     }
 
     protected static void calculateEndPointHash(TlsContext context, TlsCertificate cert, byte[] encoding, OutputStream output)
@@ -188,6 +256,72 @@ protected static void calculateEndPointHash(TlsContext context, TlsCertificate c
         }
     }
 
+    /**
+     * @return the complete (TLS 1.3 or earlier) <i>certificate</i> handshake message for this chain.
+     */
+    byte[] getEncodedMessage(TlsContext context)
+        throws IOException
+    {
+        boolean isTLSv13 = isTLSv13(context);
+
+        byte[] message = isTLSv13 ? encodedMessage13 : encodedMessage;
+        if (null == message)
+        {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            encode(context, body, null);
+            message = TlsUtils.encodeHandshakeMessage(HandshakeType.certificate, body.toByteArray());
+
+            if (isTLSv13)
+            {
+                this.encodedMessage13 = message;
+            }
+            else
+            {
+                this.encodedMessage = message;
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Write the "end point hash" (per RFC 5929's tls-server-end-point binding) of the end-entity
+     * certificate, calculating it only the first time.
+     */
+    void writeEndPointHash(TlsContext context, OutputStream output)
+        throws IOException
+    {
+        if (isEmpty())
+        {
+            return;
+        }
+
+        byte[] hash = endPointHash;
+        if (null == hash)
+        {
+            TlsCertificate cert = certificateList[0];
+            hash = TlsUtils.calculateEndPointHash(context, cert.getSigAlgOID(), cert.getEncoded());
+            if (null == hash)
+            {
+                hash = TlsUtils.EMPTY_BYTES;
+            }
+            this.endPointHash = hash;
+        }
+
+        output.write(hash);
+    }
+
+    private static boolean isTLSv13(TlsContext context)
+    {
+        if (null == context)
+        {
+            return false;
+        }
+
+        SecurityParameters securityParameters = context.getSecurityParameters();
+        ProtocolVersion negotiatedVersion = null == securityParameters ? null : securityParameters.getNegotiatedVersion();
+        return null != negotiatedVersion && TlsUtils.isTLSv13(negotiatedVersion);
+    }
+
     protected TlsCertificate[] cloneCertificateList()
     {
         TlsCertificate[] result = new TlsCertificate[certificateList.length];
@@ -1,6 +1,7 @@
 package org.bouncycastle.tls;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -18,6 +19,11 @@
  *     DistinguishedName certificate_authorities&lt;3..2^16-1&gt;;
  * } CertificateRequest;
  * </pre>
+ * <p>
+ * An instance (including the vectors passed to the constructor) is treated as immutable once it
+ * has been sent: the encoded handshake message is computed the first time and reused by every later
+ * handshake that sends the same instance.
+ * </p>
  *
  * @see ClientCertificateType
  * @see X500Name
@@ -28,6 +34,8 @@
     protected Vector supportedSignatureAlgorithms;
     protected Vector certificateAuthorities;
 
+    private volatile byte[] encodedMessage = null;
+
     /**
      * @param certificateTypes       see {@link ClientCertificateType} for valid constants.
      * @param certificateAuthorities a {@link Vector} of {@link X500Name}.
@@ -118,6 +126,23 @@ public void encode(OutputStream output)
         }
     }
 
+    /**
+     * @return the complete <i>certificate_request</i> handshake message, encoded on first use.
+     */
+    byte[] getEncodedMessage()
+        throws IOException
+    {
+        byte[] message = encodedMessage;
+        if (null == message)
+        {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            encode(body);
+            message = TlsUtils.encodeHandshakeMessage(HandshakeType.certificate_request, body.toByteArray());
+            this.encodedMessage = message;
+        }
+        return message;
+    }
+
     /**
      * Parse a {@link CertificateRequest} from an {@link InputStream}.
      * 
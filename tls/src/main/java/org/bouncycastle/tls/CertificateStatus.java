@@ -1,5 +1,6 @@
 package org.bouncycastle.tls;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -12,6 +13,8 @@
     protected short statusType;
     protected Object response;
 
+    private volatile byte[] encodedMessage = null;
+
     public CertificateStatus(short statusType, Object response)
     {
         if (!isCorrectType(statusType, response))
@@ -64,6 +67,23 @@ public void encode(OutputStream output) throws IOException
         }
     }
 
+    /**
+     * @return the complete <i>certificate_status</i> handshake message, encoded on first use.
+     */
+    byte[] getEncodedMessage()
+        throws IOException
+    {
+        byte[] message = encodedMessage;
+        if (null == message)
+        {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            encode(body);
+            message = TlsUtils.encodeHandshakeMessage(HandshakeType.certificate_status, body.toByteArray());
+            this.encodedMessage = message;
+        }
+        return message;
+    }
+
     /**
      * Parse a {@link CertificateStatus} from an {@link InputStream}.
      * 
@@ -0,0 +1,184 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.ResponseBytes;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
+
+/**
+ * A server-side cache of the {@link CertificateStatus} (e.g. a stapled OCSP response) for one
+ * certificate chain, for use from {@link TlsServer#getCertificateStatus()}.
+ * <p>
+ * The same {@link CertificateStatus} instance is returned (and so only encoded once) until it is
+ * due to be refreshed: after a configured maximum age, or at the earliest nextUpdate time of an OCSP
+ * response, whichever comes first. Only one thread refreshes at a time; meanwhile, and if a refresh
+ * fails, handshakes are given the previous status as long as it has not passed its nextUpdate time,
+ * and for at most the maximum age again after it was due to be refreshed. A failed refresh, or one
+ * that returns an already expired response, is retried after at most a minute.
+ * </p>
+ */
+public class CertificateStatusCache
+{
+    /**
+     * Source of fresh certificate status, e.g. a query to an OCSP responder.
+     */
+    public interface Source
+    {
+        /**
+         * @return the current status, or null if none is available.
+         * @throws IOException if the status could not be obtained.
+         */
+        CertificateStatus fetchCertificateStatus() throws IOException;
+    }
+
+    private static final long MAX_RETRY_MILLIS = 60 * 1000L;
+
+    private final Source source;
+    private final long maxAgeMillis;
+
+    private CertificateStatus status = null;
+    private long refreshMillis = 0L;
+    private long expiryMillis = 0L;
+    private boolean refreshing = false;
+
+    /**
+     * @param source the source of fresh status.
+     * @param maxAgeMillis the maximum time, in milliseconds, to use a status for before refreshing it.
+     */
+    public CertificateStatusCache(Source source, long maxAgeMillis)
+    {
+        if (null == source)
+        {
+            throw new IllegalArgumentException("'source' cannot be null");
+        }
+        if (maxAgeMillis < 1L)
+        {
+            throw new IllegalArgumentException("'maxAgeMillis' must be >= 1");
+        }
+
+        this.source = source;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return the cached status (refreshing it first if it is due), or null if none is available.
+     */
+    public CertificateStatus getCertificateStatus()
+    {
+        synchronized (this)
+        {
+            long now = System.currentTimeMillis();
+            if (now < refreshMillis || refreshing)
+            {
+                return getUnexpired(now);
+            }
+
+            this.refreshing = true;
+        }
+
+        CertificateStatus fetched = null;
+        boolean failed = false;
+        try
+        {
+            fetched = source.fetchCertificateStatus();
+        }
+        catch (Exception e)
+        {
+            failed = true;
+        }
+
+        synchronized (this)
+        {
+            this.refreshing = false;
+
+            long now = System.currentTimeMillis();
+            long retryMillis = addMillis(now, Math.min(maxAgeMillis, MAX_RETRY_MILLIS));
+            if (failed)
+            {
+                // Keep any previous status while it is still valid, and try again soon
+                this.refreshMillis = retryMillis;
+                return getUnexpired(now);
+            }
+
+            long refresh = addMillis(now, maxAgeMillis);
+
+            long nextUpdate = null == fetched ? Long.MAX_VALUE : getNextUpdate(fetched);
+
+            // Even without a nextUpdate, stop serving the status maxAgeMillis after it is due for refresh
+            long expiry = Math.min(nextUpdate, addMillis(refresh, maxAgeMillis));
+
+            this.status = fetched;
+            this.expiryMillis = expiry;
+
+            // A response that has already expired is not worth fetching again straight away
+            this.refreshMillis = expiry > now ? Math.min(refresh, expiry) : retryMillis;
+            return getUnexpired(now);
+        }
+    }
+
+    /**
+     * Discard the cached status, so that the next handshake fetches a fresh one.
+     */
+    public synchronized void invalidate()
+    {
+        this.status = null;
+        this.refreshMillis = 0L;
+        this.expiryMillis = 0L;
+    }
+
+    private static long addMillis(long millis, long delta)
+    {
+        return millis > Long.MAX_VALUE - delta ? Long.MAX_VALUE : millis + delta;
+    }
+
+    private CertificateStatus getUnexpired(long now)
+    {
+        return now < expiryMillis ? status : null;
+    }
+
+    /**
+     * @return the earliest nextUpdate time (in milliseconds) of the OCSP responses in the status, or
+     *         Long.MAX_VALUE if none is specified.
+     */
+    private static long getNextUpdate(CertificateStatus certificateStatus)
+    {
+        if (CertificateStatusType.ocsp != certificateStatus.getStatusType())
+        {
+            return Long.MAX_VALUE;
+        }
+
+        try
+        {
+            OCSPResponse ocspResponse = certificateStatus.getOCSPResponse();
+            ResponseBytes responseBytes = ocspResponse.getResponseBytes();
+            if (null == responseBytes || !OCSPObjectIdentifiers.id_pkix_ocsp_basic.equals(responseBytes.getResponseType()))
+            {
+                return Long.MAX_VALUE;
+            }
+
+            BasicOCSPResponse basicResponse = BasicOCSPResponse.getInstance(responseBytes.getResponse().getOctets());
+            ASN1Sequence responses = basicResponse.getTbsResponseData().getResponses();
+
+            long result = Long.MAX_VALUE;
+            for (int i = 0; i < responses.size(); ++i)
+            {
+                ASN1GeneralizedTime nextUpdate = SingleResponse.getInstance(responses.getObjectAt(i)).getNextUpdate();
+                if (null != nextUpdate)
+                {
+                    result = Math.min(result, nextUpdate.getDate().getTime());
+                }
+            }
+            return result;
+        }
+        catch (Exception e)
+        {
+            // An unparseable response is used for no longer than the maximum age
+            return Long.MAX_VALUE;
+        }
+    }
+}
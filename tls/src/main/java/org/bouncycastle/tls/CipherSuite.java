@@ -432,6 +432,15 @@
     public static final int TLS_ECDHE_PSK_WITH_AES_128_CCM_8_SHA256 = 0xD003;
     public static final int TLS_ECDHE_PSK_WITH_AES_128_CCM_SHA256 = 0xD005;
 
+    /*
+     * RFC 8446 B.4
+     */
+    public static final int TLS_AES_128_GCM_SHA256 = 0x1301;
+    public static final int TLS_AES_256_GCM_SHA384 = 0x1302;
+    public static final int TLS_CHACHA20_POLY1305_SHA256 = 0x1303;
+    public static final int TLS_AES_128_CCM_SHA256 = 0x1304;
+    public static final int TLS_AES_128_CCM_8_SHA256 = 0x1305;
+
     public static boolean isSCSV(int cipherSuite)
     {
         switch (cipherSuite)
@@ -3,20 +3,34 @@
 import java.io.IOException;
 
 import org.bouncycastle.tls.crypto.TlsCipher;
+import org.bouncycastle.tls.crypto.TlsDecodeResult;
 import org.bouncycastle.tls.crypto.TlsNullNullCipher;
 
 class DTLSRecordLayer
-    implements DatagramTransport
+    implements BatchedDatagramTransport
 {
     private static final int RECORD_HEADER_LENGTH = 13;
     private static final int MAX_FRAGMENT_LENGTH = 1 << 14;
     private static final long TCP_MSL = 1000L * 60 * 2;
     private static final long RETRANSMIT_TIMEOUT = TCP_MSL * 2;
+    private static final int RECEIVE_BATCH_SIZE = 16;
 
     private final DatagramTransport transport;
     private final TlsPeer peer;
 
-    private final ByteQueue recordQueue = new ByteQueue();
+    /*
+     * Received datagrams, whose records are decrypted in place. [rxPos, rxEnd) is the unread part of
+     * the current datagram; with a batched transport, datagrams rxIndex..rxCount-1 follow from rxNext.
+     */
+    private byte[] rxBuf = null;
+    private int rxPos = 0, rxEnd = 0, rxRecordOff = 0;
+    private int[] rxLengths = null;
+    private int rxIndex = 0, rxCount = 0, rxNext = 0;
+
+    // Outgoing records are encrypted into txBuf, which is shared by all sending threads
+    private final Object txLock = new Object();
+    private byte[] txBuf = null;
+    private int[] txLengths = null;
 
     private volatile boolean closed = false;
     private volatile boolean failed = false;
@@ -137,16 +151,41 @@ public int getSendLimit()
     public int receive(byte[] buf, int off, int len, int waitMillis)
         throws IOException
     {
-        byte[] record = null;
+        return receive(buf, off, len, waitMillis, false);
+    }
 
-        for (;;)
+    public int receiveMultiple(byte[] buf, int off, int len, int[] lengths, int waitMillis)
+        throws IOException
+    {
+        if (lengths.length < 1)
         {
-            int receiveLimit = Math.min(len, getReceiveLimit()) + RECORD_HEADER_LENGTH;
-            if (record == null || record.length < receiveLimit)
+            throw new IllegalArgumentException("'lengths' cannot be empty");
+        }
+
+        // Only the first record is waited for; the rest must already have been received
+        int count = 0, pos = off, end = off + len;
+        while (count < lengths.length)
+        {
+            int received = receive(buf, pos, end - pos, waitMillis, count > 0);
+            if (received < 0)
             {
-                record = new byte[receiveLimit];
+                break;
             }
 
+            lengths[count++] = received;
+            pos += received;
+        }
+
+        return count > 0 ? count : -1;
+    }
+
+    private int receive(byte[] buf, int off, int len, int waitMillis, boolean bufferedOnly)
+        throws IOException
+    {
+        for (;;)
+        {
+            int receiveLimit = Math.min(len, getReceiveLimit()) + RECORD_HEADER_LENGTH;
+
             try
             {
                 if (retransmit != null && System.currentTimeMillis() > retransmitExpiry)
@@ -155,7 +194,7 @@ public int receive(byte[] buf, int off, int len, int waitMillis)
                     retransmitEpoch = null;
                 }
 
-                int received = receiveRecord(record, 0, receiveLimit, waitMillis);
+                int received = receiveRecord(receiveLimit, waitMillis, bufferedOnly);
                 if (received < 0)
                 {
                     return received;
@@ -164,13 +203,17 @@ public int receive(byte[] buf, int off, int len, int waitMillis)
                 {
                     continue;
                 }
-                int length = TlsUtils.readUint16(record, 11);
+
+                byte[] record = rxBuf;
+                int recordOff = rxRecordOff;
+
+                int length = TlsUtils.readUint16(record, recordOff + 11);
                 if (received != (length + RECORD_HEADER_LENGTH))
                 {
                     continue;
                 }
 
-                short type = TlsUtils.readUint8(record, 0);
+                short type = TlsUtils.readUint8(record, recordOff);
 
                 // TODO Support user-specified custom protocols?
                 switch (type)
@@ -186,7 +229,7 @@ public int receive(byte[] buf, int off, int len, int waitMillis)
                     continue;
                 }
 
-                int epoch = TlsUtils.readUint16(record, 3);
+                int epoch = TlsUtils.readUint16(record, recordOff + 3);
 
                 DTLSEpoch recordEpoch = null;
                 if (epoch == readEpoch.getEpoch())
@@ -204,13 +247,13 @@ else if (type == ContentType.handshake && retransmitEpoch != null
                     continue;
                 }
 
-                long seq = TlsUtils.readUint48(record, 5);
+                long seq = TlsUtils.readUint48(record, recordOff + 5);
                 if (recordEpoch.getReplayWindow().shouldDiscard(seq))
                 {
                     continue;
                 }
 
-                ProtocolVersion version = TlsUtils.readVersion(record, 1);
+                ProtocolVersion version = TlsUtils.readVersion(record, recordOff + 1);
                 if (!version.isDTLS())
                 {
                     continue;
@@ -221,13 +264,32 @@ else if (type == ContentType.handshake && retransmitEpoch != null
                     continue;
                 }
 
-                byte[] plaintext = recordEpoch.getCipher().decodeCiphertext(
-                    getMacSequenceNumber(recordEpoch.getEpoch(), seq), type, record, RECORD_HEADER_LENGTH,
+                /*
+                 * Records are decrypted in place, so check that one for the caller will fit their buffer
+                 * while it can still be left untouched. Only a batched transport can hand us a record
+                 * that might not; otherwise the datagram is truncated to fit (and then discarded above).
+                 */
+                if (isForCaller(type) && recordEpoch.getCipher().getPlaintextLimit(length) > len)
+                {
+                    rxPos = recordOff;
+
+                    if (bufferedOnly)
+                    {
+                        // Leave it for a later call with more room
+                        return -1;
+                    }
+
+                    throw new TlsFatalAlert(AlertDescription.internal_error,
+                        new IllegalArgumentException("'len' is less than the receive limit"));
+                }
+
+                TlsDecodeResult decoded = recordEpoch.getCipher().decodeCiphertext(
+                    getMacSequenceNumber(recordEpoch.getEpoch(), seq), type, record, recordOff + RECORD_HEADER_LENGTH,
                     received - RECORD_HEADER_LENGTH);
 
                 recordEpoch.getReplayWindow().reportAuthenticated(seq);
 
-                if (plaintext.length > this.plaintextLimit)
+                if (decoded.len > this.plaintextLimit)
                 {
                     continue;
                 }
@@ -241,10 +303,10 @@ else if (type == ContentType.handshake && retransmitEpoch != null
                 {
                 case ContentType.alert:
                 {
-                    if (plaintext.length == 2)
+                    if (decoded.len == 2)
                     {
-                        short alertLevel = plaintext[0];
-                        short alertDescription = plaintext[1];
+                        short alertLevel = decoded.buf[decoded.off];
+                        short alertDescription = decoded.buf[decoded.off + 1];
 
                         peer.notifyAlertReceived(alertLevel, alertDescription);
 
@@ -277,9 +339,9 @@ else if (type == ContentType.handshake && retransmitEpoch != null
                 {
                     // Implicitly receive change_cipher_spec and change to pending cipher state
 
-                    for (int i = 0; i < plaintext.length; ++i)
+                    for (int i = 0; i < decoded.len; ++i)
                     {
-                        short message = TlsUtils.readUint8(plaintext, i);
+                        short message = TlsUtils.readUint8(decoded.buf, decoded.off + i);
                         if (message != ChangeCipherSpec.change_cipher_spec)
                         {
                             continue;
@@ -299,7 +361,7 @@ else if (type == ContentType.handshake && retransmitEpoch != null
                     {
                         if (retransmit != null)
                         {
-                            retransmit.receivedHandshakeRecord(epoch, plaintext, 0, plaintext.length);
+                            retransmit.receivedHandshakeRecord(epoch, decoded.buf, decoded.off, decoded.len);
                         }
 
                         // TODO Consider support for HelloRequest
@@ -324,8 +386,8 @@ else if (type == ContentType.handshake && retransmitEpoch != null
                     this.retransmitEpoch = null;
                 }
 
-                System.arraycopy(plaintext, 0, buf, off, plaintext.length);
-                return plaintext.length;
+                System.arraycopy(decoded.buf, decoded.off, buf, off, decoded.len);
+                return decoded.len;
             }
             catch (IOException e)
             {
@@ -376,6 +438,56 @@ else if (this.writeEpoch == this.retransmitEpoch)
         sendRecord(contentType, buf, off, len);
     }
 
+    public void sendMultiple(byte[] buf, int off, int[] lengths, int count)
+        throws IOException
+    {
+        if (count < 0 || count > lengths.length)
+        {
+            throw new IllegalArgumentException("'count' out of range");
+        }
+
+        if (this.inHandshake || this.writeEpoch == this.retransmitEpoch || this.writeVersion == null)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                send(buf, off, lengths[i]);
+                off += lengths[i];
+            }
+            return;
+        }
+
+        synchronized (txLock)
+        {
+            if (txLengths == null || txLengths.length < count)
+            {
+                txLengths = new int[count];
+            }
+
+            int txOff = 0;
+            for (int i = 0; i < count; ++i)
+            {
+                int recordLength = encodeRecord(ContentType.application_data, buf, off, lengths[i], txOff);
+                off += lengths[i];
+                txLengths[i] = recordLength;
+                txOff += recordLength;
+            }
+
+            if (transport instanceof BatchedDatagramTransport)
+            {
+                ((BatchedDatagramTransport)transport).sendMultiple(txBuf, 0, txLengths, count);
+            }
+            else
+            {
+                txOff = 0;
+                for (int i = 0; i < count; ++i)
+                {
+                    transport.send(txBuf, txOff, txLengths[i]);
+                    txOff += txLengths[i];
+                }
+            }
+        }
+    }
+
     public void close()
         throws IOException
     {
@@ -464,36 +576,102 @@ private void raiseAlert(short alertLevel, short alertDescription, String message
         sendRecord(ContentType.alert, error, 0, 2);
     }
 
-    private int receiveRecord(byte[] buf, int off, int len, int waitMillis)
+    /**
+     * Whether a record of this type would be returned to the caller, rather than being handled here.
+     */
+    private boolean isForCaller(short type)
+    {
+        return inHandshake ? type == ContentType.handshake : type == ContentType.application_data;
+    }
+
+    /**
+     * Locate the next (possibly truncated) record, receiving more datagrams if necessary, and set
+     * rxRecordOff to its offset in rxBuf.
+     *
+     * @return the number of bytes of the record available, or a negative value if nothing was received.
+     */
+    private int receiveRecord(int receiveLimit, int waitMillis, boolean bufferedOnly)
         throws IOException
     {
-        if (recordQueue.available() > 0)
+        if (rxPos >= rxEnd)
         {
-            int length = 0;
-            if (recordQueue.available() >= RECORD_HEADER_LENGTH)
+            if (rxIndex < rxCount)
             {
-                byte[] lengthBytes = new byte[2];
-                recordQueue.read(lengthBytes, 0, 2, 11);
-                length = TlsUtils.readUint16(lengthBytes, 0);
+                rxPos = rxNext;
+                rxEnd = rxNext + rxLengths[rxIndex++];
+                rxNext = rxEnd;
+            }
+            else if (bufferedOnly)
+            {
+                return -1;
+            }
+            else
+            {
+                int received = receiveDatagrams(receiveLimit, waitMillis);
+                if (received < 0)
+                {
+                    return received;
+                }
             }
-
-            int received = Math.min(recordQueue.available(), RECORD_HEADER_LENGTH + length);
-            recordQueue.removeData(buf, off, received, 0);
-            return received;
         }
 
-        int received = transport.receive(buf, off, len, waitMillis);
+        int received = rxEnd - rxPos;
         if (received >= RECORD_HEADER_LENGTH)
         {
-            int fragmentLength = TlsUtils.readUint16(buf, off + 11);
-            int recordLength = RECORD_HEADER_LENGTH + fragmentLength;
-            if (received > recordLength)
+            int fragmentLength = TlsUtils.readUint16(rxBuf, rxPos + 11);
+            received = Math.min(received, RECORD_HEADER_LENGTH + fragmentLength);
+        }
+
+        rxRecordOff = rxPos;
+        rxPos += received;
+        return received;
+    }
+
+    private int receiveDatagrams(int receiveLimit, int waitMillis)
+        throws IOException
+    {
+        rxIndex = 0;
+        rxCount = 0;
+
+        if (transport instanceof BatchedDatagramTransport)
+        {
+            int size = transport.getReceiveLimit() * RECEIVE_BATCH_SIZE;
+            if (rxBuf == null || rxBuf.length < size)
+            {
+                rxBuf = new byte[size];
+            }
+            if (rxLengths == null)
+            {
+                rxLengths = new int[RECEIVE_BATCH_SIZE];
+            }
+
+            int count = ((BatchedDatagramTransport)transport).receiveMultiple(rxBuf, 0, size, rxLengths, waitMillis);
+            if (count < 1)
             {
-                recordQueue.addData(buf, off + recordLength, received - recordLength);
-                received = recordLength;
+                return -1;
             }
+
+            rxPos = 0;
+            rxEnd = rxLengths[0];
+            rxNext = rxEnd;
+            rxIndex = 1;
+            rxCount = count;
+            return rxEnd;
         }
 
+        if (rxBuf == null || rxBuf.length < receiveLimit)
+        {
+            rxBuf = new byte[receiveLimit];
+        }
+
+        int received = transport.receive(rxBuf, 0, receiveLimit, waitMillis);
+        if (received < 0)
+        {
+            return received;
+        }
+
+        rxPos = 0;
+        rxEnd = received;
         return received;
     }
 
@@ -506,11 +684,6 @@ private void sendRecord(short contentType, byte[] buf, int off, int len)
             return;
         }
 
-        if (len > this.plaintextLimit)
-        {
-            throw new TlsFatalAlert(AlertDescription.internal_error);
-        }
-
         /*
          * RFC 5246 6.2.1 Implementations MUST NOT send zero-length fragments of Handshake, Alert,
          * or ChangeCipherSpec content types.
@@ -520,23 +693,58 @@ private void sendRecord(short contentType, byte[] buf, int off, int len)
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
-        int recordEpoch = writeEpoch.getEpoch();
-        long recordSequenceNumber = writeEpoch.allocateSequenceNumber();
+        synchronized (txLock)
+        {
+            int recordLength = encodeRecord(contentType, buf, off, len, 0);
+
+            transport.send(txBuf, 0, recordLength);
+        }
+    }
+
+    /**
+     * Encode a record into txBuf at txOff, growing txBuf (and keeping its first txOff bytes) as
+     * necessary. Must be called holding txLock.
+     *
+     * @return the length of the encoded record.
+     */
+    private int encodeRecord(short contentType, byte[] buf, int off, int len, int txOff)
+        throws IOException
+    {
+        if (len > this.plaintextLimit)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        DTLSEpoch epoch = writeEpoch;
+        int recordEpoch = epoch.getEpoch();
+        long recordSequenceNumber = epoch.allocateSequenceNumber();
+
+        TlsCipher cipher = epoch.getCipher();
+
+        int required = txOff + RECORD_HEADER_LENGTH + cipher.getCiphertextLimit(len);
+        if (txBuf == null || txBuf.length < required)
+        {
+            byte[] tmp = new byte[required];
+            if (txBuf != null)
+            {
+                System.arraycopy(txBuf, 0, tmp, 0, txOff);
+            }
+            txBuf = tmp;
+        }
 
-        byte[] ciphertext = writeEpoch.getCipher().encodePlaintext(
-            getMacSequenceNumber(recordEpoch, recordSequenceNumber), contentType, buf, off, len);
+        // Encrypt directly after the space reserved for the record header
+        int ciphertextLength = cipher.encodePlaintext(getMacSequenceNumber(recordEpoch, recordSequenceNumber),
+            contentType, buf, off, len, txBuf, txOff + RECORD_HEADER_LENGTH);
 
         // TODO Check the ciphertext length?
 
-        byte[] record = new byte[ciphertext.length + RECORD_HEADER_LENGTH];
-        TlsUtils.writeUint8(contentType, record, 0);
-        TlsUtils.writeVersion(writeVersion, record, 1);
-        TlsUtils.writeUint16(recordEpoch, record, 3);
-        TlsUtils.writeUint48(recordSequenceNumber, record, 5);
-        TlsUtils.writeUint16(ciphertext.length, record, 11);
-        System.arraycopy(ciphertext, 0, record, RECORD_HEADER_LENGTH, ciphertext.length);
+        TlsUtils.writeUint8(contentType, txBuf, txOff);
+        TlsUtils.writeVersion(writeVersion, txBuf, txOff + 1);
+        TlsUtils.writeUint16(recordEpoch, txBuf, txOff + 3);
+        TlsUtils.writeUint48(recordSequenceNumber, txBuf, txOff + 5);
+        TlsUtils.writeUint16(ciphertextLength, txBuf, txOff + 11);
 
-        transport.send(record, 0, record.length);
+        return RECORD_HEADER_LENGTH + ciphertextLength;
     }
 
     private static long getMacSequenceNumber(int epoch, long sequence_number)
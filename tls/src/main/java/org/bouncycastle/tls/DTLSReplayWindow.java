@@ -3,17 +3,23 @@
 /**
  * RFC 4347 4.1.2.5 Anti-replay
  * <p>
- * Support fast rejection of duplicate records by maintaining a sliding receive window
+ * Support fast rejection of duplicate records by maintaining a sliding receive window. The window is
+ * a ring of 64-bit words (see RFC 6479), so advancing it only clears the words it moves past, and
+ * its size can be well above the default of 64 allowed for by RFC 6347 4.1.2.6.
+ * </p>
+ * <p>
+ * The window is only ever accessed by the thread receiving records, so it needs no locking.
  * </p>
  */
 class DTLSReplayWindow
 {
     private static final long VALID_SEQ_MASK = 0x0000FFFFFFFFFFFFL;
 
-    private static final long WINDOW_SIZE = 64L;
+    private static final int WINDOW_WORDS = 16;
+    private static final int WORD_INDEX_MASK = WINDOW_WORDS - 1;
 
     private long latestConfirmedSeq = -1;
-    private long bitmap = 0;
+    private final long[] bitmap = new long[WINDOW_WORDS];
 
     /**
      * Check whether a received record with the given sequence number should be rejected as a duplicate.
@@ -30,12 +36,15 @@ boolean shouldDiscard(long seq)
 
         if (seq <= latestConfirmedSeq)
         {
-            long diff = latestConfirmedSeq - seq;
-            if (diff >= WINDOW_SIZE)
+            /*
+             * The oldest word in the ring shares its slot with the newest one, so the window covers
+             * between (WINDOW_WORDS - 1) * 64 + 1 and WINDOW_WORDS * 64 sequence numbers.
+             */
+            if ((latestConfirmedSeq >>> 6) - (seq >>> 6) >= WINDOW_WORDS)
             {
                 return true;
             }
-            if ((bitmap & (1L << diff)) != 0)
+            if ((bitmap[(int)(seq >>> 6) & WORD_INDEX_MASK] & (1L << (int)seq)) != 0)
             {
                 return true;
             }
@@ -56,28 +65,34 @@ void reportAuthenticated(long seq)
             throw new IllegalArgumentException("'seq' out of range");
         }
 
-        if (seq <= latestConfirmedSeq)
-        {
-            long diff = latestConfirmedSeq - seq;
-            if (diff < WINDOW_SIZE)
-            {
-                bitmap |= (1L << diff);
-            }
-        }
-        else
+        if (seq > latestConfirmedSeq)
         {
-            long diff = seq - latestConfirmedSeq;
-            if (diff >= WINDOW_SIZE)
+            long seqWord = seq >>> 6;
+            long latestWord = latestConfirmedSeq >>> 6;
+
+            if (latestConfirmedSeq < 0 || seqWord - latestWord >= WINDOW_WORDS)
             {
-                bitmap = 1;
+                for (int i = 0; i < WINDOW_WORDS; ++i)
+                {
+                    bitmap[i] = 0;
+                }
             }
             else
             {
-                bitmap <<= (int)diff;        // for earlier JDKs
-                bitmap |= 1;
+                while (latestWord < seqWord)
+                {
+                    bitmap[(int)(++latestWord) & WORD_INDEX_MASK] = 0;
+                }
             }
+
             latestConfirmedSeq = seq;
         }
+        else if ((latestConfirmedSeq >>> 6) - (seq >>> 6) >= WINDOW_WORDS)
+        {
+            return;
+        }
+
+        bitmap[(int)(seq >>> 6) & WORD_INDEX_MASK] |= (1L << (int)seq);
     }
 
     /**
@@ -86,6 +101,9 @@ void reportAuthenticated(long seq)
     void reset()
     {
         latestConfirmedSeq = -1;
-        bitmap = 0;
+        for (int i = 0; i < WINDOW_WORDS; ++i)
+        {
+            bitmap[i] = 0;
+        }
     }
 }
@@ -3,7 +3,7 @@
 import java.io.IOException;
 
 public class DTLSTransport
-    implements DatagramTransport
+    implements BatchedDatagramTransport
 {
     private final DTLSRecordLayer recordLayer;
 
@@ -48,6 +48,35 @@ public int receive(byte[] buf, int off, int len, int waitMillis)
         }
     }
 
+    /**
+     * Receive one or more application data records. Only the first is waited for; after that, only
+     * records already received from the underlying transport are returned. If that transport is a
+     * {@link BatchedDatagramTransport}, it is used to receive several datagrams at a time.
+     */
+    public int receiveMultiple(byte[] buf, int off, int len, int[] lengths, int waitMillis)
+        throws IOException
+    {
+        try
+        {
+            return recordLayer.receiveMultiple(buf, off, len, lengths, waitMillis);
+        }
+        catch (TlsFatalAlert fatalAlert)
+        {
+            recordLayer.fail(fatalAlert.getAlertDescription());
+            throw fatalAlert;
+        }
+        catch (IOException e)
+        {
+            recordLayer.fail(AlertDescription.internal_error);
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            recordLayer.fail(AlertDescription.internal_error);
+            throw new TlsFatalAlert(AlertDescription.internal_error, e);
+        }
+    }
+
     public void send(byte[] buf, int off, int len)
         throws IOException
     {
@@ -72,6 +101,34 @@ public void send(byte[] buf, int off, int len)
         }
     }
 
+    /**
+     * Send several application data records, one per datagram. If the underlying transport is a
+     * {@link BatchedDatagramTransport}, the datagrams are handed to it in a single call.
+     */
+    public void sendMultiple(byte[] buf, int off, int[] lengths, int count)
+        throws IOException
+    {
+        try
+        {
+            recordLayer.sendMultiple(buf, off, lengths, count);
+        }
+        catch (TlsFatalAlert fatalAlert)
+        {
+            recordLayer.fail(fatalAlert.getAlertDescription());
+            throw fatalAlert;
+        }
+        catch (IOException e)
+        {
+            recordLayer.fail(AlertDescription.internal_error);
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            recordLayer.fail(AlertDescription.internal_error);
+            throw new TlsFatalAlert(AlertDescription.internal_error, e);
+        }
+    }
+
     public void close()
         throws IOException
     {
@@ -0,0 +1,223 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * A {@link BatchedDatagramTransport} over a connected {@link DatagramChannel}.
+ * <p>
+ * The channel is switched to non-blocking mode, so that a batch can be filled with whatever
+ * datagrams are already queued after the first one has arrived. The receiving and sending sides
+ * may be used by different threads, but each by only one thread at a time.
+ * </p>
+ */
+public class DatagramChannelTransport
+    implements BatchedDatagramTransport
+{
+    protected final static int MIN_IP_OVERHEAD = 20;
+    protected final static int MAX_IP_OVERHEAD = MIN_IP_OVERHEAD + 64;
+    protected final static int UDP_OVERHEAD = 8;
+
+    protected final DatagramChannel channel;
+    protected final int receiveLimit, sendLimit;
+
+    private final Selector readSelector;
+    private final Selector writeSelector;
+
+    public DatagramChannelTransport(DatagramChannel channel, int mtu)
+        throws IOException
+    {
+        if (!channel.isConnected())
+        {
+            throw new IllegalArgumentException("'channel' must be connected");
+        }
+
+        this.channel = channel;
+
+        this.receiveLimit = mtu - MIN_IP_OVERHEAD - UDP_OVERHEAD;
+        this.sendLimit = mtu - MAX_IP_OVERHEAD - UDP_OVERHEAD;
+
+        channel.configureBlocking(false);
+
+        this.readSelector = Selector.open();
+        this.writeSelector = Selector.open();
+
+        channel.register(readSelector, SelectionKey.OP_READ);
+        channel.register(writeSelector, SelectionKey.OP_WRITE);
+    }
+
+    public int getReceiveLimit()
+    {
+        return receiveLimit;
+    }
+
+    public int getSendLimit()
+    {
+        // TODO[DTLS] Implement Path-MTU discovery?
+        return sendLimit;
+    }
+
+    public int receive(byte[] buf, int off, int len, int waitMillis)
+        throws IOException
+    {
+        return receiveFirst(buf, off, len, waitMillis);
+    }
+
+    public int receiveMultiple(byte[] buf, int off, int len, int[] lengths, int waitMillis)
+        throws IOException
+    {
+        int received = receiveFirst(buf, off, len, waitMillis);
+        if (received < 0)
+        {
+            return -1;
+        }
+
+        lengths[0] = received;
+
+        int count = 1, pos = off + received, end = off + len;
+        while (count < lengths.length)
+        {
+            // Only receive another datagram if it can't be truncated
+            int space = end - pos;
+            if (space < receiveLimit)
+            {
+                break;
+            }
+
+            received = channel.read(ByteBuffer.wrap(buf, pos, space));
+            if (received <= 0)
+            {
+                break;
+            }
+
+            lengths[count++] = received;
+            pos += received;
+        }
+
+        return count;
+    }
+
+    public void send(byte[] buf, int off, int len)
+        throws IOException
+    {
+        checkSendLength(len);
+
+        write(ByteBuffer.wrap(buf, off, len));
+    }
+
+    public void sendMultiple(byte[] buf, int off, int[] lengths, int count)
+        throws IOException
+    {
+        for (int i = 0; i < count; ++i)
+        {
+            checkSendLength(lengths[i]);
+        }
+
+        for (int i = 0; i < count; ++i)
+        {
+            write(ByteBuffer.wrap(buf, off, lengths[i]));
+            off += lengths[i];
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            readSelector.close();
+            writeSelector.close();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private boolean awaitReadable(int waitMillis)
+        throws IOException
+    {
+        if (waitMillis == 0)
+        {
+            // As for UDPTransport (where it goes to setSoTimeout), 0 means wait indefinitely
+            for (;;)
+            {
+                if (readSelector.select() > 0)
+                {
+                    return clearSelected(readSelector);
+                }
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + waitMillis;
+        for (;;)
+        {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+            {
+                // Still check for a datagram that is already queued
+                return readSelector.selectNow() > 0 && clearSelected(readSelector);
+            }
+
+            if (readSelector.select(remaining) > 0)
+            {
+                return clearSelected(readSelector);
+            }
+        }
+    }
+
+    private int receiveFirst(byte[] buf, int off, int len, int waitMillis)
+        throws IOException
+    {
+        // NOTE: A zero-length datagram is indistinguishable from none being available
+        int received = channel.read(ByteBuffer.wrap(buf, off, len));
+        if (received <= 0)
+        {
+            if (!awaitReadable(waitMillis))
+            {
+                return -1;
+            }
+
+            received = channel.read(ByteBuffer.wrap(buf, off, len));
+            if (received <= 0)
+            {
+                return -1;
+            }
+        }
+        return received;
+    }
+
+    private void checkSendLength(int len)
+        throws IOException
+    {
+        if (len > getSendLimit())
+        {
+            /*
+             * RFC 4347 4.1.1. "If the application attempts to send a record larger than the MTU,
+             * the DTLS implementation SHOULD generate an error, thus avoiding sending a packet
+             * which will be fragmented."
+             */
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+    }
+
+    private static boolean clearSelected(Selector selector)
+    {
+        selector.selectedKeys().clear();
+        return true;
+    }
+
+    private void write(ByteBuffer datagram)
+        throws IOException
+    {
+        while (channel.write(datagram) == 0 && datagram.hasRemaining())
+        {
+            // The socket's send buffer is full; wait until there is room for the whole datagram
+            writeSelector.select();
+            writeSelector.selectedKeys().clear();
+        }
+    }
+}
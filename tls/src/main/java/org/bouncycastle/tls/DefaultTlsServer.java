@@ -60,6 +60,16 @@ protected TlsCredentialedSigner getRSASignerCredentials()
         throw new TlsFatalAlert(AlertDescription.internal_error);
     }
 
+    /**
+     * RFC 8446 4.4.2. A TLS 1.3 server is always authenticated by a signature (over the handshake
+     * transcript), using one of the client's signature_algorithms.
+     */
+    protected TlsCredentialedSigner getSignerCredentials13()
+        throws IOException
+    {
+        throw new TlsFatalAlert(AlertDescription.internal_error);
+    }
+
     protected int[] getSupportedCipherSuites()
     {
         return TlsUtils.getSupportedCipherSuites(context.getCrypto(), DEFAULT_CIPHER_SUITES);
@@ -68,6 +78,11 @@ protected int[] getSupportedCipherSuites()
     public TlsCredentials getCredentials()
         throws IOException
     {
+        if (TlsUtils.isTLSv13(context))
+        {
+            return getSignerCredentials13();
+        }
+
         int keyExchangeAlgorithm = TlsUtils.getKeyExchangeAlgorithm(selectedCipherSuite);
 
         switch (keyExchangeAlgorithm)
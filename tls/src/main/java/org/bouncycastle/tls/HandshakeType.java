@@ -36,4 +36,64 @@
      * RFC 5077 
      */
     public static final short session_ticket = 4;
+
+    /*
+     * RFC 8446 4
+     */
+    public static final short end_of_early_data = 5;
+    public static final short encrypted_extensions = 8;
+    public static final short key_update = 24;
+    public static final short message_hash = 254;
+
+    public static String getName(short handshakeType)
+    {
+        switch (handshakeType)
+        {
+        case hello_request:
+            return "hello_request";
+        case client_hello:
+            return "client_hello";
+        case server_hello:
+            return "server_hello";
+        case hello_verify_request:
+            return "hello_verify_request";
+        case session_ticket:
+            return "session_ticket";
+        case end_of_early_data:
+            return "end_of_early_data";
+        case encrypted_extensions:
+            return "encrypted_extensions";
+        case certificate:
+            return "certificate";
+        case server_key_exchange:
+            return "server_key_exchange";
+        case certificate_request:
+            return "certificate_request";
+        case server_hello_done:
+            return "server_hello_done";
+        case certificate_verify:
+            return "certificate_verify";
+        case client_key_exchange:
+            return "client_key_exchange";
+        case finished:
+            return "finished";
+        case certificate_url:
+            return "certificate_url";
+        case certificate_status:
+            return "certificate_status";
+        case supplemental_data:
+            return "supplemental_data";
+        case key_update:
+            return "key_update";
+        case message_hash:
+            return "message_hash";
+        default:
+            return "UNKNOWN";
+        }
+    }
+
+    public static String getText(short handshakeType)
+    {
+        return getName(handshakeType) + "(" + handshakeType + ")";
+    }
 }
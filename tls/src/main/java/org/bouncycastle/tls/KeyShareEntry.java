@@ -0,0 +1,84 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.bouncycastle.util.Arrays;
+
+/**
+ * A TLS 1.3 <i>KeyShareEntry</i> struct from RFC 8446 4.2.8.
+ * <pre>
+ * struct {
+ *     NamedGroup group;
+ *     opaque key_exchange&lt;1..2^16-1&gt;;
+ * } KeyShareEntry;
+ * </pre>
+ */
+public final class KeyShareEntry
+{
+    private final int namedGroup;
+    private final byte[] keyExchange;
+
+    /**
+     * @param namedGroup {@link NamedGroup}
+     * @param keyExchange the encoded key exchange value for the group.
+     */
+    public KeyShareEntry(int namedGroup, byte[] keyExchange)
+    {
+        if (!TlsUtils.isValidUint16(namedGroup))
+        {
+            throw new IllegalArgumentException("'namedGroup' should be a uint16");
+        }
+        if (null == keyExchange)
+        {
+            throw new NullPointerException("'keyExchange' cannot be null");
+        }
+        if (keyExchange.length < 1 || !TlsUtils.isValidUint16(keyExchange.length))
+        {
+            throw new IllegalArgumentException("'keyExchange' must have length from 1 to 65535");
+        }
+
+        this.namedGroup = namedGroup;
+        this.keyExchange = keyExchange;
+    }
+
+    /**
+     * @return {@link NamedGroup}
+     */
+    public int getNamedGroup()
+    {
+        return namedGroup;
+    }
+
+    public byte[] getKeyExchange()
+    {
+        return Arrays.clone(keyExchange);
+    }
+
+    /**
+     * Encode this {@link KeyShareEntry} to an {@link OutputStream}.
+     *
+     * @param output the {@link OutputStream} to encode to.
+     * @throws IOException
+     */
+    public void encode(OutputStream output) throws IOException
+    {
+        TlsUtils.writeUint16(namedGroup, output);
+        TlsUtils.writeOpaque16(keyExchange, output);
+    }
+
+    /**
+     * Parse a {@link KeyShareEntry} from an {@link InputStream}.
+     *
+     * @param input the {@link InputStream} to parse from.
+     * @return a {@link KeyShareEntry} object.
+     * @throws IOException
+     */
+    public static KeyShareEntry parse(InputStream input) throws IOException
+    {
+        int namedGroup = TlsUtils.readUint16(input);
+        byte[] keyExchange = TlsUtils.readOpaque16(input, 1);
+        return new KeyShareEntry(namedGroup, keyExchange);
+    }
+}
@@ -1,20 +1,41 @@
 package org.bouncycastle.tls;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Hashtable;
 
+/**
+ * A NewSessionTicket message, per RFC 5077 3.3 or (when created by {@link #parse13(ByteArrayInputStream)})
+ * RFC 8446 4.6.1. In TLS 1.3, the lifetime hint is the ticket_lifetime, in seconds.
+ */
 public class NewSessionTicket
 {
     protected long ticketLifetimeHint;
     protected byte[] ticket;
 
+    // TLS 1.3 only
+    protected long ticketAgeAdd;
+    protected byte[] ticketNonce;
+    protected Hashtable extensions;
+
     public NewSessionTicket(long ticketLifetimeHint, byte[] ticket)
     {
         this.ticketLifetimeHint = ticketLifetimeHint;
         this.ticket = ticket;
     }
 
+    public NewSessionTicket(long ticketLifetime, long ticketAgeAdd, byte[] ticketNonce, byte[] ticket,
+        Hashtable extensions)
+    {
+        this.ticketLifetimeHint = ticketLifetime;
+        this.ticketAgeAdd = ticketAgeAdd;
+        this.ticketNonce = ticketNonce;
+        this.ticket = ticket;
+        this.extensions = extensions;
+    }
+
     public long getTicketLifetimeHint()
     {
         return ticketLifetimeHint;
@@ -25,6 +46,30 @@ public byte[] getTicket()
         return ticket;
     }
 
+    /**
+     * @return the TLS 1.3 ticket_age_add value.
+     */
+    public long getTicketAgeAdd()
+    {
+        return ticketAgeAdd;
+    }
+
+    /**
+     * @return the TLS 1.3 ticket_nonce, or null for an RFC 5077 ticket.
+     */
+    public byte[] getTicketNonce()
+    {
+        return ticketNonce;
+    }
+
+    /**
+     * @return the TLS 1.3 ticket extensions, or null.
+     */
+    public Hashtable getExtensions()
+    {
+        return extensions;
+    }
+
     /**
      * Encode this {@link NewSessionTicket} to an {@link OutputStream}.
      *
@@ -38,6 +83,23 @@ public void encode(OutputStream output)
         TlsUtils.writeOpaque16(ticket, output);
     }
 
+    /**
+     * Encode this {@link NewSessionTicket} as a TLS 1.3 (RFC 8446 4.6.1) message body to an
+     * {@link OutputStream}.
+     *
+     * @param output the {@link OutputStream} to encode to.
+     * @throws IOException
+     */
+    public void encode13(OutputStream output)
+        throws IOException
+    {
+        TlsUtils.writeUint32(ticketLifetimeHint, output);
+        TlsUtils.writeUint32(ticketAgeAdd, output);
+        TlsUtils.writeOpaque8(null == ticketNonce ? TlsUtils.EMPTY_BYTES : ticketNonce, output);
+        TlsUtils.writeOpaque16(ticket, output);
+        TlsProtocol.writeExtensions(output, extensions, true);
+    }
+
     /**
      * Parse a {@link NewSessionTicket} from an {@link InputStream}.
      *
@@ -52,4 +114,23 @@ public static NewSessionTicket parse(InputStream input)
         byte[] ticket = TlsUtils.readOpaque16(input);
         return new NewSessionTicket(ticketLifetimeHint, ticket);
     }
+
+    /**
+     * Parse a TLS 1.3 {@link NewSessionTicket} (RFC 8446 4.6.1) from a
+     * {@link ByteArrayInputStream}, which must contain exactly the message body.
+     *
+     * @param input the {@link ByteArrayInputStream} to parse from.
+     * @return a {@link NewSessionTicket} object.
+     * @throws IOException
+     */
+    public static NewSessionTicket parse13(ByteArrayInputStream input)
+        throws IOException
+    {
+        long ticketLifetime = TlsUtils.readUint32(input);
+        long ticketAgeAdd = TlsUtils.readUint32(input);
+        byte[] ticketNonce = TlsUtils.readOpaque8(input);
+        byte[] ticket = TlsUtils.readOpaque16(input, 1);
+        Hashtable extensions = TlsProtocol.readExtensions(input);
+        return new NewSessionTicket(ticketLifetime, ticketAgeAdd, ticketNonce, ticket, extensions);
+    }
 }
@@ -0,0 +1,109 @@
+package org.bouncycastle.tls;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Vector;
+
+/**
+ * A TLS 1.3 <i>OfferedPsks</i> struct from RFC 8446 4.2.11, as sent in a ClientHello.
+ * <pre>
+ * struct {
+ *     PskIdentity identities&lt;7..2^16-1&gt;;
+ *     PskBinderEntry binders&lt;33..2^16-1&gt;;
+ * } OfferedPsks;
+ * </pre>
+ */
+public final class OfferedPsks
+{
+    private final Vector identities;
+    private final Vector binders;
+    private final int bindersSize;
+
+    /**
+     * @param identities a {@link Vector} of {@link PskIdentity}.
+     * @param binders a {@link Vector} of byte[], one binder per identity.
+     * @param bindersSize the encoded length of the binders, including their length prefix.
+     */
+    public OfferedPsks(Vector identities, Vector binders, int bindersSize)
+    {
+        if (null == identities || identities.isEmpty())
+        {
+            throw new IllegalArgumentException("'identities' cannot be null or empty");
+        }
+        if (null == binders || binders.size() != identities.size())
+        {
+            throw new IllegalArgumentException("'binders' must have the same length as 'identities'");
+        }
+        if (bindersSize < 2)
+        {
+            throw new IllegalArgumentException("'bindersSize' must be at least 2");
+        }
+
+        this.identities = identities;
+        this.binders = binders;
+        this.bindersSize = bindersSize;
+    }
+
+    /**
+     * @return a {@link Vector} of {@link PskIdentity}.
+     */
+    public Vector getIdentities()
+    {
+        return identities;
+    }
+
+    /**
+     * @return a {@link Vector} of byte[], one binder per identity.
+     */
+    public Vector getBinders()
+    {
+        return binders;
+    }
+
+    /**
+     * @return the encoded length of the binders (including their length prefix), which are
+     *         excluded from the partial ClientHello a binder is calculated over.
+     */
+    public int getBindersSize()
+    {
+        return bindersSize;
+    }
+
+    /**
+     * Parse an {@link OfferedPsks} from an {@link InputStream}.
+     *
+     * @param input the {@link InputStream} to parse from.
+     * @return an {@link OfferedPsks} object.
+     * @throws IOException
+     */
+    public static OfferedPsks parse(InputStream input) throws IOException
+    {
+        Vector identities = new Vector();
+        {
+            byte[] identitiesData = TlsUtils.readOpaque16(input, 7);
+            ByteArrayInputStream buf = new ByteArrayInputStream(identitiesData);
+            while (buf.available() > 0)
+            {
+                identities.addElement(PskIdentity.parse(buf));
+            }
+        }
+
+        Vector binders = new Vector();
+        byte[] bindersData = TlsUtils.readOpaque16(input, 33);
+        {
+            ByteArrayInputStream buf = new ByteArrayInputStream(bindersData);
+            while (buf.available() > 0)
+            {
+                binders.addElement(TlsUtils.readOpaque8(buf, 32));
+            }
+        }
+
+        if (binders.size() != identities.size())
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        return new OfferedPsks(identities, binders, 2 + bindersData.length);
+    }
+}
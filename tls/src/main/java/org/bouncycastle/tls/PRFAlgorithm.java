@@ -20,6 +20,12 @@
      */
     public static final int tls_prf_sha384 = 2;
 
+    /*
+     * RFC 8446 7.1 (HKDF key schedule, with the hash of the cipher suite)
+     */
+    public static final int tls13_hkdf_sha256 = 4;
+    public static final int tls13_hkdf_sha384 = 5;
+
     public static String getName(int prfAlgorithm)
     {
         switch (prfAlgorithm)
@@ -30,6 +36,10 @@ public static String getName(int prfAlgorithm)
             return "tls_prf_sha256";
         case tls_prf_sha384:
             return "tls_prf_sha384";
+        case tls13_hkdf_sha256:
+            return "tls13_hkdf_sha256";
+        case tls13_hkdf_sha384:
+            return "tls13_hkdf_sha384";
         default:
             return "UNKNOWN";
         }
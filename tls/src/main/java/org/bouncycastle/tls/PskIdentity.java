@@ -0,0 +1,82 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.bouncycastle.util.Arrays;
+
+/**
+ * A TLS 1.3 <i>PskIdentity</i> struct from RFC 8446 4.2.11.
+ * <pre>
+ * struct {
+ *     opaque identity&lt;1..2^16-1&gt;;
+ *     uint32 obfuscated_ticket_age;
+ * } PskIdentity;
+ * </pre>
+ */
+public final class PskIdentity
+{
+    private final byte[] identity;
+    private final long obfuscatedTicketAge;
+
+    public PskIdentity(byte[] identity, long obfuscatedTicketAge)
+    {
+        if (null == identity)
+        {
+            throw new IllegalArgumentException("'identity' cannot be null");
+        }
+        if (identity.length < 1 || !TlsUtils.isValidUint16(identity.length))
+        {
+            throw new IllegalArgumentException("'identity' should have length from 1 to 65535");
+        }
+        if (!TlsUtils.isValidUint32(obfuscatedTicketAge))
+        {
+            throw new IllegalArgumentException("'obfuscatedTicketAge' should be a uint32");
+        }
+
+        this.identity = identity;
+        this.obfuscatedTicketAge = obfuscatedTicketAge;
+    }
+
+    public int getEncodedLength()
+    {
+        return 6 + identity.length;
+    }
+
+    public byte[] getIdentity()
+    {
+        return Arrays.clone(identity);
+    }
+
+    public long getObfuscatedTicketAge()
+    {
+        return obfuscatedTicketAge;
+    }
+
+    /**
+     * Encode this {@link PskIdentity} to an {@link OutputStream}.
+     *
+     * @param output the {@link OutputStream} to encode to.
+     * @throws IOException
+     */
+    public void encode(OutputStream output) throws IOException
+    {
+        TlsUtils.writeOpaque16(identity, output);
+        TlsUtils.writeUint32(obfuscatedTicketAge, output);
+    }
+
+    /**
+     * Parse a {@link PskIdentity} from an {@link InputStream}.
+     *
+     * @param input the {@link InputStream} to parse from.
+     * @return a {@link PskIdentity} object.
+     * @throws IOException
+     */
+    public static PskIdentity parse(InputStream input) throws IOException
+    {
+        byte[] identity = TlsUtils.readOpaque16(input, 1);
+        long obfuscatedTicketAge = TlsUtils.readUint32(input);
+        return new PskIdentity(identity, obfuscatedTicketAge);
+    }
+}
@@ -0,0 +1,37 @@
+package org.bouncycastle.tls;
+
+/*
+ * RFC 8446 4.2.9
+ */
+public class PskKeyExchangeMode
+{
+    /*
+     * psk_ke: PSK-only key establishment. In this mode, the server MUST NOT supply a "key_share"
+     * value.
+     */
+    public static final short psk_ke = 0;
+
+    /*
+     * psk_dhe_ke: PSK with (EC)DHE key establishment. In this mode, the client and server MUST
+     * supply "key_share" values as described in Section 4.2.8.
+     */
+    public static final short psk_dhe_ke = 1;
+
+    public static String getName(short pskKeyExchangeMode)
+    {
+        switch (pskKeyExchangeMode)
+        {
+        case psk_ke:
+            return "psk_ke";
+        case psk_dhe_ke:
+            return "psk_dhe_ke";
+        default:
+            return "UNKNOWN";
+        }
+    }
+
+    public static String getText(short pskKeyExchangeMode)
+    {
+        return getName(pskKeyExchangeMode) + "(" + pskKeyExchangeMode + ")";
+    }
+}
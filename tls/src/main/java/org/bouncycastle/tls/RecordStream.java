@@ -7,21 +7,24 @@
 import java.io.OutputStream;
 
 import org.bouncycastle.tls.crypto.TlsCipher;
+import org.bouncycastle.tls.crypto.TlsDecodeResult;
 import org.bouncycastle.tls.crypto.TlsNullNullCipher;
 
 /**
- * An implementation of the TLS 1.0/1.1/1.2 record layer.
+ * An implementation of the TLS 1.0/1.1/1.2/1.3 record layer.
  */
 class RecordStream
 {
     private static int DEFAULT_PLAINTEXT_LIMIT = (1 << 14);
 
     private final Record inputRecord = new Record();
+    private byte[] outputRecord = null;
 
     private TlsProtocol handler;
     private InputStream input;
     private OutputStream output;
     private TlsContext context = null;
+    private TlsMetricsListener metricsListener = null;
     private TlsCipher pendingCipher = null, readCipher = null, writeCipher = null;
     private SequenceNumber readSeqNo = new SequenceNumber(), writeSeqNo = new SequenceNumber();
 
@@ -55,6 +58,11 @@ void init(TlsContext context)
         setPlaintextLimit(DEFAULT_PLAINTEXT_LIMIT);
     }
 
+    void setMetricsListener(TlsMetricsListener metricsListener)
+    {
+        this.metricsListener = metricsListener;
+    }
+
     int getPlaintextLimit()
     {
         return plaintextLimit;
@@ -76,7 +84,7 @@ void setPendingConnectionState(TlsCipher tlsCipher)
         this.pendingCipher = tlsCipher;
     }
 
-    void sentWriteCipherSpec()
+    synchronized void sentWriteCipherSpec()
         throws IOException
     {
         if (pendingCipher == null)
@@ -98,6 +106,32 @@ void receivedReadCipherSpec()
         this.readSeqNo = new SequenceNumber();
     }
 
+    void notifyKeyUpdateReceived() throws IOException
+    {
+        readCipher.rekeyDecoder();
+        this.readSeqNo = new SequenceNumber();
+    }
+
+    /*
+     * RFC 8446 4.6.3. The KeyUpdate is the last record protected with the old traffic key, so it is
+     * written and the write key updated in one step. Otherwise a record written concurrently by
+     * another thread (e.g. application data while reading) could be sent under the old key after
+     * the KeyUpdate.
+     */
+    synchronized void writeKeyUpdate(byte[] message, int messageOffset, int messageLength)
+        throws IOException
+    {
+        writeRecord(ContentType.handshake, message, messageOffset, messageLength);
+
+        writeCipher.rekeyEncoder();
+        this.writeSeqNo = new SequenceNumber();
+    }
+
+    boolean isOpaqueRecordTypeRead()
+    {
+        return readCipher.usesOpaqueRecordType();
+    }
+
     void finaliseHandshake()
         throws IOException
     {
@@ -113,7 +147,11 @@ RecordPreview previewRecordHeader(byte[] recordHeader, boolean appDataReady) thr
     {
         short type = TlsUtils.readUint8(recordHeader, RecordFormat.TYPE_OFFSET);
 
-        if (!appDataReady && type == ContentType.application_data)
+        /*
+         * RFC 8446 5. Once TLS 1.3 record protection is active, all records (handshake too) have an
+         * outer type of application_data.
+         */
+        if (!appDataReady && type == ContentType.application_data && !readCipher.usesOpaqueRecordType())
         {
             throw new TlsFatalAlert(AlertDescription.unexpected_message);
         }
@@ -180,8 +218,12 @@ boolean readFullRecord(byte[] input, int inputOff, int inputLen)
 
         checkLength(length, ciphertextLimit, AlertDescription.record_overflow);
 
-        byte[] plaintext = decodeAndVerify(type, input, inputOff + RecordFormat.FRAGMENT_OFFSET, length);
-        handler.processRecord(type, plaintext, 0, plaintext.length);
+        TlsDecodeResult decoded = decodeAndVerify(type, input, inputOff + RecordFormat.FRAGMENT_OFFSET, length);
+        if (null != metricsListener)
+        {
+            metricsListener.recordRead(context, decoded.contentType, decoded.len, inputLen);
+        }
+        handler.processRecord(decoded.contentType, decoded.buf, decoded.off, decoded.len);
         return true;
     }
 
@@ -211,33 +253,60 @@ boolean readRecord()
 
         inputRecord.readFragment(input, length);
 
-        byte[] plaintext;
+        /*
+         * The record is decrypted in place. The plaintext remains valid after the reset, since the
+         * buffer is only reused by the next call to this method.
+         */
+        TlsDecodeResult decoded;
         try
         {
-            plaintext = decodeAndVerify(type, inputRecord.buf, RecordFormat.FRAGMENT_OFFSET, length);
+            decoded = decodeAndVerify(type, inputRecord.buf, RecordFormat.FRAGMENT_OFFSET, length);
         }
         finally
         {
             inputRecord.reset();
         }
 
-        handler.processRecord(type, plaintext, 0, plaintext.length);
+        if (null != metricsListener)
+        {
+            metricsListener.recordRead(context, decoded.contentType, decoded.len, RecordFormat.FRAGMENT_OFFSET + length);
+        }
+
+        handler.processRecord(decoded.contentType, decoded.buf, decoded.off, decoded.len);
         return true;
     }
 
-    byte[] decodeAndVerify(short type, byte[] ciphertext, int off, int len)
+    TlsDecodeResult decodeAndVerify(short type, byte[] ciphertext, int off, int len)
         throws IOException
     {
+        if (readCipher.usesOpaqueRecordType())
+        {
+            /*
+             * RFC 8446 5. A change_cipher_spec record received during the handshake is passed
+             * through unprotected (for middlebox compatibility); anything else must be protected.
+             */
+            if (type == ContentType.change_cipher_spec)
+            {
+                return new TlsDecodeResult(ciphertext, off, len, type);
+            }
+            if (type != ContentType.application_data)
+            {
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+        }
+
         long seqNo = readSeqNo.nextValue(AlertDescription.unexpected_message);
-        byte[] decoded = readCipher.decodeCiphertext(seqNo, type, ciphertext, off, len);
+        TlsDecodeResult decoded = readCipher.decodeCiphertext(seqNo, type, ciphertext, off, len);
+
+        checkType(decoded.contentType, AlertDescription.unexpected_message);
 
-        checkLength(decoded.length, plaintextLimit, AlertDescription.record_overflow);
+        checkLength(decoded.len, plaintextLimit, AlertDescription.record_overflow);
 
         /*
          * RFC 5246 6.2.1 Implementations MUST NOT send zero-length fragments of Handshake, Alert,
          * or ChangeCipherSpec content types.
          */
-        if (decoded.length < 1 && type != ContentType.application_data)
+        if (decoded.len < 1 && decoded.contentType != ContentType.application_data)
         {
             throw new TlsFatalAlert(AlertDescription.illegal_parameter);
         }
@@ -245,7 +314,11 @@ byte[] decodeAndVerify(short type, byte[] ciphertext, int off, int len)
         return decoded;
     }
 
-    void writeRecord(short type, byte[] plaintext, int plaintextOffset, int plaintextLength)
+    /*
+     * Synchronized so that records written from different threads (e.g. application data and an
+     * alert raised while reading) are sequenced and encrypted one at a time.
+     */
+    synchronized void writeRecord(short type, byte[] plaintext, int plaintextOffset, int plaintextLength)
         throws IOException
     {
         // Never send anything until a valid ClientHello has been received
@@ -276,22 +349,38 @@ void writeRecord(short type, byte[] plaintext, int plaintextOffset, int plaintex
 
         long seqNo = writeSeqNo.nextValue(AlertDescription.internal_error);
 
-        byte[] ciphertext = writeCipher.encodePlaintext(seqNo, type, plaintext, plaintextOffset, plaintextLength);
+        /*
+         * The record is encrypted directly into a buffer that is reused between records, leaving
+         * room for the header in front.
+         */
+        int recordLimit = RecordFormat.FRAGMENT_OFFSET + writeCipher.getCiphertextLimit(plaintextLength);
+        byte[] record = outputRecord;
+        if (record == null || record.length < recordLimit)
+        {
+            record = new byte[recordLimit];
+            outputRecord = record;
+        }
+
+        int ciphertextLength = writeCipher.encodePlaintext(seqNo, type, plaintext, plaintextOffset, plaintextLength,
+            record, RecordFormat.FRAGMENT_OFFSET);
 
         /*
          * RFC 5246 6.2.3. The length may not exceed 2^14 + 2048.
          */
-        checkLength(ciphertext.length, ciphertextLimit, AlertDescription.internal_error);
+        checkLength(ciphertextLength, ciphertextLimit, AlertDescription.internal_error);
+
+        /*
+         * RFC 8446 5.2. Protected records have an outer type of application_data.
+         */
+        short outerType = writeCipher.usesOpaqueRecordType() ? ContentType.application_data : type;
 
-        byte[] record = new byte[RecordFormat.FRAGMENT_OFFSET + ciphertext.length];
-        TlsUtils.writeUint8(type, record, RecordFormat.TYPE_OFFSET);
+        TlsUtils.writeUint8(outerType, record, RecordFormat.TYPE_OFFSET);
         TlsUtils.writeVersion(writeVersion, record, RecordFormat.VERSION_OFFSET);
-        TlsUtils.writeUint16(ciphertext.length, record, RecordFormat.LENGTH_OFFSET);
-        System.arraycopy(ciphertext, 0, record, RecordFormat.FRAGMENT_OFFSET, ciphertext.length);
+        TlsUtils.writeUint16(ciphertextLength, record, RecordFormat.LENGTH_OFFSET);
 
         try
         {
-            output.write(record);
+            output.write(record, 0, RecordFormat.FRAGMENT_OFFSET + ciphertextLength);
         }
         catch (InterruptedIOException e)
         {
@@ -299,6 +388,11 @@ void writeRecord(short type, byte[] plaintext, int plaintextOffset, int plaintex
         }
 
         output.flush();
+
+        if (null != metricsListener)
+        {
+            metricsListener.recordWritten(context, type, plaintextLength, RecordFormat.FRAGMENT_OFFSET + ciphertextLength);
+        }
     }
 
     void notifyHelloComplete()
@@ -325,7 +419,8 @@ TlsHandshakeHash prepareToFinish()
 
     void close() throws IOException
     {
-        inputRecord.reset();
+        inputRecord.release();
+        outputRecord = null;
 
         IOException io = null;
         try
@@ -456,6 +551,12 @@ boolean readHeader(InputStream input) throws IOException
         }
 
         void reset()
+        {
+            // Keep any fragment buffer for the next record
+            pos = 0;
+        }
+
+        void release()
         {
             buf = header;
             pos = 0;
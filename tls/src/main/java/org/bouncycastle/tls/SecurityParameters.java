@@ -38,6 +38,17 @@
     Certificate peerCertificate = null;
     ProtocolVersion negotiatedVersion = null;
 
+    // TLS 1.3 key schedule (RFC 8446 7.1); masterSecret holds the TLS 1.3 Master Secret
+    TlsSecret earlySecret = null;
+    TlsSecret handshakeSecret = null;
+    TlsSecret trafficSecretClient = null;
+    TlsSecret trafficSecretServer = null;
+    TlsSecret baseKeyClient = null;
+    TlsSecret baseKeyServer = null;
+    // NOTE: These outlive the handshake, for post-handshake tickets and keying material exporters
+    TlsSecret exporterMasterSecret = null;
+    TlsSecret resumptionMasterSecret = null;
+
     // TODO[tls-ops] Investigate whether we can handle verify data using TlsSecret
     byte[] localVerifyData = null;
     byte[] peerVerifyData = null;
@@ -49,11 +60,28 @@ void clear()
         clientSigAlgsCert = null;
         clientSupportedGroups = null;
 
-        if (this.masterSecret != null)
+        this.masterSecret = destroySecret(this.masterSecret);
+        this.earlySecret = destroySecret(this.earlySecret);
+        this.handshakeSecret = destroySecret(this.handshakeSecret);
+        this.trafficSecretClient = destroySecret(this.trafficSecretClient);
+        this.trafficSecretServer = destroySecret(this.trafficSecretServer);
+        this.baseKeyClient = destroySecret(this.baseKeyClient);
+        this.baseKeyServer = destroySecret(this.baseKeyServer);
+    }
+
+    void clearPostHandshake()
+    {
+        this.exporterMasterSecret = destroySecret(this.exporterMasterSecret);
+        this.resumptionMasterSecret = destroySecret(this.resumptionMasterSecret);
+    }
+
+    private static TlsSecret destroySecret(TlsSecret secret)
+    {
+        if (secret != null)
         {
-            this.masterSecret.destroy();
-            this.masterSecret = null;
+            secret.destroy();
         }
+        return null;
     }
 
     /**
@@ -131,6 +159,22 @@ public TlsSecret getMasterSecret()
         return masterSecret;
     }
 
+    /**
+     * @return the TLS 1.3 client traffic secret for the current handshake phase, or null.
+     */
+    public TlsSecret getTrafficSecretClient()
+    {
+        return trafficSecretClient;
+    }
+
+    /**
+     * @return the TLS 1.3 server traffic secret for the current handshake phase, or null.
+     */
+    public TlsSecret getTrafficSecretServer()
+    {
+        return trafficSecretServer;
+    }
+
     public byte[] getClientRandom()
     {
         return clientRandom;
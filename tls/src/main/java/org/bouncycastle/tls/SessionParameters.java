@@ -22,6 +22,8 @@
         private byte[] srpIdentity = null;
         private byte[] encodedServerExtensions = null;
         private boolean extendedMasterSecret = false;
+        private NewSessionTicket sessionTicket = null;
+        private long sessionTicketTime = 0L;
 
         public Builder()
         {
@@ -34,7 +36,7 @@ public SessionParameters build()
             validate(this.masterSecret != null, "masterSecret");
             return new SessionParameters(cipherSuite, compressionAlgorithm, localCertificate, masterSecret,
                 negotiatedVersion, peerCertificate, pskIdentity, srpIdentity, encodedServerExtensions,
-                extendedMasterSecret);
+                extendedMasterSecret, sessionTicket, sessionTicketTime);
         }
 
         public Builder setCipherSuite(int cipherSuite)
@@ -94,6 +96,17 @@ public Builder setPSKIdentity(byte[] pskIdentity)
             return this;
         }
 
+        /**
+         * For TLS 1.3 sessions, the ticket that resumes the session (whose PSK is the master secret),
+         * and the time (per {@link System#currentTimeMillis()}) at which it was received.
+         */
+        public Builder setSessionTicket(NewSessionTicket sessionTicket, long sessionTicketTime)
+        {
+            this.sessionTicket = sessionTicket;
+            this.sessionTicketTime = sessionTicketTime;
+            return this;
+        }
+
         public Builder setSRPIdentity(byte[] srpIdentity)
         {
             this.srpIdentity = srpIdentity;
@@ -134,10 +147,13 @@ private void validate(boolean condition, String parameter)
     private byte[] srpIdentity = null;
     private byte[] encodedServerExtensions;
     private boolean extendedMasterSecret;
+    private NewSessionTicket sessionTicket;
+    private long sessionTicketTime;
 
     private SessionParameters(int cipherSuite, short compressionAlgorithm, Certificate localCertificate,
         TlsSecret masterSecret, ProtocolVersion negotiatedVersion, Certificate peerCertificate, byte[] pskIdentity,
-        byte[] srpIdentity, byte[] encodedServerExtensions, boolean extendedMasterSecret)
+        byte[] srpIdentity, byte[] encodedServerExtensions, boolean extendedMasterSecret,
+        NewSessionTicket sessionTicket, long sessionTicketTime)
     {
         this.cipherSuite = cipherSuite;
         this.compressionAlgorithm = compressionAlgorithm;
@@ -149,6 +165,8 @@ private SessionParameters(int cipherSuite, short compressionAlgorithm, Certifica
         this.srpIdentity = Arrays.clone(srpIdentity);
         this.encodedServerExtensions = encodedServerExtensions;
         this.extendedMasterSecret = extendedMasterSecret;
+        this.sessionTicket = sessionTicket;
+        this.sessionTicketTime = sessionTicketTime;
     }
 
     public void clear()
@@ -163,7 +181,7 @@ public SessionParameters copy()
     {
         return new SessionParameters(cipherSuite, compressionAlgorithm, localCertificate, masterSecret,
             negotiatedVersion, peerCertificate, pskIdentity, srpIdentity, encodedServerExtensions,
-            extendedMasterSecret);
+            extendedMasterSecret, sessionTicket, sessionTicketTime);
     }
 
     public int getCipherSuite()
@@ -209,6 +227,16 @@ public byte[] getPSKIdentity()
         return pskIdentity;
     }
 
+    public NewSessionTicket getSessionTicket()
+    {
+        return sessionTicket;
+    }
+
+    public long getSessionTicketTime()
+    {
+        return sessionTicketTime;
+    }
+
     public byte[] getSRPIdentity()
     {
         return srpIdentity;
@@ -0,0 +1,482 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A TLS connection over a {@link SocketChannel}, run by a {@link TlsSelectorDriver}.
+ * <p>
+ * All methods must be called on the driver's thread, i.e. from the driver's
+ * {@link TlsSelectorDriver.Handler} or from tasks passed to
+ * {@link TlsSelectorDriver#invokeLater(Runnable)}.
+ * </p>
+ */
+public class TlsChannelConnection
+{
+    private final TlsSelectorDriver driver;
+    private final SocketChannel channel;
+    private Object attachment;
+
+    SelectionKey key = null;
+    TlsSelectorDriver.ProtocolFactory factory = null;
+
+    private TlsProtocol protocol = null;
+
+    // Output taken from the protocol that the channel could not yet accept
+    private ByteBuffer pendingOutput = null;
+
+    private boolean handshakeCompleted = false;
+    private boolean awaitingOperation = false;
+    private boolean outputBlocked = false;
+    private boolean closing = false;
+    private boolean closed = false;
+
+    TlsChannelConnection(TlsSelectorDriver driver, SocketChannel channel, Object attachment)
+    {
+        this.driver = driver;
+        this.channel = channel;
+        this.attachment = attachment;
+    }
+
+    public TlsSelectorDriver getDriver()
+    {
+        return driver;
+    }
+
+    public SocketChannel getChannel()
+    {
+        return channel;
+    }
+
+    /**
+     * @return the protocol, or null if the channel has not yet connected.
+     */
+    public TlsProtocol getProtocol()
+    {
+        return protocol;
+    }
+
+    public Object getAttachment()
+    {
+        return attachment;
+    }
+
+    public void setAttachment(Object attachment)
+    {
+        this.attachment = attachment;
+    }
+
+    /**
+     * @return true until the channel has been closed.
+     */
+    public boolean isOpen()
+    {
+        return !closed;
+    }
+
+    /**
+     * @return the number of bytes of received application data waiting to be read.
+     */
+    public int available()
+    {
+        return null == protocol ? 0 : protocol.getAvailableInputBytes();
+    }
+
+    /**
+     * Read received application data, without blocking.
+     *
+     * @return the number of bytes read, which is 0 if none is available.
+     */
+    public int read(byte[] buf, int off, int len)
+    {
+        if (null == protocol)
+        {
+            return 0;
+        }
+
+        int count = protocol.readInput(buf, off, len);
+        updateInterest();
+        return count;
+    }
+
+    /**
+     * Read received application data into a {@link ByteBuffer}, without blocking.
+     *
+     * @return the number of bytes read, which is 0 if none is available.
+     */
+    public int read(ByteBuffer buf, int len)
+    {
+        if (null == protocol)
+        {
+            return 0;
+        }
+
+        int count = protocol.readInput(buf, len);
+        updateInterest();
+        return count;
+    }
+
+    /**
+     * Write application data, without blocking. The data is always accepted, so after writing the
+     * application should check {@link #isWritable()}, and if it returns false wait for
+     * {@link TlsSelectorDriver.Handler#outputDrained(TlsChannelConnection)} before writing more.
+     *
+     * @throws IOException if the connection is closed, or has failed.
+     */
+    public void write(byte[] buf, int off, int len) throws IOException
+    {
+        if (closing || null == protocol)
+        {
+            throw new IOException("Connection is closed or not yet established");
+        }
+
+        protocol.writeApplicationData(buf, off, len);
+
+        flush();
+        updateInterest();
+    }
+
+    /**
+     * @return the number of bytes of output waiting to be sent.
+     */
+    public int getPendingOutputBytes()
+    {
+        int pending = null == pendingOutput ? 0 : pendingOutput.remaining();
+        if (null != protocol)
+        {
+            pending += protocol.getAvailableOutputBytes();
+        }
+        return pending;
+    }
+
+    /**
+     * @return true if the output waiting to be sent is below the driver's output limit.
+     */
+    public boolean isWritable()
+    {
+        return !closing && getPendingOutputBytes() < driver.getOutputLimit();
+    }
+
+    /**
+     * Close the connection in an orderly way: send close_notify, then close the channel once all
+     * output has been sent.
+     */
+    public void close()
+    {
+        if (closing)
+        {
+            return;
+        }
+
+        this.closing = true;
+
+        try
+        {
+            if (null != protocol)
+            {
+                protocol.close();
+            }
+
+            flush();
+        }
+        catch (IOException e)
+        {
+            fail(e);
+            return;
+        }
+
+        if (getPendingOutputBytes() == 0)
+        {
+            closeChannel(null);
+        }
+        else
+        {
+            updateInterest();
+        }
+    }
+
+    void start(TlsSelectorDriver.ProtocolFactory factory) throws IOException
+    {
+        this.protocol = factory.createProtocol(channel);
+
+        processEvents();
+    }
+
+    void handleReady(SelectionKey key)
+    {
+        try
+        {
+            if (key.isConnectable())
+            {
+                if (channel.finishConnect())
+                {
+                    TlsSelectorDriver.ProtocolFactory factory = this.factory;
+                    this.factory = null;
+                    start(factory);
+                }
+                return;
+            }
+
+            if (key.isWritable())
+            {
+                handleWritable();
+            }
+
+            if (!closed && key.isValid() && key.isReadable())
+            {
+                handleReadable();
+            }
+        }
+        catch (Exception e)
+        {
+            fail(e);
+        }
+    }
+
+    void fail(Exception cause)
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        this.closing = true;
+
+        // Send on any alert the protocol has raised, if the channel will take it
+        try
+        {
+            flush();
+        }
+        catch (IOException e)
+        {
+            // Ignore
+        }
+
+        closeChannel(cause);
+    }
+
+    void closeChannel(Exception cause)
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        this.closed = true;
+        this.closing = true;
+        this.pendingOutput = null;
+
+        if (null != key)
+        {
+            key.cancel();
+        }
+
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            // Ignore
+        }
+
+        driver.getHandler().connectionClosed(this, cause);
+    }
+
+    private void handleReadable() throws IOException
+    {
+        ByteBuffer readBuffer = driver.getReadBuffer();
+        readBuffer.clear();
+
+        int count = channel.read(readBuffer);
+        if (count < 0)
+        {
+            if (protocol.isClosed())
+            {
+                closeChannel(null);
+            }
+            else
+            {
+                // Always throws, since the peer didn't close the connection properly
+                protocol.closeInput();
+            }
+            return;
+        }
+
+        if (count > 0)
+        {
+            protocol.offerInput(readBuffer.array(), readBuffer.arrayOffset(), count);
+
+            processEvents();
+        }
+    }
+
+    private void handleWritable() throws IOException
+    {
+        flush();
+
+        if (closing)
+        {
+            if (getPendingOutputBytes() == 0)
+            {
+                closeChannel(null);
+            }
+            return;
+        }
+
+        updateInterest();
+
+        if (outputBlocked && isWritable())
+        {
+            this.outputBlocked = false;
+            driver.getHandler().outputDrained(this);
+        }
+    }
+
+    private void processEvents() throws IOException
+    {
+        flush();
+
+        if (protocol.isHandshakeSuspended() && !awaitingOperation)
+        {
+            this.awaitingOperation = true;
+
+            protocol.getSuspendedOperation().setCallback(new Runnable()
+            {
+                public void run()
+                {
+                    driver.invokeLater(new Runnable()
+                    {
+                        public void run()
+                        {
+                            resumeHandshake();
+                        }
+                    });
+                }
+            });
+        }
+
+        if (protocol.isClosed())
+        {
+            // The peer has closed the connection; the protocol has queued our close_notify
+            this.closing = true;
+            flush();
+            if (getPendingOutputBytes() == 0)
+            {
+                closeChannel(null);
+                return;
+            }
+        }
+        else if (!handshakeCompleted && !protocol.isHandshaking())
+        {
+            this.handshakeCompleted = true;
+            driver.getHandler().handshakeCompleted(this);
+        }
+
+        if (!closed && available() > 0)
+        {
+            driver.getHandler().dataAvailable(this);
+        }
+
+        updateInterest();
+    }
+
+    private void resumeHandshake()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        this.awaitingOperation = false;
+
+        try
+        {
+            protocol.resumeSuspendedHandshake();
+
+            processEvents();
+        }
+        catch (Exception e)
+        {
+            fail(e);
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        if (null != pendingOutput)
+        {
+            channel.write(pendingOutput);
+            if (pendingOutput.hasRemaining())
+            {
+                return;
+            }
+            pendingOutput.clear();
+            pendingOutput.limit(0);
+        }
+
+        if (null == protocol)
+        {
+            return;
+        }
+
+        ByteBuffer writeBuffer = driver.getWriteBuffer();
+
+        int available;
+        while ((available = protocol.getAvailableOutputBytes()) > 0)
+        {
+            writeBuffer.clear();
+            protocol.readOutput(writeBuffer, Math.min(available, writeBuffer.capacity()));
+            writeBuffer.flip();
+
+            channel.write(writeBuffer);
+
+            if (writeBuffer.hasRemaining())
+            {
+                // Keep what the channel didn't take; it will be sent when the channel is writable
+                int remaining = writeBuffer.remaining();
+                if (null == pendingOutput || pendingOutput.capacity() < remaining)
+                {
+                    pendingOutput = ByteBuffer.allocate(Math.max(remaining, 4096));
+                }
+                pendingOutput.clear();
+                pendingOutput.put(writeBuffer);
+                pendingOutput.flip();
+                break;
+            }
+        }
+
+        if (!isWritable() && !closing)
+        {
+            this.outputBlocked = true;
+        }
+    }
+
+    private void updateInterest()
+    {
+        if (closed || null == key || !key.isValid() || null == protocol)
+        {
+            return;
+        }
+
+        int pending = getPendingOutputBytes();
+
+        int ops = 0;
+        if (pending > 0)
+        {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (!closing && !awaitingOperation && pending < driver.getOutputLimit()
+            && available() < driver.getInputLimit())
+        {
+            ops |= SelectionKey.OP_READ;
+        }
+
+        if (key.interestOps() != ops)
+        {
+            key.interestOps(ops);
+        }
+    }
+}
@@ -30,6 +30,15 @@
     Hashtable getClientExtensions()
         throws IOException;
 
+    /**
+     * If TLS 1.3 is offered, this is called to determine which of the supported groups (see
+     * {@link #getClientExtensions()}) to send key shares for in the initial ClientHello. The server
+     * can ask for a different group with a HelloRetryRequest, at the cost of an extra round trip.
+     *
+     * @return a {@link Vector} of {@link Integer}. See {@link NamedGroup} for group constants.
+     */
+    Vector getEarlyKeyShareGroups();
+
     void notifyServerVersion(ProtocolVersion selectedVersion)
         throws IOException;
 
@@ -1,6 +1,7 @@
 package org.bouncycastle.tls;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -8,8 +9,16 @@
 import java.util.Hashtable;
 import java.util.Vector;
 
+import org.bouncycastle.tls.crypto.TlsAgreement;
+import org.bouncycastle.tls.crypto.TlsCertificate;
+import org.bouncycastle.tls.crypto.TlsCipher;
+import org.bouncycastle.tls.crypto.TlsCrypto;
+import org.bouncycastle.tls.crypto.TlsCryptoUtils;
+import org.bouncycastle.tls.crypto.TlsHash;
+import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.tls.crypto.TlsStreamSigner;
 import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Integers;
 
 public class TlsClientProtocol
     extends TlsProtocol
@@ -25,6 +34,11 @@
     protected CertificateStatus certificateStatus = null;
     protected CertificateRequest certificateRequest = null;
 
+    // TLS 1.3 only
+    protected byte[] offeredSessionID = null;
+    protected Hashtable clientAgreements = null;
+    protected byte[] certificateRequestContext = null;
+
     /**
      * Constructor for non-blocking mode.<br>
      * <br>
@@ -123,6 +137,9 @@ protected void cleanupHandshake()
         this.authentication = null;
         this.certificateStatus = null;
         this.certificateRequest = null;
+        this.offeredSessionID = null;
+        this.clientAgreements = null;
+        this.certificateRequestContext = null;
     }
 
     protected TlsContext getContext()
@@ -143,9 +160,28 @@ protected TlsPeer getPeer()
     protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
         throws IOException
     {
+        if (isTLSv13Connection())
+        {
+            handle13HandshakeMessage(type, buf);
+            return;
+        }
+
         if (this.resumedSession)
         {
-            if (type != HandshakeType.finished || this.connection_state != CS_SERVER_HELLO)
+            if (type == HandshakeType.session_ticket && this.expectSessionTicket
+                && this.connection_state == CS_SERVER_HELLO)
+            {
+                /*
+                 * RFC 5077 3.1. When resuming a session, the server may send a NewSessionTicket
+                 * message, to update the ticket, before its ChangeCipherSpec.
+                 */
+                receiveNewSessionTicketMessage(buf);
+                this.connection_state = CS_SERVER_SESSION_TICKET;
+                return;
+            }
+
+            short expectedState = this.expectSessionTicket ? CS_SERVER_SESSION_TICKET : CS_SERVER_HELLO;
+            if (type != HandshakeType.finished || this.connection_state != expectedState)
             {
                 throw new TlsFatalAlert(AlertDescription.unexpected_message);
             }
@@ -256,6 +292,12 @@ protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
             case CS_CLIENT_HELLO:
             {
                 receiveServerHelloMessage(buf);
+                if (isTLSv13Connection())
+                {
+                    // NOTE: receive13ServerHello has already updated the connection state
+                    break;
+                }
+
                 this.connection_state = CS_SERVER_HELLO;
 
                 this.recordStream.notifyHelloComplete();
@@ -513,6 +555,7 @@ protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
                  * discards any Session ID that was sent in the ServerHello.
                  */
                 invalidateSession();
+                this.tlsSession = TlsUtils.importSession(TlsUtils.EMPTY_BYTES, null);
 
                 receiveNewSessionTicketMessage(buf);
                 break;
@@ -549,6 +592,165 @@ protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
         }
     }
 
+    protected void handle13HandshakeMessage(short type, ByteArrayInputStream buf)
+        throws IOException
+    {
+        switch (type)
+        {
+        case HandshakeType.server_hello:
+        {
+            switch (this.connection_state)
+            {
+            case CS_CLIENT_HELLO_RETRY:
+            {
+                receiveServerHelloMessage(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+            break;
+        }
+        case HandshakeType.encrypted_extensions:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_HELLO:
+            {
+                receive13EncryptedExtensions(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            this.connection_state = CS_SERVER_ENCRYPTED_EXTENSIONS;
+            break;
+        }
+        case HandshakeType.certificate_request:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_ENCRYPTED_EXTENSIONS:
+            {
+                /*
+                 * RFC 8446 4.3.2. Servers which are authenticating with a PSK MUST NOT send the
+                 * CertificateRequest message in the main handshake.
+                 */
+                if (this.resumedSession)
+                {
+                    throw new TlsFatalAlert(AlertDescription.unexpected_message);
+                }
+
+                receive13CertificateRequest(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            this.connection_state = CS_CERTIFICATE_REQUEST;
+            break;
+        }
+        case HandshakeType.certificate:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_ENCRYPTED_EXTENSIONS:
+            case CS_CERTIFICATE_REQUEST:
+            {
+                if (this.resumedSession)
+                {
+                    throw new TlsFatalAlert(AlertDescription.unexpected_message);
+                }
+
+                receive13ServerCertificate(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            this.connection_state = CS_SERVER_CERTIFICATE;
+            break;
+        }
+        case HandshakeType.certificate_verify:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_CERTIFICATE:
+            {
+                receive13ServerCertificateVerify(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            this.connection_state = CS_SERVER_CERTIFICATE_VERIFY;
+            break;
+        }
+        case HandshakeType.finished:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_ENCRYPTED_EXTENSIONS:
+            {
+                if (!this.resumedSession)
+                {
+                    throw new TlsFatalAlert(AlertDescription.unexpected_message);
+                }
+
+                // NB: Fall through to next case label
+            }
+            case CS_SERVER_CERTIFICATE_VERIFY:
+            {
+                processFinishedMessage(buf);
+                this.connection_state = CS_SERVER_FINISHED;
+
+                send13ClientFinishedFlight();
+                this.connection_state = CS_CLIENT_FINISHED;
+
+                completeHandshake();
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+            break;
+        }
+        case HandshakeType.session_ticket:
+        {
+            if (this.connection_state != CS_END)
+            {
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            receive13NewSessionTicket(buf);
+            break;
+        }
+        case HandshakeType.key_update:
+        {
+            if (this.connection_state != CS_END)
+            {
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            receive13KeyUpdate(buf);
+            break;
+        }
+        case HandshakeType.hello_request:
+        case HandshakeType.server_key_exchange:
+        case HandshakeType.server_hello_done:
+        case HandshakeType.certificate_status:
+        case HandshakeType.client_hello:
+        case HandshakeType.client_key_exchange:
+        case HandshakeType.end_of_early_data:
+        default:
+            throw new TlsFatalAlert(AlertDescription.unexpected_message);
+        }
+    }
+
     protected void handleServerCertificate()
         throws IOException
     {
@@ -578,6 +780,8 @@ protected void receiveNewSessionTicketMessage(ByteArrayInputStream buf)
     protected void receiveServerHelloMessage(ByteArrayInputStream buf)
         throws IOException
     {
+        int messageLength = buf.available();
+
         ProtocolVersion server_version = TlsUtils.readVersion(buf);
 
         byte[] server_random = TlsUtils.readFully(32, buf);
@@ -598,11 +802,33 @@ protected void receiveServerHelloMessage(ByteArrayInputStream buf)
          */
         this.serverExtensions = readExtensions(buf);
 
-
-
         SecurityParameters securityParameters = tlsClientContext.getSecurityParametersHandshake();
 
-        // TODO[tls13] Check supported_version extension for negotiated version
+        /*
+         * RFC 8446 4.2.1. A server which negotiates TLS 1.3 MUST respond by sending a
+         * "supported_versions" extension containing the selected version value (0x0304). It MUST
+         * set the ServerHello.legacy_version field to 0x0303 (TLS 1.2).
+         */
+        ProtocolVersion selectedVersion = TlsExtensionsUtils.getSupportedVersionsExtensionServer(serverExtensions);
+        if (null != selectedVersion)
+        {
+            if (!ProtocolVersion.TLSv12.equals(server_version)
+                || !TlsUtils.isTLSv13(selectedVersion)
+                || securityParameters.isRenegotiating()
+                || !ProtocolVersion.contains(tlsClientContext.getClientSupportedVersions(), selectedVersion))
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
+
+            receive13ServerHello(selectedVersion, server_random, selectedCipherSuite, selectedCompressionMethod,
+                messageLength);
+            return;
+        }
+        if (isTLSv13Connection())
+        {
+            // The ServerHello following a HelloRetryRequest must also select TLS 1.3
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
 
         if (securityParameters.isRenegotiating())
         {
@@ -856,12 +1082,15 @@ protected void receiveServerHelloMessage(ByteArrayInputStream buf)
             this.allowCertificateStatus = !this.resumedSession
                 && TlsUtils.hasExpectedEmptyExtensionData(sessionServerExtensions,
                     TlsExtensionsUtils.EXT_status_request, AlertDescription.illegal_parameter);
-
-            this.expectSessionTicket = !this.resumedSession
-                && TlsUtils.hasExpectedEmptyExtensionData(sessionServerExtensions, TlsProtocol.EXT_SessionTicket,
-                    AlertDescription.illegal_parameter);
         }
 
+        /*
+         * RFC 5077 3.1. The server includes an empty SessionTicket extension in the ServerHello,
+         * whether or not it is resuming a session, if it will send a NewSessionTicket message.
+         */
+        this.expectSessionTicket = TlsUtils.hasExpectedEmptyExtensionData(this.serverExtensions,
+            TlsProtocol.EXT_SessionTicket, AlertDescription.illegal_parameter);
+
         if (sessionClientExtensions != null)
         {
             this.tlsClient.processServerExtensions(sessionServerExtensions);
@@ -877,14 +1106,509 @@ protected void receiveServerHelloMessage(ByteArrayInputStream buf)
         securityParameters.verifyDataLength = 12;
     }
 
-    protected void sendCertificateVerifyMessage(DigitallySigned certificateVerify)
+    protected void receive13ServerHello(ProtocolVersion selectedVersion, byte[] server_random,
+        int selectedCipherSuite, short selectedCompressionMethod, int messageLength)
         throws IOException
     {
-        HandshakeMessage message = new HandshakeMessage(HandshakeType.certificate_verify);
+        SecurityParameters securityParameters = tlsClientContext.getSecurityParametersHandshake();
 
-        certificateVerify.encode(message);
+        boolean isHelloRetryRequest = Arrays.areEqual(HELLO_RETRY_REQUEST_RANDOM, server_random);
+        boolean afterHelloRetryRequest = (this.connection_state == CS_CLIENT_HELLO_RETRY);
 
-        message.writeToRecordStream();
+        if (isHelloRetryRequest && afterHelloRetryRequest)
+        {
+            throw new TlsFatalAlert(AlertDescription.unexpected_message);
+        }
+
+        /*
+         * RFC 8446 4.1.3. A client which receives a legacy_session_id_echo field that does not
+         * match what it sent in the ClientHello MUST abort the handshake with an
+         * "illegal_parameter" alert.
+         */
+        if (!Arrays.areEqual(this.offeredSessionID, this.selectedSessionID)
+            || CompressionMethod._null != selectedCompressionMethod)
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        if (!afterHelloRetryRequest)
+        {
+            this.recordStream.setWriteVersion(ProtocolVersion.TLSv12);
+            securityParameters.negotiatedVersion = selectedVersion;
+
+            this.tlsClient.notifyServerVersion(selectedVersion);
+        }
+
+        /*
+         * RFC 8446 4.1.4. Upon receiving the ServerHello, clients MUST check that the cipher suite
+         * supplied in the ServerHello is the same as that in the HelloRetryRequest.
+         */
+        if (!Arrays.contains(this.offeredCipherSuites, selectedCipherSuite)
+            || !TlsUtils.isValidCipherSuiteForVersion(selectedCipherSuite, selectedVersion)
+            || (afterHelloRetryRequest && selectedCipherSuite != securityParameters.getCipherSuite()))
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        if (!afterHelloRetryRequest)
+        {
+            securityParameters.cipherSuite = selectedCipherSuite;
+            this.tlsClient.notifySelectedCipherSuite(selectedCipherSuite);
+        }
+
+        securityParameters.prfAlgorithm = getPRFAlgorithm(tlsClientContext, selectedCipherSuite);
+        securityParameters.verifyDataLength = HashAlgorithm.getOutputSize(TlsUtils.getHashAlgorithm13(securityParameters));
+
+        /*
+         * RFC 8446 4.1.3. The ServerHello MUST only include extensions which are required to
+         * establish the cryptographic context and negotiate the protocol version. [..] 4.1.4. The
+         * HelloRetryRequest [..] extensions MUST contain "supported_versions" and otherwise only
+         * the extensions needed for the client to generate a correct ClientHello pair.
+         */
+        Enumeration e = this.serverExtensions.keys();
+        while (e.hasMoreElements())
+        {
+            Integer extType = (Integer)e.nextElement();
+
+            /*
+             * RFC 8446 4.2.2. [..] servers MAY send this extension ["cookie"] to the client in the
+             * HelloRetryRequest message.
+             */
+            if (null == TlsUtils.getExtensionData(this.clientExtensions, extType)
+                && !(isHelloRetryRequest && extType.equals(TlsExtensionsUtils.EXT_cookie)))
+            {
+                throw new TlsFatalAlert(AlertDescription.unsupported_extension);
+            }
+
+            if (!extType.equals(TlsExtensionsUtils.EXT_supported_versions)
+                && !extType.equals(TlsExtensionsUtils.EXT_key_share)
+                && !extType.equals(isHelloRetryRequest ? TlsExtensionsUtils.EXT_cookie : TlsExtensionsUtils.EXT_pre_shared_key))
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
+        }
+
+        if (isHelloRetryRequest)
+        {
+            receive13HelloRetryRequest(messageLength);
+            return;
+        }
+
+        this.tlsClient.notifySessionID(TlsUtils.EMPTY_BYTES);
+
+        KeyShareEntry serverShare = TlsExtensionsUtils.getKeyShareServerHello(serverExtensions);
+        if (null == serverShare)
+        {
+            // NOTE: We only offer psk_dhe_ke, so a key share is always required
+            throw new TlsFatalAlert(AlertDescription.handshake_failure);
+        }
+
+        TlsAgreement agreement = (TlsAgreement)this.clientAgreements.get(Integers.valueOf(serverShare.getNamedGroup()));
+        if (null == agreement)
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        agreement.receivePeerValue(serverShare.getKeyExchange());
+        TlsSecret sharedSecret = agreement.calculateSecret();
+        this.clientAgreements = null;
+
+        int selectedIdentity = TlsExtensionsUtils.getPreSharedKeyServerHello(serverExtensions);
+        if (selectedIdentity >= 0)
+        {
+            /*
+             * RFC 8446 4.2.11. Clients MUST verify that the server's selected_identity is within
+             * the range supplied by the client, that the server selected a cipher suite indicating
+             * a Hash associated with the PSK [..].
+             */
+            if (selectedIdentity != 0 || null == securityParameters.earlySecret
+                || TlsUtils.getHashAlgorithm13(securityParameters) != getSessionHashAlgorithm13())
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
+
+            this.resumedSession = true;
+            this.tlsClient.notifySessionID(this.tlsSession.getSessionID());
+
+            securityParameters.peerCertificate = sessionParameters.getPeerCertificate();
+            securityParameters.tlsServerEndPoint = TlsUtils.EMPTY_BYTES;
+        }
+        else if (null != securityParameters.earlySecret)
+        {
+            // The PSK was not accepted; the handshake will use an early secret based on zeros
+            securityParameters.earlySecret.destroy();
+            securityParameters.earlySecret = null;
+        }
+
+        /*
+         * RFC 8446 4.2.3. If no "signature_algorithms_cert" extension is present, then the
+         * "signature_algorithms" extension also applies to signatures appearing in certificates.
+         */
+        if (null == securityParameters.getClientSigAlgsCert())
+        {
+            securityParameters.clientSigAlgsCert = securityParameters.getClientSigAlgs();
+        }
+
+        this.connection_state = CS_SERVER_HELLO;
+
+        TlsHandshakeHash handshakeHash = this.recordStream.getHandshakeHash();
+        this.recordStream.notifyHelloComplete();
+        handshakeHash.sealHashAlgorithms();
+
+        TlsUtils.establish13HandshakeSecrets(tlsClientContext, handshakeHash, sharedSecret);
+        sharedSecret.destroy();
+
+        /*
+         * RFC 8446 7.3. All further handshake messages are protected with keys derived from the
+         * handshake traffic secrets.
+         */
+        this.recordStream.setPendingConnectionState(TlsUtils.initCipher(tlsClientContext));
+        this.recordStream.receivedReadCipherSpec();
+        this.recordStream.sentWriteCipherSpec();
+    }
+
+    protected void receive13HelloRetryRequest(int messageLength)
+        throws IOException
+    {
+        SecurityParameters securityParameters = tlsClientContext.getSecurityParametersHandshake();
+
+        /*
+         * RFC 8446 4.1.4. Clients MUST abort the handshake with an "illegal_parameter" alert if
+         * the HelloRetryRequest would not result in any change in the ClientHello.
+         */
+        int selectedGroup = TlsExtensionsUtils.getKeyShareHelloRetryRequest(serverExtensions);
+        byte[] cookie = TlsExtensionsUtils.getCookieExtension(serverExtensions);
+
+        if (selectedGroup < 0 && null == cookie)
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        /*
+         * RFC 8446 4.2.8. Upon receipt of this extension in a HelloRetryRequest, the client MUST
+         * verify that (1) the selected_group field corresponds to a group which was provided in
+         * the "supported_groups" extension in the original ClientHello and (2) the selected_group
+         * field does not correspond to a group which was provided in the "key_share" extension in
+         * the original ClientHello.
+         */
+        if (selectedGroup >= 0
+            && (!Arrays.contains(securityParameters.getClientSupportedGroups(), selectedGroup)
+                || this.clientAgreements.containsKey(Integers.valueOf(selectedGroup))))
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        /*
+         * RFC 8446 4.4.1. When the server responds to a ClientHello with a HelloRetryRequest, the
+         * value of ClientHello1 is replaced with a special synthetic handshake message of handshake
+         * type "message_hash" containing Hash(ClientHello1).
+         */
+        TlsHandshakeHash handshakeHash = this.recordStream.getHandshakeHash();
+        ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+        handshakeHash.copyBufferTo(transcript);
+        byte[] messages = transcript.toByteArray();
+
+        int helloRetryRequestLength = 4 + messageLength;
+        int clientHelloLength = messages.length - helloRetryRequestLength;
+
+        TlsHash clientHelloHash = tlsClientContext.getCrypto().createHash(TlsUtils.getHashAlgorithm13(securityParameters));
+        clientHelloHash.update(messages, 0, clientHelloLength);
+        byte[] clientHelloDigest = clientHelloHash.calculateHash();
+
+        byte[] messageHashHeader = new byte[4];
+        TlsUtils.writeUint8(HandshakeType.message_hash, messageHashHeader, 0);
+        TlsUtils.writeUint24(clientHelloDigest.length, messageHashHeader, 1);
+
+        handshakeHash.reset();
+        handshakeHash.update(messageHashHeader, 0, messageHashHeader.length);
+        handshakeHash.update(clientHelloDigest, 0, clientHelloDigest.length);
+        handshakeHash.update(messages, clientHelloLength, helloRetryRequestLength);
+
+        this.connection_state = CS_SERVER_HELLO_RETRY_REQUEST;
+
+        /*
+         * RFC 8446 4.1.2. The client will also send a ClientHello when the server has responded to
+         * its ClientHello with a HelloRetryRequest. In that case, the client MUST send the same
+         * ClientHello without modification, except [for the key_share, early_data, cookie and
+         * pre_shared_key extensions].
+         */
+        if (selectedGroup >= 0)
+        {
+            this.clientAgreements = new Hashtable();
+
+            Vector clientShares = new Vector();
+            addKeyShare(clientShares, selectedGroup);
+            TlsExtensionsUtils.addKeyShareClientHello(clientExtensions, clientShares);
+        }
+
+        if (null != cookie)
+        {
+            TlsExtensionsUtils.addCookieExtension(clientExtensions, cookie);
+        }
+        else
+        {
+            clientExtensions.remove(TlsExtensionsUtils.EXT_cookie);
+        }
+
+        /*
+         * RFC 8446 4.1.4. In addition, in its updated ClientHello, the client SHOULD NOT offer any
+         * pre-shared keys associated with a hash other than that of the selected cipher suite.
+         */
+        if (null != securityParameters.earlySecret
+            && TlsUtils.getHashAlgorithm13(securityParameters) != getSessionHashAlgorithm13())
+        {
+            securityParameters.earlySecret.destroy();
+            securityParameters.earlySecret = null;
+
+            clientExtensions.remove(TlsExtensionsUtils.EXT_pre_shared_key);
+        }
+
+        writeClientHelloMessage(ProtocolVersion.TLSv12);
+        this.connection_state = CS_CLIENT_HELLO_RETRY;
+    }
+
+    protected void receive13EncryptedExtensions(ByteArrayInputStream buf)
+        throws IOException
+    {
+        Hashtable encryptedExtensions = readExtensions(buf);
+
+        assertEmpty(buf);
+
+        if (null != encryptedExtensions)
+        {
+            Enumeration e = encryptedExtensions.keys();
+            while (e.hasMoreElements())
+            {
+                Integer extType = (Integer)e.nextElement();
+
+                if (null == TlsUtils.getExtensionData(this.clientExtensions, extType))
+                {
+                    throw new TlsFatalAlert(AlertDescription.unsupported_extension);
+                }
+
+                /*
+                 * RFC 8446 4.3.1. The client MUST check EncryptedExtensions for the presence of any
+                 * forbidden extensions and if any are found MUST abort the handshake with an
+                 * "illegal_parameter" alert.
+                 */
+                switch (extType.intValue())
+                {
+                case ExtensionType.supported_versions:
+                case ExtensionType.key_share:
+                case ExtensionType.pre_shared_key:
+                case ExtensionType.psk_key_exchange_modes:
+                case ExtensionType.cookie:
+                case ExtensionType.signature_algorithms:
+                case ExtensionType.signature_algorithms_cert:
+                case ExtensionType.status_request:
+                case ExtensionType.extended_master_secret:
+                case ExtensionType.encrypt_then_mac:
+                case ExtensionType.renegotiation_info:
+                case ExtensionType.session_ticket:
+                    throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+                }
+            }
+        }
+
+        SecurityParameters securityParameters = tlsClientContext.getSecurityParametersHandshake();
+
+        this.serverExtensions = encryptedExtensions;
+
+        securityParameters.applicationProtocol = TlsExtensionsUtils.getALPNExtensionServer(serverExtensions);
+
+        if (null != serverExtensions && !serverExtensions.isEmpty())
+        {
+            securityParameters.maxFragmentLength = processMaxFragmentLengthExtension(clientExtensions,
+                serverExtensions, AlertDescription.illegal_parameter);
+        }
+
+        this.tlsClient.processServerExtensions(serverExtensions);
+
+        applyMaxFragmentLengthExtension();
+    }
+
+    protected void receive13CertificateRequest(ByteArrayInputStream buf)
+        throws IOException
+    {
+        /*
+         * RFC 8446 4.3.2. struct { opaque certificate_request_context<0..2^8-1>; Extension
+         * extensions<2..2^16-1>; } CertificateRequest;
+         */
+        byte[] certificate_request_context = TlsUtils.readOpaque8(buf);
+        Hashtable extensions = readExtensions(buf);
+
+        assertEmpty(buf);
+
+        /*
+         * RFC 8446 4.3.2. The "signature_algorithms" extension MUST be specified.
+         */
+        Vector supportedSignatureAlgorithms = TlsExtensionsUtils.getSignatureAlgorithmsExtension(extensions);
+        if (null == supportedSignatureAlgorithms)
+        {
+            throw new TlsFatalAlert(AlertDescription.missing_extension);
+        }
+
+        this.certificateRequestContext = certificate_request_context;
+
+        /*
+         * NOTE: The CertificateRequest passed to TlsAuthentication.getClientCredentials has the
+         * certificate types implied by the signature algorithms, and is left null (so that no
+         * certificate is sent) if none of them can be used for a TLS 1.3 CertificateVerify.
+         */
+        short[] certificateTypes = TlsUtils.getCertificateTypes13(supportedSignatureAlgorithms);
+        if (null != certificateTypes)
+        {
+            Vector certificateAuthorities = TlsExtensionsUtils.getCertificateAuthoritiesExtension(extensions);
+            this.certificateRequest = new CertificateRequest(certificateTypes, supportedSignatureAlgorithms,
+                null == certificateAuthorities ? new Vector() : certificateAuthorities);
+        }
+    }
+
+    protected void receive13ServerCertificate(ByteArrayInputStream buf)
+        throws IOException
+    {
+        TlsUtils.receiveServerCertificate(tlsClientContext, buf);
+
+        /*
+         * RFC 8446 4.4.2. [The certificate_request_context] in the case of server authentication,
+         * this field SHALL be zero length.
+         */
+        Certificate serverCertificate = tlsClientContext.getSecurityParametersHandshake().getPeerCertificate();
+        if (serverCertificate.getCertificateRequestContext().length > 0)
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        this.authentication = tlsClient.getAuthentication();
+        if (null == this.authentication)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        TlsUtils.process13ServerCertificate(tlsClientContext, tlsClient, authentication, clientExtensions,
+            serverExtensions);
+    }
+
+    protected void receive13ServerCertificateVerify(ByteArrayInputStream buf)
+        throws IOException
+    {
+        DigitallySigned certificateVerify = DigitallySigned.parse(tlsClientContext, buf);
+
+        assertEmpty(buf);
+
+        // NOTE: The CertificateVerify itself is only added to the transcript after this returns
+        byte[] transcriptHash = TlsUtils.getCurrentPRFHash(this.recordStream.getHandshakeHash());
+
+        TlsUtils.verify13CertificateVerifyServer(tlsClientContext, certificateVerify, transcriptHash);
+    }
+
+    protected void receive13NewSessionTicket(ByteArrayInputStream buf)
+        throws IOException
+    {
+        NewSessionTicket newSessionTicket = NewSessionTicket.parse13(buf);
+
+        assertEmpty(buf);
+
+        SecurityParameters securityParameters = tlsClientContext.getSecurityParametersConnection();
+        TlsSecret resumptionMasterSecret = securityParameters.resumptionMasterSecret;
+
+        /*
+         * RFC 8446 4.6.1. The value of zero indicates that the ticket should be discarded
+         * immediately.
+         */
+        if (null != resumptionMasterSecret && newSessionTicket.getTicketLifetimeHint() > 0)
+        {
+            /*
+             * RFC 8446 4.6.1. The PSK associated with the ticket is computed as:
+             * HKDF-Expand-Label(resumption_master_secret, "resumption", ticket_nonce, Hash.length)
+             */
+            short hashAlgorithm = TlsUtils.getHashAlgorithm13(securityParameters);
+            TlsSecret psk = TlsCryptoUtils.hkdfExpandLabel(resumptionMasterSecret, hashAlgorithm, "resumption",
+                newSessionTicket.getTicketNonce(), HashAlgorithm.getOutputSize(hashAlgorithm));
+
+            // NOTE: TLS 1.3 binds every secret to the handshake transcript, as extended_master_secret does
+            SessionParameters ticketSessionParameters = new SessionParameters.Builder()
+                .setCipherSuite(securityParameters.getCipherSuite())
+                .setCompressionAlgorithm(CompressionMethod._null)
+                .setExtendedMasterSecret(true)
+                .setLocalCertificate(securityParameters.getLocalCertificate())
+                .setMasterSecret(psk)
+                .setNegotiatedVersion(securityParameters.getNegotiatedVersion())
+                .setPeerCertificate(securityParameters.getPeerCertificate())
+                .setSessionTicket(newSessionTicket, System.currentTimeMillis())
+                .build();
+
+            // The session ID is only used locally, to identify the session
+            byte[] sessionID = tlsClientContext.getNonceGenerator().generateNonce(32);
+
+            this.sessionParameters = ticketSessionParameters;
+            this.tlsSession = TlsUtils.importSession(sessionID, ticketSessionParameters);
+            tlsClientContext.setSession(this.tlsSession);
+        }
+
+        tlsClient.notifyNewSessionTicket(newSessionTicket);
+    }
+
+    protected void send13ClientFinishedFlight()
+        throws IOException
+    {
+        /*
+         * RFC 8446 7.1. The application traffic secrets are derived from the transcript up to and
+         * including the server Finished.
+         */
+        TlsHandshakeHash handshakeHash = this.recordStream.getHandshakeHash();
+        TlsUtils.establish13ApplicationSecrets(tlsClientContext, handshakeHash);
+        TlsCipher applicationCipher = TlsUtils.initCipher(tlsClientContext);
+
+        if (null != this.certificateRequestContext)
+        {
+            TlsCredentialedSigner credentialedSigner = null;
+            if (null != this.certificateRequest)
+            {
+                TlsCredentials clientCredentials = validateCredentials(
+                    this.authentication.getClientCredentials(this.certificateRequest));
+                if (null != clientCredentials)
+                {
+                    // RFC 8446 4.4.3. Client authentication is always by signature in TLS 1.3
+                    if (!(clientCredentials instanceof TlsCredentialedSigner))
+                    {
+                        throw new TlsFatalAlert(AlertDescription.internal_error);
+                    }
+                    credentialedSigner = (TlsCredentialedSigner)clientCredentials;
+                }
+            }
+
+            /*
+             * RFC 8446 4.4.2. If the server requests client authentication but no suitable
+             * certificate is available, the client MUST send a Certificate message containing no
+             * certificates.
+             */
+            TlsCertificate[] certificateList = null == credentialedSigner
+                ?   new TlsCertificate[0]
+                :   credentialedSigner.getCertificate().getCertificateList();
+
+            sendCertificateMessage(new Certificate(this.certificateRequestContext, certificateList), null);
+
+            /*
+             * RFC 8446 4.4.3. [CertificateVerify] MUST be sent whenever [the Certificate] message
+             * is non-empty.
+             */
+            if (null != credentialedSigner)
+            {
+                byte[] transcriptHash = TlsUtils.getCurrentPRFHash(handshakeHash);
+                DigitallySigned certificateVerify = TlsUtils.generate13CertificateVerify(tlsClientContext,
+                    credentialedSigner, this.certificateRequest.getSupportedSignatureAlgorithms(), transcriptHash);
+                sendCertificateVerifyMessage(certificateVerify);
+            }
+        }
+
+        sendFinishedMessage();
+
+        TlsUtils.establish13ResumptionSecret(tlsClientContext, handshakeHash);
+
+        this.recordStream.setPendingConnectionState(applicationCipher);
+        this.recordStream.receivedReadCipherSpec();
+        this.recordStream.sentWriteCipherSpec();
     }
 
     protected void sendClientHelloMessage()
@@ -931,6 +1655,24 @@ protected void sendClientHelloMessage()
 
         this.offeredCipherSuites = this.tlsClient.getCipherSuites();
 
+        boolean offeringTLSv13 = !securityParameters.isRenegotiating() && TlsUtils.isTLSv13(client_version);
+        if (!offeringTLSv13)
+        {
+            this.offeredCipherSuites = removeTLSv13CipherSuites(offeredCipherSuites);
+        }
+
+        /*
+         * RFC 8446 2.2. TLS 1.3 sessions are resumed via a PSK rather than the session ID.
+         */
+        boolean resumingTLSv13 = offeringTLSv13 && null != this.sessionParameters
+            && null != this.sessionParameters.getNegotiatedVersion()
+            && TlsUtils.isTLSv13(this.sessionParameters.getNegotiatedVersion())
+            && null != this.sessionParameters.getSessionTicket();
+        if (resumingTLSv13)
+        {
+            session_id = TlsUtils.EMPTY_BYTES;
+        }
+
         if (session_id.length > 0 && this.sessionParameters != null)
         {
             /*
@@ -947,6 +1689,20 @@ protected void sendClientHelloMessage()
 
         this.clientExtensions = TlsExtensionsUtils.ensureExtensionsInitialised(this.tlsClient.getClientExtensions());
 
+        if (session_id.length == 0)
+        {
+            /*
+             * RFC 5077 3.4. A server accepting a ticket echoes the Session ID from the ClientHello,
+             * so without one there is no way to detect the session being resumed. Only indicate
+             * support for tickets in that case.
+             */
+            byte[] ticket = TlsExtensionsUtils.getSessionTicketExtension(clientExtensions);
+            if (ticket != null && ticket.length > 0)
+            {
+                TlsExtensionsUtils.addSessionTicketExtension(clientExtensions, TlsUtils.EMPTY_BYTES);
+            }
+        }
+
         ProtocolVersion legacy_version = client_version;
         if (client_version.isLaterVersionOf(ProtocolVersion.TLSv12))
         {
@@ -966,6 +1722,39 @@ protected void sendClientHelloMessage()
 
         TlsExtensionsUtils.addExtendedMasterSecretExtension(this.clientExtensions);
 
+        if (offeringTLSv13)
+        {
+            /*
+             * RFC 8446 4.2.8. Clients MAY send an empty client_shares vector in order to request
+             * group selection from the server, at the cost of an additional round trip.
+             */
+            this.clientAgreements = new Hashtable();
+
+            Vector clientShares = new Vector();
+            Vector earlyKeyShareGroups = tlsClient.getEarlyKeyShareGroups();
+            if (null != earlyKeyShareGroups)
+            {
+                for (int i = 0; i < earlyKeyShareGroups.size(); ++i)
+                {
+                    int namedGroup = ((Integer)earlyKeyShareGroups.elementAt(i)).intValue();
+                    if (Arrays.contains(securityParameters.getClientSupportedGroups(), namedGroup))
+                    {
+                        addKeyShare(clientShares, namedGroup);
+                    }
+                }
+            }
+            TlsExtensionsUtils.addKeyShareClientHello(clientExtensions, clientShares);
+
+            // NOTE: PSK-only key establishment would give up forward secrecy, so we don't offer it
+            TlsExtensionsUtils.addPSKKeyExchangeModesExtension(clientExtensions,
+                new short[]{ PskKeyExchangeMode.psk_dhe_ke });
+
+            if (resumingTLSv13)
+            {
+                addPreSharedKey(securityParameters);
+            }
+        }
+
         securityParameters.clientRandom = createRandomBlock(tlsClient.shouldUseGMTUnixTime(), tlsClientContext);
 
         if (securityParameters.isRenegotiating())
@@ -1023,13 +1812,23 @@ protected void sendClientHelloMessage()
 
 
 
+        this.offeredSessionID = session_id;
+
+        writeClientHelloMessage(legacy_version);
+    }
+
+    protected void writeClientHelloMessage(ProtocolVersion legacy_version)
+        throws IOException
+    {
+        SecurityParameters securityParameters = tlsClientContext.getSecurityParametersHandshake();
+
         HandshakeMessage message = new HandshakeMessage(HandshakeType.client_hello);
 
         TlsUtils.writeVersion(legacy_version, message);
 
         message.write(securityParameters.getClientRandom());
 
-        TlsUtils.writeOpaque8(session_id, message);
+        TlsUtils.writeOpaque8(offeredSessionID, message);
 
         TlsUtils.writeUint16ArrayWithUint16Length(offeredCipherSuites, message);
 
@@ -1037,9 +1836,101 @@ protected void sendClientHelloMessage()
 
         writeExtensions(message, clientExtensions);
 
+        if (null != TlsUtils.getExtensionData(clientExtensions, TlsExtensionsUtils.EXT_pre_shared_key))
+        {
+            /*
+             * RFC 8446 4.2.11.2. The PSK binder value forms a binding between a PSK and the current
+             * handshake [..] computed over the transcript up to and including the partial
+             * ClientHello (everything but the binders list itself).
+             */
+            TlsCrypto crypto = tlsClientContext.getCrypto();
+            short hashAlgorithm = getSessionHashAlgorithm13();
+            int binderLength = HashAlgorithm.getOutputSize(hashAlgorithm);
+
+            TlsHash transcriptHash = crypto.createHash(hashAlgorithm);
+
+            ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+            this.recordStream.getHandshakeHash().copyBufferTo(transcript);
+            byte[] messages = transcript.toByteArray();
+            transcriptHash.update(messages, 0, messages.length);
+
+            message.updateHashPrefix(transcriptHash, 2 + 1 + binderLength);
+
+            byte[] binder = TlsUtils.calculate13PSKBinder(crypto, hashAlgorithm, securityParameters.earlySecret,
+                transcriptHash.calculateHash());
+            message.patchSuffix(binder);
+        }
+
         message.writeToRecordStream();
     }
 
+    protected void addKeyShare(Vector clientShares, int namedGroup)
+        throws IOException
+    {
+        TlsAgreement agreement = TlsUtils.create13Agreement(tlsClientContext.getCrypto(), namedGroup);
+
+        byte[] key_exchange = agreement.generateEphemeral();
+
+        clientShares.addElement(new KeyShareEntry(namedGroup, key_exchange));
+        this.clientAgreements.put(Integers.valueOf(namedGroup), agreement);
+    }
+
+    protected void addPreSharedKey(SecurityParameters securityParameters)
+        throws IOException
+    {
+        NewSessionTicket ticket = sessionParameters.getSessionTicket();
+
+        /*
+         * RFC 8446 4.2.11.1. The "obfuscated_ticket_age" field of each PskIdentity contains an
+         * obfuscated version of the ticket age formed by taking the age in milliseconds and adding
+         * the "ticket_age_add" value that was included with the ticket, modulo 2^32.
+         */
+        long ticketAge = System.currentTimeMillis() - sessionParameters.getSessionTicketTime();
+        if (ticketAge < 0 || ticketAge > ticket.getTicketLifetimeHint() * 1000L)
+        {
+            return;
+        }
+
+        long obfuscatedTicketAge = (ticketAge + ticket.getTicketAgeAdd()) & 0xFFFFFFFFL;
+
+        short hashAlgorithm = getSessionHashAlgorithm13();
+
+        securityParameters.earlySecret = TlsUtils.calculate13EarlySecret(tlsClientContext.getCrypto(),
+            hashAlgorithm, sessionParameters.getMasterSecret());
+
+        // NOTE: The binder is calculated, and patched in, as the ClientHello is written
+        Vector identities = TlsUtils.vectorOfOne(new PskIdentity(ticket.getTicket(), obfuscatedTicketAge));
+        Vector binders = TlsUtils.vectorOfOne(new byte[HashAlgorithm.getOutputSize(hashAlgorithm)]);
+
+        TlsExtensionsUtils.addPreSharedKeyClientHello(clientExtensions, identities, binders);
+    }
+
+    protected short getSessionHashAlgorithm13()
+    {
+        switch (sessionParameters.getCipherSuite())
+        {
+        case CipherSuite.TLS_AES_256_GCM_SHA384:
+            return HashAlgorithm.sha384;
+        default:
+            return HashAlgorithm.sha256;
+        }
+    }
+
+    protected static int[] removeTLSv13CipherSuites(int[] cipherSuites)
+    {
+        int[] result = new int[cipherSuites.length];
+        int count = 0;
+        for (int i = 0; i < cipherSuites.length; ++i)
+        {
+            int cipherSuite = cipherSuites[i];
+            if (!TlsUtils.isTLSv13(TlsUtils.getMinimumVersion(cipherSuite)))
+            {
+                result[count++] = cipherSuite;
+            }
+        }
+        return count < cipherSuites.length ? Arrays.copyOf(result, count) : cipherSuites;
+    }
+
     protected void sendClientKeyExchangeMessage()
         throws IOException
     {
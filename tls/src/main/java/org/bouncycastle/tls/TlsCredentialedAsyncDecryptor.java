@@ -0,0 +1,29 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+
+import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+
+/**
+ * Interface for a class that decrypts TLS secrets without blocking the thread driving the protocol.
+ * <p>
+ * A non-blocking {@link TlsServerProtocol} suspends the handshake while the secret is being
+ * decrypted, see {@link TlsProtocol#resumeSuspendedHandshake()}. In blocking mode the synchronous
+ * method inherited from {@link TlsCredentialedDecryptor} is used instead.
+ * </p>
+ */
+public interface TlsCredentialedAsyncDecryptor
+    extends TlsCredentialedDecryptor
+{
+    /**
+     * Start decrypting the passed in cipher text using the parameters available. The result must
+     * be exactly what {@link #decrypt(TlsCryptoParameters, byte[])} would return; in particular a
+     * badly formatted RSA pre-master secret must not be reported as a failure.
+     *
+     * @param cryptoParams the parameters to use for the decryption.
+     * @param ciphertext the cipher text containing the secret.
+     * @return a future to be completed with the TLS secret (a {@link org.bouncycastle.tls.crypto.TlsSecret}).
+     * @throws IOException if the operation cannot be started.
+     */
+    TlsFuture decryptAsync(TlsCryptoParameters cryptoParams, byte[] ciphertext) throws IOException;
+}
@@ -0,0 +1,27 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+
+/**
+ * Support interface for generating a signature based on our private credentials without blocking
+ * the thread driving the protocol.
+ * <p>
+ * A non-blocking {@link TlsServerProtocol} suspends the handshake while the signature is being
+ * generated, see {@link TlsProtocol#resumeSuspendedHandshake()}. In blocking mode, or when
+ * {@link #getStreamSigner()} returns a stream signer, the synchronous methods inherited from
+ * {@link TlsCredentialedSigner} are used instead.
+ * </p>
+ */
+public interface TlsCredentialedAsyncSigner
+    extends TlsCredentialedSigner
+{
+    /**
+     * Start generating a signature against the passed in hash.
+     *
+     * @param hash a message digest calculated across the message the signature is to apply to.
+     * @return a future to be completed with the encoded signature (a byte[]).
+     * @throws IOException if the operation cannot be started.
+     */
+    TlsFuture generateRawSignatureAsync(byte[] hash)
+        throws IOException;
+}
@@ -6,23 +6,32 @@
 import java.util.Hashtable;
 import java.util.Vector;
 
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Integers;
 
 public class TlsExtensionsUtils
 {
     public static final Integer EXT_application_layer_protocol_negotiation = Integers.valueOf(ExtensionType.application_layer_protocol_negotiation);
+    public static final Integer EXT_certificate_authorities = Integers.valueOf(ExtensionType.certificate_authorities);
     public static final Integer EXT_client_certificate_type = Integers.valueOf(ExtensionType.client_certificate_type);
     public static final Integer EXT_client_certificate_url = Integers.valueOf(ExtensionType.client_certificate_url);
+    public static final Integer EXT_cookie = Integers.valueOf(ExtensionType.cookie);
     public static final Integer EXT_ec_point_formats = Integers.valueOf(ExtensionType.ec_point_formats);
     public static final Integer EXT_encrypt_then_mac = Integers.valueOf(ExtensionType.encrypt_then_mac);
     public static final Integer EXT_extended_master_secret = Integers.valueOf(ExtensionType.extended_master_secret);
     public static final Integer EXT_heartbeat = Integers.valueOf(ExtensionType.heartbeat);
+    public static final Integer EXT_key_share = Integers.valueOf(ExtensionType.key_share);
     public static final Integer EXT_max_fragment_length = Integers.valueOf(ExtensionType.max_fragment_length);
     public static final Integer EXT_padding = Integers.valueOf(ExtensionType.padding);
+    public static final Integer EXT_pre_shared_key = Integers.valueOf(ExtensionType.pre_shared_key);
+    public static final Integer EXT_psk_key_exchange_modes = Integers.valueOf(ExtensionType.psk_key_exchange_modes);
     public static final Integer EXT_record_size_limit = Integers.valueOf(ExtensionType.record_size_limit);
     public static final Integer EXT_server_certificate_type = Integers.valueOf(ExtensionType.server_certificate_type);
     public static final Integer EXT_server_name = Integers.valueOf(ExtensionType.server_name);
+    public static final Integer EXT_session_ticket = Integers.valueOf(ExtensionType.session_ticket);
     public static final Integer EXT_signature_algorithms = Integers.valueOf(ExtensionType.signature_algorithms);
     public static final Integer EXT_signature_algorithms_cert = Integers.valueOf(ExtensionType.signature_algorithms_cert);
     public static final Integer EXT_status_request = Integers.valueOf(ExtensionType.status_request);
@@ -49,6 +58,15 @@ public static void addALPNExtensionServer(Hashtable extensions, ProtocolName pro
         extensions.put(EXT_application_layer_protocol_negotiation, createALPNExtensionServer(protocolName));
     }
 
+    /**
+     * @param certificateAuthorities a {@link Vector} of {@link X500Name}.
+     */
+    public static void addCertificateAuthoritiesExtension(Hashtable extensions, Vector certificateAuthorities)
+        throws IOException
+    {
+        extensions.put(EXT_certificate_authorities, createCertificateAuthoritiesExtension(certificateAuthorities));
+    }
+
     public static void addClientCertificateTypeExtensionClient(Hashtable extensions, short[] certificateTypes)
         throws IOException
     {
@@ -66,6 +84,11 @@ public static void addClientCertificateURLExtension(Hashtable extensions)
         extensions.put(EXT_client_certificate_url, createClientCertificateURLExtension());
     }
 
+    public static void addCookieExtension(Hashtable extensions, byte[] cookie) throws IOException
+    {
+        extensions.put(EXT_cookie, createCookieExtension(cookie));
+    }
+
     public static void addEncryptThenMACExtension(Hashtable extensions)
     {
         extensions.put(EXT_encrypt_then_mac, createEncryptThenMACExtension());
@@ -82,6 +105,24 @@ public static void addHeartbeatExtension(Hashtable extensions, HeartbeatExtensio
         extensions.put(EXT_heartbeat, createHeartbeatExtension(heartbeatExtension));
     }
 
+    /**
+     * @param clientShares a {@link Vector} of {@link KeyShareEntry}.
+     */
+    public static void addKeyShareClientHello(Hashtable extensions, Vector clientShares) throws IOException
+    {
+        extensions.put(EXT_key_share, createKeyShareClientHello(clientShares));
+    }
+
+    public static void addKeyShareHelloRetryRequest(Hashtable extensions, int namedGroup) throws IOException
+    {
+        extensions.put(EXT_key_share, createKeyShareHelloRetryRequest(namedGroup));
+    }
+
+    public static void addKeyShareServerHello(Hashtable extensions, KeyShareEntry serverShare) throws IOException
+    {
+        extensions.put(EXT_key_share, createKeyShareServerHello(serverShare));
+    }
+
     public static void addMaxFragmentLengthExtension(Hashtable extensions, short maxFragmentLength)
         throws IOException
     {
@@ -94,6 +135,26 @@ public static void addPaddingExtension(Hashtable extensions, int dataLength)
         extensions.put(EXT_padding, createPaddingExtension(dataLength));
     }
 
+    /**
+     * @param identities a {@link Vector} of {@link PskIdentity}.
+     * @param binders a {@link Vector} of byte[], one binder per identity.
+     */
+    public static void addPreSharedKeyClientHello(Hashtable extensions, Vector identities, Vector binders)
+        throws IOException
+    {
+        extensions.put(EXT_pre_shared_key, createPreSharedKeyClientHello(identities, binders));
+    }
+
+    public static void addPreSharedKeyServerHello(Hashtable extensions, int selectedIdentity) throws IOException
+    {
+        extensions.put(EXT_pre_shared_key, createPreSharedKeyServerHello(selectedIdentity));
+    }
+
+    public static void addPSKKeyExchangeModesExtension(Hashtable extensions, short[] modes) throws IOException
+    {
+        extensions.put(EXT_psk_key_exchange_modes, createPSKKeyExchangeModesExtension(modes));
+    }
+
     public static void addRecordSizeLimitExtension(Hashtable extensions, int recordSizeLimit)
         throws IOException
     {
@@ -118,6 +179,14 @@ public static void addServerNameExtension(Hashtable extensions, ServerNameList s
         extensions.put(EXT_server_name, createServerNameExtension(serverNameList));
     }
 
+    /**
+     * @param ticket the ticket to present, or an empty array to indicate support for session tickets only.
+     */
+    public static void addSessionTicketExtension(Hashtable extensions, byte[] ticket)
+    {
+        extensions.put(EXT_session_ticket, createSessionTicketExtension(ticket));
+    }
+
     public static void addSignatureAlgorithmsExtension(Hashtable extensions, Vector supportedSignatureAlgorithms)
         throws IOException
     {
@@ -188,6 +257,12 @@ public static ProtocolName getALPNExtensionServer(Hashtable extensions) throws I
         return extensionData == null ? null : readALPNExtensionServer(extensionData);
     }
 
+    public static Vector getCertificateAuthoritiesExtension(Hashtable extensions) throws IOException
+    {
+        byte[] extensionData = TlsUtils.getExtensionData(extensions, EXT_certificate_authorities);
+        return extensionData == null ? null : readCertificateAuthoritiesExtension(extensionData);
+    }
+
     public static short[] getClientCertificateTypeExtensionClient(Hashtable extensions)
         throws IOException
     {
@@ -202,6 +277,12 @@ public static short getClientCertificateTypeExtensionServer(Hashtable extensions
         return extensionData == null ? -1 : readCertificateTypeExtensionServer(extensionData);
     }
 
+    public static byte[] getCookieExtension(Hashtable extensions) throws IOException
+    {
+        byte[] extensionData = TlsUtils.getExtensionData(extensions, EXT_cookie);
+        return extensionData == null ? null : readCookieExtension(extensionData);
+    }
+
     public static HeartbeatExtension getHeartbeatExtension(Hashtable extensions)
         throws IOException
     {
@@ -209,6 +290,31 @@ public static HeartbeatExtension getHeartbeatExtension(Hashtable extensions)
         return extensionData == null ? null : readHeartbeatExtension(extensionData);
     }
 
+    /**
+     * @return a {@link Vector} of {@link KeyShareEntry}, or null if there is no key_share extension.
+     */
+    public static Vector getKeyShareClientHello(Hashtable extensions) throws IOException
+    {
+        byte[] extensionData = TlsUtils.getExtensionData(extensions, EXT_key_share);
+        return extensionData == null ? null : readKeyShareClientHello(extensionData);
+    }
+
+    /**
+     * @return the named group requested by a HelloRetryRequest, or -1 if there is no key_share
+     *         extension.
+     */
+    public static int getKeyShareHelloRetryRequest(Hashtable extensions) throws IOException
+    {
+        byte[] extensionData = TlsUtils.getExtensionData(extensions, EXT_key_share);
+        return extensionData == null ? -1 : readKeyShareHelloRetryRequest(extensionData);
+    }
+
+    public static KeyShareEntry getKeyShareServerHello(Hashtable extensions) throws IOException
+    {
+        byte[] extensionData = TlsUtils.getExtensionData(extensions, EXT_key_share);
+        return extensionData == null ? null : readKeyShareServerHello(extensionData);
+    }
+
     public static short getMaxFragmentLengthExtension(Hashtable extensions)
         throws IOException
     {
@@ -223,6 +329,28 @@ public static int getPaddingExtension(Hashtable extensions)
         return extensionData == null ? -1 : readPaddingExtension(extensionData);
     }
 
+    public static OfferedPsks getPreSharedKeyClientHello(Hashtable extensions) throws IOException
+    {
+        byte[] extensionData = TlsUtils.getExtensionData(extensions, EXT_pre_shared_key);
+        return extensionData == null ? null : readPreSharedKeyClientHello(extensionData);
+    }
+
+    /**
+     * @return the index of the PSK identity selected by the server, or -1 if there is no
+     *         pre_shared_key extension.
+     */
+    public static int getPreSharedKeyServerHello(Hashtable extensions) throws IOException
+    {
+        byte[] extensionData = TlsUtils.getExtensionData(extensions, EXT_pre_shared_key);
+        return extensionData == null ? -1 : readPreSharedKeyServerHello(extensionData);
+    }
+
+    public static short[] getPSKKeyExchangeModesExtension(Hashtable extensions) throws IOException
+    {
+        byte[] extensionData = TlsUtils.getExtensionData(extensions, EXT_psk_key_exchange_modes);
+        return extensionData == null ? null : readPSKKeyExchangeModesExtension(extensionData);
+    }
+
     public static int getRecordSizeLimitExtension(Hashtable extensions)
         throws IOException
     {
@@ -251,6 +379,11 @@ public static ServerNameList getServerNameExtension(Hashtable extensions)
         return extensionData == null ? null : readServerNameExtension(extensionData);
     }
 
+    public static byte[] getSessionTicketExtension(Hashtable extensions)
+    {
+        return TlsUtils.getExtensionData(extensions, EXT_session_ticket);
+    }
+
     public static Vector getSignatureAlgorithmsExtension(Hashtable extensions)
         throws IOException
     {
@@ -370,6 +503,35 @@ public static byte[] createALPNExtensionServer(ProtocolName protocolName) throws
         return createALPNExtensionClient(protocol_name_list);
     }
 
+    /**
+     * @param certificateAuthorities a {@link Vector} of {@link X500Name}.
+     */
+    public static byte[] createCertificateAuthoritiesExtension(Vector certificateAuthorities) throws IOException
+    {
+        if (certificateAuthorities == null || certificateAuthorities.isEmpty())
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        // Placeholder for length
+        TlsUtils.writeUint16(0, buf);
+
+        for (int i = 0; i < certificateAuthorities.size(); ++i)
+        {
+            X500Name certificateAuthority = (X500Name)certificateAuthorities.elementAt(i);
+            byte[] derEncoding = certificateAuthority.getEncoded(ASN1Encoding.DER);
+            TlsUtils.writeOpaque16(derEncoding, buf);
+        }
+
+        int length = buf.size() - 2;
+        TlsUtils.checkUint16(length);
+        byte[] extensionData = buf.toByteArray();
+        TlsUtils.writeUint16(length, extensionData, 0);
+        return extensionData;
+    }
+
     public static byte[] createCertificateTypeExtensionClient(short[] certificateTypes) throws IOException
     {
         if (certificateTypes == null || certificateTypes.length < 1 || certificateTypes.length > 255)
@@ -390,6 +552,18 @@ public static byte[] createClientCertificateURLExtension()
         return createEmptyExtensionData();
     }
 
+    public static byte[] createCookieExtension(byte[] cookie) throws IOException
+    {
+        if (cookie == null || cookie.length < 1 || !TlsUtils.isValidUint16(cookie.length))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        TlsUtils.writeOpaque16(cookie, buf);
+        return buf.toByteArray();
+    }
+
     public static byte[] createEmptyExtensionData()
     {
         return TlsUtils.EMPTY_BYTES;
@@ -420,6 +594,46 @@ public static byte[] createHeartbeatExtension(HeartbeatExtension heartbeatExtens
         return buf.toByteArray();
     }
 
+    public static byte[] createKeyShareClientHello(Vector clientShares) throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        // Placeholder for length
+        TlsUtils.writeUint16(0, buf);
+
+        if (clientShares != null)
+        {
+            for (int i = 0; i < clientShares.size(); ++i)
+            {
+                KeyShareEntry clientShare = (KeyShareEntry)clientShares.elementAt(i);
+                clientShare.encode(buf);
+            }
+        }
+
+        int length = buf.size() - 2;
+        TlsUtils.checkUint16(length);
+        byte[] extensionData = buf.toByteArray();
+        TlsUtils.writeUint16(length, extensionData, 0);
+        return extensionData;
+    }
+
+    public static byte[] createKeyShareHelloRetryRequest(int namedGroup) throws IOException
+    {
+        return TlsUtils.encodeUint16(namedGroup);
+    }
+
+    public static byte[] createKeyShareServerHello(KeyShareEntry serverShare) throws IOException
+    {
+        if (serverShare == null)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        serverShare.encode(buf);
+        return buf.toByteArray();
+    }
+
     public static byte[] createMaxFragmentLengthExtension(short maxFragmentLength)
         throws IOException
     {
@@ -433,6 +647,49 @@ public static byte[] createPaddingExtension(int dataLength)
         return new byte[dataLength];
     }
 
+    public static byte[] createPreSharedKeyClientHello(Vector identities, Vector binders) throws IOException
+    {
+        if (identities == null || identities.isEmpty() || binders == null || binders.size() != identities.size())
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        ByteArrayOutputStream identitiesBuf = new ByteArrayOutputStream();
+        for (int i = 0; i < identities.size(); ++i)
+        {
+            PskIdentity identity = (PskIdentity)identities.elementAt(i);
+            identity.encode(identitiesBuf);
+        }
+        TlsUtils.writeOpaque16(identitiesBuf.toByteArray(), buf);
+
+        ByteArrayOutputStream bindersBuf = new ByteArrayOutputStream();
+        for (int i = 0; i < binders.size(); ++i)
+        {
+            byte[] binder = (byte[])binders.elementAt(i);
+            TlsUtils.writeOpaque8(binder, bindersBuf);
+        }
+        TlsUtils.writeOpaque16(bindersBuf.toByteArray(), buf);
+
+        return buf.toByteArray();
+    }
+
+    public static byte[] createPreSharedKeyServerHello(int selectedIdentity) throws IOException
+    {
+        return TlsUtils.encodeUint16(selectedIdentity);
+    }
+
+    public static byte[] createPSKKeyExchangeModesExtension(short[] modes) throws IOException
+    {
+        if (modes == null || modes.length < 1 || !TlsUtils.isValidUint8(modes.length))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        return TlsUtils.encodeUint8ArrayWithUint8Length(modes);
+    }
+
     public static byte[] createRecordSizeLimitExtension(int recordSizeLimit)
         throws IOException
     {
@@ -459,6 +716,17 @@ public static byte[] createServerNameExtension(ServerNameList serverNameList)
         return buf.toByteArray();
     }
 
+    public static byte[] createSessionTicketExtension(byte[] ticket)
+    {
+        if (ticket == null)
+        {
+            throw new IllegalArgumentException("'ticket' cannot be null");
+        }
+
+        // RFC 5077 3.2. The ticket is the extension data, with no additional length prefix
+        return Arrays.clone(ticket);
+    }
+
     public static byte[] createSignatureAlgorithmsExtension(Vector supportedSignatureAlgorithms)
         throws IOException
     {
@@ -630,6 +898,38 @@ public static ProtocolName readALPNExtensionServer(byte[] extensionData) throws
         return (ProtocolName)protocol_name_list.elementAt(0);
     }
 
+    /**
+     * @return a {@link Vector} of {@link X500Name}.
+     */
+    public static Vector readCertificateAuthoritiesExtension(byte[] extensionData) throws IOException
+    {
+        if (extensionData == null)
+        {
+            throw new IllegalArgumentException("'extensionData' cannot be null");
+        }
+
+        ByteArrayInputStream buf = new ByteArrayInputStream(extensionData);
+
+        /*
+         * RFC 8446 4.2.4. DistinguishedName authorities<3..2^16-1>;
+         */
+        byte[] authorities = TlsUtils.readOpaque16(buf, 3);
+
+        TlsProtocol.assertEmpty(buf);
+
+        Vector certificateAuthorities = new Vector();
+        ByteArrayInputStream bis = new ByteArrayInputStream(authorities);
+        do
+        {
+            byte[] derEncoding = TlsUtils.readOpaque16(bis, 1);
+            ASN1Primitive asn1 = TlsUtils.readDERObject(derEncoding);
+            certificateAuthorities.addElement(X500Name.getInstance(asn1));
+        }
+        while (bis.available() > 0);
+
+        return certificateAuthorities;
+    }
+
     public static short[] readCertificateTypeExtensionClient(byte[] extensionData) throws IOException
     {
         short[] certificateTypes = TlsUtils.decodeUint8ArrayWithUint8Length(extensionData);
@@ -660,6 +960,22 @@ public static boolean readExtendedMasterSecretExtension(byte[] extensionData) th
         return readEmptyExtensionData(extensionData);
     }
 
+    public static byte[] readCookieExtension(byte[] extensionData) throws IOException
+    {
+        if (extensionData == null)
+        {
+            throw new IllegalArgumentException("'extensionData' cannot be null");
+        }
+
+        ByteArrayInputStream buf = new ByteArrayInputStream(extensionData);
+
+        byte[] cookie = TlsUtils.readOpaque16(buf, 1);
+
+        TlsProtocol.assertEmpty(buf);
+
+        return cookie;
+    }
+
     public static HeartbeatExtension readHeartbeatExtension(byte[] extensionData)
         throws IOException
     {
@@ -677,6 +993,65 @@ public static HeartbeatExtension readHeartbeatExtension(byte[] extensionData)
         return heartbeatExtension;
     }
 
+    /**
+     * @return a {@link Vector} of {@link KeyShareEntry}.
+     */
+    public static Vector readKeyShareClientHello(byte[] extensionData) throws IOException
+    {
+        if (extensionData == null)
+        {
+            throw new IllegalArgumentException("'extensionData' cannot be null");
+        }
+
+        ByteArrayInputStream buf = new ByteArrayInputStream(extensionData);
+
+        /*
+         * RFC 8446 4.2.8. KeyShareEntry client_shares<0..2^16-1>;
+         */
+        byte[] clientSharesData = TlsUtils.readOpaque16(buf);
+
+        TlsProtocol.assertEmpty(buf);
+
+        Vector clientShares = new Vector();
+        ByteArrayInputStream bis = new ByteArrayInputStream(clientSharesData);
+        while (bis.available() > 0)
+        {
+            clientShares.addElement(KeyShareEntry.parse(bis));
+        }
+
+        return clientShares;
+    }
+
+    public static int readKeyShareHelloRetryRequest(byte[] extensionData) throws IOException
+    {
+        if (extensionData == null)
+        {
+            throw new IllegalArgumentException("'extensionData' cannot be null");
+        }
+        if (extensionData.length != 2)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+
+        return TlsUtils.readUint16(extensionData, 0);
+    }
+
+    public static KeyShareEntry readKeyShareServerHello(byte[] extensionData) throws IOException
+    {
+        if (extensionData == null)
+        {
+            throw new IllegalArgumentException("'extensionData' cannot be null");
+        }
+
+        ByteArrayInputStream buf = new ByteArrayInputStream(extensionData);
+
+        KeyShareEntry serverShare = KeyShareEntry.parse(buf);
+
+        TlsProtocol.assertEmpty(buf);
+
+        return serverShare;
+    }
+
     public static short readMaxFragmentLengthExtension(byte[] extensionData)
         throws IOException
     {
@@ -700,6 +1075,46 @@ public static int readPaddingExtension(byte[] extensionData)
         return extensionData.length;
     }
 
+    public static OfferedPsks readPreSharedKeyClientHello(byte[] extensionData) throws IOException
+    {
+        if (extensionData == null)
+        {
+            throw new IllegalArgumentException("'extensionData' cannot be null");
+        }
+
+        ByteArrayInputStream buf = new ByteArrayInputStream(extensionData);
+
+        OfferedPsks offeredPsks = OfferedPsks.parse(buf);
+
+        TlsProtocol.assertEmpty(buf);
+
+        return offeredPsks;
+    }
+
+    public static int readPreSharedKeyServerHello(byte[] extensionData) throws IOException
+    {
+        if (extensionData == null)
+        {
+            throw new IllegalArgumentException("'extensionData' cannot be null");
+        }
+        if (extensionData.length != 2)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+
+        return TlsUtils.readUint16(extensionData, 0);
+    }
+
+    public static short[] readPSKKeyExchangeModesExtension(byte[] extensionData) throws IOException
+    {
+        short[] modes = TlsUtils.decodeUint8ArrayWithUint8Length(extensionData);
+        if (modes.length < 1)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+        return modes;
+    }
+
     public static int readRecordSizeLimitExtension(byte[] extensionData)
         throws IOException
     {
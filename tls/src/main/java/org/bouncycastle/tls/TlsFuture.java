@@ -0,0 +1,135 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+
+/**
+ * The eventual result of an asynchronous operation, such as a private-key operation performed by a
+ * {@link TlsCredentialedAsyncSigner} or {@link TlsCredentialedAsyncDecryptor}.
+ * <p>
+ * The party performing the operation completes the future exactly once, with either
+ * {@link #complete(Object)} or {@link #fail(IOException)}, from any thread.
+ * </p>
+ */
+public class TlsFuture
+{
+    private boolean done = false;
+    private Object result = null;
+    private IOException exception = null;
+    private Runnable callback = null;
+
+    /**
+     * Complete the operation successfully.
+     *
+     * @param result the result of the operation.
+     * @throws IllegalStateException if the operation has already been completed.
+     */
+    public void complete(Object result)
+    {
+        Runnable callback;
+        synchronized (this)
+        {
+            checkNotDone();
+
+            this.result = result;
+            this.done = true;
+
+            callback = this.callback;
+        }
+
+        runCallback(callback);
+    }
+
+    /**
+     * Complete the operation unsuccessfully.
+     *
+     * @param exception the cause of the failure, reported to the protocol when it resumes.
+     * @throws IllegalStateException if the operation has already been completed.
+     */
+    public void fail(IOException exception)
+    {
+        if (exception == null)
+        {
+            throw new IllegalArgumentException("'exception' cannot be null");
+        }
+
+        Runnable callback;
+        synchronized (this)
+        {
+            checkNotDone();
+
+            this.exception = exception;
+            this.done = true;
+
+            callback = this.callback;
+        }
+
+        runCallback(callback);
+    }
+
+    /**
+     * @return true if the operation has been completed, successfully or not.
+     */
+    public synchronized boolean isDone()
+    {
+        return done;
+    }
+
+    /**
+     * Return the result of a completed operation.
+     *
+     * @return the result passed to {@link #complete(Object)}.
+     * @throws IOException the exception passed to {@link #fail(IOException)}.
+     * @throws IllegalStateException if the operation has not been completed.
+     */
+    public synchronized Object getResult() throws IOException
+    {
+        if (!done)
+        {
+            throw new IllegalStateException("Operation has not been completed");
+        }
+        if (exception != null)
+        {
+            throw exception;
+        }
+        return result;
+    }
+
+    /**
+     * Arrange for a callback when the operation completes, e.g. to schedule
+     * {@link TlsProtocol#resumeSuspendedHandshake()} on the thread driving the connection. The
+     * callback runs on the thread that completes the operation, or immediately on the calling
+     * thread if it has already completed; it should only hand off work, not do it.
+     *
+     * @param callback the callback, replacing any previously set.
+     */
+    public void setCallback(Runnable callback)
+    {
+        synchronized (this)
+        {
+            this.callback = callback;
+
+            if (!done)
+            {
+                return;
+            }
+        }
+
+        runCallback(callback);
+    }
+
+    private static void runCallback(Runnable callback)
+    {
+        if (null != callback)
+        {
+            callback.run();
+        }
+    }
+
+    private void checkNotDone()
+    {
+        if (done)
+        {
+            throw new IllegalStateException("Operation has already been completed");
+        }
+    }
+}
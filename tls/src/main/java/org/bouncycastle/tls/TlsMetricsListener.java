@@ -0,0 +1,75 @@
+package org.bouncycastle.tls;
+
+/**
+ * Receives notification of events on the hot paths of a {@link TlsProtocol}, for monitoring purposes.
+ * <p>
+ * A listener is installed with {@link TlsProtocol#setMetricsListener(TlsMetricsListener)} before the
+ * handshake begins. When none is installed, the protocol does no extra work at all (in particular no
+ * timing and no allocation). Methods are called on whichever thread is driving the connection, and
+ * possibly on several threads at once (reading and writing); they should be quick and must not throw.
+ * </p>
+ */
+public interface TlsMetricsListener
+{
+    /**
+     * Called after a received handshake message has been processed.
+     * <p>
+     * The elapsed time covers the processing of the message, including any messages sent in
+     * response (e.g. the server's first flight in response to a ClientHello). If the handshake was
+     * suspended by an asynchronous operation, only the time up to the suspension is included.
+     * </p>
+     *
+     * @param context the context of the connection.
+     * @param handshakeType the type of the message (see {@link HandshakeType}).
+     * @param elapsedNanos the time spent processing the message, in nanoseconds.
+     */
+    void handshakeMessageProcessed(TlsContext context, short handshakeType, long elapsedNanos);
+
+    /**
+     * Called when a handshake has completed successfully.
+     *
+     * @param context the context of the connection.
+     * @param cipherSuite the negotiated cipher suite (see {@link CipherSuite}).
+     * @param resumedSession true if an existing session was resumed.
+     * @param elapsedNanos the time from the start of the handshake, in nanoseconds.
+     */
+    void handshakeCompleted(TlsContext context, int cipherSuite, boolean resumedSession, long elapsedNanos);
+
+    /**
+     * Called when an alert is raised (i.e. sent to the peer).
+     *
+     * @param context the context of the connection.
+     * @param alertLevel see {@link AlertLevel} for values.
+     * @param alertDescription see {@link AlertDescription} for values.
+     */
+    void alertRaised(TlsContext context, short alertLevel, short alertDescription);
+
+    /**
+     * Called when an alert is received from the peer.
+     *
+     * @param context the context of the connection.
+     * @param alertLevel see {@link AlertLevel} for values.
+     * @param alertDescription see {@link AlertDescription} for values.
+     */
+    void alertReceived(TlsContext context, short alertLevel, short alertDescription);
+
+    /**
+     * Called after a record has been received and decrypted.
+     *
+     * @param context the context of the connection.
+     * @param contentType the (inner) content type of the record (see {@link ContentType}).
+     * @param plaintextLength the length of the decrypted fragment.
+     * @param recordLength the length of the record as received, including the header.
+     */
+    void recordRead(TlsContext context, short contentType, int plaintextLength, int recordLength);
+
+    /**
+     * Called after a record has been encrypted and written.
+     *
+     * @param context the context of the connection.
+     * @param contentType the (inner) content type of the record (see {@link ContentType}).
+     * @param plaintextLength the length of the fragment before encryption.
+     * @param recordLength the length of the record as written, including the header.
+     */
+    void recordWritten(TlsContext context, short contentType, int plaintextLength, int recordLength);
+}
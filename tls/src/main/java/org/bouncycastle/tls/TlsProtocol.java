@@ -7,19 +7,30 @@
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 
+import org.bouncycastle.tls.crypto.TlsHash;
 import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Integers;
+import org.bouncycastle.util.encoders.Hex;
 
 public abstract class TlsProtocol
 {
     protected static final Integer EXT_RenegotiationInfo = Integers.valueOf(ExtensionType.renegotiation_info);
     protected static final Integer EXT_SessionTicket = Integers.valueOf(ExtensionType.session_ticket);
 
+    /*
+     * RFC 8446 4.1.3. For reasons of backward compatibility with middleboxes, the
+     * HelloRetryRequest message uses the same structure as the ServerHello, but with Random set to
+     * the special value of the SHA-256 of "HelloRetryRequest".
+     */
+    static final byte[] HELLO_RETRY_REQUEST_RANDOM = Hex
+        .decode("CF21AD74E59A6111BE1D8C021E65B891C2A211167ABB8C5E079E09E2C8A8339C");
+
     /*
      * Our Connection states
      */
@@ -41,6 +52,12 @@
     protected static final short CS_SERVER_FINISHED = 15;
     protected static final short CS_END = 16;
 
+    // TLS 1.3 only
+    protected static final short CS_SERVER_HELLO_RETRY_REQUEST = 17;
+    protected static final short CS_CLIENT_HELLO_RETRY = 18;
+    protected static final short CS_SERVER_ENCRYPTED_EXTENSIONS = 19;
+    protected static final short CS_SERVER_CERTIFICATE_VERIFY = 20;
+
     /*
      * Different modes to handle the known IV weakness
      */
@@ -69,6 +86,7 @@
     private volatile boolean appDataReady = false;
     private volatile boolean appDataSplitEnabled = true;
     private volatile boolean resumableHandshake = false;
+    private volatile TlsFuture suspendedOperation = null;
     private volatile int appDataSplitMode = ADS_MODE_1_Nsub1;
 
     protected TlsSession tlsSession = null;
@@ -84,6 +102,9 @@
     protected boolean allowCertificateStatus = false;
     protected boolean expectSessionTicket = false;
 
+    private TlsMetricsListener metricsListener = null;
+    private long handshakeStartNanos = 0L;
+
     protected boolean blocking;
     protected ByteQueueInputStream inputBuffers;
     protected ByteQueueOutputStream outputBuffer;
@@ -116,6 +137,23 @@ protected TlsProtocol(InputStream input, OutputStream output)
 //        return null == context.getSecurityParametersHandshake() && CS_END == connection_state;
 //    }
 
+    /**
+     * Install a listener to be notified of handshake, alert and record events on this connection. It
+     * should be installed before the handshake begins.
+     *
+     * @param metricsListener the listener, or null to remove any installed listener.
+     */
+    public void setMetricsListener(TlsMetricsListener metricsListener)
+    {
+        this.metricsListener = metricsListener;
+        this.recordStream.setMetricsListener(metricsListener);
+    }
+
+    public TlsMetricsListener getMetricsListener()
+    {
+        return metricsListener;
+    }
+
     public void resumeHandshake() throws IOException
     {
         if (!blocking)
@@ -132,6 +170,12 @@ public void resumeHandshake() throws IOException
 
     protected void closeConnection() throws IOException
     {
+        SecurityParameters securityParameters = getContext().getSecurityParametersConnection();
+        if (null != securityParameters)
+        {
+            securityParameters.clearPostHandshake();
+        }
+
         recordStream.close();
     }
 
@@ -156,6 +200,11 @@ protected void handleAlertMessage(short alertLevel, short alertDescription)
     {
         getPeer().notifyAlertReceived(alertLevel, alertDescription);
 
+        if (null != metricsListener)
+        {
+            metricsListener.alertReceived(getContext(), alertLevel, alertDescription);
+        }
+
         if (alertLevel == AlertLevel.warning)
         {
             handleAlertWarningMessage(alertDescription);
@@ -342,6 +391,11 @@ protected void beginHandshake(boolean renegotiation)
         }
 
         securityParameters.extendedPadding = peer.shouldUseExtendedPadding();
+
+        if (null != metricsListener)
+        {
+            this.handshakeStartNanos = System.nanoTime();
+        }
     }
 
     protected void cleanupHandshake()
@@ -360,6 +414,7 @@ protected void cleanupHandshake()
         this.serverExtensions = null;
 
         this.resumedSession = false;
+        this.suspendedOperation = null;
         this.receivedChangeCipherSpec = false;
         this.allowCertificateStatus = false;
         this.expectSessionTicket = false;
@@ -393,7 +448,30 @@ protected void completeHandshake()
                 }
             }
 
-            if (this.sessionParameters == null)
+            if (isTLSv13Connection())
+            {
+                /*
+                 * RFC 8446 2.2. TLS 1.3 sessions are only resumed using a PSK established by a
+                 * post-handshake NewSessionTicket, so a full handshake leaves a session that
+                 * records the peer's identity but (having no session ID) is not resumable.
+                 */
+                if (!this.resumedSession)
+                {
+                    SecurityParameters securityParameters = getContext().getSecurityParametersHandshake();
+                    this.sessionParameters = new SessionParameters.Builder()
+                        .setCipherSuite(securityParameters.getCipherSuite())
+                        .setCompressionAlgorithm(securityParameters.getCompressionAlgorithm())
+                        .setExtendedMasterSecret(true)
+                        .setLocalCertificate(securityParameters.getLocalCertificate())
+                        .setMasterSecret(getContext().getCrypto().adoptSecret(securityParameters.resumptionMasterSecret))
+                        .setNegotiatedVersion(securityParameters.getNegotiatedVersion())
+                        .setPeerCertificate(securityParameters.getPeerCertificate())
+                        .build();
+
+                    this.tlsSession = TlsUtils.importSession(TlsUtils.EMPTY_BYTES, this.sessionParameters);
+                }
+            }
+            else if (this.sessionParameters == null)
             {
                 SecurityParameters securityParameters = getContext().getSecurityParametersHandshake();
                 this.sessionParameters = new SessionParameters.Builder()
@@ -414,6 +492,13 @@ protected void completeHandshake()
             }
 
             getContextAdmin().handshakeComplete(getPeer(), this.tlsSession);
+
+            if (null != metricsListener)
+            {
+                TlsContext context = getContext();
+                metricsListener.handshakeCompleted(context, context.getSecurityParametersConnection().getCipherSuite(),
+                    this.resumedSession, System.nanoTime() - handshakeStartNanos);
+            }
         }
         finally
         {
@@ -492,7 +577,7 @@ private void processHandshakeQueue(ByteQueue queue)
         /*
          * We need the first 4 bytes, they contain type and length of the message.
          */
-        while (queue.available() >= 4)
+        while (!isHandshakeSuspended() && queue.available() >= 4)
         {
             byte[] beginning = new byte[4];
             queue.read(beginning, 0, 4, 0);
@@ -508,42 +593,130 @@ private void processHandshakeQueue(ByteQueue queue)
                 break;
             }
 
-            /*
-             * RFC 2246 7.4.9. The value handshake_messages includes all handshake messages
-             * starting at client hello up to, but not including, this finished message.
-             * [..] Note: [Also,] Hello Request messages are omitted from handshake hashes.
-             */
-            if (HandshakeType.hello_request != type)
+            long startNanos = null == metricsListener ? 0L : System.nanoTime();
+
+            if (isTLSv13Connection())
             {
-                if (HandshakeType.finished == type)
-                {
-                    checkReceivedChangeCipherSpec(true);
+                processHandshakeMessage13(queue, type, length);
+            }
+            else
+            {
+                processHandshakeMessage(queue, type, length);
+            }
 
-                    TlsContext ctx = getContext();
-                    SecurityParameters securityParameters = ctx.getSecurityParametersHandshake();
+            if (null != metricsListener)
+            {
+                metricsListener.handshakeMessageProcessed(getContext(), type, System.nanoTime() - startNanos);
+            }
+        }
+    }
 
-                    if (securityParameters.getMasterSecret() != null)
-                    {
-                        securityParameters.peerVerifyData = createVerifyData(!ctx.isServer());
-                    }
-                }
-                else
+    private void processHandshakeMessage(ByteQueue queue, short type, int length)
+        throws IOException
+    {
+        int totalLength = 4 + length;
+
+        /*
+         * RFC 2246 7.4.9. The value handshake_messages includes all handshake messages
+         * starting at client hello up to, but not including, this finished message.
+         * [..] Note: [Also,] Hello Request messages are omitted from handshake hashes.
+         */
+        if (HandshakeType.hello_request != type)
+        {
+            if (HandshakeType.finished == type)
+            {
+                checkReceivedChangeCipherSpec(true);
+
+                TlsContext ctx = getContext();
+                SecurityParameters securityParameters = ctx.getSecurityParametersHandshake();
+
+                if (securityParameters.getMasterSecret() != null)
                 {
-                    checkReceivedChangeCipherSpec(false);
+                    securityParameters.peerVerifyData = createVerifyData(!ctx.isServer());
                 }
-
-                queue.copyTo(recordStream.getHandshakeHashUpdater(), totalLength);
+            }
+            else
+            {
+                checkReceivedChangeCipherSpec(false);
             }
 
-            queue.removeData(4);
+            queue.copyTo(recordStream.getHandshakeHashUpdater(), totalLength);
+        }
 
-            ByteArrayInputStream buf = queue.readFrom(length);
+        queue.removeData(4);
 
+        ByteArrayInputStream buf = queue.readFrom(length);
+
+        /*
+         * Now, parse the message.
+         */
+        handleHandshakeMessage(type, buf);
+    }
+
+    private void processHandshakeMessage13(ByteQueue queue, short type, int length)
+        throws IOException
+    {
+        int totalLength = 4 + length;
+
+        switch (type)
+        {
+        case HandshakeType.finished:
+        {
             /*
-             * Now, parse the message.
+             * RFC 8446 4.4.4. The Finished MAC covers the transcript up to, but not including,
+             * the Finished message itself.
              */
-            handleHandshakeMessage(type, buf);
+            TlsContext ctx = getContext();
+            SecurityParameters securityParameters = ctx.getSecurityParametersHandshake();
+            if (null == securityParameters)
+            {
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            securityParameters.peerVerifyData = createVerifyData(!ctx.isServer());
+
+            queue.copyTo(recordStream.getHandshakeHashUpdater(), totalLength);
+            queue.removeData(4);
+            handleHandshakeMessage(type, queue.readFrom(length));
+            break;
         }
+        case HandshakeType.certificate_verify:
+        {
+            /*
+             * RFC 8446 4.4.3. The signature covers the transcript up to, but not including, the
+             * CertificateVerify, so we only add it to the transcript once it has been checked.
+             */
+            byte[] message = queue.removeData(totalLength, 0);
+            handleHandshakeMessage(type, new ByteArrayInputStream(message, 4, length));
+            recordStream.getHandshakeHashUpdater().write(message, 0, totalLength);
+            break;
+        }
+        case HandshakeType.key_update:
+        case HandshakeType.session_ticket:
+        {
+            // RFC 8446 4.6. Post-handshake messages are not part of the handshake transcript
+            queue.removeData(4);
+            handleHandshakeMessage(type, queue.readFrom(length));
+            break;
+        }
+        default:
+        {
+            queue.copyTo(recordStream.getHandshakeHashUpdater(), totalLength);
+            queue.removeData(4);
+            handleHandshakeMessage(type, queue.readFrom(length));
+            break;
+        }
+        }
+    }
+
+    /**
+     * @return true if TLS 1.3 has been negotiated for the current handshake or connection.
+     */
+    protected boolean isTLSv13Connection()
+    {
+        SecurityParameters securityParameters = getContext().getSecurityParameters();
+        ProtocolVersion negotiatedVersion = null == securityParameters ? null : securityParameters.getNegotiatedVersion();
+        return null != negotiatedVersion && TlsUtils.isTLSv13(negotiatedVersion);
     }
 
     private void processApplicationDataQueue()
@@ -580,6 +753,22 @@ private void processAlertQueue()
     private void processChangeCipherSpec(byte[] buf, int off, int len)
         throws IOException
     {
+        if (isTLSv13Connection())
+        {
+            /*
+             * RFC 8446 5. An implementation may receive an unencrypted record of type
+             * change_cipher_spec consisting of the single byte value 0x01 at any time after the
+             * first ClientHello message has been sent or received and before the peer's Finished
+             * message has been received and MUST simply drop it without further processing.
+             */
+            if (len != 1 || ChangeCipherSpec.change_cipher_spec != TlsUtils.readUint8(buf, off)
+                || null == getContext().getSecurityParametersHandshake())
+            {
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+            return;
+        }
+
         for (int i = 0; i < len; ++i)
         {
             short message = TlsUtils.readUint8(buf, off + i);
@@ -767,6 +956,30 @@ protected void safeWriteRecord(short type, byte[] buf, int offset, int len)
         }
     }
 
+    protected void safeWriteKeyUpdate(byte[] buf, int offset, int len)
+        throws IOException
+    {
+        try
+        {
+            recordStream.writeKeyUpdate(buf, offset, len);
+        }
+        catch (TlsFatalAlert e)
+        {
+            handleException(e.getAlertDescription(), "Failed to write KeyUpdate", e);
+            throw e;
+        }
+        catch (IOException e)
+        {
+            handleException(AlertDescription.internal_error, "Failed to write KeyUpdate", e);
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            handleException(AlertDescription.internal_error, "Failed to write KeyUpdate", e);
+            throw new TlsFatalAlert(AlertDescription.internal_error, e);
+        }
+    }
+
     /**
      * Write some application data. Fragmentation is handled internally. Usable in both
      * blocking/non-blocking modes.<br>
@@ -878,7 +1091,7 @@ protected void writeHandshakeMessage(byte[] buf, int off, int len) throws IOExce
         }
 
         short type = TlsUtils.readUint8(buf, off);
-        if (type != HandshakeType.hello_request)
+        if (type != HandshakeType.hello_request && type != HandshakeType.key_update)
         {
             recordStream.getHandshakeHashUpdater().write(buf, off, len);
         }
@@ -1059,7 +1272,8 @@ public void offerInput(byte[] input, int inputOff, int inputLen) throws IOExcept
         }
 
         // Fast path if the input is arriving one record at a time
-        if (inputBuffers.available() == 0 && safeReadFullRecord(input, inputOff, inputLen))
+        if (inputBuffers.available() == 0 && !isHandshakeSuspended()
+            && safeReadFullRecord(input, inputOff, inputLen))
         {
             if (closed)
             {
@@ -1074,8 +1288,16 @@ public void offerInput(byte[] input, int inputOff, int inputLen) throws IOExcept
 
         inputBuffers.addBytes(input, inputOff, inputLen);
 
-        // loop while there are enough bytes to read the length of the next record
-        while (inputBuffers.available() >= RecordFormat.FRAGMENT_OFFSET)
+        processInputBuffers();
+    }
+
+    private void processInputBuffers() throws IOException
+    {
+        /*
+         * Loop while there are enough bytes to read the length of the next record. Input that
+         * arrives while the handshake is suspended stays buffered until it is resumed.
+         */
+        while (!isHandshakeSuspended() && inputBuffers.available() >= RecordFormat.FRAGMENT_OFFSET)
         {
             byte[] recordHeader = new byte[RecordFormat.FRAGMENT_OFFSET];
             if (RecordFormat.FRAGMENT_OFFSET != inputBuffers.peek(recordHeader))
@@ -1105,6 +1327,106 @@ public void offerInput(byte[] input, int inputOff, int inputLen) throws IOExcept
         }
     }
 
+    /**
+     * Check whether the handshake is suspended, waiting for an asynchronous operation to complete
+     * (see {@link TlsCredentialedAsyncSigner} and {@link TlsCredentialedAsyncDecryptor}). This only
+     * happens in non-blocking mode. While the handshake is suspended, input offered via
+     * {@link #offerInput(byte[], int, int)} is buffered but not processed.
+     *
+     * @return true if the handshake is suspended.
+     */
+    public boolean isHandshakeSuspended()
+    {
+        return null != suspendedOperation;
+    }
+
+    /**
+     * @return the operation a suspended handshake is waiting for, or null if it is not suspended.
+     */
+    public TlsFuture getSuspendedOperation()
+    {
+        return suspendedOperation;
+    }
+
+    /**
+     * Resume a suspended handshake once the operation it is waiting for has completed, then process
+     * any input buffered in the meantime. As with {@link #offerInput(byte[], int, int)}, you should
+     * check for available output afterwards by calling {@link #getAvailableOutputBytes()}.
+     *
+     * @throws IOException If an error occurs while continuing the handshake or processing records
+     * @throws IllegalStateException If the handshake is not suspended, or the operation it is
+     *         waiting for has not completed.
+     */
+    public void resumeSuspendedHandshake() throws IOException
+    {
+        TlsFuture operation = this.suspendedOperation;
+        if (null == operation)
+        {
+            throw new IllegalStateException("Handshake is not suspended");
+        }
+        if (!operation.isDone())
+        {
+            throw new IllegalStateException("Cannot resume the handshake before its operation has completed");
+        }
+        if (closed)
+        {
+            throw new IOException("Connection is closed, cannot resume the handshake");
+        }
+
+        this.suspendedOperation = null;
+
+        try
+        {
+            continueHandshake(operation);
+
+            processHandshakeQueue(handshakeQueue);
+        }
+        catch (TlsFatalAlert e)
+        {
+            handleException(e.getAlertDescription(), "Failed to resume handshake", e);
+            throw e;
+        }
+        catch (IOException e)
+        {
+            handleException(AlertDescription.internal_error, "Failed to resume handshake", e);
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            handleException(AlertDescription.internal_error, "Failed to resume handshake", e);
+            throw new TlsFatalAlert(AlertDescription.internal_error, e);
+        }
+
+        processInputBuffers();
+    }
+
+    /**
+     * Suspend the handshake until the given operation completes and
+     * {@link #resumeSuspendedHandshake()} is called. The current handshake message must be fully
+     * consumed before suspending, since {@link #continueHandshake(TlsFuture)} is called with no
+     * message.
+     */
+    protected void suspendHandshake(TlsFuture operation)
+    {
+        if (blocking)
+        {
+            throw new IllegalStateException("Cannot suspend the handshake in blocking mode");
+        }
+
+        this.suspendedOperation = operation;
+    }
+
+    /**
+     * Continue a handshake that was suspended by {@link #suspendHandshake(TlsFuture)}.
+     *
+     * @param operation the completed operation the handshake was waiting for.
+     */
+    protected void continueHandshake(TlsFuture operation)
+        throws IOException
+    {
+        throw new TlsFatalAlert(AlertDescription.internal_error);
+    }
+
     public int getApplicationDataLimit()
     {
         return recordStream.getPlaintextLimit();
@@ -1156,6 +1478,36 @@ public int readInput(byte[] buffer, int offset, int length)
         return length;
     }
 
+    /**
+     * Retrieves received application data into a {@link ByteBuffer}, which may be a heap or a
+     * direct buffer. Use {@link #getAvailableInputBytes()} to check how much application data is
+     * currently available. This method functions similarly to
+     * {@link #readInput(byte[], int, int)}, except that the data is copied straight into the
+     * buffer, starting at its position, without an intermediate array.<br>
+     * <br>
+     * Only allowed in non-blocking mode.
+     * @param buffer The buffer to hold the application data
+     * @param length The maximum number of bytes to read
+     * @return The total number of bytes copied to the buffer. May be less than the
+     *          length specified if the length was greater than the amount of available data.
+     */
+    public int readInput(ByteBuffer buffer, int length)
+    {
+        if (blocking)
+        {
+            throw new IllegalStateException("Cannot use readInput() in blocking mode! Use getInputStream() instead.");
+        }
+
+        length = Math.min(length, applicationDataQueue.available());
+        if (length < 1)
+        {
+            return 0;
+        }
+
+        applicationDataQueue.removeData(buffer, length, 0);
+        return length;
+    }
+
     /**
      * Gets the amount of encrypted data available to be sent. A call to
      * {@link #readOutput(byte[], int, int)} is guaranteed to be able to return at
@@ -1170,8 +1522,11 @@ public int getAvailableOutputBytes()
         {
             throw new IllegalStateException("Cannot use getAvailableOutputBytes() in blocking mode! Use getOutputStream() instead.");
         }
-        
-        return outputBuffer.getBuffer().available();
+
+        synchronized (outputBuffer)
+        {
+            return outputBuffer.getBuffer().available();
+        }
     }
 
     /**
@@ -1193,10 +1548,41 @@ public int readOutput(byte[] buffer, int offset, int length)
         {
             throw new IllegalStateException("Cannot use readOutput() in blocking mode! Use getOutputStream() instead.");
         }
-        
-        int bytesToRead = Math.min(getAvailableOutputBytes(), length);
-        outputBuffer.getBuffer().removeData(buffer, offset, bytesToRead, 0);
-        return bytesToRead;
+
+        synchronized (outputBuffer)
+        {
+            int bytesToRead = Math.min(getAvailableOutputBytes(), length);
+            outputBuffer.getBuffer().removeData(buffer, offset, bytesToRead, 0);
+            return bytesToRead;
+        }
+    }
+
+    /**
+     * Retrieves encrypted data to be sent into a {@link ByteBuffer}, which may be a heap or a
+     * direct buffer. Use {@link #getAvailableOutputBytes()} to check how much encrypted data is
+     * currently available. This method functions similarly to
+     * {@link #readOutput(byte[], int, int)}, except that the data is copied straight into the
+     * buffer, starting at its position, without an intermediate array.<br>
+     * <br>
+     * Only allowed in non-blocking mode.
+     * @param buffer The buffer to hold the encrypted data
+     * @param length The maximum number of bytes to read
+     * @return The total number of bytes copied to the buffer. May be less than the
+     *          length specified if the length was greater than the amount of available data.
+     */
+    public int readOutput(ByteBuffer buffer, int length)
+    {
+        if (blocking)
+        {
+            throw new IllegalStateException("Cannot use readOutput() in blocking mode! Use getOutputStream() instead.");
+        }
+
+        synchronized (outputBuffer)
+        {
+            int bytesToRead = Math.min(getAvailableOutputBytes(), length);
+            outputBuffer.getBuffer().removeData(buffer, bytesToRead, 0);
+            return bytesToRead;
+        }
     }
 
     protected void invalidateSession()
@@ -1226,7 +1612,8 @@ protected void processFinishedMessage(ByteArrayInputStream buf)
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
-        if (ctx.isServer() ^ resumedSession)
+        // NOTE: tls-unique is not defined for TLS 1.3 (RFC 8446 C.5)
+        if ((ctx.isServer() ^ resumedSession) && !isTLSv13Connection())
         {
             if (!resumedSession || securityParameters.isExtendedMasterSecret())
             {
@@ -1255,6 +1642,11 @@ protected void raiseAlertFatal(short alertDescription, String message, Throwable
     {
         getPeer().notifyAlertRaised(AlertLevel.fatal, alertDescription, message, cause);
 
+        if (null != metricsListener)
+        {
+            metricsListener.alertRaised(getContext(), AlertLevel.fatal, alertDescription);
+        }
+
         byte[] alert = new byte[]{ (byte)AlertLevel.fatal, (byte)alertDescription };
 
         try
@@ -1272,11 +1664,41 @@ protected void raiseAlertWarning(short alertDescription, String message)
     {
         getPeer().notifyAlertRaised(AlertLevel.warning, alertDescription, message, null);
 
+        if (null != metricsListener)
+        {
+            metricsListener.alertRaised(getContext(), AlertLevel.warning, alertDescription);
+        }
+
         byte[] alert = new byte[]{ (byte)AlertLevel.warning, (byte)alertDescription };
 
         safeWriteRecord(ContentType.alert, alert, 0, 2);
     }
 
+    protected void receive13KeyUpdate(ByteArrayInputStream buf)
+        throws IOException
+    {
+        short request_update = TlsUtils.readUint8(buf);
+
+        assertEmpty(buf);
+
+        if (!KeyUpdateRequest.isValid(request_update))
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        this.recordStream.notifyKeyUpdateReceived();
+
+        /*
+         * RFC 8446 4.6.3. If the request_update field is set to "update_requested", then the
+         * receiver MUST send a KeyUpdate of its own with request_update set to "update_not_requested"
+         * prior to sending its next Application Data record.
+         */
+        if (KeyUpdateRequest.update_requested == request_update)
+        {
+            send13KeyUpdate(KeyUpdateRequest.update_not_requested);
+        }
+    }
+
     protected void sendCertificateMessage(Certificate certificate, OutputStream endPointHash)
         throws IOException
     {
@@ -1292,13 +1714,38 @@ protected void sendCertificateMessage(Certificate certificate, OutputStream endP
             certificate = Certificate.EMPTY_CHAIN;
         }
 
-        HandshakeMessage message = new HandshakeMessage(HandshakeType.certificate);
-        certificate.encode(context, message, endPointHash);
-        message.writeToRecordStream();
+        /*
+         * The encoded message is cached by the Certificate, so a server sending the same chain for
+         * each handshake only encodes it once.
+         */
+        byte[] message = certificate.getEncodedMessage(context);
+        if (null != endPointHash)
+        {
+            certificate.writeEndPointHash(context, endPointHash);
+        }
+        writeHandshakeMessage(message, 0, message.length);
 
         securityParameters.localCertificate = certificate;
     }
 
+    protected void send13KeyUpdate(short request_update)
+        throws IOException
+    {
+        HandshakeMessage message = new HandshakeMessage(HandshakeType.key_update, 1);
+        TlsUtils.writeUint8(request_update, message);
+        message.writeKeyUpdateToRecordStream();
+    }
+
+    protected void sendCertificateVerifyMessage(DigitallySigned certificateVerify)
+        throws IOException
+    {
+        HandshakeMessage message = new HandshakeMessage(HandshakeType.certificate_verify);
+
+        certificateVerify.encode(message);
+
+        message.writeToRecordStream();
+    }
+
     protected void sendChangeCipherSpecMessage()
         throws IOException
     {
@@ -1315,7 +1762,8 @@ protected void sendFinishedMessage()
 
         byte[] verify_data = securityParameters.localVerifyData = createVerifyData(ctx.isServer());
 
-        if (!ctx.isServer() ^ resumedSession)
+        // NOTE: tls-unique is not defined for TLS 1.3 (RFC 8446 C.5)
+        if ((!ctx.isServer() ^ resumedSession) && !isTLSv13Connection())
         {
             if (!resumedSession || securityParameters.isExtendedMasterSecret())
             {
@@ -1340,8 +1788,13 @@ protected void sendSupplementalDataMessage(Vector supplementalData)
         message.writeToRecordStream();
     }
 
-    protected byte[] createVerifyData(boolean isServer)
+    protected byte[] createVerifyData(boolean isServer) throws IOException
     {
+        if (isTLSv13Connection())
+        {
+            return TlsUtils.calculate13VerifyData(getContext(), recordStream.getHandshakeHash(), isServer);
+        }
+
         return TlsUtils.calculateTLSVerifyData(getContext(), recordStream.getHandshakeHash(), isServer);
     }
 
@@ -1529,9 +1982,23 @@ protected static TlsCredentials validateCredentials(TlsCredentials credentials)
 
     protected static void writeExtensions(OutputStream output, Hashtable extensions)
         throws IOException
+    {
+        writeExtensions(output, extensions, false);
+    }
+
+    /**
+     * @param writeEmpty whether to write an empty extensions block (rather than nothing) if there
+     *            are no extensions, as TLS 1.3 messages other than the hellos require.
+     */
+    protected static void writeExtensions(OutputStream output, Hashtable extensions, boolean writeEmpty)
+        throws IOException
     {
         if (null == extensions || extensions.isEmpty())
         {
+            if (writeEmpty)
+            {
+                TlsUtils.writeUint16(0, output);
+            }
             return;
         }
 
@@ -1544,6 +2011,17 @@ protected static void writeExtensions(OutputStream output, Hashtable extensions)
         writeSelectedExtensions(buf, extensions, true);
         writeSelectedExtensions(buf, extensions, false);
 
+        /*
+         * RFC 8446 4.2.11. The "pre_shared_key" extension MUST be the last extension in the
+         * ClientHello (this facilitates implementation as described below).
+         */
+        byte[] pskExtData = TlsUtils.getExtensionData(extensions, TlsExtensionsUtils.EXT_pre_shared_key);
+        if (null != pskExtData)
+        {
+            TlsUtils.writeUint16(ExtensionType.pre_shared_key, buf);
+            TlsUtils.writeOpaque16(pskExtData, buf);
+        }
+
         byte[] extBytes = buf.toByteArray();
 
         TlsUtils.writeOpaque16(extBytes, output);
@@ -1559,6 +2037,11 @@ protected static void writeSelectedExtensions(OutputStream output, Hashtable ext
             int extension_type = key.intValue();
             byte[] extension_data = (byte[])extensions.get(key);
 
+            if (ExtensionType.pre_shared_key == extension_type)
+            {
+                continue;
+            }
+
             if (selectEmpty == (extension_data.length == 0))
             {
                 TlsUtils.checkUint16(extension_type);
@@ -1594,6 +2077,27 @@ protected static int getPRFAlgorithm(TlsContext context, int cipherSuite) throws
 
         switch (cipherSuite)
         {
+        case CipherSuite.TLS_AES_128_CCM_8_SHA256:
+        case CipherSuite.TLS_AES_128_CCM_SHA256:
+        case CipherSuite.TLS_AES_128_GCM_SHA256:
+        case CipherSuite.TLS_CHACHA20_POLY1305_SHA256:
+        {
+            if (TlsUtils.isTLSv13(context))
+            {
+                return PRFAlgorithm.tls13_hkdf_sha256;
+            }
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        case CipherSuite.TLS_AES_256_GCM_SHA384:
+        {
+            if (TlsUtils.isTLSv13(context))
+            {
+                return PRFAlgorithm.tls13_hkdf_sha384;
+            }
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
         case CipherSuite.TLS_DH_anon_WITH_AES_128_CBC_SHA256:
         case CipherSuite.TLS_DH_anon_WITH_AES_128_GCM_SHA256:
         case CipherSuite.TLS_DH_anon_WITH_AES_256_CBC_SHA256:
@@ -1846,14 +2350,47 @@ class HandshakeMessage extends ByteArrayOutputStream
             count += 3;
         }
 
-        void writeToRecordStream() throws IOException
+        /**
+         * Update a hash with this message, less the given number of trailing bytes (for the TLS 1.3
+         * PSK binders, which are calculated over a partial ClientHello).
+         */
+        void updateHashPrefix(TlsHash hash, int suffixLength) throws IOException
+        {
+            patchLength();
+            hash.update(buf, 0, count - suffixLength);
+        }
+
+        /**
+         * Overwrite the trailing bytes of this message.
+         */
+        void patchSuffix(byte[] suffix)
+        {
+            System.arraycopy(suffix, 0, buf, count - suffix.length, suffix.length);
+        }
+
+        private void patchLength() throws IOException
         {
-            // Patch actual length back in
             int length = count - 4;
             TlsUtils.checkUint24(length);
             TlsUtils.writeUint24(length, buf, 1);
+        }
+
+        void writeToRecordStream() throws IOException
+        {
+            // Patch actual length back in
+            patchLength();
             writeHandshakeMessage(buf, 0, count);
             buf = null;
         }
+
+        /**
+         * Write this (KeyUpdate) message and then update the write key, as a single step.
+         */
+        void writeKeyUpdateToRecordStream() throws IOException
+        {
+            patchLength();
+            safeWriteKeyUpdate(buf, 0, count);
+            buf = null;
+        }
     }
 }
@@ -0,0 +1,476 @@
+package org.bouncycastle.tls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * Runs many non-blocking TLS connections over {@link SocketChannel}s on a single thread, using a
+ * {@link Selector}.
+ * <p>
+ * Each connection is a {@link TlsChannelConnection} wrapping a non-blocking {@link TlsProtocol}
+ * (created by a {@link ProtocolFactory}); the driver feeds it the bytes read from the channel and
+ * writes out whatever it produces. The application is told about each connection through its
+ * {@link Handler}, always on the driver's thread. Other threads must not use a connection directly,
+ * but can hand work to the driver with {@link #invokeLater(Runnable)}.
+ * </p>
+ * <p>
+ * The driver is a {@link Runnable}, so the application chooses the thread(s) it runs on; to use
+ * several cores, run several drivers and spread connections between them (see
+ * {@link #listen(ServerSocketChannel, ProtocolFactory, TlsSelectorDriver[])}). No monitor is held
+ * while the driver waits for I/O, and no connection ever blocks it, so threads of any kind
+ * (including virtual threads) can submit work without blocking for longer than it takes to queue it.
+ * </p>
+ * <p>
+ * Back-pressure: a connection stops reading from its channel while more than the output limit is
+ * waiting to be sent, or more than the input limit of received application data is waiting to be
+ * read by the application; it resumes automatically once the backlog falls. Handshakes suspended by
+ * an asynchronous private-key operation (see {@link TlsProtocol#isHandshakeSuspended()}) are resumed
+ * on the driver's thread as soon as the operation completes.
+ * </p>
+ */
+public class TlsSelectorDriver
+    implements Runnable
+{
+    /**
+     * Creates the protocol for each new connection.
+     */
+    public interface ProtocolFactory
+    {
+        /**
+         * Create a non-blocking protocol for a connected channel and start its handshake, i.e. call
+         * {@link TlsServerProtocol#accept(TlsServer)} or {@link TlsClientProtocol#connect(TlsClient)}.
+         *
+         * @param channel the connected channel.
+         * @return the started protocol.
+         * @throws IOException if the protocol could not be created or started.
+         */
+        TlsProtocol createProtocol(SocketChannel channel) throws IOException;
+    }
+
+    /**
+     * Receives notification of events on each connection, on the driver's thread. An exception
+     * thrown from any method except {@link #connectionClosed(TlsChannelConnection, Exception)}
+     * closes the connection, with the exception as the cause.
+     */
+    public interface Handler
+    {
+        /**
+         * The initial handshake has completed, so application data can now be written.
+         */
+        void handshakeCompleted(TlsChannelConnection connection) throws IOException;
+
+        /**
+         * Application data has been received; see {@link TlsChannelConnection#read(byte[], int, int)}.
+         */
+        void dataAvailable(TlsChannelConnection connection) throws IOException;
+
+        /**
+         * Output that had reached the output limit has drained below it, so writing can resume; see
+         * {@link TlsChannelConnection#isWritable()}.
+         */
+        void outputDrained(TlsChannelConnection connection) throws IOException;
+
+        /**
+         * The connection has been closed and its channel closed.
+         *
+         * @param cause null if the connection was closed in an orderly way, otherwise the reason.
+         */
+        void connectionClosed(TlsChannelConnection connection, Exception cause);
+    }
+
+    public static final int DEFAULT_INPUT_LIMIT = 64 * 1024;
+    public static final int DEFAULT_OUTPUT_LIMIT = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private static final long ACCEPT_RETRY_MIN_MILLIS = 10;
+    private static final long ACCEPT_RETRY_MAX_MILLIS = 1000;
+
+    private final Selector selector;
+    private final Handler handler;
+    private final Vector tasks = new Vector();
+
+    // Acceptors backing off after a failed accept; only used by the driver's thread
+    private final Vector pausedAcceptors = new Vector();
+
+    // Shared by all connections, since they are only used by the driver's thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private volatile boolean running = true;
+
+    private int inputLimit = DEFAULT_INPUT_LIMIT;
+    private int outputLimit = DEFAULT_OUTPUT_LIMIT;
+
+    public TlsSelectorDriver(Handler handler) throws IOException
+    {
+        if (null == handler)
+        {
+            throw new IllegalArgumentException("'handler' cannot be null");
+        }
+
+        this.handler = handler;
+        this.selector = Selector.open();
+    }
+
+    public int getInputLimit()
+    {
+        return inputLimit;
+    }
+
+    /**
+     * Set the amount of received application data a connection may hold before it stops reading
+     * from its channel. Should be set before the driver is started.
+     */
+    public void setInputLimit(int inputLimit)
+    {
+        if (inputLimit < 1)
+        {
+            throw new IllegalArgumentException("'inputLimit' must be >= 1");
+        }
+        this.inputLimit = inputLimit;
+    }
+
+    public int getOutputLimit()
+    {
+        return outputLimit;
+    }
+
+    /**
+     * Set the amount of unsent output a connection may hold before it stops reading from its
+     * channel and reports itself as not writable. Should be set before the driver is started.
+     */
+    public void setOutputLimit(int outputLimit)
+    {
+        if (outputLimit < 1)
+        {
+            throw new IllegalArgumentException("'outputLimit' must be >= 1");
+        }
+        this.outputLimit = outputLimit;
+    }
+
+    /**
+     * Run a task on the driver's thread. May be called from any thread.
+     */
+    public void invokeLater(Runnable task)
+    {
+        tasks.addElement(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Accept connections from a server channel, handling them on this driver. May be called from any
+     * thread.
+     */
+    public void listen(ServerSocketChannel serverChannel, ProtocolFactory factory) throws IOException
+    {
+        listen(serverChannel, factory, new TlsSelectorDriver[]{ this });
+    }
+
+    /**
+     * Accept connections from a server channel on this driver, spreading them across the given
+     * drivers in turn. May be called from any thread.
+     * <p>
+     * If accepting fails with an I/O error (e.g. too many open files), the driver stops accepting
+     * from the channel for a while, backing off further on each consecutive failure (up to a
+     * second). Any other failure stops listening and closes the channel.
+     * </p>
+     */
+    public void listen(final ServerSocketChannel serverChannel, ProtocolFactory factory, TlsSelectorDriver[] workers)
+        throws IOException
+    {
+        if (null == workers || workers.length < 1)
+        {
+            throw new IllegalArgumentException("'workers' cannot be null or empty");
+        }
+
+        serverChannel.configureBlocking(false);
+
+        final Acceptor acceptor = new Acceptor(factory, workers);
+
+        invokeLater(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    serverChannel.register(selector, SelectionKey.OP_ACCEPT, acceptor);
+                }
+                catch (IOException e)
+                {
+                    // The server channel has been closed meanwhile
+                }
+            }
+        });
+    }
+
+    /**
+     * Add a connection for a channel that is connected, or has a connection pending (e.g. a client
+     * channel after a non-blocking {@link SocketChannel#connect(java.net.SocketAddress)}). May be
+     * called from any thread.
+     *
+     * @param channel the channel.
+     * @param factory creates the protocol once the channel is connected.
+     * @param attachment an arbitrary object for the application; see
+     *            {@link TlsChannelConnection#getAttachment()}.
+     */
+    public void register(final SocketChannel channel, final ProtocolFactory factory, final Object attachment)
+    {
+        invokeLater(new Runnable()
+        {
+            public void run()
+            {
+                TlsChannelConnection connection = new TlsChannelConnection(TlsSelectorDriver.this, channel, attachment);
+                try
+                {
+                    channel.configureBlocking(false);
+
+                    if (channel.isConnectionPending())
+                    {
+                        connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                        connection.factory = factory;
+                    }
+                    else
+                    {
+                        connection.key = channel.register(selector, 0, connection);
+                        connection.start(factory);
+                    }
+                }
+                catch (Exception e)
+                {
+                    connection.fail(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop the driver; all its connections are closed. May be called from any thread.
+     */
+    public void shutdown()
+    {
+        this.running = false;
+        selector.wakeup();
+    }
+
+    public void run()
+    {
+        try
+        {
+            while (running)
+            {
+                selector.select(resumeAcceptors());
+
+                runTasks();
+
+                Iterator it = selector.selectedKeys().iterator();
+                while (it.hasNext())
+                {
+                    SelectionKey key = (SelectionKey)it.next();
+                    it.remove();
+
+                    if (!key.isValid())
+                    {
+                        continue;
+                    }
+
+                    Object attachment = key.attachment();
+                    if (attachment instanceof Acceptor)
+                    {
+                        ((Acceptor)attachment).accept(key);
+                    }
+                    else
+                    {
+                        ((TlsChannelConnection)attachment).handleReady(key);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // The selector failed; fall through and close everything
+        }
+        finally
+        {
+            closeAll();
+        }
+    }
+
+    Handler getHandler()
+    {
+        return handler;
+    }
+
+    ByteBuffer getReadBuffer()
+    {
+        return readBuffer;
+    }
+
+    ByteBuffer getWriteBuffer()
+    {
+        return writeBuffer;
+    }
+
+    private void closeAll()
+    {
+        Iterator it = selector.keys().iterator();
+        while (it.hasNext())
+        {
+            Object attachment = ((SelectionKey)it.next()).attachment();
+            if (attachment instanceof TlsChannelConnection)
+            {
+                ((TlsChannelConnection)attachment).closeChannel(new IOException("TLS driver shut down"));
+            }
+        }
+
+        try
+        {
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            // Ignore
+        }
+    }
+
+    /*
+     * Re-enable accepting on any listener whose back-off has expired, returning the time until the
+     * next one expires (or 0 if none are waiting).
+     */
+    private long resumeAcceptors()
+    {
+        long timeout = 0, now = System.currentTimeMillis();
+
+        for (int i = pausedAcceptors.size() - 1; i >= 0; --i)
+        {
+            Acceptor acceptor = (Acceptor)pausedAcceptors.elementAt(i);
+
+            long wait = acceptor.retryTime - now;
+            if (wait <= 0)
+            {
+                pausedAcceptors.removeElementAt(i);
+                acceptor.resume();
+            }
+            else if (timeout == 0 || wait < timeout)
+            {
+                timeout = wait;
+            }
+        }
+
+        return timeout;
+    }
+
+    private void runTasks()
+    {
+        for (;;)
+        {
+            Runnable task;
+            synchronized (tasks)
+            {
+                if (tasks.isEmpty())
+                {
+                    return;
+                }
+                task = (Runnable)tasks.remove(0);
+            }
+
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException e)
+            {
+                // A failing task must not stop the driver (and with it every connection)
+            }
+        }
+    }
+
+    private class Acceptor
+    {
+        private final ProtocolFactory factory;
+        private final TlsSelectorDriver[] workers;
+        private int next = 0;
+
+        private SelectionKey key = null;
+        private long retryDelay = 0, retryTime = 0;
+
+        Acceptor(ProtocolFactory factory, TlsSelectorDriver[] workers)
+        {
+            this.factory = factory;
+            this.workers = workers;
+        }
+
+        void accept(SelectionKey key)
+        {
+            this.key = key;
+
+            ServerSocketChannel serverChannel = (ServerSocketChannel)key.channel();
+            for (;;)
+            {
+                SocketChannel channel;
+                try
+                {
+                    channel = serverChannel.accept();
+                }
+                catch (ClosedChannelException e)
+                {
+                    key.cancel();
+                    return;
+                }
+                catch (IOException e)
+                {
+                    /*
+                     * e.g. too many open files. The connection stays queued, so the channel would be
+                     * selected again at once; stop accepting for a while, backing off further on each
+                     * consecutive failure.
+                     */
+                    retryDelay = Math.max(ACCEPT_RETRY_MIN_MILLIS, Math.min(2 * retryDelay, ACCEPT_RETRY_MAX_MILLIS));
+                    retryTime = System.currentTimeMillis() + retryDelay;
+
+                    key.interestOps(0);
+                    pausedAcceptors.addElement(this);
+                    return;
+                }
+                catch (RuntimeException e)
+                {
+                    // e.g. a SecurityException; retrying won't help, so stop listening
+                    key.cancel();
+                    try
+                    {
+                        serverChannel.close();
+                    }
+                    catch (IOException ce)
+                    {
+                        // Ignore
+                    }
+                    return;
+                }
+
+                if (null == channel)
+                {
+                    return;
+                }
+
+                retryDelay = 0;
+
+                workers[next].register(channel, factory, null);
+                next = (next + 1) % workers.length;
+            }
+        }
+
+        void resume()
+        {
+            if (key.isValid())
+            {
+                key.interestOps(SelectionKey.OP_ACCEPT);
+            }
+        }
+    }
+}
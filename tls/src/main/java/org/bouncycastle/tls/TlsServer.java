@@ -19,6 +19,10 @@
      * Return the specified session, if available. Note that the peer's certificate
      * chain for the session (if any) may need to be periodically revalidated.
      * 
+     * <p>
+     * For TLS 1.3, the session ID is the identity of an offered PSK, i.e. the ticket of a session
+     * previously reported to {@link #notifyResumableSession(TlsSession)}.
+     *
      * @param sessionID the ID of the session to resume.
      * @return A {@link TlsSession} with the specified session ID, or null.
      * @see SessionParameters#getPeerCertificate()
@@ -46,6 +50,20 @@ int getSelectedCipherSuite()
     Hashtable getServerExtensions()
         throws IOException;
 
+    /**
+     * If TLS 1.3 is negotiated, this is called to choose the group for the (EC)DHE key exchange. If
+     * the client didn't send a key share for the returned group, the server sends a
+     * HelloRetryRequest asking for one.
+     *
+     * @param clientShareGroups the groups for which the client sent key shares, in its order of
+     *            preference. See {@link NamedGroup} for group constants.
+     * @return the selected group (which must be one of the client's supported groups), or -1 if
+     *         there is no acceptable group.
+     * @throws IOException
+     */
+    int getSelectedKeyShareGroup(int[] clientShareGroups)
+        throws IOException;
+
     // Vector is (SupplementalDataEntry)
     Vector getServerSupplementalData()
         throws IOException;
@@ -112,4 +130,25 @@ void notifyClientCertificate(Certificate clientCertificate)
      */
     NewSessionTicket getNewSessionTicket()
         throws IOException;
+
+    /**
+     * RFC 8446 4.6.1. If TLS 1.3 is negotiated, this is called after the handshake to decide
+     * whether to issue a NewSessionTicket, allowing the client to resume the session.
+     *
+     * @return the ticket lifetime in seconds (at most 604800), or 0 to not issue a ticket.
+     * @throws IOException
+     */
+    long getSessionTicketLifetime()
+        throws IOException;
+
+    /**
+     * Reports a TLS 1.3 session for which a NewSessionTicket was issued. Its session ID is the
+     * ticket, which the client will offer (as a PSK identity) to resume it; see
+     * {@link #getSessionToResume(byte[])}.
+     *
+     * @param session the resumable session.
+     * @throws IOException
+     */
+    void notifyResumableSession(TlsSession session)
+        throws IOException;
 }
@@ -5,8 +5,17 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
 import java.util.Vector;
 
+import org.bouncycastle.tls.crypto.TlsAgreement;
+import org.bouncycastle.tls.crypto.TlsCrypto;
+import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.TlsCryptoUtils;
+import org.bouncycastle.tls.crypto.TlsHash;
+import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.TlsStreamSigner;
 import org.bouncycastle.util.Arrays;
 
 public class TlsServerProtocol
@@ -21,6 +30,18 @@
 
     protected TlsHandshakeHash prepareFinishHash = null;
 
+    // TLS 1.3 only
+    protected byte[] clientSessionID = null;
+    protected int retryGroup = -1;
+
+    /*
+     * Non-blocking mode only: the handshake message whose processing is waiting for an asynchronous
+     * private-key operation (see TlsCredentialedAsyncSigner, TlsCredentialedAsyncDecryptor).
+     */
+    private byte[] suspendedServerKeyExchange = null;
+    private byte[] suspendedClientKeyExchange = null;
+    private TlsFuture completedDecryption = null;
+
     /**
      * Constructor for non-blocking mode.<br>
      * <br>
@@ -100,6 +121,11 @@ protected void cleanupHandshake()
         this.serverCredentials = null;
         this.certificateRequest = null;
         this.prepareFinishHash = null;
+        this.clientSessionID = null;
+        this.retryGroup = -1;
+        this.suspendedServerKeyExchange = null;
+        this.suspendedClientKeyExchange = null;
+        this.completedDecryption = null;
     }
 
     protected TlsContext getContext()
@@ -120,6 +146,12 @@ protected TlsPeer getPeer()
     protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
         throws IOException
     {
+        if (isTLSv13Connection())
+        {
+            handle13HandshakeMessage(type, buf);
+            return;
+        }
+
         switch (type)
         {
         case HandshakeType.client_hello:
@@ -141,7 +173,7 @@ protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
                 this.connection_state = CS_CLIENT_HELLO;
 
                 /*
-                 * NOTE: Currently no server support for session resumption
+                 * NOTE: Currently no server support for session resumption (before TLS 1.3)
                  * 
                  * If adding support, ensure securityParameters.tlsUnique is set to the localVerifyData, but
                  * ONLY when extended_master_secret has been negotiated (otherwise NULL).
@@ -153,6 +185,12 @@ protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
                     this.sessionParameters = null;
                 }
 
+                if (isTLSv13Connection())
+                {
+                    process13ClientHello();
+                    break;
+                }
+
                 sendServerHelloMessage();
                 this.connection_state = CS_SERVER_HELLO;
 
@@ -180,7 +218,7 @@ protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
                     }
                     else
                     {
-                        this.keyExchange.processServerCredentials(this.serverCredentials);
+                        this.keyExchange.processServerCredentials(getKeyExchangeCredentials(this.serverCredentials));
 
                         serverCertificate = this.serverCredentials.getCertificate();
                         sendCertificateMessage(serverCertificate, endPointHash);
@@ -207,38 +245,19 @@ protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
                 this.connection_state = CS_CERTIFICATE_STATUS;
 
                 byte[] serverKeyExchange = this.keyExchange.generateServerKeyExchange();
+                if (isHandshakeSuspended())
+                {
+                    // The signature is being generated asynchronously; see continueHandshake
+                    this.suspendedServerKeyExchange = serverKeyExchange;
+                    break;
+                }
                 if (serverKeyExchange != null)
                 {
                     sendServerKeyExchangeMessage(serverKeyExchange);
                 }
                 this.connection_state = CS_SERVER_KEY_EXCHANGE;
 
-                if (this.serverCredentials != null)
-                {
-                    this.certificateRequest = tlsServer.getCertificateRequest();
-                    if (this.certificateRequest != null)
-                    {
-                        if (TlsUtils.isTLSv12(getContext()) != (certificateRequest.getSupportedSignatureAlgorithms() != null))
-                        {
-                            throw new TlsFatalAlert(AlertDescription.internal_error);
-                        }
-
-                        this.certificateRequest = TlsUtils.validateCertificateRequest(this.certificateRequest, this.keyExchange);
-
-                        sendCertificateRequestMessage(certificateRequest);
-
-                        TlsUtils.trackHashAlgorithms(this.recordStream.getHandshakeHash(),
-                            this.certificateRequest.getSupportedSignatureAlgorithms());
-                    }
-                }
-                this.connection_state = CS_CERTIFICATE_REQUEST;
-
-                sendServerHelloDoneMessage();
-                this.connection_state = CS_SERVER_HELLO_DONE;
-
-                boolean forceBuffering = false;
-                TlsUtils.sealHandshakeHash(getContext(), this.recordStream.getHandshakeHash(), forceBuffering);
-
+                sendServerHelloFlightEnd();
                 break;
             }
             default:
@@ -403,6 +422,180 @@ protected void handleHandshakeMessage(short type, ByteArrayInputStream buf)
         }
     }
 
+    protected void handle13HandshakeMessage(short type, ByteArrayInputStream buf)
+        throws IOException
+    {
+        switch (type)
+        {
+        case HandshakeType.client_hello:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_HELLO_RETRY_REQUEST:
+            {
+                receive13ClientHelloRetry(buf);
+                this.connection_state = CS_CLIENT_HELLO_RETRY;
+
+                process13ClientHello();
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+            break;
+        }
+        case HandshakeType.certificate:
+        {
+            switch (this.connection_state)
+            {
+            case CS_SERVER_FINISHED:
+            {
+                if (null == this.certificateRequest)
+                {
+                    throw new TlsFatalAlert(AlertDescription.unexpected_message);
+                }
+
+                receive13ClientCertificate(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            this.connection_state = CS_CLIENT_CERTIFICATE;
+            break;
+        }
+        case HandshakeType.certificate_verify:
+        {
+            switch (this.connection_state)
+            {
+            case CS_CLIENT_CERTIFICATE:
+            {
+                /*
+                 * RFC 8446 4.4.3. [CertificateVerify] MUST be sent whenever [the Certificate]
+                 * message is non-empty.
+                 */
+                if (!expect13CertificateVerifyMessage())
+                {
+                    throw new TlsFatalAlert(AlertDescription.unexpected_message);
+                }
+
+                receive13ClientCertificateVerify(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            this.connection_state = CS_CERTIFICATE_VERIFY;
+            break;
+        }
+        case HandshakeType.finished:
+        {
+            switch (this.connection_state)
+            {
+            case CS_CLIENT_CERTIFICATE:
+            {
+                if (expect13CertificateVerifyMessage())
+                {
+                    throw new TlsFatalAlert(AlertDescription.unexpected_message);
+                }
+
+                receive13ClientFinished(buf);
+                break;
+            }
+            case CS_SERVER_FINISHED:
+            {
+                if (null != this.certificateRequest)
+                {
+                    throw new TlsFatalAlert(AlertDescription.unexpected_message);
+                }
+
+                // NB: Fall through to next case label
+            }
+            case CS_CERTIFICATE_VERIFY:
+            {
+                receive13ClientFinished(buf);
+                break;
+            }
+            default:
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+            break;
+        }
+        case HandshakeType.key_update:
+        {
+            if (this.connection_state != CS_END)
+            {
+                throw new TlsFatalAlert(AlertDescription.unexpected_message);
+            }
+
+            receive13KeyUpdate(buf);
+            break;
+        }
+        case HandshakeType.hello_request:
+        case HandshakeType.hello_verify_request:
+        case HandshakeType.server_hello:
+        case HandshakeType.server_key_exchange:
+        case HandshakeType.certificate_request:
+        case HandshakeType.server_hello_done:
+        case HandshakeType.client_key_exchange:
+        case HandshakeType.session_ticket:
+        case HandshakeType.end_of_early_data:
+        default:
+            throw new TlsFatalAlert(AlertDescription.unexpected_message);
+        }
+    }
+
+    protected void continueHandshake(TlsFuture operation)
+        throws IOException
+    {
+        if (null != this.suspendedServerKeyExchange)
+        {
+            byte[] signature = (byte[])operation.getResult();
+            if (null == signature)
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+            }
+
+            /*
+             * The ServerKeyExchange was generated with an empty signature in place of the real one,
+             * i.e. it ends with a zero opaque16 length.
+             */
+            byte[] unsigned = this.suspendedServerKeyExchange;
+            this.suspendedServerKeyExchange = null;
+
+            int signatureOffset = unsigned.length - 2;
+            if (signatureOffset < 0 || 0 != TlsUtils.readUint16(unsigned, signatureOffset))
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+            }
+
+            TlsUtils.checkUint16(signature.length);
+
+            byte[] serverKeyExchange = Arrays.copyOf(unsigned, unsigned.length + signature.length);
+            TlsUtils.writeUint16(signature.length, serverKeyExchange, signatureOffset);
+            System.arraycopy(signature, 0, serverKeyExchange, unsigned.length, signature.length);
+
+            sendServerKeyExchangeMessage(serverKeyExchange);
+            this.connection_state = CS_SERVER_KEY_EXCHANGE;
+
+            sendServerHelloFlightEnd();
+        }
+        else if (null != this.suspendedClientKeyExchange)
+        {
+            ByteArrayInputStream buf = new ByteArrayInputStream(this.suspendedClientKeyExchange);
+            this.suspendedClientKeyExchange = null;
+
+            this.completedDecryption = operation;
+            receiveClientKeyExchangeMessage(buf);
+        }
+        else
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+    }
+
     protected void handleAlertWarningMessage(short alertDescription)
         throws IOException
     {
@@ -464,6 +657,7 @@ protected void receiveClientHelloMessage(ByteArrayInputStream buf)
          * use the Session ID in the ClientHello for stateful session resumption.
          */
         byte[] sessionID = TlsUtils.readOpaque8(buf, 0, 32);
+        this.clientSessionID = sessionID;
 
         /*
          * TODO RFC 5246 7.4.1.2. If the session_id field is not empty (implying a session
@@ -494,7 +688,7 @@ protected void receiveClientHelloMessage(ByteArrayInputStream buf)
          * extensions appearing in the client hello, and send a server hello containing no
          * extensions.
          */
-        this.clientExtensions = readExtensions(buf);
+        this.clientExtensions = readClientHelloExtensions(buf);
 
 
  
@@ -552,15 +746,7 @@ protected void receiveClientHelloMessage(ByteArrayInputStream buf)
          * TODO[resumption] Check RFC 7627 5.4. for required behaviour 
          */
 
-        /*
-         * RFC 7627 4. Clients and servers SHOULD NOT accept handshakes that do not use the extended
-         * master secret [..]. (and see 5.2, 5.3)
-         */
         securityParameters.extendedMasterSecret = TlsExtensionsUtils.hasExtendedMasterSecretExtension(clientExtensions);
-        if (!securityParameters.isExtendedMasterSecret() && tlsServer.requiresExtendedMasterSecret())
-        {
-            throw new TlsFatalAlert(AlertDescription.handshake_failure);
-        }
 
         byte[] renegExtData = TlsUtils.getExtensionData(clientExtensions, EXT_RenegotiationInfo);
 
@@ -650,8 +836,6 @@ protected void receiveClientHelloMessage(ByteArrayInputStream buf)
             }
         }
 
-        tlsServer.notifySecureRenegotiation(securityParameters.isSecureRenegotiation());
-
         if (clientExtensions != null)
         {
             // NOTE: Validates the padding extension data, if present
@@ -671,99 +855,744 @@ protected void receiveClientHelloMessage(ByteArrayInputStream buf)
 
             tlsServer.processClientExtensions(clientExtensions);
         }
-    }
-
-    protected void receiveClientKeyExchangeMessage(ByteArrayInputStream buf)
-        throws IOException
-    {
-        keyExchange.processClientKeyExchange(buf);
-
-        assertEmpty(buf);
 
-        this.prepareFinishHash = recordStream.prepareToFinish();
-        tlsServerContext.getSecurityParametersHandshake().sessionHash = TlsUtils.getCurrentPRFHash(prepareFinishHash);
+        if (!securityParameters.isRenegotiating())
+        {
+            ProtocolVersion server_version = tlsServer.getServerVersion();
+            if (null == server_version || !ProtocolVersion.TLSv10.isEqualOrEarlierVersionOf(server_version)
+                || !ProtocolVersion.contains(tlsServerContext.getClientSupportedVersions(), server_version))
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+            }
 
-        establishMasterSecret(getContext(), keyExchange);
-        recordStream.setPendingConnectionState(TlsUtils.initCipher(getContext()));
-    }
+            ProtocolVersion legacy_record_version = server_version.isLaterVersionOf(ProtocolVersion.TLSv12)
+                ? ProtocolVersion.TLSv12
+                : server_version;
 
-    protected void sendCertificateRequestMessage(CertificateRequest certificateRequest)
-        throws IOException
-    {
-        HandshakeMessage message = new HandshakeMessage(HandshakeType.certificate_request);
+            recordStream.setWriteVersion(legacy_record_version);
+            securityParameters.negotiatedVersion = server_version;
+        }
 
-        certificateRequest.encode(message);
+        // NOTE: TLS 1.3 has no renegotiation, so a client offering it needn't signal secure renegotiation
+        if (!isTLSv13Connection())
+        {
+            tlsServer.notifySecureRenegotiation(securityParameters.isSecureRenegotiation());
+        }
 
-        message.writeToRecordStream();
+        /*
+         * RFC 7627 4. Clients and servers SHOULD NOT accept handshakes that do not use the extended
+         * master secret [..]. (and see 5.2, 5.3)
+         * 
+         * NOTE: TLS 1.3 binds every secret to the handshake transcript, so there is nothing to check.
+         */
+        if (!isTLSv13Connection()
+            && !securityParameters.isExtendedMasterSecret() && tlsServer.requiresExtendedMasterSecret())
+        {
+            throw new TlsFatalAlert(AlertDescription.handshake_failure);
+        }
     }
 
-    protected void sendCertificateStatusMessage(CertificateStatus certificateStatus)
+    protected Hashtable readClientHelloExtensions(ByteArrayInputStream buf)
         throws IOException
     {
-        HandshakeMessage message = new HandshakeMessage(HandshakeType.certificate_status);
+        buf.mark(0);
 
-        certificateStatus.encode(message);
+        Hashtable extensions = readExtensions(buf);
 
-        message.writeToRecordStream();
-    }
-
-    protected void sendHelloRequestMessage()
-        throws IOException
-    {
-        byte[] message = new byte[4];
-        TlsUtils.writeUint8(HandshakeType.hello_request, message, 0);
-        TlsUtils.writeUint24(0, message, 1);
+        /*
+         * RFC 8446 4.2.11. The "pre_shared_key" extension MUST be the last extension in the
+         * ClientHello. Servers MUST check that it is the last extension and otherwise fail the
+         * handshake with an "illegal_parameter" alert.
+         */
+        if (null != TlsUtils.getExtensionData(extensions, TlsExtensionsUtils.EXT_pre_shared_key))
+        {
+            buf.reset();
 
-        writeHandshakeMessage(message, 0, message.length);
-    }
+            ByteArrayInputStream extBuf = new ByteArrayInputStream(TlsUtils.readOpaque16(buf));
+            int lastExtType = -1;
+            while (extBuf.available() > 0)
+            {
+                lastExtType = TlsUtils.readUint16(extBuf);
+                TlsUtils.readOpaque16(extBuf);
+            }
 
-    protected void sendNewSessionTicketMessage(NewSessionTicket newSessionTicket)
-        throws IOException
-    {
-        if (newSessionTicket == null)
-        {
-            throw new TlsFatalAlert(AlertDescription.internal_error);
+            if (ExtensionType.pre_shared_key != lastExtType)
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
         }
 
-        HandshakeMessage message = new HandshakeMessage(HandshakeType.session_ticket);
-
-        newSessionTicket.encode(message);
+        return extensions;
+    }
 
-        message.writeToRecordStream();
+    protected boolean expect13CertificateVerifyMessage()
+    {
+        Certificate clientCertificate = tlsServerContext.getSecurityParametersHandshake().getPeerCertificate();
+        return null != clientCertificate && !clientCertificate.isEmpty();
     }
 
-    protected void sendServerHelloMessage()
+    protected void process13ClientHello()
         throws IOException
     {
         SecurityParameters securityParameters = tlsServerContext.getSecurityParametersHandshake();
 
-        ProtocolVersion server_version;
-        if (securityParameters.isRenegotiating())
-        {
-            // Always select the negotiated version from the initial handshake
-            server_version = tlsServerContext.getServerVersion();
-        }
-        else
+        boolean afterHelloRetryRequest = (this.connection_state == CS_CLIENT_HELLO_RETRY);
+
+        if (!afterHelloRetryRequest)
         {
-            server_version = tlsServer.getServerVersion();
-            if (null == server_version || !ProtocolVersion.TLSv10.isEqualOrEarlierVersionOf(server_version)
-                || !ProtocolVersion.contains(tlsServerContext.getClientSupportedVersions(), server_version))
+            int selectedCipherSuite = tlsServer.getSelectedCipherSuite();
+            if (!Arrays.contains(offeredCipherSuites, selectedCipherSuite)
+                || !TlsUtils.isValidCipherSuiteForVersion(selectedCipherSuite, securityParameters.getNegotiatedVersion()))
             {
                 throw new TlsFatalAlert(AlertDescription.internal_error);
             }
 
-            ProtocolVersion legacy_record_version = server_version.isLaterVersionOf(ProtocolVersion.TLSv12)
-                ? ProtocolVersion.TLSv12
-                : server_version;
-
-            recordStream.setWriteVersion(legacy_record_version);
-            securityParameters.negotiatedVersion = server_version;
+            securityParameters.cipherSuite = selectedCipherSuite;
+            securityParameters.prfAlgorithm = getPRFAlgorithm(tlsServerContext, selectedCipherSuite);
+            securityParameters.verifyDataLength = HashAlgorithm.getOutputSize(TlsUtils.getHashAlgorithm13(securityParameters));
         }
 
-        securityParameters.serverRandom = createRandomBlock(tlsServer.shouldUseGMTUnixTime(), tlsServerContext);
-        if (!server_version.equals(ProtocolVersion.getLatestTLS(tlsServer.getSupportedVersions())))
+        /*
+         * RFC 8446 9.2. [A ClientHello offering TLS 1.3 with no PSK] MUST contain both a
+         * "supported_groups" extension and a "key_share" extension.
+         */
+        int[] clientSupportedGroups = securityParameters.getClientSupportedGroups();
+        Vector clientShares = TlsExtensionsUtils.getKeyShareClientHello(clientExtensions);
+        if (null == clientSupportedGroups || null == clientShares)
         {
-            TlsUtils.writeDowngradeMarker(server_version, securityParameters.getServerRandom());
+            throw new TlsFatalAlert(AlertDescription.missing_extension);
+        }
+
+        /*
+         * RFC 8446 4.2.8. Clients MUST NOT offer multiple KeyShareEntry values for the same group
+         * [..] or for any group not listed in the client's "supported_groups" extension. Servers
+         * MAY check for violations of these rules and abort the handshake with an
+         * "illegal_parameter" alert if one is violated.
+         */
+        int[] clientShareGroups = new int[clientShares.size()];
+        for (int i = 0; i < clientShares.size(); ++i)
+        {
+            int namedGroup = ((KeyShareEntry)clientShares.elementAt(i)).getNamedGroup();
+            if (!Arrays.contains(clientSupportedGroups, namedGroup)
+                || Arrays.contains(Arrays.copyOf(clientShareGroups, i), namedGroup))
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
+            clientShareGroups[i] = namedGroup;
+        }
+
+        KeyShareEntry clientShare = null;
+        if (afterHelloRetryRequest)
+        {
+            /*
+             * RFC 8446 4.2.8. [After a HelloRetryRequest] clients MUST verify [..] that the
+             * KeyShareEntry [..] corresponds to the group indicated in the HelloRetryRequest.
+             */
+            if (clientShares.size() != 1 || clientShareGroups[0] != this.retryGroup)
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
+            clientShare = (KeyShareEntry)clientShares.elementAt(0);
+        }
+        else
+        {
+            int selectedGroup = tlsServer.getSelectedKeyShareGroup(clientShareGroups);
+            if (selectedGroup < 0)
+            {
+                throw new TlsFatalAlert(AlertDescription.handshake_failure);
+            }
+            if (!Arrays.contains(clientSupportedGroups, selectedGroup))
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+            }
+
+            for (int i = 0; i < clientShareGroups.length; ++i)
+            {
+                if (clientShareGroups[i] == selectedGroup)
+                {
+                    clientShare = (KeyShareEntry)clientShares.elementAt(i);
+                    break;
+                }
+            }
+
+            /*
+             * RFC 8446 4.1.1. If the server selects an (EC)DHE group and the client did not offer a
+             * compatible "key_share" extension in the initial ClientHello, the server MUST respond
+             * with a HelloRetryRequest message.
+             */
+            if (null == clientShare)
+            {
+                send13HelloRetryRequest(selectedGroup);
+                return;
+            }
+        }
+
+        int selectedIdentity = select13PreSharedKey();
+
+        if (!resumedSession)
+        {
+            /*
+             * RFC 8446 4.2.3. If a server is authenticating via a certificate and the client has
+             * not sent a "signature_algorithms" extension, then the server MUST abort the handshake
+             * with a "missing_extension" alert.
+             */
+            if (null == securityParameters.getClientSigAlgs())
+            {
+                throw new TlsFatalAlert(AlertDescription.missing_extension);
+            }
+        }
+
+        /*
+         * RFC 8446 4.2.3. If no "signature_algorithms_cert" extension is present, then the
+         * "signature_algorithms" extension also applies to signatures appearing in certificates.
+         */
+        if (null == securityParameters.getClientSigAlgsCert())
+        {
+            securityParameters.clientSigAlgsCert = securityParameters.getClientSigAlgs();
+        }
+
+        send13ServerHelloFlight(clientShare, selectedIdentity);
+    }
+
+    protected void receive13ClientCertificate(ByteArrayInputStream buf)
+        throws IOException
+    {
+        Certificate clientCertificate = Certificate.parse(tlsServerContext, buf, null);
+
+        assertEmpty(buf);
+
+        /*
+         * RFC 8446 4.4.2. [The certificate_request_context] MUST be [..] the same value as the
+         * corresponding CertificateRequest (which is always empty during the handshake).
+         */
+        byte[] certificateRequestContext = clientCertificate.getCertificateRequestContext();
+        if (null == certificateRequestContext || certificateRequestContext.length != 0)
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        TlsUtils.process13ClientCertificate(tlsServerContext, clientCertificate, certificateRequest, tlsServer);
+    }
+
+    protected void receive13ClientCertificateVerify(ByteArrayInputStream buf)
+        throws IOException
+    {
+        DigitallySigned certificateVerify = DigitallySigned.parse(tlsServerContext, buf);
+
+        assertEmpty(buf);
+
+        byte[] transcriptHash = TlsUtils.getCurrentPRFHash(this.recordStream.getHandshakeHash());
+
+        TlsUtils.verify13CertificateVerifyClient(tlsServerContext, certificateRequest, certificateVerify,
+            transcriptHash);
+    }
+
+    protected void receive13ClientFinished(ByteArrayInputStream buf)
+        throws IOException
+    {
+        processFinishedMessage(buf);
+        this.connection_state = CS_CLIENT_FINISHED;
+
+        TlsUtils.establish13ResumptionSecret(tlsServerContext, this.recordStream.getHandshakeHash());
+
+        this.recordStream.receivedReadCipherSpec();
+
+        completeHandshake();
+
+        send13NewSessionTicket();
+    }
+
+    protected void receive13ClientHelloRetry(ByteArrayInputStream buf)
+        throws IOException
+    {
+        SecurityParameters securityParameters = tlsServerContext.getSecurityParametersHandshake();
+
+        TlsUtils.readVersion(buf);
+        byte[] client_random = TlsUtils.readFully(32, buf);
+        byte[] sessionID = TlsUtils.readOpaque8(buf, 0, 32);
+
+        int cipher_suites_length = TlsUtils.readUint16(buf);
+        if (cipher_suites_length < 2 || (cipher_suites_length & 1) != 0)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+        int[] cipherSuites = TlsUtils.readUint16Array(cipher_suites_length / 2, buf);
+
+        int compression_methods_length = TlsUtils.readUint8(buf);
+        if (compression_methods_length < 1)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+        TlsUtils.readUint8Array(compression_methods_length, buf);
+
+        Hashtable extensions = readClientHelloExtensions(buf);
+
+        assertEmpty(buf);
+
+        /*
+         * RFC 8446 4.1.2. [..] the client MUST send the same ClientHello without modification,
+         * except [for the key_share, early_data, cookie and pre_shared_key extensions and the
+         * optional padding].
+         */
+        if (!Arrays.areEqual(securityParameters.getClientRandom(), client_random)
+            || !Arrays.areEqual(this.clientSessionID, sessionID)
+            || !Arrays.areEqual(this.offeredCipherSuites, cipherSuites)
+            || !ProtocolVersion.contains(TlsExtensionsUtils.getSupportedVersionsExtensionClient(extensions),
+                securityParameters.getNegotiatedVersion()))
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        this.clientExtensions = extensions;
+    }
+
+    protected int select13PreSharedKey()
+        throws IOException
+    {
+        SecurityParameters securityParameters = tlsServerContext.getSecurityParametersHandshake();
+
+        OfferedPsks offeredPsks = TlsExtensionsUtils.getPreSharedKeyClientHello(clientExtensions);
+        if (null == offeredPsks)
+        {
+            return -1;
+        }
+
+        /*
+         * RFC 8446 4.2.9. A client MUST provide a "psk_key_exchange_modes" extension if it offers a
+         * "pre_shared_key" extension. If clients offer "pre_shared_key" without a
+         * "psk_key_exchange_modes" extension, servers MUST abort the handshake.
+         */
+        short[] pskKeyExchangeModes = TlsExtensionsUtils.getPSKKeyExchangeModesExtension(clientExtensions);
+        if (null == pskKeyExchangeModes)
+        {
+            throw new TlsFatalAlert(AlertDescription.missing_extension);
+        }
+
+        // NOTE: We only support psk_dhe_ke, so that resumed sessions keep forward secrecy
+        if (!Arrays.contains(pskKeyExchangeModes, PskKeyExchangeMode.psk_dhe_ke))
+        {
+            return -1;
+        }
+
+        TlsCrypto crypto = tlsServerContext.getCrypto();
+        short hashAlgorithm = TlsUtils.getHashAlgorithm13(securityParameters);
+
+        Vector identities = offeredPsks.getIdentities();
+        for (int i = 0; i < identities.size(); ++i)
+        {
+            PskIdentity identity = (PskIdentity)identities.elementAt(i);
+
+            TlsSession session = tlsServer.getSessionToResume(identity.getIdentity());
+            if (null == session || !session.isResumable())
+            {
+                continue;
+            }
+
+            SessionParameters sessionParameters = session.exportSessionParameters();
+            if (null == sessionParameters
+                || !TlsUtils.isTLSv13(sessionParameters.getNegotiatedVersion())
+                || null == sessionParameters.getSessionTicket())
+            {
+                continue;
+            }
+
+            /*
+             * RFC 8446 4.6.1. Servers MUST NOT use any value greater than 604800 seconds. [..] Clients
+             * MUST NOT cache tickets for longer than 7 days [and servers may treat them the same].
+             */
+            long ticketAge = System.currentTimeMillis() - sessionParameters.getSessionTicketTime();
+            if (ticketAge < 0 || ticketAge > sessionParameters.getSessionTicket().getTicketLifetimeHint() * 1000L)
+            {
+                continue;
+            }
+
+            /*
+             * RFC 8446 4.2.11. [..] the server MUST ensure that it selects a compatible PSK (if any)
+             * and cipher suite.
+             */
+            int sessionPRFAlgorithm = getPRFAlgorithm(tlsServerContext, sessionParameters.getCipherSuite());
+            if (TlsUtils.getHashAlgorithmForPRFAlgorithm(sessionPRFAlgorithm) != hashAlgorithm)
+            {
+                continue;
+            }
+
+            TlsSecret earlySecret = TlsUtils.calculate13EarlySecret(crypto, hashAlgorithm,
+                sessionParameters.getMasterSecret());
+
+            /*
+             * RFC 8446 4.2.11.2. The binder is computed over the transcript up to and including the
+             * partial ClientHello (everything but the binders list itself). [..] If this value is
+             * not present or does not validate, the server MUST abort the handshake.
+             */
+            ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+            this.recordStream.getHandshakeHash().copyBufferTo(transcript);
+            byte[] messages = transcript.toByteArray();
+
+            TlsHash transcriptHash = crypto.createHash(hashAlgorithm);
+            transcriptHash.update(messages, 0, messages.length - offeredPsks.getBindersSize());
+
+            byte[] expectedBinder = TlsUtils.calculate13PSKBinder(crypto, hashAlgorithm, earlySecret,
+                transcriptHash.calculateHash());
+            if (!Arrays.constantTimeAreEqual(expectedBinder, (byte[])offeredPsks.getBinders().elementAt(i)))
+            {
+                earlySecret.destroy();
+                throw new TlsFatalAlert(AlertDescription.decrypt_error);
+            }
+
+            securityParameters.earlySecret = earlySecret;
+            securityParameters.peerCertificate = sessionParameters.getPeerCertificate();
+            securityParameters.tlsServerEndPoint = TlsUtils.EMPTY_BYTES;
+
+            this.resumedSession = true;
+            this.tlsSession = session;
+            this.sessionParameters = sessionParameters;
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    protected void receiveClientKeyExchangeMessage(ByteArrayInputStream buf)
+        throws IOException
+    {
+        buf.mark(0);
+
+        keyExchange.processClientKeyExchange(buf);
+
+        assertEmpty(buf);
+
+        if (isHandshakeSuspended())
+        {
+            /*
+             * The pre-master secret is being decrypted asynchronously, so the message is processed
+             * again, with the decrypted secret, by continueHandshake.
+             */
+            buf.reset();
+            this.suspendedClientKeyExchange = TlsUtils.readFully(buf.available(), buf);
+            return;
+        }
+
+        this.prepareFinishHash = recordStream.prepareToFinish();
+        tlsServerContext.getSecurityParametersHandshake().sessionHash = TlsUtils.getCurrentPRFHash(prepareFinishHash);
+
+        establishMasterSecret(getContext(), keyExchange);
+        recordStream.setPendingConnectionState(TlsUtils.initCipher(getContext()));
+    }
+
+    protected void sendCertificateRequestMessage(CertificateRequest certificateRequest)
+        throws IOException
+    {
+        byte[] message = certificateRequest.getEncodedMessage();
+
+        writeHandshakeMessage(message, 0, message.length);
+    }
+
+    protected void sendCertificateStatusMessage(CertificateStatus certificateStatus)
+        throws IOException
+    {
+        byte[] message = certificateStatus.getEncodedMessage();
+
+        writeHandshakeMessage(message, 0, message.length);
+    }
+
+    protected void sendHelloRequestMessage()
+        throws IOException
+    {
+        byte[] message = new byte[4];
+        TlsUtils.writeUint8(HandshakeType.hello_request, message, 0);
+        TlsUtils.writeUint24(0, message, 1);
+
+        writeHandshakeMessage(message, 0, message.length);
+    }
+
+    protected void sendNewSessionTicketMessage(NewSessionTicket newSessionTicket)
+        throws IOException
+    {
+        if (newSessionTicket == null)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        HandshakeMessage message = new HandshakeMessage(HandshakeType.session_ticket);
+
+        newSessionTicket.encode(message);
+
+        message.writeToRecordStream();
+    }
+
+    protected void send13HelloRetryRequest(int selectedGroup)
+        throws IOException
+    {
+        SecurityParameters securityParameters = tlsServerContext.getSecurityParametersHandshake();
+
+        this.retryGroup = selectedGroup;
+
+        Hashtable retryExtensions = new Hashtable();
+        TlsExtensionsUtils.addSupportedVersionsExtensionServer(retryExtensions, securityParameters.getNegotiatedVersion());
+        TlsExtensionsUtils.addKeyShareHelloRetryRequest(retryExtensions, selectedGroup);
+
+        /*
+         * RFC 8446 4.4.1. When the server responds to a ClientHello with a HelloRetryRequest, the
+         * value of ClientHello1 is replaced with a special synthetic handshake message of handshake
+         * type "message_hash" containing Hash(ClientHello1).
+         */
+        TlsHandshakeHash handshakeHash = this.recordStream.getHandshakeHash();
+        ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+        handshakeHash.copyBufferTo(transcript);
+        byte[] clientHello = transcript.toByteArray();
+
+        TlsHash clientHelloHash = tlsServerContext.getCrypto().createHash(TlsUtils.getHashAlgorithm13(securityParameters));
+        clientHelloHash.update(clientHello, 0, clientHello.length);
+        byte[] clientHelloDigest = clientHelloHash.calculateHash();
+
+        byte[] messageHashHeader = new byte[4];
+        TlsUtils.writeUint8(HandshakeType.message_hash, messageHashHeader, 0);
+        TlsUtils.writeUint24(clientHelloDigest.length, messageHashHeader, 1);
+
+        handshakeHash.reset();
+        handshakeHash.update(messageHashHeader, 0, messageHashHeader.length);
+        handshakeHash.update(clientHelloDigest, 0, clientHelloDigest.length);
+
+        HandshakeMessage message = new HandshakeMessage(HandshakeType.server_hello);
+        TlsUtils.writeVersion(ProtocolVersion.TLSv12, message);
+        message.write(HELLO_RETRY_REQUEST_RANDOM);
+        TlsUtils.writeOpaque8(this.clientSessionID, message);
+        TlsUtils.writeUint16(securityParameters.getCipherSuite(), message);
+        TlsUtils.writeUint8(CompressionMethod._null, message);
+        writeExtensions(message, retryExtensions);
+        message.writeToRecordStream();
+
+        this.connection_state = CS_SERVER_HELLO_RETRY_REQUEST;
+    }
+
+    protected void send13NewSessionTicket()
+        throws IOException
+    {
+        /*
+         * RFC 8446 4.6.1. Servers MUST NOT use any value greater than 604800 seconds (7 days).
+         */
+        long ticketLifetime = tlsServer.getSessionTicketLifetime();
+        if (ticketLifetime <= 0)
+        {
+            return;
+        }
+        if (ticketLifetime > 604800L)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        SecurityParameters securityParameters = tlsServerContext.getSecurityParametersConnection();
+        TlsSecret resumptionMasterSecret = securityParameters.resumptionMasterSecret;
+        if (null == resumptionMasterSecret)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        byte[] ticketNonce = tlsServerContext.getNonceGenerator().generateNonce(8);
+        byte[] ticket = tlsServerContext.getNonceGenerator().generateNonce(32);
+        long ticketAgeAdd = tlsServerContext.getCrypto().getSecureRandom().nextInt() & 0xFFFFFFFFL;
+
+        /*
+         * RFC 8446 4.6.1. The PSK associated with the ticket is computed as:
+         * HKDF-Expand-Label(resumption_master_secret, "resumption", ticket_nonce, Hash.length)
+         */
+        short hashAlgorithm = TlsUtils.getHashAlgorithm13(securityParameters);
+        TlsSecret psk = TlsCryptoUtils.hkdfExpandLabel(resumptionMasterSecret, hashAlgorithm, "resumption",
+            ticketNonce, HashAlgorithm.getOutputSize(hashAlgorithm));
+
+        NewSessionTicket newSessionTicket = new NewSessionTicket(ticketLifetime, ticketAgeAdd, ticketNonce, ticket,
+            null);
+
+        // NOTE: TLS 1.3 binds every secret to the handshake transcript, as extended_master_secret does
+        SessionParameters ticketSessionParameters = new SessionParameters.Builder()
+            .setCipherSuite(securityParameters.getCipherSuite())
+            .setCompressionAlgorithm(CompressionMethod._null)
+            .setExtendedMasterSecret(true)
+            .setLocalCertificate(securityParameters.getLocalCertificate())
+            .setMasterSecret(psk)
+            .setNegotiatedVersion(securityParameters.getNegotiatedVersion())
+            .setPeerCertificate(securityParameters.getPeerCertificate())
+            .setSessionTicket(newSessionTicket, System.currentTimeMillis())
+            .build();
+
+        // The ticket itself is the PSK identity the client will offer to resume the session
+        tlsServer.notifyResumableSession(TlsUtils.importSession(ticket, ticketSessionParameters));
+
+        HandshakeMessage message = new HandshakeMessage(HandshakeType.session_ticket);
+        newSessionTicket.encode13(message);
+        message.writeToRecordStream();
+    }
+
+    protected void send13ServerHelloFlight(KeyShareEntry clientShare, int selectedIdentity)
+        throws IOException
+    {
+        SecurityParameters securityParameters = tlsServerContext.getSecurityParametersHandshake();
+
+        securityParameters.serverRandom = createRandomBlock(tlsServer.shouldUseGMTUnixTime(), tlsServerContext);
+
+        TlsAgreement agreement = TlsUtils.create13Agreement(tlsServerContext.getCrypto(), clientShare.getNamedGroup());
+        KeyShareEntry serverShare = new KeyShareEntry(clientShare.getNamedGroup(), agreement.generateEphemeral());
+        agreement.receivePeerValue(clientShare.getKeyExchange());
+        TlsSecret sharedSecret = agreement.calculateSecret();
+
+        {
+            Hashtable serverHelloExtensions = new Hashtable();
+            TlsExtensionsUtils.addSupportedVersionsExtensionServer(serverHelloExtensions,
+                securityParameters.getNegotiatedVersion());
+            TlsExtensionsUtils.addKeyShareServerHello(serverHelloExtensions, serverShare);
+            if (selectedIdentity >= 0)
+            {
+                TlsExtensionsUtils.addPreSharedKeyServerHello(serverHelloExtensions, selectedIdentity);
+            }
+
+            HandshakeMessage message = new HandshakeMessage(HandshakeType.server_hello);
+            TlsUtils.writeVersion(ProtocolVersion.TLSv12, message);
+            message.write(securityParameters.getServerRandom());
+            TlsUtils.writeOpaque8(this.clientSessionID, message);
+            TlsUtils.writeUint16(securityParameters.getCipherSuite(), message);
+            TlsUtils.writeUint8(CompressionMethod._null, message);
+            writeExtensions(message, serverHelloExtensions);
+            message.writeToRecordStream();
+        }
+        this.connection_state = CS_SERVER_HELLO;
+
+        TlsHandshakeHash handshakeHash = this.recordStream.getHandshakeHash();
+        this.recordStream.notifyHelloComplete();
+        handshakeHash.sealHashAlgorithms();
+
+        TlsUtils.establish13HandshakeSecrets(tlsServerContext, handshakeHash, sharedSecret);
+        sharedSecret.destroy();
+
+        /*
+         * RFC 8446 7.3. All further handshake messages are protected with keys derived from the
+         * handshake traffic secrets.
+         */
+        this.recordStream.setPendingConnectionState(TlsUtils.initCipher(tlsServerContext));
+        this.recordStream.receivedReadCipherSpec();
+        this.recordStream.sentWriteCipherSpec();
+
+        {
+            /*
+             * RFC 8446 4.3.1. The EncryptedExtensions message contains extensions that can be
+             * protected, i.e., any which are not needed to establish the cryptographic context but
+             * which are not associated with individual certificates.
+             */
+            Hashtable encryptedExtensions = new Hashtable();
+            Hashtable serverExtensions = tlsServer.getServerExtensions();
+            if (null != serverExtensions)
+            {
+                Enumeration e = serverExtensions.keys();
+                while (e.hasMoreElements())
+                {
+                    Integer extType = (Integer)e.nextElement();
+                    switch (extType.intValue())
+                    {
+                    case ExtensionType.server_name:
+                    case ExtensionType.max_fragment_length:
+                    case ExtensionType.supported_groups:
+                    case ExtensionType.use_srtp:
+                    case ExtensionType.heartbeat:
+                    case ExtensionType.application_layer_protocol_negotiation:
+                    case ExtensionType.client_certificate_type:
+                    case ExtensionType.server_certificate_type:
+                    case ExtensionType.record_size_limit:
+                        encryptedExtensions.put(extType, serverExtensions.get(extType));
+                        break;
+                    }
+                }
+            }
+
+            this.serverExtensions = encryptedExtensions;
+
+            securityParameters.applicationProtocol = TlsExtensionsUtils.getALPNExtensionServer(encryptedExtensions);
+            securityParameters.maxFragmentLength = processMaxFragmentLengthExtension(clientExtensions,
+                encryptedExtensions, AlertDescription.internal_error);
+
+            applyMaxFragmentLengthExtension();
+
+            HandshakeMessage message = new HandshakeMessage(HandshakeType.encrypted_extensions);
+            writeExtensions(message, encryptedExtensions, true);
+            message.writeToRecordStream();
+        }
+        this.connection_state = CS_SERVER_ENCRYPTED_EXTENSIONS;
+
+        if (!resumedSession)
+        {
+            this.certificateRequest = tlsServer.getCertificateRequest();
+            if (null != this.certificateRequest)
+            {
+                /*
+                 * RFC 8446 4.3.2. The "signature_algorithms" extension MUST be specified.
+                 */
+                Vector supportedSignatureAlgorithms = certificateRequest.getSupportedSignatureAlgorithms();
+                if (null == supportedSignatureAlgorithms)
+                {
+                    throw new TlsFatalAlert(AlertDescription.internal_error);
+                }
+
+                Hashtable requestExtensions = new Hashtable();
+                TlsExtensionsUtils.addSignatureAlgorithmsExtension(requestExtensions, supportedSignatureAlgorithms);
+
+                Vector certificateAuthorities = certificateRequest.getCertificateAuthorities();
+                if (null != certificateAuthorities && !certificateAuthorities.isEmpty())
+                {
+                    TlsExtensionsUtils.addCertificateAuthoritiesExtension(requestExtensions, certificateAuthorities);
+                }
+
+                HandshakeMessage message = new HandshakeMessage(HandshakeType.certificate_request);
+                TlsUtils.writeOpaque8(TlsUtils.EMPTY_BYTES, message);
+                writeExtensions(message, requestExtensions, true);
+                message.writeToRecordStream();
+
+                this.connection_state = CS_CERTIFICATE_REQUEST;
+            }
+
+            // RFC 8446 4.4.2. The server MUST send a Certificate message whenever the key exchange uses a certificate
+            TlsCredentials serverCredentials = validateCredentials(tlsServer.getCredentials());
+            if (!(serverCredentials instanceof TlsCredentialedSigner))
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+            }
+            TlsCredentialedSigner credentialedSigner = (TlsCredentialedSigner)serverCredentials;
+
+            ByteArrayOutputStream endPointHash = new ByteArrayOutputStream();
+            sendCertificateMessage(credentialedSigner.getCertificate(), endPointHash);
+            securityParameters.tlsServerEndPoint = endPointHash.toByteArray();
+            this.connection_state = CS_SERVER_CERTIFICATE;
+
+            byte[] transcriptHash = TlsUtils.getCurrentPRFHash(handshakeHash);
+            DigitallySigned certificateVerify = TlsUtils.generate13CertificateVerify(tlsServerContext,
+                credentialedSigner, securityParameters.getClientSigAlgs(), transcriptHash);
+            sendCertificateVerifyMessage(certificateVerify);
+            this.connection_state = CS_SERVER_CERTIFICATE_VERIFY;
+        }
+
+        sendFinishedMessage();
+        this.connection_state = CS_SERVER_FINISHED;
+
+        /*
+         * RFC 8446 7.1. The application traffic secrets are derived from the transcript up to and
+         * including the server Finished. The server may send data under them straight away, but
+         * only reads them after the client Finished.
+         */
+        TlsUtils.establish13ApplicationSecrets(tlsServerContext, handshakeHash);
+        this.recordStream.setPendingConnectionState(TlsUtils.initCipher(tlsServerContext));
+        this.recordStream.sentWriteCipherSpec();
+    }
+
+    protected void sendServerHelloMessage()
+        throws IOException
+    {
+        SecurityParameters securityParameters = tlsServerContext.getSecurityParametersHandshake();
+
+        // NOTE: The version was selected (or, when renegotiating, carried over) in receiveClientHelloMessage
+        ProtocolVersion server_version = tlsServerContext.getServerVersion();
+
+        securityParameters.serverRandom = createRandomBlock(tlsServer.shouldUseGMTUnixTime(), tlsServerContext);
+        if (!server_version.equals(ProtocolVersion.getLatestTLS(tlsServer.getSupportedVersions())))
+        {
+            TlsUtils.writeDowngradeMarker(server_version, securityParameters.getServerRandom());
         }
 
         {
@@ -906,6 +1735,39 @@ protected void sendServerHelloMessage()
         message.writeToRecordStream();
     }
 
+    /**
+     * Send the remainder of the server's first flight, following the ServerKeyExchange (if any).
+     */
+    protected void sendServerHelloFlightEnd()
+        throws IOException
+    {
+        if (this.serverCredentials != null)
+        {
+            this.certificateRequest = tlsServer.getCertificateRequest();
+            if (this.certificateRequest != null)
+            {
+                if (TlsUtils.isTLSv12(getContext()) != (certificateRequest.getSupportedSignatureAlgorithms() != null))
+                {
+                    throw new TlsFatalAlert(AlertDescription.internal_error);
+                }
+
+                this.certificateRequest = TlsUtils.validateCertificateRequest(this.certificateRequest, this.keyExchange);
+
+                sendCertificateRequestMessage(certificateRequest);
+
+                TlsUtils.trackHashAlgorithms(this.recordStream.getHandshakeHash(),
+                    this.certificateRequest.getSupportedSignatureAlgorithms());
+            }
+        }
+        this.connection_state = CS_CERTIFICATE_REQUEST;
+
+        sendServerHelloDoneMessage();
+        this.connection_state = CS_SERVER_HELLO_DONE;
+
+        boolean forceBuffering = false;
+        TlsUtils.sealHandshakeHash(getContext(), this.recordStream.getHandshakeHash(), forceBuffering);
+    }
+
     protected void sendServerHelloDoneMessage()
         throws IOException
     {
@@ -932,4 +1794,111 @@ protected boolean expectCertificateVerifyMessage()
 
         return null != clientCertificate && !clientCertificate.isEmpty() && keyExchange.requiresCertificateVerify();
     }
+
+    /**
+     * In non-blocking mode, wrap asynchronous credentials so that the key exchange's private-key
+     * operation suspends the handshake instead of blocking.
+     */
+    private TlsCredentials getKeyExchangeCredentials(TlsCredentials credentials)
+    {
+        if (!blocking)
+        {
+            if (credentials instanceof TlsCredentialedAsyncSigner)
+            {
+                return new DeferredSigner((TlsCredentialedAsyncSigner)credentials);
+            }
+            if (credentials instanceof TlsCredentialedAsyncDecryptor)
+            {
+                return new DeferredDecryptor((TlsCredentialedAsyncDecryptor)credentials);
+            }
+        }
+        return credentials;
+    }
+
+    /*
+     * If the signature isn't immediately available, returns an empty one and suspends the handshake,
+     * to be patched into the ServerKeyExchange by continueHandshake.
+     */
+    private class DeferredSigner
+        implements TlsCredentialedSigner
+    {
+        private final TlsCredentialedAsyncSigner signer;
+
+        DeferredSigner(TlsCredentialedAsyncSigner signer)
+        {
+            this.signer = signer;
+        }
+
+        public byte[] generateRawSignature(byte[] hash) throws IOException
+        {
+            TlsFuture operation = signer.generateRawSignatureAsync(hash);
+            if (operation.isDone())
+            {
+                return (byte[])operation.getResult();
+            }
+
+            suspendHandshake(operation);
+            return TlsUtils.EMPTY_BYTES;
+        }
+
+        public Certificate getCertificate()
+        {
+            return signer.getCertificate();
+        }
+
+        public SignatureAndHashAlgorithm getSignatureAndHashAlgorithm()
+        {
+            return signer.getSignatureAndHashAlgorithm();
+        }
+
+        public TlsStreamSigner getStreamSigner() throws IOException
+        {
+            return signer.getStreamSigner();
+        }
+    }
+
+    /*
+     * If the secret isn't immediately available, returns null and suspends the handshake; the
+     * ClientKeyExchange is then processed again by continueHandshake, returning the completed result.
+     */
+    private class DeferredDecryptor
+        implements TlsCredentialedDecryptor
+    {
+        private final TlsCredentialedAsyncDecryptor decryptor;
+
+        DeferredDecryptor(TlsCredentialedAsyncDecryptor decryptor)
+        {
+            this.decryptor = decryptor;
+        }
+
+        public TlsSecret decrypt(TlsCryptoParameters cryptoParams, byte[] ciphertext) throws IOException
+        {
+            TlsFuture operation = completedDecryption;
+            if (null != operation)
+            {
+                completedDecryption = null;
+            }
+            else
+            {
+                operation = decryptor.decryptAsync(cryptoParams, ciphertext);
+                if (!operation.isDone())
+                {
+                    suspendHandshake(operation);
+                    return null;
+                }
+            }
+
+            TlsSecret secret = (TlsSecret)operation.getResult();
+            if (null == secret)
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+            }
+            return secret;
+        }
+
+        public Certificate getCertificate()
+        {
+            return decryptor.getCertificate();
+        }
+    }
 }
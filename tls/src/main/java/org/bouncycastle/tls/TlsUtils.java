@@ -25,10 +25,15 @@
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x509.X509ObjectIdentifiers;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.tls.crypto.TlsAgreement;
 import org.bouncycastle.tls.crypto.TlsCertificate;
 import org.bouncycastle.tls.crypto.TlsCipher;
 import org.bouncycastle.tls.crypto.TlsCrypto;
 import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.TlsCryptoUtils;
+import org.bouncycastle.tls.crypto.TlsDHConfig;
+import org.bouncycastle.tls.crypto.TlsECConfig;
+import org.bouncycastle.tls.crypto.TlsHMAC;
 import org.bouncycastle.tls.crypto.TlsHash;
 import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.tls.crypto.TlsStreamSigner;
@@ -37,6 +42,7 @@
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.Integers;
 import org.bouncycastle.util.Shorts;
+import org.bouncycastle.util.Strings;
 import org.bouncycastle.util.encoders.Hex;
 import org.bouncycastle.util.io.Streams;
 
@@ -51,6 +57,38 @@
     // Map OID strings to HashAlgorithm values
     private static final Hashtable CERT_SIG_ALG_OIDS = createCertSigAlgOIDs();
 
+    // The candidates for getDefaultSupportedSignatureAlgorithms, in order of preference
+    private static final SignatureAndHashAlgorithm[] DEFAULT_SUPPORTED_SIG_ALGS = createDefaultSupportedSigAlgs();
+
+    private static SignatureAndHashAlgorithm[] createDefaultSupportedSigAlgs()
+    {
+        SignatureAndHashAlgorithm[] intrinsicSigAlgs = { SignatureAndHashAlgorithm.ed25519,
+            SignatureAndHashAlgorithm.ed448, SignatureAndHashAlgorithm.rsa_pss_rsae_sha256,
+            SignatureAndHashAlgorithm.rsa_pss_rsae_sha384, SignatureAndHashAlgorithm.rsa_pss_rsae_sha512,
+            SignatureAndHashAlgorithm.rsa_pss_pss_sha256, SignatureAndHashAlgorithm.rsa_pss_pss_sha384,
+            SignatureAndHashAlgorithm.rsa_pss_pss_sha512 };
+        short[] hashAlgorithms = new short[]{ HashAlgorithm.sha1, HashAlgorithm.sha224, HashAlgorithm.sha256,
+            HashAlgorithm.sha384, HashAlgorithm.sha512 };
+        short[] signatureAlgorithms = new short[]{ SignatureAlgorithm.rsa, SignatureAlgorithm.dsa,
+            SignatureAlgorithm.ecdsa };
+
+        SignatureAndHashAlgorithm[] result = new SignatureAndHashAlgorithm[intrinsicSigAlgs.length
+            + signatureAlgorithms.length * hashAlgorithms.length];
+        int count = 0;
+        for (int i = 0; i < intrinsicSigAlgs.length; ++i)
+        {
+            result[count++] = intrinsicSigAlgs[i];
+        }
+        for (int i = 0; i < signatureAlgorithms.length; ++i)
+        {
+            for (int j = 0; j < hashAlgorithms.length; ++j)
+            {
+                result[count++] = SignatureAndHashAlgorithm.getInstance(hashAlgorithms[j], signatureAlgorithms[i]);
+            }
+        }
+        return result;
+    }
+
     private static void addCertSigAlgOID(Hashtable h, ASN1ObjectIdentifier oid, short hashAlgorithm, short signatureAlgorithm)
     {
         h.put(oid.getId(), SignatureAndHashAlgorithm.getInstance(hashAlgorithm, signatureAlgorithm));
@@ -276,6 +314,16 @@ public static boolean isTLSv12(TlsContext context)
         return isTLSv12(context.getServerVersion());
     }
 
+    public static boolean isTLSv13(ProtocolVersion version)
+    {
+        return ProtocolVersion.TLSv13.isEqualOrEarlierVersionOf(version.getEquivalentTLSVersion());
+    }
+
+    public static boolean isTLSv13(TlsContext context)
+    {
+        return isTLSv13(context.getServerVersion());
+    }
+
     public static void writeUint8(short i, OutputStream output)
         throws IOException
     {
@@ -978,27 +1026,10 @@ public static Vector getDefaultSupportedSignatureAlgorithms(TlsContext context)
     {
         TlsCrypto crypto = context.getCrypto();
 
-        SignatureAndHashAlgorithm[] intrinsicSigAlgs = { SignatureAndHashAlgorithm.ed25519,
-            SignatureAndHashAlgorithm.ed448, SignatureAndHashAlgorithm.rsa_pss_rsae_sha256,
-            SignatureAndHashAlgorithm.rsa_pss_rsae_sha384, SignatureAndHashAlgorithm.rsa_pss_rsae_sha512,
-            SignatureAndHashAlgorithm.rsa_pss_pss_sha256, SignatureAndHashAlgorithm.rsa_pss_pss_sha384,
-            SignatureAndHashAlgorithm.rsa_pss_pss_sha512 };
-        short[] hashAlgorithms = new short[]{ HashAlgorithm.sha1, HashAlgorithm.sha224, HashAlgorithm.sha256,
-            HashAlgorithm.sha384, HashAlgorithm.sha512 };
-        short[] signatureAlgorithms = new short[]{ SignatureAlgorithm.rsa, SignatureAlgorithm.dsa,
-            SignatureAlgorithm.ecdsa };
-
-        Vector result = new Vector();
-        for (int i = 0; i < intrinsicSigAlgs.length; ++i)
-        {
-            addIfSupported(result, crypto, intrinsicSigAlgs[i]);
-        }
-        for (int i = 0; i < signatureAlgorithms.length; ++i)
+        Vector result = new Vector(DEFAULT_SUPPORTED_SIG_ALGS.length);
+        for (int i = 0; i < DEFAULT_SUPPORTED_SIG_ALGS.length; ++i)
         {
-            for (int j = 0; j < hashAlgorithms.length; ++j)
-            {
-                addIfSupported(result, crypto, new SignatureAndHashAlgorithm(hashAlgorithms[j], signatureAlgorithms[i]));
-            }
+            addIfSupported(result, crypto, DEFAULT_SUPPORTED_SIG_ALGS[i]);
         }
         return result;
     }
@@ -1366,6 +1397,159 @@ static byte[] calculateTLSVerifyData(TlsContext context, String asciiLabel, byte
         return PRF(context, master_secret, asciiLabel, prfHash, verify_data_length).extract();
     }
 
+    static TlsSecret calculate13EarlySecret(TlsCrypto crypto, short hashAlgorithm, TlsSecret psk)
+    {
+        /*
+         * RFC 8446 7.1. If a given secret is not available, then the 0-value consisting of a string
+         * of Hash.length bytes set to zeros is used.
+         */
+        TlsSecret ikm = null != psk ? psk : crypto.hkdfInit(hashAlgorithm);
+        TlsSecret salt = crypto.hkdfInit(hashAlgorithm);
+
+        TlsSecret earlySecret = salt.hkdfExtract(hashAlgorithm, ikm);
+
+        salt.destroy();
+        if (ikm != psk)
+        {
+            ikm.destroy();
+        }
+
+        return earlySecret;
+    }
+
+    static TlsSecret derive13Secret(TlsSecret secret, short hashAlgorithm, String label, byte[] transcriptHash)
+        throws IOException
+    {
+        return TlsCryptoUtils.hkdfExpandLabel(secret, hashAlgorithm, label, transcriptHash,
+            HashAlgorithm.getOutputSize(hashAlgorithm));
+    }
+
+    static byte[] calculate13VerifyData(TlsCrypto crypto, short hashAlgorithm, TlsSecret baseKey,
+        byte[] transcriptHash) throws IOException
+    {
+        /*
+         * RFC 8446 4.4.4. finished_key = HKDF-Expand-Label(BaseKey, "finished", "", Hash.length)
+         */
+        byte[] finishedKey = TlsCryptoUtils.hkdfExpandLabel(baseKey, hashAlgorithm, "finished", EMPTY_BYTES,
+            HashAlgorithm.getOutputSize(hashAlgorithm)).extract();
+
+        TlsHMAC hmac = crypto.createHMAC(getHMACAlgorithmForHashAlgorithm(hashAlgorithm));
+        hmac.setKey(finishedKey, 0, finishedKey.length);
+        Arrays.fill(finishedKey, (byte)0);
+
+        hmac.update(transcriptHash, 0, transcriptHash.length);
+        return hmac.calculateMAC();
+    }
+
+    static byte[] calculate13PSKBinder(TlsCrypto crypto, short hashAlgorithm, TlsSecret earlySecret,
+        byte[] transcriptHash) throws IOException
+    {
+        byte[] emptyHash = crypto.createHash(hashAlgorithm).calculateHash();
+
+        TlsSecret binderKey = derive13Secret(earlySecret, hashAlgorithm, "res binder", emptyHash);
+        try
+        {
+            return calculate13VerifyData(crypto, hashAlgorithm, binderKey, transcriptHash);
+        }
+        finally
+        {
+            binderKey.destroy();
+        }
+    }
+
+    static byte[] calculate13VerifyData(TlsContext context, TlsHandshakeHash handshakeHash, boolean isServer)
+        throws IOException
+    {
+        SecurityParameters sp = context.getSecurityParametersHandshake();
+        TlsSecret baseKey = isServer ? sp.baseKeyServer : sp.baseKeyClient;
+
+        return calculate13VerifyData(context.getCrypto(), getHashAlgorithm13(sp), baseKey,
+            getCurrentPRFHash(handshakeHash));
+    }
+
+    /**
+     * Create the agreement for a TLS 1.3 key share of the given group.
+     */
+    static TlsAgreement create13Agreement(TlsCrypto crypto, int namedGroup) throws IOException
+    {
+        if (NamedGroup.refersToASpecificCurve(namedGroup) || NamedGroup.x25519 == namedGroup
+            || NamedGroup.x448 == namedGroup)
+        {
+            return crypto.createECDomain(new TlsECConfig(namedGroup)).createECDH();
+        }
+        if (NamedGroup.refersToASpecificFiniteField(namedGroup))
+        {
+            /*
+             * RFC 8446 4.2.8.1. [..] Y, left-padded with zeros to the size of p. (The shared
+             * secret is padded in the same way, per 7.4.1.)
+             */
+            return crypto.createDHDomain(new TlsDHConfig(namedGroup, true)).createDH();
+        }
+        throw new TlsFatalAlert(AlertDescription.internal_error);
+    }
+
+    static void establish13HandshakeSecrets(TlsContext context, TlsHandshakeHash handshakeHash,
+        TlsSecret sharedSecret) throws IOException
+    {
+        SecurityParameters sp = context.getSecurityParametersHandshake();
+        TlsCrypto crypto = context.getCrypto();
+        short hashAlgorithm = getHashAlgorithm13(sp);
+        byte[] emptyHash = crypto.createHash(hashAlgorithm).calculateHash();
+
+        if (null == sp.earlySecret)
+        {
+            sp.earlySecret = calculate13EarlySecret(crypto, hashAlgorithm, null);
+        }
+
+        TlsSecret derived = derive13Secret(sp.earlySecret, hashAlgorithm, "derived", emptyHash);
+        sp.handshakeSecret = derived.hkdfExtract(hashAlgorithm, sharedSecret);
+        derived.destroy();
+
+        byte[] transcriptHash = getCurrentPRFHash(handshakeHash);
+
+        // NOTE: The handshake traffic secrets are also the BaseKeys for the Finished messages
+        sp.baseKeyClient = sp.trafficSecretClient = derive13Secret(sp.handshakeSecret, hashAlgorithm,
+            "c hs traffic", transcriptHash);
+        sp.baseKeyServer = sp.trafficSecretServer = derive13Secret(sp.handshakeSecret, hashAlgorithm,
+            "s hs traffic", transcriptHash);
+    }
+
+    static void establish13ApplicationSecrets(TlsContext context, TlsHandshakeHash handshakeHash)
+        throws IOException
+    {
+        SecurityParameters sp = context.getSecurityParametersHandshake();
+        TlsCrypto crypto = context.getCrypto();
+        short hashAlgorithm = getHashAlgorithm13(sp);
+        byte[] emptyHash = crypto.createHash(hashAlgorithm).calculateHash();
+
+        TlsSecret derived = derive13Secret(sp.handshakeSecret, hashAlgorithm, "derived", emptyHash);
+        TlsSecret zeros = crypto.hkdfInit(hashAlgorithm);
+        sp.masterSecret = derived.hkdfExtract(hashAlgorithm, zeros);
+        zeros.destroy();
+        derived.destroy();
+
+        byte[] transcriptHash = getCurrentPRFHash(handshakeHash);
+
+        // NOTE: The handshake traffic secrets are still referenced as the BaseKeys
+        sp.trafficSecretClient = derive13Secret(sp.masterSecret, hashAlgorithm, "c ap traffic", transcriptHash);
+        sp.trafficSecretServer = derive13Secret(sp.masterSecret, hashAlgorithm, "s ap traffic", transcriptHash);
+        sp.exporterMasterSecret = derive13Secret(sp.masterSecret, hashAlgorithm, "exp master", transcriptHash);
+    }
+
+    static void establish13ResumptionSecret(TlsContext context, TlsHandshakeHash handshakeHash)
+        throws IOException
+    {
+        SecurityParameters sp = context.getSecurityParametersHandshake();
+
+        sp.resumptionMasterSecret = derive13Secret(sp.masterSecret, getHashAlgorithm13(sp), "res master",
+            getCurrentPRFHash(handshakeHash));
+    }
+
+    static short getHashAlgorithm13(SecurityParameters securityParameters)
+    {
+        return getHashAlgorithmForPRFAlgorithm(securityParameters.getPrfAlgorithm());
+    }
+
     public static short getHashAlgorithmForHMACAlgorithm(int macAlgorithm)
     {
         switch (macAlgorithm)
@@ -1385,6 +1569,25 @@ public static short getHashAlgorithmForHMACAlgorithm(int macAlgorithm)
         }
     }
 
+    public static int getHMACAlgorithmForHashAlgorithm(short hashAlgorithm)
+    {
+        switch (hashAlgorithm)
+        {
+        case HashAlgorithm.md5:
+            return MACAlgorithm.hmac_md5;
+        case HashAlgorithm.sha1:
+            return MACAlgorithm.hmac_sha1;
+        case HashAlgorithm.sha256:
+            return MACAlgorithm.hmac_sha256;
+        case HashAlgorithm.sha384:
+            return MACAlgorithm.hmac_sha384;
+        case HashAlgorithm.sha512:
+            return MACAlgorithm.hmac_sha512;
+        default:
+            throw new IllegalArgumentException("specified HashAlgorithm has no HMAC: " + HashAlgorithm.getText(hashAlgorithm));
+        }
+    }
+
     public static short getHashAlgorithmForPRFAlgorithm(int prfAlgorithm)
     {
         switch (prfAlgorithm)
@@ -1392,8 +1595,10 @@ public static short getHashAlgorithmForPRFAlgorithm(int prfAlgorithm)
         case PRFAlgorithm.tls_prf_legacy:
             throw new IllegalArgumentException("legacy PRF not a valid algorithm");
         case PRFAlgorithm.tls_prf_sha256:
+        case PRFAlgorithm.tls13_hkdf_sha256:
             return HashAlgorithm.sha256;
         case PRFAlgorithm.tls_prf_sha384:
+        case PRFAlgorithm.tls13_hkdf_sha384:
             return HashAlgorithm.sha384;
         default:
             throw new IllegalArgumentException("unknown PRFAlgorithm: " + PRFAlgorithm.getText(prfAlgorithm));
@@ -1669,7 +1874,7 @@ public static boolean hasSigningCapability(short clientCertificateType)
         }
     }
 
-    private static Vector vectorOfOne(Object obj)
+    static Vector vectorOfOne(Object obj)
     {
         Vector v = new Vector(1);
         v.addElement(obj);
@@ -1777,6 +1982,7 @@ public static int getEncryptionAlgorithm(int cipherSuite)
         case CipherSuite.TLS_SRP_SHA_WITH_AES_128_CBC_SHA:
             return EncryptionAlgorithm.AES_128_CBC;
 
+        case CipherSuite.TLS_AES_128_CCM_SHA256:
         case CipherSuite.TLS_DHE_PSK_WITH_AES_128_CCM:
         case CipherSuite.TLS_DHE_RSA_WITH_AES_128_CCM:
         case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_CCM:
@@ -1785,6 +1991,7 @@ public static int getEncryptionAlgorithm(int cipherSuite)
         case CipherSuite.TLS_RSA_WITH_AES_128_CCM:
             return EncryptionAlgorithm.AES_128_CCM;
 
+        case CipherSuite.TLS_AES_128_CCM_8_SHA256:
         case CipherSuite.TLS_DHE_RSA_WITH_AES_128_CCM_8:
         case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_CCM_8:
         case CipherSuite.TLS_ECDHE_PSK_WITH_AES_128_CCM_8_SHA256:
@@ -1793,6 +2000,7 @@ public static int getEncryptionAlgorithm(int cipherSuite)
         case CipherSuite.TLS_RSA_WITH_AES_128_CCM_8:
             return EncryptionAlgorithm.AES_128_CCM_8;
 
+        case CipherSuite.TLS_AES_128_GCM_SHA256:
         case CipherSuite.TLS_DH_anon_WITH_AES_128_GCM_SHA256:
         case CipherSuite.TLS_DH_DSS_WITH_AES_128_GCM_SHA256:
         case CipherSuite.TLS_DH_RSA_WITH_AES_128_GCM_SHA256:
@@ -1865,6 +2073,7 @@ public static int getEncryptionAlgorithm(int cipherSuite)
         case CipherSuite.TLS_RSA_WITH_AES_256_CCM_8:
             return EncryptionAlgorithm.AES_256_CCM_8;
 
+        case CipherSuite.TLS_AES_256_GCM_SHA384:
         case CipherSuite.TLS_DH_anon_WITH_AES_256_GCM_SHA384:
         case CipherSuite.TLS_DH_DSS_WITH_AES_256_GCM_SHA384:
         case CipherSuite.TLS_DH_RSA_WITH_AES_256_GCM_SHA384:
@@ -2025,6 +2234,7 @@ public static int getEncryptionAlgorithm(int cipherSuite)
         case CipherSuite.TLS_RSA_WITH_CAMELLIA_256_GCM_SHA384:
             return EncryptionAlgorithm.CAMELLIA_256_GCM;
 
+        case CipherSuite.TLS_CHACHA20_POLY1305_SHA256:
         case CipherSuite.TLS_DHE_PSK_WITH_CHACHA20_POLY1305_SHA256:
         case CipherSuite.TLS_DHE_RSA_WITH_CHACHA20_POLY1305_SHA256:
         case CipherSuite.TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256:
@@ -2408,6 +2618,17 @@ public static int getKeyExchangeAlgorithm(int cipherSuite)
         case CipherSuite.TLS_SRP_SHA_RSA_WITH_AES_256_CBC_SHA:
             return KeyExchangeAlgorithm.SRP_RSA;
 
+        /*
+         * RFC 8446 B.4. TLS 1.3 cipher suites don't specify the key exchange, which is negotiated
+         * separately via the key_share, pre_shared_key and signature_algorithms extensions.
+         */
+        case CipherSuite.TLS_AES_128_CCM_8_SHA256:
+        case CipherSuite.TLS_AES_128_CCM_SHA256:
+        case CipherSuite.TLS_AES_128_GCM_SHA256:
+        case CipherSuite.TLS_AES_256_GCM_SHA384:
+        case CipherSuite.TLS_CHACHA20_POLY1305_SHA256:
+            return KeyExchangeAlgorithm.NULL;
+
         default:
             return -1;
         }
@@ -2431,6 +2652,11 @@ public static int getMACAlgorithm(int cipherSuite)
     {
         switch (cipherSuite)
         {
+        case CipherSuite.TLS_AES_128_CCM_8_SHA256:
+        case CipherSuite.TLS_AES_128_CCM_SHA256:
+        case CipherSuite.TLS_AES_128_GCM_SHA256:
+        case CipherSuite.TLS_AES_256_GCM_SHA384:
+        case CipherSuite.TLS_CHACHA20_POLY1305_SHA256:
         case CipherSuite.TLS_DH_anon_WITH_AES_128_GCM_SHA256:
         case CipherSuite.TLS_DH_anon_WITH_AES_256_GCM_SHA384:
         case CipherSuite.TLS_DH_anon_WITH_ARIA_128_GCM_SHA256:
@@ -2744,6 +2970,13 @@ public static ProtocolVersion getMinimumVersion(int cipherSuite)
     {
         switch (cipherSuite)
         {
+        case CipherSuite.TLS_AES_128_CCM_8_SHA256:
+        case CipherSuite.TLS_AES_128_CCM_SHA256:
+        case CipherSuite.TLS_AES_128_GCM_SHA256:
+        case CipherSuite.TLS_AES_256_GCM_SHA384:
+        case CipherSuite.TLS_CHACHA20_POLY1305_SHA256:
+            return ProtocolVersion.TLSv13;
+
         case CipherSuite.TLS_DH_anon_WITH_AES_128_CBC_SHA256:
         case CipherSuite.TLS_DH_anon_WITH_AES_128_GCM_SHA256:
         case CipherSuite.TLS_DH_anon_WITH_AES_256_CBC_SHA256:
@@ -2976,6 +3209,8 @@ public static Vector getNamedGroupRoles(Vector keyExchangeAlgorithms)
 
             case KeyExchangeAlgorithm.ECDH_ECDSA:
             case KeyExchangeAlgorithm.ECDHE_ECDSA:
+            // NOTE: TLS 1.3 cipher suites, which currently only use (EC)DHE key shares
+            case KeyExchangeAlgorithm.NULL:
             {
                 addToSet(result, NamedGroupRole.ecdh);
                 addToSet(result, NamedGroupRole.ecdsa);
@@ -3038,7 +3273,18 @@ public static boolean isValidCipherSuiteForSignatureAlgorithms(int cipherSuite,
 
     public static boolean isValidCipherSuiteForVersion(int cipherSuite, ProtocolVersion serverVersion)
     {
-        return getMinimumVersion(cipherSuite).isEqualOrEarlierVersionOf(serverVersion.getEquivalentTLSVersion());
+        ProtocolVersion minimumVersion = getMinimumVersion(cipherSuite);
+        ProtocolVersion version = serverVersion.getEquivalentTLSVersion();
+
+        /*
+         * TLS 1.3 cipher suites can only be used with TLS 1.3, and TLS 1.3 can't use any others.
+         */
+        if (isTLSv13(minimumVersion) || isTLSv13(version))
+        {
+            return isTLSv13(minimumVersion) && isTLSv13(version);
+        }
+
+        return minimumVersion.isEqualOrEarlierVersionOf(version);
     }
 
     static boolean isValidSignatureAlgorithmForCertificateVerify(short signatureAlgorithm, short[] clientCertificateTypes)
@@ -3189,6 +3435,50 @@ else if (hash >= MINIMUM_HASH_PREFERRED)
         return result;
     }
 
+    /**
+     * Choose a TLS 1.3 signature scheme for a CertificateVerify, from those the peer supports.
+     *
+     * @param sigHashAlgs the peer's signature_algorithms.
+     * @param signatureAlgorithm the {@link SignatureAlgorithm} of the signing key, where an
+     *            {@link SignatureAlgorithm#rsa} key will sign with RSASSA-PSS.
+     * @return the signature scheme, or null if the peer supports none usable with the key.
+     */
+    public static SignatureAndHashAlgorithm chooseSignatureAndHashAlgorithm13(Vector sigHashAlgs,
+        short signatureAlgorithm)
+    {
+        if (sigHashAlgs == null)
+        {
+            return null;
+        }
+
+        for (int i = 0; i < sigHashAlgs.size(); ++i)
+        {
+            SignatureAndHashAlgorithm sigHashAlg = (SignatureAndHashAlgorithm)sigHashAlgs.elementAt(i);
+            if (!isValidSignatureAndHashAlgorithm13(sigHashAlg))
+            {
+                continue;
+            }
+
+            short signature = sigHashAlg.getSignature();
+            if (signature == signatureAlgorithm)
+            {
+                return sigHashAlg;
+            }
+
+            if (SignatureAlgorithm.rsa == signatureAlgorithm)
+            {
+                switch (signature)
+                {
+                case SignatureAlgorithm.rsa_pss_rsae_sha256:
+                case SignatureAlgorithm.rsa_pss_rsae_sha384:
+                case SignatureAlgorithm.rsa_pss_rsae_sha512:
+                    return sigHashAlg;
+                }
+            }
+        }
+        return null;
+    }
+
     public static Vector getUsableSignatureAlgorithms(Vector sigHashAlgs)
     {
         if (sigHashAlgs == null)
@@ -3536,8 +3826,14 @@ static TlsCipher initCipher(TlsContext context) throws IOException
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
-        TlsSecret masterSecret = context.getSecurityParametersHandshake().getMasterSecret();
-        return masterSecret.createCipher(new TlsCryptoParameters(context), encryptionAlgorithm, macAlgorithm);
+        /*
+         * RFC 8446 7.3. TLS 1.3 traffic keys are derived (by the cipher) from the current traffic
+         * secrets, rather than from the master secret.
+         */
+        TlsSecret baseSecret = isTLSv13(securityParameters.getNegotiatedVersion())
+            ?   securityParameters.getTrafficSecretClient()
+            :   securityParameters.getMasterSecret();
+        return baseSecret.createCipher(new TlsCryptoParameters(context), encryptionAlgorithm, macAlgorithm);
     }
 
     static void checkSigAlgOfClientCerts(TlsContext context, Certificate clientCertificate, CertificateRequest certificateRequest) throws IOException
@@ -3719,11 +4015,243 @@ static void processServerCertificate(TlsClientContext clientContext, TlsClient c
         clientAuthentication.notifyServerCertificate(new TlsServerCertificateImpl(serverCertificate, serverCertificateStatus));
     }
 
+    static void process13ServerCertificate(TlsClientContext clientContext, TlsClient client,
+        TlsAuthentication clientAuthentication, Hashtable clientExtensions, Hashtable serverExtensions)
+        throws IOException
+    {
+        Certificate serverCertificate = clientContext.getSecurityParametersHandshake().getPeerCertificate();
+
+        checkTlsFeatures(serverCertificate, clientExtensions, serverExtensions);
+        if (client.shouldCheckSigAlgOfPeerCerts())
+        {
+            checkSigAlgOfServerCerts(clientContext, serverCertificate);
+        }
+
+        clientAuthentication.notifyServerCertificate(new TlsServerCertificateImpl(serverCertificate, null));
+    }
+
+    static void process13ClientCertificate(TlsServerContext serverContext, Certificate clientCertificate,
+        CertificateRequest certificateRequest, TlsServer server) throws IOException
+    {
+        SecurityParameters securityParameters = serverContext.getSecurityParametersHandshake();
+        if (null != securityParameters.getPeerCertificate())
+        {
+            throw new TlsFatalAlert(AlertDescription.unexpected_message);
+        }
+
+        if (null == certificateRequest)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        if (!clientCertificate.isEmpty() && server.shouldCheckSigAlgOfPeerCerts())
+        {
+            checkSigAlgOfClientCerts(serverContext, clientCertificate, certificateRequest);
+        }
+
+        securityParameters.peerCertificate = clientCertificate;
+
+        /*
+         * RFC 8446 4.4.2.4. If the client does not send any certificates, the server MAY at its
+         * discretion either continue the handshake without client authentication, or abort the
+         * handshake with a "certificate_required" alert.
+         */
+        server.notifyClientCertificate(clientCertificate);
+    }
+
+    static void verify13CertificateVerifyClient(TlsServerContext serverContext, CertificateRequest certificateRequest,
+        DigitallySigned certificateVerify, byte[] transcriptHash) throws IOException
+    {
+        verify13CertificateVerify(serverContext, certificateRequest.getSupportedSignatureAlgorithms(), false,
+            certificateVerify, transcriptHash);
+    }
+
+    static void verify13CertificateVerifyServer(TlsClientContext clientContext, DigitallySigned certificateVerify,
+        byte[] transcriptHash) throws IOException
+    {
+        verify13CertificateVerify(clientContext, clientContext.getSecurityParametersHandshake().getClientSigAlgs(),
+            true, certificateVerify, transcriptHash);
+    }
+
+    private static void verify13CertificateVerify(TlsContext context, Vector supportedSignatureAlgorithms,
+        boolean isServer, DigitallySigned certificateVerify, byte[] transcriptHash) throws IOException
+    {
+        SecurityParameters securityParameters = context.getSecurityParametersHandshake();
+
+        SignatureAndHashAlgorithm sigAndHashAlg = certificateVerify.getAlgorithm();
+        short signatureAlgorithm = sigAndHashAlg.getSignature();
+
+        if (!isValidSignatureAndHashAlgorithm13(sigAndHashAlg))
+        {
+            throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+        }
+
+        verifySupportedSignatureAlgorithm(supportedSignatureAlgorithms, sigAndHashAlg);
+
+        byte[] content = get13CertificateVerifyContent(isServer, transcriptHash);
+
+        TlsCertificate peerCertificate = securityParameters.getPeerCertificate().getCertificateAt(0);
+        TlsVerifier verifier = peerCertificate.createVerifier(signatureAlgorithm);
+        TlsStreamVerifier streamVerifier = verifier.getStreamVerifier(certificateVerify);
+
+        boolean verified;
+        if (streamVerifier != null)
+        {
+            OutputStream output = streamVerifier.getOutputStream();
+            output.write(content);
+            output.close();
+            verified = streamVerifier.isVerified();
+        }
+        else
+        {
+            TlsHash h = context.getCrypto().createHash(sigAndHashAlg.getHash());
+            h.update(content, 0, content.length);
+            verified = verifier.verifyRawSignature(certificateVerify, h.calculateHash());
+        }
+
+        if (!verified)
+        {
+            throw new TlsFatalAlert(AlertDescription.decrypt_error);
+        }
+    }
+
+    static DigitallySigned generate13CertificateVerify(TlsContext context, TlsCredentialedSigner credentialedSigner,
+        Vector supportedSignatureAlgorithms, byte[] transcriptHash) throws IOException
+    {
+        SignatureAndHashAlgorithm sigAndHashAlg = credentialedSigner.getSignatureAndHashAlgorithm();
+        if (null == sigAndHashAlg
+            || !isValidSignatureAndHashAlgorithm13(sigAndHashAlg)
+            || !containsSignatureAlgorithm(supportedSignatureAlgorithms, sigAndHashAlg))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        byte[] content = get13CertificateVerifyContent(context.isServer(), transcriptHash);
+
+        byte[] signature;
+        TlsStreamSigner streamSigner = credentialedSigner.getStreamSigner();
+        if (streamSigner != null)
+        {
+            streamSigner.getOutputStream().write(content);
+            signature = streamSigner.getSignature();
+        }
+        else
+        {
+            TlsHash h = context.getCrypto().createHash(sigAndHashAlg.getHash());
+            h.update(content, 0, content.length);
+            signature = credentialedSigner.generateRawSignature(h.calculateHash());
+        }
+
+        return new DigitallySigned(sigAndHashAlg, signature);
+    }
+
+    private static byte[] get13CertificateVerifyContent(boolean isServer, byte[] transcriptHash)
+    {
+        /*
+         * RFC 8446 4.4.3. The content covered by the signature is 64 spaces, the context string,
+         * a single zero byte and the transcript hash.
+         */
+        byte[] contextString = Strings.toByteArray(isServer
+            ?   "TLS 1.3, server CertificateVerify"
+            :   "TLS 1.3, client CertificateVerify");
+        byte[] content = new byte[64 + contextString.length + 1 + transcriptHash.length];
+        Arrays.fill(content, 0, 64, (byte)0x20);
+        System.arraycopy(contextString, 0, content, 64, contextString.length);
+        System.arraycopy(transcriptHash, 0, content, 64 + contextString.length + 1, transcriptHash.length);
+        return content;
+    }
+
+    static boolean isValidSignatureAndHashAlgorithm13(SignatureAndHashAlgorithm sigAndHashAlg)
+    {
+        /*
+         * RFC 8446 4.4.3. RSA signatures MUST use an RSASSA-PSS algorithm [..]. SHA-1 MUST NOT be
+         * used in any signatures of CertificateVerify messages.
+         */
+        switch (sigAndHashAlg.getHash())
+        {
+        case HashAlgorithm.Intrinsic:
+        case HashAlgorithm.sha256:
+        case HashAlgorithm.sha384:
+        case HashAlgorithm.sha512:
+            break;
+        default:
+            return false;
+        }
+
+        short signatureAlgorithm = sigAndHashAlg.getSignature();
+        return SignatureAlgorithm.rsa != signatureAlgorithm && SignatureAlgorithm.dsa != signatureAlgorithm;
+    }
+
+    /**
+     * The certificate types a TLS 1.3 CertificateRequest (which has no certificate_types field)
+     * implies, for use by {@link TlsAuthentication#getClientCredentials(CertificateRequest)}.
+     */
+    static short[] getCertificateTypes13(Vector supportedSignatureAlgorithms)
+    {
+        boolean rsa = false, ecdsa = false;
+        for (int i = 0; i < supportedSignatureAlgorithms.size(); ++i)
+        {
+            SignatureAndHashAlgorithm sigAndHashAlg = (SignatureAndHashAlgorithm)supportedSignatureAlgorithms
+                .elementAt(i);
+            if (!isValidSignatureAndHashAlgorithm13(sigAndHashAlg))
+            {
+                continue;
+            }
+
+            switch (sigAndHashAlg.getSignature())
+            {
+            case SignatureAlgorithm.ecdsa:
+            case SignatureAlgorithm.ed25519:
+            case SignatureAlgorithm.ed448:
+                ecdsa = true;
+                break;
+            case SignatureAlgorithm.rsa_pss_rsae_sha256:
+            case SignatureAlgorithm.rsa_pss_rsae_sha384:
+            case SignatureAlgorithm.rsa_pss_rsae_sha512:
+            case SignatureAlgorithm.rsa_pss_pss_sha256:
+            case SignatureAlgorithm.rsa_pss_pss_sha384:
+            case SignatureAlgorithm.rsa_pss_pss_sha512:
+                rsa = true;
+                break;
+            }
+        }
+
+        if (rsa && ecdsa)
+        {
+            return new short[]{ ClientCertificateType.rsa_sign, ClientCertificateType.ecdsa_sign };
+        }
+        if (rsa)
+        {
+            return new short[]{ ClientCertificateType.rsa_sign };
+        }
+        if (ecdsa)
+        {
+            return new short[]{ ClientCertificateType.ecdsa_sign };
+        }
+        return null;
+    }
+
     static SignatureAndHashAlgorithm getCertSigAndHashAlg(String sigAlgOID)
     {
         return (SignatureAndHashAlgorithm)CERT_SIG_ALG_OIDS.get(sigAlgOID);
     }
 
+    /**
+     * Prefix an encoded message body with its handshake header, giving a complete handshake message
+     * that can be written out (and added to the transcript) as is.
+     */
+    static byte[] encodeHandshakeMessage(short handshakeType, byte[] body)
+        throws IOException
+    {
+        checkUint24(body.length);
+
+        byte[] message = new byte[4 + body.length];
+        writeUint8(handshakeType, message, 0);
+        writeUint24(body.length, message, 1);
+        System.arraycopy(body, 0, message, 4, body.length);
+        return message;
+    }
+
     static CertificateRequest validateCertificateRequest(CertificateRequest certificateRequest, TlsKeyExchange keyExchange)
         throws IOException
     {
@@ -22,30 +22,71 @@
     int getPlaintextLimit(int ciphertextLimit);
 
     /**
-     * Encrypt and MAC the passed in plain text using the current cipher suite.
+     * Encrypt and MAC the passed in plain text using the current cipher suite, writing the result
+     * to the passed in output array.
+     * <p>
+     * The output array must have room for {@link #getCiphertextLimit(int)} bytes, for len bytes of
+     * plain text, starting at outputOffset. The plain text and output regions must not overlap.
+     * </p>
+     * <p>
+     * NOTE: This replaces the earlier form that returned a newly allocated array; implementations
+     * must now write into the caller's buffer.
+     * </p>
      *
      * @param seqNo sequence number of the message represented by plaintext.
      * @param type content type of the message represented by plaintext.
      * @param plaintext array holding input plain text to the cipher.
      * @param offset offset into input array the plain text starts at.
      * @param len length of the plaintext in the array.
-     * @return the resulting cipher text.
+     * @param output array to hold the resulting cipher text.
+     * @param outputOffset offset into output array to start writing the cipher text at.
+     * @return the length of the resulting cipher text.
      * @throws IOException
      */
-    byte[] encodePlaintext(long seqNo, short type, byte[] plaintext, int offset, int len)
+    int encodePlaintext(long seqNo, short type, byte[] plaintext, int offset, int len, byte[] output, int outputOffset)
         throws IOException;
 
     /**
-     * Validate and decrypt the passed in cipher text using the current cipher suite.
+     * Validate and decrypt the passed in cipher text using the current cipher suite. Decryption
+     * takes place in the ciphertext array, so its contents are overwritten.
+     * <p>
+     * NOTE: This replaces the earlier form that returned a newly allocated byte[]. That signature
+     * differs from this one only in its return type, so it cannot be kept alongside it.
+     * </p>
      *
      * @param seqNo sequence number of the message represented by ciphertext.
      * @param type content type of the message represented by ciphertext.
      * @param ciphertext  array holding input cipher text to the cipher.
      * @param offset offset into input array the cipher text starts at.
      * @param len length of the cipher text in the array.
-     * @return the resulting plaintext.
+     * @return the location and content type of the resulting plaintext, normally within the
+     *         ciphertext array.
      * @throws IOException
      */
-    byte[] decodeCiphertext(long seqNo, short type, byte[] ciphertext, int offset, int len)
+    TlsDecodeResult decodeCiphertext(long seqNo, short type, byte[] ciphertext, int offset, int len)
         throws IOException;
+
+    /**
+     * Rekey the decoder, for a TLS 1.3 KeyUpdate. Only supported by ciphers for which
+     * {@link #usesOpaqueRecordType()} is true.
+     *
+     * @throws IOException
+     */
+    void rekeyDecoder() throws IOException;
+
+    /**
+     * Rekey the encoder, for a TLS 1.3 KeyUpdate. Only supported by ciphers for which
+     * {@link #usesOpaqueRecordType()} is true.
+     *
+     * @throws IOException
+     */
+    void rekeyEncoder() throws IOException;
+
+    /**
+     * Return whether records protected by this cipher carry their real content type inside the
+     * encrypted payload, as in TLS 1.3, with an outer type of application_data.
+     *
+     * @return true for a TLS 1.3 cipher, otherwise false.
+     */
+    boolean usesOpaqueRecordType();
 }
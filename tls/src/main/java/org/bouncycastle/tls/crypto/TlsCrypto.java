@@ -156,6 +156,15 @@
      */
     TlsSecret adoptSecret(TlsSecret secret);
 
+    /**
+     * Create the initial secret for a TLS 1.3 key schedule, a string of zero bytes as long as the
+     * output of the given hash.
+     *
+     * @param hashAlgorithm the {@link HashAlgorithm} the key schedule is based on.
+     * @return a TlsSecret of Hash.length zero bytes.
+     */
+    TlsSecret hkdfInit(short hashAlgorithm);
+
     /**
      * Create a suitable hash for the hash algorithm identifier passed in.
      * <p>
@@ -21,6 +21,11 @@ public TlsCryptoParameters(TlsContext context)
         this.context = context;
     }
 
+    public TlsCrypto getCrypto()
+    {
+        return context.getCrypto();
+    }
+
     public SecurityParameters getSecurityParametersHandshake()
     {
         return context.getSecurityParametersHandshake();
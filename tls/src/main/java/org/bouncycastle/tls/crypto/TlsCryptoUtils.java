@@ -0,0 +1,59 @@
+package org.bouncycastle.tls.crypto;
+
+import java.io.IOException;
+
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.util.Strings;
+
+/**
+ * Helper methods for deriving TLS 1.3 secrets from a {@link TlsSecret}.
+ */
+public class TlsCryptoUtils
+{
+    // "tls13 "
+    private static final byte[] TLS13_PREFIX = new byte[] { 0x74, 0x6c, 0x73, 0x31, 0x33, 0x20 };
+
+    /**
+     * RFC 8446 7.1. HKDF-Expand-Label(Secret, Label, Context, Length).
+     *
+     * @param secret the secret to expand.
+     * @param hashAlgorithm the {@link org.bouncycastle.tls.HashAlgorithm} of the cipher suite.
+     * @param label the label, without the "tls13 " prefix.
+     * @param context the context value, possibly empty.
+     * @param length the size (in bytes) of the secret to generate.
+     * @return the derived secret.
+     */
+    public static TlsSecret hkdfExpandLabel(TlsSecret secret, short hashAlgorithm, String label, byte[] context,
+        int length) throws IOException
+    {
+        byte[] labelBytes = Strings.toByteArray(label);
+
+        int labelLength = TLS13_PREFIX.length + labelBytes.length;
+        TlsUtils.checkUint16(length);
+        TlsUtils.checkUint8(labelLength);
+        TlsUtils.checkUint8(context.length);
+
+        /*
+         * struct {
+         *     uint16 length = Length;
+         *     opaque label<7..255> = "tls13 " + Label;
+         *     opaque context<0..255> = Context;
+         * } HkdfLabel;
+         */
+        byte[] hkdfLabel = new byte[2 + 1 + labelLength + 1 + context.length];
+        int pos = 0;
+        TlsUtils.writeUint16(length, hkdfLabel, pos);
+        pos += 2;
+        TlsUtils.writeUint8(labelLength, hkdfLabel, pos);
+        pos += 1;
+        System.arraycopy(TLS13_PREFIX, 0, hkdfLabel, pos, TLS13_PREFIX.length);
+        pos += TLS13_PREFIX.length;
+        System.arraycopy(labelBytes, 0, hkdfLabel, pos, labelBytes.length);
+        pos += labelBytes.length;
+        TlsUtils.writeUint8(context.length, hkdfLabel, pos);
+        pos += 1;
+        System.arraycopy(context, 0, hkdfLabel, pos, context.length);
+
+        return secret.hkdfExpand(hashAlgorithm, hkdfLabel, length);
+    }
+}
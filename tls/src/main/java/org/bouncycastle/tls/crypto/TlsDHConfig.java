@@ -7,17 +7,30 @@
 {
     protected final DHGroup explicitGroup;
     protected final int namedGroup;
+    protected final boolean padded;
 
     public TlsDHConfig(DHGroup explicitGroup)
     {
         this.explicitGroup = explicitGroup;
         this.namedGroup = -1;
+        this.padded = false;
     }
 
     public TlsDHConfig(int namedGroup)
+    {
+        this(namedGroup, false);
+    }
+
+    /**
+     * @param namedGroup the {@link org.bouncycastle.tls.NamedGroup} to use.
+     * @param padded true if public values and the agreed secret are left-padded with zeros to the
+     *            size of p (as TLS 1.3 requires), or false if leading zero bytes are stripped.
+     */
+    public TlsDHConfig(int namedGroup, boolean padded)
     {
         this.explicitGroup = null;
         this.namedGroup = namedGroup;
+        this.padded = padded;
     }
 
     public DHGroup getExplicitGroup()
@@ -29,4 +42,9 @@ public int getNamedGroup()
     {
         return namedGroup;
     }
+
+    public boolean isPadded()
+    {
+        return padded;
+    }
 }
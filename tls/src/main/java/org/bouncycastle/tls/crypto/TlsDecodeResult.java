@@ -0,0 +1,19 @@
+package org.bouncycastle.tls.crypto;
+
+/**
+ * The location of the plaintext produced by {@link TlsCipher#decodeCiphertext(long, short, byte[], int, int)}.
+ */
+public class TlsDecodeResult
+{
+    public final byte[] buf;
+    public final int off, len;
+    public final short contentType;
+
+    public TlsDecodeResult(byte[] buf, int off, int len, short contentType)
+    {
+        this.buf = buf;
+        this.off = off;
+        this.len = len;
+        this.contentType = contentType;
+    }
+}
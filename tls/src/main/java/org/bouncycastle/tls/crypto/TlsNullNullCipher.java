@@ -2,7 +2,8 @@
 
 import java.io.IOException;
 
-import org.bouncycastle.util.Arrays;
+import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.TlsFatalAlert;
 
 /**
  * The cipher for TLS_NULL_WITH_NULL_NULL.
@@ -20,15 +21,31 @@ public int getPlaintextLimit(int ciphertextLimit)
         return ciphertextLimit;
     }
 
-    public byte[] encodePlaintext(long seqNo, short type, byte[] plaintext, int offset, int len)
-        throws IOException
+    public int encodePlaintext(long seqNo, short type, byte[] plaintext, int offset, int len, byte[] output,
+        int outputOffset) throws IOException
     {
-        return Arrays.copyOfRange(plaintext, offset, offset + len);
+        System.arraycopy(plaintext, offset, output, outputOffset, len);
+        return len;
     }
 
-    public byte[] decodeCiphertext(long seqNo, short type, byte[] ciphertext, int offset, int len)
+    public TlsDecodeResult decodeCiphertext(long seqNo, short type, byte[] ciphertext, int offset, int len)
         throws IOException
     {
-        return Arrays.copyOfRange(ciphertext, offset, offset + len);
+        return new TlsDecodeResult(ciphertext, offset, len, type);
+    }
+
+    public void rekeyDecoder() throws IOException
+    {
+        throw new TlsFatalAlert(AlertDescription.internal_error);
+    }
+
+    public void rekeyEncoder() throws IOException
+    {
+        throw new TlsFatalAlert(AlertDescription.internal_error);
+    }
+
+    public boolean usesOpaqueRecordType()
+    {
+        return false;
     }
 }
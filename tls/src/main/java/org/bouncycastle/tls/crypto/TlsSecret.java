@@ -21,6 +21,25 @@
      */
     TlsSecret deriveUsingPRF(int prfAlgorithm, String label, byte[] seed, int length);
 
+    /**
+     * Return a new secret using HKDF-Extract (RFC 5869), with this secret as the salt.
+     *
+     * @param hashAlgorithm the {@link org.bouncycastle.tls.HashAlgorithm} to base the HMAC on.
+     * @param ikm the input keying material.
+     * @return the pseudorandom key, as a new secret.
+     */
+    TlsSecret hkdfExtract(short hashAlgorithm, TlsSecret ikm);
+
+    /**
+     * Return a new secret using HKDF-Expand (RFC 5869), with this secret as the pseudorandom key.
+     *
+     * @param hashAlgorithm the {@link org.bouncycastle.tls.HashAlgorithm} to base the HMAC on.
+     * @param info the context and application specific information.
+     * @param length the size (in bytes) of the secret to generate.
+     * @return the output keying material, as a new secret.
+     */
+    TlsSecret hkdfExpand(short hashAlgorithm, byte[] info, int length);
+
     /**
      * Create a cipher suite that matches the passed in encryption algorithm and mac algorithm.
      * <p>
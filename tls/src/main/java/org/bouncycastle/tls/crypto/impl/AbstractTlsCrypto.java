@@ -3,6 +3,7 @@
 import java.io.IOException;
 
 import org.bouncycastle.tls.EncryptionAlgorithm;
+import org.bouncycastle.tls.HashAlgorithm;
 import org.bouncycastle.tls.MACAlgorithm;
 import org.bouncycastle.tls.crypto.TlsCertificate;
 import org.bouncycastle.tls.crypto.TlsCipher;
@@ -35,6 +36,11 @@ public TlsSecret adoptSecret(TlsSecret secret)
         throw new IllegalArgumentException("unrecognized TlsSecret - cannot copy data: " + secret.getClass().getName());
     }
 
+    public TlsSecret hkdfInit(short hashAlgorithm)
+    {
+        return createSecret(new byte[HashAlgorithm.getOutputSize(hashAlgorithm)]);
+    }
+
     /**
      * Create a cipher for the specified encryption and MAC algorithms.
      * <p>
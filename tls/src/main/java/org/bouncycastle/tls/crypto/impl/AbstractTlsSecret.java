@@ -2,9 +2,11 @@
 
 import java.io.IOException;
 
+import org.bouncycastle.tls.TlsUtils;
 import org.bouncycastle.tls.crypto.TlsCertificate;
 import org.bouncycastle.tls.crypto.TlsCipher;
 import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.TlsHMAC;
 import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.util.Arrays;
 
@@ -59,6 +61,68 @@ public synchronized byte[] encrypt(TlsCertificate certificate) throws IOExceptio
         return getCrypto().createEncryptor(certificate).encrypt(data, 0, data.length);
     }
 
+    public synchronized TlsSecret hkdfExtract(short hashAlgorithm, TlsSecret ikm)
+    {
+        checkAlive();
+
+        byte[] ikmData;
+        if (ikm instanceof AbstractTlsSecret)
+        {
+            ikmData = ((AbstractTlsSecret)ikm).copyData();
+        }
+        else
+        {
+            throw new IllegalArgumentException("unrecognized TlsSecret - cannot copy data: " + ikm.getClass().getName());
+        }
+
+        TlsHMAC hmac = getCrypto().createHMAC(TlsUtils.getHMACAlgorithmForHashAlgorithm(hashAlgorithm));
+        try
+        {
+            hmac.setKey(data, 0, data.length);
+            hmac.update(ikmData, 0, ikmData.length);
+            return getCrypto().createSecret(hmac.calculateMAC());
+        }
+        finally
+        {
+            Arrays.fill(ikmData, (byte)0);
+        }
+    }
+
+    public synchronized TlsSecret hkdfExpand(short hashAlgorithm, byte[] info, int length)
+    {
+        checkAlive();
+
+        TlsHMAC hmac = getCrypto().createHMAC(TlsUtils.getHMACAlgorithmForHashAlgorithm(hashAlgorithm));
+        int hashLen = hmac.getMacLength();
+        if (length < 0 || length > 255 * hashLen)
+        {
+            throw new IllegalArgumentException("'length' must be between 0 and 255 * HashLen");
+        }
+
+        hmac.setKey(data, 0, data.length);
+
+        /*
+         * RFC 5869 2.3. T(i) = HMAC-Hash(PRK, T(i-1) | info | i), with T(0) empty.
+         */
+        byte[] okm = new byte[length];
+        byte[] t = new byte[0];
+        byte[] counter = new byte[1];
+        int pos = 0;
+        while (pos < length)
+        {
+            hmac.update(t, 0, t.length);
+            hmac.update(info, 0, info.length);
+            ++counter[0];
+            hmac.update(counter, 0, 1);
+            t = hmac.calculateMAC();
+            System.arraycopy(t, 0, okm, pos, Math.min(hashLen, length - pos));
+            pos += hashLen;
+        }
+        Arrays.fill(t, (byte)0);
+
+        return getCrypto().createSecret(okm);
+    }
+
     public synchronized byte[] extract()
     {
         checkAlive();
@@ -0,0 +1,436 @@
+package org.bouncycastle.tls.crypto.impl;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Integers;
+
+/**
+ * Optional policy for reusing ephemeral (EC)DH key pairs across handshakes.
+ * <p>
+ * Each key pair is used for at most a configured number of handshakes, and for at most a configured
+ * time after its first use, before it is retired and a new one generated. A retired key pair is
+ * destroyed (its private value zeroised, where the representation allows it) once the last handshake
+ * still using it has released it. If requested, the successor of each key pair is generated ahead of
+ * time on a background thread, so that rotation costs the handshake nothing.
+ * </p>
+ * <p>
+ * The background thread is a single daemon thread per cache, started when first needed. It keeps a
+ * reference to the cache until {@link #clear()} is called, which stops it.
+ * </p>
+ * <p>
+ * Reuse gives up forward secrecy between the handshakes that share a key pair, so the limits should be
+ * kept small. Key pairs generated for a client identify it across connections: only install a cache on
+ * a TlsCrypto that is used for server connections.
+ * </p>
+ */
+public class EphemeralKeyCache
+{
+    /**
+     * A cached key pair, together with the encoding of its public key.
+     */
+    public static abstract class EphemeralKey
+    {
+        private final byte[] encodedPublicKey;
+
+        private long firstUseMillis = 0L;
+        private int uses = 0;
+        private int references = 0;
+        private boolean retired = false;
+
+        protected EphemeralKey(byte[] encodedPublicKey)
+        {
+            this.encodedPublicKey = encodedPublicKey;
+        }
+
+        /**
+         * @return a copy of the encoded public key, as sent to the peer.
+         */
+        public byte[] getEncodedPublicKey()
+        {
+            return Arrays.clone(encodedPublicKey);
+        }
+
+        /**
+         * Destroy the private key material; called at most once, when the key pair is no longer in use.
+         */
+        protected abstract void destroy();
+    }
+
+    /**
+     * Generator of new key pairs for a particular group.
+     */
+    public interface Generator
+    {
+        EphemeralKey generateEphemeralKey() throws IOException;
+    }
+
+    private final int maxUses;
+    private final long maxAgeMillis;
+    private final boolean pregenerate;
+
+    private final Hashtable slots = new Hashtable();
+    private final Vector requests = new Vector();
+
+    private Thread producer = null;
+
+    private long keysGenerated = 0L;
+    private long keysPregenerated = 0L;
+    private long keysReused = 0L;
+    private long keysDestroyed = 0L;
+    private long pregenerationFailures = 0L;
+
+    /**
+     * Create a cache with the given limits.
+     *
+     * @param maxUses the maximum number of handshakes a key pair may be used for.
+     * @param maxAgeMillis the maximum time, in milliseconds, a key pair may be used for after its first use.
+     * @param pregenerate if true, each key pair's successor is generated on a background thread.
+     */
+    public EphemeralKeyCache(int maxUses, long maxAgeMillis, boolean pregenerate)
+    {
+        if (maxUses < 1)
+        {
+            throw new IllegalArgumentException("'maxUses' must be >= 1");
+        }
+        if (maxAgeMillis < 1L)
+        {
+            throw new IllegalArgumentException("'maxAgeMillis' must be >= 1");
+        }
+
+        this.maxUses = maxUses;
+        this.maxAgeMillis = maxAgeMillis;
+        this.pregenerate = pregenerate;
+    }
+
+    public int getMaxUses()
+    {
+        return maxUses;
+    }
+
+    public long getMaxAgeMillis()
+    {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @return the number of key pairs generated by handshakes, i.e. not ahead of time.
+     */
+    public synchronized long getKeysGenerated()
+    {
+        return keysGenerated;
+    }
+
+    /**
+     * @return the number of key pairs generated ahead of time and subsequently used.
+     */
+    public synchronized long getKeysPregenerated()
+    {
+        return keysPregenerated;
+    }
+
+    /**
+     * @return the number of handshakes served by a key pair that had already been used.
+     */
+    public synchronized long getKeysReused()
+    {
+        return keysReused;
+    }
+
+    /**
+     * @return the number of key pairs that have been retired and destroyed.
+     */
+    public synchronized long getKeysDestroyed()
+    {
+        return keysDestroyed;
+    }
+
+    /**
+     * @return the number of times generating a key pair ahead of time failed. Each failure leaves the
+     * next handshake that rotates the key pair to generate one itself.
+     */
+    public synchronized long getPregenerationFailures()
+    {
+        return pregenerationFailures;
+    }
+
+    /**
+     * Acquire a key pair for one handshake; it must be handed back with {@link #release(EphemeralKey)}
+     * as soon as the caller no longer needs the private key. A key pair that is never handed back is
+     * never destroyed, only left to the garbage collector.
+     *
+     * @param namedGroup the group the key pair belongs to (see {@link org.bouncycastle.tls.NamedGroup}).
+     * @param generator the generator to use if a new key pair is needed.
+     * @return the key pair to use.
+     * @throws IOException if a new key pair could not be generated.
+     */
+    public EphemeralKey acquire(int namedGroup, Generator generator) throws IOException
+    {
+        Slot slot;
+        synchronized (this)
+        {
+            slot = getSlot(namedGroup);
+
+            long now = System.currentTimeMillis();
+
+            EphemeralKey current = slot.current;
+            if (current != null)
+            {
+                if (current.uses < maxUses && (now - current.firstUseMillis) < maxAgeMillis)
+                {
+                    ++keysReused;
+                    ++current.uses;
+                    ++current.references;
+                    return current;
+                }
+
+                slot.current = null;
+                retire(current);
+            }
+
+            EphemeralKey next = slot.next;
+            if (next != null)
+            {
+                slot.next = null;
+                ++keysPregenerated;
+                return install(slot, next, now, generator);
+            }
+        }
+
+        EphemeralKey key = generator.generateEphemeralKey();
+
+        synchronized (this)
+        {
+            ++keysGenerated;
+
+            // Another handshake may have installed a key pair meanwhile; the newer one takes its place
+            if (slot.current != null)
+            {
+                retire(slot.current);
+            }
+
+            return install(slot, key, System.currentTimeMillis(), generator);
+        }
+    }
+
+    /**
+     * Hand back a key pair obtained from {@link #acquire(int, Generator)}.
+     *
+     * @param key the key pair, which the caller must not use any further.
+     */
+    public synchronized void release(EphemeralKey key)
+    {
+        if (key.references < 1)
+        {
+            throw new IllegalStateException("Ephemeral key has already been released");
+        }
+
+        if (--key.references == 0 && key.retired)
+        {
+            destroy(key);
+        }
+    }
+
+    /**
+     * Retire all cached key pairs; each is destroyed as soon as no handshake is using it. The background
+     * thread, if any, is stopped, and a key pair it is still generating is destroyed rather than cached.
+     */
+    public synchronized void clear()
+    {
+        requests.removeAllElements();
+        if (producer != null)
+        {
+            producer = null;
+            notifyAll();
+        }
+
+        Enumeration e = slots.elements();
+        while (e.hasMoreElements())
+        {
+            Slot slot = (Slot)e.nextElement();
+            slot.producing = false;
+            if (slot.current != null)
+            {
+                retire(slot.current);
+                slot.current = null;
+            }
+            if (slot.next != null)
+            {
+                retire(slot.next);
+                slot.next = null;
+            }
+        }
+    }
+
+    private void destroy(EphemeralKey key)
+    {
+        ++keysDestroyed;
+        key.destroy();
+    }
+
+    private Slot getSlot(int namedGroup)
+    {
+        Integer key = Integers.valueOf(namedGroup);
+        Slot slot = (Slot)slots.get(key);
+        if (slot == null)
+        {
+            slot = new Slot();
+            slots.put(key, slot);
+        }
+        return slot;
+    }
+
+    private EphemeralKey install(Slot slot, EphemeralKey key, long now, Generator generator)
+    {
+        key.firstUseMillis = now;
+        key.uses = 1;
+        key.references = 1;
+
+        slot.current = key;
+
+        if (pregenerate && !slot.producing)
+        {
+            slot.producing = true;
+            requestSuccessor(slot, generator);
+        }
+
+        return key;
+    }
+
+    private void retire(EphemeralKey key)
+    {
+        key.retired = true;
+
+        if (key.references == 0)
+        {
+            destroy(key);
+        }
+    }
+
+    private void requestSuccessor(Slot slot, Generator generator)
+    {
+        requests.addElement(new Request(slot, generator));
+
+        if (producer == null)
+        {
+            producer = new Thread(new Producer(), "BCTLS-EphemeralKeyProducer");
+            producer.setDaemon(true);
+            producer.start();
+        }
+        else
+        {
+            notifyAll();
+        }
+    }
+
+    private class Producer
+        implements Runnable
+    {
+        public void run()
+        {
+            Thread thread = Thread.currentThread();
+
+            for (;;)
+            {
+                Request request;
+                synchronized (EphemeralKeyCache.this)
+                {
+                    while (requests.isEmpty())
+                    {
+                        if (producer != thread)
+                        {
+                            return;
+                        }
+
+                        try
+                        {
+                            EphemeralKeyCache.this.wait();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            // Give way to a new thread, started by the next request
+                            if (producer == thread)
+                            {
+                                producer = null;
+                            }
+                            thread.interrupt();
+                            return;
+                        }
+                    }
+
+                    if (producer != thread)
+                    {
+                        return;
+                    }
+
+                    request = (Request)requests.elementAt(0);
+                    requests.removeElementAt(0);
+                }
+
+                EphemeralKey key = null;
+                try
+                {
+                    key = request.generator.generateEphemeralKey();
+                }
+                catch (Exception e)
+                {
+                    // Counted below; the next handshake that needs a key pair will generate one itself
+                }
+
+                synchronized (EphemeralKeyCache.this)
+                {
+                    if (key == null)
+                    {
+                        ++pregenerationFailures;
+                    }
+
+                    // Stopped by clear() while generating: don't repopulate the cache
+                    if (producer != thread)
+                    {
+                        if (key != null)
+                        {
+                            destroy(key);
+                        }
+                        return;
+                    }
+
+                    request.slot.producing = false;
+
+                    if (key != null)
+                    {
+                        if (request.slot.next == null)
+                        {
+                            request.slot.next = key;
+                        }
+                        else
+                        {
+                            destroy(key);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Request
+    {
+        final Slot slot;
+        final Generator generator;
+
+        Request(Slot slot, Generator generator)
+        {
+            this.slot = slot;
+            this.generator = generator;
+        }
+    }
+
+    private static class Slot
+    {
+        EphemeralKey current = null;
+        EphemeralKey next = null;
+        boolean producing = false;
+    }
+}
@@ -3,14 +3,22 @@
 import java.io.IOException;
 
 import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.ContentType;
+import org.bouncycastle.tls.HashAlgorithm;
+import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.SecurityParameters;
 import org.bouncycastle.tls.TlsFatalAlert;
 import org.bouncycastle.tls.TlsUtils;
 import org.bouncycastle.tls.crypto.TlsCipher;
+import org.bouncycastle.tls.crypto.TlsCrypto;
 import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.TlsCryptoUtils;
+import org.bouncycastle.tls.crypto.TlsDecodeResult;
+import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.util.Arrays;
 
 /**
- * A generic TLS 1.2 AEAD cipher.
+ * A generic TLS 1.2/1.3 AEAD cipher.
  */
 public class TlsAEADCipher
     implements TlsCipher
@@ -27,10 +35,16 @@
 
     protected final TlsAEADCipherImpl decryptCipher, encryptCipher;
 
-    protected final byte[] encryptImplicitNonce, decryptImplicitNonce;
+    protected byte[] encryptImplicitNonce, decryptImplicitNonce;
 
     protected final int nonceMode;
 
+    // TLS 1.3 only: the key length, and the traffic secrets the keys are derived from
+    protected final boolean isTLSv13;
+    protected final int cipherKeySize;
+    protected final short hashAlgorithm13;
+    protected TlsSecret encryptSecret, decryptSecret;
+
     public TlsAEADCipher(TlsCryptoParameters cryptoParams, TlsAEADCipherImpl encryptCipher, TlsAEADCipherImpl decryptCipher,
         int cipherKeySize, int macSize) throws IOException
     {
@@ -45,12 +59,21 @@ public TlsAEADCipher(TlsCryptoParameters cryptoParams, TlsAEADCipherImpl encrypt
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
-        this.nonceMode = nonceMode;
+        this.isTLSv13 = TlsImplUtils.isTLSv13(cryptoParams);
+        this.cipherKeySize = cipherKeySize;
+        this.hashAlgorithm13 = isTLSv13
+            ?   TlsUtils.getHashAlgorithmForPRFAlgorithm(cryptoParams.getSecurityParametersHandshake().getPrfAlgorithm())
+            :   -1;
+
+        /*
+         * RFC 8446 5.3. All TLS 1.3 AEAD algorithms form the per-record nonce in the same way.
+         */
+        this.nonceMode = isTLSv13 ? NONCE_RFC7905 : nonceMode;
 
         // TODO SecurityParameters.fixed_iv_length
         int fixed_iv_length;
 
-        switch (nonceMode)
+        switch (this.nonceMode)
         {
         case NONCE_RFC5288:
             fixed_iv_length = 4;
@@ -70,6 +93,33 @@ public TlsAEADCipher(TlsCryptoParameters cryptoParams, TlsAEADCipherImpl encrypt
         this.encryptCipher = encryptCipher;
         this.decryptCipher = decryptCipher;
 
+        if (isTLSv13)
+        {
+            SecurityParameters securityParameters = cryptoParams.getSecurityParametersHandshake();
+            TlsSecret clientSecret = securityParameters.getTrafficSecretClient();
+            TlsSecret serverSecret = securityParameters.getTrafficSecretServer();
+            if (null == clientSecret || null == serverSecret)
+            {
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+            }
+
+            TlsCrypto crypto = cryptoParams.getCrypto();
+            if (cryptoParams.isServer())
+            {
+                this.encryptSecret = crypto.adoptSecret(serverSecret);
+                this.decryptSecret = crypto.adoptSecret(clientSecret);
+            }
+            else
+            {
+                this.encryptSecret = crypto.adoptSecret(clientSecret);
+                this.decryptSecret = crypto.adoptSecret(serverSecret);
+            }
+
+            this.encryptImplicitNonce = setup13Keys(encryptCipher, encryptSecret);
+            this.decryptImplicitNonce = setup13Keys(decryptCipher, decryptSecret);
+            return;
+        }
+
         TlsAEADCipherImpl clientCipher, serverCipher;
         if (cryptoParams.isServer())
         {
@@ -122,17 +172,18 @@ public TlsAEADCipher(TlsCryptoParameters cryptoParams, TlsAEADCipherImpl encrypt
 
     public int getCiphertextLimit(int plaintextLimit)
     {
-        return plaintextLimit + macSize + record_iv_length;
+        // TLS 1.3 adds the content type to the plaintext
+        return plaintextLimit + macSize + record_iv_length + (isTLSv13 ? 1 : 0);
     }
 
     public int getPlaintextLimit(int ciphertextLimit)
     {
         // TODO We ought to be able to ask the decryptCipher (independently of it's current state!)
-        return ciphertextLimit - macSize - record_iv_length;
+        return ciphertextLimit - macSize - record_iv_length - (isTLSv13 ? 1 : 0);
     }
 
-    public byte[] encodePlaintext(long seqNo, short type, byte[] plaintext, int offset, int len)
-        throws IOException
+    public int encodePlaintext(long seqNo, short type, byte[] plaintext, int offset, int len, byte[] output,
+        int outputOffset) throws IOException
     {
         byte[] nonce = new byte[encryptImplicitNonce.length + record_iv_length];
 
@@ -154,39 +205,57 @@ public byte[] encodePlaintext(long seqNo, short type, byte[] plaintext, int offs
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
+        byte[] plaintextBuf = plaintext;
         int plaintextOffset = offset;
         int plaintextLength = len;
+
+        if (isTLSv13)
+        {
+            /*
+             * RFC 8446 5.2. The TLSInnerPlaintext (content followed by the real content type) is
+             * assembled in the output, then encrypted in place.
+             */
+            int innerOffset = outputOffset + record_iv_length;
+            System.arraycopy(plaintext, offset, output, innerOffset, len);
+            TlsUtils.writeUint8(type, output, innerOffset + len);
+
+            plaintextBuf = output;
+            plaintextOffset = innerOffset;
+            plaintextLength = len + 1;
+        }
+
         int ciphertextLength = encryptCipher.getOutputSize(plaintextLength);
 
-        byte[] output = new byte[record_iv_length + ciphertextLength];
         if (record_iv_length != 0)
         {
-            System.arraycopy(nonce, nonce.length - record_iv_length, output, 0, record_iv_length);
+            System.arraycopy(nonce, nonce.length - record_iv_length, output, outputOffset, record_iv_length);
         }
-        int outputPos = record_iv_length;
+        int outputPos = outputOffset + record_iv_length;
 
-        byte[] additionalData = getAdditionalData(seqNo, type, plaintextLength);
+        byte[] additionalData = isTLSv13
+            ?   getAdditionalData13(ciphertextLength)
+            :   getAdditionalData(seqNo, type, plaintextLength);
 
         try
         {
             encryptCipher.init(nonce, macSize, additionalData);
-            outputPos += encryptCipher.doFinal(plaintext, plaintextOffset, plaintextLength, output, outputPos);
+            outputPos += encryptCipher.doFinal(plaintextBuf, plaintextOffset, plaintextLength, output, outputPos);
         }
         catch (Exception e)
         {
             throw new TlsFatalAlert(AlertDescription.internal_error, e);
         }
 
-        if (outputPos != output.length)
+        if (outputPos != outputOffset + record_iv_length + ciphertextLength)
         {
             // NOTE: Existing AEAD cipher implementations all give exact output lengths
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
-        return output;
+        return record_iv_length + ciphertextLength;
     }
 
-    public byte[] decodeCiphertext(long seqNo, short type, byte[] ciphertext, int offset, int len)
+    public TlsDecodeResult decodeCiphertext(long seqNo, short type, byte[] ciphertext, int offset, int len)
         throws IOException
     {
         if (getPlaintextLimit(len) < 0)
@@ -217,28 +286,81 @@ public byte[] decodeCiphertext(long seqNo, short type, byte[] ciphertext, int of
         int ciphertextLength = len - record_iv_length;
         int plaintextLength = decryptCipher.getOutputSize(ciphertextLength);
 
-        byte[] output = new byte[plaintextLength];
-        int outputPos = 0;
-
-        byte[] additionalData = getAdditionalData(seqNo, type, plaintextLength);
+        byte[] additionalData = isTLSv13
+            ?   getAdditionalData13(ciphertextLength)
+            :   getAdditionalData(seqNo, type, plaintextLength);
 
+        // Decrypt in place; the plaintext ends up where the ciphertext started
+        int outputLength;
         try
         {
             decryptCipher.init(nonce, macSize, additionalData);
-            outputPos += decryptCipher.doFinal(ciphertext, ciphertextOffset, ciphertextLength, output, outputPos);
+            outputLength = decryptCipher.doFinal(ciphertext, ciphertextOffset, ciphertextLength, ciphertext,
+                ciphertextOffset);
         }
         catch (Exception e)
         {
             throw new TlsFatalAlert(AlertDescription.bad_record_mac, e);
         }
 
-        if (outputPos != output.length)
+        if (outputLength != plaintextLength)
         {
             // NOTE: Existing AEAD cipher implementations all give exact output lengths
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
 
-        return output;
+        short contentType = type;
+        if (isTLSv13)
+        {
+            /*
+             * RFC 8446 5.4. The content type is the last non-zero byte of the TLSInnerPlaintext,
+             * any zeros after it being padding.
+             */
+            int pos = plaintextLength;
+            for (;;)
+            {
+                if (--pos < 0)
+                {
+                    throw new TlsFatalAlert(AlertDescription.unexpected_message);
+                }
+                if (0 != ciphertext[ciphertextOffset + pos])
+                {
+                    break;
+                }
+            }
+
+            contentType = TlsUtils.readUint8(ciphertext, ciphertextOffset + pos);
+            plaintextLength = pos;
+        }
+
+        return new TlsDecodeResult(ciphertext, ciphertextOffset, plaintextLength, contentType);
+    }
+
+    public void rekeyDecoder() throws IOException
+    {
+        if (!isTLSv13)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        this.decryptSecret = update13TrafficSecret(decryptSecret);
+        this.decryptImplicitNonce = setup13Keys(decryptCipher, decryptSecret);
+    }
+
+    public void rekeyEncoder() throws IOException
+    {
+        if (!isTLSv13)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        this.encryptSecret = update13TrafficSecret(encryptSecret);
+        this.encryptImplicitNonce = setup13Keys(encryptCipher, encryptSecret);
+    }
+
+    public boolean usesOpaqueRecordType()
+    {
+        return isTLSv13;
     }
 
     protected byte[] getAdditionalData(long seqNo, short type, int len)
@@ -257,4 +379,62 @@ protected byte[] getAdditionalData(long seqNo, short type, int len)
 
         return additional_data;
     }
+
+    protected byte[] getAdditionalData13(int ciphertextLength)
+        throws IOException
+    {
+        /*
+         * RFC 8446 5.2. additional_data = TLSCiphertext.opaque_type ||
+         * TLSCiphertext.legacy_record_version || TLSCiphertext.length
+         */
+        byte[] additional_data = new byte[5];
+        TlsUtils.writeUint8(ContentType.application_data, additional_data, 0);
+        TlsUtils.writeVersion(ProtocolVersion.TLSv12, additional_data, 1);
+        TlsUtils.writeUint16(ciphertextLength, additional_data, 3);
+        return additional_data;
+    }
+
+    /**
+     * RFC 8446 7.3. Set the write key derived from the given traffic secret on the cipher, and
+     * return the write iv.
+     */
+    protected byte[] setup13Keys(TlsAEADCipherImpl cipher, TlsSecret trafficSecret) throws IOException
+    {
+        short hashAlgorithm = hashAlgorithm13;
+
+        byte[] key = TlsCryptoUtils.hkdfExpandLabel(trafficSecret, hashAlgorithm, "key", TlsUtils.EMPTY_BYTES,
+            cipherKeySize).extract();
+        byte[] iv = TlsCryptoUtils.hkdfExpandLabel(trafficSecret, hashAlgorithm, "iv", TlsUtils.EMPTY_BYTES, 12)
+            .extract();
+
+        try
+        {
+            cipher.setKey(key, 0, key.length);
+            cipher.init(new byte[iv.length], macSize, null);
+        }
+        finally
+        {
+            Arrays.fill(key, (byte)0);
+        }
+
+        return iv;
+    }
+
+    /**
+     * RFC 8446 7.2. application_traffic_secret_N+1 = HKDF-Expand-Label(application_traffic_secret_N,
+     * "traffic upd", "", Hash.length)
+     */
+    protected TlsSecret update13TrafficSecret(TlsSecret trafficSecret) throws IOException
+    {
+        short hashAlgorithm = hashAlgorithm13;
+        try
+        {
+            return TlsCryptoUtils.hkdfExpandLabel(trafficSecret, hashAlgorithm, "traffic upd", TlsUtils.EMPTY_BYTES,
+                HashAlgorithm.getOutputSize(hashAlgorithm));
+        }
+        finally
+        {
+            trafficSecret.destroy();
+        }
+    }
 }
@@ -39,6 +39,10 @@
      * <p>
      * Note: we have to use doFinal() here as it is the only way to guarantee output from the underlying cipher.
      * </p>
+     * <p>
+     * Note: input and output may be the same array, with outputOffset equal to inputOffset, in which case the
+     * result replaces the input.
+     * </p>
      * @param input array holding input data to the cipher.
      * @param inputOffset offset into input array data starts at.
      * @param inputLength length of the input data in the array.
@@ -9,6 +9,7 @@
 import org.bouncycastle.tls.crypto.TlsCipher;
 import org.bouncycastle.tls.crypto.TlsCrypto;
 import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.TlsDecodeResult;
 import org.bouncycastle.tls.crypto.TlsHMAC;
 import org.bouncycastle.util.Arrays;
 
@@ -176,8 +177,8 @@ public int getPlaintextLimit(int ciphertextLimit)
         return plaintextLimit;
     }
 
-    public byte[] encodePlaintext(long seqNo, short type, byte[] plaintext, int offset, int len)
-        throws IOException
+    public int encodePlaintext(long seqNo, short type, byte[] plaintext, int offset, int len, byte[] outBuf,
+        int outputOffset) throws IOException
     {
         int blockSize = encryptCipher.getBlockSize();
         int macSize = writeMac.getSize();
@@ -203,8 +204,7 @@ public byte[] encodePlaintext(long seqNo, short type, byte[] plaintext, int offs
             totalSize += blockSize;
         }
 
-        byte[] outBuf = new byte[totalSize];
-        int outOff = 0;
+        int outOff = outputOffset;
 
         if (useExplicitIV)
         {
@@ -238,16 +238,16 @@ public byte[] encodePlaintext(long seqNo, short type, byte[] plaintext, int offs
 
         if (encryptThenMAC)
         {
-            byte[] mac = writeMac.calculateMac(seqNo, type, outBuf, 0, outOff);
+            byte[] mac = writeMac.calculateMac(seqNo, type, outBuf, outputOffset, outOff - outputOffset);
             System.arraycopy(mac, 0, outBuf, outOff, mac.length);
             outOff += mac.length;
         }
 
-//        assert outBuf.length == outOff;
-        return outBuf;
+//        assert totalSize == outOff - outputOffset;
+        return outOff - outputOffset;
     }
 
-    public byte[] decodeCiphertext(long seqNo, short type, byte[] ciphertext, int offset, int len)
+    public TlsDecodeResult decodeCiphertext(long seqNo, short type, byte[] ciphertext, int offset, int len)
         throws IOException
     {
         int blockSize = decryptCipher.getBlockSize();
@@ -338,7 +338,7 @@ public byte[] decodeCiphertext(long seqNo, short type, byte[] ciphertext, int of
             throw new TlsFatalAlert(AlertDescription.bad_record_mac);
         }
 
-        return Arrays.copyOfRange(ciphertext, offset, offset + dec_output_length);
+        return new TlsDecodeResult(ciphertext, offset, dec_output_length, type);
     }
 
     protected int checkPaddingConstantTime(byte[] buf, int off, int len, int blockSize, int macSize)
@@ -410,4 +410,19 @@ protected int lowestBitSet(int x)
         }
         return n;
     }
+
+    public void rekeyDecoder() throws IOException
+    {
+        throw new TlsFatalAlert(AlertDescription.internal_error);
+    }
+
+    public void rekeyEncoder() throws IOException
+    {
+        throw new TlsFatalAlert(AlertDescription.internal_error);
+    }
+
+    public boolean usesOpaqueRecordType()
+    {
+        return false;
+    }
 }
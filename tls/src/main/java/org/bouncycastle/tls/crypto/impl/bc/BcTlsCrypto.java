@@ -68,6 +68,7 @@
 import org.bouncycastle.tls.crypto.TlsSRPConfig;
 import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.tls.crypto.impl.AbstractTlsCrypto;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
 import org.bouncycastle.tls.crypto.impl.TlsAEADCipher;
 import org.bouncycastle.tls.crypto.impl.TlsAEADCipherImpl;
 import org.bouncycastle.tls.crypto.impl.TlsBlockCipher;
@@ -87,10 +88,24 @@
     extends AbstractTlsCrypto
 {
     private final SecureRandom entropySource;
+    private final EphemeralKeyCache ephemeralKeyCache;
 
     public BcTlsCrypto(SecureRandom entropySource)
+    {
+        this(entropySource, null);
+    }
+
+    /**
+     * Create a crypto that reuses ephemeral EC key pairs (including X25519) according to the
+     * passed in cache. Only suitable for server connections, see {@link EphemeralKeyCache}.
+     *
+     * @param entropySource primary entropy source, used for key generation.
+     * @param ephemeralKeyCache the ephemeral key reuse policy, or null for a fresh key pair every handshake.
+     */
+    public BcTlsCrypto(SecureRandom entropySource, EphemeralKeyCache ephemeralKeyCache)
     {
         this.entropySource = entropySource;
+        this.ephemeralKeyCache = ephemeralKeyCache;
     }
 
     BcTlsSecret adoptLocalSecret(byte[] data)
@@ -103,6 +118,14 @@ public SecureRandom getSecureRandom()
         return entropySource;
     }
 
+    /**
+     * @return the ephemeral key reuse policy, or null if ephemeral keys are not reused.
+     */
+    public EphemeralKeyCache getEphemeralKeyCache()
+    {
+        return ephemeralKeyCache;
+    }
+
     public TlsCertificate createCertificate(byte[] encoding)
         throws IOException
     {
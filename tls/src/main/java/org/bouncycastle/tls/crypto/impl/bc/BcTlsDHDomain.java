@@ -61,7 +61,20 @@ public BcTlsDHDomain(BcTlsCrypto crypto, TlsDHConfig dhConfig)
 
     public BcTlsSecret calculateDHAgreement(DHPrivateKeyParameters privateKey, DHPublicKeyParameters publicKey)
     {
-        return crypto.adoptLocalSecret(calculateBasicAgreement(privateKey, publicKey));
+        if (!dhConfig.isPadded())
+        {
+            return crypto.adoptLocalSecret(calculateBasicAgreement(privateKey, publicKey));
+        }
+
+        DHBasicAgreement basicAgreement = new DHBasicAgreement();
+        basicAgreement.init(privateKey);
+        BigInteger agreementValue = basicAgreement.calculateAgreement(publicKey);
+
+        /*
+         * RFC 8446 7.4.1. [..] encoding in big-endian form and left-padded with zeros up to the size
+         * of the prime.
+         */
+        return crypto.adoptLocalSecret(BigIntegers.asUnsignedByteArray(getValueLength(), agreementValue));
     }
 
     public TlsAgreement createDH()
@@ -81,6 +94,11 @@ public DHPublicKeyParameters decodePublicKey(byte[] encoding) throws IOException
          * If dh_Ys is not in this range, the client MUST terminate the connection with a fatal
          * handshake_failure(40) alert.
          */
+        if (dhConfig.isPadded() && encoding.length != getValueLength())
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+
         try
         {
             BigInteger y = decodeParameter(encoding);
@@ -100,9 +118,19 @@ public byte[] encodeParameter(BigInteger x) throws IOException
 
     public byte[] encodePublicKey(DHPublicKeyParameters publicKey) throws IOException
     {
+        if (dhConfig.isPadded())
+        {
+            return BigIntegers.asUnsignedByteArray(getValueLength(), publicKey.getY());
+        }
+
         return encodeParameter(publicKey.getY());
     }
 
+    protected int getValueLength()
+    {
+        return (dhParameters.getP().bitLength() + 7) / 8;
+    }
+
     public AsymmetricCipherKeyPair generateKeyPair()
     {
         DHBasicKeyPairGenerator keyPairGenerator = new DHBasicKeyPairGenerator();
@@ -7,6 +7,7 @@
 import org.bouncycastle.crypto.params.ECPublicKeyParameters;
 import org.bouncycastle.tls.crypto.TlsAgreement;
 import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
 
 /**
  * Support class for ephemeral Elliptic Curve Diffie-Hellman using the BC light-weight library.
@@ -25,6 +26,24 @@ public BcTlsECDH(BcTlsECDomain domain)
 
     public byte[] generateEphemeral() throws IOException
     {
+        EphemeralKeyCache cache = domain.crypto.getEphemeralKeyCache();
+        if (null != cache)
+        {
+            CachedKeyPair cached = (CachedKeyPair)cache.acquire(domain.ecConfig.getNamedGroup(),
+                new CachedKeyPairGenerator(domain));
+
+            try
+            {
+                this.localKeyPair = cached.keyPair;
+                return cached.getEncodedPublicKey();
+            }
+            finally
+            {
+                // Our reference to the (immutable) key pair stays valid after the cache retires it
+                cache.release(cached);
+            }
+        }
+
         this.localKeyPair = domain.generateKeyPair();
 
         return domain.encodePublicKey((ECPublicKeyParameters)localKeyPair.getPublic());
@@ -39,4 +58,41 @@ public TlsSecret calculateSecret() throws IOException
     {
         return domain.calculateECDHAgreement((ECPrivateKeyParameters)localKeyPair.getPrivate(), peerPublicKey);
     }
+
+    private static class CachedKeyPair
+        extends EphemeralKeyCache.EphemeralKey
+    {
+        private AsymmetricCipherKeyPair keyPair;
+
+        CachedKeyPair(AsymmetricCipherKeyPair keyPair, byte[] encodedPublicKey)
+        {
+            super(encodedPublicKey);
+
+            this.keyPair = keyPair;
+        }
+
+        protected void destroy()
+        {
+            // The private value is an immutable BigInteger; the best we can do is drop our reference
+            this.keyPair = null;
+        }
+    }
+
+    private static class CachedKeyPairGenerator
+        implements EphemeralKeyCache.Generator
+    {
+        private final BcTlsECDomain domain;
+
+        CachedKeyPairGenerator(BcTlsECDomain domain)
+        {
+            this.domain = domain;
+        }
+
+        public EphemeralKeyCache.EphemeralKey generateEphemeralKey() throws IOException
+        {
+            AsymmetricCipherKeyPair keyPair = domain.generateKeyPair();
+
+            return new CachedKeyPair(keyPair, domain.encodePublicKey((ECPublicKeyParameters)keyPair.getPublic()));
+        }
+    }
 }
@@ -4,6 +4,8 @@
 import org.bouncycastle.crypto.params.ECPublicKeyParameters;
 import org.bouncycastle.crypto.signers.ECDSASigner;
 import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.ECPointCache;
 import org.bouncycastle.tls.SignatureAlgorithm;
 
 /**
@@ -14,7 +16,7 @@
 {
     public BcTlsECDSAVerifier(BcTlsCrypto crypto, ECPublicKeyParameters publicKey)
     {
-        super(crypto, publicKey);
+        super(crypto, getSharedKey(publicKey));
     }
 
     protected DSA createDSAImpl(short hashAlgorithm)
@@ -26,4 +28,12 @@ protected short getSignatureAlgorithm()
     {
         return SignatureAlgorithm.ecdsa;
     }
+
+    private static ECPublicKeyParameters getSharedKey(ECPublicKeyParameters publicKey)
+    {
+        // verify with the shared instance of the point, so its precomputation is reused across handshakes
+        ECPoint q = ECPointCache.getDefault().intern(publicKey.getQ());
+
+        return q == publicKey.getQ() ? publicKey : new ECPublicKeyParameters(q, publicKey.getParameters());
+    }
 }
@@ -4,9 +4,11 @@
 
 import org.bouncycastle.math.ec.rfc7748.X25519;
 import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.NamedGroup;
 import org.bouncycastle.tls.TlsFatalAlert;
 import org.bouncycastle.tls.crypto.TlsAgreement;
 import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
 import org.bouncycastle.util.Arrays;
 
 /**
@@ -25,6 +27,23 @@ public BcX25519(BcTlsCrypto crypto)
 
     public byte[] generateEphemeral() throws IOException
     {
+        EphemeralKeyCache cache = crypto.getEphemeralKeyCache();
+        if (null != cache)
+        {
+            CachedKeyPair cached = (CachedKeyPair)cache.acquire(NamedGroup.x25519,
+                new CachedKeyPairGenerator(crypto));
+            try
+            {
+                System.arraycopy(cached.privateKey, 0, privateKey, 0, X25519.SCALAR_SIZE);
+                return cached.getEncodedPublicKey();
+            }
+            finally
+            {
+                // Our copy of the private key is zeroised by calculateSecret
+                cache.release(cached);
+            }
+        }
+
         crypto.getSecureRandom().nextBytes(privateKey);
 
         byte[] publicKey = new byte[X25519.POINT_SIZE];
@@ -60,4 +79,44 @@ public TlsSecret calculateSecret() throws IOException
             Arrays.fill(peerPublicKey, (byte)0);
         }
     }
+
+    private static class CachedKeyPair
+        extends EphemeralKeyCache.EphemeralKey
+    {
+        private final byte[] privateKey;
+
+        CachedKeyPair(byte[] privateKey, byte[] publicKey)
+        {
+            super(publicKey);
+
+            this.privateKey = privateKey;
+        }
+
+        protected void destroy()
+        {
+            Arrays.fill(privateKey, (byte)0);
+        }
+    }
+
+    private static class CachedKeyPairGenerator
+        implements EphemeralKeyCache.Generator
+    {
+        private final BcTlsCrypto crypto;
+
+        CachedKeyPairGenerator(BcTlsCrypto crypto)
+        {
+            this.crypto = crypto;
+        }
+
+        public EphemeralKeyCache.EphemeralKey generateEphemeralKey()
+        {
+            byte[] privateKey = new byte[X25519.SCALAR_SIZE];
+            crypto.getSecureRandom().nextBytes(privateKey);
+
+            byte[] publicKey = new byte[X25519.POINT_SIZE];
+            X25519.scalarMultBase(privateKey, 0, publicKey, 0);
+
+            return new CachedKeyPair(privateKey, publicKey);
+        }
+    }
 }
@@ -44,6 +44,7 @@
 import org.bouncycastle.tls.crypto.TlsSRPConfig;
 import org.bouncycastle.tls.crypto.TlsSecret;
 import org.bouncycastle.tls.crypto.impl.AbstractTlsCrypto;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
 import org.bouncycastle.tls.crypto.impl.TlsAEADCipher;
 import org.bouncycastle.tls.crypto.impl.TlsAEADCipherImpl;
 import org.bouncycastle.tls.crypto.impl.TlsBlockCipher;
@@ -70,6 +71,7 @@
     private final JcaJceHelper helper;
     private final SecureRandom entropySource;
     private final SecureRandom nonceEntropySource;
+    private final EphemeralKeyCache ephemeralKeyCache;
 
     private final Hashtable supportedGroups = new Hashtable();
 
@@ -81,10 +83,25 @@
      * @param nonceEntropySource secondary entropy source, used for nonce and IV generation.
      */
     protected JcaTlsCrypto(JcaJceHelper helper, SecureRandom entropySource, SecureRandom nonceEntropySource)
+    {
+        this(helper, entropySource, nonceEntropySource, null);
+    }
+
+    /**
+     * Constructor for a crypto that reuses ephemeral EC key pairs (including X25519).
+     *
+     * @param helper a JCA/JCE helper configured for the class's default provider.
+     * @param entropySource primary entropy source, used for key generation.
+     * @param nonceEntropySource secondary entropy source, used for nonce and IV generation.
+     * @param ephemeralKeyCache the ephemeral key reuse policy, or null for a fresh key pair every handshake.
+     */
+    protected JcaTlsCrypto(JcaJceHelper helper, SecureRandom entropySource, SecureRandom nonceEntropySource,
+        EphemeralKeyCache ephemeralKeyCache)
     {
         this.helper = helper;
         this.entropySource = entropySource;
         this.nonceEntropySource = nonceEntropySource;
+        this.ephemeralKeyCache = ephemeralKeyCache;
     }
 
     JceTlsSecret adoptLocalSecret(byte[] data)
@@ -114,6 +131,14 @@ public SecureRandom getSecureRandom()
         return entropySource;
     }
 
+    /**
+     * @return the ephemeral key reuse policy, or null if ephemeral keys are not reused.
+     */
+    public EphemeralKeyCache getEphemeralKeyCache()
+    {
+        return ephemeralKeyCache;
+    }
+
     public byte[] calculateKeyAgreement(String agreementAlgorithm, PrivateKey privateKey, PublicKey publicKey, String secretAlgorithm)
         throws GeneralSecurityException
     {
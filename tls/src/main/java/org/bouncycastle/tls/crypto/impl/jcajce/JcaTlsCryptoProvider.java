@@ -14,6 +14,7 @@
 import org.bouncycastle.jcajce.util.ProviderJcaJceHelper;
 import org.bouncycastle.tls.crypto.TlsCrypto;
 import org.bouncycastle.tls.crypto.TlsCryptoProvider;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
 
 /**
  * Basic builder class for constructing standard TlsCrypto classes.
@@ -22,6 +23,7 @@
     implements TlsCryptoProvider
 {
     private JcaJceHelper helper = new DefaultJcaJceHelper();
+    private EphemeralKeyCache ephemeralKeyCache = null;
 
     public JcaTlsCryptoProvider()
     {
@@ -53,6 +55,21 @@ public JcaTlsCryptoProvider setProvider(String providerName)
         return this;
     }
 
+    /**
+     * Set the ephemeral key reuse policy for any TlsCrypto we build. The cache is shared by all of
+     * them, and should only be set when building a TlsCrypto for server connections.
+     *
+     * @param ephemeralKeyCache the ephemeral key reuse policy, or null (the default) for a fresh key
+     * pair every handshake.
+     * @return the current builder instance.
+     */
+    public JcaTlsCryptoProvider setEphemeralKeyCache(EphemeralKeyCache ephemeralKeyCache)
+    {
+        this.ephemeralKeyCache = ephemeralKeyCache;
+
+        return this;
+    }
+
     /**
      * Create a new TlsCrypto using the current builder configuration and the passed in entropy source..
      *
@@ -92,7 +109,7 @@ public TlsCrypto create(SecureRandom random)
      */
     public TlsCrypto create(SecureRandom keyRandom, SecureRandom nonceRandom)
     {
-        return new JcaTlsCrypto(helper, keyRandom, nonceRandom);
+        return new JcaTlsCrypto(helper, keyRandom, nonceRandom, ephemeralKeyCache);
     }
 
     public Provider getPkixProvider()
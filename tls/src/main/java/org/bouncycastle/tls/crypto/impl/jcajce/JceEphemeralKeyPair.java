@@ -0,0 +1,46 @@
+package org.bouncycastle.tls.crypto.impl.jcajce;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
+
+/**
+ * A JCA key pair held in an {@link EphemeralKeyCache}.
+ */
+class JceEphemeralKeyPair
+    extends EphemeralKeyCache.EphemeralKey
+{
+    private final KeyPair keyPair;
+
+    JceEphemeralKeyPair(KeyPair keyPair, byte[] encodedPublicKey)
+    {
+        super(encodedPublicKey);
+
+        this.keyPair = keyPair;
+    }
+
+    KeyPair getKeyPair()
+    {
+        return keyPair;
+    }
+
+    protected void destroy()
+    {
+        PrivateKey privateKey = keyPair.getPrivate();
+        if (privateKey instanceof Destroyable)
+        {
+            try
+            {
+                ((Destroyable)privateKey).destroy();
+            }
+            catch (DestroyFailedException e)
+            {
+                // Many providers don't support it; the key is left to the garbage collector
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@
 import org.bouncycastle.tls.crypto.TlsCryptoException;
 import org.bouncycastle.tls.crypto.TlsDHConfig;
 import org.bouncycastle.tls.crypto.TlsDHDomain;
+import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.BigIntegers;
 
 /**
@@ -63,6 +64,17 @@ public JceTlsSecret calculateDHAgreement(DHPrivateKey privateKey, DHPublicKey pu
              */
             byte[] secret = crypto.calculateKeyAgreement("DH", privateKey, publicKey, "TlsPremasterSecret");
 
+            if (dhConfig.isPadded())
+            {
+                /*
+                 * RFC 8446 7.4.1. [..] encoding in big-endian form and left-padded with zeros up to
+                 * the size of the prime.
+                 */
+                byte[] padded = BigIntegers.asUnsignedByteArray(getValueLength(), new BigInteger(1, secret));
+                Arrays.fill(secret, (byte)0);
+                secret = padded;
+            }
+
             return crypto.adoptLocalSecret(secret);
         }
         catch (GeneralSecurityException e)
@@ -88,6 +100,11 @@ public DHPublicKey decodePublicKey(byte[] encoding) throws IOException
          * If dh_Ys is not in this range, the client MUST terminate the connection with a fatal
          * handshake_failure(40) alert.
          */
+        if (dhConfig.isPadded() && encoding.length != getValueLength())
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+
         try
         {
             BigInteger y = decodeParameter(encoding);
@@ -109,9 +126,19 @@ public byte[] encodeParameter(BigInteger x) throws IOException
 
     public byte[] encodePublicKey(DHPublicKey publicKey) throws IOException
     {
+        if (dhConfig.isPadded())
+        {
+            return BigIntegers.asUnsignedByteArray(getValueLength(), publicKey.getY());
+        }
+
         return encodeParameter(publicKey.getY());
     }
 
+    protected int getValueLength()
+    {
+        return (dhParameterSpec.getP().bitLength() + 7) / 8;
+    }
+
     public KeyPair generateKeyPair() throws IOException
     {
         try
@@ -7,6 +7,7 @@
 
 import org.bouncycastle.tls.crypto.TlsAgreement;
 import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
 
 /**
  * Support class for ephemeral Elliptic Curve Diffie-Hellman using the JCE.
@@ -18,6 +19,7 @@
 
     protected KeyPair localKeyPair;
     protected ECPublicKey peerPublicKey;
+    protected EphemeralKeyCache.EphemeralKey cachedKey;
 
     public JceTlsECDH(JceTlsECDomain domain)
     {
@@ -26,6 +28,19 @@ public JceTlsECDH(JceTlsECDomain domain)
 
     public byte[] generateEphemeral() throws IOException
     {
+        EphemeralKeyCache cache = domain.crypto.getEphemeralKeyCache();
+        if (null != cache)
+        {
+            // Held until calculateSecret, since the cache may destroy the private key once released
+            JceEphemeralKeyPair cached = (JceEphemeralKeyPair)cache.acquire(domain.ecConfig.getNamedGroup(),
+                new CachedKeyPairGenerator(domain));
+
+            this.cachedKey = cached;
+            this.localKeyPair = cached.getKeyPair();
+
+            return cached.getEncodedPublicKey();
+        }
+
         this.localKeyPair = domain.generateKeyPair();
 
         return domain.encodePublicKey((ECPublicKey)localKeyPair.getPublic());
@@ -38,6 +53,35 @@ public void receivePeerValue(byte[] peerValue) throws IOException
 
     public TlsSecret calculateSecret() throws IOException
     {
-        return domain.calculateECDHAgreement((ECPrivateKey)localKeyPair.getPrivate(), peerPublicKey);
+        try
+        {
+            return domain.calculateECDHAgreement((ECPrivateKey)localKeyPair.getPrivate(), peerPublicKey);
+        }
+        finally
+        {
+            if (null != cachedKey)
+            {
+                domain.crypto.getEphemeralKeyCache().release(cachedKey);
+                this.cachedKey = null;
+            }
+        }
+    }
+
+    private static class CachedKeyPairGenerator
+        implements EphemeralKeyCache.Generator
+    {
+        private final JceTlsECDomain domain;
+
+        CachedKeyPairGenerator(JceTlsECDomain domain)
+        {
+            this.domain = domain;
+        }
+
+        public EphemeralKeyCache.EphemeralKey generateEphemeralKey() throws IOException
+        {
+            KeyPair keyPair = domain.generateKeyPair();
+
+            return new JceEphemeralKeyPair(keyPair, domain.encodePublicKey((ECPublicKey)keyPair.getPublic()));
+        }
     }
 }
@@ -4,8 +4,10 @@
 import java.security.KeyPair;
 import java.security.PublicKey;
 
+import org.bouncycastle.tls.NamedGroup;
 import org.bouncycastle.tls.crypto.TlsAgreement;
 import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
 
 /**
  * Support class for X25519 using the JCE.
@@ -16,6 +18,7 @@ public class JceX25519 implements TlsAgreement
 
     protected KeyPair localKeyPair;
     protected PublicKey peerPublicKey;
+    protected EphemeralKeyCache.EphemeralKey cachedKey;
 
     public JceX25519(JceX25519Domain domain)
     {
@@ -24,6 +27,19 @@ public JceX25519(JceX25519Domain domain)
 
     public byte[] generateEphemeral() throws IOException
     {
+        EphemeralKeyCache cache = domain.crypto.getEphemeralKeyCache();
+        if (null != cache)
+        {
+            // Held until calculateSecret, since the cache may destroy the private key once released
+            JceEphemeralKeyPair cached = (JceEphemeralKeyPair)cache.acquire(NamedGroup.x25519,
+                new CachedKeyPairGenerator(domain));
+
+            this.cachedKey = cached;
+            this.localKeyPair = cached.getKeyPair();
+
+            return cached.getEncodedPublicKey();
+        }
+
         this.localKeyPair = domain.generateKeyPair();
 
         return domain.encodePublicKey(localKeyPair.getPublic());
@@ -36,6 +52,35 @@ public void receivePeerValue(byte[] peerValue) throws IOException
 
     public TlsSecret calculateSecret() throws IOException
     {
-        return domain.calculateECDHAgreement(localKeyPair.getPrivate(), peerPublicKey);
+        try
+        {
+            return domain.calculateECDHAgreement(localKeyPair.getPrivate(), peerPublicKey);
+        }
+        finally
+        {
+            if (null != cachedKey)
+            {
+                domain.crypto.getEphemeralKeyCache().release(cachedKey);
+                this.cachedKey = null;
+            }
+        }
+    }
+
+    private static class CachedKeyPairGenerator
+        implements EphemeralKeyCache.Generator
+    {
+        private final JceX25519Domain domain;
+
+        CachedKeyPairGenerator(JceX25519Domain domain)
+        {
+            this.domain = domain;
+        }
+
+        public EphemeralKeyCache.EphemeralKey generateEphemeralKey() throws IOException
+        {
+            KeyPair keyPair = domain.generateKeyPair();
+
+            return new JceEphemeralKeyPair(keyPair, domain.encodePublicKey(keyPair.getPublic()));
+        }
     }
 }
@@ -21,9 +21,13 @@ public static Test suite()
 
         suite.addTestSuite(BasicClientAuthTlsTest.class);
         suite.addTestSuite(BasicTlsTest.class);
+        suite.addTestSuite(CertificateMessageCacheTest.class);
         suite.addTestSuite(ConfigTest.class);
         suite.addTestSuite(InstanceTest.class);
         suite.addTestSuite(KeyManagerFactoryTest.class);
+        suite.addTestSuite(SSLEngineTest.class);
+        suite.addTestSuite(SessionCacheTest.class);
+        suite.addTestSuite(SupportedCipherSuitesTest.class);
 
         if (hasClass("javax.net.ssl.CertPathTrustManagerParameters"))
         {
@@ -0,0 +1,136 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+
+import junit.framework.TestCase;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.crypto.TlsCrypto;
+import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCryptoProvider;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * Tests for the cache of server Certificate messages kept by the package-private ContextData, which
+ * is driven through reflection.
+ */
+public class CertificateMessageCacheTest
+    extends TestCase
+{
+    private static final int MAX_CACHED_CHAINS = 16;
+
+    private Object contextData;
+    private Method getCertificateMessage;
+
+    private KeyPair keyPair;
+
+    protected void setUp()
+        throws Exception
+    {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null)
+        {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+
+        TlsCrypto crypto = new JcaTlsCryptoProvider().setProvider(BouncyCastleProvider.PROVIDER_NAME)
+            .create(new SecureRandom());
+
+        Class clazz = Class.forName("org.bouncycastle.jsse.provider.ContextData");
+        Constructor constructor = clazz.getDeclaredConstructors()[0];
+        constructor.setAccessible(true);
+        this.contextData = constructor.newInstance(new Object[]{ crypto, null, null, null, null });
+
+        this.getCertificateMessage = clazz.getDeclaredMethod("getCertificateMessage",
+            new Class[]{ X509Certificate[].class });
+        getCertificateMessage.setAccessible(true);
+
+        this.keyPair = TestUtils.generateECKeyPair();
+    }
+
+    public void testEmptyChain()
+        throws Exception
+    {
+        assertSame(Certificate.EMPTY_CHAIN, getCertificateMessage(null));
+        assertSame(Certificate.EMPTY_CHAIN, getCertificateMessage(new X509Certificate[0]));
+    }
+
+    public void testSameChain()
+        throws Exception
+    {
+        X509Certificate[] chain = new X509Certificate[]{ createCert(), createCert() };
+
+        Certificate certificate = getCertificateMessage(chain);
+        assertEquals(2, certificate.getLength());
+        assertTrue(Arrays.areEqual(chain[0].getEncoded(), certificate.getCertificateAt(0).getEncoded()));
+
+        // the same chain, whether or not in the same array, gets the same message
+        assertSame(certificate, getCertificateMessage(chain));
+        assertSame(certificate, getCertificateMessage((X509Certificate[])chain.clone()));
+
+        // changes to the caller's array after the first call don't affect the cache
+        X509Certificate[] original = (X509Certificate[])chain.clone();
+        chain[1] = createCert();
+        assertSame(certificate, getCertificateMessage(original));
+    }
+
+    public void testDifferentIntermediate()
+        throws Exception
+    {
+        X509Certificate leaf = createCert();
+        X509Certificate[] chainA = new X509Certificate[]{ leaf, createCert() };
+        X509Certificate[] chainB = new X509Certificate[]{ leaf, createCert() };
+
+        // keyed by the end-entity certificate, but the rest of the chain must match too
+        Certificate a = getCertificateMessage(chainA);
+        Certificate b = getCertificateMessage(chainB);
+        assertNotSame(a, b);
+        assertSame(b, getCertificateMessage(chainB));
+
+        Certificate shorter = getCertificateMessage(new X509Certificate[]{ leaf });
+        assertEquals(1, shorter.getLength());
+        assertNotSame(b, shorter);
+    }
+
+    public void testLeastRecentlyUsedEviction()
+        throws Exception
+    {
+        X509Certificate[][] chains = new X509Certificate[MAX_CACHED_CHAINS + 1][];
+        Certificate[] certificates = new Certificate[chains.length];
+        for (int i = 0; i < MAX_CACHED_CHAINS; ++i)
+        {
+            chains[i] = new X509Certificate[]{ createCert() };
+            certificates[i] = getCertificateMessage(chains[i]);
+        }
+
+        // using the oldest entry makes chains[1] the least recently used
+        assertSame(certificates[0], getCertificateMessage(chains[0]));
+
+        chains[MAX_CACHED_CHAINS] = new X509Certificate[]{ createCert() };
+        certificates[MAX_CACHED_CHAINS] = getCertificateMessage(chains[MAX_CACHED_CHAINS]);
+
+        for (int i = 2; i <= MAX_CACHED_CHAINS; ++i)
+        {
+            assertSame(certificates[i], getCertificateMessage(chains[i]));
+        }
+        assertSame(certificates[0], getCertificateMessage(chains[0]));
+
+        // only chains[1] was evicted
+        assertNotSame(certificates[1], getCertificateMessage(chains[1]));
+    }
+
+    private X509Certificate createCert()
+        throws Exception
+    {
+        return TestUtils.generateRootCert(keyPair);
+    }
+
+    private Certificate getCertificateMessage(X509Certificate[] chain)
+        throws Exception
+    {
+        return (Certificate)getCertificateMessage.invoke(contextData, new Object[]{ chain });
+    }
+}
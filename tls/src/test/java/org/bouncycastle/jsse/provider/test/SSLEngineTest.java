@@ -0,0 +1,468 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.jsse.provider.BouncyCastleJsseProvider;
+import org.bouncycastle.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Drives a client and server {@link SSLEngine} against each other in memory, checking that
+ * wrap/unwrap respect the position and limit of direct, heap and read-only buffers, and that
+ * wrap and unwrap can run concurrently once the handshake is complete.
+ */
+public class SSLEngineTest
+    extends TestCase
+{
+    private static final byte MARKER = (byte)0xA5;
+    private static final int PAD = 13;
+
+    private static final int DIRECT = 0, HEAP_SLICE = 1, READ_ONLY = 2;
+
+    protected void setUp()
+    {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null)
+        {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        if (Security.getProvider(BouncyCastleJsseProvider.PROVIDER_NAME) == null)
+        {
+            Security.addProvider(new BouncyCastleJsseProvider());
+        }
+    }
+
+    public void testDirectBuffers()
+        throws Exception
+    {
+        implTestBuffers(DIRECT);
+    }
+
+    public void testHeapBufferSlices()
+        throws Exception
+    {
+        implTestBuffers(HEAP_SLICE);
+    }
+
+    public void testReadOnlyBuffers()
+        throws Exception
+    {
+        implTestBuffers(READ_ONLY);
+    }
+
+    public void testConcurrentWrapUnwrap()
+        throws Exception
+    {
+        final SSLEngine[] engines = createEngines();
+        handshake(engines[0], engines[1], DIRECT);
+
+        final int count = 500;
+
+        final BlockingQueue<byte[]> clientToServer = new LinkedBlockingQueue<byte[]>();
+        final BlockingQueue<byte[]> serverToClient = new LinkedBlockingQueue<byte[]>();
+        final Exception[] failures = new Exception[4];
+
+        Thread[] threads = new Thread[]{
+            new Thread()
+            {
+                public void run()
+                {
+                    failures[0] = sendMessages(engines[0], clientToServer, count, 1);
+                }
+            },
+            new Thread()
+            {
+                public void run()
+                {
+                    failures[1] = receiveMessages(engines[1], clientToServer, count, 1);
+                }
+            },
+            new Thread()
+            {
+                public void run()
+                {
+                    failures[2] = sendMessages(engines[1], serverToClient, count, 2);
+                }
+            },
+            new Thread()
+            {
+                public void run()
+                {
+                    failures[3] = receiveMessages(engines[0], serverToClient, count, 2);
+                }
+            },
+        };
+
+        for (int i = 0; i < threads.length; ++i)
+        {
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; ++i)
+        {
+            threads[i].join(60000);
+            assertFalse("thread " + i + " did not finish", threads[i].isAlive());
+        }
+        for (int i = 0; i < failures.length; ++i)
+        {
+            if (failures[i] != null)
+            {
+                throw failures[i];
+            }
+        }
+    }
+
+    private void implTestBuffers(int kind)
+        throws Exception
+    {
+        SSLEngine[] engines = createEngines();
+        SSLEngine client = engines[0], server = engines[1];
+
+        handshake(client, server, kind);
+
+        int[] lengths = new int[]{ 1, 100, 5000, server.getSession().getApplicationBufferSize() + 3 };
+        for (int i = 0; i < lengths.length; ++i)
+        {
+            checkApplicationData(client, server, createMessage(lengths[i], 3), kind);
+            checkApplicationData(server, client, createMessage(lengths[i], 4), kind);
+        }
+    }
+
+    private static void checkApplicationData(SSLEngine sender, SSLEngine receiver, byte[] message, int kind)
+        throws Exception
+    {
+        int netSize = sender.getSession().getPacketBufferSize();
+        int appSize = receiver.getSession().getApplicationBufferSize();
+
+        ByteBuffer src = createBuffer(kind, message.length, message);
+        int srcStart = src.position();
+
+        ByteBuffer received = ByteBuffer.allocate(message.length);
+        while (src.hasRemaining())
+        {
+            ByteBuffer net = createBuffer(DIRECT, netSize, null);
+            int netStart = net.position();
+
+            SSLEngineResult wrapResult = sender.wrap(src, net);
+            assertEquals(Status.OK, wrapResult.getStatus());
+            assertTrue(wrapResult.bytesConsumed() > 0);
+            assertEquals(netStart + wrapResult.bytesProduced(), net.position());
+            checkMarkers(net, netStart, net.position());
+
+            byte[] record = new byte[wrapResult.bytesProduced()];
+            net.position(netStart);
+            net.get(record);
+
+            ByteBuffer in = createBuffer(kind, record.length, record);
+            int inStart = in.position();
+            ByteBuffer app = createBuffer(DIRECT, appSize, null);
+            int appStart = app.position();
+
+            SSLEngineResult unwrapResult = receiver.unwrap(in, app);
+            assertEquals(Status.OK, unwrapResult.getStatus());
+            assertEquals(record.length, unwrapResult.bytesConsumed());
+            assertEquals(inStart + record.length, in.position());
+            assertEquals(wrapResult.bytesConsumed(), unwrapResult.bytesProduced());
+            assertEquals(appStart + unwrapResult.bytesProduced(), app.position());
+            checkMarkers(app, appStart, app.position());
+
+            app.flip();
+            app.position(appStart);
+            received.put(app);
+        }
+
+        assertEquals(srcStart + message.length, src.position());
+        assertTrue(Arrays.areEqual(message, received.array()));
+    }
+
+    private static Exception sendMessages(SSLEngine engine, BlockingQueue<byte[]> queue, int count, int seed)
+    {
+        try
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                ByteBuffer src = createBuffer(DIRECT, 0, createMessage(1 + i, seed + i));
+                ByteBuffer net = createBuffer(DIRECT, engine.getSession().getPacketBufferSize(), null);
+                int netStart = net.position();
+
+                SSLEngineResult result = engine.wrap(src, net);
+                if (result.getStatus() != Status.OK || src.hasRemaining())
+                {
+                    throw new IllegalStateException("unexpected wrap result: " + result);
+                }
+
+                byte[] record = new byte[result.bytesProduced()];
+                net.position(netStart);
+                net.get(record);
+                queue.put(record);
+            }
+            return null;
+        }
+        catch (Exception e)
+        {
+            return e;
+        }
+    }
+
+    private static Exception receiveMessages(SSLEngine engine, BlockingQueue<byte[]> queue, int count, int seed)
+    {
+        try
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                byte[] record = queue.poll(30, TimeUnit.SECONDS);
+                if (record == null)
+                {
+                    throw new IllegalStateException("timed out waiting for record " + i);
+                }
+
+                ByteBuffer in = createBuffer(DIRECT, 0, record);
+                ByteBuffer app = createBuffer(DIRECT, engine.getSession().getApplicationBufferSize(), null);
+                int appStart = app.position();
+
+                SSLEngineResult result = engine.unwrap(in, app);
+                if (result.getStatus() != Status.OK || in.hasRemaining())
+                {
+                    throw new IllegalStateException("unexpected unwrap result: " + result);
+                }
+
+                byte[] message = new byte[result.bytesProduced()];
+                app.position(appStart);
+                app.get(message);
+
+                if (!Arrays.areEqual(createMessage(1 + i, seed + i), message))
+                {
+                    throw new IllegalStateException("message " + i + " corrupted");
+                }
+            }
+            return null;
+        }
+        catch (Exception e)
+        {
+            return e;
+        }
+    }
+
+    /*
+     * Runs the handshake, with each record passed between the engines in a buffer of the given
+     * kind that starts at a non-zero position and has marker bytes beyond its limit.
+     */
+    private static void handshake(SSLEngine client, SSLEngine server, int kind)
+        throws Exception
+    {
+        client.beginHandshake();
+        server.beginHandshake();
+
+        byte[][] clientToServer = new byte[][]{ new byte[0] };
+        byte[][] serverToClient = new byte[][]{ new byte[0] };
+
+        for (int steps = 0; steps < 1000; ++steps)
+        {
+            boolean progress = false;
+            progress |= handshakeStep(client, serverToClient, clientToServer, kind);
+            progress |= handshakeStep(server, clientToServer, serverToClient, kind);
+
+            if (client.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                && server.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                && clientToServer[0].length == 0 && serverToClient[0].length == 0)
+            {
+                assertEquals(client.getSession().getProtocol(), server.getSession().getProtocol());
+                return;
+            }
+
+            assertTrue("handshake stalled", progress);
+        }
+
+        fail("handshake did not complete");
+    }
+
+    private static boolean handshakeStep(SSLEngine engine, byte[][] input, byte[][] output, int kind)
+        throws Exception
+    {
+        switch (engine.getHandshakeStatus())
+        {
+        case NEED_TASK:
+        {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null)
+            {
+                task.run();
+            }
+            return true;
+        }
+        case NEED_WRAP:
+        {
+            ByteBuffer net = createBuffer(DIRECT, engine.getSession().getPacketBufferSize(), null);
+            int netStart = net.position();
+
+            SSLEngineResult result = engine.wrap(ByteBuffer.allocate(0), net);
+            assertEquals(Status.OK, result.getStatus());
+            checkMarkers(net, netStart, net.position());
+
+            byte[] produced = new byte[result.bytesProduced()];
+            net.position(netStart);
+            net.get(produced);
+            output[0] = Arrays.concatenate(output[0], produced);
+            return true;
+        }
+        case NEED_UNWRAP:
+        {
+            if (input[0].length == 0)
+            {
+                return false;
+            }
+
+            ByteBuffer in = createBuffer(kind, input[0].length, input[0]);
+            int inStart = in.position();
+            ByteBuffer app = createBuffer(DIRECT, engine.getSession().getApplicationBufferSize(), null);
+
+            SSLEngineResult result = engine.unwrap(in, app);
+            if (result.getStatus() == Status.BUFFER_UNDERFLOW)
+            {
+                return false;
+            }
+            assertEquals(Status.OK, result.getStatus());
+            assertEquals(inStart + result.bytesConsumed(), in.position());
+            assertEquals(0, result.bytesProduced());
+
+            input[0] = Arrays.copyOfRange(input[0], result.bytesConsumed(), input[0].length);
+            return result.bytesConsumed() > 0;
+        }
+        default:
+            return false;
+        }
+    }
+
+    /*
+     * Creates a buffer whose position is PAD and whose limit leaves PAD marker bytes after it. If
+     * content is given, the buffer holds exactly that content between its position and limit.
+     */
+    private static ByteBuffer createBuffer(int kind, int size, byte[] content)
+    {
+        if (content != null)
+        {
+            size = content.length;
+        }
+
+        byte[] init = new byte[PAD + size + PAD];
+        Arrays.fill(init, MARKER);
+        if (content != null)
+        {
+            System.arraycopy(content, 0, init, PAD, size);
+        }
+
+        ByteBuffer buf;
+        switch (kind)
+        {
+        case DIRECT:
+        {
+            buf = ByteBuffer.allocateDirect(init.length);
+            buf.put(init);
+            break;
+        }
+        case HEAP_SLICE:
+        {
+            // a slice has a non-zero array offset, on top of the non-zero position
+            ByteBuffer outer = ByteBuffer.allocate(7 + init.length);
+            outer.position(7);
+            buf = outer.slice();
+            buf.put(init);
+            break;
+        }
+        case READ_ONLY:
+        {
+            buf = ByteBuffer.wrap(init).asReadOnlyBuffer();
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("kind");
+        }
+
+        buf.limit(PAD + size);
+        buf.position(PAD);
+        return buf;
+    }
+
+    /*
+     * Checks that nothing outside [start, end) was written, for a buffer created without content.
+     */
+    private static void checkMarkers(ByteBuffer buf, int start, int end)
+    {
+        ByteBuffer all = buf.duplicate();
+        all.clear();
+
+        for (int i = 0; i < all.capacity(); ++i)
+        {
+            if (i < start || i >= end)
+            {
+                assertEquals(MARKER, all.get(i));
+            }
+        }
+    }
+
+    private static byte[] createMessage(int length, int seed)
+    {
+        byte[] message = new byte[length];
+        for (int i = 0; i < length; ++i)
+        {
+            message[i] = (byte)(seed + i * 31);
+        }
+        return message;
+    }
+
+    private static SSLEngine[] createEngines()
+        throws Exception
+    {
+        char[] keyPass = "keyPassword".toCharArray();
+
+        KeyPair caKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate caCert = TestUtils.generateRootCert(caKeyPair);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setKeyEntry("server", caKeyPair.getPrivate(), keyPass, new X509Certificate[]{ caCert });
+
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ts.load(null, null);
+        ts.setCertificateEntry("ca", caCert);
+
+        KeyManagerFactory keyMgrFact = KeyManagerFactory.getInstance("PKIX", BouncyCastleJsseProvider.PROVIDER_NAME);
+        keyMgrFact.init(ks, keyPass);
+
+        TrustManagerFactory trustMgrFact = TrustManagerFactory.getInstance("PKIX",
+            BouncyCastleJsseProvider.PROVIDER_NAME);
+        trustMgrFact.init(ts);
+
+        SecureRandom random = SecureRandom.getInstance("DEFAULT", BouncyCastleProvider.PROVIDER_NAME);
+
+        SSLContext serverContext = SSLContext.getInstance("TLS", BouncyCastleJsseProvider.PROVIDER_NAME);
+        serverContext.init(keyMgrFact.getKeyManagers(), null, random);
+
+        SSLContext clientContext = SSLContext.getInstance("TLS", BouncyCastleJsseProvider.PROVIDER_NAME);
+        clientContext.init(null, trustMgrFact.getTrustManagers(), random);
+
+        SSLEngine client = clientContext.createSSLEngine("localhost", 443);
+        client.setUseClientMode(true);
+
+        SSLEngine server = serverContext.createSSLEngine();
+        server.setUseClientMode(false);
+
+        return new SSLEngine[]{ client, server };
+    }
+}
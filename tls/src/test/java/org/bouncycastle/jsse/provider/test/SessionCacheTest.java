@@ -0,0 +1,456 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Map;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.jsse.BCSSLSessionContext;
+import org.bouncycastle.jsse.provider.BouncyCastleJsseProvider;
+import org.bouncycastle.tls.CipherSuite;
+import org.bouncycastle.tls.CompressionMethod;
+import org.bouncycastle.tls.ExtensionType;
+import org.bouncycastle.tls.HandshakeType;
+import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.SessionParameters;
+import org.bouncycastle.tls.TlsSession;
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.tls.crypto.impl.bc.BcTlsCrypto;
+import org.bouncycastle.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the BCJSSE session cache: how sessions are spread over the cache's shards, LRU
+ * eviction and size limits, and client resumption using an RFC 5077 session ticket.
+ */
+public class SessionCacheTest
+    extends TestCase
+{
+    private final SecureRandom random = new SecureRandom();
+
+    // NOTE: The cache only holds soft references, so keep the sessions reachable
+    private final ArrayList<SSLSession> sessions = new ArrayList<SSLSession>();
+
+    private SessionParameters sessionParameters;
+
+    // The client's session from the most recent connect()
+    private SSLSession lastSession;
+
+    protected void setUp()
+    {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null)
+        {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        if (Security.getProvider(BouncyCastleJsseProvider.PROVIDER_NAME) == null)
+        {
+            Security.addProvider(new BouncyCastleJsseProvider());
+        }
+
+        sessionParameters = new SessionParameters.Builder()
+            .setCipherSuite(CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256)
+            .setCompressionAlgorithm(CompressionMethod._null)
+            .setExtendedMasterSecret(true)
+            .setMasterSecret(new BcTlsCrypto(random).createSecret(new byte[48]))
+            .setNegotiatedVersion(ProtocolVersion.TLSv12)
+            .build();
+    }
+
+    protected void tearDown()
+    {
+        sessions.clear();
+    }
+
+    public void testShardDistribution()
+        throws Exception
+    {
+        BCSSLSessionContext sessionContext = createSessionContext();
+
+        // Large enough for the maximum of 16 shards, each holding 256 sessions
+        int cacheSize = 16 * 256;
+        sessionContext.setSessionCacheSize(cacheSize);
+
+        for (int i = 0; i < cacheSize; ++i)
+        {
+            addSession(sessionContext, createSessionID());
+        }
+
+        Object[] shards = getShards(sessionContext);
+        assertEquals(16, shards.length);
+
+        int total = 0;
+        for (int i = 0; i < shards.length; ++i)
+        {
+            int shardSize = getShardSessions(shards[i]).size();
+
+            // A shard only overflows (evicting sessions early) if the IDs are spread unevenly
+            assertTrue("shard " + i + " holds " + shardSize, shardSize > 192 && shardSize <= 256);
+            total += shardSize;
+        }
+
+        assertEquals(total, sessionContext.getSessionCount());
+        assertEquals(cacheSize - total, sessionContext.getEvictionCount());
+        assertTrue(sessionContext.getEvictionCount() < cacheSize / 16);
+    }
+
+    public void testLRUEviction()
+        throws Exception
+    {
+        BCSSLSessionContext sessionContext = createSessionContext();
+
+        // Small enough for a single shard, so the eviction order is exactly LRU
+        int cacheSize = 300;
+        sessionContext.setSessionCacheSize(cacheSize);
+        assertEquals(1, getShards(sessionContext).length);
+
+        byte[][] ids = new byte[cacheSize + 2][];
+        for (int i = 0; i < cacheSize; ++i)
+        {
+            ids[i] = createSessionID();
+            addSession(sessionContext, ids[i]);
+        }
+        assertEquals(cacheSize, sessionContext.getSessionCount());
+        assertEquals(0, sessionContext.getEvictionCount());
+
+        // Accessing the eldest session makes the second eldest the next to go
+        assertNotNull(sessionContext.getSession(ids[0]));
+
+        ids[cacheSize] = createSessionID();
+        addSession(sessionContext, ids[cacheSize]);
+
+        assertEquals(cacheSize, sessionContext.getSessionCount());
+        assertEquals(1, sessionContext.getEvictionCount());
+        assertNotNull(sessionContext.getSession(ids[0]));
+        assertNull(sessionContext.getSession(ids[1]));
+        assertNotNull(sessionContext.getSession(ids[2]));
+        assertNotNull(sessionContext.getSession(ids[cacheSize]));
+
+        ids[cacheSize + 1] = createSessionID();
+        addSession(sessionContext, ids[cacheSize + 1]);
+
+        assertNull(sessionContext.getSession(ids[3]));
+        assertEquals(2, sessionContext.getEvictionCount());
+
+        long hits = sessionContext.getHitCount(), misses = sessionContext.getMissCount();
+        assertNotNull(sessionContext.getSession(ids[cacheSize + 1]));
+        assertNull(sessionContext.getSession(createSessionID()));
+        assertEquals(hits + 1, sessionContext.getHitCount());
+        assertEquals(misses + 1, sessionContext.getMissCount());
+    }
+
+    public void testSizeLimits()
+        throws Exception
+    {
+        BCSSLSessionContext sessionContext = createSessionContext();
+
+        // Zero means no limit
+        sessionContext.setSessionCacheSize(0);
+
+        int count = 3000;
+        for (int i = 0; i < count; ++i)
+        {
+            addSession(sessionContext, createSessionID());
+        }
+        assertEquals(count, sessionContext.getSessionCount());
+        assertEquals(0, sessionContext.getEvictionCount());
+
+        // Shrinking re-shards the cache, keeping no more sessions than the new limit
+        sessionContext.setSessionCacheSize(1000);
+        assertEquals(1000, sessionContext.getSessionCacheSize());
+        assertEquals(2, getShards(sessionContext).length);
+        assertTrue(sessionContext.getSessionCount() <= 1000);
+        assertEquals(count - sessionContext.getSessionCount(), sessionContext.getEvictionCount());
+        checkIds(sessionContext);
+
+        // Shrinking without re-sharding trims each shard in place
+        sessionContext.setSessionCacheSize(600);
+        assertEquals(2, getShards(sessionContext).length);
+        assertTrue(sessionContext.getSessionCount() <= 600);
+        assertEquals(count - sessionContext.getSessionCount(), sessionContext.getEvictionCount());
+        checkIds(sessionContext);
+
+        // Further sessions never take the cache over its limit
+        for (int i = 0; i < 2000; ++i)
+        {
+            addSession(sessionContext, createSessionID());
+            assertTrue(sessionContext.getSessionCount() <= 600);
+        }
+
+        // Growing keeps every session that was cached
+        int before = sessionContext.getSessionCount();
+        sessionContext.setSessionCacheSize(10000);
+        assertEquals(16, getShards(sessionContext).length);
+        assertEquals(before, sessionContext.getSessionCount());
+        checkIds(sessionContext);
+
+        try
+        {
+            sessionContext.setSessionCacheSize(-1);
+            fail("negative cache size was accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    public void testTicketResumption()
+        throws Exception
+    {
+        char[] keyPass = "keyPassword".toCharArray();
+
+        KeyPair caKeyPair = TestUtils.generateECKeyPair();
+        X509Certificate caCert = TestUtils.generateRootCert(caKeyPair);
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(null, null);
+        ks.setKeyEntry("server", caKeyPair.getPrivate(), keyPass, new X509Certificate[]{ caCert });
+
+        KeyStore ts = KeyStore.getInstance("JKS");
+        ts.load(null, null);
+        ts.setCertificateEntry("ca", caCert);
+
+        // SunJSSE issues stateless RFC 5077 tickets for TLS 1.2 and keeps no server-side session
+        KeyManagerFactory keyMgrFact;
+        SSLContext serverContext;
+        try
+        {
+            keyMgrFact = KeyManagerFactory.getInstance("SunX509", "SunJSSE");
+            serverContext = SSLContext.getInstance("TLS", "SunJSSE");
+        }
+        catch (GeneralSecurityException e)
+        {
+            System.err.println("Skipping session ticket resumption test: " + e);
+            return;
+        }
+
+        keyMgrFact.init(ks, keyPass);
+        serverContext.init(keyMgrFact.getKeyManagers(), null, random);
+
+        TrustManagerFactory trustMgrFact = TrustManagerFactory.getInstance("PKIX",
+            BouncyCastleJsseProvider.PROVIDER_NAME);
+        trustMgrFact.init(ts);
+
+        SSLContext clientContext = SSLContext.getInstance("TLS", BouncyCastleJsseProvider.PROVIDER_NAME);
+        clientContext.init(null, trustMgrFact.getTrustManagers(), random);
+
+        BCSSLSessionContext clientSessionContext = (BCSSLSessionContext)clientContext.getClientSessionContext();
+
+        byte[] firstTicket = connect(clientContext, serverContext);
+        assertNotNull(firstTicket);
+        assertEquals(0, firstTicket.length);
+        assertEquals(1, clientSessionContext.getSessionCount());
+
+        SSLSession firstSession = (SSLSession)clientSessionContext.getSession(
+            (byte[])clientSessionContext.getIds().nextElement());
+        assertNotNull(firstSession);
+
+        long hits = clientSessionContext.getHitCount();
+
+        byte[] secondTicket = connect(clientContext, serverContext);
+        assertNotNull(secondTicket);
+        assertTrue("no ticket was offered for resumption", secondTicket.length > 0);
+        assertTrue(clientSessionContext.getHitCount() > hits);
+
+        SSLSession secondSession = lastSession;
+        assertTrue(Arrays.areEqual(firstSession.getId(), secondSession.getId()));
+        assertEquals(firstSession.getCreationTime(), secondSession.getCreationTime());
+        assertEquals(1, clientSessionContext.getSessionCount());
+    }
+
+    /*
+     * Runs a TLS 1.2 handshake between a new client engine and a new server engine, returning the
+     * session_ticket extension data from the ClientHello (or null if there was none).
+     */
+    private byte[] connect(SSLContext clientContext, SSLContext serverContext)
+        throws Exception
+    {
+        SSLEngine client = clientContext.createSSLEngine("localhost", 8443);
+        client.setUseClientMode(true);
+        client.setEnabledProtocols(new String[]{ "TLSv1.2" });
+
+        SSLEngine server = serverContext.createSSLEngine();
+        server.setUseClientMode(false);
+
+        int packetSize = Math.max(client.getSession().getPacketBufferSize(),
+            server.getSession().getPacketBufferSize());
+        int appSize = Math.max(client.getSession().getApplicationBufferSize(),
+            server.getSession().getApplicationBufferSize());
+
+        ByteBuffer clientToServer = ByteBuffer.allocate(4 * packetSize);
+        ByteBuffer serverToClient = ByteBuffer.allocate(4 * packetSize);
+        ByteBuffer app = ByteBuffer.allocate(appSize);
+        ByteBuffer empty = ByteBuffer.allocate(0);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        SSLEngineResult result = client.wrap(empty, clientToServer);
+        assertEquals(Status.OK, result.getStatus());
+        byte[] ticket = getSessionTicketExtension(Arrays.copyOfRange(clientToServer.array(), 0,
+            clientToServer.position()));
+
+        for (int steps = 0; steps < 100; ++steps)
+        {
+            step(server, clientToServer, serverToClient, app, empty);
+            step(client, serverToClient, clientToServer, app, empty);
+
+            if (client.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                && server.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                && clientToServer.position() == 0 && serverToClient.position() == 0)
+            {
+                lastSession = client.getSession();
+                return ticket;
+            }
+        }
+
+        fail("handshake did not complete");
+        return null;
+    }
+
+    private static void step(SSLEngine engine, ByteBuffer input, ByteBuffer output, ByteBuffer app, ByteBuffer empty)
+        throws Exception
+    {
+        for (;;)
+        {
+            switch (engine.getHandshakeStatus())
+            {
+            case NEED_TASK:
+            {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null)
+                {
+                    task.run();
+                }
+                break;
+            }
+            case NEED_WRAP:
+            {
+                assertEquals(Status.OK, engine.wrap(empty, output).getStatus());
+                break;
+            }
+            case NEED_UNWRAP:
+            {
+                input.flip();
+                app.clear();
+                SSLEngineResult result = engine.unwrap(input, app);
+                input.compact();
+                if (result.getStatus() == Status.BUFFER_UNDERFLOW)
+                {
+                    return;
+                }
+                assertEquals(Status.OK, result.getStatus());
+                break;
+            }
+            default:
+                return;
+            }
+        }
+    }
+
+    /*
+     * Parses a plaintext record holding a ClientHello, returning its session_ticket extension data.
+     */
+    private static byte[] getSessionTicketExtension(byte[] record)
+        throws Exception
+    {
+        ByteArrayInputStream input = new ByteArrayInputStream(record);
+        TlsUtils.readUint8(input);
+        TlsUtils.readVersion(input);
+        TlsUtils.readUint16(input);
+
+        assertEquals(HandshakeType.client_hello, TlsUtils.readUint8(input));
+        TlsUtils.readUint24(input);
+        TlsUtils.readVersion(input);
+        TlsUtils.readFully(32, input);
+        TlsUtils.readOpaque8(input);
+        TlsUtils.readOpaque16(input);
+        TlsUtils.readOpaque8(input);
+
+        ByteArrayInputStream extensions = new ByteArrayInputStream(TlsUtils.readOpaque16(input));
+        while (extensions.available() > 0)
+        {
+            int extensionType = TlsUtils.readUint16(extensions);
+            byte[] extensionData = TlsUtils.readOpaque16(extensions);
+            if (extensionType == ExtensionType.session_ticket)
+            {
+                return extensionData;
+            }
+        }
+        return null;
+    }
+
+    private BCSSLSessionContext createSessionContext()
+        throws Exception
+    {
+        SSLContext sslContext = SSLContext.getInstance("TLS", BouncyCastleJsseProvider.PROVIDER_NAME);
+        sslContext.init(null, null, random);
+        return (BCSSLSessionContext)sslContext.getServerSessionContext();
+    }
+
+    private byte[] createSessionID()
+    {
+        byte[] sessionID = new byte[32];
+        random.nextBytes(sessionID);
+        return sessionID;
+    }
+
+    private void addSession(BCSSLSessionContext sessionContext, byte[] sessionID)
+        throws Exception
+    {
+        // NOTE: Sessions are only reported to the cache by a handshake, so bypass that here
+        Method reportSession = sessionContext.getClass().getDeclaredMethod("reportSession", TlsSession.class,
+            String.class, int.class);
+        reportSession.setAccessible(true);
+
+        TlsSession tlsSession = TlsUtils.importSession(sessionID, sessionParameters);
+        sessions.add((SSLSession)reportSession.invoke(sessionContext, tlsSession, null, -1));
+    }
+
+    private static void checkIds(BCSSLSessionContext sessionContext)
+    {
+        int count = 0;
+        for (Enumeration<byte[]> ids = sessionContext.getIds(); ids.hasMoreElements();)
+        {
+            assertNotNull(sessionContext.getSession(ids.nextElement()));
+            ++count;
+        }
+        assertEquals(sessionContext.getSessionCount(), count);
+    }
+
+    private static Object[] getShards(BCSSLSessionContext sessionContext)
+        throws Exception
+    {
+        Field field = sessionContext.getClass().getDeclaredField("sessionsByID");
+        field.setAccessible(true);
+        return (Object[])field.get(sessionContext);
+    }
+
+    private static Map<?, ?> getShardSessions(Object shard)
+        throws Exception
+    {
+        Field field = shard.getClass().getDeclaredField("sessions");
+        field.setAccessible(true);
+        return (Map<?, ?>)field.get(shard);
+    }
+}
@@ -0,0 +1,112 @@
+package org.bouncycastle.jsse.provider.test;
+
+import java.security.Security;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocket;
+
+import junit.framework.TestCase;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.jsse.provider.BouncyCastleJsseProvider;
+
+/**
+ * BCJSSE only uses TLS 1.3 client-side (its servers still negotiate at most TLS 1.2), so the TLS 1.3
+ * cipher suites should only be reported as supported (and enabled by default) in client mode.
+ */
+public class SupportedCipherSuitesTest
+    extends TestCase
+{
+    private static final String TLS13_SUITE = "TLS_AES_128_GCM_SHA256";
+    private static final String TLS12_SUITE = "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256";
+
+    private SSLContext context;
+
+    protected void setUp()
+        throws Exception
+    {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null)
+        {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        if (Security.getProvider(BouncyCastleJsseProvider.PROVIDER_NAME) == null)
+        {
+            Security.addProvider(new BouncyCastleJsseProvider());
+        }
+
+        this.context = SSLContext.getInstance("TLS", BouncyCastleJsseProvider.PROVIDER_NAME);
+        context.init(null, null, null);
+    }
+
+    public void testFactories()
+    {
+        assertTrue(contains(context.getSocketFactory().getSupportedCipherSuites(), TLS13_SUITE));
+        assertTrue(contains(context.getSocketFactory().getDefaultCipherSuites(), TLS13_SUITE));
+
+        assertFalse(contains(context.getServerSocketFactory().getSupportedCipherSuites(), TLS13_SUITE));
+        assertFalse(contains(context.getServerSocketFactory().getDefaultCipherSuites(), TLS13_SUITE));
+        assertTrue(contains(context.getServerSocketFactory().getSupportedCipherSuites(), TLS12_SUITE));
+
+        // not specific to either mode
+        assertFalse(contains(context.getSupportedSSLParameters().getCipherSuites(), TLS13_SUITE));
+    }
+
+    public void testEngineMode()
+    {
+        SSLEngine engine = context.createSSLEngine();
+
+        engine.setUseClientMode(true);
+        assertTrue(contains(engine.getSupportedCipherSuites(), TLS13_SUITE));
+        assertTrue(contains(engine.getEnabledCipherSuites(), TLS13_SUITE));
+
+        engine.setUseClientMode(false);
+        assertFalse(contains(engine.getSupportedCipherSuites(), TLS13_SUITE));
+        assertFalse(contains(engine.getEnabledCipherSuites(), TLS13_SUITE));
+        assertTrue(contains(engine.getEnabledCipherSuites(), TLS12_SUITE));
+
+        engine.setUseClientMode(true);
+        assertTrue(contains(engine.getEnabledCipherSuites(), TLS13_SUITE));
+    }
+
+    public void testExplicitlyEnabled()
+    {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(true);
+        engine.setEnabledCipherSuites(new String[]{ TLS13_SUITE, TLS12_SUITE });
+
+        // only the defaults follow the mode
+        engine.setUseClientMode(false);
+        assertTrue(contains(engine.getEnabledCipherSuites(), TLS13_SUITE));
+    }
+
+    public void testServerSocket()
+        throws Exception
+    {
+        SSLServerSocket serverSocket = (SSLServerSocket)context.getServerSocketFactory().createServerSocket();
+        try
+        {
+            assertFalse(contains(serverSocket.getSupportedCipherSuites(), TLS13_SUITE));
+            assertFalse(contains(serverSocket.getEnabledCipherSuites(), TLS13_SUITE));
+
+            serverSocket.setUseClientMode(true);
+            assertTrue(contains(serverSocket.getSupportedCipherSuites(), TLS13_SUITE));
+            assertTrue(contains(serverSocket.getEnabledCipherSuites(), TLS13_SUITE));
+        }
+        finally
+        {
+            serverSocket.close();
+        }
+    }
+
+    private static boolean contains(String[] values, String value)
+    {
+        for (int i = 0; i < values.length; ++i)
+        {
+            if (value.equals(values[i]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -20,12 +20,23 @@ public static Test suite()
         TestSuite suite = new TestSuite("TLS tests");
 
         suite.addTestSuite(BasicTlsTest.class);
+        suite.addTestSuite(ByteQueueTest.class);
+        suite.addTestSuite(CertificateMessageReuseTest.class);
+        suite.addTestSuite(CertificateStatusCacheTest.class);
+        suite.addTestSuite(DatagramChannelTransportTest.class);
         suite.addTestSuite(DTLSProtocolTest.class);
+        suite.addTestSuite(DTLSReplayWindowTest.class);
         suite.addTest(DTLSTestSuite.suite());
+        suite.addTestSuite(EphemeralKeyCacheTest.class);
         suite.addTestSuite(PRFTest.class);
+        suite.addTestSuite(Tls13ProtocolTest.class);
+        suite.addTestSuite(Tls13RFC8448Test.class);
+        suite.addTestSuite(Tls13ServerTest.class);
+        suite.addTestSuite(TlsCipherTest.class);
         suite.addTestSuite(TlsProtocolTest.class);
         suite.addTestSuite(TlsProtocolNonBlockingTest.class);
         suite.addTestSuite(TlsPSKProtocolTest.class);
+        suite.addTestSuite(TlsSelectorDriverTest.class);
         suite.addTestSuite(TlsSRPProtocolTest.class);
         suite.addTest(TlsTestSuite.suite());
         suite.addTestSuite(TlsUtilsTest.class);
@@ -0,0 +1,353 @@
+package org.bouncycastle.tls.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import junit.framework.TestCase;
+import org.bouncycastle.tls.ByteQueue;
+import org.bouncycastle.util.Arrays;
+
+public class ByteQueueTest
+    extends TestCase
+{
+    private static final int SEGMENT_SIZE = ByteQueue.SEGMENT_SIZE;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private int savedMaxPooledSegments;
+
+    public void setUp()
+    {
+        savedMaxPooledSegments = ByteQueue.getMaxPooledSegments();
+    }
+
+    public void tearDown()
+    {
+        ByteQueue.setMaxPooledSegments(savedMaxPooledSegments);
+    }
+
+    public void testAddAndReadAcrossSegments()
+    {
+        byte[] data = randomData(3 * SEGMENT_SIZE + 123);
+        ByteQueue queue = new ByteQueue();
+
+        // odd sized additions, so that writes straddle the segment boundaries
+        int pos = 0;
+        while (pos < data.length)
+        {
+            int len = Math.min(data.length - pos, 1 + random.nextInt(SEGMENT_SIZE + 500));
+            queue.addData(data, pos, len);
+            pos += len;
+        }
+        assertEquals(data.length, queue.available());
+
+        assertTrue(Arrays.areEqual(data, read(queue, data.length, 0)));
+
+        // reads of a few bytes either side of each boundary
+        for (int i = 1; i <= 3; ++i)
+        {
+            int skip = i * SEGMENT_SIZE - 7;
+            assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, skip, skip + 14), read(queue, 14, skip)));
+        }
+
+        // reading does not consume
+        assertEquals(data.length, queue.available());
+    }
+
+    public void testReadIntoByteBuffer()
+    {
+        byte[] data = randomData(2 * SEGMENT_SIZE + 10);
+        ByteQueue queue = new ByteQueue();
+        queue.addData(data, 0, data.length);
+
+        ByteBuffer buf = ByteBuffer.allocate(SEGMENT_SIZE + 100);
+        buf.position(50);
+        queue.read(buf, SEGMENT_SIZE, SEGMENT_SIZE / 2);
+        assertEquals(SEGMENT_SIZE + 50, buf.position());
+
+        byte[] result = new byte[SEGMENT_SIZE];
+        System.arraycopy(buf.array(), 50, result, 0, SEGMENT_SIZE);
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, SEGMENT_SIZE / 2, SEGMENT_SIZE / 2 + SEGMENT_SIZE), result));
+
+        ByteBuffer removed = ByteBuffer.allocate(data.length);
+        queue.removeData(removed, data.length - 3, 3);
+        assertEquals(0, queue.available());
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, 3, data.length),
+            Arrays.copyOfRange(removed.array(), 0, data.length - 3)));
+    }
+
+    public void testRemoveAcrossSegments()
+    {
+        byte[] data = randomData(4 * SEGMENT_SIZE + 1);
+        ByteQueue queue = new ByteQueue();
+        queue.addData(data, 0, data.length);
+
+        int pos = 0;
+        int[] steps = { 1, SEGMENT_SIZE - 2, 2, SEGMENT_SIZE, 3 * SEGMENT_SIZE / 2, SEGMENT_SIZE / 2 - 1, 1 };
+        for (int i = 0; i < steps.length; ++i)
+        {
+            byte[] removed = queue.removeData(steps[i], 0);
+            assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, pos, pos + steps[i]), removed));
+            pos += steps[i];
+            assertEquals(data.length - pos, queue.available());
+
+            // what is left is unaffected by segments being dropped from the front
+            if (queue.available() > 0)
+            {
+                assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, pos, data.length),
+                    read(queue, queue.available(), 0)));
+            }
+        }
+        assertEquals(data.length, pos);
+
+        // data added after the queue is drained starts again at the beginning of a segment
+        queue.addData(data, 0, 10);
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, 0, 10), queue.removeData(10, 0)));
+    }
+
+    public void testRemoveWithSkip()
+    {
+        byte[] data = randomData(2 * SEGMENT_SIZE);
+        ByteQueue queue = new ByteQueue();
+        queue.addData(data, 0, data.length);
+
+        byte[] buf = new byte[20];
+        queue.removeData(buf, 5, 10, SEGMENT_SIZE - 5);
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, SEGMENT_SIZE - 5, SEGMENT_SIZE + 5),
+            Arrays.copyOfRange(buf, 5, 15)));
+        assertEquals(data.length - SEGMENT_SIZE - 5, queue.available());
+
+        queue.removeData(queue.available());
+        assertEquals(0, queue.available());
+    }
+
+    public void testCopyTo()
+        throws IOException
+    {
+        byte[] data = randomData(3 * SEGMENT_SIZE);
+        ByteQueue queue = new ByteQueue();
+        queue.addData(data, 0, data.length);
+        queue.removeData(SEGMENT_SIZE / 3);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        queue.copyTo(out, 2 * SEGMENT_SIZE);
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, SEGMENT_SIZE / 3, SEGMENT_SIZE / 3 + 2 * SEGMENT_SIZE),
+            out.toByteArray()));
+
+        // copying does not consume
+        assertEquals(data.length - SEGMENT_SIZE / 3, queue.available());
+
+        try
+        {
+            queue.copyTo(new ByteArrayOutputStream(), data.length);
+            fail("copied more than available");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    public void testReadFrom()
+    {
+        byte[] data = randomData(2 * SEGMENT_SIZE + 17);
+        ByteQueue queue = new ByteQueue();
+        queue.addData(data, 0, data.length);
+        queue.removeData(17);
+
+        ByteArrayInputStream in = queue.readFrom(SEGMENT_SIZE + 3);
+        assertEquals(SEGMENT_SIZE + 3, in.available());
+        assertEquals(SEGMENT_SIZE - 3, queue.available());
+
+        // the stream has its own copy, so it survives further use of the queue
+        queue.addData(new byte[SEGMENT_SIZE], 0, SEGMENT_SIZE);
+        queue.removeData(queue.available());
+
+        byte[] result = new byte[SEGMENT_SIZE + 3];
+        assertEquals(result.length, in.read(result, 0, result.length));
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, 17, 17 + SEGMENT_SIZE + 3), result));
+
+        try
+        {
+            queue.readFrom(1);
+            fail("read from an empty queue");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    public void testReadOnly()
+    {
+        byte[] data = randomData(100);
+        ByteQueue queue = new ByteQueue(data, 10, 80);
+        assertEquals(80, queue.available());
+
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, 20, 30), read(queue, 10, 10)));
+
+        ByteArrayInputStream in = queue.readFrom(30);
+        byte[] result = new byte[30];
+        assertEquals(30, in.read(result, 0, 30));
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, 10, 40), result));
+        assertEquals(50, queue.available());
+
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, 40, 90), queue.removeData(50, 0)));
+
+        try
+        {
+            queue.addData(data, 0, 1);
+            fail("added to a read-only queue");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    public void testPoolRelease()
+    {
+        ByteQueue.setMaxPooledSegments(0);
+        assertEquals(0, ByteQueue.getPooledSegmentCount());
+
+        ByteQueue.setMaxPooledSegments(3);
+
+        ByteQueue queue = new ByteQueue();
+        byte[] data = randomData(5 * SEGMENT_SIZE);
+        queue.addData(data, 0, data.length);
+
+        // a segment goes back to the pool as soon as it has been drained
+        queue.removeData(SEGMENT_SIZE - 1);
+        assertEquals(0, ByteQueue.getPooledSegmentCount());
+        queue.removeData(1);
+        assertEquals(1, ByteQueue.getPooledSegmentCount());
+
+        // no more than the maximum are kept
+        queue.removeData(queue.available());
+        assertEquals(3, ByteQueue.getPooledSegmentCount());
+
+        // reducing the maximum drops the excess
+        ByteQueue.setMaxPooledSegments(2);
+        assertEquals(2, ByteQueue.getPooledSegmentCount());
+
+        try
+        {
+            ByteQueue.setMaxPooledSegments(-1);
+            fail("negative pool size accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    public void testPoolExhaustion()
+    {
+        ByteQueue.setMaxPooledSegments(0);
+        ByteQueue.setMaxPooledSegments(2);
+
+        ByteQueue released = new ByteQueue();
+        released.addData(new byte[2 * SEGMENT_SIZE], 0, 2 * SEGMENT_SIZE);
+        released.removeData(2 * SEGMENT_SIZE);
+        assertEquals(2, ByteQueue.getPooledSegmentCount());
+
+        // the pooled segments are used first, then new ones are allocated once the pool is empty
+        byte[] data = randomData(4 * SEGMENT_SIZE);
+        ByteQueue queue = new ByteQueue();
+        queue.addData(data, 0, SEGMENT_SIZE);
+        assertEquals(1, ByteQueue.getPooledSegmentCount());
+        queue.addData(data, SEGMENT_SIZE, 3 * SEGMENT_SIZE);
+        assertEquals(0, ByteQueue.getPooledSegmentCount());
+
+        assertTrue(Arrays.areEqual(data, queue.removeData(data.length, 0)));
+        assertEquals(2, ByteQueue.getPooledSegmentCount());
+    }
+
+    public void testReleasedSegmentsZeroed()
+        throws Exception
+    {
+        ByteQueue.setMaxPooledSegments(0);
+        ByteQueue.setMaxPooledSegments(4);
+
+        byte[] data = new byte[3 * SEGMENT_SIZE];
+        Arrays.fill(data, (byte)0xA5);
+
+        ByteQueue queue = new ByteQueue();
+        queue.addData(data, 0, data.length);
+        queue.removeData(2 * SEGMENT_SIZE + 1);
+        queue.removeData(queue.available());
+        assertEquals(3, ByteQueue.getPooledSegmentCount());
+
+        byte[][] free = getPooledSegments();
+        for (int i = 0; i < 3; ++i)
+        {
+            assertTrue(Arrays.areAllZeroes(free[i], 0, SEGMENT_SIZE));
+        }
+    }
+
+    public void testErrors()
+    {
+        ByteQueue queue = new ByteQueue();
+        queue.addData(new byte[10], 0, 10);
+
+        try
+        {
+            queue.removeData(11);
+            fail("removed more than available");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            queue.read(new byte[10], 0, 5, 6);
+            fail("read past the end of the data");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            queue.read(new byte[4], 0, 5, 0);
+            fail("read into a short buffer");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    private byte[] randomData(int len)
+    {
+        byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static byte[] read(ByteQueue queue, int len, int skip)
+    {
+        byte[] buf = new byte[len];
+        queue.read(buf, 0, len, skip);
+        return buf;
+    }
+
+    private static byte[][] getPooledSegments()
+        throws Exception
+    {
+        Field poolField = ByteQueue.class.getDeclaredField("pool");
+        poolField.setAccessible(true);
+        Object pool = poolField.get(null);
+
+        Field freeField = pool.getClass().getDeclaredField("free");
+        freeField.setAccessible(true);
+        return (byte[][])freeField.get(pool);
+    }
+}
@@ -0,0 +1,228 @@
+package org.bouncycastle.tls.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.CertificateRequest;
+import org.bouncycastle.tls.CertificateStatus;
+import org.bouncycastle.tls.CipherSuite;
+import org.bouncycastle.tls.ContentType;
+import org.bouncycastle.tls.HandshakeType;
+import org.bouncycastle.tls.HashAlgorithm;
+import org.bouncycastle.tls.SignatureAlgorithm;
+import org.bouncycastle.tls.SignatureAndHashAlgorithm;
+import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsCredentialedSigner;
+import org.bouncycastle.tls.TlsServerProtocol;
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.impl.bc.BcDefaultTlsCredentialedSigner;
+import org.bouncycastle.tls.crypto.impl.bc.BcTlsCrypto;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Integers;
+import org.bouncycastle.util.io.Streams;
+import org.bouncycastle.util.io.TeeInputStream;
+
+/**
+ * Checks that a server sending the same Certificate, CertificateRequest and CertificateStatus
+ * instances in several handshakes (so that their cached encodings are reused) sends exactly what it
+ * would send with freshly created ones, and that both sides' Finished messages (and so transcripts)
+ * still agree.
+ */
+public class CertificateMessageReuseTest
+    extends TestCase
+{
+    private static final short[] MESSAGE_TYPES = { HandshakeType.certificate, HandshakeType.certificate_request,
+        HandshakeType.certificate_status };
+
+    private static final Date PRODUCED_AT = new Date(1700000000000L);
+
+    public void testReusedMessages()
+        throws Exception
+    {
+        SharedMessages shared = new SharedMessages();
+
+        Hashtable first = runHandshake(new ReuseTlsServer(shared));
+        Hashtable second = runHandshake(new ReuseTlsServer(shared));
+        Hashtable fresh = runHandshake(new ReuseTlsServer(new SharedMessages()));
+
+        for (int i = 0; i < MESSAGE_TYPES.length; ++i)
+        {
+            Integer type = Integers.valueOf(MESSAGE_TYPES[i]);
+            String name = HandshakeType.getName(MESSAGE_TYPES[i]);
+
+            byte[] message = (byte[])first.get(type);
+            assertNotNull(name, message);
+            assertTrue(name, Arrays.areEqual(message, (byte[])second.get(type)));
+            assertTrue(name, Arrays.areEqual(message, (byte[])fresh.get(type)));
+        }
+    }
+
+    /**
+     * @return the server's handshake messages (before ChangeCipherSpec), by type.
+     */
+    private static Hashtable runHandshake(ReuseTlsServer server)
+        throws Exception
+    {
+        PipedInputStream clientRead = TlsTestUtils.createPipedInputStream();
+        PipedInputStream serverRead = TlsTestUtils.createPipedInputStream();
+        PipedOutputStream clientWrite = new PipedOutputStream(serverRead);
+        PipedOutputStream serverWrite = new PipedOutputStream(clientRead);
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol(new TeeInputStream(clientRead, received), clientWrite);
+        TlsServerProtocol serverProtocol = new TlsServerProtocol(serverRead, serverWrite);
+
+        ServerThread serverThread = new ServerThread(serverProtocol, server);
+        serverThread.start();
+
+        clientProtocol.connect(new MockTlsClient(null));
+        clientProtocol.close();
+
+        serverThread.join();
+        assertTrue(serverThread.completed);
+
+        return parseServerFlight(received.toByteArray());
+    }
+
+    private static Hashtable parseServerFlight(byte[] records)
+        throws IOException
+    {
+        ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+
+        ByteArrayInputStream input = new ByteArrayInputStream(records);
+        for (;;)
+        {
+            short type = TlsUtils.readUint8(input);
+            TlsUtils.readVersion(input);
+            byte[] fragment = TlsUtils.readOpaque16(input);
+
+            if (ContentType.change_cipher_spec == type)
+            {
+                break;
+            }
+            if (ContentType.handshake == type)
+            {
+                handshake.write(fragment);
+            }
+        }
+
+        Hashtable messages = new Hashtable();
+
+        ByteArrayInputStream buf = new ByteArrayInputStream(handshake.toByteArray());
+        while (buf.available() > 0)
+        {
+            byte[] header = TlsUtils.readFully(4, buf);
+            byte[] body = TlsUtils.readFully(TlsUtils.readUint24(header, 1), buf);
+            messages.put(Integers.valueOf(TlsUtils.readUint8(header, 0)), Arrays.concatenate(header, body));
+        }
+        return messages;
+    }
+
+    /**
+     * The messages a server would keep for its credentials, rather than recreate for each handshake.
+     */
+    static class SharedMessages
+    {
+        private final BcTlsCrypto crypto = new BcTlsCrypto(new SecureRandom());
+
+        private Certificate certificate;
+        private CertificateRequest certificateRequest;
+        private CertificateStatus certificateStatus;
+
+        synchronized void init(ReuseTlsServer server)
+            throws IOException
+        {
+            if (null == certificate)
+            {
+                this.certificate = TlsTestUtils.loadCertificateChain(crypto,
+                    new String[]{ "x509-server-rsa-sign.pem", "x509-ca-rsa.pem" });
+                this.certificateRequest = server.createCertificateRequest();
+                this.certificateStatus = CertificateStatusCacheTest.createOCSPStatus(PRODUCED_AT, null);
+            }
+        }
+    }
+
+    static class ReuseTlsServer
+        extends MockTlsServer
+    {
+        private final SharedMessages shared;
+
+        ReuseTlsServer(SharedMessages shared)
+        {
+            this.shared = shared;
+        }
+
+        protected int[] getSupportedCipherSuites()
+        {
+            return new int[]{ CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256 };
+        }
+
+        public CertificateRequest getCertificateRequest()
+            throws IOException
+        {
+            shared.init(this);
+            return shared.certificateRequest;
+        }
+
+        public CertificateStatus getCertificateStatus()
+            throws IOException
+        {
+            return shared.certificateStatus;
+        }
+
+        protected TlsCredentialedSigner getRSASignerCredentials()
+            throws IOException
+        {
+            shared.init(this);
+
+            return new BcDefaultTlsCredentialedSigner(new TlsCryptoParameters(context), (BcTlsCrypto)getCrypto(),
+                TlsTestUtils.loadBcPrivateKeyResource("x509-server-key-rsa-sign.pem"), shared.certificate,
+                SignatureAndHashAlgorithm.getInstance(HashAlgorithm.sha256, SignatureAlgorithm.rsa));
+        }
+
+        CertificateRequest createCertificateRequest()
+            throws IOException
+        {
+            return super.getCertificateRequest();
+        }
+    }
+
+    static class ServerThread
+        extends Thread
+    {
+        private final TlsServerProtocol serverProtocol;
+        private final ReuseTlsServer server;
+
+        volatile boolean completed = false;
+
+        ServerThread(TlsServerProtocol serverProtocol, ReuseTlsServer server)
+        {
+            this.serverProtocol = serverProtocol;
+            this.server = server;
+        }
+
+        public void run()
+        {
+            try
+            {
+                serverProtocol.accept(server);
+                this.completed = true;
+                Streams.drain(serverProtocol.getInputStream());
+                serverProtocol.close();
+            }
+            catch (Exception e)
+            {
+            }
+        }
+    }
+}
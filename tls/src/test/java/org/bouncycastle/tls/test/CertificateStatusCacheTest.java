@@ -0,0 +1,291 @@
+package org.bouncycastle.tls.test;
+
+import java.io.IOException;
+import java.util.Date;
+
+import junit.framework.TestCase;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.CertStatus;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.asn1.ocsp.ResponderID;
+import org.bouncycastle.asn1.ocsp.ResponseBytes;
+import org.bouncycastle.asn1.ocsp.ResponseData;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.tls.CertificateStatus;
+import org.bouncycastle.tls.CertificateStatusCache;
+import org.bouncycastle.tls.CertificateStatusType;
+
+public class CertificateStatusCacheTest
+    extends TestCase
+{
+    public void testRefreshAfterMaxAge()
+        throws Exception
+    {
+        TestSource source = new TestSource();
+        CertificateStatusCache cache = new CertificateStatusCache(source, 100L);
+
+        CertificateStatus first = cache.getCertificateStatus();
+        assertNotNull(first);
+        assertSame(first, cache.getCertificateStatus());
+        assertEquals(1, source.getFetches());
+
+        Thread.sleep(150);
+
+        CertificateStatus second = cache.getCertificateStatus();
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertSame(second, cache.getCertificateStatus());
+        assertEquals(2, source.getFetches());
+    }
+
+    public void testFailedRefresh()
+        throws Exception
+    {
+        TestSource source = new TestSource();
+        CertificateStatusCache cache = new CertificateStatusCache(source, 100L);
+
+        CertificateStatus first = cache.getCertificateStatus();
+        source.fail = true;
+
+        // a failed refresh keeps the previous status, and is not retried straight away
+        Thread.sleep(150);
+        assertSame(first, cache.getCertificateStatus());
+        assertEquals(2, source.getFetches());
+        assertSame(first, cache.getCertificateStatus());
+        assertEquals(2, source.getFetches());
+
+        // but without a nextUpdate it is served for no more than another maxAgeMillis
+        Thread.sleep(150);
+        assertNull(cache.getCertificateStatus());
+        assertEquals(3, source.getFetches());
+
+        // and a later successful refresh replaces it
+        source.fail = false;
+        Thread.sleep(150);
+        CertificateStatus second = cache.getCertificateStatus();
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertEquals(4, source.getFetches());
+    }
+
+    public void testNextUpdate()
+        throws Exception
+    {
+        // nextUpdate has a resolution of one second
+        Date nextUpdate = new Date((System.currentTimeMillis() / 1000 + 2) * 1000);
+
+        TestSource source = new TestSource();
+        source.nextUpdate = nextUpdate;
+        CertificateStatusCache cache = new CertificateStatusCache(source, 60000L);
+
+        CertificateStatus first = cache.getCertificateStatus();
+        assertNotNull(first);
+        assertSame(first, cache.getCertificateStatus());
+        assertEquals(1, source.getFetches());
+
+        source.nextUpdate = null;
+        while (System.currentTimeMillis() < nextUpdate.getTime())
+        {
+            Thread.sleep(50);
+        }
+
+        // refreshed at nextUpdate, well before maxAgeMillis
+        CertificateStatus second = cache.getCertificateStatus();
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertEquals(2, source.getFetches());
+    }
+
+    public void testExpiredNextUpdate()
+        throws Exception
+    {
+        TestSource source = new TestSource();
+        source.nextUpdate = new Date(System.currentTimeMillis() - 10000L);
+        CertificateStatusCache cache = new CertificateStatusCache(source, 60000L);
+
+        // an already expired response is not served, and not fetched again for every handshake
+        assertNull(cache.getCertificateStatus());
+        assertNull(cache.getCertificateStatus());
+        assertNull(cache.getCertificateStatus());
+        assertEquals(1, source.getFetches());
+    }
+
+    public void testSingleFlight()
+        throws Exception
+    {
+        final TestSource source = new TestSource();
+        final CertificateStatusCache cache = new CertificateStatusCache(source, 100L);
+
+        final CertificateStatus first = cache.getCertificateStatus();
+        Thread.sleep(150);
+
+        source.block();
+
+        final CertificateStatus[] refreshed = new CertificateStatus[1];
+        Thread refresher = new Thread()
+        {
+            public void run()
+            {
+                refreshed[0] = cache.getCertificateStatus();
+            }
+        };
+        refresher.start();
+        source.awaitFetches(2);
+
+        // while one thread fetches, the others are given the previous status without waiting
+        final int THREADS = 4;
+        final CertificateStatus[] results = new CertificateStatus[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; ++i)
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    results[index] = cache.getCertificateStatus();
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; ++i)
+        {
+            threads[i].join(5000);
+            assertFalse(threads[i].isAlive());
+            assertSame(first, results[i]);
+        }
+        assertEquals(2, source.getFetches());
+
+        source.unblock();
+        refresher.join(5000);
+
+        assertNotNull(refreshed[0]);
+        assertNotSame(first, refreshed[0]);
+        assertSame(refreshed[0], cache.getCertificateStatus());
+        assertEquals(2, source.getFetches());
+    }
+
+    public void testInvalidate()
+        throws IOException
+    {
+        TestSource source = new TestSource();
+        CertificateStatusCache cache = new CertificateStatusCache(source, 60000L);
+
+        CertificateStatus first = cache.getCertificateStatus();
+        cache.invalidate();
+
+        CertificateStatus second = cache.getCertificateStatus();
+        assertNotSame(first, second);
+        assertEquals(2, source.getFetches());
+    }
+
+    /**
+     * A (structurally valid, unsigned) OCSP response, with the given nextUpdate if not null.
+     */
+    static CertificateStatus createOCSPStatus(Date nextUpdate)
+        throws IOException
+    {
+        return createOCSPStatus(new Date(), nextUpdate);
+    }
+
+    /**
+     * A (structurally valid, unsigned) OCSP response, produced at the given time.
+     */
+    static CertificateStatus createOCSPStatus(Date now, Date nextUpdate)
+        throws IOException
+    {
+
+        CertID certID = new CertID(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1),
+            new DEROctetString(new byte[20]), new DEROctetString(new byte[20]), new ASN1Integer(1));
+        SingleResponse singleResponse = new SingleResponse(certID, new CertStatus(), new ASN1GeneralizedTime(now),
+            null == nextUpdate ? null : new ASN1GeneralizedTime(nextUpdate), (Extensions)null);
+
+        ResponseData responseData = new ResponseData(new ResponderID(new DEROctetString(new byte[20])),
+            new ASN1GeneralizedTime(now), new DERSequence(singleResponse), (Extensions)null);
+        BasicOCSPResponse basicResponse = new BasicOCSPResponse(responseData,
+            new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption), new DERBitString(new byte[32]), null);
+
+        OCSPResponse ocspResponse = new OCSPResponse(new OCSPResponseStatus(OCSPResponseStatus.SUCCESSFUL),
+            new ResponseBytes(OCSPObjectIdentifiers.id_pkix_ocsp_basic, new DEROctetString(basicResponse)));
+
+        return new CertificateStatus(CertificateStatusType.ocsp, ocspResponse);
+    }
+
+    private static class TestSource
+        implements CertificateStatusCache.Source
+    {
+        volatile boolean fail = false;
+        volatile Date nextUpdate = null;
+
+        private boolean block = false;
+        private int fetches = 0;
+
+        public CertificateStatus fetchCertificateStatus()
+            throws IOException
+        {
+            synchronized (this)
+            {
+                ++fetches;
+                notifyAll();
+
+                while (block)
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new IOException("interrupted");
+                    }
+                }
+            }
+
+            if (fail)
+            {
+                throw new IOException("test failure");
+            }
+
+            return createOCSPStatus(nextUpdate);
+        }
+
+        synchronized void block()
+        {
+            block = true;
+        }
+
+        synchronized int getFetches()
+        {
+            return fetches;
+        }
+
+        synchronized void unblock()
+        {
+            block = false;
+            notifyAll();
+        }
+
+        synchronized void awaitFetches(int expected)
+            throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + 5000;
+            while (fetches < expected && System.currentTimeMillis() < end)
+            {
+                wait(100);
+            }
+            assertEquals(expected, fetches);
+        }
+    }
+}
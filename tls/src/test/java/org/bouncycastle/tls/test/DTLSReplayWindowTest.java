@@ -0,0 +1,259 @@
+package org.bouncycastle.tls.test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the package-private DTLSReplayWindow, which is driven through reflection.
+ */
+public class DTLSReplayWindowTest
+    extends TestCase
+{
+    private static final int WINDOW_WORDS = 16;
+
+    public void testInOrder()
+        throws Exception
+    {
+        ReplayWindow window = new ReplayWindow();
+
+        for (long seq = 0; seq < 200; ++seq)
+        {
+            assertFalse(window.shouldDiscard(seq));
+            window.reportAuthenticated(seq);
+            assertTrue(window.shouldDiscard(seq));
+        }
+
+        for (long seq = 0; seq < 200; ++seq)
+        {
+            assertTrue(window.shouldDiscard(seq));
+        }
+        assertFalse(window.shouldDiscard(200));
+    }
+
+    public void testOutOfOrder()
+        throws Exception
+    {
+        ReplayWindow window = new ReplayWindow();
+
+        window.reportAuthenticated(100);
+        assertFalse(window.shouldDiscard(50));
+        assertFalse(window.shouldDiscard(99));
+
+        window.reportAuthenticated(50);
+        assertTrue(window.shouldDiscard(50));
+        assertFalse(window.shouldDiscard(51));
+        assertTrue(window.shouldDiscard(100));
+
+        // an older record does not move the window
+        window.reportAuthenticated(99);
+        assertFalse(window.shouldDiscard(101));
+    }
+
+    public void testWindowEdges()
+        throws Exception
+    {
+        ReplayWindow window = new ReplayWindow();
+
+        // the window covers the words up to WINDOW_WORDS - 1 behind the latest one
+        long latest = 64 * 31 + 16;
+        window.reportAuthenticated(latest);
+
+        long oldest = 64 * (31 - (WINDOW_WORDS - 1));
+        assertFalse(window.shouldDiscard(oldest));
+        assertFalse(window.shouldDiscard(oldest + 63));
+        assertTrue(window.shouldDiscard(oldest - 1));
+        assertTrue(window.shouldDiscard(0));
+
+        window.reportAuthenticated(oldest);
+        assertTrue(window.shouldDiscard(oldest));
+        assertFalse(window.shouldDiscard(oldest + 1));
+
+        // reports from before the window are ignored
+        window.reportAuthenticated(oldest - 1);
+        assertTrue(window.shouldDiscard(oldest - 1));
+        assertFalse(window.shouldDiscard(latest - 1));
+
+        // the newest bit of the latest word
+        assertFalse(window.shouldDiscard(64 * 31 + 63));
+        window.reportAuthenticated(64 * 31 + 63);
+        assertTrue(window.shouldDiscard(64 * 31 + 63));
+        assertFalse(window.shouldDiscard(oldest + 2));
+    }
+
+    public void testWordWrap()
+        throws Exception
+    {
+        ReplayWindow window = new ReplayWindow();
+
+        // word 3 shares its slot with word 3 + WINDOW_WORDS
+        long early = 64 * 3 + 5;
+        window.reportAuthenticated(early);
+
+        // advancing to word 18 clears the slots of words 4 to 18, but word 3 is still in the window
+        window.reportAuthenticated(64 * 18);
+        assertTrue(window.shouldDiscard(early));
+        assertFalse(window.shouldDiscard(early + 1));
+
+        // advancing to word 19 reuses the slot of word 3, which must then read as unseen
+        window.reportAuthenticated(64 * 19);
+        assertTrue(window.shouldDiscard(early));
+        assertFalse(window.shouldDiscard(64 * 19 + 5));
+        window.reportAuthenticated(64 * 19 + 5);
+        assertTrue(window.shouldDiscard(64 * 19 + 5));
+
+        // many single word steps around the ring
+        for (long word = 20; word < 20 + 3 * WINDOW_WORDS; ++word)
+        {
+            long seq = 64 * word + (word % 64);
+            assertFalse(window.shouldDiscard(seq));
+            window.reportAuthenticated(seq);
+            assertTrue(window.shouldDiscard(seq));
+
+            if (word > 20)
+            {
+                long previous = 64 * (word - 1) + ((word - 1) % 64);
+                assertTrue(window.shouldDiscard(previous));
+            }
+            assertFalse(window.shouldDiscard(seq - 64));
+            assertTrue(window.shouldDiscard(seq - 64 * WINDOW_WORDS));
+        }
+    }
+
+    public void testLargeJump()
+        throws Exception
+    {
+        ReplayWindow window = new ReplayWindow();
+
+        for (long seq = 0; seq < 64 * WINDOW_WORDS; ++seq)
+        {
+            window.reportAuthenticated(seq);
+        }
+
+        // a jump of a whole window or more clears every word
+        long far = 64 * (2 * WINDOW_WORDS + 15) + 7;
+        window.reportAuthenticated(far);
+        assertTrue(window.shouldDiscard(far));
+        assertTrue(window.shouldDiscard(0));
+        for (long seq = far - 7; seq < far + 57; ++seq)
+        {
+            assertEquals(seq == far, window.shouldDiscard(seq));
+        }
+        for (long word = (far >>> 6) - (WINDOW_WORDS - 1); word < (far >>> 6); ++word)
+        {
+            assertFalse(window.shouldDiscard(64 * word + 7));
+        }
+
+        // the largest sequence number
+        long max = 0x0000FFFFFFFFFFFFL;
+        window.reportAuthenticated(max);
+        assertTrue(window.shouldDiscard(max));
+        assertFalse(window.shouldDiscard(max - 1));
+        assertTrue(window.shouldDiscard(far));
+    }
+
+    public void testInvalidSequenceNumbers()
+        throws Exception
+    {
+        ReplayWindow window = new ReplayWindow();
+
+        assertTrue(window.shouldDiscard(1L << 48));
+        assertTrue(window.shouldDiscard(-1L));
+
+        try
+        {
+            window.reportAuthenticated(1L << 48);
+            fail("out of range sequence number accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    public void testReset()
+        throws Exception
+    {
+        ReplayWindow window = new ReplayWindow();
+
+        for (long seq = 0; seq < 100; ++seq)
+        {
+            window.reportAuthenticated(seq);
+        }
+        window.reportAuthenticated(5000);
+
+        window.reset();
+
+        for (long seq = 0; seq < 100; ++seq)
+        {
+            assertFalse(window.shouldDiscard(seq));
+        }
+        assertFalse(window.shouldDiscard(5000));
+
+        window.reportAuthenticated(3);
+        assertTrue(window.shouldDiscard(3));
+        assertFalse(window.shouldDiscard(2));
+    }
+
+    private static class ReplayWindow
+    {
+        private final Object window;
+        private final Method shouldDiscard, reportAuthenticated, reset;
+
+        ReplayWindow()
+            throws Exception
+        {
+            Class clazz = Class.forName("org.bouncycastle.tls.DTLSReplayWindow");
+
+            Constructor constructor = clazz.getDeclaredConstructor(new Class[0]);
+            constructor.setAccessible(true);
+            this.window = constructor.newInstance(new Object[0]);
+
+            this.shouldDiscard = clazz.getDeclaredMethod("shouldDiscard", new Class[]{ Long.TYPE });
+            this.reportAuthenticated = clazz.getDeclaredMethod("reportAuthenticated", new Class[]{ Long.TYPE });
+            this.reset = clazz.getDeclaredMethod("reset", new Class[0]);
+
+            shouldDiscard.setAccessible(true);
+            reportAuthenticated.setAccessible(true);
+            reset.setAccessible(true);
+        }
+
+        boolean shouldDiscard(long seq)
+            throws Exception
+        {
+            return ((Boolean)invoke(shouldDiscard, new Object[]{ Long.valueOf(seq) })).booleanValue();
+        }
+
+        void reportAuthenticated(long seq)
+            throws Exception
+        {
+            invoke(reportAuthenticated, new Object[]{ Long.valueOf(seq) });
+        }
+
+        void reset()
+            throws Exception
+        {
+            invoke(reset, new Object[0]);
+        }
+
+        private Object invoke(Method method, Object[] args)
+            throws Exception
+        {
+            try
+            {
+                return method.invoke(window, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException)cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.bouncycastle.tls.test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import junit.framework.TestCase;
+import org.bouncycastle.tls.DTLSClientProtocol;
+import org.bouncycastle.tls.DTLSServerProtocol;
+import org.bouncycastle.tls.DTLSTransport;
+import org.bouncycastle.tls.DatagramChannelTransport;
+import org.bouncycastle.util.Arrays;
+
+public class DatagramChannelTransportTest
+    extends TestCase
+{
+    private static final int MTU = 1500;
+
+    private DatagramChannel channelA, channelB;
+
+    public void setUp()
+        throws Exception
+    {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+
+        channelA = DatagramChannel.open();
+        channelA.socket().bind(new InetSocketAddress(localhost, 0));
+        channelB = DatagramChannel.open();
+        channelB.socket().bind(new InetSocketAddress(localhost, 0));
+
+        channelA.connect(channelB.socket().getLocalSocketAddress());
+        channelB.connect(channelA.socket().getLocalSocketAddress());
+    }
+
+    public void tearDown()
+        throws Exception
+    {
+        channelA.close();
+        channelB.close();
+    }
+
+    public void testReceiveTimeout()
+        throws Exception
+    {
+        DatagramChannelTransport transport = new DatagramChannelTransport(channelA, MTU);
+
+        byte[] buf = new byte[transport.getReceiveLimit()];
+        long start = System.currentTimeMillis();
+        assertEquals(-1, transport.receive(buf, 0, buf.length, 100));
+        assertTrue(System.currentTimeMillis() - start >= 90);
+    }
+
+    public void testReceiveWaitsIndefinitely()
+        throws Exception
+    {
+        DatagramChannelTransport transport = new DatagramChannelTransport(channelA, MTU);
+
+        Thread sender = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(300);
+                    channelB.write(ByteBuffer.wrap(new byte[]{ 1, 2, 3 }));
+                }
+                catch (Exception e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        };
+        sender.start();
+
+        // as for UDPTransport, a wait of 0 means no timeout rather than no waiting
+        byte[] buf = new byte[transport.getReceiveLimit()];
+        assertEquals(3, transport.receive(buf, 0, buf.length, 0));
+        assertTrue(Arrays.areEqual(new byte[]{ 1, 2, 3 }, Arrays.copyOf(buf, 3)));
+
+        sender.join();
+    }
+
+    public void testReceiveMultipleLeavesRecordThatDoesNotFit()
+        throws Exception
+    {
+        final DatagramChannelTransport serverTransport = new DatagramChannelTransport(channelA, MTU);
+        DatagramChannelTransport clientTransport = new DatagramChannelTransport(channelB, MTU);
+
+        final DTLSTransport[] server = new DTLSTransport[1];
+        Thread serverThread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    server[0] = new DTLSServerProtocol().accept(new MockDTLSServer(), serverTransport);
+                }
+                catch (Exception e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        };
+        serverThread.start();
+
+        DTLSTransport client = new DTLSClientProtocol().connect(new MockDTLSClient(null), clientTransport);
+        serverThread.join();
+        assertNotNull(server[0]);
+
+        int recordSize = client.getSendLimit(), count = 3;
+        byte[][] records = new byte[count][];
+        for (int i = 0; i < count; ++i)
+        {
+            records[i] = new byte[recordSize];
+            Arrays.fill(records[i], (byte)(i + 1));
+            client.send(records[i], 0, recordSize);
+        }
+
+        // let all the datagrams arrive, so that the server receives them as one batch
+        Thread.sleep(200);
+
+        byte[] buf = new byte[recordSize + recordSize / 2];
+        int[] lengths = new int[count];
+        int received = 0;
+        while (received < count)
+        {
+            int n = server[0].receiveMultiple(buf, 0, buf.length, lengths, 2000);
+            assertEquals(1, n);
+            assertEquals(recordSize, lengths[0]);
+            assertTrue(Arrays.areEqual(records[received], Arrays.copyOf(buf, recordSize)));
+            ++received;
+        }
+
+        assertEquals(-1, server[0].receiveMultiple(buf, 0, buf.length, lengths, 100));
+
+        client.close();
+        server[0].close();
+    }
+}
@@ -0,0 +1,349 @@
+package org.bouncycastle.tls.test;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tls.NamedGroup;
+import org.bouncycastle.tls.crypto.TlsAgreement;
+import org.bouncycastle.tls.crypto.TlsCrypto;
+import org.bouncycastle.tls.crypto.TlsECConfig;
+import org.bouncycastle.tls.crypto.impl.EphemeralKeyCache;
+import org.bouncycastle.tls.crypto.impl.bc.BcTlsCrypto;
+import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCryptoProvider;
+import org.bouncycastle.util.Arrays;
+
+public class EphemeralKeyCacheTest
+    extends TestCase
+{
+    private static final int GROUP = NamedGroup.secp256r1;
+
+    public void testReuseLimit()
+        throws IOException
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(3, 60000L, false);
+        TestGenerator generator = new TestGenerator();
+
+        TestKey[] keys = new TestKey[7];
+        for (int i = 0; i < keys.length; ++i)
+        {
+            keys[i] = (TestKey)cache.acquire(GROUP, generator);
+            cache.release(keys[i]);
+        }
+
+        // used for 3 handshakes each, then replaced
+        assertSame(keys[0], keys[1]);
+        assertSame(keys[0], keys[2]);
+        assertNotSame(keys[2], keys[3]);
+        assertSame(keys[3], keys[5]);
+        assertNotSame(keys[5], keys[6]);
+
+        assertEquals(3, generator.count);
+        assertEquals(3, cache.getKeysGenerated());
+        assertEquals(4, cache.getKeysReused());
+        assertEquals(2, cache.getKeysDestroyed());
+        assertTrue(keys[0].destroyed && keys[3].destroyed && !keys[6].destroyed);
+
+        // groups are cached separately
+        TestKey other = (TestKey)cache.acquire(NamedGroup.x25519, generator);
+        assertNotSame(keys[6], other);
+        assertSame(keys[6], cache.acquire(GROUP, generator));
+    }
+
+    public void testAgeExpiry()
+        throws Exception
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(100, 50L, false);
+        TestGenerator generator = new TestGenerator();
+
+        TestKey first = (TestKey)cache.acquire(GROUP, generator);
+        cache.release(first);
+        assertSame(first, cache.acquire(GROUP, generator));
+        cache.release(first);
+
+        Thread.sleep(100);
+
+        TestKey second = (TestKey)cache.acquire(GROUP, generator);
+        assertNotSame(first, second);
+        assertTrue(first.destroyed);
+        assertFalse(second.destroyed);
+        assertEquals(2, cache.getKeysGenerated());
+        assertEquals(1, cache.getKeysReused());
+    }
+
+    public void testDestroyAfterRetire()
+        throws IOException
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(2, 60000L, false);
+        TestGenerator generator = new TestGenerator();
+
+        TestKey key = (TestKey)cache.acquire(GROUP, generator);
+        assertSame(key, cache.acquire(GROUP, generator));
+
+        // retired by the next acquire, but still referenced twice
+        TestKey next = (TestKey)cache.acquire(GROUP, generator);
+        assertNotSame(key, next);
+        assertFalse(key.destroyed);
+
+        cache.release(key);
+        assertFalse(key.destroyed);
+        cache.release(key);
+        assertTrue(key.destroyed);
+        assertEquals(1, key.destroyCount);
+        assertEquals(1, cache.getKeysDestroyed());
+
+        try
+        {
+            cache.release(key);
+            fail("released more often than acquired");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+        assertEquals(1, key.destroyCount);
+    }
+
+    public void testClear()
+        throws IOException
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(100, 60000L, false);
+        TestGenerator generator = new TestGenerator();
+
+        TestKey inUse = (TestKey)cache.acquire(GROUP, generator);
+        TestKey released = (TestKey)cache.acquire(NamedGroup.x25519, generator);
+        cache.release(released);
+
+        cache.clear();
+
+        assertTrue(released.destroyed);
+        assertFalse(inUse.destroyed);
+
+        // a new key pair is generated after clearing
+        TestKey fresh = (TestKey)cache.acquire(GROUP, generator);
+        assertNotSame(inUse, fresh);
+
+        cache.release(inUse);
+        assertTrue(inUse.destroyed);
+        assertFalse(fresh.destroyed);
+        assertEquals(2, cache.getKeysDestroyed());
+    }
+
+    public void testPregeneration()
+        throws Exception
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(1, 60000L, true);
+        TestGenerator generator = new TestGenerator();
+
+        for (int i = 1; i <= 5; ++i)
+        {
+            TestKey key = (TestKey)cache.acquire(GROUP, generator);
+            cache.release(key);
+            assertEquals(i > 1, key.background);
+
+            // each rotation asks the producer for a successor
+            generator.awaitCount(i + 1);
+            awaitStored();
+        }
+
+        assertEquals(1, cache.getKeysGenerated());
+        assertEquals(4, cache.getKeysPregenerated());
+
+        // one producer thread, reused for every rotation
+        assertEquals(5, generator.threads.size());
+        for (int i = 1; i < generator.threads.size(); ++i)
+        {
+            assertSame(generator.threads.elementAt(0), generator.threads.elementAt(i));
+        }
+        Thread producer = (Thread)generator.threads.elementAt(0);
+        assertTrue(producer.isDaemon());
+        assertNotSame(Thread.currentThread(), producer);
+
+        // clearing stops the producer, and destroys the key pair it had ready
+        cache.clear();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(6, cache.getKeysDestroyed());
+
+        // ...and the next rotation starts another
+        cache.release(cache.acquire(GROUP, generator));
+        generator.awaitCount(8);
+        assertNotSame(producer, generator.threads.elementAt(5));
+        cache.clear();
+    }
+
+    public void testPregenerationFailure()
+        throws Exception
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(1, 60000L, true);
+        TestGenerator generator = new TestGenerator();
+        generator.failInBackground = true;
+
+        TestKey first = (TestKey)cache.acquire(GROUP, generator);
+        cache.release(first);
+        generator.awaitCount(2);
+        awaitFailures(cache, 1);
+
+        // the handshake generates the key pair itself
+        TestKey second = (TestKey)cache.acquire(GROUP, generator);
+        assertNotSame(first, second);
+        assertEquals(2, cache.getKeysGenerated());
+        assertEquals(0, cache.getKeysPregenerated());
+
+        generator.awaitCount(4);
+        awaitFailures(cache, 2);
+        cache.clear();
+    }
+
+    public void testBcECDH()
+        throws IOException
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(2, 60000L, false);
+        BcTlsCrypto crypto = new BcTlsCrypto(new SecureRandom(), cache);
+
+        checkAgreements(cache, crypto, GROUP);
+    }
+
+    public void testBcX25519()
+        throws IOException
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(2, 60000L, false);
+        BcTlsCrypto crypto = new BcTlsCrypto(new SecureRandom(), cache);
+
+        checkAgreements(cache, crypto, NamedGroup.x25519);
+    }
+
+    public void testJceECDH()
+        throws IOException
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(2, 60000L, false);
+        TlsCrypto crypto = new JcaTlsCryptoProvider().setProvider(new BouncyCastleProvider())
+            .setEphemeralKeyCache(cache).create(new SecureRandom());
+
+        checkAgreements(cache, crypto, GROUP);
+    }
+
+    public void testJceX25519()
+        throws IOException
+    {
+        EphemeralKeyCache cache = new EphemeralKeyCache(2, 60000L, false);
+        TlsCrypto crypto = new JcaTlsCryptoProvider().setProvider(new BouncyCastleProvider())
+            .setEphemeralKeyCache(cache).create(new SecureRandom());
+
+        checkAgreements(cache, crypto, NamedGroup.x25519);
+    }
+
+    private static void checkAgreements(EphemeralKeyCache cache, TlsCrypto crypto, int namedGroup)
+        throws IOException
+    {
+        TlsCrypto peerCrypto = new BcTlsCrypto(new SecureRandom());
+        TlsECConfig ecConfig = new TlsECConfig(namedGroup);
+
+        byte[][] publicKeys = new byte[3][];
+        for (int i = 0; i < publicKeys.length; ++i)
+        {
+            TlsAgreement local = crypto.createECDomain(ecConfig).createECDH();
+            TlsAgreement peer = peerCrypto.createECDomain(ecConfig).createECDH();
+
+            publicKeys[i] = local.generateEphemeral();
+            byte[] peerPublicKey = peer.generateEphemeral();
+
+            local.receivePeerValue(peerPublicKey);
+            peer.receivePeerValue(publicKeys[i]);
+
+            // the cached private key still agrees with a fresh peer
+            assertTrue(Arrays.areEqual(peer.calculateSecret().extract(), local.calculateSecret().extract()));
+        }
+
+        assertTrue(Arrays.areEqual(publicKeys[0], publicKeys[1]));
+        assertFalse(Arrays.areEqual(publicKeys[1], publicKeys[2]));
+
+        // every handshake has handed its key pair back, so the retired one has been destroyed
+        assertEquals(2, cache.getKeysGenerated());
+        assertEquals(1, cache.getKeysReused());
+        assertEquals(1, cache.getKeysDestroyed());
+
+        cache.clear();
+        assertEquals(2, cache.getKeysDestroyed());
+    }
+
+    private static void awaitStored()
+        throws InterruptedException
+    {
+        // the producer caches a key pair as soon as the generator returns it
+        Thread.sleep(100);
+    }
+
+    private static void awaitFailures(EphemeralKeyCache cache, long failures)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && cache.getPregenerationFailures() < failures; ++i)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(failures, cache.getPregenerationFailures());
+    }
+
+    private static class TestKey
+        extends EphemeralKeyCache.EphemeralKey
+    {
+        final boolean background;
+
+        boolean destroyed = false;
+        int destroyCount = 0;
+
+        TestKey(int id, boolean background)
+        {
+            super(new byte[]{ (byte)id });
+
+            this.background = background;
+        }
+
+        protected void destroy()
+        {
+            destroyed = true;
+            ++destroyCount;
+        }
+    }
+
+    private static class TestGenerator
+        implements EphemeralKeyCache.Generator
+    {
+        final Vector threads = new Vector();
+
+        boolean failInBackground = false;
+        int count = 0;
+
+        public synchronized EphemeralKeyCache.EphemeralKey generateEphemeralKey()
+            throws IOException
+        {
+            ++count;
+            notifyAll();
+
+            boolean background = Thread.currentThread().getName().equals("BCTLS-EphemeralKeyProducer");
+            if (background)
+            {
+                threads.addElement(Thread.currentThread());
+                if (failInBackground)
+                {
+                    throw new IOException("test failure");
+                }
+            }
+
+            return new TestKey(count, background);
+        }
+
+        synchronized void awaitCount(int expected)
+            throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + 5000;
+            while (count < expected && System.currentTimeMillis() < end)
+            {
+                wait(100);
+            }
+            assertEquals(expected, count);
+        }
+    }
+}
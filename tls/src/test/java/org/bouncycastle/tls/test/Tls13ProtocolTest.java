@@ -0,0 +1,482 @@
+package org.bouncycastle.tls.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Vector;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import junit.framework.TestCase;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tls.CertificateRequest;
+import org.bouncycastle.tls.CipherSuite;
+import org.bouncycastle.tls.ContentType;
+import org.bouncycastle.tls.HandshakeType;
+import org.bouncycastle.tls.NamedGroup;
+import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.SignatureAlgorithm;
+import org.bouncycastle.tls.SignatureAndHashAlgorithm;
+import org.bouncycastle.tls.TlsAuthentication;
+import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsCredentials;
+import org.bouncycastle.tls.TlsServerCertificate;
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCrypto;
+import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCryptoProvider;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Integers;
+import org.bouncycastle.util.encoders.Hex;
+import org.bouncycastle.util.io.Streams;
+import org.bouncycastle.util.io.TeeInputStream;
+
+/**
+ * Loopback TLS 1.3 handshakes between TlsClientProtocol and the JDK's own (SunJSSE) server, which
+ * are skipped if that server doesn't support TLS 1.3. See {@link Tls13ServerTest} for handshakes
+ * against TlsServerProtocol.
+ */
+public class Tls13ProtocolTest
+    extends TestCase
+{
+    private static final byte[] HELLO_RETRY_REQUEST_RANDOM = Hex
+        .decode("CF21AD74E59A6111BE1D8C021E65B891C2A211167ABB8C5E079E09E2C8A8339C");
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int WRITE_SIZE = 100;
+
+    private SSLContext serverContext;
+
+    protected void setUp()
+        throws Exception
+    {
+        try
+        {
+            this.serverContext = SSLContext.getInstance("TLSv1.3", "SunJSSE");
+        }
+        catch (Exception e)
+        {
+            System.err.println("Skipping TLS 1.3 loopback tests: " + e);
+            return;
+        }
+
+        JcaTlsCrypto crypto = (JcaTlsCrypto)new JcaTlsCryptoProvider().setProvider(new BouncyCastleProvider())
+            .create(new SecureRandom());
+        PrivateKey serverKey = TlsTestUtils.loadJcaPrivateKeyResource(crypto, "x509-server-key-rsa-sign.pem");
+        X509Certificate[] serverChain = new X509Certificate[]{ loadCertificate("x509-server-rsa-sign.pem"),
+            loadCertificate("x509-ca-rsa.pem") };
+
+        char[] password = "password".toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("server", serverKey, password, serverChain);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, password);
+
+        serverContext.init(kmf.getKeyManagers(), new TrustManager[]{ new AcceptAllTrustManager() },
+            new SecureRandom());
+    }
+
+    public void testHandshake()
+        throws Exception
+    {
+        if (null == serverContext)
+        {
+            return;
+        }
+
+        Tls13TestClient client = new Tls13TestClient();
+        ServerThread serverThread = runClient(client, false, null);
+
+        assertEquals(ProtocolVersion.TLSv13, client.negotiatedVersion);
+        assertEquals("TLSv1.3", serverThread.protocol);
+        assertNull(serverThread.peerCertificates);
+    }
+
+    public void testClientAuthentication()
+        throws Exception
+    {
+        if (null == serverContext)
+        {
+            return;
+        }
+
+        Tls13TestClient client = new Tls13TestClient();
+        client.authenticate = true;
+        ServerThread serverThread = runClient(client, true, null);
+
+        assertEquals(ProtocolVersion.TLSv13, client.negotiatedVersion);
+        assertNotNull(serverThread.peerCertificates);
+        assertEquals(2, serverThread.peerCertificates.length);
+        assertEquals(loadCertificate("x509-client-rsa.pem"), serverThread.peerCertificates[0]);
+    }
+
+    public void testHelloRetryRequest()
+        throws Exception
+    {
+        if (null == serverContext)
+        {
+            return;
+        }
+
+        // with no early key shares, the server has to ask for one
+        Tls13TestClient client = new Tls13TestClient();
+        client.earlyKeyShareGroups = new Vector();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        runClient(client, false, received);
+
+        assertEquals(ProtocolVersion.TLSv13, client.negotiatedVersion);
+        assertTrue(isHelloRetryRequest(received.toByteArray()));
+    }
+
+    public void testFiniteFieldKeyShare()
+        throws Exception
+    {
+        if (null == serverContext)
+        {
+            return;
+        }
+
+        // only ffdhe2048 is offered, and without an early key share, so the server asks for it
+        Tls13TestClient client = new Tls13TestClient();
+        client.supportedGroups = new Vector();
+        client.supportedGroups.addElement(Integers.valueOf(NamedGroup.ffdhe2048));
+        client.earlyKeyShareGroups = new Vector();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        runClient(client, false, received);
+
+        assertEquals(ProtocolVersion.TLSv13, client.negotiatedVersion);
+        assertTrue(isHelloRetryRequest(received.toByteArray()));
+    }
+
+    public void testKeyUpdateWhileWriting()
+        throws Exception
+    {
+        if (null == serverContext)
+        {
+            return;
+        }
+
+        /*
+         * Each KeyUpdate the server requests is answered from the reading thread while the writing
+         * thread is sending application data, which must not be protected with the old key once
+         * the reply has been sent.
+         */
+        Tls13TestClient client = new Tls13TestClient();
+        runClient(client, false, null, 2000, true);
+
+        assertEquals(ProtocolVersion.TLSv13, client.negotiatedVersion);
+    }
+
+    private ServerThread runClient(Tls13TestClient client, boolean needClientAuth, OutputStream received)
+        throws Exception
+    {
+        return runClient(client, needClientAuth, received, 1, false);
+    }
+
+    private ServerThread runClient(Tls13TestClient client, boolean needClientAuth, OutputStream received,
+        int chunks, boolean requestKeyUpdates)
+        throws Exception
+    {
+        SSLServerSocket serverSocket = (SSLServerSocket)serverContext.getServerSocketFactory().createServerSocket(0,
+            1, InetAddress.getLoopbackAddress());
+        try
+        {
+            serverSocket.setEnabledProtocols(new String[]{ "TLSv1.3" });
+            serverSocket.setNeedClientAuth(needClientAuth);
+
+            ServerThread serverThread = new ServerThread(serverSocket, chunks, requestKeyUpdates);
+            serverThread.start();
+
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+            try
+            {
+                socket.setSoTimeout(10000);
+
+                InputStream input = socket.getInputStream();
+                if (null != received)
+                {
+                    input = new TeeInputStream(input, received);
+                }
+
+                final TlsClientProtocol clientProtocol = new TlsClientProtocol(input, socket.getOutputStream());
+                clientProtocol.connect(client);
+
+                final byte[] data = new byte[chunks * CHUNK_SIZE];
+                client.getCrypto().getSecureRandom().nextBytes(data);
+
+                // written from another thread, so that reads (and any KeyUpdate replies) overlap writes
+                WriterThread writerThread = new WriterThread(clientProtocol.getOutputStream(), data);
+                writerThread.start();
+
+                byte[] echo = new byte[data.length];
+                Streams.readFully(clientProtocol.getInputStream(), echo);
+                assertTrue(Arrays.areEqual(data, echo));
+
+                writerThread.join(10000);
+                assertFalse(writerThread.isAlive());
+                if (null != writerThread.exception)
+                {
+                    throw writerThread.exception;
+                }
+
+                clientProtocol.close();
+            }
+            finally
+            {
+                socket.close();
+            }
+
+            serverThread.join(10000);
+            assertFalse(serverThread.isAlive());
+            if (null != serverThread.exception)
+            {
+                throw serverThread.exception;
+            }
+            return serverThread;
+        }
+        finally
+        {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Whether the first handshake message the client received was a HelloRetryRequest.
+     */
+    static boolean isHelloRetryRequest(byte[] records)
+    {
+        // record header (5), handshake header (4), legacy_version (2), then the random (32)
+        assertEquals(ContentType.handshake, records[0]);
+        assertEquals(HandshakeType.server_hello, records[5]);
+        return Arrays.areEqual(HELLO_RETRY_REQUEST_RANDOM, Arrays.copyOfRange(records, 11, 43));
+    }
+
+    private static X509Certificate loadCertificate(String resource)
+        throws Exception
+    {
+        InputStream input = TlsTestUtils.class.getResourceAsStream(resource);
+        try
+        {
+            return (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(input);
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    static class Tls13TestClient
+        extends MockTlsClient
+    {
+        boolean authenticate = false;
+        Vector supportedGroups = null;
+        Vector earlyKeyShareGroups = null;
+
+        volatile ProtocolVersion negotiatedVersion = null;
+
+        Tls13TestClient()
+        {
+            super(null);
+        }
+
+        public ProtocolVersion[] getSupportedVersions()
+        {
+            return ProtocolVersion.TLSv13.downTo(ProtocolVersion.TLSv12);
+        }
+
+        protected int[] getSupportedCipherSuites()
+        {
+            return Arrays.concatenate(new int[]{ CipherSuite.TLS_AES_128_GCM_SHA256,
+                CipherSuite.TLS_AES_256_GCM_SHA384 }, super.getSupportedCipherSuites());
+        }
+
+        protected Vector getSupportedGroups(Vector namedGroupRoles)
+        {
+            return null == supportedGroups ? super.getSupportedGroups(namedGroupRoles) : supportedGroups;
+        }
+
+        public Vector getEarlyKeyShareGroups()
+        {
+            return null == earlyKeyShareGroups ? super.getEarlyKeyShareGroups() : earlyKeyShareGroups;
+        }
+
+        public void notifyServerVersion(ProtocolVersion serverVersion)
+            throws IOException
+        {
+            super.notifyServerVersion(serverVersion);
+
+            this.negotiatedVersion = serverVersion;
+        }
+
+        public TlsAuthentication getAuthentication()
+            throws IOException
+        {
+            final TlsAuthentication authentication = super.getAuthentication();
+
+            return new TlsAuthentication()
+            {
+                public void notifyServerCertificate(TlsServerCertificate serverCertificate)
+                    throws IOException
+                {
+                    authentication.notifyServerCertificate(serverCertificate);
+                }
+
+                public TlsCredentials getClientCredentials(CertificateRequest certificateRequest)
+                    throws IOException
+                {
+                    if (!authenticate)
+                    {
+                        return null;
+                    }
+
+                    SignatureAndHashAlgorithm signatureAndHashAlgorithm = TlsUtils.chooseSignatureAndHashAlgorithm13(
+                        certificateRequest.getSupportedSignatureAlgorithms(), SignatureAlgorithm.rsa);
+                    if (null == signatureAndHashAlgorithm)
+                    {
+                        return null;
+                    }
+
+                    return TlsTestUtils.loadSignerCredentials(context,
+                        new String[]{ "x509-client-rsa.pem", "x509-ca-rsa.pem" }, "x509-client-key-rsa.pem",
+                        signatureAndHashAlgorithm);
+                }
+            };
+        }
+    }
+
+    static class WriterThread
+        extends Thread
+    {
+        private final OutputStream output;
+        private final byte[] data;
+
+        volatile Exception exception = null;
+
+        WriterThread(OutputStream output, byte[] data)
+        {
+            this.output = output;
+            this.data = data;
+        }
+
+        public void run()
+        {
+            try
+            {
+                // many small records, to contend with the reading thread for the record layer
+                for (int off = 0; off < data.length; off += WRITE_SIZE)
+                {
+                    output.write(data, off, WRITE_SIZE);
+                }
+                output.flush();
+            }
+            catch (Exception e)
+            {
+                this.exception = e;
+            }
+        }
+    }
+
+    static class ServerThread
+        extends Thread
+    {
+        private final SSLServerSocket serverSocket;
+        private final int chunks;
+        private final boolean requestKeyUpdates;
+
+        volatile Exception exception = null;
+        volatile String protocol = null;
+        volatile java.security.cert.Certificate[] peerCertificates = null;
+
+        ServerThread(SSLServerSocket serverSocket, int chunks, boolean requestKeyUpdates)
+        {
+            this.serverSocket = serverSocket;
+            this.chunks = chunks;
+            this.requestKeyUpdates = requestKeyUpdates;
+        }
+
+        public void run()
+        {
+            try
+            {
+                SSLSocket socket = (SSLSocket)serverSocket.accept();
+                try
+                {
+                    socket.setSoTimeout(10000);
+
+                    byte[] data = new byte[CHUNK_SIZE];
+                    for (int i = 0; i < chunks; ++i)
+                    {
+                        Streams.readFully(socket.getInputStream(), data);
+
+                        if (0 == i)
+                        {
+                            SSLSession session = socket.getSession();
+                            this.protocol = session.getProtocol();
+                            if (serverSocket.getNeedClientAuth())
+                            {
+                                this.peerCertificates = session.getPeerCertificates();
+                            }
+                        }
+
+                        socket.getOutputStream().write(data);
+                        socket.getOutputStream().flush();
+
+                        // (not after the last chunk, as the client may close without reading it)
+                        if (requestKeyUpdates && i < chunks - 1)
+                        {
+                            // under TLS 1.3 this sends a KeyUpdate with update_requested
+                            socket.startHandshake();
+                        }
+                    }
+
+                    Streams.drain(socket.getInputStream());
+                }
+                finally
+                {
+                    socket.close();
+                }
+            }
+            catch (Exception e)
+            {
+                this.exception = e;
+            }
+        }
+    }
+
+    /**
+     * Accepts any client chain; the test checks the one that was sent.
+     */
+    static class AcceptAllTrustManager
+        implements X509TrustManager
+    {
+        public void checkClientTrusted(X509Certificate[] chain, String authType)
+        {
+        }
+
+        public void checkServerTrusted(X509Certificate[] chain, String authType)
+        {
+        }
+
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.bouncycastle.tls.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.SecureRandom;
+
+import junit.framework.TestCase;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tls.HashAlgorithm;
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.tls.crypto.TlsCrypto;
+import org.bouncycastle.tls.crypto.TlsCryptoUtils;
+import org.bouncycastle.tls.crypto.TlsHash;
+import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.impl.bc.BcTlsCrypto;
+import org.bouncycastle.tls.crypto.impl.jcajce.JcaTlsCryptoProvider;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Checks the TLS 1.3 transcript hash and key schedule against the "Simple 1-RTT Handshake" trace of
+ * RFC 8448 (section 3). The package-private TlsUtils key schedule methods are driven through
+ * reflection.
+ */
+public class Tls13RFC8448Test
+    extends TestCase
+{
+    private static final short SHA256 = HashAlgorithm.sha256;
+
+    private static final byte[] CLIENT_HELLO = Hex.decode(
+        "010000c00303cb34ecb1e78163ba1c38c6dacb196a6dffa21a8d9912ec18a2ef6283024dece7000006130113031302"
+        + "010000910000000b0009000006736572766572ff01000100000a00140012001d0017001800190100010101020103"
+        + "010400230000003300260024001d002099381de560e4bd43d23d8e435a7dbafeb3c06e51c13cae4d5413691e529a"
+        + "af2c002b0003020304000d0020001e040305030603020308040805080604010501060102010402050206020202002d"
+        + "00020101001c00024001");
+
+    private static final byte[] SERVER_HELLO = Hex.decode(
+        "020000560303a6af06a4121860dc5e6e60249cd34c95930c8ac5cb1434dac155772ed3e2692800130100002e0033"
+        + "0024001d0020c9828876112095fe66762bdbf7c672e156d6cc253b833df1dd69b1b04e751f0f002b00020304");
+
+    // Hash(ClientHello..ServerHello)
+    private static final String HELLO_HASH = "860c06edc07858ee8e78f0e7428c58edd6b43f2ca3e6e95f02ed063cf0e1cad8";
+
+    // Hash(ClientHello..server CertificateVerify)
+    private static final String CERTIFICATE_VERIFY_HASH = "edb7725fa7a3473b031ec8ef65a2485493900138a2b91291407d7951a06110ed";
+
+    // Hash(ClientHello..client Finished)
+    private static final String CLIENT_FINISHED_HASH = "209145a96ee8e2a122ff810047cc952684658d6049e86429426db87c54ad143d";
+
+    // The (EC)DHE shared secret, from the x25519 key shares above
+    private static final String SHARED_SECRET = "8bd4054fb55b9d63fdfbacf9f04b9f0d35e6d63f537563efd46272900f89492d";
+
+    private static final String EARLY_SECRET = "33ad0a1c607ec03b09e6cd9893680ce210adf300aa1f2660e1b22e10f170f92a";
+    private static final String DERIVED_EARLY = "6f2615a108c702c5678f54fc9dbab69716c076189c48250cebeac3576c3611ba";
+    private static final String HANDSHAKE_SECRET = "1dc826e93606aa6fdc0aadc12f741b01046aa6b99f691ed221a9f0ca043fbeac";
+    private static final String CLIENT_HS_TRAFFIC = "b3eddb126e067f35a780b3abf45e2d8f3b1a950738f52e9600746a0e27a55a21";
+    private static final String SERVER_HS_TRAFFIC = "b67b7d690cc16c4e75e54213cb2d37b4e9c912bcded9105d42befd59d391ad38";
+    private static final String SERVER_HS_KEY = "3fce516009c21727d0f2e4e86ee403bc";
+    private static final String SERVER_HS_IV = "5d313eb2671276ee13000b30";
+    private static final String SERVER_FINISHED = "9b9b141d906337fbd2cbdce71df4deda4ab42c309572cb7fffee5454b78f0718";
+    private static final String DERIVED_HANDSHAKE = "43de77e0c77713859a944db9db2590b53190a65b3ee2e4f12dd7a0bb7ce254b4";
+    private static final String MASTER_SECRET = "18df06843d13a08bf2a449844c5f8a478001bc4d4c627984d5a41da8d0402919";
+    private static final String RESUMPTION_MASTER_SECRET = "7df235f2031d2a051287d02b0241b0bfdaf86cc856231f2d5aba46c434ec196c";
+
+    // HKDF-Expand-Label(resumption_master_secret, "resumption", ticket_nonce (0000), 32)
+    private static final String RESUMPTION_PSK = "4ecd0eb6ec3b4d87f5d6028f922ca4c5851a277fd41311c9e62d2c9492e1c4f3";
+
+    public void testTranscriptHashBc()
+        throws Exception
+    {
+        checkTranscriptHash(new BcTlsCrypto(new SecureRandom()));
+    }
+
+    public void testTranscriptHashJca()
+        throws Exception
+    {
+        checkTranscriptHash(createJcaCrypto());
+    }
+
+    public void testKeyScheduleBc()
+        throws Exception
+    {
+        checkKeySchedule(new BcTlsCrypto(new SecureRandom()));
+    }
+
+    public void testKeyScheduleJca()
+        throws Exception
+    {
+        checkKeySchedule(createJcaCrypto());
+    }
+
+    private void checkTranscriptHash(TlsCrypto crypto)
+    {
+        TlsHash hash = crypto.createHash(SHA256);
+        hash.update(CLIENT_HELLO, 0, CLIENT_HELLO.length);
+
+        // the transcript is hashed incrementally, one message at a time
+        TlsHash fork = (TlsHash)hash.clone();
+        fork.update(SERVER_HELLO, 0, SERVER_HELLO.length);
+        assertEquals(HELLO_HASH, Hex.toHexString(fork.calculateHash()));
+
+        hash.update(SERVER_HELLO, 0, SERVER_HELLO.length);
+        assertEquals(HELLO_HASH, Hex.toHexString(hash.calculateHash()));
+    }
+
+    private void checkKeySchedule(TlsCrypto crypto)
+        throws Exception
+    {
+        byte[] emptyHash = crypto.createHash(SHA256).calculateHash();
+
+        // RFC 8446 7.1. Without a PSK, the early secret is extracted from zeros
+        TlsSecret earlySecret = checkSecret(crypto, EARLY_SECRET, calculate13EarlySecret(crypto, null));
+
+        TlsSecret derived = checkSecret(crypto, DERIVED_EARLY, derive13Secret(earlySecret, "derived", emptyHash));
+        TlsSecret handshakeSecret = checkSecret(crypto, HANDSHAKE_SECRET,
+            derived.hkdfExtract(SHA256, crypto.createSecret(Hex.decode(SHARED_SECRET))));
+
+        byte[] helloHash = Hex.decode(HELLO_HASH);
+        TlsSecret clientHandshakeTraffic = checkSecret(crypto, CLIENT_HS_TRAFFIC,
+            derive13Secret(handshakeSecret, "c hs traffic", helloHash));
+        TlsSecret serverHandshakeTraffic = checkSecret(crypto, SERVER_HS_TRAFFIC,
+            derive13Secret(handshakeSecret, "s hs traffic", helloHash));
+        assertNotNull(clientHandshakeTraffic);
+
+        checkSecret(crypto, SERVER_HS_KEY,
+            TlsCryptoUtils.hkdfExpandLabel(serverHandshakeTraffic, SHA256, "key", TlsUtils.EMPTY_BYTES, 16));
+        checkSecret(crypto, SERVER_HS_IV,
+            TlsCryptoUtils.hkdfExpandLabel(serverHandshakeTraffic, SHA256, "iv", TlsUtils.EMPTY_BYTES, 12));
+
+        // the server's Finished is keyed from its handshake traffic secret
+        byte[] serverFinished = calculate13VerifyData(crypto, serverHandshakeTraffic,
+            Hex.decode(CERTIFICATE_VERIFY_HASH));
+        assertEquals(SERVER_FINISHED, Hex.toHexString(serverFinished));
+
+        derived = checkSecret(crypto, DERIVED_HANDSHAKE, derive13Secret(handshakeSecret, "derived", emptyHash));
+        TlsSecret masterSecret = checkSecret(crypto, MASTER_SECRET,
+            derived.hkdfExtract(SHA256, crypto.hkdfInit(SHA256)));
+
+        TlsSecret resumptionMasterSecret = checkSecret(crypto, RESUMPTION_MASTER_SECRET,
+            derive13Secret(masterSecret, "res master", Hex.decode(CLIENT_FINISHED_HASH)));
+        checkSecret(crypto, RESUMPTION_PSK, TlsCryptoUtils.hkdfExpandLabel(resumptionMasterSecret, SHA256,
+            "resumption", new byte[2], 32));
+
+        // with the resumption PSK, the early secret is no longer the one for zeros
+        TlsSecret psk = crypto.createSecret(Hex.decode(RESUMPTION_PSK));
+        TlsSecret pskEarlySecret = calculate13EarlySecret(crypto, psk);
+        assertFalse(EARLY_SECRET.equals(Hex.toHexString(pskEarlySecret.extract())));
+    }
+
+    /**
+     * Check (and so consume) a secret's value, returning a copy for use in further derivations.
+     */
+    private static TlsSecret checkSecret(TlsCrypto crypto, String expected, TlsSecret secret)
+    {
+        byte[] data = secret.extract();
+        assertEquals(expected, Hex.toHexString(data));
+        return crypto.createSecret(data);
+    }
+
+    private static TlsCrypto createJcaCrypto()
+    {
+        return new JcaTlsCryptoProvider().setProvider(new BouncyCastleProvider()).create(new SecureRandom());
+    }
+
+    private static TlsSecret calculate13EarlySecret(TlsCrypto crypto, TlsSecret psk)
+        throws Exception
+    {
+        return (TlsSecret)invoke("calculate13EarlySecret",
+            new Class[]{ TlsCrypto.class, short.class, TlsSecret.class },
+            new Object[]{ crypto, Short.valueOf(SHA256), psk });
+    }
+
+    private static TlsSecret derive13Secret(TlsSecret secret, String label, byte[] transcriptHash)
+        throws Exception
+    {
+        return (TlsSecret)invoke("derive13Secret",
+            new Class[]{ TlsSecret.class, short.class, String.class, byte[].class },
+            new Object[]{ secret, Short.valueOf(SHA256), label, transcriptHash });
+    }
+
+    private static byte[] calculate13VerifyData(TlsCrypto crypto, TlsSecret baseKey, byte[] transcriptHash)
+        throws Exception
+    {
+        return (byte[])invoke("calculate13VerifyData",
+            new Class[]{ TlsCrypto.class, short.class, TlsSecret.class, byte[].class },
+            new Object[]{ crypto, Short.valueOf(SHA256), baseKey, transcriptHash });
+    }
+
+    private static Object invoke(String name, Class[] parameterTypes, Object[] args)
+        throws Exception
+    {
+        Method method = TlsUtils.class.getDeclaredMethod(name, parameterTypes);
+        method.setAccessible(true);
+        try
+        {
+            return method.invoke(null, args);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw (Exception)e.getCause();
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package org.bouncycastle.tls.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+
+import junit.framework.TestCase;
+import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.CertificateRequest;
+import org.bouncycastle.tls.CipherSuite;
+import org.bouncycastle.tls.NamedGroup;
+import org.bouncycastle.tls.NewSessionTicket;
+import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.SignatureAlgorithm;
+import org.bouncycastle.tls.SignatureAndHashAlgorithm;
+import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsCredentialedSigner;
+import org.bouncycastle.tls.TlsServerProtocol;
+import org.bouncycastle.tls.TlsSession;
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Integers;
+import org.bouncycastle.util.encoders.Hex;
+import org.bouncycastle.util.io.Streams;
+import org.bouncycastle.util.io.TeeInputStream;
+
+/**
+ * Loopback TLS 1.3 handshakes against TlsServerProtocol, from TlsClientProtocol and (where it
+ * supports TLS 1.3) the JDK's own SunJSSE client.
+ */
+public class Tls13ServerTest
+    extends TestCase
+{
+    public void testHandshake()
+        throws Exception
+    {
+        Tls13TestServer server = new Tls13TestServer(new Hashtable());
+        TicketClient client = new TicketClient();
+        runConnection(server, client, null);
+
+        assertEquals(ProtocolVersion.TLSv13, client.negotiatedVersion);
+        assertEquals(ProtocolVersion.TLSv13, server.negotiatedVersion);
+        assertFalse(server.resumed);
+        assertNull(server.clientCertificate);
+        assertEquals(1, server.tickets.size());
+        assertNotNull(client.ticketSession);
+    }
+
+    public void testHelloRetryRequest()
+        throws Exception
+    {
+        // with no early key shares, the server has to ask for one
+        Tls13TestServer server = new Tls13TestServer(new Hashtable());
+        TicketClient client = new TicketClient();
+        client.earlyKeyShareGroups = new Vector();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        runConnection(server, client, received);
+
+        assertEquals(ProtocolVersion.TLSv13, client.negotiatedVersion);
+        assertTrue(Tls13ProtocolTest.isHelloRetryRequest(received.toByteArray()));
+    }
+
+    public void testFiniteFieldKeyShare()
+        throws Exception
+    {
+        Tls13TestServer server = new Tls13TestServer(new Hashtable());
+        TicketClient client = new TicketClient();
+        client.supportedGroups = new Vector();
+        client.supportedGroups.addElement(Integers.valueOf(NamedGroup.ffdhe2048));
+        client.earlyKeyShareGroups = client.supportedGroups;
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        runConnection(server, client, received);
+
+        assertEquals(ProtocolVersion.TLSv13, client.negotiatedVersion);
+        assertFalse(Tls13ProtocolTest.isHelloRetryRequest(received.toByteArray()));
+    }
+
+    public void testClientAuthentication()
+        throws Exception
+    {
+        Tls13TestServer server = new Tls13TestServer(new Hashtable());
+        server.requestClientAuth = true;
+        TicketClient client = new TicketClient();
+        client.authenticate = true;
+        runConnection(server, client, null);
+
+        assertEquals(ProtocolVersion.TLSv13, server.negotiatedVersion);
+        assertNotNull(server.clientCertificate);
+        assertEquals(2, server.clientCertificate.getLength());
+    }
+
+    public void testClientAuthenticationDeclined()
+        throws Exception
+    {
+        Tls13TestServer server = new Tls13TestServer(new Hashtable());
+        server.requestClientAuth = true;
+        TicketClient client = new TicketClient();
+        runConnection(server, client, null);
+
+        assertEquals(ProtocolVersion.TLSv13, server.negotiatedVersion);
+        assertNotNull(server.clientCertificate);
+        assertTrue(server.clientCertificate.isEmpty());
+    }
+
+    public void testResumption()
+        throws Exception
+    {
+        Hashtable tickets = new Hashtable();
+
+        Tls13TestServer server1 = new Tls13TestServer(tickets);
+        TicketClient client1 = new TicketClient();
+        runConnection(server1, client1, null);
+
+        assertFalse(server1.resumed);
+        assertNotNull(client1.ticketSession);
+        assertTrue(client1.ticketSession.isResumable());
+
+        // a full handshake the first time, so the resumed session is after a HelloRetryRequest too
+        for (int i = 0; i < 2; ++i)
+        {
+            Tls13TestServer server2 = new Tls13TestServer(tickets);
+            TicketClient client2 = new TicketClient();
+            client2.session = client1.ticketSession;
+            if (i > 0)
+            {
+                client2.earlyKeyShareGroups = new Vector();
+            }
+            runConnection(server2, client2, null);
+
+            assertEquals(ProtocolVersion.TLSv13, client2.negotiatedVersion);
+            assertTrue(server2.resumed);
+        }
+    }
+
+    public void testResumptionUnknownTicket()
+        throws Exception
+    {
+        Tls13TestServer server1 = new Tls13TestServer(new Hashtable());
+        TicketClient client1 = new TicketClient();
+        runConnection(server1, client1, null);
+
+        // a server that didn't issue the ticket falls back to a full handshake
+        Tls13TestServer server2 = new Tls13TestServer(new Hashtable());
+        TicketClient client2 = new TicketClient();
+        client2.session = client1.ticketSession;
+        runConnection(server2, client2, null);
+
+        assertEquals(ProtocolVersion.TLSv13, client2.negotiatedVersion);
+        assertFalse(server2.resumed);
+    }
+
+    public void testSunJSSEClient()
+        throws Exception
+    {
+        SSLContext clientContext;
+        try
+        {
+            clientContext = SSLContext.getInstance("TLSv1.3", "SunJSSE");
+        }
+        catch (Exception e)
+        {
+            System.err.println("Skipping SunJSSE TLS 1.3 client test: " + e);
+            return;
+        }
+
+        clientContext.init(null, new TrustManager[]{ new Tls13ProtocolTest.AcceptAllTrustManager() },
+            new SecureRandom());
+
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try
+        {
+            Tls13TestServer server = new Tls13TestServer(new Hashtable());
+            SocketServerThread serverThread = new SocketServerThread(serverSocket, server);
+            serverThread.start();
+
+            SSLSocket socket = (SSLSocket)clientContext.getSocketFactory().createSocket(
+                InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+            try
+            {
+                socket.setSoTimeout(10000);
+                socket.setEnabledProtocols(new String[]{ "TLSv1.3" });
+                socket.startHandshake();
+
+                assertEquals("TLSv1.3", socket.getSession().getProtocol());
+
+                byte[] data = new byte[2000];
+                new SecureRandom().nextBytes(data);
+
+                OutputStream output = socket.getOutputStream();
+                output.write(data, 0, 1000);
+
+                // On a TLS 1.3 connection, this sends a KeyUpdate (requesting one in return)
+                socket.startHandshake();
+
+                output.write(data, 1000, 1000);
+
+                byte[] echo = new byte[data.length];
+                Streams.readFully(socket.getInputStream(), echo);
+                assertTrue(Arrays.areEqual(data, echo));
+            }
+            finally
+            {
+                socket.close();
+            }
+
+            serverThread.join(10000);
+            assertFalse(serverThread.isAlive());
+            assertEquals(ProtocolVersion.TLSv13, server.negotiatedVersion);
+        }
+        finally
+        {
+            serverSocket.close();
+        }
+    }
+
+    private static void runConnection(Tls13TestServer server, TicketClient client, OutputStream received)
+        throws Exception
+    {
+        PipedInputStream clientRead = TlsTestUtils.createPipedInputStream();
+        PipedInputStream serverRead = TlsTestUtils.createPipedInputStream();
+        PipedOutputStream clientWrite = new PipedOutputStream(serverRead);
+        PipedOutputStream serverWrite = new PipedOutputStream(clientRead);
+
+        InputStream input = clientRead;
+        if (null != received)
+        {
+            input = new TeeInputStream(input, received);
+        }
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol(input, clientWrite);
+        TlsServerProtocol serverProtocol = new TlsServerProtocol(serverRead, serverWrite);
+
+        ServerThread serverThread = new ServerThread(serverProtocol, server);
+        serverThread.start();
+
+        clientProtocol.connect(client);
+
+        // NOTE: Because we write-all before we read-any, this length can't be more than the pipe capacity
+        byte[] data = new byte[1000];
+        client.getCrypto().getSecureRandom().nextBytes(data);
+
+        OutputStream output = clientProtocol.getOutputStream();
+        output.write(data);
+
+        // NOTE: The NewSessionTicket (if any) is read ahead of the echoed data
+        byte[] echo = new byte[data.length];
+        Streams.readFully(clientProtocol.getInputStream(), echo);
+        assertTrue(Arrays.areEqual(data, echo));
+
+        output.close();
+
+        serverThread.join(10000);
+        assertFalse(serverThread.isAlive());
+        if (null != serverThread.exception)
+        {
+            throw serverThread.exception;
+        }
+    }
+
+    static class TicketClient
+        extends Tls13ProtocolTest.Tls13TestClient
+    {
+        volatile TlsSession ticketSession = null;
+
+        public void notifyNewSessionTicket(NewSessionTicket newSessionTicket)
+            throws IOException
+        {
+            super.notifyNewSessionTicket(newSessionTicket);
+
+            this.ticketSession = context.getSession();
+        }
+    }
+
+    static class Tls13TestServer
+        extends MockTlsServer
+    {
+        final Hashtable tickets;
+
+        boolean requestClientAuth = false;
+
+        volatile ProtocolVersion negotiatedVersion = null;
+        volatile Certificate clientCertificate = null;
+        volatile boolean resumed = false;
+
+        Tls13TestServer(Hashtable tickets)
+        {
+            this.tickets = tickets;
+        }
+
+        public ProtocolVersion[] getSupportedVersions()
+        {
+            return ProtocolVersion.TLSv13.downTo(ProtocolVersion.TLSv12);
+        }
+
+        protected int[] getSupportedCipherSuites()
+        {
+            return Arrays.concatenate(new int[]{ CipherSuite.TLS_AES_128_GCM_SHA256,
+                CipherSuite.TLS_AES_256_GCM_SHA384 }, super.getSupportedCipherSuites());
+        }
+
+        public ProtocolVersion getServerVersion()
+            throws IOException
+        {
+            ProtocolVersion serverVersion = super.getServerVersion();
+
+            this.negotiatedVersion = serverVersion;
+
+            return serverVersion;
+        }
+
+        public CertificateRequest getCertificateRequest()
+            throws IOException
+        {
+            return requestClientAuth ? super.getCertificateRequest() : null;
+        }
+
+        public void notifyClientCertificate(Certificate clientCertificate)
+            throws IOException
+        {
+            super.notifyClientCertificate(clientCertificate);
+
+            this.clientCertificate = clientCertificate;
+        }
+
+        protected TlsCredentialedSigner getSignerCredentials13()
+            throws IOException
+        {
+            SignatureAndHashAlgorithm signatureAndHashAlgorithm = TlsUtils.chooseSignatureAndHashAlgorithm13(
+                context.getSecurityParametersHandshake().getClientSigAlgs(), SignatureAlgorithm.rsa);
+
+            return TlsTestUtils.loadSignerCredentials(context,
+                new String[]{ "x509-server-rsa-sign.pem", "x509-ca-rsa.pem" }, "x509-server-key-rsa-sign.pem",
+                signatureAndHashAlgorithm);
+        }
+
+        public TlsSession getSessionToResume(byte[] sessionID)
+        {
+            return (TlsSession)tickets.get(Hex.toHexString(sessionID));
+        }
+
+        public long getSessionTicketLifetime()
+        {
+            return 3600L;
+        }
+
+        public void notifyResumableSession(TlsSession session)
+        {
+            tickets.put(Hex.toHexString(session.getSessionID()), session);
+        }
+
+        public void notifyHandshakeComplete()
+            throws IOException
+        {
+            super.notifyHandshakeComplete();
+
+            this.resumed = tickets.contains(context.getSession());
+        }
+    }
+
+    static class ServerThread
+        extends Thread
+    {
+        private final TlsServerProtocol serverProtocol;
+        private final Tls13TestServer server;
+
+        volatile Exception exception = null;
+
+        ServerThread(TlsServerProtocol serverProtocol, Tls13TestServer server)
+        {
+            this.serverProtocol = serverProtocol;
+            this.server = server;
+        }
+
+        public void run()
+        {
+            try
+            {
+                serverProtocol.accept(server);
+            }
+            catch (Exception e)
+            {
+                this.exception = e;
+                return;
+            }
+
+            try
+            {
+                Streams.pipeAll(serverProtocol.getInputStream(), serverProtocol.getOutputStream());
+                serverProtocol.close();
+            }
+            catch (Exception e)
+            {
+                // NOTE: The client closes its end of the pipes right after its close_notify
+            }
+        }
+    }
+
+    static class SocketServerThread
+        extends Thread
+    {
+        private final ServerSocket serverSocket;
+        private final Tls13TestServer server;
+
+        SocketServerThread(ServerSocket serverSocket, Tls13TestServer server)
+        {
+            this.serverSocket = serverSocket;
+            this.server = server;
+        }
+
+        public void run()
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                try
+                {
+                    TlsServerProtocol serverProtocol = new TlsServerProtocol(socket.getInputStream(),
+                        socket.getOutputStream());
+                    serverProtocol.accept(server);
+                    Streams.pipeAll(serverProtocol.getInputStream(), serverProtocol.getOutputStream());
+                    serverProtocol.close();
+                }
+                finally
+                {
+                    socket.close();
+                }
+            }
+            catch (Exception e)
+            {
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package org.bouncycastle.tls.test;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Hashtable;
+
+import junit.framework.TestCase;
+import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.CipherSuite;
+import org.bouncycastle.tls.ContentType;
+import org.bouncycastle.tls.ProtocolVersion;
+import org.bouncycastle.tls.SecurityParameters;
+import org.bouncycastle.tls.TlsContext;
+import org.bouncycastle.tls.TlsExtensionsUtils;
+import org.bouncycastle.tls.TlsFatalAlert;
+import org.bouncycastle.tls.TlsServer;
+import org.bouncycastle.tls.TlsServerProtocol;
+import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsUtils;
+import org.bouncycastle.tls.crypto.TlsCipher;
+import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.TlsDecodeResult;
+import org.bouncycastle.tls.crypto.TlsNullNullCipher;
+import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * Round trips records through the in-place {@link TlsCipher} API, for each kind of cipher and at
+ * non-zero offsets, using the keys of a real (loopback) handshake.
+ */
+public class TlsCipherTest
+    extends TestCase
+{
+    private static final int[] LENGTHS = new int[]{ 0, 1, 15, 16, 17, 255, 1000 };
+    private static final int[] OFFSETS = new int[]{ 0, 1, 13 };
+
+    public void testAEADCipher()
+        throws Exception
+    {
+        CipherPair ciphers = handshake(ProtocolVersion.TLSv12, CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256,
+            true, false);
+
+        assertFalse(ciphers.clientCipher.usesOpaqueRecordType());
+        checkRoundTrips(ciphers);
+    }
+
+    public void testAEADCipher13()
+        throws Exception
+    {
+        CipherPair ciphers = handshake(ProtocolVersion.TLSv13, CipherSuite.TLS_AES_128_GCM_SHA256, true, false);
+
+        assertTrue(ciphers.clientCipher.usesOpaqueRecordType());
+        checkRoundTrips(ciphers);
+    }
+
+    public void testBlockCipher()
+        throws Exception
+    {
+        CipherPair ciphers = handshake(ProtocolVersion.TLSv12, CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256,
+            false, false);
+
+        checkRoundTrips(ciphers);
+    }
+
+    public void testBlockCipherEncryptThenMAC()
+        throws Exception
+    {
+        CipherPair ciphers = handshake(ProtocolVersion.TLSv12, CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256,
+            true, true);
+
+        checkRoundTrips(ciphers);
+    }
+
+    public void testBlockCipherTLSv10()
+        throws Exception
+    {
+        // TLS 1.0 has no explicit IV, so each record's IV is the last ciphertext block of the previous one
+        CipherPair ciphers = handshake(ProtocolVersion.TLSv10, CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA,
+            false, false);
+
+        checkRoundTrips(ciphers);
+    }
+
+    public void testNullCipher()
+        throws Exception
+    {
+        CipherPair ciphers = handshake(ProtocolVersion.TLSv12, CipherSuite.TLS_ECDHE_RSA_WITH_NULL_SHA, true, false);
+
+        checkRoundTrips(ciphers);
+    }
+
+    public void testNullNullCipher()
+        throws Exception
+    {
+        CipherPair ciphers = new CipherPair();
+        ciphers.clientCipher = new TlsNullNullCipher();
+        ciphers.serverCipher = new TlsNullNullCipher();
+
+        checkRoundTrips(ciphers);
+    }
+
+    private static void checkRoundTrips(CipherPair ciphers)
+        throws IOException
+    {
+        long seqNo = 0;
+        for (int i = 0; i < LENGTHS.length; ++i)
+        {
+            for (int j = 0; j < OFFSETS.length; ++j)
+            {
+                checkRoundTrip(ciphers, seqNo++, LENGTHS[i], OFFSETS[j]);
+            }
+        }
+
+        checkTamperedRecord(ciphers, seqNo);
+    }
+
+    private static void checkRoundTrip(CipherPair ciphers, long seqNo, int length, int offset)
+        throws IOException
+    {
+        short type = ContentType.application_data;
+
+        byte[] plaintext = new byte[offset + length + 5];
+        for (int i = 0; i < plaintext.length; ++i)
+        {
+            plaintext[i] = (byte)(i * 7 + length);
+        }
+        byte[] expected = Arrays.copyOfRange(plaintext, offset, offset + length);
+        byte[] plaintextCopy = Arrays.clone(plaintext);
+
+        // the output region is preceded and followed by bytes that must be left alone
+        int limit = ciphers.clientCipher.getCiphertextLimit(length);
+        byte[] record = new byte[offset + limit + 5];
+        Arrays.fill(record, (byte)0xA5);
+
+        int ciphertextLength = ciphers.clientCipher.encodePlaintext(seqNo, type, plaintext, offset, length, record,
+            offset);
+
+        String label = "length " + length + ", offset " + offset;
+        assertTrue(label, ciphertextLength >= length && ciphertextLength <= limit);
+        assertTrue(label, Arrays.areEqual(plaintextCopy, plaintext));
+        for (int i = 0; i < offset; ++i)
+        {
+            assertEquals(label, (byte)0xA5, record[i]);
+        }
+        for (int i = offset + ciphertextLength; i < record.length; ++i)
+        {
+            assertEquals(label, (byte)0xA5, record[i]);
+        }
+
+        short recordType = ciphers.clientCipher.usesOpaqueRecordType() ? ContentType.application_data : type;
+        TlsDecodeResult decoded = ciphers.serverCipher.decodeCiphertext(seqNo, recordType, record, offset,
+            ciphertextLength);
+
+        assertEquals(label, type, decoded.contentType);
+        assertEquals(label, length, decoded.len);
+        assertTrue(label, Arrays.areEqual(expected, Arrays.copyOfRange(decoded.buf, decoded.off,
+            decoded.off + decoded.len)));
+
+        // decryption happens in place, within the ciphertext's own region
+        assertSame(label, record, decoded.buf);
+        assertTrue(label, decoded.off >= offset && decoded.off + decoded.len <= offset + ciphertextLength);
+    }
+
+    private static void checkTamperedRecord(CipherPair ciphers, long seqNo)
+        throws IOException
+    {
+        if (ciphers.clientCipher instanceof TlsNullNullCipher)
+        {
+            return;
+        }
+
+        short type = ContentType.application_data;
+        byte[] plaintext = new byte[100];
+        byte[] record = new byte[3 + ciphers.clientCipher.getCiphertextLimit(plaintext.length)];
+
+        int ciphertextLength = ciphers.clientCipher.encodePlaintext(seqNo, type, plaintext, 0, plaintext.length,
+            record, 3);
+        record[3 + ciphertextLength - 1] ^= 0x01;
+
+        try
+        {
+            ciphers.serverCipher.decodeCiphertext(seqNo, type, record, 3, ciphertextLength);
+            fail("tampered record was accepted");
+        }
+        catch (TlsFatalAlert e)
+        {
+            assertEquals(AlertDescription.bad_record_mac, e.getAlertDescription());
+        }
+    }
+
+    private static CipherPair handshake(ProtocolVersion version, final int cipherSuite, boolean offerEncryptThenMAC,
+        boolean expectEncryptThenMAC)
+        throws Exception
+    {
+        PipedInputStream clientRead = TlsTestUtils.createPipedInputStream();
+        PipedInputStream serverRead = TlsTestUtils.createPipedInputStream();
+        PipedOutputStream clientWrite = new PipedOutputStream(serverRead);
+        PipedOutputStream serverWrite = new PipedOutputStream(clientRead);
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol(clientRead, clientWrite);
+        TlsServerProtocol serverProtocol = new TlsServerProtocol(serverRead, serverWrite);
+
+        TlsServer server;
+        if (TlsUtils.isTLSv13(version))
+        {
+            server = new Tls13ServerTest.Tls13TestServer(new Hashtable());
+        }
+        else
+        {
+            server = new MockTlsServer()
+            {
+                public ProtocolVersion[] getSupportedVersions()
+                {
+                    return ProtocolVersion.TLSv12.downTo(ProtocolVersion.TLSv10);
+                }
+
+                protected int[] getSupportedCipherSuites()
+                {
+                    return new int[]{ cipherSuite };
+                }
+            };
+        }
+
+        HandshakeThread serverThread = new HandshakeThread(serverProtocol, server);
+        serverThread.start();
+
+        CipherClient client = new CipherClient(version, cipherSuite, offerEncryptThenMAC);
+        clientProtocol.connect(client);
+
+        clientProtocol.close();
+        serverThread.join(10000);
+
+        assertEquals(version, client.negotiatedVersion);
+        assertEquals(expectEncryptThenMAC, client.encryptThenMAC);
+        assertNotNull(client.ciphers);
+        return client.ciphers;
+    }
+
+    static class CipherPair
+    {
+        TlsCipher clientCipher, serverCipher;
+    }
+
+    /**
+     * Sees the connection's security parameters as those of the handshake, so that a cipher can be
+     * created for either end from a completed handshake.
+     */
+    static class ConnectionCryptoParameters
+        extends TlsCryptoParameters
+    {
+        private final TlsContext context;
+        private final boolean isServer;
+
+        ConnectionCryptoParameters(TlsContext context, boolean isServer)
+        {
+            super(context);
+
+            this.context = context;
+            this.isServer = isServer;
+        }
+
+        public SecurityParameters getSecurityParametersHandshake()
+        {
+            return context.getSecurityParametersConnection();
+        }
+
+        public boolean isServer()
+        {
+            return isServer;
+        }
+    }
+
+    static class CipherClient
+        extends MockTlsClient
+    {
+        private final ProtocolVersion version;
+        private final int cipherSuite;
+        private final boolean offerEncryptThenMAC;
+
+        ProtocolVersion negotiatedVersion = null;
+        boolean encryptThenMAC = false;
+        CipherPair ciphers = null;
+
+        CipherClient(ProtocolVersion version, int cipherSuite, boolean offerEncryptThenMAC)
+        {
+            super(null);
+
+            this.version = version;
+            this.cipherSuite = cipherSuite;
+            this.offerEncryptThenMAC = offerEncryptThenMAC;
+        }
+
+        public ProtocolVersion[] getSupportedVersions()
+        {
+            return version.only();
+        }
+
+        protected int[] getSupportedCipherSuites()
+        {
+            return new int[]{ cipherSuite };
+        }
+
+        public Hashtable getClientExtensions()
+            throws IOException
+        {
+            Hashtable clientExtensions = super.getClientExtensions();
+            if (!offerEncryptThenMAC)
+            {
+                clientExtensions.remove(TlsExtensionsUtils.EXT_encrypt_then_mac);
+            }
+            return clientExtensions;
+        }
+
+        public void notifyHandshakeComplete()
+            throws IOException
+        {
+            super.notifyHandshakeComplete();
+
+            // NOTE: The secrets are still available here, until the handshake is cleaned up
+            SecurityParameters securityParameters = context.getSecurityParametersConnection();
+            this.negotiatedVersion = securityParameters.getNegotiatedVersion();
+            this.encryptThenMAC = securityParameters.isEncryptThenMAC();
+
+            TlsSecret baseSecret = TlsUtils.isTLSv13(negotiatedVersion)
+                ?   securityParameters.getTrafficSecretClient()
+                :   securityParameters.getMasterSecret();
+            int encryptionAlgorithm = TlsUtils.getEncryptionAlgorithm(securityParameters.getCipherSuite());
+            int macAlgorithm = TlsUtils.getMACAlgorithm(securityParameters.getCipherSuite());
+
+            CipherPair ciphers = new CipherPair();
+            ciphers.clientCipher = baseSecret.createCipher(new ConnectionCryptoParameters(context, false),
+                encryptionAlgorithm, macAlgorithm);
+            ciphers.serverCipher = baseSecret.createCipher(new ConnectionCryptoParameters(context, true),
+                encryptionAlgorithm, macAlgorithm);
+            this.ciphers = ciphers;
+        }
+    }
+
+    static class HandshakeThread
+        extends Thread
+    {
+        private final TlsServerProtocol serverProtocol;
+        private final TlsServer server;
+
+        HandshakeThread(TlsServerProtocol serverProtocol, TlsServer server)
+        {
+            this.serverProtocol = serverProtocol;
+            this.server = server;
+        }
+
+        public void run()
+        {
+            try
+            {
+                serverProtocol.accept(server);
+
+                // wait for the client's close_notify before closing
+                while (serverProtocol.getInputStream().read() >= 0)
+                {
+                }
+                serverProtocol.close();
+            }
+            catch (Exception e)
+            {
+                // NOTE: Only the client's view of the handshake is checked
+            }
+        }
+    }
+}
@@ -2,11 +2,23 @@
 
 import java.io.IOException;
 import java.security.SecureRandom;
+import java.util.Vector;
 
 import junit.framework.TestCase;
+import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.CipherSuite;
+import org.bouncycastle.tls.SignatureAndHashAlgorithm;
 import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsCredentialedAsyncDecryptor;
+import org.bouncycastle.tls.TlsCredentialedAsyncSigner;
+import org.bouncycastle.tls.TlsCredentialedDecryptor;
+import org.bouncycastle.tls.TlsCredentialedSigner;
+import org.bouncycastle.tls.TlsFuture;
 import org.bouncycastle.tls.TlsProtocol;
 import org.bouncycastle.tls.TlsServerProtocol;
+import org.bouncycastle.tls.crypto.TlsCryptoParameters;
+import org.bouncycastle.tls.crypto.TlsSecret;
+import org.bouncycastle.tls.crypto.TlsStreamSigner;
 import org.bouncycastle.util.Arrays;
 
 public class TlsProtocolNonBlockingTest
@@ -56,6 +68,56 @@ private static void testClientServer(boolean fragment) throws IOException
         checkClosed(clientProtocol);
     }
 
+    public void testClientServerAsyncCredentials() throws IOException
+    {
+        // private-key operations complete only when the test runs them
+        testClientServerAsync(CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256);
+        testClientServerAsync(CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256);
+    }
+
+    private static void testClientServerAsync(int cipherSuite) throws IOException
+    {
+        SecureRandom secureRandom = new SecureRandom();
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol();
+        TlsServerProtocol serverProtocol = new TlsServerProtocol();
+
+        AsyncMockTlsServer server = new AsyncMockTlsServer(cipherSuite);
+
+        clientProtocol.connect(new MockTlsClient(null));
+        serverProtocol.accept(server);
+
+        // pump handshake, running pending operations whenever the server suspends
+        int operations = 0;
+        boolean progress = true;
+        while (progress)
+        {
+            progress = pumpData(serverProtocol, clientProtocol, false);
+            progress |= pumpData(clientProtocol, serverProtocol, false);
+
+            if (serverProtocol.isHandshakeSuspended())
+            {
+                operations += server.runPendingOperations();
+                serverProtocol.resumeSuspendedHandshake();
+                progress = true;
+            }
+        }
+
+        assertEquals(1, operations);
+        assertFalse(serverProtocol.isHandshakeSuspended());
+
+        byte[] data = new byte[1024];
+        secureRandom.nextBytes(data);
+        writeAndRead(clientProtocol, serverProtocol, data, false);
+        writeAndRead(serverProtocol, clientProtocol, data, false);
+
+        clientProtocol.close();
+        pumpData(clientProtocol, serverProtocol, false);
+        serverProtocol.closeInput();
+        checkClosed(serverProtocol);
+        checkClosed(clientProtocol);
+    }
+
     private static void writeAndRead(TlsProtocol writer, TlsProtocol reader, byte[] data, boolean fragment)
         throws IOException
     {
@@ -123,4 +185,119 @@ private static void assertArrayEquals(byte[] a, byte[] b)
     {
         assertTrue(Arrays.areEqual(a, b));
     }
+
+    private static class AsyncMockTlsServer
+        extends MockTlsServer
+    {
+        private final int cipherSuite;
+        private final Vector pending = new Vector();
+
+        AsyncMockTlsServer(int cipherSuite)
+        {
+            this.cipherSuite = cipherSuite;
+        }
+
+        int runPendingOperations()
+        {
+            int count = pending.size();
+            for (int i = 0; i < count; ++i)
+            {
+                ((Runnable)pending.elementAt(i)).run();
+            }
+            pending.removeAllElements();
+            return count;
+        }
+
+        protected int[] getSupportedCipherSuites()
+        {
+            return new int[]{ cipherSuite };
+        }
+
+        protected TlsCredentialedDecryptor getRSAEncryptionCredentials() throws IOException
+        {
+            final TlsCredentialedDecryptor decryptor = super.getRSAEncryptionCredentials();
+
+            return new TlsCredentialedAsyncDecryptor()
+            {
+                public TlsFuture decryptAsync(final TlsCryptoParameters cryptoParams, final byte[] ciphertext)
+                {
+                    final TlsFuture future = new TlsFuture();
+                    pending.addElement(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                future.complete(decryptor.decrypt(cryptoParams, ciphertext));
+                            }
+                            catch (IOException e)
+                            {
+                                future.fail(e);
+                            }
+                        }
+                    });
+                    return future;
+                }
+
+                public TlsSecret decrypt(TlsCryptoParameters cryptoParams, byte[] ciphertext) throws IOException
+                {
+                    return decryptor.decrypt(cryptoParams, ciphertext);
+                }
+
+                public Certificate getCertificate()
+                {
+                    return decryptor.getCertificate();
+                }
+            };
+        }
+
+        protected TlsCredentialedSigner getRSASignerCredentials() throws IOException
+        {
+            final TlsCredentialedSigner signer = super.getRSASignerCredentials();
+
+            return new TlsCredentialedAsyncSigner()
+            {
+                public TlsFuture generateRawSignatureAsync(final byte[] hash)
+                {
+                    final TlsFuture future = new TlsFuture();
+                    pending.addElement(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                future.complete(signer.generateRawSignature(hash));
+                            }
+                            catch (IOException e)
+                            {
+                                future.fail(e);
+                            }
+                        }
+                    });
+                    return future;
+                }
+
+                public byte[] generateRawSignature(byte[] hash) throws IOException
+                {
+                    return signer.generateRawSignature(hash);
+                }
+
+                public Certificate getCertificate()
+                {
+                    return signer.getCertificate();
+                }
+
+                public SignatureAndHashAlgorithm getSignatureAndHashAlgorithm()
+                {
+                    return signer.getSignatureAndHashAlgorithm();
+                }
+
+                public TlsStreamSigner getStreamSigner()
+                {
+                    // forces the raw (and therefore asynchronous) signing path
+                    return null;
+                }
+            };
+        }
+    }
 }
@@ -6,7 +6,12 @@
 import java.security.SecureRandom;
 
 import junit.framework.TestCase;
+import org.bouncycastle.tls.AlertDescription;
+import org.bouncycastle.tls.ContentType;
+import org.bouncycastle.tls.HandshakeType;
 import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsContext;
+import org.bouncycastle.tls.TlsMetricsListener;
 import org.bouncycastle.tls.TlsServerProtocol;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.io.Streams;
@@ -53,6 +58,99 @@ public void testClientServer()
         serverThread.join();
     }
 
+    public void testClientServerMetrics()
+        throws Exception
+    {
+        PipedInputStream clientRead = TlsTestUtils.createPipedInputStream();
+        PipedInputStream serverRead = TlsTestUtils.createPipedInputStream();
+        PipedOutputStream clientWrite = new PipedOutputStream(serverRead);
+        PipedOutputStream serverWrite = new PipedOutputStream(clientRead);
+
+        TlsClientProtocol clientProtocol = new TlsClientProtocol(clientRead, clientWrite);
+        TlsServerProtocol serverProtocol = new TlsServerProtocol(serverRead, serverWrite);
+
+        CountingMetricsListener metrics = new CountingMetricsListener();
+        clientProtocol.setMetricsListener(metrics);
+
+        ServerThread serverThread = new ServerThread(serverProtocol);
+        serverThread.start();
+
+        MockTlsClient client = new MockTlsClient(null);
+        clientProtocol.connect(client);
+
+        assertEquals(1, metrics.handshakes);
+        assertTrue(metrics.cipherSuite > 0);
+        assertTrue(metrics.handshakeNanos > 0L);
+        assertTrue(metrics.serverHelloProcessed);
+        assertTrue(metrics.finishedProcessed);
+
+        byte[] data = new byte[1000];
+        OutputStream output = clientProtocol.getOutputStream();
+        output.write(data);
+
+        byte[] echo = new byte[data.length];
+        Streams.readFully(clientProtocol.getInputStream(), echo);
+
+        assertEquals(data.length, metrics.applicationBytesWritten);
+        assertEquals(data.length, metrics.applicationBytesRead);
+
+        output.close();
+
+        assertEquals(1, metrics.closeNotifyRaised);
+
+        serverThread.join();
+    }
+
+    static class CountingMetricsListener
+        implements TlsMetricsListener
+    {
+        int handshakes = 0, cipherSuite = -1, closeNotifyRaised = 0;
+        int applicationBytesRead = 0, applicationBytesWritten = 0;
+        long handshakeNanos = 0L;
+        boolean serverHelloProcessed = false, finishedProcessed = false;
+
+        public void handshakeMessageProcessed(TlsContext context, short handshakeType, long elapsedNanos)
+        {
+            serverHelloProcessed |= (HandshakeType.server_hello == handshakeType);
+            finishedProcessed |= (HandshakeType.finished == handshakeType);
+        }
+
+        public void handshakeCompleted(TlsContext context, int cipherSuite, boolean resumedSession, long elapsedNanos)
+        {
+            ++this.handshakes;
+            this.cipherSuite = cipherSuite;
+            this.handshakeNanos = elapsedNanos;
+        }
+
+        public void alertRaised(TlsContext context, short alertLevel, short alertDescription)
+        {
+            if (AlertDescription.close_notify == alertDescription)
+            {
+                ++closeNotifyRaised;
+            }
+        }
+
+        public void alertReceived(TlsContext context, short alertLevel, short alertDescription)
+        {
+        }
+
+        public void recordRead(TlsContext context, short contentType, int plaintextLength, int recordLength)
+        {
+            if (ContentType.application_data == contentType)
+            {
+                applicationBytesRead += plaintextLength;
+            }
+        }
+
+        public void recordWritten(TlsContext context, short contentType, int plaintextLength, int recordLength)
+        {
+            if (ContentType.application_data == contentType)
+            {
+                applicationBytesWritten += plaintextLength;
+            }
+        }
+    }
+
     static class ServerThread
         extends Thread
     {
@@ -0,0 +1,308 @@
+package org.bouncycastle.tls.test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+
+import junit.framework.TestCase;
+
+import org.bouncycastle.tls.Certificate;
+import org.bouncycastle.tls.CipherSuite;
+import org.bouncycastle.tls.SignatureAndHashAlgorithm;
+import org.bouncycastle.tls.TlsChannelConnection;
+import org.bouncycastle.tls.TlsClientProtocol;
+import org.bouncycastle.tls.TlsCredentialedAsyncSigner;
+import org.bouncycastle.tls.TlsCredentialedSigner;
+import org.bouncycastle.tls.TlsFuture;
+import org.bouncycastle.tls.TlsProtocol;
+import org.bouncycastle.tls.TlsSelectorDriver;
+import org.bouncycastle.tls.TlsServerProtocol;
+import org.bouncycastle.tls.crypto.TlsStreamSigner;
+import org.bouncycastle.util.Arrays;
+
+public class TlsSelectorDriverTest
+    extends TestCase
+{
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    public void testEcho() throws Exception
+    {
+        runEcho(false, 4, 100000);
+    }
+
+    public void testEchoWithSmallLimits() throws Exception
+    {
+        // Forces the back-pressure paths: reading stops and resumes many times on both sides
+        runEcho(false, 2, 300000, 1024);
+    }
+
+    public void testAsyncCredentials() throws Exception
+    {
+        runEcho(true, 2, 1000);
+    }
+
+    private static void runEcho(boolean async, int connections, int size) throws Exception
+    {
+        runEcho(async, connections, size, TlsSelectorDriver.DEFAULT_OUTPUT_LIMIT);
+    }
+
+    private static void runEcho(final boolean async, int connections, int size, int limit) throws Exception
+    {
+        byte[] data = new byte[size];
+        new SecureRandom().nextBytes(data);
+
+        EchoHandler serverHandler = new EchoHandler();
+        ClientHandler clientHandler = new ClientHandler(data, connections);
+
+        TlsSelectorDriver serverDriver = new TlsSelectorDriver(serverHandler);
+        TlsSelectorDriver clientDriver = new TlsSelectorDriver(clientHandler);
+        serverDriver.setInputLimit(limit);
+        serverDriver.setOutputLimit(limit);
+        clientDriver.setInputLimit(limit);
+        clientDriver.setOutputLimit(limit);
+
+        Thread serverThread = new Thread(serverDriver);
+        Thread clientThread = new Thread(clientDriver);
+        serverThread.start();
+        clientThread.start();
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try
+        {
+            serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+
+            serverDriver.listen(serverChannel, new TlsSelectorDriver.ProtocolFactory()
+            {
+                public TlsProtocol createProtocol(SocketChannel channel) throws IOException
+                {
+                    TlsServerProtocol protocol = new TlsServerProtocol();
+                    protocol.accept(async ? new AsyncMockTlsServer() : new MockTlsServer());
+                    return protocol;
+                }
+            });
+
+            for (int i = 0; i < connections; ++i)
+            {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(serverChannel.socket().getLocalSocketAddress());
+
+                clientDriver.register(channel, new TlsSelectorDriver.ProtocolFactory()
+                {
+                    public TlsProtocol createProtocol(SocketChannel channel) throws IOException
+                    {
+                        TlsClientProtocol protocol = new TlsClientProtocol();
+                        protocol.connect(new MockTlsClient(null));
+                        return protocol;
+                    }
+                }, new ClientState());
+            }
+
+            clientHandler.await();
+            serverHandler.await(connections);
+        }
+        finally
+        {
+            serverChannel.close();
+            clientDriver.shutdown();
+            serverDriver.shutdown();
+            clientThread.join(TIMEOUT_MILLIS);
+            serverThread.join(TIMEOUT_MILLIS);
+        }
+    }
+
+    private static class ClientState
+    {
+        byte[] received;
+        int receivedLength = 0;
+        int sentLength = 0;
+    }
+
+    private static class EchoHandler
+        implements TlsSelectorDriver.Handler
+    {
+        private final byte[] buf = new byte[4096];
+        private int closed = 0;
+        private Exception failure = null;
+
+        public void handshakeCompleted(TlsChannelConnection connection)
+        {
+        }
+
+        public void dataAvailable(TlsChannelConnection connection) throws IOException
+        {
+            int count;
+            while (connection.isWritable() && (count = connection.read(buf, 0, buf.length)) > 0)
+            {
+                connection.write(buf, 0, count);
+            }
+        }
+
+        public void outputDrained(TlsChannelConnection connection) throws IOException
+        {
+            dataAvailable(connection);
+        }
+
+        public synchronized void connectionClosed(TlsChannelConnection connection, Exception cause)
+        {
+            ++closed;
+            if (null != cause && null == failure)
+            {
+                failure = cause;
+            }
+            notifyAll();
+        }
+
+        synchronized void await(int connections) throws Exception
+        {
+            long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (closed < connections && System.currentTimeMillis() < end)
+            {
+                wait(1000);
+            }
+            if (null != failure)
+            {
+                throw failure;
+            }
+            assertEquals(connections, closed);
+        }
+    }
+
+    private static class ClientHandler
+        implements TlsSelectorDriver.Handler
+    {
+        private final byte[] data;
+        private int remaining;
+        private Exception failure = null;
+
+        ClientHandler(byte[] data, int connections)
+        {
+            this.data = data;
+            this.remaining = connections;
+        }
+
+        public void handshakeCompleted(TlsChannelConnection connection) throws IOException
+        {
+            ((ClientState)connection.getAttachment()).received = new byte[data.length];
+            outputDrained(connection);
+        }
+
+        public void dataAvailable(TlsChannelConnection connection)
+        {
+            ClientState state = (ClientState)connection.getAttachment();
+            state.receivedLength += connection.read(state.received, state.receivedLength,
+                data.length - state.receivedLength);
+
+            if (state.receivedLength == data.length)
+            {
+                connection.close();
+            }
+        }
+
+        public void outputDrained(TlsChannelConnection connection) throws IOException
+        {
+            ClientState state = (ClientState)connection.getAttachment();
+            while (connection.isWritable() && state.sentLength < data.length)
+            {
+                int count = Math.min(1000, data.length - state.sentLength);
+                connection.write(data, state.sentLength, count);
+                state.sentLength += count;
+            }
+        }
+
+        public synchronized void connectionClosed(TlsChannelConnection connection, Exception cause)
+        {
+            ClientState state = (ClientState)connection.getAttachment();
+            if (null == failure)
+            {
+                if (null != cause)
+                {
+                    failure = cause;
+                }
+                else if (null == state.received || !Arrays.areEqual(data, state.received))
+                {
+                    failure = new IOException("echoed data does not match");
+                }
+            }
+            --remaining;
+            notifyAll();
+        }
+
+        synchronized void await() throws Exception
+        {
+            long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (remaining > 0 && System.currentTimeMillis() < end)
+            {
+                wait(1000);
+            }
+            if (null != failure)
+            {
+                throw failure;
+            }
+            assertEquals(0, remaining);
+        }
+    }
+
+    private static class AsyncMockTlsServer
+        extends MockTlsServer
+    {
+        protected int[] getSupportedCipherSuites()
+        {
+            return new int[]{ CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256 };
+        }
+
+        protected TlsCredentialedSigner getRSASignerCredentials() throws IOException
+        {
+            final TlsCredentialedSigner signer = super.getRSASignerCredentials();
+
+            return new TlsCredentialedAsyncSigner()
+            {
+                public TlsFuture generateRawSignatureAsync(final byte[] hash)
+                {
+                    // Complete the operation on another thread, as e.g. a hardware key would
+                    final TlsFuture future = new TlsFuture();
+                    new Thread()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                Thread.sleep(10);
+                                future.complete(signer.generateRawSignature(hash));
+                            }
+                            catch (Exception e)
+                            {
+                                future.fail(new IOException(e.getMessage()));
+                            }
+                        }
+                    }.start();
+                    return future;
+                }
+
+                public byte[] generateRawSignature(byte[] hash) throws IOException
+                {
+                    return signer.generateRawSignature(hash);
+                }
+
+                public Certificate getCertificate()
+                {
+                    return signer.getCertificate();
+                }
+
+                public SignatureAndHashAlgorithm getSignatureAndHashAlgorithm()
+                {
+                    return signer.getSignatureAndHashAlgorithm();
+                }
+
+                public TlsStreamSigner getStreamSigner()
+                {
+                    // forces the raw (and therefore asynchronous) signing path
+                    return null;
+                }
+            };
+        }
+    }
+}